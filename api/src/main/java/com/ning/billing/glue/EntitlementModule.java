@@ -21,6 +21,8 @@ public interface EntitlementModule {
 
     public void installBlockingApi();
 
+    public void installEntitlementInternalApi();
+
     public void installEntitlementApi();
 
     public void installSubscriptionApi();
@@ -25,4 +25,6 @@ public interface InvoiceModule {
     public abstract void installInvoiceMigrationApi();
 
     public abstract void installInvoiceInternalApi();
+
+    public abstract void installInvoiceAgingUserApi();
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.invoice.api;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+
+import com.ning.billing.catalog.api.Currency;
+
+/**
+ * Unpaid balance of an account, in a given currency, split by aging bucket.
+ */
+public interface AccountAging {
+
+    public UUID getAccountId();
+
+    public Currency getCurrency();
+
+    /**
+     * @return the overdue state of the account at the aging date, null if the account isn't overdue
+     */
+    public String getOverdueState();
+
+    public LocalDate getOldestUnpaidInvoiceDate();
+
+    public Map<AgingBucket, BigDecimal> getBalances();
+
+    public BigDecimal getTotalBalance();
+}
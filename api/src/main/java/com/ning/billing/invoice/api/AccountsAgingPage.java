@@ -0,0 +1,35 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.invoice.api;
+
+import java.util.List;
+
+/**
+ * Page of the accounts receivable aging, see InvoiceAgingUserApi#getAccountsAging.
+ */
+public interface AccountsAgingPage {
+
+    /**
+     * @return the unpaid balances of the accounts of the page (one entry per account and currency)
+     */
+    public List<AccountAging> getAccountsAging();
+
+    /**
+     * @return the cursor to retrieve the next page, null if this is the last page
+     */
+    public Long getNextCursor();
+}
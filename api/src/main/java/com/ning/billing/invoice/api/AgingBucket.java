@@ -0,0 +1,48 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.invoice.api;
+
+/**
+ * Accounts receivable aging buckets, based on the number of days since the invoice date.
+ */
+public enum AgingBucket {
+
+    DAYS_0_30(30),
+    DAYS_31_60(60),
+    DAYS_61_90(90),
+    DAYS_91_120(120),
+    DAYS_OVER_120(Integer.MAX_VALUE);
+
+    private final int maxDays;
+
+    AgingBucket(final int maxDays) {
+        this.maxDays = maxDays;
+    }
+
+    public int getMaxDays() {
+        return maxDays;
+    }
+
+    public static AgingBucket fromDays(final int days) {
+        for (final AgingBucket bucket : values()) {
+            if (days <= bucket.getMaxDays()) {
+                return bucket;
+            }
+        }
+        return DAYS_OVER_120;
+    }
+}
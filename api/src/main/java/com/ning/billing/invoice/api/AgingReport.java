@@ -0,0 +1,44 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.invoice.api;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import org.joda.time.LocalDate;
+
+import com.ning.billing.catalog.api.Currency;
+
+/**
+ * Tenant-wide accounts receivable aging summary.
+ */
+public interface AgingReport {
+
+    public LocalDate getAsOfDate();
+
+    /**
+     * @return the number of accounts with an unpaid balance
+     */
+    public int getNbAccounts();
+
+    public Map<Currency, Map<AgingBucket, BigDecimal>> getBalancesByCurrency();
+
+    /**
+     * @return the balances by currency and overdue state (accounts not overdue are reported under an empty state)
+     */
+    public Map<Currency, Map<String, Map<AgingBucket, BigDecimal>>> getBalancesByCurrencyAndOverdueState();
+}
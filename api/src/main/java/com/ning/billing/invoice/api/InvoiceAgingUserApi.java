@@ -0,0 +1,60 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.invoice.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import javax.annotation.Nullable;
+
+import org.joda.time.LocalDate;
+
+import com.ning.billing.util.callcontext.TenantContext;
+
+/**
+ * Accounts receivable aging, computed in the database for all accounts of the tenant.
+ * <p/>
+ * Invoices are aged from their invoice date. Only invoice items and payments recorded on or before
+ * the aging date are taken into account, so that the report can be re-run for a past date.
+ */
+public interface InvoiceAgingUserApi {
+
+    /**
+     * @param asOfDate aging date
+     * @param context  tenant context
+     * @return the summary of the unpaid balances, by currency and overdue state
+     */
+    public AgingReport getAgingReport(LocalDate asOfDate, TenantContext context);
+
+    /**
+     * @param asOfDate aging date
+     * @param cursor   cursor returned with the previous page, null to start from the first account
+     * @param limit    maximum number of accounts to return
+     * @param context  tenant context
+     * @return the unpaid balances of a page of accounts with an unpaid balance. A page is only empty if there are no more accounts
+     */
+    public AccountsAgingPage getAccountsAging(LocalDate asOfDate, @Nullable Long cursor, int limit, TenantContext context);
+
+    /**
+     * Stream the unpaid balances of all accounts as CSV.
+     *
+     * @param asOfDate aging date
+     * @param out      output stream
+     * @param context  tenant context
+     * @throws IOException if the stream can't be written
+     */
+    public void exportAccountsAgingAsCSV(LocalDate asOfDate, OutputStream out, TenantContext context) throws IOException;
+}
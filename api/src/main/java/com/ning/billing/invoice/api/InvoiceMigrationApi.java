@@ -17,6 +17,7 @@
 package com.ning.billing.invoice.api;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.UUID;
 
 import org.joda.time.LocalDate;
@@ -26,6 +27,20 @@ import com.ning.billing.util.callcontext.CallContext;
 
 public interface InvoiceMigrationApi {
 
+    /**
+     * The interface {@code MigrationInvoice} captures a historical invoice to be migrated.
+     */
+    public interface MigrationInvoice {
+
+        public UUID getAccountId();
+
+        public LocalDate getTargetDate();
+
+        public BigDecimal getBalance();
+
+        public Currency getCurrency();
+    }
+
     /**
      * @param accountId  account id
      * @param targetDate maximum billing event day to consider (in the account timezone)
@@ -39,4 +54,14 @@ public interface InvoiceMigrationApi {
                                        BigDecimal balance,
                                        Currency currency,
                                        CallContext context);
+
+    /**
+     * Bulk version of createMigrationInvoice: the invoices are written in batches of killbill.invoice.migration.batchSize
+     * invoices per transaction. If a batch fails, its invoices are retried one by one so that only the failing ones are rejected.
+     *
+     * @param invoices the invoices to migrate
+     * @param context  call context
+     * @return the UUIDs of the created invoices, in the order of the input (null for invoices of unknown accounts or which couldn't be written)
+     */
+    public List<UUID> createMigrationInvoices(Iterable<MigrationInvoice> invoices, CallContext context);
 }
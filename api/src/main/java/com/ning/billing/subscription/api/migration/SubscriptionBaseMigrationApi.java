@@ -16,6 +16,8 @@
 
 package com.ning.billing.subscription.api.migration;
 
+import java.util.Iterator;
+import java.util.Map;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
@@ -120,6 +122,31 @@ public interface SubscriptionBaseMigrationApi {
     }
 
 
+    /**
+     * The interface {@code BulkMigrationResult} captures the outcome of a bulk migration.
+     */
+    public interface BulkMigrationResult {
+
+        /**
+         *
+         * @return the number of accounts from the input which have been processed (migrated or rejected), to be passed
+         *         as the checkpoint when resuming an interrupted migration
+         */
+        public long getCheckpoint();
+
+        /**
+         *
+         * @return the number of accounts successfully migrated
+         */
+        public long getNbMigratedAccounts();
+
+        /**
+         *
+         * @return the reason of the failure, for each account which could not be migrated
+         */
+        public Map<UUID, String> getErrors();
+    }
+
     /**
      * Migrate all the existing entitlements associated with that account.
      * The semantics is 'all or nothing' (atomic operation)
@@ -130,4 +157,18 @@ public interface SubscriptionBaseMigrationApi {
      */
     public void migrate(AccountMigration toBeMigrated, CallContext context)
             throws SubscriptionBaseMigrationApiException;
+
+    /**
+     * Migrate the existing entitlements of many accounts.
+     * <p/>
+     * The accounts are consumed in order and validated against the catalog before being written, in batches of
+     * killbill.subscription.migration.batchSize accounts per transaction. The semantics is 'all or nothing' for each account
+     * only: an account which cannot be migrated is reported in the result and doesn't prevent the others from being migrated.
+     * Bundles which already exist are skipped, so that a partially migrated input can be replayed.
+     *
+     * @param toBeMigrated the accounts to migrate
+     * @param checkpoint   number of accounts to skip at the beginning of the input (see {@code BulkMigrationResult#getCheckpoint})
+     * @return the outcome of the migration
+     */
+    public BulkMigrationResult migrate(Iterator<AccountMigration> toBeMigrated, long checkpoint, CallContext context);
 }
@@ -16,6 +16,7 @@
 
 package com.ning.billing.subscription.api.transfer;
 
+import java.util.List;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
@@ -43,4 +44,25 @@ public interface SubscriptionBaseTransferApi {
     public SubscriptionBaseBundle transferBundle(final UUID sourceAccountId, final UUID destAccountId, final String bundleKey, final DateTime requestedDate,
                                              final boolean transferAddOn, final boolean cancelImmediately, final CallContext context)
             throws SubscriptionBaseTransferApiException;
+
+    /**
+     * Transfer several bundles between the same two accounts, atomically.
+     * <p/>
+     * All the cancellation and creation events are computed upfront and committed in a single transaction, so that
+     * a single invoice run is triggered on each account.
+     *
+     * @param sourceAccountId   the unique id for the account on which the bundles will be transferred from
+     * @param destAccountId     the unique id for the account on which the bundles will be transferred to
+     * @param bundleKeys        the externalKeys for the bundles
+     * @param requestedDate     the date at which this transfer should occur
+     * @param transferAddOn     whether or not we should also transfer ADD_ON subscriptions existing on these {@code SubscriptionBaseBundle}
+     * @param cancelImmediately whether cancellation on the sourceAccount occurs immediately
+     * @param context           the user context
+     * @return the newly created {@code SubscriptionBaseBundle}, in the order of the bundleKeys
+     * @throws SubscriptionBaseTransferApiException
+     *          if the system could not transfer one of the {@code SubscriptionBaseBundle} (none is transferred in that case)
+     */
+    public List<SubscriptionBaseBundle> transferBundles(final UUID sourceAccountId, final UUID destAccountId, final List<String> bundleKeys, final DateTime requestedDate,
+                                                        final boolean transferAddOn, final boolean cancelImmediately, final CallContext context)
+            throws SubscriptionBaseTransferApiException;
 }
@@ -16,13 +16,24 @@
 
 package com.ning.billing.beatrix.extbus;
 
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.Transaction;
+import org.skife.jdbi.v2.TransactionStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.weakref.jmx.Managed;
 
 import com.ning.billing.ObjectType;
 import com.ning.billing.account.api.Account;
@@ -30,10 +41,11 @@ import com.ning.billing.account.api.AccountApiException;
 import com.ning.billing.beatrix.glue.BeatrixModule;
 import com.ning.billing.bus.api.BusEvent;
 import com.ning.billing.bus.api.PersistentBus;
-import com.ning.billing.bus.api.PersistentBus.EventBusException;
 import com.ning.billing.entitlement.EntitlementTransitionType;
 import com.ning.billing.subscription.api.SubscriptionBaseTransitionType;
 import com.ning.billing.notification.plugin.api.ExtBusEventType;
+import com.ning.billing.util.cache.Cachable.CacheType;
+import com.ning.billing.util.cache.CacheControllerDispatcher;
 import com.ning.billing.util.callcontext.CallOrigin;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalCallContextFactory;
@@ -61,19 +73,39 @@ import com.ning.billing.util.svcapi.account.AccountInternalApi;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.joda.JodaModule;
+import com.google.common.collect.ImmutableList;
+import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 
-public class
-
-
-        BeatrixListener {
+/**
+ * Translates internal bus events into external bus events.
+ * <p/>
+ * Events are dispatched into stripes by account record id: within a stripe, events are published in the order they
+ * were received, several at a time (in a single transaction) when they pile up behind a slow publication. Stripes are
+ * independent, so events for different accounts are published in parallel by the bus dispatcher threads.
+ * The bus handler only returns once the external event has been committed: if it could not be published, the failure
+ * is rethrown by the handler of that event (and only that one), so the internal event is retried by the bus.
+ */
+public class BeatrixListener {
 
     private static final Logger log = LoggerFactory.getLogger(BeatrixListener.class);
 
+    private static final int NB_STRIPES = 64;
+    private static final int MAX_BATCH_SIZE = 100;
+
     private final PersistentBus externalBus;
     private final InternalCallContextFactory internalCallContextFactory;
     private final AccountInternalApi accountApi;
     private final NonEntityDao nonEntityDao;
+    private final CacheControllerDispatcher cacheControllerDispatcher;
+    private final ExtBusTransactionalSqlDao transactionalSqlDao;
+    private final EventStripe[] stripes;
+
+    private final AtomicLong nbEvents = new AtomicLong();
+    private final AtomicLong nbBatches = new AtomicLong();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private final AtomicLong totalLagMs = new AtomicLong();
+    private final AtomicLong maxLagMs = new AtomicLong();
 
     protected final ObjectMapper objectMapper;
 
@@ -81,32 +113,198 @@ public class
     public BeatrixListener(@Named(BeatrixModule.EXTERNAL_BUS) final PersistentBus externalBus,
                            final InternalCallContextFactory internalCallContextFactory,
                            final AccountInternalApi accountApi,
-                           final NonEntityDao nonEntityDao) {
+                           final NonEntityDao nonEntityDao,
+                           final CacheControllerDispatcher cacheControllerDispatcher,
+                           final IDBI dbi) {
         this.externalBus = externalBus;
         this.internalCallContextFactory = internalCallContextFactory;
         this.accountApi = accountApi;
         this.nonEntityDao = nonEntityDao;
+        this.cacheControllerDispatcher = cacheControllerDispatcher;
+        this.transactionalSqlDao = dbi.onDemand(ExtBusTransactionalSqlDao.class);
+        this.stripes = new EventStripe[NB_STRIPES];
+        for (int i = 0; i < NB_STRIPES; i++) {
+            stripes[i] = new EventStripe();
+        }
         this.objectMapper = new ObjectMapper();
         objectMapper.registerModule(new JodaModule());
         objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handleAllInternalKillbillEvents(final BusInternalEvent event) {
+        final PendingEvent pendingEvent = new PendingEvent(event);
+        final EventStripe stripe = getStripe(event.getSearchKey1());
+        stripe.pendingEvents.add(pendingEvent);
+
+        // Whoever holds the lock publishes the events queued so far, including ours if we were waiting behind it
+        while (!pendingEvent.processed) {
+            stripe.lock.lock();
+            try {
+                if (!pendingEvent.processed) {
+                    publishPendingEvents(stripe);
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+
+        if (!pendingEvent.published) {
+            throw pendingEvent.failure != null ? pendingEvent.failure : new IllegalStateException("Failed to dispatch external bus event for " + event);
+        }
+    }
+
+    @Managed(description = "Number of internal events processed")
+    public long getNbEvents() {
+        return nbEvents.get();
+    }
+
+    @Managed(description = "Number of batches of external events published")
+    public long getNbBatches() {
+        return nbBatches.get();
+    }
+
+    @Managed(description = "Average number of events per batch")
+    public double getAverageBatchSize() {
+        final long batches = nbBatches.get();
+        return batches == 0 ? 0 : (double) nbEvents.get() / batches;
+    }
+
+    @Managed(description = "Largest batch of external events published")
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    @Managed(description = "Average time between the reception of an internal event and the publication of the external event (ms)")
+    public double getAverageLagMs() {
+        final long events = nbEvents.get();
+        return events == 0 ? 0 : (double) totalLagMs.get() / events;
+    }
+
+    @Managed(description = "Maximum time between the reception of an internal event and the publication of the external event (ms)")
+    public long getMaxLagMs() {
+        return maxLagMs.get();
+    }
+
+    private EventStripe getStripe(final Long accountRecordId) {
+        if (accountRecordId == null) {
+            return stripes[0];
+        }
+        return stripes[(int) Math.abs(accountRecordId % NB_STRIPES)];
+    }
+
+    // Must be called with the stripe lock held
+    private void publishPendingEvents(final EventStripe stripe) {
+        final List<PendingEvent> batch = new LinkedList<PendingEvent>();
+        PendingEvent polledEvent;
+        while (batch.size() < MAX_BATCH_SIZE && (polledEvent = stripe.pendingEvents.poll()) != null) {
+            batch.add(polledEvent);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
 
-        final InternalCallContext internalContext = internalCallContextFactory.createInternalCallContext(event.getSearchKey2(), event.getSearchKey1(), "BeatrixListener", CallOrigin.INTERNAL, UserType.SYSTEM, event.getUserToken());
         try {
-            final BusEvent externalEvent = computeExtBusEventEntryFromBusInternalEvent(event, internalContext);
-            if (externalEvent != null) {
-                externalBus.post(externalEvent);
+            final List<PendingEvent> toBePosted = computeExtBusEvents(batch);
+            try {
+                postExtBusEvents(toBePosted);
+            } catch (RuntimeException e) {
+                if (toBePosted.size() == 1) {
+                    log.warn("Failed to dispatch external bus event for " + toBePosted.get(0).event, e);
+                    toBePosted.get(0).failure = e;
+                    return;
+                }
+
+                // Don't let one bad event fail the others: post each of them in its own transaction
+                log.warn("Failed to dispatch a batch of " + toBePosted.size() + " external bus events, retrying them one by one", e);
+                for (final PendingEvent pendingEvent : toBePosted) {
+                    try {
+                        postExtBusEvents(ImmutableList.<PendingEvent>of(pendingEvent));
+                    } catch (RuntimeException eventException) {
+                        log.warn("Failed to dispatch external bus event for " + pendingEvent.event, eventException);
+                        pendingEvent.failure = eventException;
+                    }
+                }
+            }
+        } finally {
+            final long now = System.currentTimeMillis();
+            int nbPublished = 0;
+            for (final PendingEvent pendingEvent : batch) {
+                if (pendingEvent.published) {
+                    nbPublished++;
+                    recordLag(now - pendingEvent.receivedTimeMs);
+                }
+                pendingEvent.processed = true;
+            }
+            if (nbPublished > 0) {
+                nbEvents.addAndGet(nbPublished);
+                nbBatches.incrementAndGet();
+                updateMax(maxBatchSize, nbPublished);
+            }
+        }
+    }
+
+    // Returns the events which have an external event to post. Events without one are published right away.
+    private List<PendingEvent> computeExtBusEvents(final List<PendingEvent> batch) {
+        // Events of a stripe mostly belong to the same account: resolve the account ids once per batch
+        final Map<Long, UUID> accountIdsByRecordId = new HashMap<Long, UUID>();
+
+        final List<PendingEvent> toBePosted = new LinkedList<PendingEvent>();
+        for (final PendingEvent pendingEvent : batch) {
+            final BusInternalEvent event = pendingEvent.event;
+            try {
+                final InternalCallContext internalContext = internalCallContextFactory.createInternalCallContext(event.getSearchKey2(), event.getSearchKey1(), "BeatrixListener", CallOrigin.INTERNAL, UserType.SYSTEM, event.getUserToken());
+                pendingEvent.externalEvent = computeExtBusEventEntryFromBusInternalEvent(event, internalContext, accountIdsByRecordId);
+            } catch (RuntimeException e) {
+                log.warn("Failed to compute external bus event for " + event, e);
+                pendingEvent.failure = e;
+                continue;
+            }
+
+            if (pendingEvent.externalEvent == null) {
+                pendingEvent.published = true;
+            } else {
+                toBePosted.add(pendingEvent);
+            }
+        }
+        return toBePosted;
+    }
+
+    private void postExtBusEvents(final List<PendingEvent> toBePosted) {
+        if (toBePosted.isEmpty()) {
+            return;
+        }
+
+        transactionalSqlDao.inTransaction(new Transaction<Void, ExtBusTransactionalSqlDao>() {
+            @Override
+            public Void inTransaction(final ExtBusTransactionalSqlDao transactional, final TransactionStatus status) throws Exception {
+                for (final PendingEvent pendingEvent : toBePosted) {
+                    externalBus.postFromTransaction(pendingEvent.externalEvent, transactional);
+                }
+                return null;
             }
-        } catch (EventBusException e) {
-            log.warn("Failed to dispatch external bus events", e);
+        });
+
+        // Committed
+        for (final PendingEvent pendingEvent : toBePosted) {
+            pendingEvent.published = true;
         }
     }
 
+    private void recordLag(final long lagMs) {
+        totalLagMs.addAndGet(lagMs);
+        updateMax(maxLagMs, lagMs);
+    }
 
-    private BusEvent computeExtBusEventEntryFromBusInternalEvent(final BusInternalEvent event, final InternalCallContext context) {
+    private static void updateMax(final AtomicLong max, final long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    private BusEvent computeExtBusEventEntryFromBusInternalEvent(final BusInternalEvent event, final InternalCallContext context, final Map<Long, UUID> accountIdsByRecordId) {
 
         ObjectType objectType = null;
         UUID objectId = null;
@@ -238,28 +436,58 @@ public class
 
             default:
         }
-        final UUID accountId = getAccountIdFromRecordId(event.getBusEventType(), objectId, context.getAccountRecordId(), context);
-        final UUID tenantId = nonEntityDao.retrieveIdFromObject(context.getTenantRecordId(), ObjectType.TENANT);
+        final UUID accountId = getAccountIdFromRecordId(event.getBusEventType(), objectId, context.getAccountRecordId(), context, accountIdsByRecordId);
+        final UUID tenantId = nonEntityDao.retrieveIdFromObject(context.getTenantRecordId(), ObjectType.TENANT, cacheControllerDispatcher.getCacheController(CacheType.OBJECT_ID));
 
         return eventBusType != null ?
                new DefaultBusExternalEvent(objectId, objectType, eventBusType, accountId, tenantId, context.getAccountRecordId(), context.getTenantRecordId(), context.getUserToken()) :
                null;
     }
 
-    private final UUID getAccountIdFromRecordId(final BusInternalEventType eventType, final UUID objectId, final Long recordId, final InternalCallContext context) {
+    private UUID getAccountIdFromRecordId(final BusInternalEventType eventType, final UUID objectId, final Long recordId, final InternalCallContext context,
+                                          final Map<Long, UUID> accountIdsByRecordId) {
 
         // accountRecord_id is not set for ACCOUNT_CREATE event as we are in the transaction and value is known yet
         if (eventType == BusInternalEventType.ACCOUNT_CREATE) {
             return objectId;
         }
+        if (accountIdsByRecordId.containsKey(recordId)) {
+            return accountIdsByRecordId.get(recordId);
+        }
+
+        UUID accountId;
         try {
             final Account account = accountApi.getAccountByRecordId(recordId, context);
-            return account.getId();
+            accountId = account.getId();
         } catch (final AccountApiException e) {
             log.warn("Failed to retrieve acount from recordId {}", recordId);
-            return null;
+            accountId = null;
         }
+        accountIdsByRecordId.put(recordId, accountId);
+        return accountId;
     }
 
+    private static final class EventStripe {
 
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ConcurrentLinkedQueue<PendingEvent> pendingEvents = new ConcurrentLinkedQueue<PendingEvent>();
+    }
+
+    private static final class PendingEvent {
+
+        private final BusInternalEvent event;
+        private final long receivedTimeMs;
+        // Accessed with the stripe lock held
+        private BusEvent externalEvent;
+        // Set (with the stripe lock held) once the batch containing the event has been processed
+        private volatile boolean processed = false;
+        // Whether the external event (if any) has been committed
+        private volatile boolean published = false;
+        private volatile RuntimeException failure;
+
+        private PendingEvent(final BusInternalEvent event) {
+            this.event = event;
+            this.receivedTimeMs = System.currentTimeMillis();
+        }
+    }
 }
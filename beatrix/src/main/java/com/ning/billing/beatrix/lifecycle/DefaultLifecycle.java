@@ -17,13 +17,20 @@
 package com.ning.billing.beatrix.lifecycle;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +42,7 @@ import com.ning.billing.lifecycle.LifecycleHandlerType.LifecycleLevel.Sequence;
 
 import com.google.common.base.Supplier;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.SetMultimap;
@@ -44,17 +52,24 @@ import com.google.inject.Injector;
 
 public class DefaultLifecycle implements Lifecycle {
 
+    // Whether handlers of independent services at the same level should be invoked in parallel (opt-in, sequential by default)
+    public static final String KILLBILL_PARALLEL_LIFECYCLE_PROPERTY = "killbill.server.lifecycle.parallel";
+
+    private static final String LIFECYCLE_THREAD_PREFIX = "lifecycle-";
+
     private static final Logger log = LoggerFactory.getLogger(DefaultLifecycle.class);
     private final SetMultimap<LifecycleLevel, LifecycleHandler<? extends KillbillService>> handlersByLevel;
 
-    private final ServiceFinder serviceFinder;
+    private final LifecycleHandlerIndex handlerIndex;
+    private final boolean parallel;
 
     protected final Injector injector;
 
     @Inject
     public DefaultLifecycle(final Injector injector) {
 
-        this.serviceFinder = new ServiceFinder(DefaultLifecycle.class.getClassLoader());
+        this.handlerIndex = new LifecycleHandlerIndex(DefaultLifecycle.class.getClassLoader());
+        this.parallel = Boolean.parseBoolean(System.getProperty(KILLBILL_PARALLEL_LIFECYCLE_PROPERTY, "false"));
         this.handlersByLevel = Multimaps.newSetMultimap(new ConcurrentHashMap<LifecycleLevel, Collection<LifecycleHandler<? extends KillbillService>>>(),
 
                                                         new Supplier<Set<LifecycleHandler<? extends KillbillService>>>() {
@@ -92,6 +107,8 @@ public class DefaultLifecycle implements Lifecycle {
     protected Set<? extends KillbillService> findServices() {
 
         final Set<KillbillService> result = new HashSet<KillbillService>();
+        // Created on demand, as sub-classes may not need to look for the services
+        final ServiceFinder serviceFinder = new ServiceFinder(DefaultLifecycle.class.getClassLoader());
         final Set<Class<? extends KillbillService>> services = serviceFinder.getServices();
         for (final Class<? extends KillbillService> cur : services) {
             log.debug("Found service {}", cur.getName());
@@ -125,18 +142,67 @@ public class DefaultLifecycle implements Lifecycle {
     private void doFireStage(final LifecycleLevel level) {
         log.info("Killbill lifecycle firing stage {}", level);
         final Set<LifecycleHandler<? extends KillbillService>> handlers = handlersByLevel.get(level);
+        if (!parallel || handlers.size() <= 1) {
+            for (final LifecycleHandler<? extends KillbillService> cur : handlers) {
+                invokeHandler(cur);
+            }
+            return;
+        }
+
+        // Handlers at the same level belong to independent services: invoke them in parallel (sequentially within a given
+        // service), and wait for all of them to complete before moving to the next level
+        final Multimap<KillbillService, LifecycleHandler<? extends KillbillService>> handlersByService = LinkedHashMultimap.create();
         for (final LifecycleHandler<? extends KillbillService> cur : handlers) {
+            handlersByService.put(cur.getTarget(), cur);
+        }
 
-            try {
-                final Method method = cur.getMethod();
-                final KillbillService target = cur.getTarget();
-                log.info("Killbill lifecycle calling handler {} for service {}", cur.getMethod().getName(), target.getName());
-                method.invoke(target);
-            } catch (final Exception e) {
-                logWarn("Killbill lifecycle failed to invoke lifecycle handler", e);
+        final ExecutorService executor = Executors.newFixedThreadPool(handlersByService.keySet().size(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread th = new Thread(r);
+                th.setName(LIFECYCLE_THREAD_PREFIX + level + "-" + th.getId());
+                return th;
+            }
+        });
+        try {
+            final List<Future<?>> futures = new ArrayList<Future<?>>(handlersByService.keySet().size());
+            for (final KillbillService service : handlersByService.keySet()) {
+                final Collection<LifecycleHandler<? extends KillbillService>> handlersForService = handlersByService.get(service);
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (final LifecycleHandler<? extends KillbillService> cur : handlersForService) {
+                            invokeHandler(cur);
+                        }
+                    }
+                }));
             }
+
+            for (final Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logWarn("Killbill lifecycle interrupted while firing stage " + level, e);
+                    return;
+                } catch (final ExecutionException e) {
+                    logWarn("Killbill lifecycle failed to invoke lifecycle handler", e);
+                }
+            }
+        } finally {
+            executor.shutdown();
         }
+    }
 
+    private void invokeHandler(final LifecycleHandler<? extends KillbillService> handler) {
+        try {
+            final Method method = handler.getMethod();
+            final KillbillService target = handler.getTarget();
+            log.info("Killbill lifecycle calling handler {} for service {}", method.getName(), target.getName());
+            method.invoke(target);
+        } catch (final Exception e) {
+            logWarn("Killbill lifecycle failed to invoke lifecycle handler", e);
+        }
     }
 
 
@@ -148,6 +214,16 @@ public class DefaultLifecycle implements Lifecycle {
     private Multimap<LifecycleLevel, LifecycleHandler<? extends KillbillService>> findAllHandlers(final KillbillService service) {
         final Multimap<LifecycleLevel, LifecycleHandler<? extends KillbillService>> methodsInService = HashMultimap.create();
         final Class<? extends KillbillService> clazz = service.getClass();
+
+        // Look at the build time index first, to avoid reflecting over all methods of the service
+        final Multimap<LifecycleLevel, Method> indexedHandlers = handlerIndex.getHandlers(clazz);
+        if (indexedHandlers != null) {
+            for (final Map.Entry<LifecycleLevel, Method> entry : indexedHandlers.entries()) {
+                methodsInService.put(entry.getKey(), new LifecycleHandler<KillbillService>(service, entry.getValue()));
+            }
+            return methodsInService;
+        }
+
         for (final Method method : clazz.getMethods()) {
             final LifecycleHandlerType annotation = method.getAnnotation(LifecycleHandlerType.class);
             if (annotation != null) {
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.beatrix.lifecycle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ning.billing.lifecycle.LifecycleHandlerType.LifecycleLevel;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+
+/**
+ * Lifecycle handlers index generated at build time by the killbill-processor module (see LifecycleIndexProcessor).
+ */
+public class LifecycleHandlerIndex {
+
+    public static final String LIFECYCLE_HANDLERS_INDEX = "META-INF/killbill/lifecycle-handlers.properties";
+
+    private static final Logger log = LoggerFactory.getLogger(LifecycleHandlerIndex.class);
+
+    private static final Splitter HANDLERS_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    // Service implementation class name -> comma separated list of method:LEVEL
+    private final Map<String, String> handlersByClassName = new HashMap<String, String>();
+
+    public LifecycleHandlerIndex(final ClassLoader loader) {
+        try {
+            final Enumeration<URL> indexes = loader.getResources(LIFECYCLE_HANDLERS_INDEX);
+            while (indexes.hasMoreElements()) {
+                load(indexes.nextElement());
+            }
+        } catch (final IOException e) {
+            log.warn("Unable to read the lifecycle handlers index, falling back to reflection", e);
+            handlersByClassName.clear();
+        }
+    }
+
+    public boolean isEmpty() {
+        return handlersByClassName.isEmpty();
+    }
+
+    /**
+     * Retrieve the lifecycle handlers of a service implementation, including the inherited ones.
+     *
+     * @param clazz service implementation class (potentially enhanced by Guice)
+     * @return the handlers by level, or null if the class isn't indexed
+     */
+    public Multimap<LifecycleLevel, Method> getHandlers(final Class<?> clazz) {
+        final Multimap<LifecycleLevel, Method> handlers = HashMultimap.create();
+
+        boolean indexed = false;
+        for (Class<?> cur = clazz; cur != null && cur != Object.class; cur = cur.getSuperclass()) {
+            final String handlersForClass = handlersByClassName.get(cur.getName());
+            if (handlersForClass == null) {
+                continue;
+            }
+
+            indexed = true;
+            for (final String handler : HANDLERS_SPLITTER.split(handlersForClass)) {
+                final Method method = getHandlerMethod(clazz, handler);
+                if (method == null) {
+                    // Stale index
+                    return null;
+                }
+                handlers.put(getHandlerLevel(handler), method);
+            }
+        }
+
+        return indexed ? handlers : null;
+    }
+
+    private Method getHandlerMethod(final Class<?> clazz, final String handler) {
+        final String methodName = handler.substring(0, handler.indexOf(':')).trim();
+        try {
+            return clazz.getMethod(methodName);
+        } catch (final NoSuchMethodException e) {
+            log.warn("Lifecycle handler {} not found on {}", methodName, clazz.getName());
+            return null;
+        }
+    }
+
+    private LifecycleLevel getHandlerLevel(final String handler) {
+        final String level = handler.substring(handler.lastIndexOf(':') + 1).trim();
+        return LifecycleLevel.valueOf(level);
+    }
+
+    private void load(final URL index) throws IOException {
+        log.debug("Loading lifecycle handlers index {}", index);
+
+        final Properties properties = new Properties();
+        final InputStream inputStream = index.openStream();
+        try {
+            properties.load(inputStream);
+        } finally {
+            inputStream.close();
+        }
+
+        for (final String className : properties.stringPropertyNames()) {
+            handlersByClassName.put(className, properties.getProperty(className));
+        }
+    }
+}
@@ -16,8 +16,10 @@
 
 package com.ning.billing.beatrix.lifecycle;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -36,6 +38,9 @@ import com.ning.billing.lifecycle.KillbillService;
 
 public class ServiceFinder {
 
+    // Generated at build time by the killbill-processor module (see LifecycleIndexProcessor)
+    public static final String SERVICES_INDEX = "META-INF/killbill/services";
+
     private static final Logger log = LoggerFactory.getLogger(ServiceFinder.class);
 
     private final ClassLoader loader;
@@ -56,17 +61,68 @@ public class ServiceFinder {
     }
 
     private Set<Class<? extends KillbillService>> initialize() {
+        final Set<String> packageFilter = new HashSet<String>();
+        packageFilter.add("com.ning.billing");
+        final String jarFilter = "killbill";
+
+        final Set<Class<? extends KillbillService>> indexedServices = findIndexedClasses(loader);
         try {
+            if (indexedServices == null) {
+                log.info("Unable to read the Kill Bill services index, scanning the classpath");
+                return findClasses(loader, KillbillService.class.getName(), jarFilter, packageFilter, false);
+            }
 
-            final Set<String> packageFilter = new HashSet<String>();
-            packageFilter.add("com.ning.billing");
-            final String jarFilter = "killbill";
-            return findClasses(loader, KillbillService.class.getName(), jarFilter, packageFilter);
+            // The index is incomplete if some classpath entries were built without the killbill-processor: scan these ones only
+            final Set<Class<? extends KillbillService>> result = new HashSet<Class<? extends KillbillService>>(indexedServices);
+            result.addAll(findClasses(loader, KillbillService.class.getName(), jarFilter, packageFilter, true));
+            return result;
         } catch (ClassNotFoundException nfe) {
             throw new RuntimeException("Failed to initialize ClassFinder", nfe);
         }
     }
 
+    private static Set<Class<? extends KillbillService>> findIndexedClasses(final ClassLoader classLoader) {
+        final Set<Class<? extends KillbillService>> result = new HashSet<Class<? extends KillbillService>>();
+        try {
+            final Enumeration<URL> indexes = classLoader.getResources(SERVICES_INDEX);
+            while (indexes.hasMoreElements()) {
+                final URL index = indexes.nextElement();
+                log.debug("INDEX : {}", index);
+
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(index.openStream(), "UTF-8"));
+                try {
+                    String className;
+                    while ((className = reader.readLine()) != null) {
+                        className = className.trim();
+                        if (className.isEmpty()) {
+                            continue;
+                        }
+
+                        final Class<?> theClass;
+                        try {
+                            theClass = Class.forName(className, false, classLoader);
+                        } catch (ClassNotFoundException e) {
+                            log.warn("Indexed service {} not found", className);
+                            continue;
+                        } catch (NoClassDefFoundError e) {
+                            log.warn("Indexed service {} not found", className);
+                            continue;
+                        }
+                        if (theClass.isInterface() && KillbillService.class.isAssignableFrom(theClass)) {
+                            result.add((Class<? extends KillbillService>) theClass);
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Unable to read the Kill Bill services index", e);
+            return null;
+        }
+        return result;
+    }
+
     /*
      *  Code originally from Kris Dover <krisdover@hotmail.com> and adapted for my purpose.
      *
@@ -74,7 +130,8 @@ public class ServiceFinder {
     private static Set<Class<? extends KillbillService>> findClasses(final ClassLoader classLoader,
                                                                      final String interfaceFilter,
                                                                      final String jarFilter,
-                                                                     final Set<String> packageFilter)
+                                                                     final Set<String> packageFilter,
+                                                                     final boolean skipIndexedEntries)
             throws ClassNotFoundException {
 
         final Set<Class<? extends KillbillService>> result = new HashSet<Class<? extends KillbillService>>();
@@ -104,6 +161,9 @@ public class ServiceFinder {
             // Check if the protocol is "file". For example, if classPath is http://felix.extensions:9/,
             // the file will be "/" and we don't want to scan the full filesystem
             if ("file".equals(protocol) && classPath.isDirectory()) {
+                if (skipIndexedEntries && new File(classPath, SERVICES_INDEX).isFile()) {
+                    continue;
+                }
                 log.debug("DIR : " + classPath);
 
                 final List<String> dirListing = new ArrayList<String>();
@@ -111,8 +171,6 @@ public class ServiceFinder {
                 files = Collections.enumeration(dirListing);
             } else if (classPath.getName().endsWith(".jar")) {
 
-                log.debug("JAR : " + classPath);
-
                 final String[] jarParts = classPath.getName().split("/");
                 final String jarName = jarParts[jarParts.length - 1];
                 if (jarFilter != null && jarName != null && !jarName.startsWith(jarFilter)) {
@@ -129,6 +187,11 @@ public class ServiceFinder {
                                                              "' could not be instantiate from file path. Error: " + io.getMessage());
                 }
                 if (!failed) {
+                    if (skipIndexedEntries && module.getEntry(SERVICES_INDEX) != null) {
+                        closeModule(module, classPath);
+                        continue;
+                    }
+                    log.debug("JAR : " + classPath);
                     files = module.entries();
                 }
             }
@@ -176,17 +239,21 @@ public class ServiceFinder {
                 }
             }
             if (module != null) {
-                try {
-                    module.close();
-                } catch (IOException ioe) {
-                    throw new ClassNotFoundException("The module jar file '" + classPath.getName() +
-                                                             "' could not be closed. Error: " + ioe.getMessage());
-                }
+                closeModule(module, classPath);
             }
         }
         return result;
     }
 
+    private static void closeModule(final JarFile module, final File classPath) throws ClassNotFoundException {
+        try {
+            module.close();
+        } catch (IOException ioe) {
+            throw new ClassNotFoundException("The module jar file '" + classPath.getName() +
+                                                     "' could not be closed. Error: " + ioe.getMessage());
+        }
+    }
+
     private static Class<?>[] getAllInterfaces(final Class<?> theClass) {
         final Set<Class<?>> superInterfaces = new HashSet<Class<?>>();
         final Class<?>[] classInterfaces = theClass.getInterfaces();
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.beatrix.extbus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.Transaction;
+import org.skife.jdbi.v2.sqlobject.mixins.Transmogrifier;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ning.billing.ObjectType;
+import com.ning.billing.account.api.Account;
+import com.ning.billing.beatrix.BeatrixTestSuite;
+import com.ning.billing.bus.api.BusEvent;
+import com.ning.billing.bus.api.PersistentBus;
+import com.ning.billing.clock.ClockMock;
+import com.ning.billing.notification.plugin.api.ExtBusEventType;
+import com.ning.billing.util.cache.CacheController;
+import com.ning.billing.util.cache.CacheControllerDispatcher;
+import com.ning.billing.util.callcontext.InternalCallContextFactory;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.dao.NonEntityDao;
+import com.ning.billing.util.events.BusInternalEvent.BusInternalEventType;
+import com.ning.billing.util.events.InvoiceCreationInternalEvent;
+import com.ning.billing.util.svcapi.account.AccountInternalApi;
+
+public class TestBeatrixListener extends BeatrixTestSuite {
+
+    private static final int NB_ACCOUNTS = 8;
+
+    private final UUID tenantId = UUID.randomUUID();
+
+    private PersistentBus externalBus;
+    private AccountInternalApi accountApi;
+    private List<DefaultBusExternalEvent> postedEvents;
+    // Events posted in the current (mock) transaction, only visible in postedEvents once committed
+    private ThreadLocal<List<DefaultBusExternalEvent>> eventsInTransaction;
+    private volatile UUID poisonedInvoiceId;
+    private List<RuntimeException> handlerFailures;
+    private CountDownLatch firstPostLatch;
+    private BeatrixListener listener;
+
+    @BeforeMethod(groups = "fast")
+    public void beforeMethod() throws Exception {
+        postedEvents = Collections.synchronizedList(new LinkedList<DefaultBusExternalEvent>());
+        eventsInTransaction = new ThreadLocal<List<DefaultBusExternalEvent>>();
+        poisonedInvoiceId = null;
+        handlerFailures = Collections.synchronizedList(new LinkedList<RuntimeException>());
+        firstPostLatch = null;
+
+        externalBus = Mockito.mock(PersistentBus.class);
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                final CountDownLatch latch = firstPostLatch;
+                if (latch != null) {
+                    Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+                }
+                final DefaultBusExternalEvent externalEvent = (DefaultBusExternalEvent) invocation.getArguments()[0];
+                if (externalEvent.getObjectId().equals(poisonedInvoiceId)) {
+                    throw new RuntimeException("Poisoned event " + poisonedInvoiceId);
+                }
+                eventsInTransaction.get().add(externalEvent);
+                return null;
+            }
+        }).when(externalBus).postFromTransaction(Mockito.<BusEvent>any(), Mockito.<Transmogrifier>any());
+
+        accountApi = Mockito.mock(AccountInternalApi.class);
+        for (long accountRecordId = 1; accountRecordId <= NB_ACCOUNTS; accountRecordId++) {
+            final Account account = Mockito.mock(Account.class);
+            Mockito.when(account.getId()).thenReturn(new UUID(0L, accountRecordId));
+            Mockito.when(accountApi.getAccountByRecordId(Mockito.eq(accountRecordId), Mockito.<InternalTenantContext>any())).thenReturn(account);
+        }
+
+        final NonEntityDao nonEntityDao = Mockito.mock(NonEntityDao.class);
+        Mockito.when(nonEntityDao.retrieveIdFromObject(Mockito.anyLong(), Mockito.eq(ObjectType.TENANT), Mockito.<CacheController<Object, Object>>any())).thenReturn(tenantId);
+
+        final ExtBusTransactionalSqlDao sqlDao = Mockito.mock(ExtBusTransactionalSqlDao.class);
+        Mockito.when(sqlDao.inTransaction(Mockito.<Transaction<Void, ExtBusTransactionalSqlDao>>any())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws Throwable {
+                eventsInTransaction.set(new LinkedList<DefaultBusExternalEvent>());
+                try {
+                    final Object result = ((Transaction<Void, ExtBusTransactionalSqlDao>) invocation.getArguments()[0]).inTransaction(sqlDao, null);
+                    postedEvents.addAll(eventsInTransaction.get());
+                    return result;
+                } finally {
+                    eventsInTransaction.remove();
+                }
+            }
+        });
+        final IDBI dbi = Mockito.mock(IDBI.class);
+        Mockito.when(dbi.onDemand(ExtBusTransactionalSqlDao.class)).thenReturn(sqlDao);
+
+        final CacheControllerDispatcher cacheControllerDispatcher = new CacheControllerDispatcher();
+        final InternalCallContextFactory internalCallContextFactory = new InternalCallContextFactory(new ClockMock(), nonEntityDao, cacheControllerDispatcher);
+        listener = new BeatrixListener(externalBus, internalCallContextFactory, accountApi, nonEntityDao, cacheControllerDispatcher, dbi);
+    }
+
+    @Test(groups = "fast")
+    public void testEventsArePublished() throws Exception {
+        final UUID invoiceId = UUID.randomUUID();
+        listener.handleAllInternalKillbillEvents(createInvoiceCreationEvent(invoiceId, 3L));
+
+        Assert.assertEquals(postedEvents.size(), 1);
+        final DefaultBusExternalEvent externalEvent = postedEvents.get(0);
+        Assert.assertEquals(externalEvent.getObjectId(), invoiceId);
+        Assert.assertEquals(externalEvent.getObjectType(), ObjectType.INVOICE);
+        Assert.assertEquals(externalEvent.getEventType(), ExtBusEventType.INVOICE_CREATION);
+        Assert.assertEquals(externalEvent.getAccountId(), new UUID(0L, 3L));
+        Assert.assertEquals(externalEvent.getTenantId(), tenantId);
+
+        Assert.assertEquals(listener.getNbEvents(), 1);
+        Assert.assertEquals(listener.getNbBatches(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testPerAccountOrderAcrossParallelAccounts() throws Exception {
+        final int nbEventsPerAccount = 50;
+
+        final List<List<UUID>> invoiceIdsPerAccount = new ArrayList<List<UUID>>();
+        final ExecutorService executor = Executors.newFixedThreadPool(NB_ACCOUNTS);
+        try {
+            final List<Future<?>> futures = new LinkedList<Future<?>>();
+            for (int i = 0; i < NB_ACCOUNTS; i++) {
+                final List<UUID> invoiceIds = new LinkedList<UUID>();
+                final List<InvoiceCreationInternalEvent> events = new LinkedList<InvoiceCreationInternalEvent>();
+                for (int j = 0; j < nbEventsPerAccount; j++) {
+                    final UUID invoiceId = UUID.randomUUID();
+                    invoiceIds.add(invoiceId);
+                    events.add(createInvoiceCreationEvent(invoiceId, (long) i + 1));
+                }
+                invoiceIdsPerAccount.add(invoiceIds);
+
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (final InvoiceCreationInternalEvent event : events) {
+                            listener.handleAllInternalKillbillEvents(event);
+                        }
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(postedEvents.size(), NB_ACCOUNTS * nbEventsPerAccount);
+        for (int i = 0; i < NB_ACCOUNTS; i++) {
+            final UUID accountId = new UUID(0L, i + 1);
+            final List<UUID> publishedInvoiceIds = new LinkedList<UUID>();
+            for (final DefaultBusExternalEvent externalEvent : postedEvents) {
+                if (accountId.equals(externalEvent.getAccountId())) {
+                    publishedInvoiceIds.add(externalEvent.getObjectId());
+                }
+            }
+            Assert.assertEquals(publishedInvoiceIds, invoiceIdsPerAccount.get(i));
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testEventsPilingUpArePublishedInOneBatch() throws Exception {
+        final int nbWaitingEvents = 5;
+        firstPostLatch = new CountDownLatch(1);
+
+        // The first event blocks the publication for the account
+        final Thread firstThread = startHandlerThread(UUID.randomUUID(), 1L);
+        waitForState(firstThread, Thread.State.TIMED_WAITING);
+
+        final List<Thread> waitingThreads = new LinkedList<Thread>();
+        for (int i = 0; i < nbWaitingEvents; i++) {
+            waitingThreads.add(startHandlerThread(UUID.randomUUID(), 1L));
+        }
+        for (final Thread waitingThread : waitingThreads) {
+            waitForState(waitingThread, Thread.State.WAITING);
+        }
+
+        firstPostLatch.countDown();
+        firstThread.join(10000);
+        for (final Thread waitingThread : waitingThreads) {
+            waitingThread.join(10000);
+        }
+
+        Assert.assertEquals(postedEvents.size(), nbWaitingEvents + 1);
+        Assert.assertEquals(listener.getNbEvents(), nbWaitingEvents + 1);
+        Assert.assertEquals(listener.getNbBatches(), 2);
+        Assert.assertEquals(listener.getMaxBatchSize(), nbWaitingEvents);
+        Assert.assertTrue(listener.getMaxLagMs() >= 0);
+    }
+
+    @Test(groups = "fast")
+    public void testFailedEventIsRethrownByItsHandlerOnly() throws Exception {
+        final int nbWaitingEvents = 5;
+        firstPostLatch = new CountDownLatch(1);
+        poisonedInvoiceId = UUID.randomUUID();
+
+        final Thread firstThread = startHandlerThread(UUID.randomUUID(), 1L);
+        waitForState(firstThread, Thread.State.TIMED_WAITING);
+
+        // The poisoned event ends up in the middle of the next batch
+        final List<UUID> goodInvoiceIds = new LinkedList<UUID>();
+        final List<Thread> waitingThreads = new LinkedList<Thread>();
+        for (int i = 0; i < nbWaitingEvents; i++) {
+            final UUID invoiceId = (i == 2) ? poisonedInvoiceId : UUID.randomUUID();
+            if (i != 2) {
+                goodInvoiceIds.add(invoiceId);
+            }
+            final Thread waitingThread = startHandlerThread(invoiceId, 1L);
+            waitForState(waitingThread, Thread.State.WAITING);
+            waitingThreads.add(waitingThread);
+        }
+
+        firstPostLatch.countDown();
+        firstThread.join(10000);
+        for (final Thread waitingThread : waitingThreads) {
+            waitingThread.join(10000);
+        }
+
+        // Only the handler of the poisoned event failed (and will be retried by the bus)
+        Assert.assertEquals(handlerFailures.size(), 1);
+        Assert.assertTrue(handlerFailures.get(0).getMessage().contains(poisonedInvoiceId.toString()));
+
+        // The other events of the batch were published, exactly once
+        Assert.assertEquals(postedEvents.size(), nbWaitingEvents);
+        final List<UUID> publishedInvoiceIds = new LinkedList<UUID>();
+        for (final DefaultBusExternalEvent externalEvent : postedEvents.subList(1, postedEvents.size())) {
+            publishedInvoiceIds.add(externalEvent.getObjectId());
+        }
+        Assert.assertEquals(publishedInvoiceIds, goodInvoiceIds);
+        Assert.assertEquals(listener.getNbEvents(), nbWaitingEvents);
+    }
+
+    private Thread startHandlerThread(final UUID invoiceId, final Long accountRecordId) {
+        final InvoiceCreationInternalEvent event = createInvoiceCreationEvent(invoiceId, accountRecordId);
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    listener.handleAllInternalKillbillEvents(event);
+                } catch (RuntimeException e) {
+                    handlerFailures.add(e);
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private void waitForState(final Thread thread, final Thread.State state) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (thread.getState() != state && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(thread.getState(), state);
+    }
+
+    private InvoiceCreationInternalEvent createInvoiceCreationEvent(final UUID invoiceId, final Long accountRecordId) {
+        final InvoiceCreationInternalEvent event = Mockito.mock(InvoiceCreationInternalEvent.class);
+        Mockito.when(event.getBusEventType()).thenReturn(BusInternalEventType.INVOICE_CREATION);
+        Mockito.when(event.getInvoiceId()).thenReturn(invoiceId);
+        Mockito.when(event.getSearchKey1()).thenReturn(accountRecordId);
+        Mockito.when(event.getSearchKey2()).thenReturn(1L);
+        return event;
+    }
+}
@@ -33,6 +33,7 @@ import com.ning.billing.entitlement.api.Entitlement.EntitlementState;
 import com.ning.billing.util.svcapi.junction.DefaultBlockingState;
 
 import static junit.framework.Assert.assertTrue;
+import static org.testng.Assert.assertEquals;
 
 @Test(groups = "slow")
 public class TestOverdueWithSubscriptionCancellation extends TestOverdueBase {
@@ -91,4 +92,34 @@ public class TestOverdueWithSubscriptionCancellation extends TestOverdueBase {
         final SubscriptionBase cancelledBaseSubscription = ((DefaultEntitlement) entitlementApi.getEntitlementForId(baseEntitlement.getId(), callContext)).getSubscriptionBase();
         assertTrue(cancelledBaseSubscription.getState() == EntitlementState.CANCELLED);
     }
+
+    @Test(groups = "slow")
+    public void testCheckSubscriptionsCancellationTriggersSingleInvoiceRun() throws Exception {
+        clock.setTime(new DateTime(2012, 5, 1, 0, 3, 42, 0));
+
+        // Set next invoice to fail and create two subscriptions
+        paymentPlugin.makeAllInvoicesFailWithError(true);
+        final DefaultEntitlement baseEntitlement = createBaseEntitlementAndCheckForCompletion(account.getId(), "externalKey", productName, ProductCategory.BASE, term, NextEvent.CREATE, NextEvent.INVOICE);
+        final DefaultEntitlement baseEntitlement2 = createBaseEntitlementAndCheckForCompletion(account.getId(), "externalKey2", productName, ProductCategory.BASE, term, NextEvent.CREATE, NextEvent.INVOICE);
+
+        // DAY 30 have to get out of trial before first payment -- both subscriptions are on the same invoice
+        addDaysAndCheckForCompletion(30, NextEvent.PHASE, NextEvent.PHASE, NextEvent.INVOICE, NextEvent.PAYMENT_ERROR);
+
+        invoiceChecker.checkInvoice(account.getId(), 3, callContext,
+                                    new ExpectedInvoiceItemCheck(new LocalDate(2012, 5, 31), new LocalDate(2012, 6, 30), InvoiceItemType.RECURRING, new BigDecimal("249.95")),
+                                    new ExpectedInvoiceItemCheck(new LocalDate(2012, 5, 31), new LocalDate(2012, 6, 30), InvoiceItemType.RECURRING, new BigDecimal("249.95")));
+        checkODState(DefaultBlockingState.CLEAR_STATE_NAME);
+
+        // DAY 36 -- RIGHT AFTER OD1: both subscriptions are cancelled in bulk, and the invoice is only repaired once
+        // (an invoice run per cancellation would post an INVOICE_ADJUSTMENT each, failing the test on the unexpected event)
+        addDaysAndCheckForCompletion(6, NextEvent.CANCEL, NextEvent.CANCEL, NextEvent.INVOICE_ADJUSTMENT);
+
+        checkODState("OD1");
+        assertEquals(invoiceUserApi.getInvoicesByAccount(account.getId(), callContext).size(), 3);
+
+        for (final DefaultEntitlement entitlement : new DefaultEntitlement[]{baseEntitlement, baseEntitlement2}) {
+            final SubscriptionBase cancelledBaseSubscription = ((DefaultEntitlement) entitlementApi.getEntitlementForId(entitlement.getId(), callContext)).getSubscriptionBase();
+            assertTrue(cancelledBaseSubscription.getState() == EntitlementState.CANCELLED);
+        }
+    }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.beatrix.lifecycle;
+
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.billing.beatrix.BeatrixTestSuite;
+import com.ning.billing.beatrix.lifecycle.TestLifecycle.Service1;
+import com.ning.billing.beatrix.lifecycle.TestLifecycle.Service1Interface;
+import com.ning.billing.beatrix.lifecycle.TestLifecycle.Service2Interface;
+import com.ning.billing.lifecycle.KillbillService;
+import com.ning.billing.lifecycle.LifecycleHandlerType;
+import com.ning.billing.lifecycle.LifecycleHandlerType.LifecycleLevel;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimap;
+import com.google.inject.Guice;
+import com.google.inject.Stage;
+
+public class TestLifecycleIndex extends BeatrixTestSuite {
+
+    public static class LatchService implements KillbillService {
+
+        private final CountDownLatch latch;
+        private volatile boolean released = false;
+
+        public LatchService(final CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @LifecycleHandlerType(LifecycleLevel.INIT_BUS)
+        public void initBus() throws InterruptedException {
+            latch.countDown();
+            // Only completes if the other service at the same level runs concurrently
+            released = latch.await(5, TimeUnit.SECONDS);
+        }
+
+        public boolean isReleased() {
+            return released;
+        }
+
+        @Override
+        public String getName() {
+            return "latch-service";
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testServicesIndex() throws Exception {
+        final Set<Class<? extends KillbillService>> services = new ServiceFinder(TestLifecycleIndex.class.getClassLoader()).getServices();
+        Assert.assertTrue(services.contains(Service1Interface.class));
+        Assert.assertTrue(services.contains(Service2Interface.class));
+    }
+
+    @Test(groups = "fast")
+    public void testLifecycleHandlersIndex() throws Exception {
+        final LifecycleHandlerIndex handlerIndex = new LifecycleHandlerIndex(TestLifecycleIndex.class.getClassLoader());
+        Assert.assertFalse(handlerIndex.isEmpty());
+
+        final Multimap<LifecycleLevel, Method> handlers = handlerIndex.getHandlers(Service1.class);
+        Assert.assertNotNull(handlers);
+        Assert.assertEquals(handlers.size(), 3);
+        Assert.assertEquals(handlers.get(LifecycleLevel.INIT_BUS), ImmutableSet.<Method>of(Service1.class.getMethod("initBus")));
+        Assert.assertEquals(handlers.get(LifecycleLevel.START_SERVICE), ImmutableSet.<Method>of(Service1.class.getMethod("startService")));
+        Assert.assertEquals(handlers.get(LifecycleLevel.SHUTDOWN), ImmutableSet.<Method>of(Service1.class.getMethod("shutdownService")));
+
+        // Not a service
+        Assert.assertNull(handlerIndex.getHandlers(TestLifecycleIndex.class));
+    }
+
+    @Test(groups = "fast")
+    public void testHandlersAtSameLevelRunInParallel() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(2);
+        final LatchService service1 = new LatchService(latch);
+        final LatchService service2 = new LatchService(latch);
+
+        final DefaultLifecycle lifecycle;
+        System.setProperty(DefaultLifecycle.KILLBILL_PARALLEL_LIFECYCLE_PROPERTY, "true");
+        try {
+            lifecycle = new DefaultLifecycle(Guice.createInjector(Stage.DEVELOPMENT)) {
+                @Override
+                protected Set<? extends KillbillService> findServices() {
+                    return ImmutableSet.<KillbillService>of(service1, service2);
+                }
+            };
+        } finally {
+            System.clearProperty(DefaultLifecycle.KILLBILL_PARALLEL_LIFECYCLE_PROPERTY);
+        }
+        lifecycle.fireStartupSequencePriorEventRegistration();
+
+        Assert.assertTrue(service1.isReleased());
+        Assert.assertTrue(service2.isReleased());
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compare two JSON result files produced by BenchmarkRunner, typically from two different commits:
+ * <p/>
+ * java -cp killbill-benchmarks-*-benchmarks.jar com.ning.billing.benchmarks.BenchmarkResultsComparator baseline.json candidate.json
+ * <p/>
+ * Prints, for each benchmark (and set of parameters) present in both files, the baseline and candidate scores and the
+ * relative change. For the AverageTime mode used by the suites, a positive change means a regression.
+ */
+public class BenchmarkResultsComparator {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: BenchmarkResultsComparator <baseline.json> <candidate.json>");
+            System.exit(1);
+        }
+
+        final Map<String, JsonNode> baseline = readResults(new File(args[0]));
+        final Map<String, JsonNode> candidate = readResults(new File(args[1]));
+
+        System.out.println(String.format("%-100s %15s %15s %10s", "Benchmark", "Baseline", "Candidate", "Change"));
+        for (final String benchmark : baseline.keySet()) {
+            final JsonNode candidateMetric = candidate.get(benchmark);
+            if (candidateMetric == null) {
+                continue;
+            }
+
+            final JsonNode baselineMetric = baseline.get(benchmark);
+            final double baselineScore = baselineMetric.get("score").asDouble();
+            final double candidateScore = candidateMetric.get("score").asDouble();
+            final double change = baselineScore == 0 ? 0 : (candidateScore - baselineScore) * 100 / baselineScore;
+            System.out.println(String.format("%-100s %15.3f %15.3f %+9.2f%% (%s)", benchmark, baselineScore, candidateScore, change, candidateMetric.get("scoreUnit").asText()));
+        }
+    }
+
+    // Benchmark name and parameters -> primary metric
+    private static Map<String, JsonNode> readResults(final File file) throws IOException {
+        final Map<String, JsonNode> results = new LinkedHashMap<String, JsonNode>();
+        for (final JsonNode result : mapper.readTree(file)) {
+            final StringBuilder key = new StringBuilder(result.get("benchmark").asText());
+            final JsonNode params = result.get("params");
+            if (params != null) {
+                final Iterator<Map.Entry<String, JsonNode>> it = params.fields();
+                while (it.hasNext()) {
+                    final Map.Entry<String, JsonNode> param = it.next();
+                    key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+                }
+            }
+            results.put(key.toString(), result.get("primaryMetric"));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.benchmarks.catalog;
+
+import java.util.Date;
+
+import com.ning.billing.catalog.DefaultPlan;
+import com.ning.billing.catalog.MockCatalog;
+import com.ning.billing.catalog.MockPlan;
+
+/**
+ * Catalog version with an arbitrary number of (single evergreen phase) plans, named plan-0 to plan-(N-1).
+ */
+public class SyntheticCatalog extends MockCatalog {
+
+    public SyntheticCatalog(final Date effectiveDate, final int nbPlans) {
+        super();
+        setEffectiveDate(effectiveDate);
+
+        final DefaultPlan[] plans = new DefaultPlan[nbPlans];
+        for (int i = 0; i < nbPlans; i++) {
+            plans[i] = new MockPlan(planName(i));
+        }
+        setPlans(plans);
+        populatePriceLists();
+    }
+
+    public static String planName(final int i) {
+        return "plan-" + i;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.benchmarks.catalog;
+
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ning.billing.catalog.DefaultPlanPhase;
+import com.ning.billing.catalog.VersionedCatalog;
+import com.ning.billing.catalog.api.CatalogApiException;
+import com.ning.billing.catalog.api.PhaseType;
+import com.ning.billing.catalog.api.Plan;
+import com.ning.billing.catalog.api.PlanPhase;
+import com.ning.billing.clock.Clock;
+import com.ning.billing.clock.DefaultClock;
+
+/**
+ * VersionedCatalog plan and phase lookups, for catalogs with N plans and V versions (one per year).
+ * <p/>
+ * Lookups target the last plan of the catalog (worst case for the linear scans) and are done both for a new
+ * subscription (served from the latest version) and for a subscription created against the first version
+ * (which walks back all versions).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VersionedCatalogBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int nbPlans;
+
+    @Param({"1", "5"})
+    public int nbVersions;
+
+    private VersionedCatalog catalog;
+    private String planName;
+    private String phaseName;
+    private DateTime requestedDate;
+    private DateTime oldSubscriptionStartDate;
+
+    @Setup
+    public void setUp() throws CatalogApiException {
+        final Clock clock = new DefaultClock();
+        requestedDate = clock.getUTCNow();
+
+        catalog = new VersionedCatalog(clock);
+        for (int i = nbVersions; i > 0; i--) {
+            catalog.add(new SyntheticCatalog(requestedDate.minusYears(i).toDate(), nbPlans));
+        }
+
+        planName = SyntheticCatalog.planName(nbPlans - 1);
+        phaseName = DefaultPlanPhase.phaseName(planName, PhaseType.EVERGREEN);
+        oldSubscriptionStartDate = requestedDate.minusYears(nbVersions).plusDays(1);
+    }
+
+    @Benchmark
+    public Plan findPlanForNewSubscription() throws CatalogApiException {
+        return catalog.findPlan(planName, requestedDate, requestedDate);
+    }
+
+    @Benchmark
+    public Plan findPlanForExistingSubscription() throws CatalogApiException {
+        return catalog.findPlan(planName, requestedDate, oldSubscriptionStartDate);
+    }
+
+    @Benchmark
+    public PlanPhase findPhaseForExistingSubscription() throws CatalogApiException {
+        return catalog.findPhase(phaseName, requestedDate, oldSubscriptionStartDate);
+    }
+}
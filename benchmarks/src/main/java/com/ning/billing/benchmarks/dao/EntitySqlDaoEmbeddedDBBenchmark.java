@@ -0,0 +1,144 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.benchmarks.dao;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.IDBI;
+
+import com.ning.billing.DBTestingHelper;
+import com.ning.billing.ObjectType;
+import com.ning.billing.clock.Clock;
+import com.ning.billing.clock.DefaultClock;
+import com.ning.billing.util.cache.CacheControllerDispatcher;
+import com.ning.billing.util.callcontext.CallOrigin;
+import com.ning.billing.util.callcontext.InternalCallContext;
+import com.ning.billing.util.callcontext.InternalCallContextFactory;
+import com.ning.billing.util.callcontext.UserType;
+import com.ning.billing.util.dao.DefaultNonEntityDao;
+import com.ning.billing.util.entity.dao.EntitySqlDao;
+import com.ning.billing.util.entity.dao.EntitySqlDaoTransactionWrapper;
+import com.ning.billing.util.entity.dao.EntitySqlDaoTransactionalJdbiWrapper;
+import com.ning.billing.util.entity.dao.EntitySqlDaoWrapperFactory;
+import com.ning.billing.util.tag.dao.TagModelDao;
+import com.ning.billing.util.tag.dao.TagSqlDao;
+
+/**
+ * Full DAO stack (transaction wrapper, sql dao proxy, JDBI and the database) against the embedded database,
+ * for an account with N tags. Caches are disabled, so that each call hits the database.
+ * <p/>
+ * H2 is used by default, run with -Dcom.ning.billing.dbi.test.h2=false to use the embedded MySQL instead.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EntitySqlDaoEmbeddedDBBenchmark {
+
+    private static final String H2_PROPERTY = "com.ning.billing.dbi.test.h2";
+
+    @Param({"10", "1000"})
+    public int nbTags;
+
+    private final List<String> tagIds = new ArrayList<String>();
+
+    private InternalCallContext context;
+    private EntitySqlDaoTransactionalJdbiWrapper transactionalSqlDao;
+
+    @Setup
+    public void setUp() throws IOException {
+        if (System.getProperty(H2_PROPERTY) == null) {
+            System.setProperty(H2_PROPERTY, "true");
+        }
+        DBTestingHelper.start();
+
+        final Clock clock = new DefaultClock();
+        final IDBI dbi = DBTestingHelper.getDBI();
+        transactionalSqlDao = new EntitySqlDaoTransactionalJdbiWrapper(dbi, clock, new CacheControllerDispatcher(), new DefaultNonEntityDao(dbi));
+        context = new InternalCallContext(InternalCallContextFactory.INTERNAL_TENANT_RECORD_ID, 1L, UUID.randomUUID(),
+                                          "benchmark", CallOrigin.INTERNAL, UserType.TEST, null, null, clock.getUTCNow(), clock.getUTCNow());
+
+        final UUID tagDefinitionId = UUID.randomUUID();
+        for (int i = 0; i < nbTags; i++) {
+            final TagModelDao tag = new TagModelDao(clock.getUTCNow(), tagDefinitionId, UUID.randomUUID(), ObjectType.ACCOUNT);
+            transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Void>() {
+                @Override
+                public Void inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                    entitySqlDaoWrapperFactory.become(TagSqlDao.class).create(tag, context);
+                    return null;
+                }
+            });
+            tagIds.add(tag.getId().toString());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        DBTestingHelper.get().stop();
+    }
+
+    @Benchmark
+    public TagModelDao getById() {
+        final String tagId = tagIds.get(ThreadLocalRandom.current().nextInt(tagIds.size()));
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<TagModelDao>() {
+            @Override
+            public TagModelDao inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                return entitySqlDaoWrapperFactory.become(TagSqlDao.class).getById(tagId, context);
+            }
+        });
+    }
+
+    @Benchmark
+    public Long getRecordId() {
+        final String tagId = tagIds.get(ThreadLocalRandom.current().nextInt(tagIds.size()));
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Long>() {
+            @Override
+            public Long inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                return entitySqlDaoWrapperFactory.become(TagSqlDao.class).getRecordId(tagId, context);
+            }
+        });
+    }
+
+    @Benchmark
+    public List<TagModelDao> getByAccountRecordId() {
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<TagModelDao>>() {
+            @Override
+            public List<TagModelDao> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                return entitySqlDaoWrapperFactory.become(TagSqlDao.class).getByAccountRecordId(context);
+            }
+        });
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.benchmarks.dao;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ning.billing.ObjectType;
+import com.ning.billing.clock.Clock;
+import com.ning.billing.clock.DefaultClock;
+import com.ning.billing.util.audit.AuditLog;
+import com.ning.billing.util.cache.Cachable;
+import com.ning.billing.util.cache.Cachable.CacheType;
+import com.ning.billing.util.cache.CachableKey;
+import com.ning.billing.util.cache.CacheController;
+import com.ning.billing.util.cache.CacheControllerDispatcher;
+import com.ning.billing.util.cache.CacheLoaderArgument;
+import com.ning.billing.util.callcontext.InternalCallContext;
+import com.ning.billing.util.callcontext.InternalCallContextFactory;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.dao.TableName;
+import com.ning.billing.util.entity.dao.EntityModelDao;
+import com.ning.billing.util.entity.dao.EntitySqlDao;
+import com.ning.billing.util.entity.dao.EntitySqlDaoWrapperInvocationHandler;
+import com.ning.billing.util.tag.Tag;
+import com.ning.billing.util.tag.dao.TagModelDao;
+import com.ning.billing.util.tag.dao.TagSqlDao;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+
+/**
+ * Overhead of the EntitySqlDaoWrapperInvocationHandler proxy per call, against an in-memory sql dao and cache.
+ * <p/>
+ * The legacy* benchmarks replay the pre-computation free code path (annotation lookups, String cache keys
+ * and ObjectType reflection on each call) to compare before and after.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EntitySqlDaoProxyBenchmark {
+
+    private final String tagId = UUID.randomUUID().toString();
+    private final InternalCallContext context = new InternalCallContext(InternalCallContextFactory.INTERNAL_TENANT_RECORD_ID, 1L, UUID.randomUUID(),
+                                                                        "benchmark", null, null, null, null, null, null);
+
+    private TagSqlDao tagSqlDao;
+    private TagSqlDao legacyTagSqlDao;
+
+    @Setup
+    public void setUp() {
+        final Clock clock = new DefaultClock();
+        final TagSqlDao stubSqlDao = createStubSqlDao();
+        final CacheControllerDispatcher cacheControllerDispatcher = new CacheControllerDispatcher(ImmutableMap.<CacheType, CacheController<Object, Object>>of(CacheType.RECORD_ID, new InMemoryCacheController(1L),
+                                                                                                                                                            CacheType.AUDIT_LOG_VIA_HISTORY, new InMemoryCacheController(ImmutableList.<AuditLog>of())));
+
+        tagSqlDao = (TagSqlDao) Proxy.newProxyInstance(TagSqlDao.class.getClassLoader(),
+                                                       new Class[]{TagSqlDao.class},
+                                                       new EntitySqlDaoWrapperInvocationHandler<TagSqlDao, TagModelDao, Tag>(TagSqlDao.class, stubSqlDao, clock, cacheControllerDispatcher, null));
+        legacyTagSqlDao = (TagSqlDao) Proxy.newProxyInstance(TagSqlDao.class.getClassLoader(),
+                                                             new Class[]{TagSqlDao.class},
+                                                             new LegacyCachingInvocationHandler(TagSqlDao.class, stubSqlDao, cacheControllerDispatcher));
+    }
+
+    @Benchmark
+    public Object getByIdNotCached() {
+        return tagSqlDao.getById(tagId, context);
+    }
+
+    @Benchmark
+    public Object getRecordIdCached() {
+        return tagSqlDao.getRecordId(tagId, context);
+    }
+
+    @Benchmark
+    public Object getAuditLogsViaHistoryCached() {
+        return tagSqlDao.getAuditLogsViaHistoryForTargetRecordId(TableName.TAG_HISTORY, "tag_history", 12L, context);
+    }
+
+    @Benchmark
+    public Object legacyGetRecordIdCached() {
+        return legacyTagSqlDao.getRecordId(tagId, context);
+    }
+
+    @Benchmark
+    public Object legacyGetAuditLogsViaHistoryCached() {
+        return legacyTagSqlDao.getAuditLogsViaHistoryForTargetRecordId(TableName.TAG_HISTORY, "tag_history", 12L, context);
+    }
+
+    private TagSqlDao createStubSqlDao() {
+        final TagModelDao tag = new TagModelDao(new DefaultClock().getUTCNow(), UUID.randomUUID(), UUID.randomUUID(), ObjectType.ACCOUNT);
+        return (TagSqlDao) Proxy.newProxyInstance(TagSqlDao.class.getClassLoader(), new Class[]{TagSqlDao.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if ("getById".equals(method.getName())) {
+                    return tag;
+                } else if ("getRecordId".equals(method.getName())) {
+                    return 1L;
+                } else if (List.class.isAssignableFrom(method.getReturnType())) {
+                    return ImmutableList.of();
+                } else {
+                    return null;
+                }
+            }
+        });
+    }
+
+    private static final class InMemoryCacheController implements CacheController<Object, Object> {
+
+        private final Map<Object, Object> cache = new ConcurrentHashMap<Object, Object>();
+        private final Object loadedValue;
+
+        private InMemoryCacheController(final Object loadedValue) {
+            this.loadedValue = loadedValue;
+        }
+
+        @Override
+        public Object get(final Object key, final CacheLoaderArgument cacheLoaderArgument) {
+            Object value = cache.get(key);
+            if (value == null) {
+                value = loadedValue;
+                cache.put(key, value);
+            }
+            return value;
+        }
+
+        @Override
+        public boolean isKeyInCache(final Object key) {
+            return cache.containsKey(key);
+        }
+
+        @Override
+        public void putIfAbsent(final Object key, final Object value) {
+            if (!cache.containsKey(key)) {
+                cache.put(key, value);
+            }
+        }
+
+        @Override
+        public boolean remove(final Object key) {
+            return cache.remove(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return cache.size();
+        }
+
+        @Override
+        public void removeAll() {
+            cache.clear();
+        }
+    }
+
+    // Caching code path of EntitySqlDaoWrapperInvocationHandler before per-method metadata were pre-computed
+    private static final class LegacyCachingInvocationHandler implements InvocationHandler {
+
+        private final Class<?> sqlDaoClass;
+        private final Object sqlDao;
+        private final CacheControllerDispatcher cacheControllerDispatcher;
+
+        private LegacyCachingInvocationHandler(final Class<?> sqlDaoClass, final Object sqlDao, final CacheControllerDispatcher cacheControllerDispatcher) {
+            this.sqlDaoClass = sqlDaoClass;
+            this.sqlDao = sqlDao;
+            this.cacheControllerDispatcher = cacheControllerDispatcher;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            final Cachable cachableAnnotation = method.getAnnotation(Cachable.class);
+            if (cachableAnnotation == null) {
+                return method.invoke(sqlDao, args);
+            }
+
+            final ObjectType objectType = getObjectType();
+            final CacheController<Object, Object> cache = cacheControllerDispatcher.getCacheController(cachableAnnotation.value());
+            final Map<Integer, Object> keyPieces = new LinkedHashMap<Integer, Object>();
+            final Annotation[][] annotations = method.getParameterAnnotations();
+            for (int i = 0; i < annotations.length; i++) {
+                for (int j = 0; j < annotations[i].length; j++) {
+                    final Annotation annotation = annotations[i][j];
+                    if (CachableKey.class.equals(annotation.annotationType())) {
+                        keyPieces.put(((CachableKey) annotation).value() - 1, args[i]);
+                        break;
+                    }
+                }
+            }
+
+            final StringBuilder cacheKey = new StringBuilder();
+            for (int i = 0; i < keyPieces.size(); i++) {
+                cacheKey.append(String.valueOf(keyPieces.get(i)).toUpperCase());
+                if (i < keyPieces.size() - 1) {
+                    cacheKey.append(EntitySqlDaoWrapperInvocationHandler.CACHE_KEY_SEPARATOR);
+                }
+            }
+
+            final InternalTenantContext internalTenantContext = (InternalTenantContext) Iterables.find(ImmutableList.copyOf(args), new Predicate<Object>() {
+                @Override
+                public boolean apply(final Object input) {
+                    return input instanceof InternalTenantContext;
+                }
+            }, null);
+            return cache.get(cacheKey.toString(), new CacheLoaderArgument(objectType, args, internalTenantContext));
+        }
+
+        private ObjectType getObjectType() throws Exception {
+            final Type type = sqlDaoClass.getGenericInterfaces()[0];
+            if (!(type instanceof ParameterizedType) ||
+                !EntitySqlDao.class.getName().equals(((Class) ((ParameterizedType) type).getRawType()).getName())) {
+                return null;
+            }
+
+            for (final Type typeArgument : ((ParameterizedType) type).getActualTypeArguments()) {
+                final Class clz = (Class) typeArgument;
+                if (EntityModelDao.class.getName().equals(((Class) ((ParameterizedType) clz.getGenericInterfaces()[0]).getRawType()).getName())) {
+                    final EntityModelDao<?> modelDao = (EntityModelDao<?>) Class.forName(clz.getName()).newInstance();
+                    return modelDao.getTableName().getObjectType();
+                }
+            }
+            return null;
+        }
+    }
+}
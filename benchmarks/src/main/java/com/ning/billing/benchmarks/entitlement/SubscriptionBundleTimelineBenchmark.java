@@ -0,0 +1,149 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.benchmarks.entitlement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ning.billing.benchmarks.fixtures.Stubs;
+import com.ning.billing.catalog.MockPlan;
+import com.ning.billing.catalog.api.Plan;
+import com.ning.billing.catalog.api.PlanPhase;
+import com.ning.billing.entitlement.api.BlockingState;
+import com.ning.billing.entitlement.api.BlockingStateType;
+import com.ning.billing.entitlement.api.DefaultEntitlement;
+import com.ning.billing.entitlement.api.DefaultSubscriptionBundleTimeline;
+import com.ning.billing.entitlement.api.Entitlement;
+import com.ning.billing.entitlement.api.Entitlement.EntitlementState;
+import com.ning.billing.overdue.OverdueService;
+import com.ning.billing.subscription.api.SubscriptionBase;
+import com.ning.billing.subscription.api.user.SubscriptionBaseTransition;
+import com.ning.billing.subscription.api.user.SubscriptionBaseTransitionData;
+import com.ning.billing.subscription.events.SubscriptionBaseEvent.EventType;
+import com.ning.billing.subscription.events.user.ApiEventType;
+import com.ning.billing.util.svcapi.junction.DefaultBlockingState;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * DefaultSubscriptionBundleTimeline construction for a bundle with N entitlements (creation and trial to
+ * evergreen phase transitions) and K bundle level blocking states (alternating overdue blocked / cleared).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SubscriptionBundleTimelineBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int nbEntitlements;
+
+    @Param({"0", "10", "50"})
+    public int nbBlockingStates;
+
+    private final UUID accountId = UUID.randomUUID();
+    private final UUID bundleId = UUID.randomUUID();
+
+    private List<Entitlement> entitlements;
+    private List<BlockingState> blockingStates;
+
+    @Setup
+    public void setUp() {
+        final DateTime startDate = new DateTime(2012, 1, 1, 12, 0, 0, 0, DateTimeZone.UTC);
+        final Plan plan = MockPlan.createBicycleTrialEvergreen1USD();
+        final PlanPhase trialPhase = plan.getInitialPhases()[0];
+        final PlanPhase evergreenPhase = plan.getFinalPhase();
+
+        entitlements = new ArrayList<Entitlement>(nbEntitlements);
+        for (int i = 0; i < nbEntitlements; i++) {
+            final UUID entitlementId = UUID.randomUUID();
+            final DateTime createdDate = startDate.plusMinutes(i);
+            final DateTime phaseDate = createdDate.plusDays(30);
+
+            final List<SubscriptionBaseTransition> transitions = ImmutableList.<SubscriptionBaseTransition>of(createTransition(entitlementId, EventType.API_USER, ApiEventType.CREATE, createdDate, plan, null, trialPhase),
+                                                                                                                createTransition(entitlementId, EventType.PHASE, null, phaseDate, plan, trialPhase, evergreenPhase));
+            final SubscriptionBase subscriptionBase = Stubs.stub(SubscriptionBase.class, ImmutableMap.<String, Object>of("getId", entitlementId,
+                                                                                                                          "getBundleId", bundleId,
+                                                                                                                          "getCreatedDate", createdDate,
+                                                                                                                          "getUpdatedDate", createdDate,
+                                                                                                                          "getAllTransitions", transitions));
+            entitlements.add(new DefaultEntitlement(null, subscriptionBase, accountId, "bundle-key", EntitlementState.ACTIVE, null, DateTimeZone.UTC,
+                                                    null, null, null, null, null));
+        }
+
+        blockingStates = new ArrayList<BlockingState>(nbBlockingStates);
+        for (int i = 0; i < nbBlockingStates; i++) {
+            final boolean blocked = i % 2 == 0;
+            final DateTime effectiveDate = startDate.plusMonths(i + 2);
+            blockingStates.add(new DefaultBlockingState(UUID.randomUUID(), bundleId, BlockingStateType.SUBSCRIPTION_BUNDLE, blocked ? "OD1" : "CLEAR",
+                                                        OverdueService.OVERDUE_SERVICE_NAME, blocked, blocked, blocked,
+                                                        effectiveDate, effectiveDate, effectiveDate));
+        }
+    }
+
+    @Benchmark
+    public DefaultSubscriptionBundleTimeline buildTimeline() {
+        // The blocking states are sorted in place
+        return new DefaultSubscriptionBundleTimeline(DateTimeZone.UTC, accountId, bundleId, "bundle-key", entitlements, new ArrayList<BlockingState>(blockingStates));
+    }
+
+    private SubscriptionBaseTransition createTransition(final UUID entitlementId, final EventType eventType, final ApiEventType apiEventType,
+                                                        final DateTime effectiveDate, final Plan plan, final PlanPhase previousPhase, final PlanPhase nextPhase) {
+        return new SubscriptionBaseTransitionData(UUID.randomUUID(),
+                                                  entitlementId,
+                                                  bundleId,
+                                                  eventType,
+                                                  apiEventType,
+                                                  effectiveDate,
+                                                  effectiveDate,
+                                                  null,
+                                                  null,
+                                                  null,
+                                                  previousPhase == null ? null : plan,
+                                                  previousPhase,
+                                                  null,
+                                                  null,
+                                                  null,
+                                                  null,
+                                                  plan,
+                                                  nextPhase,
+                                                  null,
+                                                  1L,
+                                                  effectiveDate,
+                                                  null,
+                                                  true);
+    }
+}
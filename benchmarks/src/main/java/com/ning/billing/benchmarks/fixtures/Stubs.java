@@ -0,0 +1,102 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.benchmarks.fixtures;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import com.ning.billing.account.api.Account;
+import com.ning.billing.catalog.api.Currency;
+import com.ning.billing.subscription.api.SubscriptionBase;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Lightweight stubs for the interfaces needed by the benchmarks.
+ * <p/>
+ * Mockito mocks record every invocation, which would dominate the measurements when they are called
+ * in hot loops (e.g. BillingEvent#compareTo calls getSubscription().getId()): these proxies simply
+ * return canned values, by method name.
+ */
+public class Stubs {
+
+    private Stubs() {}
+
+    public static Account account(final UUID accountId, final Currency currency) {
+        return stub(Account.class, ImmutableMap.<String, Object>of("getId", accountId,
+                                                                   "getCurrency", currency,
+                                                                   "getTimeZone", DateTimeZone.UTC));
+    }
+
+    public static SubscriptionBase subscription(final UUID subscriptionId, final UUID bundleId, final DateTime startDate) {
+        return stub(SubscriptionBase.class, ImmutableMap.<String, Object>of("getId", subscriptionId,
+                                                                            "getBundleId", bundleId,
+                                                                            "getStartDate", startDate,
+                                                                            "getCreatedDate", startDate,
+                                                                            "getUpdatedDate", startDate));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> T stub(final Class<T> clazz, final Map<String, Object> answers) {
+        return (T) Proxy.newProxyInstance(clazz.getClassLoader(), new Class[]{clazz}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if ("equals".equals(method.getName()) && args != null && args.length == 1) {
+                    return proxy == args[0];
+                } else if ("hashCode".equals(method.getName()) && args == null) {
+                    return System.identityHashCode(proxy);
+                } else if ("toString".equals(method.getName()) && args == null) {
+                    return clazz.getSimpleName() + answers;
+                }
+
+                final Object answer = answers.get(method.getName());
+                if (answer == null && method.getReturnType().isPrimitive()) {
+                    return defaultValue(method.getReturnType());
+                }
+                return answer;
+            }
+        });
+    }
+
+    private static Object defaultValue(final Class<?> primitiveType) {
+        if (boolean.class.equals(primitiveType)) {
+            return false;
+        } else if (char.class.equals(primitiveType)) {
+            return '\0';
+        } else if (byte.class.equals(primitiveType)) {
+            return (byte) 0;
+        } else if (short.class.equals(primitiveType)) {
+            return (short) 0;
+        } else if (long.class.equals(primitiveType)) {
+            return 0L;
+        } else if (float.class.equals(primitiveType)) {
+            return 0f;
+        } else if (double.class.equals(primitiveType)) {
+            return 0d;
+        } else if (void.class.equals(primitiveType)) {
+            return null;
+        } else {
+            return 0;
+        }
+    }
+}
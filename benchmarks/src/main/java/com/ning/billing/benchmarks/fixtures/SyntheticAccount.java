@@ -0,0 +1,113 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.benchmarks.fixtures;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import com.ning.billing.account.api.Account;
+import com.ning.billing.catalog.MockPlan;
+import com.ning.billing.catalog.MockPlanPhase;
+import com.ning.billing.catalog.api.BillingPeriod;
+import com.ning.billing.catalog.api.Currency;
+import com.ning.billing.catalog.api.Plan;
+import com.ning.billing.catalog.api.PlanPhase;
+import com.ning.billing.junction.plumbing.billing.DefaultBillingEvent;
+import com.ning.billing.junction.plumbing.billing.DefaultBillingEventSet;
+import com.ning.billing.subscription.api.SubscriptionBase;
+import com.ning.billing.subscription.api.SubscriptionBaseTransitionType;
+import com.ning.billing.util.svcapi.junction.BillingEvent;
+import com.ning.billing.util.svcapi.junction.BillingModeType;
+
+/**
+ * Account with N monthly subscriptions, spread over bundles, all started at the same date.
+ */
+public class SyntheticAccount {
+
+    public static final BigDecimal MONTHLY_RATE = new BigDecimal("10.00");
+
+    private final Account account;
+    private final DateTime startDate;
+    private final List<SubscriptionBase> subscriptions;
+    private final List<UUID> bundleIds;
+    private final DefaultBillingEventSet billingEvents;
+
+    /**
+     * @param nbSubscriptions         number of subscriptions on the account
+     * @param nbSubscriptionsInBundle number of subscriptions per bundle
+     * @param startDate               start date of all subscriptions
+     */
+    public SyntheticAccount(final int nbSubscriptions, final int nbSubscriptionsInBundle, final DateTime startDate) {
+        this.account = Stubs.account(UUID.randomUUID(), Currency.USD);
+        this.startDate = startDate;
+        this.subscriptions = new ArrayList<SubscriptionBase>(nbSubscriptions);
+        this.bundleIds = new ArrayList<UUID>();
+        this.billingEvents = new DefaultBillingEventSet();
+
+        final MockPlanPhase phase = MockPlanPhase.createUSDMonthlyEvergreen(MONTHLY_RATE.toString(), null);
+        final Plan plan = new MockPlan(phase);
+
+        UUID bundleId = null;
+        for (int i = 0; i < nbSubscriptions; i++) {
+            if (i % nbSubscriptionsInBundle == 0) {
+                bundleId = UUID.randomUUID();
+                bundleIds.add(bundleId);
+            }
+
+            final SubscriptionBase subscription = Stubs.subscription(UUID.randomUUID(), bundleId, startDate);
+            subscriptions.add(subscription);
+            billingEvents.add(createBillingEvent(subscription, startDate, plan, phase, startDate.getDayOfMonth(), i, SubscriptionBaseTransitionType.CREATE));
+        }
+    }
+
+    public BillingEvent createBillingEvent(final SubscriptionBase subscription, final DateTime effectiveDate, final Plan plan, final PlanPhase phase,
+                                           final int billCycleDayLocal, final long totalOrdering, final SubscriptionBaseTransitionType type) {
+        return new DefaultBillingEvent(account, subscription, effectiveDate, plan, phase,
+                                       null, MONTHLY_RATE, Currency.USD,
+                                       BillingPeriod.MONTHLY, billCycleDayLocal, BillingModeType.IN_ADVANCE,
+                                       "benchmark", totalOrdering, type, DateTimeZone.UTC);
+    }
+
+    public Account getAccount() {
+        return account;
+    }
+
+    public UUID getAccountId() {
+        return account.getId();
+    }
+
+    public DateTime getStartDate() {
+        return startDate;
+    }
+
+    public List<SubscriptionBase> getSubscriptions() {
+        return subscriptions;
+    }
+
+    public List<UUID> getBundleIds() {
+        return bundleIds;
+    }
+
+    public DefaultBillingEventSet getBillingEvents() {
+        return billingEvents;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.benchmarks.invoice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.LocalDate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ning.billing.benchmarks.fixtures.SyntheticAccount;
+import com.ning.billing.catalog.api.Currency;
+import com.ning.billing.clock.Clock;
+import com.ning.billing.clock.DefaultClock;
+import com.ning.billing.invoice.api.Invoice;
+import com.ning.billing.invoice.api.InvoiceApiException;
+import com.ning.billing.invoice.generator.DefaultInvoiceGenerator;
+import com.ning.billing.util.config.InvoiceConfig;
+
+/**
+ * DefaultInvoiceGenerator#generateInvoice for an account with N monthly subscriptions and M years of existing invoices.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InvoiceGeneratorBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int nbSubscriptions;
+
+    @Param({"1", "3"})
+    public int nbYears;
+
+    private DefaultInvoiceGenerator generator;
+    private SyntheticAccount account;
+    private List<Invoice> existingInvoices;
+    private LocalDate lastTargetDate;
+    private LocalDate nextTargetDate;
+
+    @Setup
+    public void setUp() throws InvoiceApiException {
+        final Clock clock = new DefaultClock();
+        generator = new DefaultInvoiceGenerator(clock, new InvoiceConfig() {
+            @Override
+            public int getNumberOfMonthsInFuture() {
+                return 36;
+            }
+
+            @Override
+            public boolean isEmailNotificationsEnabled() {
+                return false;
+            }
+
+            @Override
+            public int getAgingReportPageSize() {
+                return 1000;
+            }
+
+            @Override
+            public int getMigrationBatchSize() {
+                return 100;
+            }
+        });
+
+        // Subscriptions started M years ago, on the first of the month
+        final LocalDate startDate = clock.getUTCToday().withDayOfMonth(1).minusYears(nbYears);
+        account = new SyntheticAccount(nbSubscriptions, 5, startDate.toDateTimeAtStartOfDay());
+
+        // Replay the monthly invoicing up to today
+        existingInvoices = new ArrayList<Invoice>();
+        nextTargetDate = startDate;
+        while (!nextTargetDate.isAfter(clock.getUTCToday())) {
+            final Invoice invoice = generator.generateInvoice(account.getAccountId(), account.getBillingEvents(), existingInvoices, nextTargetDate, Currency.USD);
+            if (invoice != null) {
+                existingInvoices.add(invoice);
+            }
+            lastTargetDate = nextTargetDate;
+            nextTargetDate = nextTargetDate.plusMonths(1);
+        }
+    }
+
+    @Benchmark
+    public Invoice generateNextInvoice() throws InvoiceApiException {
+        return generator.generateInvoice(account.getAccountId(), account.getBillingEvents(), existingInvoices, nextTargetDate, Currency.USD);
+    }
+
+    @Benchmark
+    public Invoice regenerateUpToDateInvoice() throws InvoiceApiException {
+        // Nothing to invoice: this is the cost of every no-op invoice run (e.g. triggered by a bus event)
+        return generator.generateInvoice(account.getAccountId(), account.getBillingEvents(), existingInvoices, lastTargetDate, Currency.USD);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.benchmarks.junction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ning.billing.benchmarks.fixtures.SyntheticAccount;
+import com.ning.billing.entitlement.api.Blockable;
+import com.ning.billing.entitlement.api.BlockingState;
+import com.ning.billing.entitlement.api.BlockingStateType;
+import com.ning.billing.junction.plumbing.billing.BlockingCalculator;
+import com.ning.billing.overdue.OverdueService;
+import com.ning.billing.util.callcontext.InternalCallContext;
+import com.ning.billing.util.callcontext.InternalCallContextFactory;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.svcapi.junction.BillingEvent;
+import com.ning.billing.util.svcapi.junction.BlockingInternalApi;
+import com.ning.billing.util.svcapi.junction.DefaultBlockingState;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * BlockingCalculator#insertBlockingEvents for an account with N subscriptions (5 per bundle), each bundle
+ * having K blocking states (alternating billing blocked / cleared every month).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlockingCalculatorBenchmark {
+
+    private static final int NB_SUBSCRIPTIONS_PER_BUNDLE = 5;
+
+    @Param({"10", "100"})
+    public int nbSubscriptions;
+
+    @Param({"0", "2", "20"})
+    public int nbBlockingStates;
+
+    private final InternalTenantContext context = new InternalTenantContext(InternalCallContextFactory.INTERNAL_TENANT_RECORD_ID, 1L);
+
+    private BlockingCalculator blockingCalculator;
+    private SortedSet<BillingEvent> billingEvents;
+
+    @Setup
+    public void setUp() {
+        final DateTime startDate = new DateTime(2012, 1, 1, 0, 0, 0, 0, DateTimeZone.UTC);
+        final SyntheticAccount account = new SyntheticAccount(nbSubscriptions, NB_SUBSCRIPTIONS_PER_BUNDLE, startDate);
+        billingEvents = account.getBillingEvents();
+
+        final Map<UUID, List<BlockingState>> blockingStates = new HashMap<UUID, List<BlockingState>>();
+        for (final UUID bundleId : account.getBundleIds()) {
+            final List<BlockingState> statesForBundle = new ArrayList<BlockingState>(nbBlockingStates);
+            for (int i = 0; i < nbBlockingStates; i++) {
+                final boolean blockBilling = i % 2 == 0;
+                statesForBundle.add(new DefaultBlockingState(bundleId, BlockingStateType.SUBSCRIPTION_BUNDLE, blockBilling ? "OD1" : "CLEAR",
+                                                             OverdueService.OVERDUE_SERVICE_NAME, blockBilling, blockBilling, blockBilling,
+                                                             startDate.plusMonths(i + 1).plusDays(3)));
+            }
+            blockingStates.put(bundleId, statesForBundle);
+        }
+
+        blockingCalculator = new BlockingCalculator(new InMemoryBlockingInternalApi(blockingStates));
+    }
+
+    @Benchmark
+    public SortedSet<BillingEvent> insertBlockingEvents() {
+        // insertBlockingEvents updates the set in place
+        final SortedSet<BillingEvent> events = new TreeSet<BillingEvent>(billingEvents);
+        blockingCalculator.insertBlockingEvents(events, context);
+        return events;
+    }
+
+    @Benchmark
+    public SortedSet<BillingEvent> baselineCopy() {
+        // Cost of the defensive copy above, to subtract from insertBlockingEvents
+        return new TreeSet<BillingEvent>(billingEvents);
+    }
+
+    private static final class InMemoryBlockingInternalApi implements BlockingInternalApi {
+
+        private final Map<UUID, List<BlockingState>> blockingStates;
+
+        private InMemoryBlockingInternalApi(final Map<UUID, List<BlockingState>> blockingStates) {
+            this.blockingStates = blockingStates;
+        }
+
+        @Override
+        public List<BlockingState> getBlockingAll(final UUID blockableId, final InternalTenantContext context) {
+            final List<BlockingState> states = blockingStates.get(blockableId);
+            // Callers modify the returned list
+            return states == null ? new ArrayList<BlockingState>() : new ArrayList<BlockingState>(states);
+        }
+
+        @Override
+        public List<BlockingState> getBlockingAll(final Blockable blockable, final InternalTenantContext context) {
+            return getBlockingAll(blockable.getId(), context);
+        }
+
+        @Override
+        public BlockingState getBlockingStateForService(final Blockable blockable, final String serviceName, final InternalTenantContext context) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public BlockingState getBlockingStateForService(final UUID blockableId, final String serviceName, final InternalTenantContext context) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<BlockingState> getBlockingHistoryForService(final Blockable blockable, final String serviceName, final InternalTenantContext context) {
+            return ImmutableList.<BlockingState>of();
+        }
+
+        @Override
+        public List<BlockingState> getBlockingHistoryForService(final UUID blockableId, final String serviceName, final InternalTenantContext context) {
+            return ImmutableList.<BlockingState>of();
+        }
+
+        @Override
+        public List<BlockingState> getBlockingHistory(final Blockable blockable, final InternalTenantContext context) {
+            return ImmutableList.<BlockingState>of();
+        }
+
+        @Override
+        public List<BlockingState> getBlockingHistory(final UUID blockableId, final InternalTenantContext context) {
+            return ImmutableList.<BlockingState>of();
+        }
+
+        @Override
+        public void setBlockingState(final BlockingState state, final InternalCallContext context) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -23,22 +23,30 @@ import com.ning.billing.catalog.io.VersionedCatalogLoader;
 import com.ning.billing.lifecycle.KillbillService;
 import com.ning.billing.lifecycle.LifecycleHandlerType;
 import com.ning.billing.lifecycle.LifecycleHandlerType.LifecycleLevel;
+import com.ning.billing.util.callcontext.InternalTenantContext;
 import com.ning.billing.util.config.CatalogConfig;
+import com.ning.billing.util.svcapi.catalog.CatalogInternalApi;
+import com.ning.billing.util.svcapi.tenant.TenantInternalApi;
 
+import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 
-public class DefaultCatalogService implements KillbillService, Provider<Catalog>, CatalogService {
+public class DefaultCatalogService implements KillbillService, Provider<Catalog>, CatalogService, CatalogInternalApi {
 
     private static final String CATALOG_SERVICE_NAME = "catalog-service";
 
-    private static VersionedCatalog catalog;
+    // Default catalog, for tenants which didn't upload their own
+    private volatile VersionedCatalog catalog;
 
     private final CatalogConfig config;
     private boolean isInitialized;
 
     private final VersionedCatalogLoader loader;
 
+    // Not available when the tenant module isn't installed: all tenants then share the default catalog
+    private TenantCatalogCache tenantCatalogCache;
+
     @Inject
     public DefaultCatalogService(final CatalogConfig config, final VersionedCatalogLoader loader) {
         this.config = config;
@@ -46,6 +54,11 @@ public class DefaultCatalogService implements KillbillService, Provider<Catalog>
         this.loader = loader;
     }
 
+    @Inject(optional = true)
+    public void setTenantInternalApi(final TenantInternalApi tenantInternalApi) {
+        this.tenantCatalogCache = new TenantCatalogCache(tenantInternalApi, loader);
+    }
+
     @LifecycleHandlerType(LifecycleLevel.LOAD_CATALOG)
     public synchronized void loadCatalog() throws ServiceException {
         if (!isInitialized) {
@@ -60,6 +73,13 @@ public class DefaultCatalogService implements KillbillService, Provider<Catalog>
         }
     }
 
+    @LifecycleHandlerType(LifecycleLevel.STOP_SERVICE)
+    public void stop() {
+        if (tenantCatalogCache != null) {
+            tenantCatalogCache.stop();
+        }
+    }
+
     @Override
     public String getName() {
         return CATALOG_SERVICE_NAME;
@@ -79,4 +99,36 @@ public class DefaultCatalogService implements KillbillService, Provider<Catalog>
     public StaticCatalog getCurrentCatalog() {
         return catalog;
     }
+
+    @Override
+    public Catalog getFullCatalog(final InternalTenantContext context) {
+        return getTenantCatalog(context);
+    }
+
+    @Override
+    public StaticCatalog getCurrentCatalog(final InternalTenantContext context) {
+        return getTenantCatalog(context);
+    }
+
+    @Override
+    public void validateNewCatalogVersion(final String catalogXML, final InternalTenantContext context) {
+        try {
+            if (tenantCatalogCache == null || context == null) {
+                loader.load(ImmutableList.<String>of(catalogXML), "tenant-catalog");
+            } else {
+                tenantCatalogCache.validateNewVersion(catalogXML, context);
+            }
+        } catch (ServiceException e) {
+            throw new IllegalArgumentException("Invalid catalog: " + (e.getCause() == null ? e.getMessage() : e.getCause().getMessage()), e);
+        }
+    }
+
+    private VersionedCatalog getTenantCatalog(final InternalTenantContext context) {
+        if (tenantCatalogCache == null || context == null) {
+            return catalog;
+        }
+
+        final VersionedCatalog tenantCatalog = tenantCatalogCache.getCatalog(context);
+        return tenantCatalog == null ? catalog : tenantCatalog;
+    }
 }
@@ -20,7 +20,9 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
@@ -85,6 +87,10 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
     @XmlElement(name = "priceLists", required = true)
     private DefaultPriceListSet priceLists;
 
+    // Name indexes, built when the catalog is initialized
+    private Map<String, DefaultProduct> productsByName;
+    private Map<String, DefaultPlan> plansByName;
+
     public StandaloneCatalog() {
     }
 
@@ -172,6 +178,13 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
         if (name == null || plans == null) {
             throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PLAN, name);
         }
+        if (plansByName != null) {
+            final DefaultPlan plan = plansByName.get(name);
+            if (plan != null) {
+                return plan;
+            }
+            throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PLAN, name);
+        }
         for (final DefaultPlan p : plans) {
             if (p.getName().equals(name)) {
                 return p;
@@ -185,6 +198,13 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
         if (name == null || products == null) {
             throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PRODUCT, name);
         }
+        if (productsByName != null) {
+            final DefaultProduct product = productsByName.get(name);
+            if (product != null) {
+                return product;
+            }
+            throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PRODUCT, name);
+        }
         for (final DefaultProduct p : products) {
             if (p.getName().equals(name)) {
                 return p;
@@ -281,7 +301,25 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
         for (final DefaultPlan p : plans) {
             p.initialize(catalog, sourceURI);
         }
+        buildIndexes();
+    }
 
+    private void buildIndexes() {
+        final Map<String, DefaultProduct> newProductsByName = new HashMap<String, DefaultProduct>();
+        for (final DefaultProduct p : products) {
+            // Keep the first one on duplicates, as the linear lookup did (validation reports them)
+            if (!newProductsByName.containsKey(p.getName())) {
+                newProductsByName.put(p.getName(), p);
+            }
+        }
+        final Map<String, DefaultPlan> newPlansByName = new HashMap<String, DefaultPlan>();
+        for (final DefaultPlan p : plans) {
+            if (!newPlansByName.containsKey(p.getName())) {
+                newPlansByName.put(p.getName(), p);
+            }
+        }
+        productsByName = newProductsByName;
+        plansByName = newPlansByName;
     }
 
 
@@ -299,6 +337,7 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
 
     protected StandaloneCatalog setProducts(final DefaultProduct[] products) {
         this.products = products;
+        this.productsByName = null;
         return this;
     }
 
@@ -314,6 +353,7 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
 
     protected StandaloneCatalog setPlans(final DefaultPlan[] plans) {
         this.plans = plans;
+        this.plansByName = null;
         return this;
     }
 
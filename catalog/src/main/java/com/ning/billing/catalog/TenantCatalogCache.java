@@ -0,0 +1,193 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.catalog;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ning.billing.catalog.io.VersionedCatalogLoader;
+import com.ning.billing.lifecycle.KillbillService.ServiceException;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.svcapi.tenant.TenantInternalApi;
+
+/**
+ * Catalogs uploaded by the tenants (see TenantInternalApi#CATALOG_KEY), parsed and validated once per node.
+ * <p/>
+ * When a tenant uploads a new version, the current catalog keeps being served while the new one is built
+ * in the background. It is then swapped in atomically: callers holding the previous catalog keep a consistent
+ * view of it.
+ * <p/>
+ * Changes are detected from the tenant key/values: a node only notices a new version once its copy of the
+ * tenant key/values is refreshed, i.e. at most killbill.cache.tenant.kv.revalidationInterval after the upload
+ * on the other nodes (see TenantKVCache). There is no push to the other nodes.
+ */
+public class TenantCatalogCache {
+
+    private static final Logger log = LoggerFactory.getLogger(TenantCatalogCache.class);
+
+    private static final String CATALOG_RELOAD_THREAD_PREFIX = "catalog-reload-th-";
+
+    private final TenantInternalApi tenantInternalApi;
+    private final VersionedCatalogLoader loader;
+
+    // Tenant record id -> catalog built from the current versions
+    private final ConcurrentMap<Long, TenantCatalog> catalogs = new ConcurrentHashMap<Long, TenantCatalog>();
+    private final Set<Long> pendingReloads = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    private final ExecutorService reloadExecutor;
+
+    public TenantCatalogCache(final TenantInternalApi tenantInternalApi, final VersionedCatalogLoader loader) {
+        this.tenantInternalApi = tenantInternalApi;
+        this.loader = loader;
+        this.reloadExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread th = new Thread(r);
+                th.setName(CATALOG_RELOAD_THREAD_PREFIX + th.getId());
+                th.setDaemon(true);
+                return th;
+            }
+        });
+    }
+
+    /**
+     * @param context tenant context
+     * @return the catalog of the tenant, or null if it didn't upload a (valid) one
+     */
+    public VersionedCatalog getCatalog(final InternalTenantContext context) {
+        final Long tenantRecordId = context.getTenantRecordId();
+        if (tenantRecordId == null) {
+            return null;
+        }
+
+        final List<String> catalogXMLs = tenantInternalApi.getTenantCatalogs(context);
+        if (catalogXMLs == null || catalogXMLs.isEmpty()) {
+            catalogs.remove(tenantRecordId);
+            return null;
+        }
+
+        final TenantCatalog tenantCatalog = catalogs.get(tenantRecordId);
+        if (tenantCatalog == null) {
+            // First use on this node, nothing to serve in the meantime
+            return loadCatalog(tenantRecordId, catalogXMLs).getCatalog();
+        }
+
+        if (tenantCatalog.getCatalogXMLs() != catalogXMLs) {
+            if (tenantCatalog.isBuiltFrom(catalogXMLs)) {
+                // Same versions, reloaded in the tenant key/values cache: keep the new list so that the next calls compare references only
+                catalogs.replace(tenantRecordId, tenantCatalog, new TenantCatalog(catalogXMLs, tenantCatalog.getCatalog()));
+            } else {
+                scheduleReload(tenantRecordId, catalogXMLs);
+            }
+        }
+        return tenantCatalog.getCatalog();
+    }
+
+    /**
+     * Check that the catalog of the tenant would still be valid once a new version is added
+     *
+     * @param catalogXML the new version
+     * @param context    tenant context
+     * @throws ServiceException if any version can't be parsed or the resulting catalog is invalid
+     */
+    public void validateNewVersion(final String catalogXML, final InternalTenantContext context) throws ServiceException {
+        final List<String> catalogXMLs = new LinkedList<String>();
+        if (context.getTenantRecordId() != null) {
+            catalogXMLs.addAll(tenantInternalApi.getTenantCatalogs(context));
+        }
+        catalogXMLs.add(catalogXML);
+        loader.load(catalogXMLs, "tenant-" + context.getTenantRecordId());
+    }
+
+    public void stop() {
+        reloadExecutor.shutdownNow();
+    }
+
+    private void scheduleReload(final Long tenantRecordId, final List<String> catalogXMLs) {
+        if (!pendingReloads.add(tenantRecordId)) {
+            return;
+        }
+
+        reloadExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    loadCatalog(tenantRecordId, catalogXMLs);
+                } finally {
+                    pendingReloads.remove(tenantRecordId);
+                }
+            }
+        });
+    }
+
+    private synchronized TenantCatalog loadCatalog(final Long tenantRecordId, final List<String> catalogXMLs) {
+        final TenantCatalog previous = catalogs.get(tenantRecordId);
+        if (previous != null && previous.isBuiltFrom(catalogXMLs)) {
+            return previous;
+        }
+
+        TenantCatalog tenantCatalog;
+        try {
+            tenantCatalog = new TenantCatalog(catalogXMLs, loader.load(catalogXMLs, "tenant-" + tenantRecordId));
+            log.info("Loaded catalog with {} versions for tenant {}", catalogXMLs.size(), tenantRecordId);
+        } catch (ServiceException e) {
+            // Keep serving the previous catalog, without trying to rebuild the invalid one on each call
+            log.error("Invalid catalog uploaded for tenant " + tenantRecordId + ", keeping the previous one", e);
+            tenantCatalog = new TenantCatalog(catalogXMLs, previous == null ? null : previous.getCatalog());
+        }
+
+        catalogs.put(tenantRecordId, tenantCatalog);
+        return tenantCatalog;
+    }
+
+    private static final class TenantCatalog {
+
+        private final List<String> catalogXMLs;
+        private final int catalogXMLsHash;
+        private final VersionedCatalog catalog;
+
+        private TenantCatalog(final List<String> catalogXMLs, final VersionedCatalog catalog) {
+            this.catalogXMLs = catalogXMLs;
+            this.catalogXMLsHash = catalogXMLs.hashCode();
+            this.catalog = catalog;
+        }
+
+        public boolean isBuiltFrom(final List<String> otherCatalogXMLs) {
+            // The tenant key/values cache hands out the same list until the values change. Otherwise, versions
+            // are only added: compare the number of versions and the hashes before looking at the documents
+            return catalogXMLs == otherCatalogXMLs ||
+                   (catalogXMLs.size() == otherCatalogXMLs.size() && catalogXMLsHash == otherCatalogXMLs.hashCode() && catalogXMLs.equals(otherCatalogXMLs));
+        }
+
+        public List<String> getCatalogXMLs() {
+            return catalogXMLs;
+        }
+
+        public VersionedCatalog getCatalog() {
+            return catalog;
+        }
+    }
+}
@@ -19,23 +19,25 @@ package com.ning.billing.catalog.api.user;
 import javax.inject.Inject;
 
 import com.ning.billing.catalog.api.Catalog;
-import com.ning.billing.catalog.api.CatalogService;
 import com.ning.billing.catalog.api.CatalogUserApi;
+import com.ning.billing.util.callcontext.InternalCallContextFactory;
 import com.ning.billing.util.callcontext.TenantContext;
+import com.ning.billing.util.svcapi.catalog.CatalogInternalApi;
 
 public class DefaultCatalogUserApi implements CatalogUserApi {
 
-    private final CatalogService catalogService;
+    private final CatalogInternalApi catalogInternalApi;
+    private final InternalCallContextFactory internalCallContextFactory;
 
     @Inject
-    public DefaultCatalogUserApi(final CatalogService catalogService) {
-        this.catalogService = catalogService;
+    public DefaultCatalogUserApi(final CatalogInternalApi catalogInternalApi, final InternalCallContextFactory internalCallContextFactory) {
+        this.catalogInternalApi = catalogInternalApi;
+        this.internalCallContextFactory = internalCallContextFactory;
     }
 
     @Override
     public Catalog getCatalog(final String catalogName, final TenantContext context) {
-        // STEPH TODO this is  hack until we decides what do do exactly:
-        // Probably we want one catalog for tenant but but TBD
-        return catalogService.getFullCatalog();
+        // Each tenant has a single catalog (its own or the default one), catalogName is ignored
+        return catalogInternalApi.getFullCatalog(internalCallContextFactory.createInternalTenantContext(context));
     }
 }
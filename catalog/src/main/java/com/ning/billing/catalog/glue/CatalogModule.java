@@ -26,6 +26,7 @@ import com.ning.billing.catalog.api.user.DefaultCatalogUserApi;
 import com.ning.billing.catalog.io.ICatalogLoader;
 import com.ning.billing.catalog.io.VersionedCatalogLoader;
 import com.ning.billing.util.config.CatalogConfig;
+import com.ning.billing.util.svcapi.catalog.CatalogInternalApi;
 
 import com.google.inject.AbstractModule;
 
@@ -43,7 +44,9 @@ public class CatalogModule extends AbstractModule {
     }
 
     protected void installCatalog() {
-        bind(CatalogService.class).to(DefaultCatalogService.class).asEagerSingleton();
+        bind(DefaultCatalogService.class).asEagerSingleton();
+        bind(CatalogService.class).to(DefaultCatalogService.class);
+        bind(CatalogInternalApi.class).to(DefaultCatalogService.class);
         bind(ICatalogLoader.class).to(VersionedCatalogLoader.class).asEagerSingleton();
     }
 
@@ -16,12 +16,15 @@
 
 package com.ning.billing.catalog.io;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.google.common.base.Charsets;
 import com.google.common.io.Resources;
 import com.google.inject.Inject;
 import com.ning.billing.catalog.StandaloneCatalog;
@@ -82,6 +85,30 @@ public class VersionedCatalogLoader implements ICatalogLoader {
         }
     }
 
+    /**
+     * Load a catalog from its versions, one StandaloneCatalog XML document per version
+     *
+     * @param catalogXMLs the XML documents
+     * @param sourceName  name used to identify the documents in validation errors
+     * @return the validated catalog
+     * @throws ServiceException if any version can't be parsed or is invalid
+     */
+    public VersionedCatalog load(final List<String> catalogXMLs, final String sourceName) throws ServiceException {
+        try {
+            final VersionedCatalog result = new VersionedCatalog(clock);
+            for (int i = 0; i < catalogXMLs.size(); i++) {
+                final URI uri = new URI(sourceName + "/" + i + XML_EXTENSION);
+                final InputStream stream = new ByteArrayInputStream(catalogXMLs.get(i).getBytes(Charsets.UTF_8));
+                final StandaloneCatalog catalog = XMLLoader.getObjectFromStream(uri, stream, StandaloneCatalog.class);
+                result.add(catalog);
+            }
+
+            return result;
+        } catch (Exception e) {
+            throw new ServiceException("Problem encountered loading catalog " + sourceName, e);
+        }
+    }
+
     protected List<URI> findXmlReferences(final String directoryContents, final URL url) throws URISyntaxException {
         if (url.getProtocol().equals(PROTOCOL_FOR_FILE)) {
             return findXmlFileReferences(directoryContents, url);
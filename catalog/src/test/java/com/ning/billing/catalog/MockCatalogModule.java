@@ -20,6 +20,8 @@ import org.mockito.Mockito;
 
 import com.ning.billing.catalog.api.Catalog;
 import com.ning.billing.catalog.api.CatalogService;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.svcapi.catalog.CatalogInternalApi;
 
 import com.google.inject.AbstractModule;
 
@@ -33,5 +35,10 @@ public class MockCatalogModule extends AbstractModule {
         Mockito.when(catalogService.getCurrentCatalog()).thenReturn(new MockCatalog());
         Mockito.when(catalogService.getFullCatalog()).thenReturn(catalog);
         bind(CatalogService.class).toInstance(catalogService);
+
+        final CatalogInternalApi catalogInternalApi = Mockito.mock(CatalogInternalApi.class);
+        Mockito.when(catalogInternalApi.getCurrentCatalog(Mockito.<InternalTenantContext>any())).thenReturn(new MockCatalog());
+        Mockito.when(catalogInternalApi.getFullCatalog(Mockito.<InternalTenantContext>any())).thenReturn(catalog);
+        bind(CatalogInternalApi.class).toInstance(catalogInternalApi);
     }
 }
@@ -18,6 +18,7 @@ package com.ning.billing.catalog;
 
 import com.ning.billing.catalog.api.Catalog;
 import com.ning.billing.catalog.api.StaticCatalog;
+import com.ning.billing.util.callcontext.InternalTenantContext;
 
 public class MockCatalogService extends DefaultCatalogService {
 
@@ -52,5 +53,15 @@ public class MockCatalogService extends DefaultCatalogService {
         return catalog;
     }
 
+    @Override
+    public Catalog getFullCatalog(final InternalTenantContext context) {
+        return catalog;
+    }
+
+    @Override
+    public StaticCatalog getCurrentCatalog(final InternalTenantContext context) {
+        return catalog;
+    }
+
 
 }
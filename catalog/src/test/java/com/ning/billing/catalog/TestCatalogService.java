@@ -24,6 +24,9 @@ import com.ning.billing.lifecycle.KillbillService.ServiceException;
 import com.ning.billing.clock.DefaultClock;
 import com.ning.billing.util.config.CatalogConfig;
 
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+
 public class TestCatalogService extends CatalogTestSuiteNoDB {
 
     @Test(groups = "fast")
@@ -53,4 +56,23 @@ public class TestCatalogService extends CatalogTestSuiteNoDB {
         Assert.assertNotNull(service.getFullCatalog());
         Assert.assertEquals(service.getFullCatalog().getCatalogName(), "Firearms");
     }
+
+    @Test(groups = "fast")
+    public void testValidateNewCatalogVersion() throws Exception {
+        final DefaultCatalogService service = new DefaultCatalogService(new CatalogConfig() {
+            @Override
+            public String getCatalogURI() {
+                return "file:src/test/resources/WeaponsHire.xml";
+            }
+
+        }, new VersionedCatalogLoader(new DefaultClock()));
+
+        service.validateNewCatalogVersion(Resources.toString(Resources.getResource("versionedCatalog/WeaponsHireSmall-1.xml"), Charsets.UTF_8), internalCallContext);
+        try {
+            service.validateNewCatalogVersion("<catalog>", internalCallContext);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // Expected, the upload is rejected
+        }
+    }
 }
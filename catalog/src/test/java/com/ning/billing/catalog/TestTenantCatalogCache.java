@@ -0,0 +1,106 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.ning.billing.catalog;
+
+import java.util.List;
+
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ning.billing.lifecycle.KillbillService.ServiceException;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.svcapi.tenant.TenantInternalApi;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Resources;
+
+public class TestTenantCatalogCache extends CatalogTestSuiteNoDB {
+
+    private final InternalTenantContext tenantContext = new InternalTenantContext(12L, null);
+
+    private TenantInternalApi tenantInternalApi;
+    private TenantCatalogCache tenantCatalogCache;
+    private String catalogV1;
+    private String catalogV3;
+
+    @BeforeMethod(groups = "fast")
+    public void beforeMethod() throws Exception {
+        tenantInternalApi = Mockito.mock(TenantInternalApi.class);
+        tenantCatalogCache = new TenantCatalogCache(tenantInternalApi, loader);
+        catalogV1 = Resources.toString(Resources.getResource("versionedCatalog/WeaponsHireSmall-1.xml"), Charsets.UTF_8);
+        catalogV3 = Resources.toString(Resources.getResource("versionedCatalog/WeaponsHireSmall-3.xml"), Charsets.UTF_8);
+    }
+
+    @AfterMethod(groups = "fast")
+    public void afterMethod() throws Exception {
+        tenantCatalogCache.stop();
+    }
+
+    @Test(groups = "fast")
+    public void testNewVersionIsSwappedInBackground() throws Exception {
+        Mockito.when(tenantInternalApi.getTenantCatalogs(tenantContext)).thenReturn(ImmutableList.<String>of(catalogV1));
+        final VersionedCatalog initialCatalog = tenantCatalogCache.getCatalog(tenantContext);
+        Assert.assertEquals(initialCatalog.size(), 1);
+
+        // Same versions, reloaded from the database: no new catalog is built
+        Mockito.when(tenantInternalApi.getTenantCatalogs(tenantContext)).thenReturn(ImmutableList.<String>of(new String(catalogV1)));
+        Assert.assertSame(tenantCatalogCache.getCatalog(tenantContext), initialCatalog);
+        Assert.assertSame(tenantCatalogCache.getCatalog(tenantContext), initialCatalog);
+
+        // The previous catalog keeps being served until the new one is built
+        Mockito.when(tenantInternalApi.getTenantCatalogs(tenantContext)).thenReturn(ImmutableList.<String>of(catalogV1, catalogV3));
+        VersionedCatalog catalog = tenantCatalogCache.getCatalog(tenantContext);
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (catalog == initialCatalog && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            catalog = tenantCatalogCache.getCatalog(tenantContext);
+        }
+        Assert.assertEquals(catalog.size(), 2);
+
+        // Callers holding the previous catalog still see it unchanged
+        Assert.assertEquals(initialCatalog.size(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testInvalidNewVersionIsRejected() throws Exception {
+        final List<String> catalogXMLs = ImmutableList.<String>of(catalogV1);
+        Mockito.when(tenantInternalApi.getTenantCatalogs(tenantContext)).thenReturn(catalogXMLs);
+
+        tenantCatalogCache.validateNewVersion(catalogV3, tenantContext);
+
+        try {
+            tenantCatalogCache.validateNewVersion("<catalog>", tenantContext);
+            Assert.fail();
+        } catch (ServiceException e) {
+            // Expected
+        }
+
+        // The existing versions are validated with the new one
+        Mockito.when(tenantInternalApi.getTenantCatalogs(tenantContext)).thenReturn(ImmutableList.<String>of("<catalog>"));
+        try {
+            tenantCatalogCache.validateNewVersion(catalogV3, tenantContext);
+            Assert.fail();
+        } catch (ServiceException e) {
+            // Expected
+        }
+    }
+}
@@ -18,9 +18,19 @@ package com.ning.billing.catalog.glue;
 
 import org.skife.config.ConfigSource;
 
+import com.ning.billing.mock.glue.MockNonEntityDaoModule;
+import com.ning.billing.util.glue.CacheModule;
+
 public class TestCatalogModuleNoDB extends TestCatalogModule {
 
     public TestCatalogModuleNoDB(final ConfigSource configSource) {
         super(configSource);
     }
+
+    @Override
+    public void configure() {
+        super.configure();
+        install(new CacheModule(configSource));
+        install(new MockNonEntityDaoModule());
+    }
 }
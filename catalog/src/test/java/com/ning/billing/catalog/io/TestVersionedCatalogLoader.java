@@ -38,6 +38,8 @@ import com.ning.billing.catalog.VersionedCatalog;
 import com.ning.billing.catalog.api.InvalidConfigException;
 import com.ning.billing.lifecycle.KillbillService.ServiceException;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
 import com.google.common.io.Resources;
 
 public class TestVersionedCatalogLoader extends CatalogTestSuiteNoDB {
@@ -125,4 +127,16 @@ public class TestVersionedCatalogLoader extends CatalogTestSuiteNoDB {
         dt = new DateTime("2011-03-03T00:00:00+00:00");
         Assert.assertEquals(it.next().getEffectiveDate(), dt.toDate());
     }
+
+    @Test(groups = "fast")
+    public void testLoadFromXMLs() throws Exception {
+        // Versions don't need to be provided in order
+        final List<String> catalogXMLs = ImmutableList.<String>of(Resources.toString(Resources.getResource("versionedCatalog/WeaponsHireSmall-3.xml"), Charsets.UTF_8),
+                                                                  Resources.toString(Resources.getResource("versionedCatalog/WeaponsHireSmall-1.xml"), Charsets.UTF_8));
+        final VersionedCatalog c = loader.load(catalogXMLs, "tenant-catalog");
+        Assert.assertEquals(c.size(), 2);
+        final Iterator<StandaloneCatalog> it = c.iterator();
+        Assert.assertEquals(it.next().getEffectiveDate(), new DateTime("2011-01-01T00:00:00+00:00").toDate());
+        Assert.assertEquals(it.next().getEffectiveDate(), new DateTime("2011-03-03T00:00:00+00:00").toDate());
+    }
 }
@@ -114,6 +114,31 @@ public class DefaultEntitlementApi implements EntitlementApi {
         }
     }
 
+    // Create the base entitlement and its add-ons atomically (the first specifier is the BASE plan)
+    public List<Entitlement> createBaseEntitlementWithAddOns(final UUID accountId, final List<PlanPhaseSpecifier> planPhaseSpecifiers, final String externalKey,
+                                                             final LocalDate effectiveDate, final CallContext callContext) throws EntitlementApiException {
+        final InternalCallContext contextWithValidAccountRecordId = internalCallContextFactory.createInternalCallContext(accountId, callContext);
+        try {
+            final Account account = accountApi.getAccountById(accountId, contextWithValidAccountRecordId);
+            final SubscriptionBaseBundle bundle = subscriptionInternalApi.createBundleForAccount(accountId, externalKey, contextWithValidAccountRecordId);
+
+            final DateTime referenceTime = clock.getUTCNow();
+            final DateTime requestedDate = dateHelper.fromLocalDateAndReferenceTime(effectiveDate, referenceTime, contextWithValidAccountRecordId);
+            final List<SubscriptionBase> subscriptions = subscriptionInternalApi.createBaseSubscriptionWithAddOns(bundle.getId(), planPhaseSpecifiers, requestedDate, contextWithValidAccountRecordId);
+
+            final List<Entitlement> entitlements = new LinkedList<Entitlement>();
+            for (final SubscriptionBase subscription : subscriptions) {
+                entitlements.add(new DefaultEntitlement(dateHelper, subscription, accountId, bundle.getExternalKey(), EntitlementState.ACTIVE, null, account.getTimeZone(), this,
+                                                        internalCallContextFactory, blockingStateDao, clock, checker));
+            }
+            return entitlements;
+        } catch (SubscriptionBaseApiException e) {
+            throw new EntitlementApiException(e);
+        } catch (AccountApiException e) {
+            throw new EntitlementApiException(e);
+        }
+    }
+
     @Override
     public Entitlement addEntitlement(final UUID bundleId, final PlanPhaseSpecifier planPhaseSpecifier, final LocalDate effectiveDate, final CallContext callContext) throws EntitlementApiException {
         final InternalCallContext context = internalCallContextFactory.createInternalCallContext(callContext);
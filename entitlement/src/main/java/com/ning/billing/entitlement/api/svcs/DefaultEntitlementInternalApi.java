@@ -0,0 +1,98 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.ning.billing.entitlement.api.svcs;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+
+import com.ning.billing.account.api.Account;
+import com.ning.billing.account.api.AccountApiException;
+import com.ning.billing.catalog.api.BillingActionPolicy;
+import com.ning.billing.clock.Clock;
+import com.ning.billing.entitlement.EntitlementService;
+import com.ning.billing.entitlement.api.BlockingState;
+import com.ning.billing.entitlement.api.BlockingStateType;
+import com.ning.billing.entitlement.api.DefaultEntitlement;
+import com.ning.billing.entitlement.api.DefaultEntitlementApi;
+import com.ning.billing.entitlement.api.Entitlement;
+import com.ning.billing.entitlement.api.Entitlement.EntitlementState;
+import com.ning.billing.entitlement.api.EntitlementApiException;
+import com.ning.billing.entitlement.api.EntitlementDateHelper;
+import com.ning.billing.entitlement.dao.BlockingStateDao;
+import com.ning.billing.subscription.api.SubscriptionBase;
+import com.ning.billing.subscription.api.user.SubscriptionBaseApiException;
+import com.ning.billing.util.callcontext.InternalCallContext;
+import com.ning.billing.util.svcapi.account.AccountInternalApi;
+import com.ning.billing.util.svcapi.entitlement.EntitlementInternalApi;
+import com.ning.billing.util.svcapi.junction.DefaultBlockingState;
+import com.ning.billing.util.svcapi.subscription.SubscriptionBaseInternalApi;
+
+import com.google.inject.Inject;
+
+public class DefaultEntitlementInternalApi implements EntitlementInternalApi {
+
+    private final SubscriptionBaseInternalApi subscriptionInternalApi;
+    private final AccountInternalApi accountApi;
+    private final BlockingStateDao blockingStateDao;
+    private final Clock clock;
+    private final EntitlementDateHelper dateHelper;
+
+    @Inject
+    public DefaultEntitlementInternalApi(final SubscriptionBaseInternalApi subscriptionInternalApi, final AccountInternalApi accountApi,
+                                         final BlockingStateDao blockingStateDao, final Clock clock) {
+        this.subscriptionInternalApi = subscriptionInternalApi;
+        this.accountApi = accountApi;
+        this.blockingStateDao = blockingStateDao;
+        this.clock = clock;
+        this.dateHelper = new EntitlementDateHelper(accountApi, clock);
+    }
+
+    @Override
+    public void cancelEntitlementsWithDateOverrideBillingPolicy(final UUID accountId, final List<Entitlement> entitlements, final LocalDate localCancelDate,
+                                                                final BillingActionPolicy billingPolicy, final InternalCallContext context) throws EntitlementApiException {
+        try {
+            final Account account = accountApi.getAccountById(accountId, context);
+            final LocalDate effectiveLocalDate = new LocalDate(localCancelDate, account.getTimeZone());
+
+            final List<SubscriptionBase> subscriptions = new LinkedList<SubscriptionBase>();
+            final List<BlockingState> blockingStates = new LinkedList<BlockingState>();
+            for (final Entitlement entitlement : entitlements) {
+                final SubscriptionBase subscriptionBase = ((DefaultEntitlement) entitlement).getSubscriptionBase();
+                if (entitlement.getState() == EntitlementState.CANCELLED || subscriptionBase.getState() != EntitlementState.ACTIVE) {
+                    continue;
+                }
+
+                final DateTime effectiveDate = dateHelper.fromLocalDateAndReferenceTime(effectiveLocalDate, subscriptionBase.getStartDate(), account.getTimeZone());
+                subscriptions.add(subscriptionBase);
+                blockingStates.add(new DefaultBlockingState(entitlement.getId(), BlockingStateType.SUBSCRIPTION, DefaultEntitlementApi.ENT_STATE_CANCELLED, EntitlementService.ENTITLEMENT_SERVICE_NAME, true, true, false, effectiveDate));
+            }
+
+            subscriptionInternalApi.cancelSubscriptionsWithPolicy(subscriptions, billingPolicy, context);
+            // Separate transaction, the subscription and blocking state tables are owned by different modules (same as DefaultEntitlement#cancelEntitlementWithDateOverrideBillingPolicy)
+            blockingStateDao.setBlockingStates(blockingStates, clock, context);
+        } catch (SubscriptionBaseApiException e) {
+            throw new EntitlementApiException(e);
+        } catch (AccountApiException e) {
+            throw new EntitlementApiException(e);
+        }
+    }
+}
@@ -82,4 +82,13 @@ public interface BlockingStateDao {
      * @param context
      */
     public void setBlockingState(BlockingState state, Clock clock, InternalCallContext context);
+
+    /**
+     * Sets new states in a single transaction.
+     *
+     * @param states
+     * @param clock
+     * @param context
+     */
+    public void setBlockingStates(List<BlockingState> states, Clock clock, InternalCallContext context);
 }
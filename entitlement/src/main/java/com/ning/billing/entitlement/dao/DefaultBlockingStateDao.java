@@ -138,4 +138,22 @@ public class DefaultBlockingStateDao implements BlockingStateDao {
             }
         });
     }
+
+    @Override
+    public void setBlockingStates(final List<BlockingState> states, final Clock clock, final InternalCallContext context) {
+        if (states.isEmpty()) {
+            return;
+        }
+
+        transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Void>() {
+            @Override
+            public Void inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final BlockingStateSqlDao sqlDao = entitySqlDaoWrapperFactory.become(BlockingStateSqlDao.class);
+                for (final BlockingState state : states) {
+                    sqlDao.create(new BlockingStateModelDao(state, context), context);
+                }
+                return null;
+            }
+        });
+    }
 }
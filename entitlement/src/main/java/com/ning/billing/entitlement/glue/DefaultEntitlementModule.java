@@ -24,12 +24,14 @@ import com.ning.billing.entitlement.api.DefaultEntitlementApi;
 import com.ning.billing.entitlement.api.DefaultSubscriptionApi;
 import com.ning.billing.entitlement.api.EntitlementApi;
 import com.ning.billing.entitlement.api.SubscriptionApi;
+import com.ning.billing.entitlement.api.svcs.DefaultEntitlementInternalApi;
 import com.ning.billing.entitlement.api.svcs.DefaultInternalBlockingApi;
 import com.ning.billing.entitlement.block.BlockingChecker;
 import com.ning.billing.entitlement.block.DefaultBlockingChecker;
 import com.ning.billing.entitlement.dao.BlockingStateDao;
 import com.ning.billing.entitlement.dao.DefaultBlockingStateDao;
 import com.ning.billing.glue.EntitlementModule;
+import com.ning.billing.util.svcapi.entitlement.EntitlementInternalApi;
 import com.ning.billing.util.svcapi.junction.BlockingInternalApi;
 
 import com.google.inject.AbstractModule;
@@ -44,6 +46,7 @@ public class DefaultEntitlementModule extends AbstractModule implements Entitlem
     protected void configure() {
         installBlockingStateDao();
         installBlockingApi();
+        installEntitlementInternalApi();
         installEntitlementApi();
         installSubscriptionApi();
         installBlockingChecker();
@@ -60,6 +63,10 @@ public class DefaultEntitlementModule extends AbstractModule implements Entitlem
         bind(BlockingInternalApi.class).to(DefaultInternalBlockingApi.class).asEagerSingleton();
     }
 
+    @Override
+    public void installEntitlementInternalApi() {
+        bind(EntitlementInternalApi.class).to(DefaultEntitlementInternalApi.class).asEagerSingleton();
+    }
 
     @Override
     public void installEntitlementApi() {
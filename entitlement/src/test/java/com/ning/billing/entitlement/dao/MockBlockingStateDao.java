@@ -111,6 +111,13 @@ public class MockBlockingStateDao implements BlockingStateDao {
         blockingStates.get(state.getBlockedId()).add(state);
     }
 
+    @Override
+    public synchronized void setBlockingStates(final List<BlockingState> states, final Clock clock, final InternalCallContext context) {
+        for (final BlockingState state : states) {
+            setBlockingState(state, clock, context);
+        }
+    }
+
     public synchronized void setBlockingStates(final UUID blockedId, final List<BlockingState> states) {
         blockingStates.put(blockedId, states);
     }
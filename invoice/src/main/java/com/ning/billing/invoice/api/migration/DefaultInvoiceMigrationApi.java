@@ -17,6 +17,13 @@
 package com.ning.billing.invoice.api.migration;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
@@ -34,8 +41,11 @@ import com.ning.billing.invoice.dao.InvoiceItemModelDao;
 import com.ning.billing.invoice.dao.InvoiceModelDao;
 import com.ning.billing.invoice.dao.InvoicePaymentModelDao;
 import com.ning.billing.util.callcontext.CallContext;
+import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalCallContextFactory;
+import com.ning.billing.util.callcontext.InternalTenantContext;
 import com.ning.billing.clock.Clock;
+import com.ning.billing.util.config.InvoiceConfig;
 import com.ning.billing.util.svcapi.account.AccountInternalApi;
 
 import com.google.common.collect.ImmutableList;
@@ -49,16 +59,19 @@ public class DefaultInvoiceMigrationApi implements InvoiceMigrationApi {
     private final AccountInternalApi accountUserApi;
     private final DefaultInvoiceDao dao;
     private final Clock clock;
+    private final InvoiceConfig config;
     private final InternalCallContextFactory internalCallContextFactory;
 
     @Inject
     public DefaultInvoiceMigrationApi(final AccountInternalApi accountUserApi,
                                       final DefaultInvoiceDao dao,
                                       final Clock clock,
+                                      final InvoiceConfig config,
                                       final InternalCallContextFactory internalCallContextFactory) {
         this.accountUserApi = accountUserApi;
         this.dao = dao;
         this.clock = clock;
+        this.config = config;
         this.internalCallContextFactory = internalCallContextFactory;
     }
 
@@ -71,13 +84,84 @@ public class DefaultInvoiceMigrationApi implements InvoiceMigrationApi {
             return null;
         }
 
+        final InvoiceModelDao migrationInvoice = createMigrationInvoiceModelDao(accountId, targetDate, balance, currency, context);
+        dao.createInvoice(migrationInvoice, migrationInvoice.getInvoiceItems(),
+                          ImmutableList.<InvoicePaymentModelDao>of(), true, ImmutableMap.<UUID, DateTime>of(), internalCallContextFactory.createInternalCallContext(accountId, context));
+
+        return migrationInvoice.getId();
+    }
+
+    @Override
+    public List<UUID> createMigrationInvoices(final Iterable<MigrationInvoice> invoices, final CallContext context) {
+        final InternalTenantContext tenantContext = internalCallContextFactory.createInternalTenantContext(context);
+
+        final List<UUID> invoiceIds = new ArrayList<UUID>();
+        // Invoices to write, by position in the input
+        final Map<Integer, InvoiceModelDao> batch = new LinkedHashMap<Integer, InvoiceModelDao>();
+        // Accounts are looked up once per batch (historical invoices usually come grouped by account)
+        final Map<UUID, InternalCallContext> contexts = new HashMap<UUID, InternalCallContext>();
+        final Set<UUID> unknownAccounts = new HashSet<UUID>();
+        for (final MigrationInvoice cur : invoices) {
+            final UUID accountId = cur.getAccountId();
+            if (!contexts.containsKey(accountId) && !unknownAccounts.contains(accountId)) {
+                try {
+                    accountUserApi.getAccountById(accountId, tenantContext);
+                    contexts.put(accountId, internalCallContextFactory.createInternalCallContext(accountId, context));
+                } catch (AccountApiException e) {
+                    log.warn("Unable to find account for id {}", accountId);
+                    unknownAccounts.add(accountId);
+                }
+            }
+
+            if (unknownAccounts.contains(accountId)) {
+                invoiceIds.add(null);
+                continue;
+            }
+
+            final InvoiceModelDao migrationInvoice = createMigrationInvoiceModelDao(accountId, cur.getTargetDate(), cur.getBalance(), cur.getCurrency(), context);
+            batch.put(invoiceIds.size(), migrationInvoice);
+            invoiceIds.add(migrationInvoice.getId());
+
+            if (batch.size() >= config.getMigrationBatchSize()) {
+                migrateBatch(batch, contexts, invoiceIds);
+                batch.clear();
+                contexts.clear();
+                unknownAccounts.clear();
+            }
+        }
+
+        migrateBatch(batch, contexts, invoiceIds);
+
+        return invoiceIds;
+    }
+
+    private void migrateBatch(final Map<Integer, InvoiceModelDao> batch, final Map<UUID, InternalCallContext> contexts, final List<UUID> invoiceIds) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            dao.createMigrationInvoices(ImmutableList.<InvoiceModelDao>copyOf(batch.values()), contexts);
+        } catch (RuntimeException e) {
+            log.warn("Failed to migrate a batch of {} invoices, retrying them one by one", batch.size(), e);
+            for (final Integer position : batch.keySet()) {
+                final InvoiceModelDao migrationInvoice = batch.get(position);
+                try {
+                    dao.createMigrationInvoices(ImmutableList.<InvoiceModelDao>of(migrationInvoice), contexts);
+                } catch (RuntimeException inner) {
+                    log.warn("Failed to migrate invoice for account " + migrationInvoice.getAccountId(), inner);
+                    invoiceIds.set(position, null);
+                }
+            }
+        }
+    }
+
+    private InvoiceModelDao createMigrationInvoiceModelDao(final UUID accountId, final LocalDate targetDate, final BigDecimal balance, final Currency currency, final CallContext context) {
         final InvoiceModelDao migrationInvoice = new InvoiceModelDao(accountId, clock.getUTCToday(), targetDate, currency, true);
         final InvoiceItemModelDao migrationInvoiceItem = new InvoiceItemModelDao(context.getCreatedDate(), InvoiceItemType.FIXED, migrationInvoice.getId(), accountId, null, null,
                                                                                  MigrationPlan.MIGRATION_PLAN_NAME, MigrationPlan.MIGRATION_PLAN_PHASE_NAME,
                                                                                  targetDate, null, balance, null, currency, null);
-        dao.createInvoice(migrationInvoice, ImmutableList.<InvoiceItemModelDao>of(migrationInvoiceItem),
-                          ImmutableList.<InvoicePaymentModelDao>of(), true, ImmutableMap.<UUID, DateTime>of(), internalCallContextFactory.createInternalCallContext(accountId, context));
-
-        return migrationInvoice.getId();
+        migrationInvoice.addInvoiceItems(ImmutableList.<InvoiceItemModelDao>of(migrationInvoiceItem));
+        return migrationInvoice;
     }
 }
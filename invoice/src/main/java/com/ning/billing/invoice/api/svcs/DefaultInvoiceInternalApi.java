@@ -18,6 +18,8 @@ package com.ning.billing.invoice.api.svcs;
 
 import java.math.BigDecimal;
 import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -95,6 +97,16 @@ public class DefaultInvoiceInternalApi implements InvoiceInternalApi {
         dao.notifyOfPayment(new InvoicePaymentModelDao(invoicePayment), context);
     }
 
+    @Override
+    public void notifyOfPayment(final UUID paymentId, final Map<UUID, BigDecimal> amountsByInvoiceId, final Currency currency, final DateTime paymentDate, final InternalCallContext context) throws InvoiceApiException {
+        final List<InvoicePaymentModelDao> invoicePayments = new LinkedList<InvoicePaymentModelDao>();
+        for (final UUID invoiceId : amountsByInvoiceId.keySet()) {
+            final InvoicePayment invoicePayment = new DefaultInvoicePayment(InvoicePaymentType.ATTEMPT, paymentId, invoiceId, paymentDate, amountsByInvoiceId.get(invoiceId), currency);
+            invoicePayments.add(new InvoicePaymentModelDao(invoicePayment));
+        }
+        dao.notifyOfPayments(invoicePayments, context);
+    }
+
     @Override
     public InvoicePayment getInvoicePaymentForAttempt(final UUID paymentId, final InternalTenantContext context) throws InvoiceApiException {
         final Collection<InvoicePayment> invoicePayments = Collections2.transform(dao.getInvoicePayments(paymentId, context), new Function<InvoicePaymentModelDao, InvoicePayment>() {
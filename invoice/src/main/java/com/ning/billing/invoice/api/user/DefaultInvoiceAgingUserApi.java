@@ -0,0 +1,175 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.invoice.api.user;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.LocalDate;
+
+import com.ning.billing.invoice.api.AccountAging;
+import com.ning.billing.invoice.api.AccountsAgingPage;
+import com.ning.billing.invoice.api.AgingBucket;
+import com.ning.billing.invoice.api.AgingReport;
+import com.ning.billing.invoice.api.InvoiceAgingUserApi;
+import com.ning.billing.invoice.dao.InvoiceAgingDao;
+import com.ning.billing.invoice.dao.InvoiceAgingDao.AccountAgingPage;
+import com.ning.billing.invoice.model.DefaultAccountAging;
+import com.ning.billing.invoice.model.DefaultAccountsAgingPage;
+import com.ning.billing.invoice.model.DefaultAgingReport;
+import com.ning.billing.util.callcontext.InternalCallContextFactory;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.callcontext.TenantContext;
+import com.ning.billing.util.config.InvoiceConfig;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema.ColumnType;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.inject.Inject;
+
+public class DefaultInvoiceAgingUserApi implements InvoiceAgingUserApi {
+
+    private static final CsvMapper mapper = new CsvMapper();
+    private static final CsvSchema CSV_SCHEMA;
+    private static final String CSV_HEADER;
+
+    static {
+        final CsvSchema.Builder builder = CsvSchema.builder();
+        builder.addColumn("accountId", ColumnType.STRING);
+        builder.addColumn("currency", ColumnType.STRING);
+        builder.addColumn("overdueState", ColumnType.STRING);
+        builder.addColumn("oldestUnpaidInvoiceDate", ColumnType.STRING);
+        for (final AgingBucket bucket : AgingBucket.values()) {
+            builder.addColumn(bucket.toString(), ColumnType.NUMBER_OR_STRING);
+        }
+        builder.addColumn("totalBalance", ColumnType.NUMBER_OR_STRING);
+        CSV_SCHEMA = builder.build();
+
+        final List<String> columnNames = new LinkedList<String>();
+        for (final CsvSchema.Column column : CSV_SCHEMA) {
+            columnNames.add(column.getName());
+        }
+        CSV_HEADER = Joiner.on(CSV_SCHEMA.getColumnSeparator()).join(columnNames) + "\n";
+    }
+
+    private final InvoiceAgingDao dao;
+    private final InvoiceConfig config;
+    private final InternalCallContextFactory internalCallContextFactory;
+
+    @Inject
+    public DefaultInvoiceAgingUserApi(final InvoiceAgingDao dao, final InvoiceConfig config, final InternalCallContextFactory internalCallContextFactory) {
+        this.dao = dao;
+        this.config = config;
+        this.internalCallContextFactory = internalCallContextFactory;
+    }
+
+    @Override
+    public AgingReport getAgingReport(final LocalDate asOfDate, final TenantContext context) {
+        final InternalTenantContext internalTenantContext = internalCallContextFactory.createInternalTenantContext(context);
+
+        final DefaultAgingReport report = new DefaultAgingReport(asOfDate);
+        Long fromAccountRecordId = 0L;
+        while (fromAccountRecordId != null) {
+            final AccountAgingPage page = dao.getAccountsAging(asOfDate, fromAccountRecordId, config.getAgingReportPageSize(), internalTenantContext);
+            for (final AccountAging accountAging : page.getAccountsAging()) {
+                report.add(accountAging);
+            }
+            fromAccountRecordId = page.getNextFromAccountRecordId();
+        }
+        return report;
+    }
+
+    @Override
+    public AccountsAgingPage getAccountsAging(final LocalDate asOfDate, @Nullable final Long cursor, final int limit, final TenantContext context) {
+        Preconditions.checkArgument(limit > 0, "limit should be positive");
+        final InternalTenantContext internalTenantContext = internalCallContextFactory.createInternalTenantContext(context);
+
+        // Look for one more account than requested, to know whether there is a next page. Accounts without
+        // unpaid balance are filtered out by the database: keep scanning until enough accounts have been found.
+        final int nbAccountsToFind = limit + 1;
+        final List<DefaultAccountAging> accountsAging = new LinkedList<DefaultAccountAging>();
+        final Set<Long> accountRecordIds = new LinkedHashSet<Long>();
+        Long fromAccountRecordId = cursor == null ? 0L : cursor;
+        while (fromAccountRecordId != null && accountRecordIds.size() < nbAccountsToFind) {
+            final AccountAgingPage page = dao.getAccountsAging(asOfDate, fromAccountRecordId, nbAccountsToFind - accountRecordIds.size(), internalTenantContext);
+            for (final DefaultAccountAging accountAging : page.getAccountsAging()) {
+                accountsAging.add(accountAging);
+                accountRecordIds.add(accountAging.getAccountRecordId());
+            }
+            fromAccountRecordId = page.getNextFromAccountRecordId();
+        }
+
+        if (accountRecordIds.size() <= limit) {
+            return new DefaultAccountsAgingPage(ImmutableList.<AccountAging>copyOf(accountsAging), null);
+        }
+
+        // Drop the extra account: the last account of the page is the cursor for the next one
+        final Long lastAccountRecordId = Iterables.get(accountRecordIds, limit - 1);
+        final List<AccountAging> result = new LinkedList<AccountAging>();
+        for (final DefaultAccountAging accountAging : accountsAging) {
+            if (accountAging.getAccountRecordId() <= lastAccountRecordId) {
+                result.add(accountAging);
+            }
+        }
+        return new DefaultAccountsAgingPage(result, lastAccountRecordId);
+    }
+
+    @Override
+    public void exportAccountsAgingAsCSV(final LocalDate asOfDate, final OutputStream out, final TenantContext context) throws IOException {
+        final InternalTenantContext internalTenantContext = internalCallContextFactory.createInternalTenantContext(context);
+
+        out.write(CSV_HEADER.getBytes(Charsets.UTF_8));
+        final ObjectWriter writer = mapper.writer(CSV_SCHEMA);
+
+        Long fromAccountRecordId = 0L;
+        while (fromAccountRecordId != null) {
+            final AccountAgingPage page = dao.getAccountsAging(asOfDate, fromAccountRecordId, config.getAgingReportPageSize(), internalTenantContext);
+            for (final AccountAging accountAging : page.getAccountsAging()) {
+                out.write(writer.writeValueAsBytes(toCSVRow(accountAging)));
+            }
+            out.flush();
+            fromAccountRecordId = page.getNextFromAccountRecordId();
+        }
+    }
+
+    private Map<String, Object> toCSVRow(final AccountAging accountAging) {
+        final Map<String, Object> row = new HashMap<String, Object>();
+        row.put("accountId", accountAging.getAccountId().toString());
+        row.put("currency", accountAging.getCurrency().toString());
+        row.put("overdueState", accountAging.getOverdueState());
+        row.put("oldestUnpaidInvoiceDate", accountAging.getOldestUnpaidInvoiceDate().toString());
+        for (final AgingBucket bucket : AgingBucket.values()) {
+            row.put(bucket.toString(), accountAging.getBalances().get(bucket));
+        }
+        row.put("totalBalance", accountAging.getTotalBalance());
+        return row;
+    }
+}
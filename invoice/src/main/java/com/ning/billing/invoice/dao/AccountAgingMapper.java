@@ -0,0 +1,57 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.invoice.dao;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import com.ning.billing.catalog.api.Currency;
+import com.ning.billing.invoice.api.AgingBucket;
+import com.ning.billing.invoice.model.DefaultAccountAging;
+import com.ning.billing.util.dao.MapperBase;
+
+import com.google.common.collect.ImmutableMap;
+
+public class AccountAgingMapper extends MapperBase implements ResultSetMapper<DefaultAccountAging> {
+
+    private static final Map<AgingBucket, String> BUCKET_COLUMNS = ImmutableMap.<AgingBucket, String>of(AgingBucket.DAYS_0_30, "balance_0_30",
+                                                                                                      AgingBucket.DAYS_31_60, "balance_31_60",
+                                                                                                      AgingBucket.DAYS_61_90, "balance_61_90",
+                                                                                                      AgingBucket.DAYS_91_120, "balance_91_120",
+                                                                                                      AgingBucket.DAYS_OVER_120, "balance_over_120");
+
+    @Override
+    public DefaultAccountAging map(final int index, final ResultSet r, final StatementContext ctx) throws SQLException {
+        final ImmutableMap.Builder<AgingBucket, BigDecimal> balances = ImmutableMap.<AgingBucket, BigDecimal>builder();
+        for (final AgingBucket bucket : AgingBucket.values()) {
+            balances.put(bucket, r.getBigDecimal(BUCKET_COLUMNS.get(bucket)));
+        }
+
+        return new DefaultAccountAging(getUUID(r, "account_id"),
+                                       r.getLong("account_record_id"),
+                                       Currency.valueOf(r.getString("currency")),
+                                       r.getString("overdue_state"),
+                                       getDate(r, "oldest_unpaid_invoice_date"),
+                                       balances.build(),
+                                       r.getBigDecimal("total_balance"));
+    }
+}
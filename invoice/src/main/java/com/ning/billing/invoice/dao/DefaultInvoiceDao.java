@@ -17,8 +17,12 @@
 package com.ning.billing.invoice.dao;
 
 import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
@@ -43,13 +47,17 @@ import com.ning.billing.util.cache.CacheControllerDispatcher;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalTenantContext;
 import com.ning.billing.clock.Clock;
+import com.ning.billing.util.dao.DBRouter;
 import com.ning.billing.util.dao.NonEntityDao;
+import com.ning.billing.util.entity.EntityPersistenceException;
 import com.ning.billing.util.entity.dao.EntityDaoBase;
 import com.ning.billing.util.entity.dao.EntitySqlDao;
 import com.ning.billing.util.entity.dao.EntitySqlDaoTransactionWrapper;
 import com.ning.billing.util.entity.dao.EntitySqlDaoTransactionalJdbiWrapper;
 import com.ning.billing.util.entity.dao.EntitySqlDaoWrapperFactory;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 
 public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, InvoiceApiException> implements InvoiceDao {
@@ -63,12 +71,13 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
 
     @Inject
     public DefaultInvoiceDao(final IDBI dbi,
+                             final DBRouter dbRouter,
                              final NextBillingDatePoster nextBillingDatePoster,
                              final PersistentBus eventBus,
                              final Clock clock,
                              final CacheControllerDispatcher cacheControllerDispatcher,
                              final NonEntityDao nonEntityDao) {
-        super(new EntitySqlDaoTransactionalJdbiWrapper(dbi, clock, cacheControllerDispatcher, nonEntityDao), InvoiceSqlDao.class);
+        super(new EntitySqlDaoTransactionalJdbiWrapper(dbi, dbRouter, clock, cacheControllerDispatcher, nonEntityDao), InvoiceSqlDao.class);
         this.nextBillingDatePoster = nextBillingDatePoster;
         this.eventBus = eventBus;
         this.invoiceDaoHelper = new InvoiceDaoHelper();
@@ -82,7 +91,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
 
     @Override
     public List<InvoiceModelDao> getInvoicesByAccount(final UUID accountId, final InternalTenantContext context) {
-        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<InvoiceModelDao>>() {
+        return transactionalSqlDao.executeReadOnly(new EntitySqlDaoTransactionWrapper<List<InvoiceModelDao>>() {
             @Override
             public List<InvoiceModelDao> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 final InvoiceSqlDao invoiceDao = entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class);
@@ -97,7 +106,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
 
     @Override
     public List<InvoiceModelDao> getAllInvoicesByAccount(final UUID accountId, final InternalTenantContext context) {
-        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<InvoiceModelDao>>() {
+        return transactionalSqlDao.executeReadOnly(new EntitySqlDaoTransactionWrapper<List<InvoiceModelDao>>() {
             @Override
             public List<InvoiceModelDao> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 return invoiceDaoHelper.getAllInvoicesByAccountFromTransaction(accountId, entitySqlDaoWrapperFactory, context);
@@ -107,7 +116,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
 
     @Override
     public List<InvoiceModelDao> getInvoicesByAccount(final UUID accountId, final LocalDate fromDate, final InternalTenantContext context) {
-        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<InvoiceModelDao>>() {
+        return transactionalSqlDao.executeReadOnly(new EntitySqlDaoTransactionWrapper<List<InvoiceModelDao>>() {
             @Override
             public List<InvoiceModelDao> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 final InvoiceSqlDao invoiceDao = entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class);
@@ -124,7 +133,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
 
     @Override
     public List<InvoiceModelDao> get(final InternalTenantContext context) {
-        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<InvoiceModelDao>>() {
+        return transactionalSqlDao.executeReadOnly(new EntitySqlDaoTransactionWrapper<List<InvoiceModelDao>>() {
             @Override
             public List<InvoiceModelDao> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 final InvoiceSqlDao invoiceDao = entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class);
@@ -139,7 +148,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
 
     @Override
     public InvoiceModelDao getById(final UUID invoiceId, final InternalTenantContext context) {
-        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<InvoiceModelDao>() {
+        return transactionalSqlDao.executeReadOnly(new EntitySqlDaoTransactionWrapper<InvoiceModelDao>() {
             @Override
             public InvoiceModelDao inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 final InvoiceSqlDao invoiceDao = entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class);
@@ -160,7 +169,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
             throw new InvoiceApiException(ErrorCode.INVOICE_INVALID_NUMBER, "(null)");
         }
 
-        return transactionalSqlDao.execute(InvoiceApiException.class, new EntitySqlDaoTransactionWrapper<InvoiceModelDao>() {
+        return transactionalSqlDao.executeReadOnly(InvoiceApiException.class, new EntitySqlDaoTransactionWrapper<InvoiceModelDao>() {
             @Override
             public InvoiceModelDao inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 final InvoiceSqlDao invoiceDao = entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class);
@@ -212,9 +221,36 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
         });
     }
 
+    // Used by the bulk migration API: all the invoices (and their items) are created in a single transaction,
+    // no payment or future billing event is associated with migration invoices
+    public void createMigrationInvoices(final List<InvoiceModelDao> invoices, final Map<UUID, InternalCallContext> contexts) {
+        transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Void>() {
+            @Override
+            public Void inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final InvoiceSqlDao transactional = entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class);
+                final InvoiceItemSqlDao transInvoiceItemSqlDao = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class);
+
+                final Set<UUID> accountIds = new LinkedHashSet<UUID>();
+                for (final InvoiceModelDao invoice : invoices) {
+                    final InternalCallContext context = contexts.get(invoice.getAccountId());
+                    transactional.create(invoice, context);
+                    for (final InvoiceItemModelDao invoiceItemModelDao : invoice.getInvoiceItems()) {
+                        transInvoiceItemSqlDao.create(invoiceItemModelDao, context);
+                    }
+                    accountIds.add(invoice.getAccountId());
+                }
+
+                for (final UUID accountId : accountIds) {
+                    cbaDao.doCBAComplexity(accountId, entitySqlDaoWrapperFactory, contexts.get(accountId));
+                }
+                return null;
+            }
+        });
+    }
+
     @Override
     public List<InvoiceModelDao> getInvoicesBySubscription(final UUID subscriptionId, final InternalTenantContext context) {
-        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<InvoiceModelDao>>() {
+        return transactionalSqlDao.executeReadOnly(new EntitySqlDaoTransactionWrapper<List<InvoiceModelDao>>() {
             @Override
             public List<InvoiceModelDao> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 final InvoiceSqlDao invoiceDao = entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class);
@@ -229,7 +265,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
 
     @Override
     public BigDecimal getAccountBalance(final UUID accountId, final InternalTenantContext context) {
-        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<BigDecimal>() {
+        return transactionalSqlDao.executeReadOnly(new EntitySqlDaoTransactionWrapper<BigDecimal>() {
             @Override
             public BigDecimal inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 BigDecimal cba = BigDecimal.ZERO;
@@ -247,7 +283,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
 
     @Override
     public BigDecimal getAccountCBA(final UUID accountId, final InternalTenantContext context) {
-        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<BigDecimal>() {
+        return transactionalSqlDao.executeReadOnly(new EntitySqlDaoTransactionWrapper<BigDecimal>() {
             @Override
             public BigDecimal inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 return cbaDao.getAccountCBAFromTransaction(accountId, entitySqlDaoWrapperFactory, context);
@@ -268,7 +304,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
 
     @Override
     public UUID getInvoiceIdByPaymentId(final UUID paymentId, final InternalTenantContext context) {
-        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<UUID>() {
+        return transactionalSqlDao.executeReadOnly(new EntitySqlDaoTransactionWrapper<UUID>() {
             @Override
             public UUID inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 return entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class).getInvoiceIdByPaymentId(paymentId.toString(), context);
@@ -278,7 +314,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
 
     @Override
     public List<InvoicePaymentModelDao> getInvoicePayments(final UUID paymentId, final InternalTenantContext context) {
-        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<InvoicePaymentModelDao>>() {
+        return transactionalSqlDao.executeReadOnly(new EntitySqlDaoTransactionWrapper<List<InvoicePaymentModelDao>>() {
             @Override
             public List<InvoicePaymentModelDao> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 return entitySqlDaoWrapperFactory.become(InvoicePaymentSqlDao.class).getInvoicePayments(paymentId.toString(), context);
@@ -297,13 +333,23 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
             public InvoicePaymentModelDao inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 final InvoicePaymentSqlDao transactional = entitySqlDaoWrapperFactory.become(InvoicePaymentSqlDao.class);
 
-                final InvoiceSqlDao transInvoiceDao = entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class);
-
                 final InvoicePaymentModelDao payment = transactional.getByPaymentId(paymentId.toString(), context);
                 if (payment == null) {
                     throw new InvoiceApiException(ErrorCode.INVOICE_PAYMENT_BY_ATTEMPT_NOT_FOUND, paymentId);
                 }
 
+                // Consolidated payments pay several invoices (one attempt per invoice)
+                final List<InvoicePaymentModelDao> paymentAttempts = new LinkedList<InvoicePaymentModelDao>();
+                for (final InvoicePaymentModelDao cur : transactional.getInvoicePayments(paymentId.toString(), context)) {
+                    if (cur.getType() == InvoicePaymentType.ATTEMPT) {
+                        paymentAttempts.add(cur);
+                    }
+                }
+                if (paymentAttempts.size() > 1) {
+                    return createRefundForConsolidatedPayment(paymentAttempts, requestedRefundAmount, isInvoiceAdjusted, isInvoiceItemAdjusted,
+                                                              invoiceItemIdsWithNullAmounts, paymentCookieId, entitySqlDaoWrapperFactory, context);
+                }
+
                 // Retrieve the amounts to adjust, if needed
                 final Map<UUID, BigDecimal> invoiceItemIdsWithAmounts = invoiceDaoHelper.computeItemAdjustments(payment.getInvoiceId().toString(),
                                                                                                                 entitySqlDaoWrapperFactory,
@@ -320,56 +366,165 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
                     return existingRefund;
                 }
 
-                final InvoicePaymentModelDao refund = new InvoicePaymentModelDao(UUID.randomUUID(), context.getCreatedDate(), InvoicePaymentType.REFUND,
-                                                                                 payment.getInvoiceId(), paymentId,
-                                                                                 context.getCreatedDate(), requestedPositiveAmount.negate(),
-                                                                                 payment.getCurrency(), paymentCookieId, payment.getId());
-                transactional.create(refund, context);
+                return refundInvoicePayment(payment, requestedPositiveAmount, isInvoiceAdjusted, isInvoiceItemAdjusted, invoiceItemIdsWithAmounts,
+                                            paymentCookieId, entitySqlDaoWrapperFactory, context);
+            }
+        });
+    }
 
-                // Retrieve invoice after the Refund
-                final InvoiceModelDao invoice = transInvoiceDao.getById(payment.getInvoiceId().toString(), context);
-                if (invoice != null) {
-                    invoiceDaoHelper.populateChildren(invoice, entitySqlDaoWrapperFactory, context);
-                } else {
-                    throw new IllegalStateException("Invoice shouldn't be null for payment " + payment.getId());
-                }
+    /**
+     * Split the refund of a consolidated payment across the invoices it paid: each invoice is refunded its item adjustments first,
+     * then the rest of the refund is taken from the most recent invoice backwards, up to what is left paid on each invoice.
+     * All the refund payments share the same cookie id, the first one is returned.
+     */
+    private InvoicePaymentModelDao createRefundForConsolidatedPayment(final List<InvoicePaymentModelDao> paymentAttempts, @Nullable final BigDecimal requestedRefundAmount,
+                                                                      final boolean isInvoiceAdjusted, final boolean isInvoiceItemAdjusted,
+                                                                      final Map<UUID, BigDecimal> invoiceItemIdsWithNullAmounts, final UUID paymentCookieId,
+                                                                      final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory,
+                                                                      final InternalCallContext context) throws EntityPersistenceException, InvoiceApiException {
+        final InvoicePaymentModelDao existingRefund = entitySqlDaoWrapperFactory.become(InvoicePaymentSqlDao.class).getPaymentsForCookieId(paymentCookieId.toString(), context);
+        if (existingRefund != null) {
+            return existingRefund;
+        }
 
-                final BigDecimal invoiceBalanceAfterRefund = InvoiceModelDaoHelper.getBalance(invoice);
-                final InvoiceItemSqlDao transInvoiceItemDao = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class);
+        // Group the items to adjust by invoice
+        final Map<UUID, Map<UUID, BigDecimal>> invoiceItemIdsWithNullAmountsByInvoice = new HashMap<UUID, Map<UUID, BigDecimal>>();
+        for (final UUID invoiceItemId : invoiceItemIdsWithNullAmounts.keySet()) {
+            final InvoiceItemModelDao invoiceItem = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class).getById(invoiceItemId.toString(), context);
+            if (invoiceItem == null) {
+                throw new InvoiceApiException(ErrorCode.INVOICE_ITEM_NOT_FOUND, invoiceItemId);
+            }
+            if (invoiceItemIdsWithNullAmountsByInvoice.get(invoiceItem.getInvoiceId()) == null) {
+                invoiceItemIdsWithNullAmountsByInvoice.put(invoiceItem.getInvoiceId(), new HashMap<UUID, BigDecimal>());
+            }
+            invoiceItemIdsWithNullAmountsByInvoice.get(invoiceItem.getInvoiceId()).put(invoiceItemId, invoiceItemIdsWithNullAmounts.get(invoiceItemId));
+        }
 
-                // At this point, we created the refund which made the invoice balance positive and applied any existing
-                // available CBA to that invoice.
-                // We now need to adjust the invoice and/or invoice items if needed and specified.
-                if (isInvoiceAdjusted && !isInvoiceItemAdjusted) {
-                    // Invoice adjustment
-                    final BigDecimal maxBalanceToAdjust = (invoiceBalanceAfterRefund.compareTo(BigDecimal.ZERO) <= 0) ? BigDecimal.ZERO : invoiceBalanceAfterRefund;
-                    final BigDecimal requestedPositiveAmountToAdjust = requestedPositiveAmount.compareTo(maxBalanceToAdjust) > 0 ? maxBalanceToAdjust : requestedPositiveAmount;
-                    if (requestedPositiveAmountToAdjust.compareTo(BigDecimal.ZERO) > 0) {
-                        final InvoiceItemModelDao adjItem = new InvoiceItemModelDao(context.getCreatedDate(), InvoiceItemType.REFUND_ADJ, invoice.getId(), invoice.getAccountId(),
-                                                                                    null, null, null, null, context.getCreatedDate().toLocalDate(), null,
-                                                                                    requestedPositiveAmountToAdjust.negate(), null, invoice.getCurrency(), null);
-                        transInvoiceItemDao.create(adjItem, context);
-                    }
-                } else if (isInvoiceAdjusted) {
-                    // Invoice item adjustment
-                    for (final UUID invoiceItemId : invoiceItemIdsWithAmounts.keySet()) {
-                        final BigDecimal adjAmount = invoiceItemIdsWithAmounts.get(invoiceItemId);
-                        final InvoiceItemModelDao item = invoiceDaoHelper.createAdjustmentItem(entitySqlDaoWrapperFactory, invoice.getId(), invoiceItemId, adjAmount,
-                                                                                               invoice.getCurrency(), context.getCreatedDate().toLocalDate(),
-                                                                                               context);
-                        transInvoiceItemDao.create(item, context);
-                    }
-                }
+        final Map<UUID, BigDecimal> remainingAmountsPaid = new HashMap<UUID, BigDecimal>();
+        final Map<UUID, Map<UUID, BigDecimal>> invoiceItemIdsWithAmountsByPayment = new HashMap<UUID, Map<UUID, BigDecimal>>();
+        final Map<UUID, BigDecimal> refundAmounts = new HashMap<UUID, BigDecimal>();
+        BigDecimal totalRemainingAmountPaid = BigDecimal.ZERO;
+        BigDecimal amountFromItems = BigDecimal.ZERO;
+        for (final InvoicePaymentModelDao paymentAttempt : paymentAttempts) {
+            final BigDecimal remainingAmountPaid = invoiceDaoHelper.getRemainingAmountPaidFromTransaction(paymentAttempt.getId(), entitySqlDaoWrapperFactory, context);
+            remainingAmountsPaid.put(paymentAttempt.getId(), remainingAmountPaid);
+            totalRemainingAmountPaid = totalRemainingAmountPaid.add(remainingAmountPaid);
+
+            final Map<UUID, BigDecimal> invoiceItemIdsWithNullAmountsForInvoice = invoiceItemIdsWithNullAmountsByInvoice.remove(paymentAttempt.getInvoiceId());
+            final Map<UUID, BigDecimal> invoiceItemIdsWithAmounts = invoiceDaoHelper.computeItemAdjustments(paymentAttempt.getInvoiceId().toString(),
+                                                                                                            entitySqlDaoWrapperFactory,
+                                                                                                            invoiceItemIdsWithNullAmountsForInvoice == null ? ImmutableMap.<UUID, BigDecimal>of() : invoiceItemIdsWithNullAmountsForInvoice,
+                                                                                                            context);
+            invoiceItemIdsWithAmountsByPayment.put(paymentAttempt.getId(), invoiceItemIdsWithAmounts);
+
+            BigDecimal refundAmount = BigDecimal.ZERO;
+            for (final BigDecimal itemAmount : invoiceItemIdsWithAmounts.values()) {
+                refundAmount = refundAmount.add(itemAmount);
+            }
+            refundAmounts.put(paymentAttempt.getId(), refundAmount);
+            amountFromItems = amountFromItems.add(refundAmount);
+        }
 
-                cbaDao.doCBAComplexity(invoice.getAccountId(), entitySqlDaoWrapperFactory, context);
+        // Items which don't belong to the invoices paid
+        if (!invoiceItemIdsWithNullAmountsByInvoice.isEmpty()) {
+            throw new InvoiceApiException(ErrorCode.INVOICE_ITEM_NOT_FOUND, invoiceItemIdsWithNullAmountsByInvoice.values().iterator().next().keySet().iterator().next());
+        }
 
-                // Notify the bus since the balance of the invoice changed
-                notifyBusOfInvoiceAdjustment(entitySqlDaoWrapperFactory, invoice.getId(), invoice.getAccountId(), context.getUserToken(), context);
+        final BigDecimal requestedPositiveAmount = requestedRefundAmount == null ? totalRemainingAmountPaid : requestedRefundAmount;
+        if (requestedPositiveAmount.compareTo(totalRemainingAmountPaid) > 0) {
+            throw new InvoiceApiException(ErrorCode.REFUND_AMOUNT_TOO_HIGH, requestedPositiveAmount, totalRemainingAmountPaid);
+        }
+        if (amountFromItems.compareTo(BigDecimal.ZERO) != 0 && requestedPositiveAmount.compareTo(amountFromItems) < 0) {
+            throw new InvoiceApiException(ErrorCode.REFUND_AMOUNT_DONT_MATCH_ITEMS_TO_ADJUST, requestedPositiveAmount, amountFromItems);
+        }
+
+        BigDecimal leftToRefund = requestedPositiveAmount.subtract(amountFromItems);
+        for (final InvoicePaymentModelDao paymentAttempt : Lists.reverse(paymentAttempts)) {
+            final BigDecimal refundAmount = refundAmounts.get(paymentAttempt.getId());
+            final BigDecimal refundable = remainingAmountsPaid.get(paymentAttempt.getId()).subtract(refundAmount).max(BigDecimal.ZERO);
+            final BigDecimal additionalRefundAmount = leftToRefund.min(refundable);
+            refundAmounts.put(paymentAttempt.getId(), refundAmount.add(additionalRefundAmount));
+            leftToRefund = leftToRefund.subtract(additionalRefundAmount);
+        }
+        if (leftToRefund.compareTo(BigDecimal.ZERO) > 0) {
+            // Item adjustments larger than what is left paid on their invoice
+            throw new InvoiceApiException(ErrorCode.REFUND_AMOUNT_TOO_HIGH, requestedPositiveAmount, totalRemainingAmountPaid);
+        }
 
-                return refund;
+        InvoicePaymentModelDao firstRefund = null;
+        for (final InvoicePaymentModelDao paymentAttempt : paymentAttempts) {
+            final BigDecimal refundAmount = refundAmounts.get(paymentAttempt.getId());
+            // Always record at least one refund payment, even for a zero refund
+            if (refundAmount.compareTo(BigDecimal.ZERO) <= 0 && (firstRefund != null || paymentAttempt != paymentAttempts.get(paymentAttempts.size() - 1))) {
+                continue;
             }
-        });
+            final InvoicePaymentModelDao refund = refundInvoicePayment(paymentAttempt, refundAmount, isInvoiceAdjusted, isInvoiceItemAdjusted,
+                                                                       invoiceItemIdsWithAmountsByPayment.get(paymentAttempt.getId()), paymentCookieId,
+                                                                       entitySqlDaoWrapperFactory, context);
+            if (firstRefund == null) {
+                firstRefund = refund;
+            }
+        }
+        return firstRefund;
+    }
+
+    private InvoicePaymentModelDao refundInvoicePayment(final InvoicePaymentModelDao payment, final BigDecimal requestedPositiveAmount,
+                                                        final boolean isInvoiceAdjusted, final boolean isInvoiceItemAdjusted,
+                                                        final Map<UUID, BigDecimal> invoiceItemIdsWithAmounts, final UUID paymentCookieId,
+                                                        final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory,
+                                                        final InternalCallContext context) throws EntityPersistenceException, InvoiceApiException {
+        final InvoicePaymentSqlDao transactional = entitySqlDaoWrapperFactory.become(InvoicePaymentSqlDao.class);
+        final InvoiceSqlDao transInvoiceDao = entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class);
+
+        final InvoicePaymentModelDao refund = new InvoicePaymentModelDao(UUID.randomUUID(), context.getCreatedDate(), InvoicePaymentType.REFUND,
+                                                                         payment.getInvoiceId(), payment.getPaymentId(),
+                                                                         context.getCreatedDate(), requestedPositiveAmount.negate(),
+                                                                         payment.getCurrency(), paymentCookieId, payment.getId());
+        transactional.create(refund, context);
+
+        // Retrieve invoice after the Refund
+        final InvoiceModelDao invoice = transInvoiceDao.getById(payment.getInvoiceId().toString(), context);
+        if (invoice != null) {
+            invoiceDaoHelper.populateChildren(invoice, entitySqlDaoWrapperFactory, context);
+        } else {
+            throw new IllegalStateException("Invoice shouldn't be null for payment " + payment.getId());
+        }
+
+        final BigDecimal invoiceBalanceAfterRefund = InvoiceModelDaoHelper.getBalance(invoice);
+        final InvoiceItemSqlDao transInvoiceItemDao = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class);
+
+        // At this point, we created the refund which made the invoice balance positive and applied any existing
+        // available CBA to that invoice.
+        // We now need to adjust the invoice and/or invoice items if needed and specified.
+        if (isInvoiceAdjusted && !isInvoiceItemAdjusted) {
+            // Invoice adjustment
+            final BigDecimal maxBalanceToAdjust = (invoiceBalanceAfterRefund.compareTo(BigDecimal.ZERO) <= 0) ? BigDecimal.ZERO : invoiceBalanceAfterRefund;
+            final BigDecimal requestedPositiveAmountToAdjust = requestedPositiveAmount.compareTo(maxBalanceToAdjust) > 0 ? maxBalanceToAdjust : requestedPositiveAmount;
+            if (requestedPositiveAmountToAdjust.compareTo(BigDecimal.ZERO) > 0) {
+                final InvoiceItemModelDao adjItem = new InvoiceItemModelDao(context.getCreatedDate(), InvoiceItemType.REFUND_ADJ, invoice.getId(), invoice.getAccountId(),
+                                                                            null, null, null, null, context.getCreatedDate().toLocalDate(), null,
+                                                                            requestedPositiveAmountToAdjust.negate(), null, invoice.getCurrency(), null);
+                transInvoiceItemDao.create(adjItem, context);
+            }
+        } else if (isInvoiceAdjusted) {
+            // Invoice item adjustment
+            for (final UUID invoiceItemId : invoiceItemIdsWithAmounts.keySet()) {
+                final BigDecimal adjAmount = invoiceItemIdsWithAmounts.get(invoiceItemId);
+                final InvoiceItemModelDao item = invoiceDaoHelper.createAdjustmentItem(entitySqlDaoWrapperFactory, invoice.getId(), invoiceItemId, adjAmount,
+                                                                                       invoice.getCurrency(), context.getCreatedDate().toLocalDate(),
+                                                                                       context);
+                transInvoiceItemDao.create(item, context);
+            }
+        }
+
+        cbaDao.doCBAComplexity(invoice.getAccountId(), entitySqlDaoWrapperFactory, context);
+
+        // Notify the bus since the balance of the invoice changed
+        notifyBusOfInvoiceAdjustment(entitySqlDaoWrapperFactory, invoice.getId(), invoice.getAccountId(), context.getUserToken(), context);
+
+        return refund;
     }
+
     @Override
     public InvoicePaymentModelDao postChargeback(final UUID invoicePaymentId, final BigDecimal amount, final InternalCallContext context) throws InvoiceApiException {
         return transactionalSqlDao.execute(InvoiceApiException.class, new EntitySqlDaoTransactionWrapper<InvoicePaymentModelDao>() {
@@ -377,6 +532,20 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
             public InvoicePaymentModelDao inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 final InvoicePaymentSqlDao transactional = entitySqlDaoWrapperFactory.become(InvoicePaymentSqlDao.class);
 
+                // A chargeback applies to the whole payment: for consolidated payments (one attempt per invoice), split it across the invoices paid
+                final InvoicePaymentModelDao invoicePayment = transactional.getById(invoicePaymentId.toString(), context);
+                if (invoicePayment != null) {
+                    final List<InvoicePaymentModelDao> paymentAttempts = new LinkedList<InvoicePaymentModelDao>();
+                    for (final InvoicePaymentModelDao cur : transactional.getInvoicePayments(invoicePayment.getPaymentId().toString(), context)) {
+                        if (cur.getType() == InvoicePaymentType.ATTEMPT) {
+                            paymentAttempts.add(cur);
+                        }
+                    }
+                    if (paymentAttempts.size() > 1) {
+                        return postChargebackForConsolidatedPayment(paymentAttempts, amount, entitySqlDaoWrapperFactory, context);
+                    }
+                }
+
                 final BigDecimal maxChargedBackAmount = invoiceDaoHelper.getRemainingAmountPaidFromTransaction(invoicePaymentId, entitySqlDaoWrapperFactory, context);
                 final BigDecimal requestedChargedBackAmount = (amount == null) ? maxChargedBackAmount : amount;
                 if (requestedChargedBackAmount.compareTo(BigDecimal.ZERO) <= 0) {
@@ -407,6 +576,57 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
         });
     }
 
+    /**
+     * Split the chargeback of a consolidated payment across the invoices it paid, from the most recent invoice backwards,
+     * up to what is left paid on each invoice (same order as the refunds). The first chargeback is returned.
+     */
+    private InvoicePaymentModelDao postChargebackForConsolidatedPayment(final List<InvoicePaymentModelDao> paymentAttempts, @Nullable final BigDecimal amount,
+                                                                        final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory,
+                                                                        final InternalCallContext context) throws EntityPersistenceException, InvoiceApiException {
+        final InvoicePaymentSqlDao transactional = entitySqlDaoWrapperFactory.become(InvoicePaymentSqlDao.class);
+
+        final Map<UUID, BigDecimal> remainingAmountsPaid = new HashMap<UUID, BigDecimal>();
+        BigDecimal maxChargedBackAmount = BigDecimal.ZERO;
+        for (final InvoicePaymentModelDao paymentAttempt : paymentAttempts) {
+            final BigDecimal remainingAmountPaid = invoiceDaoHelper.getRemainingAmountPaidFromTransaction(paymentAttempt.getId(), entitySqlDaoWrapperFactory, context);
+            remainingAmountsPaid.put(paymentAttempt.getId(), remainingAmountPaid);
+            maxChargedBackAmount = maxChargedBackAmount.add(remainingAmountPaid);
+        }
+
+        final BigDecimal requestedChargedBackAmount = (amount == null) ? maxChargedBackAmount : amount;
+        if (requestedChargedBackAmount.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new InvoiceApiException(ErrorCode.CHARGE_BACK_AMOUNT_IS_NEGATIVE);
+        }
+        if (requestedChargedBackAmount.compareTo(maxChargedBackAmount) > 0) {
+            throw new InvoiceApiException(ErrorCode.CHARGE_BACK_AMOUNT_TOO_HIGH, requestedChargedBackAmount, maxChargedBackAmount);
+        }
+
+        final UUID accountId = transactional.getAccountIdFromInvoicePaymentId(paymentAttempts.get(0).getId().toString(), context);
+        final List<InvoicePaymentModelDao> chargeBacks = new LinkedList<InvoicePaymentModelDao>();
+        BigDecimal leftToChargeBack = requestedChargedBackAmount;
+        for (final InvoicePaymentModelDao paymentAttempt : Lists.reverse(paymentAttempts)) {
+            final BigDecimal chargedBackAmount = leftToChargeBack.min(remainingAmountsPaid.get(paymentAttempt.getId()));
+            if (chargedBackAmount.compareTo(BigDecimal.ZERO) <= 0) {
+                continue;
+            }
+            final InvoicePaymentModelDao chargeBack = new InvoicePaymentModelDao(UUID.randomUUID(), context.getCreatedDate(), InvoicePaymentType.CHARGED_BACK,
+                                                                                 paymentAttempt.getInvoiceId(), paymentAttempt.getPaymentId(), context.getCreatedDate(),
+                                                                                 chargedBackAmount.negate(), paymentAttempt.getCurrency(), null, paymentAttempt.getId());
+            transactional.create(chargeBack, context);
+            chargeBacks.add(0, chargeBack);
+            leftToChargeBack = leftToChargeBack.subtract(chargedBackAmount);
+        }
+
+        cbaDao.doCBAComplexity(accountId, entitySqlDaoWrapperFactory, context);
+
+        // Notify the bus since the balance of the invoices changed
+        for (final InvoicePaymentModelDao chargeBack : chargeBacks) {
+            notifyBusOfInvoiceAdjustment(entitySqlDaoWrapperFactory, chargeBack.getInvoiceId(), accountId, context.getUserToken(), context);
+        }
+
+        return chargeBacks.get(0);
+    }
+
     @Override
     public BigDecimal getRemainingAmountPaid(final UUID invoicePaymentId, final InternalTenantContext context) {
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<BigDecimal>() {
@@ -493,6 +713,20 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
         });
     }
 
+    @Override
+    public void notifyOfPayments(final List<InvoicePaymentModelDao> invoicePayments, final InternalCallContext context) {
+        transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Void>() {
+            @Override
+            public Void inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final InvoicePaymentSqlDao transactional = entitySqlDaoWrapperFactory.become(InvoicePaymentSqlDao.class);
+                for (final InvoicePaymentModelDao invoicePayment : invoicePayments) {
+                    transactional.create(invoicePayment, context);
+                }
+                return null;
+            }
+        });
+    }
+
     @Override
     public InvoiceItemModelDao insertExternalCharge(final UUID accountId, @Nullable final UUID invoiceId, @Nullable final UUID bundleId, final String description,
                                                     final BigDecimal amount, final LocalDate effectiveDate, final Currency currency, final InternalCallContext context)
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.invoice.dao;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+
+import com.ning.billing.invoice.api.AgingBucket;
+import com.ning.billing.invoice.model.DefaultAccountAging;
+import com.ning.billing.overdue.OverdueService;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.dao.DBRouter;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Set-based accounts receivable aging queries. Reports are read-only and go to the read replica when possible.
+ */
+public class InvoiceAgingDao {
+
+    private final DBRouter dbRouter;
+
+    @Inject
+    public InvoiceAgingDao(final DBRouter dbRouter) {
+        this.dbRouter = dbRouter;
+    }
+
+    /**
+     * Compute the aging of a page of accounts of the tenant, ordered by account record id.
+     *
+     * @param asOfDate            aging date
+     * @param fromAccountRecordId only consider accounts after this one (keyset pagination, 0 to start from the first account)
+     * @param limit               maximum number of accounts in the page
+     * @param context             tenant context
+     * @return the page
+     */
+    public AccountAgingPage getAccountsAging(final LocalDate asOfDate, final long fromAccountRecordId, final int limit, final InternalTenantContext context) {
+        final Date asOf = toDate(asOfDate);
+        final Date minDate30 = toDate(asOfDate.minusDays(AgingBucket.DAYS_0_30.getMaxDays()));
+        final Date minDate60 = toDate(asOfDate.minusDays(AgingBucket.DAYS_31_60.getMaxDays()));
+        final Date minDate90 = toDate(asOfDate.minusDays(AgingBucket.DAYS_61_90.getMaxDays()));
+        final Date minDate120 = toDate(asOfDate.minusDays(AgingBucket.DAYS_91_120.getMaxDays()));
+        final Date cutoff = toDate(asOfDate.plusDays(1));
+
+        return dbRouter.getDBIForReadOnlyTransaction().withHandle(new HandleCallback<AccountAgingPage>() {
+            @Override
+            public AccountAgingPage withHandle(final Handle handle) throws Exception {
+                final InvoiceAgingSqlDao sqlDao = handle.attach(InvoiceAgingSqlDao.class);
+
+                final List<Long> accountRecordIds = sqlDao.getAccountRecordIdsWithInvoices(fromAccountRecordId, limit, context);
+                if (accountRecordIds.isEmpty()) {
+                    return new AccountAgingPage(ImmutableList.<DefaultAccountAging>of(), null);
+                }
+
+                final Long firstAccountRecordId = accountRecordIds.get(0);
+                final Long lastAccountRecordId = accountRecordIds.get(accountRecordIds.size() - 1);
+                final List<DefaultAccountAging> accountsAging = sqlDao.getAccountsAging(asOf, cutoff, minDate30, minDate60, minDate90, minDate120, firstAccountRecordId, lastAccountRecordId,
+                                                                                        OverdueService.OVERDUE_SERVICE_NAME, context);
+                return new AccountAgingPage(accountsAging, accountRecordIds.size() < limit ? null : lastAccountRecordId);
+            }
+        });
+    }
+
+    private Date toDate(final LocalDate localDate) {
+        return localDate.toDateTimeAtStartOfDay(DateTimeZone.UTC).toDate();
+    }
+
+    public static final class AccountAgingPage {
+
+        private final List<DefaultAccountAging> accountsAging;
+        private final Long nextFromAccountRecordId;
+
+        public AccountAgingPage(final List<DefaultAccountAging> accountsAging, final Long nextFromAccountRecordId) {
+            this.accountsAging = accountsAging;
+            this.nextFromAccountRecordId = nextFromAccountRecordId;
+        }
+
+        // Only accounts with an unpaid balance are returned, a page may be empty even if there are more accounts
+        public List<DefaultAccountAging> getAccountsAging() {
+            return accountsAging;
+        }
+
+        // Cursor for the next page, null if this was the last one
+        public Long getNextFromAccountRecordId() {
+            return nextFromAccountRecordId;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.invoice.dao;
+
+import java.util.Date;
+import java.util.List;
+
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.BindBean;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.customizers.RegisterMapper;
+import org.skife.jdbi.v2.sqlobject.stringtemplate.UseStringTemplate3StatementLocator;
+
+import com.ning.billing.invoice.model.DefaultAccountAging;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+
+@UseStringTemplate3StatementLocator
+@RegisterMapper(AccountAgingMapper.class)
+public interface InvoiceAgingSqlDao {
+
+    @SqlQuery
+    public List<Long> getAccountRecordIdsWithInvoices(@Bind("fromAccountRecordId") final long fromAccountRecordId,
+                                                      @Bind("limit") final int limit,
+                                                      @BindBean final InternalTenantContext context);
+
+    @SqlQuery
+    public List<DefaultAccountAging> getAccountsAging(@Bind("asOfDate") final Date asOfDate,
+                                                      @Bind("cutoffDateTime") final Date cutoffDateTime,
+                                                      @Bind("minDate30") final Date minDate30,
+                                                      @Bind("minDate60") final Date minDate60,
+                                                      @Bind("minDate90") final Date minDate90,
+                                                      @Bind("minDate120") final Date minDate120,
+                                                      @Bind("fromAccountRecordId") final long fromAccountRecordId,
+                                                      @Bind("toAccountRecordId") final long toAccountRecordId,
+                                                      @Bind("overdueServiceName") final String overdueServiceName,
+                                                      @BindBean final InternalTenantContext context);
+}
@@ -164,6 +164,14 @@ public interface InvoiceDao {
 
     void notifyOfPayment(InvoicePaymentModelDao invoicePayment, InternalCallContext context);
 
+    /**
+     * Record the payments of several invoices (e.g. the allocations of a consolidated payment) in a single transaction.
+     *
+     * @param invoicePayments the invoice payments to record
+     * @param context         the call context
+     */
+    void notifyOfPayments(List<InvoicePaymentModelDao> invoicePayments, InternalCallContext context);
+
     /**
      *
      * @param accountId the account for which we need to rebalance the CBA
@@ -23,6 +23,7 @@ import com.ning.billing.glue.InvoiceModule;
 import com.ning.billing.invoice.InvoiceListener;
 import com.ning.billing.invoice.InvoiceTagHandler;
 import com.ning.billing.invoice.api.DefaultInvoiceService;
+import com.ning.billing.invoice.api.InvoiceAgingUserApi;
 import com.ning.billing.invoice.api.InvoiceMigrationApi;
 import com.ning.billing.invoice.api.InvoiceNotifier;
 import com.ning.billing.invoice.api.InvoicePaymentApi;
@@ -32,6 +33,7 @@ import com.ning.billing.invoice.api.formatters.InvoiceFormatterFactory;
 import com.ning.billing.invoice.api.invoice.DefaultInvoicePaymentApi;
 import com.ning.billing.invoice.api.migration.DefaultInvoiceMigrationApi;
 import com.ning.billing.invoice.api.svcs.DefaultInvoiceInternalApi;
+import com.ning.billing.invoice.api.user.DefaultInvoiceAgingUserApi;
 import com.ning.billing.invoice.api.user.DefaultInvoiceUserApi;
 import com.ning.billing.invoice.dao.DefaultInvoiceDao;
 import com.ning.billing.invoice.dao.InvoiceDao;
@@ -92,6 +94,11 @@ public class DefaultInvoiceModule extends AbstractModule implements InvoiceModul
         bind(InvoiceMigrationApi.class).to(DefaultInvoiceMigrationApi.class).asEagerSingleton();
     }
 
+    @Override
+    public void installInvoiceAgingUserApi() {
+        bind(InvoiceAgingUserApi.class).to(DefaultInvoiceAgingUserApi.class).asEagerSingleton();
+    }
+
     protected void installNotifiers() {
         bind(NextBillingDateNotifier.class).to(DefaultNextBillingDateNotifier.class).asEagerSingleton();
         bind(NextBillingDatePoster.class).to(DefaultNextBillingDatePoster.class).asEagerSingleton();
@@ -135,5 +142,6 @@ public class DefaultInvoiceModule extends AbstractModule implements InvoiceModul
         installInvoiceInternalApi();
         installInvoicePaymentApi();
         installInvoiceMigrationApi();
+        installInvoiceAgingUserApi();
     }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.invoice.model;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.LocalDate;
+
+import com.ning.billing.catalog.api.Currency;
+import com.ning.billing.invoice.api.AccountAging;
+import com.ning.billing.invoice.api.AgingBucket;
+
+public class DefaultAccountAging implements AccountAging {
+
+    private final UUID accountId;
+    private final Long accountRecordId;
+    private final Currency currency;
+    private final String overdueState;
+    private final LocalDate oldestUnpaidInvoiceDate;
+    private final Map<AgingBucket, BigDecimal> balances;
+    private final BigDecimal totalBalance;
+
+    public DefaultAccountAging(final UUID accountId, final Long accountRecordId, final Currency currency,
+                               @Nullable final String overdueState, final LocalDate oldestUnpaidInvoiceDate,
+                               final Map<AgingBucket, BigDecimal> balances, final BigDecimal totalBalance) {
+        this.accountId = accountId;
+        this.accountRecordId = accountRecordId;
+        this.currency = currency;
+        this.overdueState = overdueState;
+        this.oldestUnpaidInvoiceDate = oldestUnpaidInvoiceDate;
+        this.balances = balances;
+        this.totalBalance = totalBalance;
+    }
+
+    @Override
+    public UUID getAccountId() {
+        return accountId;
+    }
+
+    // Used as pagination cursor
+    public Long getAccountRecordId() {
+        return accountRecordId;
+    }
+
+    @Override
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    @Override
+    public String getOverdueState() {
+        return overdueState;
+    }
+
+    @Override
+    public LocalDate getOldestUnpaidInvoiceDate() {
+        return oldestUnpaidInvoiceDate;
+    }
+
+    @Override
+    public Map<AgingBucket, BigDecimal> getBalances() {
+        return balances;
+    }
+
+    @Override
+    public BigDecimal getTotalBalance() {
+        return totalBalance;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("DefaultAccountAging");
+        sb.append("{accountId=").append(accountId);
+        sb.append(", currency=").append(currency);
+        sb.append(", overdueState='").append(overdueState).append('\'');
+        sb.append(", oldestUnpaidInvoiceDate=").append(oldestUnpaidInvoiceDate);
+        sb.append(", balances=").append(balances);
+        sb.append(", totalBalance=").append(totalBalance);
+        sb.append('}');
+        return sb.toString();
+    }
+}
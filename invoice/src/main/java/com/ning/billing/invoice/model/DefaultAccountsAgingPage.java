@@ -0,0 +1,55 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.invoice.model;
+
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.ning.billing.invoice.api.AccountAging;
+import com.ning.billing.invoice.api.AccountsAgingPage;
+
+public class DefaultAccountsAgingPage implements AccountsAgingPage {
+
+    private final List<AccountAging> accountsAging;
+    private final Long nextCursor;
+
+    public DefaultAccountsAgingPage(final List<AccountAging> accountsAging, @Nullable final Long nextCursor) {
+        this.accountsAging = accountsAging;
+        this.nextCursor = nextCursor;
+    }
+
+    @Override
+    public List<AccountAging> getAccountsAging() {
+        return accountsAging;
+    }
+
+    @Override
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("DefaultAccountsAgingPage");
+        sb.append("{accountsAging=").append(accountsAging);
+        sb.append(", nextCursor=").append(nextCursor);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.invoice.model;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+
+import com.ning.billing.catalog.api.Currency;
+import com.ning.billing.invoice.api.AccountAging;
+import com.ning.billing.invoice.api.AgingBucket;
+import com.ning.billing.invoice.api.AgingReport;
+
+/**
+ * Aggregates the per account balances as they are streamed from the database, so that the
+ * memory footprint doesn't depend on the number of accounts.
+ */
+public class DefaultAgingReport implements AgingReport {
+
+    // Accounts not overdue
+    public static final String NO_OVERDUE_STATE = "";
+
+    private final LocalDate asOfDate;
+    private final Map<Currency, Map<AgingBucket, BigDecimal>> balancesByCurrency = new EnumMap<Currency, Map<AgingBucket, BigDecimal>>(Currency.class);
+    private final Map<Currency, Map<String, Map<AgingBucket, BigDecimal>>> balancesByCurrencyAndOverdueState = new EnumMap<Currency, Map<String, Map<AgingBucket, BigDecimal>>>(Currency.class);
+
+    private int nbAccounts = 0;
+    private UUID lastAccountId;
+
+    public DefaultAgingReport(final LocalDate asOfDate) {
+        this.asOfDate = asOfDate;
+    }
+
+    /**
+     * @param accountAging balances of an account, in a given currency (entries for the same account are expected to be consecutive)
+     */
+    public void add(final AccountAging accountAging) {
+        if (!accountAging.getAccountId().equals(lastAccountId)) {
+            nbAccounts++;
+            lastAccountId = accountAging.getAccountId();
+        }
+
+        final Currency currency = accountAging.getCurrency();
+        if (balancesByCurrency.get(currency) == null) {
+            balancesByCurrency.put(currency, newBalances());
+            balancesByCurrencyAndOverdueState.put(currency, new TreeMap<String, Map<AgingBucket, BigDecimal>>());
+        }
+
+        final String overdueState = accountAging.getOverdueState() == null ? NO_OVERDUE_STATE : accountAging.getOverdueState();
+        final Map<String, Map<AgingBucket, BigDecimal>> balancesByOverdueState = balancesByCurrencyAndOverdueState.get(currency);
+        if (balancesByOverdueState.get(overdueState) == null) {
+            balancesByOverdueState.put(overdueState, newBalances());
+        }
+
+        addBalances(balancesByCurrency.get(currency), accountAging.getBalances());
+        addBalances(balancesByOverdueState.get(overdueState), accountAging.getBalances());
+    }
+
+    @Override
+    public LocalDate getAsOfDate() {
+        return asOfDate;
+    }
+
+    @Override
+    public int getNbAccounts() {
+        return nbAccounts;
+    }
+
+    @Override
+    public Map<Currency, Map<AgingBucket, BigDecimal>> getBalancesByCurrency() {
+        return balancesByCurrency;
+    }
+
+    @Override
+    public Map<Currency, Map<String, Map<AgingBucket, BigDecimal>>> getBalancesByCurrencyAndOverdueState() {
+        return balancesByCurrencyAndOverdueState;
+    }
+
+    private Map<AgingBucket, BigDecimal> newBalances() {
+        final Map<AgingBucket, BigDecimal> balances = new EnumMap<AgingBucket, BigDecimal>(AgingBucket.class);
+        for (final AgingBucket bucket : AgingBucket.values()) {
+            balances.put(bucket, BigDecimal.ZERO);
+        }
+        return balances;
+    }
+
+    private void addBalances(final Map<AgingBucket, BigDecimal> total, final Map<AgingBucket, BigDecimal> balances) {
+        for (final AgingBucket bucket : balances.keySet()) {
+            total.put(bucket, total.get(bucket).add(balances.get(bucket)));
+        }
+    }
+}
@@ -31,10 +31,8 @@ import com.ning.billing.invoice.template.HtmlInvoiceGenerator;
 import com.ning.billing.util.callcontext.InternalCallContextFactory;
 import com.ning.billing.util.callcontext.InternalTenantContext;
 import com.ning.billing.util.callcontext.TenantContext;
-import com.ning.billing.util.email.DefaultEmailSender;
-import com.ning.billing.util.email.EmailApiException;
 import com.ning.billing.util.email.EmailConfig;
-import com.ning.billing.util.email.EmailSender;
+import com.ning.billing.util.email.EmailOutbox;
 import com.ning.billing.util.svcapi.account.AccountInternalApi;
 import com.ning.billing.util.svcapi.tag.TagInternalApi;
 import com.ning.billing.util.tag.ControlTagType;
@@ -44,10 +42,13 @@ import com.google.inject.Inject;
 
 public class EmailInvoiceNotifier implements InvoiceNotifier {
 
+    public static final String INVOICE_EMAIL_DEDUP_KEY_PREFIX = "INVOICE:";
+
     private final AccountInternalApi accountApi;
     private final TagInternalApi tagUserApi;
     private final HtmlInvoiceGenerator generator;
     private final EmailConfig config;
+    private final EmailOutbox emailOutbox;
     private final InternalCallContextFactory internalCallContextFactory;
 
     @Inject
@@ -55,11 +56,13 @@ public class EmailInvoiceNotifier implements InvoiceNotifier {
                                 final TagInternalApi tagUserApi,
                                 final HtmlInvoiceGenerator generator,
                                 final EmailConfig config,
+                                final EmailOutbox emailOutbox,
                                 final InternalCallContextFactory internalCallContextFactory) {
         this.accountApi = accountApi;
         this.tagUserApi = tagUserApi;
         this.generator = generator;
         this.config = config;
+        this.emailOutbox = emailOutbox;
         this.internalCallContextFactory = internalCallContextFactory;
     }
 
@@ -94,13 +97,7 @@ public class EmailInvoiceNotifier implements InvoiceNotifier {
 
         final String subject = config.getInvoiceEmailSubject();
 
-        final EmailSender sender = new DefaultEmailSender(config);
-        try {
-            sender.sendHTMLEmail(to, cc, subject, htmlBody);
-        } catch (EmailApiException e) {
-            throw new InvoiceApiException(e, ErrorCode.EMAIL_SENDING_FAILED);
-        } catch (IOException e) {
-            throw new InvoiceApiException(e, ErrorCode.EMAIL_SENDING_FAILED);
-        }
+        // The email is sent asynchronously, to avoid blocking invoicing on the MTA
+        emailOutbox.enqueue(account.getId(), INVOICE_EMAIL_DEDUP_KEY_PREFIX + invoice.getId(), to, cc, subject, htmlBody, true, internalTenantContext);
     }
 }
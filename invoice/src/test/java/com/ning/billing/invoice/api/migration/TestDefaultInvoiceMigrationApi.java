@@ -21,6 +21,8 @@ import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
+
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 import org.slf4j.Logger;
@@ -34,9 +36,12 @@ import com.ning.billing.catalog.api.Currency;
 import com.ning.billing.invoice.InvoiceTestSuiteWithEmbeddedDB;
 import com.ning.billing.invoice.api.Invoice;
 import com.ning.billing.invoice.api.InvoiceApiException;
+import com.ning.billing.invoice.api.InvoiceMigrationApi.MigrationInvoice;
 import com.ning.billing.invoice.dao.InvoiceModelDao;
 import com.ning.billing.invoice.dao.InvoiceModelDaoHelper;
 
+import com.google.common.collect.ImmutableList;
+
 public class TestDefaultInvoiceMigrationApi extends InvoiceTestSuiteWithEmbeddedDB {
 
     private final Logger log = LoggerFactory.getLogger(TestDefaultInvoiceMigrationApi.class);
@@ -120,6 +125,75 @@ public class TestDefaultInvoiceMigrationApi extends InvoiceTestSuiteWithEmbedded
         Assert.assertEquals(accountBalance.compareTo(balanceOfAllInvoices), 0);
     }
 
+    @Test(groups = "slow")
+    public void testBulkMigration() throws Exception {
+        final UUID otherAccountId = invoiceUtil.createAccount().getId();
+        final UUID unknownAccountId = UUID.randomUUID();
+
+        final List<UUID> invoiceIds = migrationApi.createMigrationInvoices(ImmutableList.<MigrationInvoice>of(createMigrationInvoice(otherAccountId, new BigDecimal("10.00")),
+                                                                                                             createMigrationInvoice(unknownAccountId, new BigDecimal("20.00")),
+                                                                                                             createMigrationInvoice(otherAccountId, new BigDecimal("30.00"))),
+                                                                           callContext);
+        Assert.assertEquals(invoiceIds.size(), 3);
+        Assert.assertNotNull(invoiceIds.get(0));
+        Assert.assertNull(invoiceIds.get(1));
+        Assert.assertNotNull(invoiceIds.get(2));
+
+        final InvoiceModelDao invoice = invoiceDao.getById(invoiceIds.get(2), internalCallContext);
+        Assert.assertEquals(invoice.getAccountId(), otherAccountId);
+        Assert.assertEquals(invoice.getInvoiceItems().size(), 1);
+        Assert.assertTrue(invoice.isMigrated());
+
+        Assert.assertEquals(invoiceUserApi.getAccountBalance(otherAccountId, callContext).compareTo(new BigDecimal("40.00")), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testBulkMigrationWithFailingInvoice() throws Exception {
+        final UUID otherAccountId = invoiceUtil.createAccount().getId();
+
+        // The second invoice can't be written (no currency): it fails the batch, which is then retried invoice by invoice
+        final List<UUID> invoiceIds = migrationApi.createMigrationInvoices(ImmutableList.<MigrationInvoice>of(createMigrationInvoice(otherAccountId, new BigDecimal("10.00")),
+                                                                                                             createMigrationInvoice(otherAccountId, new BigDecimal("20.00"), null),
+                                                                                                             createMigrationInvoice(otherAccountId, new BigDecimal("30.00"))),
+                                                                           callContext);
+        Assert.assertEquals(invoiceIds.size(), 3);
+        Assert.assertNotNull(invoiceIds.get(0));
+        Assert.assertNull(invoiceIds.get(1));
+        Assert.assertNotNull(invoiceIds.get(2));
+
+        Assert.assertNotNull(invoiceDao.getById(invoiceIds.get(0), internalCallContext));
+        Assert.assertNotNull(invoiceDao.getById(invoiceIds.get(2), internalCallContext));
+        Assert.assertEquals(invoiceUserApi.getAccountBalance(otherAccountId, callContext).compareTo(new BigDecimal("40.00")), 0);
+    }
+
+    private MigrationInvoice createMigrationInvoice(final UUID accountId, final BigDecimal balance) {
+        return createMigrationInvoice(accountId, balance, MIGRATION_INVOICE_CURRENCY);
+    }
+
+    private MigrationInvoice createMigrationInvoice(final UUID accountId, final BigDecimal balance, @Nullable final Currency currency) {
+        return new MigrationInvoice() {
+            @Override
+            public UUID getAccountId() {
+                return accountId;
+            }
+
+            @Override
+            public LocalDate getTargetDate() {
+                return date_migrated;
+            }
+
+            @Override
+            public BigDecimal getBalance() {
+                return balance;
+            }
+
+            @Override
+            public Currency getCurrency() {
+                return currency;
+            }
+        };
+    }
+
     private boolean checkContains(final List<Invoice> invoices, final UUID invoiceId) {
         for (final Invoice invoice : invoices) {
             if (invoice.getId().equals(invoiceId)) {
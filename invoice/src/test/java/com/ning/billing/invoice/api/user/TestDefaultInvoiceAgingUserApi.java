@@ -0,0 +1,161 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.invoice.api.user;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+import javax.inject.Inject;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.billing.catalog.api.Currency;
+import com.ning.billing.invoice.InvoiceTestSuiteWithEmbeddedDB;
+import com.ning.billing.invoice.api.AccountAging;
+import com.ning.billing.invoice.api.AccountsAgingPage;
+import com.ning.billing.invoice.api.AgingBucket;
+import com.ning.billing.invoice.api.AgingReport;
+import com.ning.billing.invoice.api.Invoice;
+import com.ning.billing.invoice.api.InvoiceAgingUserApi;
+import com.ning.billing.invoice.api.InvoicePaymentType;
+import com.ning.billing.invoice.dao.InvoicePaymentModelDao;
+import com.ning.billing.invoice.model.DefaultInvoice;
+import com.ning.billing.invoice.model.DefaultInvoicePayment;
+import com.ning.billing.invoice.model.ExternalChargeInvoiceItem;
+import com.ning.billing.overdue.OverdueService;
+import com.ning.billing.util.callcontext.InternalCallContext;
+
+public class TestDefaultInvoiceAgingUserApi extends InvoiceTestSuiteWithEmbeddedDB {
+
+    @Inject
+    private InvoiceAgingUserApi invoiceAgingUserApi;
+
+    @Test(groups = "slow")
+    public void testAgingReport() throws Exception {
+        final LocalDate today = clock.getUTCToday();
+        final DateTime now = clock.getUTCNow();
+
+        // First account: 10 USD in the 0-30 bucket, 15 USD in the 31-60 bucket and a paid invoice
+        final UUID accountId1 = UUID.randomUUID();
+        final InternalCallContext context1 = new InternalCallContext(internalCallContext.getTenantRecordId(), 1001L, internalCallContext.toCallContext());
+        createInvoice(accountId1, today.minusDays(10), new BigDecimal("10"), Currency.USD, context1);
+        final UUID invoiceId2 = createInvoice(accountId1, today.minusDays(45), new BigDecimal("20"), Currency.USD, context1);
+        createPayment(invoiceId2, now.minusDays(1), new BigDecimal("5"), context1);
+        // Only recorded after the aging date
+        createPayment(invoiceId2, now.plusDays(2), new BigDecimal("15"), context1);
+        final UUID invoiceId3 = createInvoice(accountId1, today.minusDays(200), new BigDecimal("30"), Currency.USD, context1);
+        createPayment(invoiceId3, now.minusDays(100), new BigDecimal("30"), context1);
+        // Historical balance, not aged
+        createInvoice(accountId1, today.minusDays(60), new BigDecimal("100"), Currency.USD, true, context1);
+
+        // Second account: 40 EUR in the 91-120 bucket, overdue
+        final UUID accountId2 = UUID.randomUUID();
+        final InternalCallContext context2 = new InternalCallContext(internalCallContext.getTenantRecordId(), 1002L, internalCallContext.toCallContext());
+        createInvoice(accountId2, today.minusDays(100), new BigDecimal("40"), Currency.EUR, context2);
+        insertOverdueState(accountId2, "OD1", now.minusDays(1), context2);
+
+        // Third account: invoice dated after the aging date
+        final UUID accountId3 = UUID.randomUUID();
+        final InternalCallContext context3 = new InternalCallContext(internalCallContext.getTenantRecordId(), 1003L, internalCallContext.toCallContext());
+        createInvoice(accountId3, today.plusDays(5), new BigDecimal("50"), Currency.USD, context3);
+
+        final AccountsAgingPage page = invoiceAgingUserApi.getAccountsAging(today, null, 10, callContext);
+        Assert.assertNull(page.getNextCursor());
+        final List<AccountAging> accountsAging = page.getAccountsAging();
+        Assert.assertEquals(accountsAging.size(), 2);
+        Assert.assertEquals(accountsAging.get(0).getAccountId(), accountId1);
+        Assert.assertEquals(accountsAging.get(0).getCurrency(), Currency.USD);
+        Assert.assertNull(accountsAging.get(0).getOverdueState());
+        Assert.assertEquals(accountsAging.get(0).getOldestUnpaidInvoiceDate(), today.minusDays(45));
+        Assert.assertEquals(accountsAging.get(0).getBalances().get(AgingBucket.DAYS_0_30).compareTo(new BigDecimal("10")), 0);
+        Assert.assertEquals(accountsAging.get(0).getBalances().get(AgingBucket.DAYS_31_60).compareTo(new BigDecimal("15")), 0);
+        Assert.assertEquals(accountsAging.get(0).getBalances().get(AgingBucket.DAYS_OVER_120).compareTo(BigDecimal.ZERO), 0);
+        Assert.assertEquals(accountsAging.get(0).getTotalBalance().compareTo(new BigDecimal("25")), 0);
+        Assert.assertEquals(accountsAging.get(1).getAccountId(), accountId2);
+        Assert.assertEquals(accountsAging.get(1).getCurrency(), Currency.EUR);
+        Assert.assertEquals(accountsAging.get(1).getOverdueState(), "OD1");
+        Assert.assertEquals(accountsAging.get(1).getBalances().get(AgingBucket.DAYS_91_120).compareTo(new BigDecimal("40")), 0);
+
+        // Pagination
+        final AccountsAgingPage firstPage = invoiceAgingUserApi.getAccountsAging(today, null, 1, callContext);
+        Assert.assertEquals(firstPage.getAccountsAging().size(), 1);
+        Assert.assertEquals(firstPage.getAccountsAging().get(0).getAccountId(), accountId1);
+        Assert.assertNotNull(firstPage.getNextCursor());
+        // The third account has no unpaid balance yet: the second page is the last one
+        final AccountsAgingPage secondPage = invoiceAgingUserApi.getAccountsAging(today, firstPage.getNextCursor(), 1, callContext);
+        Assert.assertEquals(secondPage.getAccountsAging().size(), 1);
+        Assert.assertEquals(secondPage.getAccountsAging().get(0).getAccountId(), accountId2);
+        Assert.assertNull(secondPage.getNextCursor());
+
+        final AgingReport report = invoiceAgingUserApi.getAgingReport(today, callContext);
+        Assert.assertEquals(report.getNbAccounts(), 2);
+        Assert.assertEquals(report.getBalancesByCurrency().get(Currency.USD).get(AgingBucket.DAYS_0_30).compareTo(new BigDecimal("10")), 0);
+        Assert.assertEquals(report.getBalancesByCurrency().get(Currency.USD).get(AgingBucket.DAYS_31_60).compareTo(new BigDecimal("15")), 0);
+        Assert.assertEquals(report.getBalancesByCurrency().get(Currency.EUR).get(AgingBucket.DAYS_91_120).compareTo(new BigDecimal("40")), 0);
+        Assert.assertEquals(report.getBalancesByCurrencyAndOverdueState().get(Currency.EUR).keySet().iterator().next(), "OD1");
+
+        // Later on, the second invoice of the first account has been paid
+        final List<AccountAging> accountsAgingLater = invoiceAgingUserApi.getAccountsAging(today.plusDays(3), null, 10, callContext).getAccountsAging();
+        Assert.assertEquals(accountsAgingLater.get(0).getAccountId(), accountId1);
+        Assert.assertEquals(accountsAgingLater.get(0).getTotalBalance().compareTo(new BigDecimal("10")), 0);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        invoiceAgingUserApi.exportAccountsAgingAsCSV(today, out, callContext);
+        final String[] lines = out.toString().split("\n");
+        Assert.assertEquals(lines.length, 3);
+        Assert.assertTrue(lines[0].startsWith("accountId,currency,overdueState,oldestUnpaidInvoiceDate,DAYS_0_30"));
+        Assert.assertTrue(lines[1].startsWith(accountId1.toString()));
+        Assert.assertTrue(lines[2].startsWith(accountId2.toString()));
+    }
+
+    private UUID createInvoice(final UUID accountId, final LocalDate invoiceDate, final BigDecimal amount, final Currency currency, final InternalCallContext context) {
+        return createInvoice(accountId, invoiceDate, amount, currency, false, context);
+    }
+
+    private UUID createInvoice(final UUID accountId, final LocalDate invoiceDate, final BigDecimal amount, final Currency currency,
+                               final boolean isMigrationInvoice, final InternalCallContext context) {
+        final Invoice invoice = new DefaultInvoice(UUID.randomUUID(), accountId, null, invoiceDate, invoiceDate, currency, isMigrationInvoice);
+        invoice.addInvoiceItem(new ExternalChargeInvoiceItem(invoice.getId(), accountId, null, null, invoiceDate, amount, currency));
+        invoiceUtil.createInvoice(invoice, true, context);
+        return invoice.getId();
+    }
+
+    private void createPayment(final UUID invoiceId, final DateTime paymentDate, final BigDecimal amount, final InternalCallContext context) {
+        final DefaultInvoicePayment payment = new DefaultInvoicePayment(InvoicePaymentType.ATTEMPT, UUID.randomUUID(), invoiceId, paymentDate, amount, Currency.USD);
+        invoiceDao.notifyOfPayment(new InvoicePaymentModelDao(payment), context);
+    }
+
+    private void insertOverdueState(final UUID accountId, final String state, final DateTime effectiveDate, final InternalCallContext context) {
+        dbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle) throws Exception {
+                handle.execute("insert into blocking_states (id, blockable_id, type, state, service, block_change, block_entitlement, block_billing, " +
+                               "effective_date, created_date, account_record_id, tenant_record_id) values (?, ?, 'ACCOUNT', ?, ?, false, false, false, ?, ?, ?, ?)",
+                               UUID.randomUUID().toString(), accountId.toString(), state, OverdueService.OVERDUE_SERVICE_NAME,
+                               effectiveDate.toDate(), effectiveDate.toDate(), context.getAccountRecordId(), context.getTenantRecordId());
+                return null;
+            }
+        });
+    }
+}
@@ -181,6 +181,15 @@ public class MockInvoiceDao implements InvoiceDao {
         }
     }
 
+    @Override
+    public void notifyOfPayments(final List<InvoicePaymentModelDao> invoicePayments, final InternalCallContext context) {
+        synchronized (monitor) {
+            for (final InvoicePaymentModelDao invoicePayment : invoicePayments) {
+                payments.put(invoicePayment.getId(), invoicePayment);
+            }
+        }
+    }
+
     @Override
     public void consumeExstingCBAOnAccountWithUnpaidInvoices(final UUID accountId, final InternalCallContext context) {
     }
@@ -1584,4 +1584,198 @@ public class TestInvoiceDao extends InvoiceTestSuiteWithEmbeddedDB {
         Assert.assertEquals(invoiceDao.getAccountCBA(accountId, internalCallContext).doubleValue(), 10.00);
         invoiceUtil.verifyInvoice(invoice1.getId(), 0.00, 10.00);
     }
+
+    @Test(groups = "slow")
+    public void testPartialRefundOfConsolidatedPayment() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        final UUID paymentId = UUID.randomUUID();
+        final List<InvoiceItem> items = createInvoicesPaidByConsolidatedPayment(accountId, paymentId, TEN, TWENTY);
+        final UUID oldInvoiceId = items.get(0).getInvoiceId();
+        final UUID newInvoiceId = items.get(1).getInvoiceId();
+
+        // The refund is taken from the most recent invoice first
+        final UUID paymentCookieId = UUID.randomUUID();
+        invoiceDao.createRefund(paymentId, new BigDecimal("25.00"), false, ImmutableMap.<UUID, BigDecimal>of(), paymentCookieId, internalCallContext);
+
+        assertEquals(getRefundedAmount(paymentId, newInvoiceId, paymentCookieId).compareTo(TWENTY), 0);
+        assertEquals(getRefundedAmount(paymentId, oldInvoiceId, paymentCookieId).compareTo(FIVE), 0);
+        invoiceUtil.verifyInvoice(oldInvoiceId, 5.00, 0.00);
+        invoiceUtil.verifyInvoice(newInvoiceId, 20.00, 0.00);
+        assertEquals(invoiceDao.getAccountBalance(accountId, internalCallContext).compareTo(new BigDecimal("25.00")), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testFullRefundOfConsolidatedPayment() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        final UUID paymentId = UUID.randomUUID();
+        final List<InvoiceItem> items = createInvoicesPaidByConsolidatedPayment(accountId, paymentId, TEN, TWENTY);
+        final UUID oldInvoiceId = items.get(0).getInvoiceId();
+        final UUID newInvoiceId = items.get(1).getInvoiceId();
+
+        try {
+            invoiceDao.createRefund(paymentId, new BigDecimal("30.01"), false, ImmutableMap.<UUID, BigDecimal>of(), UUID.randomUUID(), internalCallContext);
+            Assert.fail();
+        } catch (InvoiceApiException e) {
+            Assert.assertEquals(e.getCode(), ErrorCode.REFUND_AMOUNT_TOO_HIGH.getCode());
+        }
+
+        final UUID paymentCookieId = UUID.randomUUID();
+        invoiceDao.createRefund(paymentId, new BigDecimal("30.00"), false, ImmutableMap.<UUID, BigDecimal>of(), paymentCookieId, internalCallContext);
+        assertEquals(getRefundedAmount(paymentId, newInvoiceId, paymentCookieId).compareTo(TWENTY), 0);
+        assertEquals(getRefundedAmount(paymentId, oldInvoiceId, paymentCookieId).compareTo(TEN), 0);
+
+        // Retrying the same refund is a no-op
+        invoiceDao.createRefund(paymentId, new BigDecimal("30.00"), false, ImmutableMap.<UUID, BigDecimal>of(), paymentCookieId, internalCallContext);
+        assertEquals(invoiceDao.getInvoicePayments(paymentId, internalCallContext).size(), 4);
+
+        invoiceUtil.verifyInvoice(oldInvoiceId, 10.00, 0.00);
+        invoiceUtil.verifyInvoice(newInvoiceId, 20.00, 0.00);
+        assertEquals(invoiceDao.getAccountBalance(accountId, internalCallContext).compareTo(new BigDecimal("30.00")), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testRefundOfConsolidatedPaymentWithInvoiceAdjustment() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        final UUID paymentId = UUID.randomUUID();
+        final List<InvoiceItem> items = createInvoicesPaidByConsolidatedPayment(accountId, paymentId, TEN, TWENTY);
+        final UUID oldInvoiceId = items.get(0).getInvoiceId();
+        final UUID newInvoiceId = items.get(1).getInvoiceId();
+
+        final UUID paymentCookieId = UUID.randomUUID();
+        invoiceDao.createRefund(paymentId, new BigDecimal("25.00"), true, ImmutableMap.<UUID, BigDecimal>of(), paymentCookieId, internalCallContext);
+
+        // Each invoice is adjusted by what was refunded on it
+        assertEquals(getRefundedAmount(paymentId, newInvoiceId, paymentCookieId).compareTo(TWENTY), 0);
+        assertEquals(getRefundedAmount(paymentId, oldInvoiceId, paymentCookieId).compareTo(FIVE), 0);
+        assertEquals(getAdjustedAmount(oldInvoiceId, InvoiceItemType.REFUND_ADJ).compareTo(FIVE), 0);
+        assertEquals(getAdjustedAmount(newInvoiceId, InvoiceItemType.REFUND_ADJ).compareTo(TWENTY), 0);
+        invoiceUtil.verifyInvoice(oldInvoiceId, 0.00, 0.00);
+        invoiceUtil.verifyInvoice(newInvoiceId, 0.00, 0.00);
+        assertEquals(invoiceDao.getAccountBalance(accountId, internalCallContext).compareTo(BigDecimal.ZERO), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testRefundOfConsolidatedPaymentWithInvoiceItemAdjustment() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        final UUID paymentId = UUID.randomUUID();
+        final List<InvoiceItem> items = createInvoicesPaidByConsolidatedPayment(accountId, paymentId, TEN, TWENTY);
+        final UUID oldInvoiceId = items.get(0).getInvoiceId();
+        final UUID newInvoiceId = items.get(1).getInvoiceId();
+
+        // The item of the oldest invoice is fully adjusted, the rest of the refund comes from the most recent invoice
+        final Map<UUID, BigDecimal> itemAdjustments = new HashMap<UUID, BigDecimal>();
+        itemAdjustments.put(items.get(0).getId(), null);
+        final UUID paymentCookieId = UUID.randomUUID();
+        invoiceDao.createRefund(paymentId, new BigDecimal("25.00"), true, itemAdjustments, paymentCookieId, internalCallContext);
+
+        assertEquals(getRefundedAmount(paymentId, oldInvoiceId, paymentCookieId).compareTo(TEN), 0);
+        assertEquals(getRefundedAmount(paymentId, newInvoiceId, paymentCookieId).compareTo(new BigDecimal("15.00")), 0);
+        assertEquals(getAdjustedAmount(oldInvoiceId, InvoiceItemType.ITEM_ADJ).compareTo(TEN), 0);
+        assertEquals(getAdjustedAmount(newInvoiceId, InvoiceItemType.ITEM_ADJ).compareTo(BigDecimal.ZERO), 0);
+        invoiceUtil.verifyInvoice(oldInvoiceId, 0.00, 0.00);
+        invoiceUtil.verifyInvoice(newInvoiceId, 15.00, 0.00);
+
+        // Items of invoices which were not paid by the payment are rejected
+        final List<InvoiceItem> otherItems = createInvoicesPaidByConsolidatedPayment(accountId, UUID.randomUUID(), TEN, TEN);
+        final Map<UUID, BigDecimal> otherItemAdjustments = new HashMap<UUID, BigDecimal>();
+        otherItemAdjustments.put(otherItems.get(0).getId(), null);
+        try {
+            invoiceDao.createRefund(paymentId, FIVE, true, otherItemAdjustments, UUID.randomUUID(), internalCallContext);
+            Assert.fail();
+        } catch (InvoiceApiException e) {
+            Assert.assertEquals(e.getCode(), ErrorCode.INVOICE_ITEM_NOT_FOUND.getCode());
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testChargebackOfConsolidatedPayment() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        final UUID paymentId = UUID.randomUUID();
+        final List<InvoiceItem> items = createInvoicesPaidByConsolidatedPayment(accountId, paymentId, TEN, TWENTY);
+        final UUID oldInvoiceId = items.get(0).getInvoiceId();
+        final UUID newInvoiceId = items.get(1).getInvoiceId();
+        // What the jaxrs layer passes: the attempt of the oldest invoice
+        final UUID invoicePaymentId = invoiceDao.getInvoicePayments(paymentId, internalCallContext).get(0).getId();
+
+        // The chargeback is checked against the whole payment, not the oldest invoice's share
+        try {
+            invoiceDao.postChargeback(invoicePaymentId, new BigDecimal("30.01"), internalCallContext);
+            Assert.fail();
+        } catch (InvoiceApiException e) {
+            Assert.assertEquals(e.getCode(), ErrorCode.CHARGE_BACK_AMOUNT_TOO_HIGH.getCode());
+        }
+
+        // Taken from the most recent invoice first
+        invoiceDao.postChargeback(invoicePaymentId, new BigDecimal("25.00"), internalCallContext);
+        assertEquals(getChargedBackAmount(paymentId, newInvoiceId).compareTo(TWENTY), 0);
+        assertEquals(getChargedBackAmount(paymentId, oldInvoiceId).compareTo(FIVE), 0);
+        invoiceUtil.verifyInvoice(oldInvoiceId, 5.00, 0.00);
+        invoiceUtil.verifyInvoice(newInvoiceId, 20.00, 0.00);
+
+        // Only what is left paid can be charged back
+        try {
+            invoiceDao.postChargeback(invoicePaymentId, new BigDecimal("5.01"), internalCallContext);
+            Assert.fail();
+        } catch (InvoiceApiException e) {
+            Assert.assertEquals(e.getCode(), ErrorCode.CHARGE_BACK_AMOUNT_TOO_HIGH.getCode());
+        }
+        invoiceDao.postChargeback(invoicePaymentId, null, internalCallContext);
+        assertEquals(getChargedBackAmount(paymentId, oldInvoiceId).compareTo(TEN), 0);
+        assertEquals(invoiceDao.getAccountBalance(accountId, internalCallContext).compareTo(new BigDecimal("30.00")), 0);
+    }
+
+    // Create one invoice per amount, all paid by the same payment
+    private List<InvoiceItem> createInvoicesPaidByConsolidatedPayment(final UUID accountId, final UUID paymentId, final BigDecimal... amounts) throws Exception {
+        final LocalDate startDate = new LocalDate(2011, 3, 1);
+        final List<InvoiceItem> items = new ArrayList<InvoiceItem>();
+        final List<InvoicePaymentModelDao> invoicePayments = new ArrayList<InvoicePaymentModelDao>();
+        for (final BigDecimal amount : amounts) {
+            final Invoice invoice = new DefaultInvoice(accountId, clock.getUTCToday(), startDate, Currency.USD);
+            invoiceUtil.createInvoice(invoice, true, internalCallContext);
+
+            final RecurringInvoiceItem item = new RecurringInvoiceItem(invoice.getId(), accountId, UUID.randomUUID(), UUID.randomUUID(), "test plan", "test phase B",
+                                                                       startDate, startDate.plusMonths(1), amount, amount, Currency.USD);
+            invoiceUtil.createInvoiceItem(item, internalCallContext);
+            items.add(item);
+
+            invoicePayments.add(new InvoicePaymentModelDao(new DefaultInvoicePayment(InvoicePaymentType.ATTEMPT, paymentId, invoice.getId(), clock.getUTCNow(), amount, Currency.USD)));
+        }
+        invoiceDao.notifyOfPayments(invoicePayments, internalCallContext);
+
+        for (final InvoiceItem item : items) {
+            invoiceUtil.verifyInvoice(item.getInvoiceId(), 0.00, 0.00);
+        }
+        return items;
+    }
+
+    private BigDecimal getRefundedAmount(final UUID paymentId, final UUID invoiceId, final UUID paymentCookieId) {
+        BigDecimal refundedAmount = BigDecimal.ZERO;
+        for (final InvoicePaymentModelDao invoicePayment : invoiceDao.getInvoicePayments(paymentId, internalCallContext)) {
+            if (invoicePayment.getType() == InvoicePaymentType.REFUND && invoicePayment.getInvoiceId().equals(invoiceId)) {
+                assertEquals(invoicePayment.getPaymentCookieId(), paymentCookieId);
+                refundedAmount = refundedAmount.add(invoicePayment.getAmount().negate());
+            }
+        }
+        return refundedAmount;
+    }
+
+    private BigDecimal getChargedBackAmount(final UUID paymentId, final UUID invoiceId) {
+        BigDecimal chargedBackAmount = BigDecimal.ZERO;
+        for (final InvoicePaymentModelDao invoicePayment : invoiceDao.getInvoicePayments(paymentId, internalCallContext)) {
+            if (invoicePayment.getType() == InvoicePaymentType.CHARGED_BACK && invoicePayment.getInvoiceId().equals(invoiceId)) {
+                chargedBackAmount = chargedBackAmount.add(invoicePayment.getAmount().negate());
+            }
+        }
+        return chargedBackAmount;
+    }
+
+    private BigDecimal getAdjustedAmount(final UUID invoiceId, final InvoiceItemType adjustmentType) {
+        BigDecimal adjustedAmount = BigDecimal.ZERO;
+        for (final InvoiceItemModelDao invoiceItem : invoiceDao.getById(invoiceId, internalCallContext).getInvoiceItems()) {
+            if (invoiceItem.getType() == adjustmentType) {
+                adjustedAmount = adjustedAmount.add(invoiceItem.getAmount().negate());
+            }
+        }
+        return adjustedAmount;
+    }
 }
@@ -102,6 +102,16 @@ public class TestDefaultInvoiceGenerator extends InvoiceTestSuiteNoDB {
             public boolean isEmailNotificationsEnabled() {
                 return false;
             }
+
+            @Override
+            public int getAgingReportPageSize() {
+                return 1000;
+            }
+
+            @Override
+            public int getMigrationBatchSize() {
+                return 100;
+            }
         };
         this.generator = new DefaultInvoiceGenerator(clock, invoiceConfig);
     }
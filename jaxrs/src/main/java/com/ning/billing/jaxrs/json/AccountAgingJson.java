@@ -0,0 +1,153 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.jaxrs.json;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.LocalDate;
+
+import com.ning.billing.invoice.api.AccountAging;
+import com.ning.billing.invoice.api.AgingBucket;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class AccountAgingJson {
+
+    private final String accountId;
+    private final String currency;
+    private final String overdueState;
+    private final LocalDate oldestUnpaidInvoiceDate;
+    private final Map<String, BigDecimal> balances;
+    private final BigDecimal totalBalance;
+
+    @JsonCreator
+    public AccountAgingJson(@JsonProperty("accountId") final String accountId,
+                            @JsonProperty("currency") final String currency,
+                            @JsonProperty("overdueState") @Nullable final String overdueState,
+                            @JsonProperty("oldestUnpaidInvoiceDate") final LocalDate oldestUnpaidInvoiceDate,
+                            @JsonProperty("balances") final Map<String, BigDecimal> balances,
+                            @JsonProperty("totalBalance") final BigDecimal totalBalance) {
+        this.accountId = accountId;
+        this.currency = currency;
+        this.overdueState = overdueState;
+        this.oldestUnpaidInvoiceDate = oldestUnpaidInvoiceDate;
+        this.balances = balances;
+        this.totalBalance = totalBalance;
+    }
+
+    public AccountAgingJson(final AccountAging accountAging) {
+        this(accountAging.getAccountId().toString(), accountAging.getCurrency().toString(), accountAging.getOverdueState(),
+             accountAging.getOldestUnpaidInvoiceDate(), toJson(accountAging.getBalances()), accountAging.getTotalBalance());
+    }
+
+    static Map<String, BigDecimal> toJson(final Map<AgingBucket, BigDecimal> balances) {
+        final Map<String, BigDecimal> result = new LinkedHashMap<String, BigDecimal>();
+        for (final AgingBucket bucket : AgingBucket.values()) {
+            if (balances.get(bucket) != null) {
+                result.put(bucket.toString(), balances.get(bucket));
+            }
+        }
+        return result;
+    }
+
+    public String getAccountId() {
+        return accountId;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public String getOverdueState() {
+        return overdueState;
+    }
+
+    public LocalDate getOldestUnpaidInvoiceDate() {
+        return oldestUnpaidInvoiceDate;
+    }
+
+    public Map<String, BigDecimal> getBalances() {
+        return balances;
+    }
+
+    public BigDecimal getTotalBalance() {
+        return totalBalance;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("AccountAgingJson");
+        sb.append("{accountId='").append(accountId).append('\'');
+        sb.append(", currency='").append(currency).append('\'');
+        sb.append(", overdueState='").append(overdueState).append('\'');
+        sb.append(", oldestUnpaidInvoiceDate=").append(oldestUnpaidInvoiceDate);
+        sb.append(", balances=").append(balances);
+        sb.append(", totalBalance=").append(totalBalance);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final AccountAgingJson that = (AccountAgingJson) o;
+
+        if (accountId != null ? !accountId.equals(that.accountId) : that.accountId != null) {
+            return false;
+        }
+        if (balances != null ? !balances.equals(that.balances) : that.balances != null) {
+            return false;
+        }
+        if (currency != null ? !currency.equals(that.currency) : that.currency != null) {
+            return false;
+        }
+        if (oldestUnpaidInvoiceDate != null ? oldestUnpaidInvoiceDate.compareTo(that.oldestUnpaidInvoiceDate) != 0 : that.oldestUnpaidInvoiceDate != null) {
+            return false;
+        }
+        if (overdueState != null ? !overdueState.equals(that.overdueState) : that.overdueState != null) {
+            return false;
+        }
+        if (totalBalance != null ? totalBalance.compareTo(that.totalBalance) != 0 : that.totalBalance != null) {
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = accountId != null ? accountId.hashCode() : 0;
+        result = 31 * result + (currency != null ? currency.hashCode() : 0);
+        result = 31 * result + (overdueState != null ? overdueState.hashCode() : 0);
+        result = 31 * result + (oldestUnpaidInvoiceDate != null ? oldestUnpaidInvoiceDate.hashCode() : 0);
+        result = 31 * result + (balances != null ? balances.hashCode() : 0);
+        result = 31 * result + (totalBalance != null ? totalBalance.hashCode() : 0);
+        return result;
+    }
+}
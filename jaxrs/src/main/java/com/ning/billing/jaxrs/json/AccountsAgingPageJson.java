@@ -0,0 +1,99 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.jaxrs.json;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.ning.billing.invoice.api.AccountAging;
+import com.ning.billing.invoice.api.AccountsAgingPage;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class AccountsAgingPageJson {
+
+    private final List<AccountAgingJson> accountsAging;
+    private final Long nextCursor;
+
+    @JsonCreator
+    public AccountsAgingPageJson(@JsonProperty("accountsAging") final List<AccountAgingJson> accountsAging,
+                                 @JsonProperty("nextCursor") @Nullable final Long nextCursor) {
+        this.accountsAging = accountsAging;
+        this.nextCursor = nextCursor;
+    }
+
+    public AccountsAgingPageJson(final AccountsAgingPage page) {
+        this(toJson(page.getAccountsAging()), page.getNextCursor());
+    }
+
+    private static List<AccountAgingJson> toJson(final List<AccountAging> accountsAging) {
+        final List<AccountAgingJson> result = new LinkedList<AccountAgingJson>();
+        for (final AccountAging accountAging : accountsAging) {
+            result.add(new AccountAgingJson(accountAging));
+        }
+        return result;
+    }
+
+    public List<AccountAgingJson> getAccountsAging() {
+        return accountsAging;
+    }
+
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("AccountsAgingPageJson");
+        sb.append("{accountsAging=").append(accountsAging);
+        sb.append(", nextCursor=").append(nextCursor);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final AccountsAgingPageJson that = (AccountsAgingPageJson) o;
+
+        if (accountsAging != null ? !accountsAging.equals(that.accountsAging) : that.accountsAging != null) {
+            return false;
+        }
+        if (nextCursor != null ? !nextCursor.equals(that.nextCursor) : that.nextCursor != null) {
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = accountsAging != null ? accountsAging.hashCode() : 0;
+        result = 31 * result + (nextCursor != null ? nextCursor.hashCode() : 0);
+        return result;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.jaxrs.json;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.joda.time.LocalDate;
+
+import com.ning.billing.catalog.api.Currency;
+import com.ning.billing.invoice.api.AgingBucket;
+import com.ning.billing.invoice.api.AgingReport;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class AgingReportJson {
+
+    private final LocalDate asOfDate;
+    private final Integer nbAccounts;
+    private final Map<String, Map<String, BigDecimal>> balancesByCurrency;
+    private final Map<String, Map<String, Map<String, BigDecimal>>> balancesByCurrencyAndOverdueState;
+
+    @JsonCreator
+    public AgingReportJson(@JsonProperty("asOfDate") final LocalDate asOfDate,
+                           @JsonProperty("nbAccounts") final Integer nbAccounts,
+                           @JsonProperty("balancesByCurrency") final Map<String, Map<String, BigDecimal>> balancesByCurrency,
+                           @JsonProperty("balancesByCurrencyAndOverdueState") final Map<String, Map<String, Map<String, BigDecimal>>> balancesByCurrencyAndOverdueState) {
+        this.asOfDate = asOfDate;
+        this.nbAccounts = nbAccounts;
+        this.balancesByCurrency = balancesByCurrency;
+        this.balancesByCurrencyAndOverdueState = balancesByCurrencyAndOverdueState;
+    }
+
+    public AgingReportJson(final AgingReport agingReport) {
+        this(agingReport.getAsOfDate(), agingReport.getNbAccounts(), toJson(agingReport.getBalancesByCurrency()),
+             toJsonByOverdueState(agingReport.getBalancesByCurrencyAndOverdueState()));
+    }
+
+    private static Map<String, Map<String, BigDecimal>> toJson(final Map<Currency, Map<AgingBucket, BigDecimal>> balancesByCurrency) {
+        final Map<String, Map<String, BigDecimal>> result = new LinkedHashMap<String, Map<String, BigDecimal>>();
+        for (final Currency currency : balancesByCurrency.keySet()) {
+            result.put(currency.toString(), AccountAgingJson.toJson(balancesByCurrency.get(currency)));
+        }
+        return result;
+    }
+
+    private static Map<String, Map<String, Map<String, BigDecimal>>> toJsonByOverdueState(final Map<Currency, Map<String, Map<AgingBucket, BigDecimal>>> balancesByCurrencyAndOverdueState) {
+        final Map<String, Map<String, Map<String, BigDecimal>>> result = new LinkedHashMap<String, Map<String, Map<String, BigDecimal>>>();
+        for (final Currency currency : balancesByCurrencyAndOverdueState.keySet()) {
+            final Map<String, Map<String, BigDecimal>> balancesByOverdueState = new LinkedHashMap<String, Map<String, BigDecimal>>();
+            for (final String overdueState : balancesByCurrencyAndOverdueState.get(currency).keySet()) {
+                balancesByOverdueState.put(overdueState, AccountAgingJson.toJson(balancesByCurrencyAndOverdueState.get(currency).get(overdueState)));
+            }
+            result.put(currency.toString(), balancesByOverdueState);
+        }
+        return result;
+    }
+
+    public LocalDate getAsOfDate() {
+        return asOfDate;
+    }
+
+    public Integer getNbAccounts() {
+        return nbAccounts;
+    }
+
+    public Map<String, Map<String, BigDecimal>> getBalancesByCurrency() {
+        return balancesByCurrency;
+    }
+
+    public Map<String, Map<String, Map<String, BigDecimal>>> getBalancesByCurrencyAndOverdueState() {
+        return balancesByCurrencyAndOverdueState;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("AgingReportJson");
+        sb.append("{asOfDate=").append(asOfDate);
+        sb.append(", nbAccounts=").append(nbAccounts);
+        sb.append(", balancesByCurrency=").append(balancesByCurrency);
+        sb.append(", balancesByCurrencyAndOverdueState=").append(balancesByCurrencyAndOverdueState);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final AgingReportJson that = (AgingReportJson) o;
+
+        if (asOfDate != null ? asOfDate.compareTo(that.asOfDate) != 0 : that.asOfDate != null) {
+            return false;
+        }
+        if (balancesByCurrency != null ? !balancesByCurrency.equals(that.balancesByCurrency) : that.balancesByCurrency != null) {
+            return false;
+        }
+        if (balancesByCurrencyAndOverdueState != null ? !balancesByCurrencyAndOverdueState.equals(that.balancesByCurrencyAndOverdueState) : that.balancesByCurrencyAndOverdueState != null) {
+            return false;
+        }
+        if (nbAccounts != null ? !nbAccounts.equals(that.nbAccounts) : that.nbAccounts != null) {
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = asOfDate != null ? asOfDate.hashCode() : 0;
+        result = 31 * result + (nbAccounts != null ? nbAccounts.hashCode() : 0);
+        result = 31 * result + (balancesByCurrency != null ? balancesByCurrency.hashCode() : 0);
+        result = 31 * result + (balancesByCurrencyAndOverdueState != null ? balancesByCurrencyAndOverdueState.hashCode() : 0);
+        return result;
+    }
+}
@@ -29,7 +29,6 @@ import javax.ws.rs.core.Response.Status;
 
 import com.ning.billing.account.api.AccountUserApi;
 import com.ning.billing.catalog.api.CatalogApiException;
-import com.ning.billing.catalog.api.CatalogService;
 import com.ning.billing.catalog.api.Listing;
 import com.ning.billing.catalog.api.StaticCatalog;
 import com.ning.billing.clock.Clock;
@@ -40,7 +39,9 @@ import com.ning.billing.jaxrs.util.JaxrsUriBuilder;
 import com.ning.billing.util.api.AuditUserApi;
 import com.ning.billing.util.api.CustomFieldUserApi;
 import com.ning.billing.util.api.TagUserApi;
+import com.ning.billing.util.callcontext.InternalCallContextFactory;
 import com.ning.billing.util.config.catalog.XMLWriter;
+import com.ning.billing.util.svcapi.catalog.CatalogInternalApi;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
@@ -52,10 +53,12 @@ import static javax.ws.rs.core.MediaType.APPLICATION_XML;
 @Path(JaxrsResource.CATALOG_PATH)
 public class CatalogResource extends JaxRsResourceBase {
 
-    private final CatalogService catalogService;
+    private final CatalogInternalApi catalogInternalApi;
+    private final InternalCallContextFactory internalCallContextFactory;
 
     @Inject
-    public CatalogResource(final CatalogService catalogService,
+    public CatalogResource(final CatalogInternalApi catalogInternalApi,
+                           final InternalCallContextFactory internalCallContextFactory,
                            final JaxrsUriBuilder uriBuilder,
                            final TagUserApi tagUserApi,
                            final CustomFieldUserApi customFieldUserApi,
@@ -64,19 +67,20 @@ public class CatalogResource extends JaxRsResourceBase {
                            final Clock clock,
                            final Context context) {
         super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, accountUserApi, clock, context);
-        this.catalogService = catalogService;
+        this.catalogInternalApi = catalogInternalApi;
+        this.internalCallContextFactory = internalCallContextFactory;
     }
 
     @GET
     @Produces(APPLICATION_XML)
     public Response getCatalogXml(@javax.ws.rs.core.Context final HttpServletRequest request) throws Exception {
-        return Response.status(Status.OK).entity(XMLWriter.writeXML(catalogService.getCurrentCatalog(), StaticCatalog.class)).build();
+        return Response.status(Status.OK).entity(XMLWriter.writeXML(getCurrentCatalog(request), StaticCatalog.class)).build();
     }
 
     @GET
     @Produces(APPLICATION_JSON)
     public Response getCatalogJson(@javax.ws.rs.core.Context final HttpServletRequest request) throws Exception {
-        final StaticCatalog catalog = catalogService.getCurrentCatalog();
+        final StaticCatalog catalog = getCurrentCatalog(request);
 
         return Response.status(Status.OK).entity(catalog).build();
     }
@@ -100,7 +104,7 @@ public class CatalogResource extends JaxRsResourceBase {
     @Produces(APPLICATION_JSON)
     public Response getAvailableAddons(@QueryParam("baseProductName") final String baseProductName,
                                        @javax.ws.rs.core.Context final HttpServletRequest request) throws CatalogApiException {
-        final StaticCatalog catalog = catalogService.getCurrentCatalog();
+        final StaticCatalog catalog = getCurrentCatalog(request);
         final List<Listing> listings = catalog.getAvailableAddonListings(baseProductName);
         final List<PlanDetailJson> details = new ArrayList<PlanDetailJson>();
         for (final Listing listing : listings) {
@@ -113,7 +117,7 @@ public class CatalogResource extends JaxRsResourceBase {
     @Path("/availableBasePlans")
     @Produces(APPLICATION_JSON)
     public Response getAvailableBasePlans(@javax.ws.rs.core.Context final HttpServletRequest request) throws CatalogApiException {
-        final StaticCatalog catalog = catalogService.getCurrentCatalog();
+        final StaticCatalog catalog = getCurrentCatalog(request);
         final List<Listing> listings = catalog.getAvailableBasePlanListings();
         final List<PlanDetailJson> details = new ArrayList<PlanDetailJson>();
         for (final Listing listing : listings) {
@@ -126,9 +130,14 @@ public class CatalogResource extends JaxRsResourceBase {
     @Path("/simpleCatalog")
     @Produces(APPLICATION_JSON)
     public Response getSimpleCatalog(@javax.ws.rs.core.Context final HttpServletRequest request) throws CatalogApiException {
-        final StaticCatalog catalog = catalogService.getCurrentCatalog();
+        final StaticCatalog catalog = getCurrentCatalog(request);
 
         final CatalogJsonSimple json = new CatalogJsonSimple(catalog);
         return Response.status(Status.OK).entity(json).build();
     }
+
+    private StaticCatalog getCurrentCatalog(final HttpServletRequest request) {
+        // Tenants which uploaded their own catalog see it, the others get the default one
+        return catalogInternalApi.getCurrentCatalog(internalCallContextFactory.createInternalTenantContext(context.createContext(request)));
+    }
 }
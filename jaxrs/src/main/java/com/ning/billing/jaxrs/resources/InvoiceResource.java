@@ -17,12 +17,14 @@
 package com.ning.billing.jaxrs.resources;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
@@ -34,8 +36,10 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.joda.time.DateTime;
@@ -50,11 +54,15 @@ import com.ning.billing.account.api.AccountApiException;
 import com.ning.billing.account.api.AccountUserApi;
 import com.ning.billing.catalog.api.Currency;
 import com.ning.billing.clock.Clock;
+import com.ning.billing.invoice.api.AccountsAgingPage;
 import com.ning.billing.invoice.api.Invoice;
+import com.ning.billing.invoice.api.InvoiceAgingUserApi;
 import com.ning.billing.invoice.api.InvoiceApiException;
 import com.ning.billing.invoice.api.InvoiceItem;
 import com.ning.billing.invoice.api.InvoiceNotifier;
 import com.ning.billing.invoice.api.InvoiceUserApi;
+import com.ning.billing.jaxrs.json.AccountsAgingPageJson;
+import com.ning.billing.jaxrs.json.AgingReportJson;
 import com.ning.billing.jaxrs.json.CustomFieldJson;
 import com.ning.billing.jaxrs.json.InvoiceItemJsonSimple;
 import com.ning.billing.jaxrs.json.InvoiceJsonSimple;
@@ -94,12 +102,14 @@ public class InvoiceResource extends JaxRsResourceBase {
     private final InvoiceUserApi invoiceApi;
     private final PaymentApi paymentApi;
     private final InvoiceNotifier invoiceNotifier;
+    private final InvoiceAgingUserApi invoiceAgingApi;
 
     @Inject
     public InvoiceResource(final AccountUserApi accountUserApi,
                            final InvoiceUserApi invoiceApi,
                            final PaymentApi paymentApi,
                            final InvoiceNotifier invoiceNotifier,
+                           final InvoiceAgingUserApi invoiceAgingApi,
                            final Clock clock,
                            final JaxrsUriBuilder uriBuilder,
                            final TagUserApi tagUserApi,
@@ -110,6 +120,7 @@ public class InvoiceResource extends JaxRsResourceBase {
         this.invoiceApi = invoiceApi;
         this.paymentApi = paymentApi;
         this.invoiceNotifier = invoiceNotifier;
+        this.invoiceAgingApi = invoiceAgingApi;
     }
 
     @GET
@@ -146,6 +157,43 @@ public class InvoiceResource extends JaxRsResourceBase {
         }
     }
 
+    @GET
+    @Path("/" + AGING)
+    @Produces(APPLICATION_JSON)
+    public Response getAccountsAging(@QueryParam(QUERY_AS_OF_DATE) final String asOfDate,
+                                     @QueryParam(QUERY_CURSOR) final Long cursor,
+                                     @QueryParam(QUERY_LIMIT) @DefaultValue("100") final Integer limit,
+                                     @javax.ws.rs.core.Context final HttpServletRequest request) {
+        final TenantContext tenantContext = context.createContext(request);
+        final AccountsAgingPage page = invoiceAgingApi.getAccountsAging(toAgingDate(asOfDate), cursor, limit, tenantContext);
+        return Response.status(Status.OK).entity(new AccountsAgingPageJson(page)).build();
+    }
+
+    @GET
+    @Path("/" + AGING + "/" + AGING_SUMMARY)
+    @Produces(APPLICATION_JSON)
+    public Response getAgingReport(@QueryParam(QUERY_AS_OF_DATE) final String asOfDate,
+                                   @javax.ws.rs.core.Context final HttpServletRequest request) {
+        final TenantContext tenantContext = context.createContext(request);
+        final AgingReportJson json = new AgingReportJson(invoiceAgingApi.getAgingReport(toAgingDate(asOfDate), tenantContext));
+        return Response.status(Status.OK).entity(json).build();
+    }
+
+    @GET
+    @Path("/" + AGING + "/" + AGING_CSV)
+    @Produces("text/csv")
+    public StreamingOutput exportAccountsAging(@QueryParam(QUERY_AS_OF_DATE) final String asOfDate,
+                                               @javax.ws.rs.core.Context final HttpServletRequest request) {
+        final TenantContext tenantContext = context.createContext(request);
+        final LocalDate agingDate = toAgingDate(asOfDate);
+        return new StreamingOutput() {
+            @Override
+            public void write(final OutputStream output) throws IOException, WebApplicationException {
+                invoiceAgingApi.exportAccountsAgingAsCSV(agingDate, output, tenantContext);
+            }
+        };
+    }
+
     @GET
     @Path("/{invoiceId:" + UUID_PATTERN + "}/")
     @Produces(APPLICATION_JSON)
@@ -547,4 +595,8 @@ public class InvoiceResource extends JaxRsResourceBase {
     protected ObjectType getObjectType() {
         return ObjectType.INVOICE;
     }
+
+    private LocalDate toAgingDate(@Nullable final String asOfDate) {
+        return asOfDate == null ? clock.getUTCToday() : new LocalDate(asOfDate);
+    }
 }
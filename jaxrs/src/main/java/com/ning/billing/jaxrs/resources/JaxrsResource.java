@@ -26,6 +26,7 @@ public interface JaxrsResource {
 
     public static final String TIMELINE = "timeline";
     public static final String REGISTER_NOTIFICATION_CALLBACK = "registerNotificationCallback";
+    public static final String UPLOAD_CATALOG = "uploadCatalog";
     public static final String SEARCH = "search";
 
     /*
@@ -86,6 +87,10 @@ public interface JaxrsResource {
 
     public static final String QUERY_AUDIT = "audit";
 
+    public static final String QUERY_AS_OF_DATE = "asOfDate";
+    public static final String QUERY_CURSOR = "cursor";
+    public static final String QUERY_LIMIT = "limit";
+
     public static final String QUERY_NOTIFICATION_CALLBACK = "cb";
 
     public static final String ACCOUNTS = "accounts";
@@ -112,6 +117,10 @@ public interface JaxrsResource {
     public static final String INVOICES = "invoices";
     public static final String INVOICES_PATH = PREFIX + "/" + INVOICES;
 
+    public static final String AGING = "aging";
+    public static final String AGING_SUMMARY = "summary";
+    public static final String AGING_CSV = "csv";
+
     public static final String CHARGES = "charges";
     public static final String CHARGES_PATH = PREFIX + "/" + INVOICES + "/" + CHARGES;
 
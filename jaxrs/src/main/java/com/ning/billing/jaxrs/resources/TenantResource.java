@@ -17,6 +17,7 @@
 package com.ning.billing.jaxrs.resources;
 
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.MediaType.APPLICATION_XML;
 
 import java.net.URI;
 import java.util.List;
@@ -32,6 +33,7 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriBuilder;
@@ -52,7 +54,10 @@ import com.ning.billing.util.api.AuditUserApi;
 import com.ning.billing.util.api.CustomFieldUserApi;
 import com.ning.billing.util.api.TagUserApi;
 import com.ning.billing.util.callcontext.CallContext;
+import com.ning.billing.util.callcontext.InternalCallContextFactory;
 import com.ning.billing.util.callcontext.TenantContext;
+import com.ning.billing.util.svcapi.catalog.CatalogInternalApi;
+import com.ning.billing.util.svcapi.tenant.TenantInternalApi;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
@@ -62,9 +67,13 @@ import com.google.inject.Singleton;
 public class TenantResource extends JaxRsResourceBase {
 
     private final TenantUserApi tenantApi;
+    private final CatalogInternalApi catalogInternalApi;
+    private final InternalCallContextFactory internalCallContextFactory;
 
     @Inject
     public TenantResource(final TenantUserApi tenantApi,
+            final CatalogInternalApi catalogInternalApi,
+            final InternalCallContextFactory internalCallContextFactory,
             final JaxrsUriBuilder uriBuilder,
             final TagUserApi tagUserApi,
             final CustomFieldUserApi customFieldUserApi,
@@ -74,6 +83,8 @@ public class TenantResource extends JaxRsResourceBase {
             final Context context) {
         super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, accountUserApi, clock, context);
         this.tenantApi = tenantApi;
+        this.catalogInternalApi = catalogInternalApi;
+        this.internalCallContextFactory = internalCallContextFactory;
     }
 
     @GET
@@ -131,6 +142,29 @@ public class TenantResource extends JaxRsResourceBase {
         return Response.status(Status.OK).entity(result).build();
     }
 
+    @POST
+    @Path("/" + UPLOAD_CATALOG)
+    @Consumes(APPLICATION_XML)
+    public Response uploadCatalog(final String catalogXML,
+            @HeaderParam(HDR_CREATED_BY) final String createdBy,
+            @HeaderParam(HDR_REASON) final String reason,
+            @HeaderParam(HDR_COMMENT) final String comment,
+            @javax.ws.rs.core.Context final HttpServletRequest request) throws TenantApiException {
+        // Each upload adds a new version of the tenant catalog, picked up in the background by the catalog module
+        final CallContext callContext = context.createContext(createdBy, reason, comment, request);
+
+        // Reject the version if the catalog wouldn't be valid anymore, it would otherwise be stored and ignored by the catalog module
+        try {
+            catalogInternalApi.validateNewCatalogVersion(catalogXML, internalCallContextFactory.createInternalTenantContext(callContext));
+        } catch (IllegalArgumentException e) {
+            return Response.status(Status.BAD_REQUEST).entity(e.getMessage()).type(MediaType.TEXT_PLAIN_TYPE).build();
+        }
+
+        tenantApi.addTenantKeyValue(TenantInternalApi.CATALOG_KEY, catalogXML, callContext);
+        final URI uri = UriBuilder.fromResource(CatalogResource.class).build();
+        return Response.created(uri).build();
+    }
+
     @DELETE
     @Path("/REGISTER_NOTIFICATION_CALLBACK")
     public Response deletePushNotificationCallbacks(@PathParam("tenantId") final String tenantId,
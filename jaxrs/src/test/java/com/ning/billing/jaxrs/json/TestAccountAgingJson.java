@@ -0,0 +1,101 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.jaxrs.json;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.billing.catalog.api.Currency;
+import com.ning.billing.invoice.api.AccountAging;
+import com.ning.billing.invoice.api.AgingBucket;
+import com.ning.billing.jaxrs.JaxrsTestSuiteNoDB;
+
+import com.google.common.collect.ImmutableMap;
+
+public class TestAccountAgingJson extends JaxrsTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testJson() throws Exception {
+        final String accountId = UUID.randomUUID().toString();
+        final String currency = "USD";
+        final String overdueState = UUID.randomUUID().toString();
+        final LocalDate oldestUnpaidInvoiceDate = new LocalDate(2013, 2, 13);
+        final Map<String, BigDecimal> balances = ImmutableMap.<String, BigDecimal>of(AgingBucket.DAYS_0_30.toString(), BigDecimal.TEN,
+                                                                                    AgingBucket.DAYS_31_60.toString(), BigDecimal.ONE);
+        final BigDecimal totalBalance = new BigDecimal("11");
+
+        final AccountAgingJson accountAgingJson = new AccountAgingJson(accountId, currency, overdueState, oldestUnpaidInvoiceDate, balances, totalBalance);
+        Assert.assertEquals(accountAgingJson.getAccountId(), accountId);
+        Assert.assertEquals(accountAgingJson.getCurrency(), currency);
+        Assert.assertEquals(accountAgingJson.getOverdueState(), overdueState);
+        Assert.assertEquals(accountAgingJson.getOldestUnpaidInvoiceDate(), oldestUnpaidInvoiceDate);
+        Assert.assertEquals(accountAgingJson.getBalances(), balances);
+        Assert.assertEquals(accountAgingJson.getTotalBalance(), totalBalance);
+
+        final String asJson = mapper.writeValueAsString(accountAgingJson);
+        final AccountAgingJson fromJson = mapper.readValue(asJson, AccountAgingJson.class);
+        Assert.assertEquals(fromJson, accountAgingJson);
+    }
+
+    @Test(groups = "fast")
+    public void testFromAccountAging() throws Exception {
+        final AccountAging accountAging = new AccountAging() {
+            @Override
+            public UUID getAccountId() {
+                return UUID.randomUUID();
+            }
+
+            @Override
+            public Currency getCurrency() {
+                return Currency.EUR;
+            }
+
+            @Override
+            public String getOverdueState() {
+                return null;
+            }
+
+            @Override
+            public LocalDate getOldestUnpaidInvoiceDate() {
+                return new LocalDate(2013, 1, 1);
+            }
+
+            @Override
+            public Map<AgingBucket, BigDecimal> getBalances() {
+                return ImmutableMap.<AgingBucket, BigDecimal>of(AgingBucket.DAYS_OVER_120, BigDecimal.TEN,
+                                                                AgingBucket.DAYS_0_30, BigDecimal.ONE);
+            }
+
+            @Override
+            public BigDecimal getTotalBalance() {
+                return new BigDecimal("11");
+            }
+        };
+
+        final AccountAgingJson accountAgingJson = new AccountAgingJson(accountAging);
+        Assert.assertEquals(accountAgingJson.getCurrency(), "EUR");
+        Assert.assertNull(accountAgingJson.getOverdueState());
+        // Buckets are ordered by age
+        Assert.assertEquals(accountAgingJson.getBalances().keySet().iterator().next(), AgingBucket.DAYS_0_30.toString());
+        Assert.assertEquals(accountAgingJson.getBalances().get(AgingBucket.DAYS_OVER_120.toString()), BigDecimal.TEN);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.jaxrs.json;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.billing.invoice.api.AgingBucket;
+import com.ning.billing.jaxrs.JaxrsTestSuiteNoDB;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class TestAccountsAgingPageJson extends JaxrsTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testJson() throws Exception {
+        final AccountAgingJson accountAgingJson = new AccountAgingJson(UUID.randomUUID().toString(), "USD", null, new LocalDate(2013, 2, 13),
+                                                                       ImmutableMap.<String, BigDecimal>of(AgingBucket.DAYS_0_30.toString(), BigDecimal.TEN),
+                                                                       BigDecimal.TEN);
+        final List<AccountAgingJson> accountsAging = ImmutableList.<AccountAgingJson>of(accountAgingJson);
+        final Long nextCursor = 12L;
+
+        final AccountsAgingPageJson pageJson = new AccountsAgingPageJson(accountsAging, nextCursor);
+        Assert.assertEquals(pageJson.getAccountsAging(), accountsAging);
+        Assert.assertEquals(pageJson.getNextCursor(), nextCursor);
+
+        final String asJson = mapper.writeValueAsString(pageJson);
+        final AccountsAgingPageJson fromJson = mapper.readValue(asJson, AccountsAgingPageJson.class);
+        Assert.assertEquals(fromJson, pageJson);
+
+        // Last page
+        final AccountsAgingPageJson lastPageJson = new AccountsAgingPageJson(accountsAging, null);
+        Assert.assertNull(mapper.readValue(mapper.writeValueAsString(lastPageJson), AccountsAgingPageJson.class).getNextCursor());
+    }
+}
@@ -29,7 +29,6 @@ import com.ning.billing.account.api.AccountApiException;
 import com.ning.billing.catalog.api.BillingAlignment;
 import com.ning.billing.catalog.api.Catalog;
 import com.ning.billing.catalog.api.CatalogApiException;
-import com.ning.billing.catalog.api.CatalogService;
 import com.ning.billing.catalog.api.PhaseType;
 import com.ning.billing.catalog.api.Plan;
 import com.ning.billing.catalog.api.PlanPhase;
@@ -41,6 +40,7 @@ import com.ning.billing.subscription.api.SubscriptionBase;
 import com.ning.billing.subscription.api.user.SubscriptionBaseBundle;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.events.EffectiveSubscriptionInternalEvent;
+import com.ning.billing.util.svcapi.catalog.CatalogInternalApi;
 import com.ning.billing.util.svcapi.subscription.SubscriptionBaseInternalApi;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -50,19 +50,19 @@ public class BillCycleDayCalculator {
 
     private static final Logger log = LoggerFactory.getLogger(BillCycleDayCalculator.class);
 
-    private final CatalogService catalogService;
+    private final CatalogInternalApi catalogInternalApi;
     private final SubscriptionBaseInternalApi subscriptionApi;
 
     @Inject
-    public BillCycleDayCalculator(final CatalogService catalogService, final SubscriptionBaseInternalApi subscriptionApi) {
-        this.catalogService = catalogService;
+    public BillCycleDayCalculator(final CatalogInternalApi catalogInternalApi, final SubscriptionBaseInternalApi subscriptionApi) {
+        this.catalogInternalApi = catalogInternalApi;
         this.subscriptionApi = subscriptionApi;
     }
 
     protected int calculateBcd(final SubscriptionBaseBundle bundle, final SubscriptionBase subscription, final EffectiveSubscriptionInternalEvent transition, final Account account, final InternalCallContext context)
             throws CatalogApiException, AccountApiException, SubscriptionBaseApiException {
 
-        final Catalog catalog = catalogService.getFullCatalog();
+        final Catalog catalog = catalogInternalApi.getFullCatalog(context);
 
         final Plan prevPlan = (transition.getPreviousPlan() != null) ? catalog.findPlan(transition.getPreviousPlan(), transition.getEffectiveTransitionTime(), transition.getSubscriptionStartDate()) : null;
         final Plan nextPlan = (transition.getNextPlan() != null) ? catalog.findPlan(transition.getNextPlan(), transition.getEffectiveTransitionTime(), transition.getSubscriptionStartDate()) : null;
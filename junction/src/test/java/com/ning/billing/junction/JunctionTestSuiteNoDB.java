@@ -22,12 +22,12 @@ import org.testng.annotations.BeforeMethod;
 
 import com.ning.billing.GuicyKillbillTestSuiteNoDB;
 import com.ning.billing.bus.api.PersistentBus;
-import com.ning.billing.catalog.api.CatalogService;
 import com.ning.billing.entitlement.dao.BlockingStateDao;
 import com.ning.billing.junction.glue.TestJunctionModuleNoDB;
 import com.ning.billing.junction.plumbing.billing.BillCycleDayCalculator;
 import com.ning.billing.junction.plumbing.billing.BlockingCalculator;
 import com.ning.billing.util.svcapi.account.AccountInternalApi;
+import com.ning.billing.util.svcapi.catalog.CatalogInternalApi;
 import com.ning.billing.util.svcapi.junction.BillingInternalApi;
 import com.ning.billing.util.svcapi.subscription.SubscriptionBaseInternalApi;
 import com.ning.billing.util.svcapi.tag.TagInternalApi;
@@ -48,7 +48,7 @@ public abstract class JunctionTestSuiteNoDB extends GuicyKillbillTestSuiteNoDB {
     @Inject
     protected BlockingCalculator blockingCalculator;
     @Inject
-    protected CatalogService catalogService;
+    protected CatalogInternalApi catalogInternalApi;
     @Inject
     protected SubscriptionBaseInternalApi subscriptionInternalApi;
     @Inject
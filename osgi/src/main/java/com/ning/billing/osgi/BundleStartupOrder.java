@@ -0,0 +1,151 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.osgi;
+
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compute the order in which bundles can be started, based on the dependencies they declare
+ * in their manifest (Import-Package and Require-Bundle).
+ * <p/>
+ * Bundles are grouped in waves: bundles within a wave don't depend on each other and can be started concurrently,
+ * while each wave only depends on bundles from the previous ones.
+ */
+public class BundleStartupOrder {
+
+    private static final Logger logger = LoggerFactory.getLogger(BundleStartupOrder.class);
+
+    private BundleStartupOrder() {
+    }
+
+    public static List<List<Bundle>> getStartupWaves(final List<Bundle> bundles) {
+        // Who exports what
+        final Map<String, Bundle> bundlesBySymbolicName = new HashMap<String, Bundle>();
+        final Map<String, Set<Bundle>> bundlesByExportedPackage = new HashMap<String, Set<Bundle>>();
+        for (final Bundle bundle : bundles) {
+            if (bundle.getSymbolicName() != null) {
+                bundlesBySymbolicName.put(bundle.getSymbolicName(), bundle);
+            }
+            for (final String exportedPackage : parseHeaderNames(getHeader(bundle, Constants.EXPORT_PACKAGE))) {
+                if (bundlesByExportedPackage.get(exportedPackage) == null) {
+                    bundlesByExportedPackage.put(exportedPackage, new HashSet<Bundle>());
+                }
+                bundlesByExportedPackage.get(exportedPackage).add(bundle);
+            }
+        }
+
+        // Who needs what
+        final Map<Bundle, Set<Bundle>> dependencies = new HashMap<Bundle, Set<Bundle>>();
+        for (final Bundle bundle : bundles) {
+            final Set<Bundle> bundleDependencies = new HashSet<Bundle>();
+            for (final String importedPackage : parseHeaderNames(getHeader(bundle, Constants.IMPORT_PACKAGE))) {
+                final Set<Bundle> exporters = bundlesByExportedPackage.get(importedPackage);
+                if (exporters != null) {
+                    bundleDependencies.addAll(exporters);
+                }
+            }
+            for (final String requiredBundle : parseHeaderNames(getHeader(bundle, Constants.REQUIRE_BUNDLE))) {
+                final Bundle exporter = bundlesBySymbolicName.get(requiredBundle);
+                if (exporter != null) {
+                    bundleDependencies.add(exporter);
+                }
+            }
+            // A bundle may import the packages it exports
+            bundleDependencies.remove(bundle);
+            dependencies.put(bundle, bundleDependencies);
+        }
+
+        final List<List<Bundle>> waves = new LinkedList<List<Bundle>>();
+        final Set<Bundle> scheduled = new HashSet<Bundle>();
+        final List<Bundle> remaining = new LinkedList<Bundle>(bundles);
+        while (!remaining.isEmpty()) {
+            final List<Bundle> wave = new ArrayList<Bundle>();
+            for (final Bundle bundle : remaining) {
+                if (scheduled.containsAll(dependencies.get(bundle))) {
+                    wave.add(bundle);
+                }
+            }
+
+            if (wave.isEmpty()) {
+                // Circular dependencies: let the framework sort it out
+                logger.warn("Circular dependencies detected between bundles {}", remaining);
+                wave.addAll(remaining);
+            }
+
+            waves.add(wave);
+            scheduled.addAll(wave);
+            remaining.removeAll(wave);
+        }
+        return waves;
+    }
+
+    /**
+     * Extract the names (packages or symbolic names) of an OSGI manifest header, ignoring attributes and directives.
+     * e.g. org.foo;org.bar;version="[1.0,2.0)",org.baz;resolution:=optional returns org.foo, org.bar and org.baz
+     *
+     * @param header header value
+     * @return the names in the header
+     */
+    static List<String> parseHeaderNames(final String header) {
+        final List<String> names = new LinkedList<String>();
+        if (header == null) {
+            return names;
+        }
+
+        boolean quoted = false;
+        boolean parameter = false;
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i <= header.length(); i++) {
+            final char c = i < header.length() ? header.charAt(i) : ',';
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (quoted) {
+                continue;
+            } else if (c == ',' || c == ';') {
+                final String name = current.toString().trim();
+                if (!parameter && !name.isEmpty()) {
+                    names.add(name);
+                }
+                current = new StringBuilder();
+                // A new clause starts after a comma
+                parameter = c == ';' && parameter;
+            } else if (c == '=') {
+                parameter = true;
+            } else {
+                current.append(c);
+            }
+        }
+        return names;
+    }
+
+    private static String getHeader(final Bundle bundle, final String name) {
+        final Dictionary<String, String> headers = bundle.getHeaders();
+        return headers == null ? null : headers.get(name);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.osgi;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Singleton;
+
+import org.weakref.jmx.Managed;
+
+/**
+ * Install and start durations of the OSGI bundles, as recorded by FileInstall during the last boot.
+ */
+@Singleton
+public class BundleStartupTimings {
+
+    private final ConcurrentMap<String, Long> installTimesMs = new ConcurrentHashMap<String, Long>();
+    private final ConcurrentMap<String, Long> startTimesMs = new ConcurrentHashMap<String, Long>();
+
+    private volatile long totalInstallTimeMs = 0;
+    private volatile long totalStartTimeMs = 0;
+
+    public void recordInstallTime(final String bundleLocation, final long durationMs) {
+        installTimesMs.put(bundleLocation, durationMs);
+    }
+
+    public void recordStartTime(final String bundleLocation, final long durationMs) {
+        startTimesMs.put(bundleLocation, durationMs);
+    }
+
+    public void recordTotalInstallTime(final long durationMs) {
+        totalInstallTimeMs = durationMs;
+    }
+
+    public void recordTotalStartTime(final long durationMs) {
+        totalStartTimeMs = durationMs;
+    }
+
+    public void reset() {
+        installTimesMs.clear();
+        startTimesMs.clear();
+        totalInstallTimeMs = 0;
+        totalStartTimeMs = 0;
+    }
+
+    public Map<String, Long> getInstallTimes() {
+        return new TreeMap<String, Long>(installTimesMs);
+    }
+
+    public Map<String, Long> getStartTimes() {
+        return new TreeMap<String, Long>(startTimesMs);
+    }
+
+    @Managed(description = "Time spent installing all OSGI bundles (ms)")
+    public long getTotalInstallTimeMs() {
+        return totalInstallTimeMs;
+    }
+
+    @Managed(description = "Time spent starting all OSGI bundles (ms)")
+    public long getTotalStartTimeMs() {
+        return totalStartTimeMs;
+    }
+
+    @Managed(description = "Install time of each OSGI bundle (ms)")
+    public String getBundleInstallTimes() {
+        return getInstallTimes().toString();
+    }
+
+    @Managed(description = "Start time of each OSGI bundle (ms)")
+    public String getBundleStartTimes() {
+        return getStartTimes().toString();
+    }
+}
@@ -58,10 +58,10 @@ public class DefaultOSGIService implements OSGIService {
     @Inject
     public DefaultOSGIService(final OSGIConfig osgiConfig, final PureOSGIBundleFinder osgiBundleFinder,
                               final PluginFinder pluginFinder, final PluginConfigServiceApi pluginConfigServiceApi,
-                              final KillbillActivator killbillActivator) {
+                              final KillbillActivator killbillActivator, final BundleStartupTimings bundleStartupTimings) {
         this.osgiConfig = osgiConfig;
         this.killbillActivator = killbillActivator;
-        this.fileInstall = new FileInstall(osgiBundleFinder, pluginFinder, pluginConfigServiceApi);
+        this.fileInstall = new FileInstall(osgiBundleFinder, pluginFinder, pluginConfigServiceApi, osgiConfig, bundleStartupTimings);
         this.installedBundles = new LinkedList<Bundle>();
         this.framework = null;
     }
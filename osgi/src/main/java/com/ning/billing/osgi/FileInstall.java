@@ -16,14 +16,21 @@
 
 package com.ning.billing.osgi;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -48,54 +55,103 @@ import com.ning.billing.osgi.api.config.PluginRubyConfig;
 import com.ning.billing.osgi.pluginconf.DefaultPluginConfigServiceApi;
 import com.ning.billing.osgi.pluginconf.PluginConfigException;
 import com.ning.billing.osgi.pluginconf.PluginFinder;
+import com.ning.billing.util.config.OSGIConfig;
 
+import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
 
 // TODO Pierre Should we leverage org.apache.felix.fileinstall.internal.FileInstall?
 public class FileInstall {
 
     private static final Logger logger = LoggerFactory.getLogger(FileInstall.class);
 
+    private static final String INSTALL_THREAD_PREFIX = "osgi-install-";
+    private static final String START_THREAD_PREFIX = "osgi-start-";
+    private static final String JRUBY_BUNDLE_CACHE_DIR = "/cache/jruby/";
+
     private final PureOSGIBundleFinder osgiBundleFinder;
     private final PluginFinder pluginFinder;
     private final PluginConfigServiceApi pluginConfigServiceApi;
+    private final OSGIConfig osgiConfig;
+    private final BundleStartupTimings bundleStartupTimings;
 
-    public FileInstall(final PureOSGIBundleFinder osgiBundleFinder, final PluginFinder pluginFinder, final PluginConfigServiceApi pluginConfigServiceApi) {
+    public FileInstall(final PureOSGIBundleFinder osgiBundleFinder, final PluginFinder pluginFinder, final PluginConfigServiceApi pluginConfigServiceApi,
+                       final OSGIConfig osgiConfig, final BundleStartupTimings bundleStartupTimings) {
         this.osgiBundleFinder = osgiBundleFinder;
         this.pluginFinder = pluginFinder;
         this.pluginConfigServiceApi = pluginConfigServiceApi;
+        this.osgiConfig = osgiConfig;
+        this.bundleStartupTimings = bundleStartupTimings;
     }
 
 
     public List<Bundle> installBundles(final Framework framework) {
 
+        final long startTime = System.nanoTime();
         final List<Bundle> installedBundles = new LinkedList<Bundle>();
+        final ExecutorService executor = createExecutor(INSTALL_THREAD_PREFIX);
         try {
 
             final BundleContext context = framework.getBundleContext();
             final String jrubyBundlePath = findJrubyBundlePath();
 
-            // Install all bundles and create service mapping
-            installAllJavaBundles(context, installedBundles, jrubyBundlePath);
-            installAllJavaPluginBundles(context, installedBundles);
-            installAllJRubyPluginBundles(context, installedBundles, jrubyBundlePath);
-
+            // Install all bundles and create service mapping. Installation doesn't resolve the bundles, so it can be done
+            // in any order
+            final List<Future<Bundle>> pendingBundles = new LinkedList<Future<Bundle>>();
+            installAllJavaBundles(executor, context, pendingBundles, jrubyBundlePath);
+            installAllJavaPluginBundles(executor, context, pendingBundles);
+            installAllJRubyPluginBundles(executor, context, pendingBundles, jrubyBundlePath);
+
+            // Keep the ordering of the bundles stable
+            for (final Future<Bundle> pendingBundle : pendingBundles) {
+                final Bundle bundle = waitFor(pendingBundle, "Unable to install bundle");
+                if (bundle != null) {
+                    installedBundles.add(bundle);
+                }
+            }
         } catch (PluginConfigException e) {
             logger.error("Error while parsing plugin configurations", e);
-        } catch (BundleException e) {
-            logger.error("Error while parsing plugin configurations", e);
+        } finally {
+            executor.shutdown();
         }
+
+        final long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        bundleStartupTimings.recordTotalInstallTime(durationMs);
+        logger.info("Installed {} bundles in {} ms", installedBundles.size(), durationMs);
         return installedBundles;
     }
 
     public void startBundles(final List<Bundle> installedBundles) {
-        // Start all the bundles
-        for (final Bundle bundle : installedBundles) {
-            startBundle(bundle);
+        final long startTime = System.nanoTime();
+        final ExecutorService executor = createExecutor(START_THREAD_PREFIX);
+        try {
+            // Start all the bundles, making sure the ones we depend on are started first
+            for (final List<Bundle> wave : BundleStartupOrder.getStartupWaves(installedBundles)) {
+                final List<Future<Boolean>> pendingBundles = new LinkedList<Future<Boolean>>();
+                for (final Bundle bundle : wave) {
+                    pendingBundles.add(executor.submit(new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() {
+                            return startBundle(bundle);
+                        }
+                    }));
+                }
+
+                for (final Future<Boolean> pendingBundle : pendingBundles) {
+                    waitFor(pendingBundle, "Unable to start bundle");
+                }
+            }
+        } finally {
+            executor.shutdown();
         }
+
+        final long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        bundleStartupTimings.recordTotalStartTime(durationMs);
+        logger.info("Started {} bundles in {} ms", installedBundles.size(), durationMs);
     }
 
-    private void installAllJavaBundles(final BundleContext context, final List<Bundle> installedBundles, @Nullable final String jrubyBundlePath) throws PluginConfigException, BundleException {
+    private void installAllJavaBundles(final ExecutorService executor, final BundleContext context, final List<Future<Bundle>> pendingBundles, @Nullable final String jrubyBundlePath) throws PluginConfigException {
         final List<String> bundleJarPaths = osgiBundleFinder.getLatestBundles();
         for (final String cur : bundleJarPaths) {
             // Don't install the jruby.jar bundle
@@ -103,83 +159,184 @@ public class FileInstall {
                 continue;
             }
 
-            logger.info("Installing Java OSGI bundle from {}", cur);
-            final Bundle bundle = context.installBundle("file:" + cur);
-            installedBundles.add(bundle);
+            pendingBundles.add(executor.submit(new Callable<Bundle>() {
+                @Override
+                public Bundle call() throws BundleException {
+                    logger.info("Installing Java OSGI bundle from {}", cur);
+                    return installBundle(context, "file:" + cur, null);
+                }
+            }));
         }
     }
 
-    private void installAllJavaPluginBundles(final BundleContext context, final List<Bundle> installedBundles) throws PluginConfigException, BundleException {
+    private void installAllJavaPluginBundles(final ExecutorService executor, final BundleContext context, final List<Future<Bundle>> pendingBundles) throws PluginConfigException {
         final List<PluginJavaConfig> pluginJavaConfigs = pluginFinder.getLatestJavaPlugins();
         for (final PluginJavaConfig cur : pluginJavaConfigs) {
-            logger.info("Installing Java bundle for plugin {} from {}", cur.getPluginName(), cur.getBundleJarPath());
-            final Bundle bundle = context.installBundle("file:" + cur.getBundleJarPath());
-            ((DefaultPluginConfigServiceApi) pluginConfigServiceApi).registerBundle(bundle.getBundleId(), cur);
-            installedBundles.add(bundle);
+            pendingBundles.add(executor.submit(new Callable<Bundle>() {
+                @Override
+                public Bundle call() throws BundleException {
+                    logger.info("Installing Java bundle for plugin {} from {}", cur.getPluginName(), cur.getBundleJarPath());
+                    final Bundle bundle = installBundle(context, "file:" + cur.getBundleJarPath(), null);
+                    ((DefaultPluginConfigServiceApi) pluginConfigServiceApi).registerBundle(bundle.getBundleId(), cur);
+                    return bundle;
+                }
+            }));
         }
     }
 
-    private void installAllJRubyPluginBundles(final BundleContext context, final List<Bundle> installedBundles, @Nullable final String jrubyBundlePath) throws PluginConfigException, BundleException {
+    private void installAllJRubyPluginBundles(final ExecutorService executor, final BundleContext context, final List<Future<Bundle>> pendingBundles, @Nullable final String jrubyBundlePath) throws PluginConfigException {
         if (jrubyBundlePath == null) {
             return;
         }
 
         final List<PluginRubyConfig> pluginRubyConfigs = pluginFinder.getLatestRubyPlugins();
-        int i = 0;
-        for (final PluginRubyConfig cur : pluginRubyConfigs) {
+        if (pluginRubyConfigs.isEmpty()) {
+            return;
+        }
 
-            final String uniqueJrubyBundlePath = "jruby-" + cur.getPluginName();
+        // The tweaked jruby bundles are cached on disk, keyed by the content of the jruby.jar bundle
+        final File jrubyBundleCacheDir = new File(osgiConfig.getRootInstallationDir() + JRUBY_BUNDLE_CACHE_DIR);
+        final String jrubyBundleHash;
+        try {
+            jrubyBundleHash = Files.hash(new File(jrubyBundlePath), Hashing.sha1()).toString();
+            pruneJRubyBundleCache(jrubyBundleCacheDir, jrubyBundleHash);
+        } catch (IOException e) {
+            logger.warn("Failed to open file {}", jrubyBundlePath);
+            return;
+        }
 
-            InputStream tweakedInputStream = null;
-            try {
-                logger.info("Installing JRuby bundle for plugin {} ", uniqueJrubyBundlePath);
-                tweakedInputStream = tweakRubyManifestToBeUnique(jrubyBundlePath, ++i);
-                final Bundle bundle = context.installBundle(uniqueJrubyBundlePath, tweakedInputStream);
-                ((DefaultPluginConfigServiceApi) pluginConfigServiceApi).registerBundle(bundle.getBundleId(), cur);
-                installedBundles.add(bundle);
-            } catch (IOException e) {
-                logger.warn("Failed to open file {}", jrubyBundlePath);
-            } finally {
-                if (tweakedInputStream != null) {
+        int i = 0;
+        for (final PluginRubyConfig cur : pluginRubyConfigs) {
+            final int index = ++i;
+            pendingBundles.add(executor.submit(new Callable<Bundle>() {
+                @Override
+                public Bundle call() throws BundleException, IOException {
+                    final String uniqueJrubyBundlePath = "jruby-" + cur.getPluginName();
+                    logger.info("Installing JRuby bundle for plugin {} ", uniqueJrubyBundlePath);
+
+                    final File tweakedJrubyBundle = getOrCreateTweakedJRubyBundle(jrubyBundleCacheDir, jrubyBundlePath, jrubyBundleHash, index);
+                    final InputStream tweakedInputStream = new FileInputStream(tweakedJrubyBundle);
                     try {
-                        tweakedInputStream.close();
-                    } catch (IOException ignore) {
+                        final Bundle bundle = installBundle(context, uniqueJrubyBundlePath, tweakedInputStream);
+                        ((DefaultPluginConfigServiceApi) pluginConfigServiceApi).registerBundle(bundle.getBundleId(), cur);
+                        return bundle;
+                    } finally {
+                        try {
+                            tweakedInputStream.close();
+                        } catch (IOException ignore) {
+                        }
                     }
                 }
-            }
+            }));
         }
     }
 
+    private Bundle installBundle(final BundleContext context, final String location, @Nullable final InputStream input) throws BundleException {
+        final long startTime = System.nanoTime();
+        final Bundle bundle = input == null ? context.installBundle(location) : context.installBundle(location, input);
+
+        final long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        bundleStartupTimings.recordInstallTime(location, durationMs);
+        logger.info("Installed bundle {} in {} ms", location, durationMs);
+        return bundle;
+    }
 
-    private InputStream tweakRubyManifestToBeUnique(final String rubyJar, int index) throws IOException {
+    private File getOrCreateTweakedJRubyBundle(final File jrubyBundleCacheDir, final String rubyJar, final String rubyJarHash, final int index) throws IOException {
+        final File tweakedJrubyBundle = new File(jrubyBundleCacheDir, "jruby-" + rubyJarHash + "-" + index + ".jar");
+        if (tweakedJrubyBundle.isFile()) {
+            logger.debug("Using cached JRuby bundle {}", tweakedJrubyBundle);
+            return tweakedJrubyBundle;
+        }
 
-        final Attributes.Name attrName = new Attributes.Name(Constants.BUNDLE_SYMBOLICNAME);
-        final JarInputStream in = new JarInputStream(new FileInputStream(new File(rubyJar)));
-        final Manifest manifest = in.getManifest();
+        // Write to a temporary file first, so that a partially written jar is never picked up
+        final File tmpJrubyBundle = File.createTempFile("jruby-" + rubyJarHash + "-" + index, ".tmp", jrubyBundleCacheDir);
+        final OutputStream out = new FileOutputStream(tmpJrubyBundle);
+        try {
+            tweakRubyManifestToBeUnique(rubyJar, index, out);
+        } finally {
+            out.close();
+        }
 
+        if (!tmpJrubyBundle.renameTo(tweakedJrubyBundle)) {
+            if (!tmpJrubyBundle.delete()) {
+                logger.warn("Unable to delete {}", tmpJrubyBundle.getAbsolutePath());
+            }
+            if (!tweakedJrubyBundle.isFile()) {
+                throw new IOException("Unable to create " + tweakedJrubyBundle.getAbsolutePath());
+            }
+        }
+        return tweakedJrubyBundle;
+    }
 
-        final Object currentValue = manifest.getMainAttributes().get(attrName);
-        manifest.getMainAttributes().put(attrName, currentValue.toString() + "-" + index);
+    private void pruneJRubyBundleCache(final File jrubyBundleCacheDir, final String rubyJarHash) throws IOException {
+        if (!jrubyBundleCacheDir.isDirectory() && !jrubyBundleCacheDir.mkdirs()) {
+            throw new IOException("Unable to create " + jrubyBundleCacheDir.getAbsolutePath());
+        }
 
-        final ByteArrayOutputStream out = new ByteArrayOutputStream();
-        final JarOutputStream jarOut = new JarOutputStream(out, manifest);
-        try {
-            JarEntry e = in.getNextJarEntry();
-            while (e != null) {
-                if (!e.getName().equals(JarFile.MANIFEST_NAME)) {
-                    jarOut.putNextEntry(e);
-                    ByteStreams.copy(in, jarOut);
+        final File[] files = jrubyBundleCacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        // Remove the bundles tweaked from a previous version of jruby.jar
+        for (final File file : files) {
+            if (!file.getName().startsWith("jruby-" + rubyJarHash + "-") || !file.getName().endsWith(".jar")) {
+                if (!file.delete()) {
+                    logger.warn("Unable to delete {}", file.getAbsolutePath());
                 }
-                e = in.getNextJarEntry();
             }
+        }
+    }
 
-        } finally {
-            if (jarOut != null) {
+    private void tweakRubyManifestToBeUnique(final String rubyJar, final int index, final OutputStream out) throws IOException {
+
+        final Attributes.Name attrName = new Attributes.Name(Constants.BUNDLE_SYMBOLICNAME);
+        final JarInputStream in = new JarInputStream(new FileInputStream(new File(rubyJar)));
+        try {
+            final Manifest manifest = in.getManifest();
+
+            final Object currentValue = manifest.getMainAttributes().get(attrName);
+            manifest.getMainAttributes().put(attrName, currentValue.toString() + "-" + index);
+
+            final JarOutputStream jarOut = new JarOutputStream(out, manifest);
+            try {
+                JarEntry e = in.getNextJarEntry();
+                while (e != null) {
+                    if (!e.getName().equals(JarFile.MANIFEST_NAME)) {
+                        jarOut.putNextEntry(e);
+                        ByteStreams.copy(in, jarOut);
+                    }
+                    e = in.getNextJarEntry();
+                }
+            } finally {
                 jarOut.close();
             }
+        } finally {
+            in.close();
         }
+    }
+
+    private ExecutorService createExecutor(final String threadPrefix) {
+        return Executors.newFixedThreadPool(Math.max(1, osgiConfig.getBundleInstallThreads()), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread th = new Thread(r);
+                th.setName(threadPrefix + th.getId());
+                return th;
+            }
+        });
+    }
 
-        return new ByteArrayInputStream(out.toByteArray());
+    private <T> T waitFor(final Future<T> future, final String errorMessage) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn(errorMessage, e);
+        } catch (ExecutionException e) {
+            logger.warn(errorMessage, e.getCause());
+        }
+        return null;
     }
 
     private String findJrubyBundlePath() {
@@ -200,7 +357,12 @@ public class FileInstall {
         } else {
             logger.info("Starting bundle {}", bundle.getLocation());
             try {
+                final long startTime = System.nanoTime();
                 bundle.start();
+
+                final long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+                bundleStartupTimings.recordStartTime(bundle.getLocation(), durationMs);
+                logger.info("Started bundle {} in {} ms", bundle.getLocation(), durationMs);
                 return true;
             } catch (BundleException e) {
                 logger.warn("Unable to start bundle", e);
@@ -16,30 +16,52 @@
 
 package com.ning.billing.osgi;
 
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Observable;
+import java.util.Observer;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.weakref.jmx.Managed;
 
 import com.ning.billing.bus.api.PersistentBus;
 import com.ning.billing.bus.api.PersistentBus.EventBusException;
 import com.ning.billing.notification.plugin.api.ExtBusEvent;
+import com.ning.billing.osgi.PluginEventSubscriber.BackpressurePolicy;
+import com.ning.billing.util.config.OSGIConfig;
 
 import com.google.common.eventbus.Subscribe;
 
+/**
+ * Fans out external bus events to the plugins.
+ * <p/>
+ * Plugins subscribe through the java.util.Observable OSGI service (see OSGIKillbillEventDispatcher), but events
+ * aren't delivered on the bus thread: each observer gets its own PluginEventSubscriber (bounded queue and worker),
+ * so a slow or failing plugin doesn't delay the others, nor the bus. Full queues drop events by default
+ * (DROP_OLDEST): with the BLOCK policy, the bus waits at most killbill.osgi.event.dispatcher.block.timeout per event,
+ * across all plugins.
+ */
 public class KillbillEventObservable extends Observable {
 
-
-    private Logger logger = LoggerFactory.getLogger(KillbillEventObservable.class);
+    private final Logger logger = LoggerFactory.getLogger(KillbillEventObservable.class);
 
     private final PersistentBus externalBus;
+    private final OSGIConfig osgiConfig;
+    private final List<PluginEventSubscriber> subscribers = new CopyOnWriteArrayList<PluginEventSubscriber>();
 
     @Inject
-    public KillbillEventObservable(@Named("externalBus") final PersistentBus externalBus) {
+    public KillbillEventObservable(@Named("externalBus") final PersistentBus externalBus, final OSGIConfig osgiConfig) {
         this.externalBus = externalBus;
+        this.osgiConfig = osgiConfig;
     }
 
     public void register() throws EventBusException {
@@ -55,9 +77,145 @@ public class KillbillEventObservable extends Observable {
 
     @Subscribe
     public void handleKillbillEvent(final ExtBusEvent event) {
-
         logger.debug("Received external event " + event.toString());
-        setChanged();
-        notifyObservers(event);
+        // The time spent waiting for room in the queues is bounded per event, not per plugin
+        final long deadlineMs = System.currentTimeMillis() + osgiConfig.getEventDispatcherBlockTimeout().getMillis();
+        for (final PluginEventSubscriber subscriber : subscribers) {
+            subscriber.dispatch(event, deadlineMs - System.currentTimeMillis());
+        }
+    }
+
+    @Override
+    public synchronized void addObserver(final Observer observer) {
+        if (observer == null) {
+            throw new NullPointerException();
+        }
+        if (findSubscriber(observer) != null) {
+            return;
+        }
+
+        final PluginEventSubscriber subscriber = new PluginEventSubscriber(getSubscriberName(observer), observer, this,
+                                                                           osgiConfig.getEventDispatcherQueueCapacity(),
+                                                                           BackpressurePolicy.valueOf(osgiConfig.getEventDispatcherBackpressurePolicy()));
+        subscriber.start();
+        subscribers.add(subscriber);
+    }
+
+    @Override
+    public synchronized void deleteObserver(final Observer observer) {
+        final PluginEventSubscriber subscriber = findSubscriber(observer);
+        if (subscriber != null) {
+            subscribers.remove(subscriber);
+            subscriber.stop();
+        }
+    }
+
+    @Override
+    public synchronized void deleteObservers() {
+        for (final PluginEventSubscriber subscriber : subscribers) {
+            subscriber.stop();
+        }
+        subscribers.clear();
+    }
+
+    @Override
+    public synchronized int countObservers() {
+        return subscribers.size();
+    }
+
+    @Override
+    public void notifyObservers(final Object arg) {
+        if (arg instanceof ExtBusEvent) {
+            handleKillbillEvent((ExtBusEvent) arg);
+        }
+    }
+
+    @Managed(description = "Age of the oldest event not yet delivered to each plugin (ms)")
+    public String getPluginLagsMs() {
+        final Map<String, Long> lags = new TreeMap<String, Long>();
+        for (final PluginEventSubscriber subscriber : subscribers) {
+            lags.put(subscriber.getName(), subscriber.getLagMs());
+        }
+        return lags.toString();
+    }
+
+    @Managed(description = "Number of events queued for each plugin")
+    public String getPluginQueueSizes() {
+        final Map<String, Integer> sizes = new TreeMap<String, Integer>();
+        for (final PluginEventSubscriber subscriber : subscribers) {
+            sizes.put(subscriber.getName(), subscriber.getQueueSize());
+        }
+        return sizes.toString();
+    }
+
+    @Managed(description = "Number of events delivered to each plugin")
+    public String getPluginDeliveredEvents() {
+        final Map<String, Long> delivered = new TreeMap<String, Long>();
+        for (final PluginEventSubscriber subscriber : subscribers) {
+            delivered.put(subscriber.getName(), subscriber.getNbDelivered());
+        }
+        return delivered.toString();
+    }
+
+    @Managed(description = "Number of events dropped for each plugin, because its queue was full")
+    public String getPluginDroppedEvents() {
+        final Map<String, Long> dropped = new TreeMap<String, Long>();
+        for (final PluginEventSubscriber subscriber : subscribers) {
+            dropped.put(subscriber.getName(), subscriber.getNbDropped());
+        }
+        return dropped.toString();
+    }
+
+    @Managed(description = "Total number of events dropped, across all plugins")
+    public long getNbDroppedEvents() {
+        long nbDropped = 0;
+        for (final PluginEventSubscriber subscriber : subscribers) {
+            nbDropped += subscriber.getNbDropped();
+        }
+        return nbDropped;
+    }
+
+    @Managed(description = "Number of events each plugin failed to handle")
+    public String getPluginErrors() {
+        final Map<String, Long> errors = new TreeMap<String, Long>();
+        for (final PluginEventSubscriber subscriber : subscribers) {
+            errors.put(subscriber.getName(), subscriber.getNbErrors());
+        }
+        return errors.toString();
+    }
+
+    List<PluginEventSubscriber> getSubscribers() {
+        return new LinkedList<PluginEventSubscriber>(subscribers);
+    }
+
+    private PluginEventSubscriber findSubscriber(final Observer observer) {
+        for (final PluginEventSubscriber subscriber : subscribers) {
+            if (subscriber.getObserver() == observer) {
+                return subscriber;
+            }
+        }
+        return null;
+    }
+
+    // Name the subscriber after the bundle which registered the observer, if any
+    private String getSubscriberName(final Observer observer) {
+        final Bundle bundle = FrameworkUtil.getBundle(observer.getClass());
+        final String baseName = bundle != null && bundle.getSymbolicName() != null ? bundle.getSymbolicName() : observer.getClass().getName();
+
+        String name = baseName;
+        int i = 1;
+        while (isSubscriberNameUsed(name)) {
+            name = baseName + "-" + (++i);
+        }
+        return name;
+    }
+
+    private boolean isSubscriberNameUsed(final String name) {
+        for (final PluginEventSubscriber subscriber : subscribers) {
+            if (subscriber.getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
     }
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.osgi;
+
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ning.billing.notification.plugin.api.ExtBusEvent;
+
+/**
+ * Delivers external events to a single plugin observer, from its own bounded queue and worker thread.
+ * <p/>
+ * Events are delivered in the order they were received (hence ordered per account), and a slow, failing
+ * or hanging observer only affects its own queue. When the queue is full, events are dropped (with a warning)
+ * according to the backpressure policy: only the BLOCK policy makes the caller wait, for at most the time it is given.
+ */
+public class PluginEventSubscriber {
+
+    public enum BackpressurePolicy {
+        /* Wait for room in the queue (up to the time given by the caller), then drop the event */
+        BLOCK,
+        /* Drop the incoming event */
+        DROP_NEWEST,
+        /* Drop the oldest queued event to make room for the incoming one */
+        DROP_OLDEST
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(PluginEventSubscriber.class);
+
+    private final String name;
+    private final Observer observer;
+    private final Observable observable;
+    private final BackpressurePolicy policy;
+    private final BlockingQueue<QueuedEvent> queue;
+    private final Thread worker;
+
+    private final AtomicLong nbDelivered = new AtomicLong();
+    private final AtomicLong nbDropped = new AtomicLong();
+    private final AtomicLong nbErrors = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    public PluginEventSubscriber(final String name, final Observer observer, final Observable observable,
+                                 final int queueCapacity, final BackpressurePolicy policy) {
+        this.name = name;
+        this.observer = observer;
+        this.observable = observable;
+        this.policy = policy;
+        this.queue = new LinkedBlockingQueue<QueuedEvent>(Math.max(1, queueCapacity));
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                deliverEvents();
+            }
+        }, "osgi-events-" + name);
+        this.worker.setDaemon(true);
+    }
+
+    public void start() {
+        worker.start();
+    }
+
+    public void stop() {
+        running = false;
+        worker.interrupt();
+        nbDropped.addAndGet(queue.size());
+        queue.clear();
+    }
+
+    /**
+     * @param event     the event to deliver
+     * @param maxWaitMs maximum time to wait for room in the queue, with the BLOCK policy
+     */
+    public void dispatch(final ExtBusEvent event, final long maxWaitMs) {
+        final QueuedEvent queuedEvent = new QueuedEvent(event);
+        switch (policy) {
+            case BLOCK:
+                try {
+                    if (!queue.offer(queuedEvent, Math.max(0, maxWaitMs), TimeUnit.MILLISECONDS)) {
+                        drop(event);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    drop(event);
+                }
+                break;
+
+            case DROP_NEWEST:
+                if (!queue.offer(queuedEvent)) {
+                    drop(event);
+                }
+                break;
+
+            case DROP_OLDEST:
+                while (!queue.offer(queuedEvent)) {
+                    final QueuedEvent oldest = queue.poll();
+                    if (oldest != null) {
+                        drop(oldest.event);
+                    }
+                }
+                break;
+
+            default:
+                throw new IllegalStateException("Unexpected backpressure policy " + policy);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Observer getObserver() {
+        return observer;
+    }
+
+    public long getNbDelivered() {
+        return nbDelivered.get();
+    }
+
+    public long getNbDropped() {
+        return nbDropped.get();
+    }
+
+    public long getNbErrors() {
+        return nbErrors.get();
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    // Age of the oldest event not yet delivered
+    public long getLagMs() {
+        final QueuedEvent oldest = queue.peek();
+        return oldest == null ? 0 : System.currentTimeMillis() - oldest.receivedTimeMs;
+    }
+
+    private void deliverEvents() {
+        while (running) {
+            final QueuedEvent queuedEvent;
+            try {
+                queuedEvent = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try {
+                observer.update(observable, queuedEvent.event);
+                nbDelivered.incrementAndGet();
+            } catch (Throwable e) {
+                // Keep the worker alive, whatever the plugin throws (e.g. NoClassDefFoundError after a bundle refresh)
+                nbErrors.incrementAndGet();
+                logger.warn("Plugin " + name + " failed to handle event " + queuedEvent.event, e);
+            }
+        }
+    }
+
+    private void drop(final ExtBusEvent event) {
+        nbDropped.incrementAndGet();
+        logger.warn("Queue for plugin {} is full, dropping event {}", name, event);
+    }
+
+    private static final class QueuedEvent {
+
+        private final ExtBusEvent event;
+        private final long receivedTimeMs;
+
+        private QueuedEvent(final ExtBusEvent event) {
+            this.event = event;
+            this.receivedTimeMs = System.currentTimeMillis();
+        }
+    }
+}
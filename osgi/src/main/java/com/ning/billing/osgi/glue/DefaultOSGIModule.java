@@ -24,6 +24,7 @@ import org.osgi.service.http.HttpService;
 import org.skife.config.ConfigSource;
 import org.skife.config.ConfigurationObjectFactory;
 
+import com.ning.billing.osgi.BundleStartupTimings;
 import com.ning.billing.osgi.DefaultOSGIKillbill;
 import com.ning.billing.osgi.DefaultOSGIService;
 import com.ning.billing.osgi.KillbillActivator;
@@ -89,6 +90,7 @@ public class DefaultOSGIModule extends AbstractModule {
         bind(OSGIKillbill.class).to(DefaultOSGIKillbill.class).asEagerSingleton();
         bind(OSGIDataSourceProvider.class).asEagerSingleton();
         bind(KillbillEventObservable.class).asEagerSingleton();
+        bind(BundleStartupTimings.class).asEagerSingleton();
         bind(DataSource.class).annotatedWith(Names.named(OSGI_NAMED)).toProvider(OSGIDataSourceProvider.class).asEagerSingleton();
     }
 }
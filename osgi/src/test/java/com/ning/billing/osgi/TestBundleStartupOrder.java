@@ -0,0 +1,88 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.osgi;
+
+import java.util.Hashtable;
+import java.util.List;
+
+import org.mockito.Mockito;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.billing.GuicyKillbillTestSuiteNoDB;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestBundleStartupOrder extends GuicyKillbillTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testParseHeaderNames() {
+        Assert.assertEquals(BundleStartupOrder.parseHeaderNames(null), ImmutableList.<String>of());
+        Assert.assertEquals(BundleStartupOrder.parseHeaderNames("org.foo"), ImmutableList.<String>of("org.foo"));
+        Assert.assertEquals(BundleStartupOrder.parseHeaderNames("org.foo;org.bar;version=\"[1.0,2.0)\",org.baz;resolution:=optional"),
+                            ImmutableList.<String>of("org.foo", "org.bar", "org.baz"));
+        Assert.assertEquals(BundleStartupOrder.parseHeaderNames("org.foo;uses:=\"org.bar,org.baz\", org.qux"),
+                            ImmutableList.<String>of("org.foo", "org.qux"));
+    }
+
+    @Test(groups = "fast")
+    public void testStartupWaves() {
+        final Bundle library = createBundle("library", "org.library;version=1.0", null, null);
+        final Bundle plugin1 = createBundle("plugin1", null, "org.library;version=\"[1.0,2.0)\",org.slf4j", null);
+        final Bundle plugin2 = createBundle("plugin2", "org.plugin2", null, "library");
+        final Bundle plugin3 = createBundle("plugin3", null, "org.plugin2", null);
+        final Bundle standalone = createBundle("standalone", null, "org.slf4j", null);
+
+        final List<List<Bundle>> waves = BundleStartupOrder.getStartupWaves(ImmutableList.<Bundle>of(plugin3, plugin1, library, plugin2, standalone));
+        Assert.assertEquals(waves.size(), 3);
+        Assert.assertEquals(waves.get(0), ImmutableList.<Bundle>of(library, standalone));
+        Assert.assertEquals(waves.get(1), ImmutableList.<Bundle>of(plugin1, plugin2));
+        Assert.assertEquals(waves.get(2), ImmutableList.<Bundle>of(plugin3));
+    }
+
+    @Test(groups = "fast")
+    public void testStartupWavesWithCircularDependencies() {
+        final Bundle bundle1 = createBundle("bundle1", "org.bundle1", "org.bundle2", null);
+        final Bundle bundle2 = createBundle("bundle2", "org.bundle2", "org.bundle1", null);
+        final Bundle standalone = createBundle("standalone", null, null, null);
+
+        final List<List<Bundle>> waves = BundleStartupOrder.getStartupWaves(ImmutableList.<Bundle>of(bundle1, bundle2, standalone));
+        Assert.assertEquals(waves.size(), 2);
+        Assert.assertEquals(waves.get(0), ImmutableList.<Bundle>of(standalone));
+        Assert.assertEquals(waves.get(1), ImmutableList.<Bundle>of(bundle1, bundle2));
+    }
+
+    private Bundle createBundle(final String symbolicName, final String exportPackage, final String importPackage, final String requireBundle) {
+        final Hashtable<String, String> headers = new Hashtable<String, String>();
+        if (exportPackage != null) {
+            headers.put(Constants.EXPORT_PACKAGE, exportPackage);
+        }
+        if (importPackage != null) {
+            headers.put(Constants.IMPORT_PACKAGE, importPackage);
+        }
+        if (requireBundle != null) {
+            headers.put(Constants.REQUIRE_BUNDLE, requireBundle);
+        }
+
+        final Bundle bundle = Mockito.mock(Bundle.class);
+        Mockito.when(bundle.getSymbolicName()).thenReturn(symbolicName);
+        Mockito.when(bundle.getHeaders()).thenReturn(headers);
+        return bundle;
+    }
+}
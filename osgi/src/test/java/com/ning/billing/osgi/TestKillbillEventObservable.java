@@ -0,0 +1,255 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.osgi;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mockito;
+import org.skife.config.ConfigurationObjectFactory;
+import org.skife.config.TimeSpan;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.billing.GuicyKillbillTestSuiteNoDB;
+import com.ning.billing.bus.api.PersistentBus;
+import com.ning.billing.notification.plugin.api.ExtBusEvent;
+import com.ning.billing.util.config.OSGIConfig;
+
+public class TestKillbillEventObservable extends GuicyKillbillTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testSlowOrFailingPluginDoesNotAffectOthers() throws Exception {
+        final KillbillEventObservable observable = createObservable(100, "BLOCK");
+
+        final CountDownLatch slowObserverLatch = new CountDownLatch(1);
+        final Observer slowObserver = new Observer() {
+            @Override
+            public void update(final Observable o, final Object arg) {
+                try {
+                    slowObserverLatch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        final Observer failingObserver = new Observer() {
+            private int nbCalls = 0;
+
+            @Override
+            public void update(final Observable o, final Object arg) {
+                // Errors shouldn't kill the worker either
+                if (nbCalls++ % 2 == 0) {
+                    throw new IllegalStateException("Plugin bug");
+                } else {
+                    throw new NoClassDefFoundError("Plugin bug");
+                }
+            }
+        };
+        final RecordingObserver recordingObserver = new RecordingObserver();
+
+        observable.addObserver(slowObserver);
+        observable.addObserver(failingObserver);
+        observable.addObserver(recordingObserver);
+        Assert.assertEquals(observable.countObservers(), 3);
+
+        final List<ExtBusEvent> events = createEvents(10);
+        for (final ExtBusEvent event : events) {
+            observable.handleKillbillEvent(event);
+        }
+
+        // The bus thread isn't blocked by the slow plugin, and events are delivered in order to the others
+        Assert.assertTrue(recordingObserver.await(events.size()));
+        Assert.assertEquals(recordingObserver.getEvents(), events);
+
+        final PluginEventSubscriber failingSubscriber = getSubscriber(observable, failingObserver);
+        waitForErrors(failingSubscriber, events.size());
+        Assert.assertEquals(failingSubscriber.getNbErrors(), events.size());
+        Assert.assertTrue(getSubscriber(observable, slowObserver).getQueueSize() > 0);
+
+        slowObserverLatch.countDown();
+        observable.unregister();
+        Assert.assertEquals(observable.countObservers(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testDropPolicies() throws Exception {
+        for (final String policy : new String[]{"DROP_NEWEST", "DROP_OLDEST", "BLOCK"}) {
+            final KillbillEventObservable observable = createObservable(2, policy);
+
+            final CountDownLatch blockedLatch = new CountDownLatch(1);
+            final CountDownLatch releaseLatch = new CountDownLatch(1);
+            final RecordingObserver blockingObserver = new RecordingObserver() {
+                @Override
+                public void update(final Observable o, final Object arg) {
+                    blockedLatch.countDown();
+                    try {
+                        releaseLatch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    super.update(o, arg);
+                }
+            };
+            observable.addObserver(blockingObserver);
+
+            // The first event is being handled, the next two fill the queue, the last two overflow
+            final List<ExtBusEvent> events = createEvents(5);
+            observable.handleKillbillEvent(events.get(0));
+            Assert.assertTrue(blockedLatch.await(10, TimeUnit.SECONDS));
+            for (final ExtBusEvent event : events.subList(1, events.size())) {
+                observable.handleKillbillEvent(event);
+            }
+
+            final PluginEventSubscriber subscriber = getSubscriber(observable, blockingObserver);
+            Assert.assertEquals(subscriber.getNbDropped(), 2);
+            Assert.assertEquals(subscriber.getQueueSize(), 2);
+
+            releaseLatch.countDown();
+            Assert.assertTrue(blockingObserver.await(3));
+            if ("DROP_OLDEST".equals(policy)) {
+                Assert.assertEquals(blockingObserver.getEvents(), concat(events.get(0), events.get(3), events.get(4)));
+            } else {
+                Assert.assertEquals(blockingObserver.getEvents(), events.subList(0, 3));
+            }
+
+            observable.unregister();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testBlockTimeoutIsBoundedPerEvent() throws Exception {
+        final KillbillEventObservable observable = createObservable(1, "BLOCK", "500ms");
+
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final List<CountDownLatch> blockedLatches = new LinkedList<CountDownLatch>();
+        for (int i = 0; i < 3; i++) {
+            final CountDownLatch blockedLatch = new CountDownLatch(1);
+            blockedLatches.add(blockedLatch);
+            observable.addObserver(new Observer() {
+                @Override
+                public void update(final Observable o, final Object arg) {
+                    blockedLatch.countDown();
+                    try {
+                        releaseLatch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+
+        // Each plugin is handling the first event, and has the second one queued
+        final List<ExtBusEvent> events = createEvents(3);
+        observable.handleKillbillEvent(events.get(0));
+        for (final CountDownLatch blockedLatch : blockedLatches) {
+            Assert.assertTrue(blockedLatch.await(10, TimeUnit.SECONDS));
+        }
+        observable.handleKillbillEvent(events.get(1));
+
+        // All queues are full: the bus waits for the block timeout once, not once per plugin
+        final long startMs = System.currentTimeMillis();
+        observable.handleKillbillEvent(events.get(2));
+        Assert.assertTrue(System.currentTimeMillis() - startMs < 1000);
+        Assert.assertEquals(observable.getNbDroppedEvents(), 3);
+
+        releaseLatch.countDown();
+        observable.unregister();
+    }
+
+    @Test(groups = "fast")
+    public void testDefaultPolicyDoesNotBlock() throws Exception {
+        final OSGIConfig osgiConfig = new ConfigurationObjectFactory(configSource).build(OSGIConfig.class);
+        Assert.assertEquals(osgiConfig.getEventDispatcherBackpressurePolicy(), PluginEventSubscriber.BackpressurePolicy.DROP_OLDEST.toString());
+    }
+
+    private KillbillEventObservable createObservable(final int queueCapacity, final String policy) throws Exception {
+        return createObservable(queueCapacity, policy, "100ms");
+    }
+
+    private KillbillEventObservable createObservable(final int queueCapacity, final String policy, final String blockTimeout) throws Exception {
+        final OSGIConfig osgiConfig = Mockito.mock(OSGIConfig.class);
+        Mockito.when(osgiConfig.getEventDispatcherQueueCapacity()).thenReturn(queueCapacity);
+        Mockito.when(osgiConfig.getEventDispatcherBackpressurePolicy()).thenReturn(policy);
+        Mockito.when(osgiConfig.getEventDispatcherBlockTimeout()).thenReturn(new TimeSpan(blockTimeout));
+
+        final KillbillEventObservable observable = new KillbillEventObservable(Mockito.mock(PersistentBus.class), osgiConfig);
+        observable.register();
+        return observable;
+    }
+
+    private PluginEventSubscriber getSubscriber(final KillbillEventObservable observable, final Observer observer) {
+        for (final PluginEventSubscriber subscriber : observable.getSubscribers()) {
+            if (subscriber.getObserver() == observer) {
+                return subscriber;
+            }
+        }
+        Assert.fail("No subscriber for observer " + observer);
+        return null;
+    }
+
+    private void waitForErrors(final PluginEventSubscriber subscriber, final int nbErrors) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (subscriber.getNbErrors() < nbErrors && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private List<ExtBusEvent> createEvents(final int nbEvents) {
+        final List<ExtBusEvent> events = new LinkedList<ExtBusEvent>();
+        for (int i = 0; i < nbEvents; i++) {
+            final ExtBusEvent event = Mockito.mock(ExtBusEvent.class);
+            Mockito.when(event.getObjectId()).thenReturn(UUID.randomUUID());
+            events.add(event);
+        }
+        return events;
+    }
+
+    private List<ExtBusEvent> concat(final ExtBusEvent... events) {
+        final List<ExtBusEvent> result = new LinkedList<ExtBusEvent>();
+        Collections.addAll(result, events);
+        return result;
+    }
+
+    private static class RecordingObserver implements Observer {
+
+        private final List<ExtBusEvent> events = Collections.synchronizedList(new LinkedList<ExtBusEvent>());
+
+        @Override
+        public void update(final Observable o, final Object arg) {
+            events.add((ExtBusEvent) arg);
+        }
+
+        public boolean await(final int nbEvents) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (events.size() < nbEvents && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            return events.size() >= nbEvents;
+        }
+
+        public List<ExtBusEvent> getEvents() {
+            return new LinkedList<ExtBusEvent>(events);
+        }
+    }
+}
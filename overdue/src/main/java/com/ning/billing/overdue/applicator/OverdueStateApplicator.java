@@ -46,20 +46,19 @@ import com.ning.billing.overdue.OverdueService;
 import com.ning.billing.overdue.OverdueState;
 import com.ning.billing.overdue.config.api.BillingState;
 import com.ning.billing.overdue.config.api.OverdueException;
+import com.ning.billing.util.cache.Cachable.CacheType;
+import com.ning.billing.util.cache.CacheControllerDispatcher;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalTenantContext;
 import com.ning.billing.util.dao.NonEntityDao;
-import com.ning.billing.util.email.DefaultEmailSender;
-import com.ning.billing.util.email.EmailApiException;
-import com.ning.billing.util.email.EmailConfig;
-import com.ning.billing.util.email.EmailSender;
+import com.ning.billing.util.email.EmailOutbox;
 import com.ning.billing.util.events.OverdueChangeInternalEvent;
 import com.ning.billing.util.svcapi.account.AccountInternalApi;
+import com.ning.billing.util.svcapi.entitlement.EntitlementInternalApi;
 import com.ning.billing.util.svcapi.junction.BlockingInternalApi;
 import com.ning.billing.util.svcapi.junction.DefaultBlockingState;
 import com.ning.billing.util.svcapi.tag.TagInternalApi;
 import com.ning.billing.util.tag.ControlTagType;
-import com.ning.billing.util.tag.Tag;
 
 import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
@@ -75,24 +74,29 @@ public class OverdueStateApplicator {
     private final PersistentBus bus;
     private final AccountInternalApi accountApi;
     private final EntitlementApi entitlementApi;
+    private final EntitlementInternalApi entitlementInternalApi;
     private final OverdueEmailGenerator overdueEmailGenerator;
     private final TagInternalApi tagApi;
-    private final EmailSender emailSender;
+    private final EmailOutbox emailOutbox;
     private final NonEntityDao nonEntityDao;
+    private final CacheControllerDispatcher cacheControllerDispatcher;
 
     @Inject
     public OverdueStateApplicator(final BlockingInternalApi accessApi, final AccountInternalApi accountApi, final EntitlementApi entitlementApi,
-                                  final Clock clock, final OverdueCheckPoster poster, final OverdueEmailGenerator overdueEmailGenerator,
-                                  final EmailConfig config, final PersistentBus bus, final NonEntityDao nonEntityDao,  final TagInternalApi tagApi) {
+                                  final EntitlementInternalApi entitlementInternalApi, final Clock clock, final OverdueCheckPoster poster, final OverdueEmailGenerator overdueEmailGenerator,
+                                  final EmailOutbox emailOutbox, final PersistentBus bus, final NonEntityDao nonEntityDao,
+                                  final CacheControllerDispatcher cacheControllerDispatcher, final TagInternalApi tagApi) {
         this.blockingApi = accessApi;
         this.accountApi = accountApi;
         this.entitlementApi = entitlementApi;
+        this.entitlementInternalApi = entitlementInternalApi;
         this.clock = clock;
         this.poster = poster;
         this.overdueEmailGenerator = overdueEmailGenerator;
         this.tagApi = tagApi;
         this.nonEntityDao = nonEntityDao;
-        this.emailSender = new DefaultEmailSender(config);
+        this.cacheControllerDispatcher = cacheControllerDispatcher;
+        this.emailOutbox = emailOutbox;
         this.bus = bus;
     }
 
@@ -222,9 +226,8 @@ public class OverdueStateApplicator {
             }
             final List<Entitlement> toBeCancelled = new LinkedList<Entitlement>();
             computeEntitlementsToCancel(account, toBeCancelled, context);
-            for (final Entitlement cur : toBeCancelled) {
-                cur.cancelEntitlementWithDateOverrideBillingPolicy(new LocalDate(clock.getUTCNow(), account.getTimeZone()), actionPolicy, context.toCallContext());
-            }
+            // Cancel all the entitlements at once, to trigger a single invoice run for the account
+            entitlementInternalApi.cancelEntitlementsWithDateOverrideBillingPolicy(account.getId(), toBeCancelled, new LocalDate(clock.getUTCNow(), account.getTimeZone()), actionPolicy, context);
         } catch (EntitlementApiException e) {
             throw new OverdueException(e);
         }
@@ -232,7 +235,7 @@ public class OverdueStateApplicator {
 
     @SuppressWarnings("unchecked")
     private void computeEntitlementsToCancel(final Account account, final List<Entitlement> result, final InternalTenantContext context) throws EntitlementApiException {
-        final UUID tenantId = nonEntityDao.retrieveIdFromObject(context.getTenantRecordId(), ObjectType.TENANT);
+        final UUID tenantId = nonEntityDao.retrieveIdFromObject(context.getTenantRecordId(), ObjectType.TENANT, cacheControllerDispatcher.getCacheController(CacheType.OBJECT_ID));
         result.addAll(entitlementApi.getAllEntitlementsForAccountId(account.getId(), context.toTenantContext(tenantId)));
     }
 
@@ -253,19 +256,16 @@ public class OverdueStateApplicator {
         final String subject = nextOverdueState.getEnterStateEmailNotification().getSubject();
 
         try {
-            // Generate and send the email
+            // Generate the email and queue it: it will be sent asynchronously by the email outbox
             final String emailBody = overdueEmailGenerator.generateEmail(account, billingState, account, nextOverdueState);
-            if (nextOverdueState.getEnterStateEmailNotification().isHTML()) {
-                emailSender.sendHTMLEmail(to, cc, subject, emailBody);
-            } else {
-                emailSender.sendPlainTextEmail(to, cc, subject, emailBody);
-            }
+            final String dedupKey = String.format("OVERDUE:%s:%s:%s", account.getId(), nextOverdueState.getName(), clock.getUTCToday());
+            emailOutbox.enqueue(account.getId(), dedupKey, to, cc, subject, emailBody, nextOverdueState.getEnterStateEmailNotification().isHTML(), context);
         } catch (IOException e) {
-            log.warn(String.format("Unable to generate or send overdue notification email for account %s and overdueable %s", account.getId(), account.getId()), e);
-        } catch (EmailApiException e) {
-            log.warn(String.format("Unable to send overdue notification email for account %s and overdueable %s", account.getId(), account.getId()), e);
+            log.warn(String.format("Unable to generate overdue notification email for account %s and overdueable %s", account.getId(), account.getId()), e);
         } catch (MustacheException e) {
             log.warn(String.format("Unable to generate overdue notification email for account %s and overdueable %s", account.getId(), account.getId()), e);
+        } catch (RuntimeException e) {
+            log.warn(String.format("Unable to queue overdue notification email for account %s and overdueable %s", account.getId(), account.getId()), e);
         }
     }
 
@@ -276,14 +276,7 @@ public class OverdueStateApplicator {
 
         try {
             final UUID accountId = accountApi.getByRecordId(context.getAccountRecordId(), context);
-
-            final List<Tag> accountTags = tagApi.getTags(accountId, ObjectType.ACCOUNT, context);
-            for (Tag cur : accountTags) {
-                if (cur.getTagDefinitionId().equals(ControlTagType.OVERDUE_ENFORCEMENT_OFF.getId())) {
-                    return true;
-                }
-            }
-            return false;
+            return tagApi.isControlTagSet(accountId, ControlTagType.OVERDUE_ENFORCEMENT_OFF, context);
         } catch (AccountApiException e) {
             throw new OverdueException(e);
         }
@@ -24,6 +24,7 @@ import com.ning.billing.account.api.Account;
 import com.ning.billing.account.api.AccountApiException;
 import com.ning.billing.payment.api.PaymentApiException;
 import com.ning.billing.payment.core.PaymentProcessor;
+import com.ning.billing.payment.retry.PaymentCollectionService.PaymentCollectionServiceScheduler;
 import com.ning.billing.util.callcontext.CallOrigin;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalCallContextFactory;
@@ -37,6 +38,7 @@ import com.google.inject.Inject;
 public class InvoiceHandler {
 
     private final PaymentProcessor paymentProcessor;
+    private final PaymentCollectionServiceScheduler paymentCollectionServiceScheduler;
     private final AccountInternalApi accountApi;
     private final InternalCallContextFactory internalCallContextFactory;
 
@@ -45,9 +47,11 @@ public class InvoiceHandler {
     @Inject
     public InvoiceHandler(final AccountInternalApi accountApi,
                           final PaymentProcessor paymentProcessor,
+                          final PaymentCollectionServiceScheduler paymentCollectionServiceScheduler,
                           final InternalCallContextFactory internalCallContextFactory) {
         this.accountApi = accountApi;
         this.paymentProcessor = paymentProcessor;
+        this.paymentCollectionServiceScheduler = paymentCollectionServiceScheduler;
         this.internalCallContextFactory = internalCallContextFactory;
     }
 
@@ -57,6 +61,15 @@ public class InvoiceHandler {
         log.info("Received invoice creation notification for account {} and invoice {}",
                  event.getAccountId(), event.getInvoiceId());
 
+        if (paymentCollectionServiceScheduler.isEnabled()) {
+            // The outstanding balance of the account will be collected at once at the end of the collection window
+            // (invoices generated in the meantime will be part of the same payment)
+            if (!paymentCollectionServiceScheduler.scheduleCollection(event.getAccountId())) {
+                log.error("Failed to schedule the payment collection for account {}", event.getAccountId());
+            }
+            return;
+        }
+
         final Account account;
         try {
             final InternalCallContext internalContext = internalCallContextFactory.createInternalCallContext(event.getSearchKey2(), event.getSearchKey1(), "PaymentRequestProcessor", CallOrigin.INTERNAL, UserType.SYSTEM, event.getUserToken());
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.payment.core;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weakref.jmx.Managed;
+
+import com.ning.billing.ObjectType;
+import com.ning.billing.clock.Clock;
+import com.ning.billing.payment.api.Payment;
+import com.ning.billing.payment.api.PaymentApiException;
+import com.ning.billing.payment.api.PaymentStatus;
+import com.ning.billing.payment.dao.PaymentDao;
+import com.ning.billing.payment.dao.PaymentModelDao;
+import com.ning.billing.util.callcontext.CallOrigin;
+import com.ning.billing.util.callcontext.InternalCallContext;
+import com.ning.billing.util.callcontext.InternalCallContextFactory;
+import com.ning.billing.util.callcontext.UserType;
+import com.ning.billing.util.config.PaymentConfig;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Periodically reconcile the payments left in UNKNOWN or PLUGIN_FAILURE (e.g. plugin timeouts or crashes)
+ * with the plugins, to find out whether the gateway actually processed them.
+ * <p/>
+ * Payments are scanned by batches, across tenants, and the plugin calls are rate limited to avoid overloading
+ * a gateway which is already slow. Payments whose outcome is still unknown after killbill.payment.janitor.payment.max.age
+ * are moved to PLUGIN_FAILURE_ABORTED, to be checked manually against the gateway.
+ */
+@Singleton
+public class Janitor {
+
+    private static final Logger log = LoggerFactory.getLogger(Janitor.class);
+
+    private static final String PAYMENT_JANITOR = "PaymentJanitor";
+    private static final String JANITOR_THREAD_PREFIX = "payment-janitor-th-";
+
+    private static final List<PaymentStatus> PENDING_STATUSES = ImmutableList.<PaymentStatus>of(PaymentStatus.UNKNOWN, PaymentStatus.PLUGIN_FAILURE);
+
+    private final PaymentProcessor paymentProcessor;
+    private final PaymentDao paymentDao;
+    private final InternalCallContextFactory internalCallContextFactory;
+    private final PaymentConfig config;
+    private final Clock clock;
+
+    private final AtomicLong nbRuns = new AtomicLong(0);
+    private final AtomicLong nbScannedPayments = new AtomicLong(0);
+    private final AtomicLong nbProcessedPayments = new AtomicLong(0);
+    private final AtomicLong nbFailedPayments = new AtomicLong(0);
+    private final AtomicLong nbUnresolvedPayments = new AtomicLong(0);
+    private final AtomicLong nbAbortedPayments = new AtomicLong(0);
+    private final AtomicLong nbErrors = new AtomicLong(0);
+    private volatile long lastRunDurationMs = 0;
+
+    private ScheduledExecutorService janitorExecutor;
+    private long lastPluginCallNanos = 0;
+
+    @Inject
+    public Janitor(final PaymentProcessor paymentProcessor,
+                   final PaymentDao paymentDao,
+                   final InternalCallContextFactory internalCallContextFactory,
+                   final PaymentConfig config,
+                   final Clock clock) {
+        this.paymentProcessor = paymentProcessor;
+        this.paymentDao = paymentDao;
+        this.internalCallContextFactory = internalCallContextFactory;
+        this.config = config;
+        this.clock = clock;
+    }
+
+    public synchronized void start() {
+        janitorExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread th = new Thread(r);
+                th.setName(JANITOR_THREAD_PREFIX + th.getId());
+                return th;
+            }
+        });
+
+        final long runIntervalMs = config.getJanitorRunInterval().getMillis();
+        janitorExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    reconcilePendingPayments();
+                } catch (final RuntimeException e) {
+                    log.warn("Error while reconciling pending payments", e);
+                }
+            }
+        }, runIntervalMs, runIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (janitorExecutor != null) {
+            janitorExecutor.shutdownNow();
+            janitorExecutor = null;
+        }
+    }
+
+    /**
+     * Reconcile all payments left in UNKNOWN or PLUGIN_FAILURE for long enough.
+     *
+     * @return the number of payments transitioned to a known state
+     */
+    public synchronized int reconcilePendingPayments() {
+        final long startNanos = System.nanoTime();
+        final DateTime effectiveBefore = clock.getUTCNow().minus(config.getJanitorPaymentMinAge().getMillis());
+        final DateTime abortBefore = clock.getUTCNow().minus(config.getJanitorPaymentMaxAge().getMillis());
+        final int batchSize = config.getJanitorBatchSize();
+
+        int nbReconciled = 0;
+        for (final PaymentStatus paymentStatus : PENDING_STATUSES) {
+            Integer fromPaymentNumber = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                final List<PaymentModelDao> payments = paymentDao.getPaymentsByStatusAcrossTenants(paymentStatus, effectiveBefore, fromPaymentNumber, batchSize);
+                for (final PaymentModelDao payment : payments) {
+                    fromPaymentNumber = payment.getPaymentNumber();
+                    if (reconcilePayment(payment, abortBefore)) {
+                        nbReconciled++;
+                    }
+                }
+                if (payments.size() < batchSize) {
+                    break;
+                }
+            }
+        }
+
+        nbRuns.incrementAndGet();
+        lastRunDurationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        if (nbReconciled > 0) {
+            log.info("Reconciled {} payments with the plugins in {} ms", nbReconciled, lastRunDurationMs);
+        }
+        return nbReconciled;
+    }
+
+    private boolean reconcilePayment(final PaymentModelDao payment, final DateTime abortBefore) {
+        nbScannedPayments.incrementAndGet();
+        if (!waitForPluginCallSlot()) {
+            return false;
+        }
+
+        try {
+            final InternalCallContext context = internalCallContextFactory.createInternalCallContext(payment.getId(), ObjectType.PAYMENT, PAYMENT_JANITOR,
+                                                                                                     CallOrigin.INTERNAL, UserType.SYSTEM, null);
+            final Payment reconciledPayment = paymentProcessor.reconcilePaymentWithPlugin(payment.getId(), context);
+            if (reconciledPayment == null) {
+                nbUnresolvedPayments.incrementAndGet();
+                if (payment.getEffectiveDate().isBefore(abortBefore) && paymentProcessor.abortPendingPayment(payment.getId(), context) != null) {
+                    nbAbortedPayments.incrementAndGet();
+                }
+                return false;
+            } else if (reconciledPayment.getPaymentStatus() == PaymentStatus.SUCCESS) {
+                nbProcessedPayments.incrementAndGet();
+            } else {
+                nbFailedPayments.incrementAndGet();
+            }
+            return true;
+        } catch (final PaymentApiException e) {
+            nbErrors.incrementAndGet();
+            log.warn("Failed to reconcile payment " + payment.getId(), e);
+            return false;
+        } catch (final RuntimeException e) {
+            nbErrors.incrementAndGet();
+            log.warn("Failed to reconcile payment " + payment.getId(), e);
+            return false;
+        }
+    }
+
+    // Rate limit the plugin calls
+    private boolean waitForPluginCallSlot() {
+        final long minIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, config.getJanitorMaxPluginCallsPerSecond());
+        final long waitNanos = lastPluginCallNanos + minIntervalNanos - System.nanoTime();
+        if (lastPluginCallNanos > 0 && waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        lastPluginCallNanos = System.nanoTime();
+        return true;
+    }
+
+    @Managed(description = "Number of janitor runs")
+    public long getNbRuns() {
+        return nbRuns.get();
+    }
+
+    @Managed(description = "Number of UNKNOWN and PLUGIN_FAILURE payments looked at")
+    public long getNbScannedPayments() {
+        return nbScannedPayments.get();
+    }
+
+    @Managed(description = "Number of payments the plugins reported as processed")
+    public long getNbProcessedPayments() {
+        return nbProcessedPayments.get();
+    }
+
+    @Managed(description = "Number of payments the plugins reported as failed")
+    public long getNbFailedPayments() {
+        return nbFailedPayments.get();
+    }
+
+    @Managed(description = "Number of payments whose outcome the plugins didn't know")
+    public long getNbUnresolvedPayments() {
+        return nbUnresolvedPayments.get();
+    }
+
+    @Managed(description = "Number of payments aborted because the plugins didn't know their outcome for too long")
+    public long getNbAbortedPayments() {
+        return nbAbortedPayments.get();
+    }
+
+    @Managed(description = "Number of errors while reconciling payments")
+    public long getNbErrors() {
+        return nbErrors.get();
+    }
+
+    @Managed(description = "Duration of the last janitor run (ms)")
+    public long getLastRunDurationMs() {
+        return lastRunDurationMs;
+    }
+}
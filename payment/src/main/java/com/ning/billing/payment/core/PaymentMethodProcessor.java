@@ -18,11 +18,21 @@ package com.ning.billing.payment.core;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 
@@ -48,8 +58,10 @@ import com.ning.billing.payment.plugin.api.PaymentPluginApiException;
 import com.ning.billing.payment.provider.DefaultNoOpPaymentMethodPlugin;
 import com.ning.billing.payment.provider.DefaultPaymentMethodInfoPlugin;
 import com.ning.billing.payment.provider.ExternalPaymentProviderPlugin;
+import com.ning.billing.util.cache.CacheControllerDispatcher;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.config.PaymentConfig;
 import com.ning.billing.util.dao.NonEntityDao;
 import com.ning.billing.util.svcapi.account.AccountInternalApi;
 import com.ning.billing.util.svcapi.invoice.InvoiceInternalApi;
@@ -58,15 +70,21 @@ import com.ning.billing.util.svcapi.tag.TagInternalApi;
 import com.google.common.base.Function;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 
 import static com.ning.billing.payment.glue.PaymentModule.PLUGIN_EXECUTOR_NAMED;
+import static com.ning.billing.payment.glue.PaymentModule.SEARCH_EXECUTOR_NAMED;
 
 public class PaymentMethodProcessor extends ProcessorBase {
 
     private static final Logger log = LoggerFactory.getLogger(PaymentMethodProcessor.class);
 
+    private final ExecutorService searchExecutor;
+    private final long searchTimeoutMs;
+    private final int searchLimit;
+
     @Inject
     public PaymentMethodProcessor(final OSGIServiceRegistration<PaymentPluginApi> pluginRegistry,
                                   final AccountInternalApi accountInternalApi,
@@ -74,10 +92,16 @@ public class PaymentMethodProcessor extends ProcessorBase {
                                   final PersistentBus eventBus,
                                   final PaymentDao paymentDao,
                                   final NonEntityDao nonEntityDao,
+                                  final CacheControllerDispatcher cacheControllerDispatcher,
                                   final TagInternalApi tagUserApi,
                                   final GlobalLocker locker,
-                                  @Named(PLUGIN_EXECUTOR_NAMED) final ExecutorService executor) {
-        super(pluginRegistry, accountInternalApi, eventBus, paymentDao, nonEntityDao, tagUserApi, locker, executor, invoiceApi);
+                                  final PaymentConfig paymentConfig,
+                                  @Named(PLUGIN_EXECUTOR_NAMED) final ExecutorService executor,
+                                  @Named(SEARCH_EXECUTOR_NAMED) final ExecutorService searchExecutor) {
+        super(pluginRegistry, accountInternalApi, eventBus, paymentDao, nonEntityDao, cacheControllerDispatcher, tagUserApi, locker, executor, invoiceApi);
+        this.searchExecutor = searchExecutor;
+        this.searchTimeoutMs = paymentConfig.getPaymentMethodSearchTimeout().getMillis();
+        this.searchLimit = paymentConfig.getPaymentMethodSearchLimit();
     }
 
     public Set<String> getAvailablePlugins() {
@@ -154,22 +178,63 @@ public class PaymentMethodProcessor extends ProcessorBase {
     }
 
     public List<PaymentMethod> searchPaymentMethods(final String searchKey, final InternalTenantContext internalTenantContext) {
-        final List<PaymentMethod> results = new LinkedList<PaymentMethod>();
+        // Search in all plugins concurrently
+        final List<String> pluginNames = ImmutableList.<String>copyOf(getAvailablePlugins());
+        final List<Callable<List<PaymentMethodPlugin>>> searches = new ArrayList<Callable<List<PaymentMethodPlugin>>>(pluginNames.size());
+        for (final String pluginName : pluginNames) {
+            searches.add(new Callable<List<PaymentMethodPlugin>>() {
+                @Override
+                public List<PaymentMethodPlugin> call() throws PaymentApiException {
+                    return searchPaymentMethodsInPlugin(searchKey, pluginName, internalTenantContext);
+                }
+            });
+        }
+
+        final List<Future<List<PaymentMethodPlugin>>> futures;
+        try {
+            // Searches still running at the deadline are cancelled
+            futures = searchExecutor.invokeAll(searches, searchTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while searching payment methods for " + searchKey);
+            return ImmutableList.<PaymentMethod>of();
+        } catch (RejectedExecutionException e) {
+            log.warn("Too many concurrent payment method searches, rejecting the search for " + searchKey);
+            return ImmutableList.<PaymentMethod>of();
+        }
 
-        // Search in all plugins
-        for (final String pluginName : getAvailablePlugins()) {
+        final Map<String, List<PaymentMethodPlugin>> paymentMethodsByPlugin = new LinkedHashMap<String, List<PaymentMethodPlugin>>();
+        final List<String> failedPlugins = new LinkedList<String>();
+        for (int i = 0; i < pluginNames.size(); i++) {
+            final String pluginName = pluginNames.get(i);
             try {
-                results.addAll(searchPaymentMethods(searchKey, pluginName, internalTenantContext));
-            } catch (PaymentApiException e) {
-                log.warn("Error while searching plugin " + pluginName, e);
-                // Non-fatal, continue to search other plugins
+                paymentMethodsByPlugin.put(pluginName, futures.get(i).get());
+            } catch (CancellationException e) {
+                log.warn("Plugin " + pluginName + " didn't complete the search for " + searchKey + " within " + searchTimeoutMs + " ms");
+                failedPlugins.add(pluginName);
+            } catch (ExecutionException e) {
+                log.warn("Error while searching plugin " + pluginName, e.getCause());
+                failedPlugins.add(pluginName);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failedPlugins.add(pluginName);
             }
         }
 
-        return results;
+        // Non-fatal, return what the other plugins found
+        if (!failedPlugins.isEmpty()) {
+            log.warn("Partial results for the search of " + searchKey + ", plugins " + failedPlugins + " failed");
+        }
+
+        return buildPaymentMethods(paymentMethodsByPlugin, internalTenantContext);
     }
 
     public List<PaymentMethod> searchPaymentMethods(final String searchKey, final String pluginName, final InternalTenantContext internalTenantContext) throws PaymentApiException {
+        final List<PaymentMethodPlugin> paymentMethods = searchPaymentMethodsInPlugin(searchKey, pluginName, internalTenantContext);
+        return buildPaymentMethods(ImmutableMap.<String, List<PaymentMethodPlugin>>of(pluginName, paymentMethods), internalTenantContext);
+    }
+
+    private List<PaymentMethodPlugin> searchPaymentMethodsInPlugin(final String searchKey, final String pluginName, final InternalTenantContext internalTenantContext) throws PaymentApiException {
         final PaymentPluginApi pluginApi = getPaymentPluginApi(pluginName);
         final List<PaymentMethodPlugin> paymentMethods;
         try {
@@ -178,15 +243,43 @@ public class PaymentMethodProcessor extends ProcessorBase {
             throw new PaymentApiException(e, ErrorCode.PAYMENT_PLUGIN_SEARCH_PAYMENT_METHODS, pluginName, searchKey);
         }
 
-        final List<PaymentMethod> results = new LinkedList<PaymentMethod>();
-        for (final PaymentMethodPlugin paymentMethodPlugin : paymentMethods) {
-            final PaymentMethodModelDao paymentMethodModelDao = paymentDao.getPaymentMethodIncludedDeleted(paymentMethodPlugin.getKbPaymentMethodId(), internalTenantContext);
-            if (paymentMethodModelDao == null) {
-                log.warn("Unable to find payment method id " + paymentMethodPlugin.getKbPaymentMethodId() + " present in plugin " + pluginName);
-                continue;
+        if (paymentMethods == null) {
+            return ImmutableList.<PaymentMethodPlugin>of();
+        } else if (paymentMethods.size() > searchLimit) {
+            log.warn("Plugin " + pluginName + " returned " + paymentMethods.size() + " payment methods for " + searchKey + ", only keeping the first " + searchLimit);
+            return ImmutableList.<PaymentMethodPlugin>copyOf(paymentMethods.subList(0, searchLimit));
+        } else {
+            return paymentMethods;
+        }
+    }
+
+    // Join the plugins results with our payment methods, in a single query
+    private List<PaymentMethod> buildPaymentMethods(final Map<String, List<PaymentMethodPlugin>> paymentMethodsByPlugin, final InternalTenantContext internalTenantContext) {
+        final Set<UUID> paymentMethodIds = new HashSet<UUID>();
+        for (final List<PaymentMethodPlugin> paymentMethods : paymentMethodsByPlugin.values()) {
+            for (final PaymentMethodPlugin paymentMethodPlugin : paymentMethods) {
+                if (paymentMethodPlugin.getKbPaymentMethodId() != null) {
+                    paymentMethodIds.add(paymentMethodPlugin.getKbPaymentMethodId());
+                }
             }
+        }
 
-            results.add(new DefaultPaymentMethod(paymentMethodModelDao, paymentMethodPlugin));
+        final Map<UUID, PaymentMethodModelDao> paymentMethodModelDaos = new HashMap<UUID, PaymentMethodModelDao>();
+        for (final PaymentMethodModelDao paymentMethodModelDao : paymentDao.getPaymentMethodsIncludedDeleted(paymentMethodIds, internalTenantContext)) {
+            paymentMethodModelDaos.put(paymentMethodModelDao.getId(), paymentMethodModelDao);
+        }
+
+        final List<PaymentMethod> results = new LinkedList<PaymentMethod>();
+        for (final String pluginName : paymentMethodsByPlugin.keySet()) {
+            for (final PaymentMethodPlugin paymentMethodPlugin : paymentMethodsByPlugin.get(pluginName)) {
+                final PaymentMethodModelDao paymentMethodModelDao = paymentMethodModelDaos.get(paymentMethodPlugin.getKbPaymentMethodId());
+                if (paymentMethodModelDao == null) {
+                    log.warn("Unable to find payment method id " + paymentMethodPlugin.getKbPaymentMethodId() + " present in plugin " + pluginName);
+                    continue;
+                }
+
+                results.add(new DefaultPaymentMethod(paymentMethodModelDao, paymentMethodPlugin));
+            }
         }
 
         return results;
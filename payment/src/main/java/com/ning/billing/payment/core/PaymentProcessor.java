@@ -18,6 +18,7 @@ package com.ning.billing.payment.core;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.ImmutableMap;
 import com.google.inject.name.Named;
 import com.ning.billing.ErrorCode;
 import com.ning.billing.ObjectType;
@@ -44,9 +45,11 @@ import com.ning.billing.payment.dispatcher.PluginDispatcher;
 import com.ning.billing.payment.plugin.api.PaymentInfoPlugin;
 import com.ning.billing.payment.plugin.api.PaymentPluginApi;
 import com.ning.billing.payment.plugin.api.PaymentPluginApiException;
+import com.ning.billing.payment.plugin.api.PaymentPluginStatus;
 import com.ning.billing.payment.retry.AutoPayRetryService.AutoPayRetryServiceScheduler;
 import com.ning.billing.payment.retry.FailedPaymentRetryService.FailedPaymentRetryServiceScheduler;
 import com.ning.billing.payment.retry.PluginFailureRetryService.PluginFailureRetryServiceScheduler;
+import com.ning.billing.util.cache.CacheControllerDispatcher;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalTenantContext;
 import com.ning.billing.util.callcontext.TenantContext;
@@ -64,10 +67,16 @@ import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -103,12 +112,13 @@ public class PaymentProcessor extends ProcessorBase {
                             final AutoPayRetryServiceScheduler autoPayoffRetryService,
                             final PaymentDao paymentDao,
                             final NonEntityDao nonEntityDao,
+                            final CacheControllerDispatcher cacheControllerDispatcher,
                             final PersistentBus eventBus,
                             final Clock clock,
                             final GlobalLocker locker,
                             final PaymentConfig paymentConfig,
                             @Named(PLUGIN_EXECUTOR_NAMED) final ExecutorService executor) {
-        super(pluginRegistry, accountUserApi, eventBus, paymentDao, nonEntityDao, tagUserApi, locker, executor, invoiceApi);
+        super(pluginRegistry, accountUserApi, eventBus, paymentDao, nonEntityDao, cacheControllerDispatcher, tagUserApi, locker, executor, invoiceApi);
         this.paymentMethodProcessor = paymentMethodProcessor;
         this.failedPaymentRetryService = failedPaymentRetryService;
         this.pluginFailureRetryService = pluginFailureRetryService;
@@ -247,38 +257,8 @@ public class PaymentProcessor extends ProcessorBase {
                                 // Second, validate the payment amount. We want to bail as early as possible if e.g. the balance is zero
                                 final BigDecimal requestedAmount = getAndValidatePaymentAmount(invoice, inputAmount, isInstantPayment);
 
-                                // Third, retrieve the payment method and associated plugin
-                                final PaymentPluginApi plugin;
-                                final UUID paymentMethodId;
-                                try {
-                                    // Use the special external payment plugin to handle external payments
-                                    if (isExternalPayment) {
-                                        plugin = externalPaymentPlugin;
-                                        paymentMethodId = paymentMethodProcessor.getExternalPaymentMethod(account, context).getId();
-                                    } else {
-                                        plugin = getPaymentProviderPlugin(account, context);
-                                        paymentMethodId = account.getPaymentMethodId();
-                                    }
-                                } catch (PaymentApiException e) {
-                                    // This event will be caught by overdue to refresh the overdue state, if needed.
-                                    // Note that at this point, we don't know the exact invoice balance (see getAndValidatePaymentAmount() below).
-                                    // This means that events will be posted for null and zero dollar invoices (e.g. trials).
-                                    final PaymentErrorInternalEvent event = new DefaultPaymentErrorEvent(account.getId(), invoiceId, null,
-                                            ErrorCode.PAYMENT_NO_DEFAULT_PAYMENT_METHOD.toString(),
-                                            context.getAccountRecordId(), context.getTenantRecordId(),
-                                            context.getUserToken());
-                                    postPaymentEvent(event, account.getId(), context);
-                                    throw e;
-                                }
-
-                                final boolean isAccountAutoPayOff = isAccountAutoPayOff(account.getId(), context);
-                                setUnsaneAccount_AUTO_PAY_OFFWithAccountLock(account.getId(), paymentMethodId, isAccountAutoPayOff, context, isInstantPayment);
-
-                                if (!isInstantPayment && isAccountAutoPayOff) {
-                                    return processNewPaymentForAutoPayOffWithAccountLocked(paymentMethodId, account, invoice, requestedAmount, context);
-                                } else {
-                                    return processNewPaymentWithAccountLocked(paymentMethodId, plugin, account, invoice, requestedAmount, isInstantPayment, context);
-                                }
+                                return createPaymentWithAccountLocked(account, invoice, requestedAmount, ImmutableMap.<UUID, BigDecimal>of(), externalPaymentPlugin,
+                                                                      isInstantPayment, isExternalPayment, context);
                             } catch (InvoiceApiException e) {
                                 throw new PaymentApiException(e);
                             }
@@ -289,8 +269,8 @@ public class PaymentProcessor extends ProcessorBase {
                 throw new PaymentApiException(ErrorCode.PAYMENT_PLUGIN_TIMEOUT, account.getId(), invoiceId);
             } else {
                 log.warn(String.format("Payment from Account %s, Invoice %s timedout", account.getId(), invoiceId));
-                // If we don't crash, plugin thread will complete (and set the correct status)
-                // If we crash before plugin thread completes, we may end up with a UNKNOWN Payment
+                // The plugin call isn't interrupted: if it completes, it sets the correct status. If it never completes
+                // (or if we crash before it does), the payment is left in UNKNOWN and the Janitor reconciles it with the plugin.
                 // We would like to return an error so the Bus can retry but we are limited by Guava bug
                 // swallowing exception
                 return null;
@@ -305,6 +285,142 @@ public class PaymentProcessor extends ProcessorBase {
         }
     }
 
+    /**
+     * Collect, in a single payment, the balance of all the unpaid invoices of the account which aren't covered yet
+     * by a payment being retried. The payment is allocated to the invoices oldest first, and recorded against the oldest one.
+     *
+     * @param accountId account to collect
+     * @param context   the call context
+     * @return the payment, or null if there was nothing to collect or the payment failed
+     */
+    public Payment collectAccountBalance(final UUID accountId, final InternalCallContext context) {
+        try {
+            final Account account = accountInternalApi.getAccountById(accountId, context);
+            return paymentPluginDispatcher.dispatchWithAccountLock(new CallableWithAccountLock<Payment>(locker,
+                    account.getExternalKey(),
+                    new WithAccountLockCallback<Payment>() {
+
+                        @Override
+                        public Payment doOperation() throws PaymentApiException {
+                            try {
+                                invoiceApi.consumeExistingCBAOnAccountWithUnpaidInvoices(accountId, context);
+
+                                final Map<UUID, BigDecimal> allocations = getCollectableInvoiceBalances(accountId, context);
+                                if (allocations.isEmpty()) {
+                                    log.info("Nothing to collect for account {}", accountId);
+                                    return null;
+                                }
+
+                                final Invoice invoice = invoiceApi.getInvoiceById(allocations.keySet().iterator().next(), context);
+                                if (allocations.size() == 1) {
+                                    // Regular payment
+                                    return createPaymentWithAccountLocked(account, invoice, getAndValidatePaymentAmount(invoice, null, false), ImmutableMap.<UUID, BigDecimal>of(),
+                                                                          null, false, false, context);
+                                }
+
+                                BigDecimal requestedAmount = BigDecimal.ZERO;
+                                for (final BigDecimal balance : allocations.values()) {
+                                    requestedAmount = requestedAmount.add(balance);
+                                }
+                                log.info("Collecting {} for account {} and invoices {}", new Object[]{requestedAmount, accountId, allocations.keySet()});
+                                return createPaymentWithAccountLocked(account, invoice, requestedAmount.setScale(2, RoundingMode.HALF_UP), allocations,
+                                                                      null, false, false, context);
+                            } catch (InvoiceApiException e) {
+                                throw new PaymentApiException(e);
+                            }
+                        }
+                    }));
+        } catch (AccountApiException e) {
+            log.error(String.format("Failed to collect payment for account %s", accountId), e);
+        } catch (PaymentApiException e) {
+            // Log as error unless:
+            if (e.getCode() != ErrorCode.PAYMENT_NULL_INVOICE.getCode() /* Nothing left to be paid */ &&
+                e.getCode() != ErrorCode.PAYMENT_CREATE_PAYMENT.getCode() /* User payment error */) {
+                log.error("Failed to collect payment for account {}: {}", accountId, e.toString());
+            }
+        } catch (TimeoutException e) {
+            log.warn(String.format("Payment collection for account %s timedout", accountId));
+        } catch (RuntimeException e) {
+            log.error("Failure when collecting payment for account " + accountId, e);
+        }
+        return null;
+    }
+
+    // Balances of the unpaid invoices, oldest first
+    private Map<UUID, BigDecimal> getCollectableInvoiceBalances(final UUID accountId, final InternalCallContext context) {
+        // Invoices already covered by a payment which is going to be retried
+        final Set<UUID> invoiceIdsWithPendingPayment = new HashSet<UUID>();
+        for (final PaymentModelDao payment : paymentDao.getPaymentsForAccount(accountId, context)) {
+            if (isPaymentPendingRetry(payment)) {
+                invoiceIdsWithPendingPayment.add(payment.getInvoiceId());
+                invoiceIdsWithPendingPayment.addAll(paymentDao.getPaymentAllocations(payment.getId(), context).keySet());
+            }
+        }
+
+        final List<Invoice> unpaidInvoices = new ArrayList<Invoice>(invoiceApi.getUnpaidInvoicesByAccountId(accountId, null, context));
+        Collections.sort(unpaidInvoices, new Comparator<Invoice>() {
+            @Override
+            public int compare(final Invoice o1, final Invoice o2) {
+                return o1.getInvoiceNumber().compareTo(o2.getInvoiceNumber());
+            }
+        });
+
+        final Map<UUID, BigDecimal> balances = new LinkedHashMap<UUID, BigDecimal>();
+        for (final Invoice invoice : unpaidInvoices) {
+            if (invoice.isMigrationInvoice() ||
+                invoiceIdsWithPendingPayment.contains(invoice.getId()) ||
+                invoice.getBalance().compareTo(BigDecimal.ZERO) <= 0) {
+                continue;
+            }
+            balances.put(invoice.getId(), invoice.getBalance());
+        }
+        return balances;
+    }
+
+    private boolean isPaymentPendingRetry(final PaymentModelDao payment) {
+        return payment.getPaymentStatus() == PaymentStatus.AUTO_PAY_OFF ||
+               payment.getPaymentStatus() == PaymentStatus.PAYMENT_FAILURE ||
+               payment.getPaymentStatus() == PaymentStatus.PLUGIN_FAILURE ||
+               payment.getPaymentStatus() == PaymentStatus.UNKNOWN;
+    }
+
+    private Payment createPaymentWithAccountLocked(final Account account, final Invoice invoice, final BigDecimal requestedAmount, final Map<UUID, BigDecimal> allocations,
+                                                   @Nullable final PaymentPluginApi externalPaymentPlugin, final boolean isInstantPayment, final boolean isExternalPayment,
+                                                   final InternalCallContext context) throws PaymentApiException {
+        // Retrieve the payment method and associated plugin
+        final PaymentPluginApi plugin;
+        final UUID paymentMethodId;
+        try {
+            // Use the special external payment plugin to handle external payments
+            if (isExternalPayment) {
+                plugin = externalPaymentPlugin;
+                paymentMethodId = paymentMethodProcessor.getExternalPaymentMethod(account, context).getId();
+            } else {
+                plugin = getPaymentProviderPlugin(account, context);
+                paymentMethodId = account.getPaymentMethodId();
+            }
+        } catch (PaymentApiException e) {
+            // This event will be caught by overdue to refresh the overdue state, if needed.
+            // Note that at this point, we don't know the exact invoice balance (see getAndValidatePaymentAmount() below).
+            // This means that events will be posted for null and zero dollar invoices (e.g. trials).
+            final PaymentErrorInternalEvent event = new DefaultPaymentErrorEvent(account.getId(), invoice.getId(), null,
+                    ErrorCode.PAYMENT_NO_DEFAULT_PAYMENT_METHOD.toString(),
+                    context.getAccountRecordId(), context.getTenantRecordId(),
+                    context.getUserToken());
+            postPaymentEvent(event, account.getId(), context);
+            throw e;
+        }
+
+        final boolean isAccountAutoPayOff = isAccountAutoPayOff(account.getId(), context);
+        setUnsaneAccount_AUTO_PAY_OFFWithAccountLock(account.getId(), paymentMethodId, isAccountAutoPayOff, context, isInstantPayment);
+
+        if (!isInstantPayment && isAccountAutoPayOff) {
+            return processNewPaymentForAutoPayOffWithAccountLocked(paymentMethodId, account, invoice, requestedAmount, allocations, context);
+        } else {
+            return processNewPaymentWithAccountLocked(paymentMethodId, plugin, account, invoice, requestedAmount, allocations, isInstantPayment, context);
+        }
+    }
+
     private void setUnsaneAccount_AUTO_PAY_OFFWithAccountLock(final UUID accountId, final UUID paymentMethodId, final boolean isAccountAutoPayOff,
                                                               final InternalCallContext context, final boolean isInstantPayment)
             throws PaymentApiException {
@@ -402,16 +518,24 @@ public class PaymentProcessor extends ProcessorBase {
                                     return null;
                                 }
 
+                                // The previous attempt may have gone through at the gateway: ask the plugin first to avoid charging twice
+                                if (isPendingPluginOutcome(payment) && reconcilePaymentWithPluginWithAccountLocked(account, payment, context) != null) {
+                                    return null;
+                                }
+
                                 final Invoice invoice = rebalanceAndGetInvoice(payment.getAccountId(), payment.getInvoiceId(), context);
                                 if (invoice == null || invoice.isMigrationInvoice()) {
                                     return null;
                                 }
-                                if (invoice.getBalance().compareTo(BigDecimal.ZERO) <= 0) {
+                                // Consolidated payments are retried for what is left to pay on all their invoices
+                                final Map<UUID, BigDecimal> allocations = paymentDao.getPaymentAllocations(paymentId, context);
+                                final BigDecimal balance = allocations.isEmpty() ? invoice.getBalance() : getInvoicesBalance(allocations.keySet(), context);
+                                if (balance.compareTo(BigDecimal.ZERO) <= 0) {
                                     log.info("Aborted retry for payment {} because invoice has been paid", paymentId);
-                                    setTerminalStateOnRetryWithAccountLocked(account, invoice, payment, invoice.getBalance(), "Paid invoice", context);
+                                    setTerminalStateOnRetryWithAccountLocked(account, invoice, payment, balance, "Paid invoice", context);
                                     return null;
                                 }
-                                processRetryPaymentWithAccountLocked(plugin, account, invoice, payment, invoice.getBalance(), context);
+                                processRetryPaymentWithAccountLocked(plugin, account, invoice, payment, balance, context);
                                 return null;
                             } catch (InvoiceApiException e) {
                                 throw new PaymentApiException(e);
@@ -428,27 +552,245 @@ public class PaymentProcessor extends ProcessorBase {
         }
     }
 
+    private BigDecimal getInvoicesBalance(final Collection<UUID> invoiceIds, final InternalTenantContext context) throws InvoiceApiException {
+        BigDecimal balance = BigDecimal.ZERO;
+        for (final UUID invoiceId : invoiceIds) {
+            balance = balance.add(invoiceApi.getInvoiceById(invoiceId, context).getBalance().max(BigDecimal.ZERO));
+        }
+        return balance;
+    }
+
+    /**
+     * Query the plugin for the actual outcome of a payment left in UNKNOWN or PLUGIN_FAILURE (e.g. the plugin call timed out)
+     * and transition the payment accordingly. This is a no-op if the payment was transitioned in the meantime,
+     * or if the plugin doesn't know the outcome (yet).
+     *
+     * @param paymentId payment to reconcile
+     * @param context   the call context
+     * @return the reconciled payment, or null if its outcome is still unknown
+     * @throws PaymentApiException
+     */
+    public Payment reconcilePaymentWithPlugin(final UUID paymentId, final InternalCallContext context) throws PaymentApiException {
+        final PaymentModelDao payment = paymentDao.getPayment(paymentId, context);
+        if (payment == null || !isPendingPluginOutcome(payment)) {
+            return null;
+        }
+
+        try {
+            final Account account = accountInternalApi.getAccountById(payment.getAccountId(), context);
+            return paymentPluginDispatcher.dispatchWithAccountLock(new CallableWithAccountLock<Payment>(locker,
+                    account.getExternalKey(),
+                    new WithAccountLockCallback<Payment>() {
+
+                        @Override
+                        public Payment doOperation() throws PaymentApiException {
+                            // Fetch again with account lock this time
+                            final PaymentModelDao payment = paymentDao.getPayment(paymentId, context);
+                            if (!isPendingPluginOutcome(payment)) {
+                                return null;
+                            }
+                            return reconcilePaymentWithPluginWithAccountLocked(account, payment, context);
+                        }
+                    }));
+        } catch (AccountApiException e) {
+            throw new PaymentApiException(e);
+        } catch (TimeoutException e) {
+            log.warn("Reconciliation of payment {} with the plugin timed out", paymentId);
+            return null;
+        }
+    }
+
+    /**
+     * Give up on a payment left in UNKNOWN or PLUGIN_FAILURE whose outcome the plugin still doesn't know: the payment
+     * is moved to PLUGIN_FAILURE_ABORTED, so that it is neither retried nor reconciled anymore, and needs to be
+     * checked manually against the gateway.
+     *
+     * @param paymentId payment to abort
+     * @param context   the call context
+     * @return the aborted payment, or null if the payment was transitioned in the meantime
+     * @throws PaymentApiException
+     */
+    public Payment abortPendingPayment(final UUID paymentId, final InternalCallContext context) throws PaymentApiException {
+        final PaymentModelDao payment = paymentDao.getPayment(paymentId, context);
+        if (payment == null || !isPendingPluginOutcome(payment)) {
+            return null;
+        }
+
+        try {
+            final Account account = accountInternalApi.getAccountById(payment.getAccountId(), context);
+            return paymentPluginDispatcher.dispatchWithAccountLock(new CallableWithAccountLock<Payment>(locker,
+                    account.getExternalKey(),
+                    new WithAccountLockCallback<Payment>() {
+
+                        @Override
+                        public Payment doOperation() throws PaymentApiException {
+                            // Fetch again with account lock this time
+                            final PaymentModelDao payment = paymentDao.getPayment(paymentId, context);
+                            if (!isPendingPluginOutcome(payment)) {
+                                return null;
+                            }
+
+                            final PaymentAttemptModelDao lastAttempt = getLastAttempt(paymentDao.getAttemptsForPayment(payment.getId(), context));
+                            if (lastAttempt == null) {
+                                log.warn("Unable to abort payment {}: no attempt found", payment.getId());
+                                return null;
+                            }
+
+                            final String error = "Outcome unknown to the plugin since " + payment.getEffectiveDate();
+                            log.error("Aborting payment {} left in {}: {}, it needs to be reconciled manually with the gateway",
+                                      new Object[]{payment.getId(), payment.getPaymentStatus(), error});
+                            paymentDao.updateStatusAndEffectiveDateForPaymentWithAttempt(payment.getId(), PaymentStatus.PLUGIN_FAILURE_ABORTED, clock.getUTCNow(),
+                                                                                         lastAttempt.getId(), null, error, context);
+
+                            final BusInternalEvent event = new DefaultPaymentErrorEvent(account.getId(), payment.getInvoiceId(), payment.getId(), error,
+                                    context.getAccountRecordId(), context.getTenantRecordId(), context.getUserToken());
+                            postPaymentEvent(event, account.getId(), context);
+
+                            return fromPaymentModelDao(paymentDao.getPayment(payment.getId(), context), null, context);
+                        }
+                    }));
+        } catch (AccountApiException e) {
+            throw new PaymentApiException(e);
+        } catch (TimeoutException e) {
+            log.warn("Abort of payment {} timed out", paymentId);
+            return null;
+        }
+    }
+
+    private boolean isPendingPluginOutcome(final PaymentModelDao payment) {
+        return payment.getPaymentStatus() == PaymentStatus.UNKNOWN || payment.getPaymentStatus() == PaymentStatus.PLUGIN_FAILURE;
+    }
+
+    private Payment reconcilePaymentWithPluginWithAccountLocked(final Account account, final PaymentModelDao payment, final InternalCallContext context) throws PaymentApiException {
+        final PaymentInfoPlugin paymentPluginInfo;
+        try {
+            final PaymentPluginApi plugin = getPaymentProviderPlugin(payment.getPaymentMethodId(), context);
+            paymentPluginInfo = plugin.getPaymentInfo(account.getId(), payment.getId(), buildTenantContext(context));
+        } catch (PaymentPluginApiException e) {
+            log.info("Unable to retrieve the outcome of payment {} from the plugin: {}", payment.getId(), e.toString());
+            return null;
+        } catch (RuntimeException e) {
+            log.warn("Plugin threw RuntimeException while retrieving payment " + payment.getId(), e);
+            return null;
+        }
+        if (paymentPluginInfo == null ||
+            (paymentPluginInfo.getStatus() != PaymentPluginStatus.PROCESSED && paymentPluginInfo.getStatus() != PaymentPluginStatus.ERROR)) {
+            return null;
+        }
+
+        final PaymentAttemptModelDao lastAttempt = getLastAttempt(paymentDao.getAttemptsForPayment(payment.getId(), context));
+        if (lastAttempt == null) {
+            log.warn("Unable to reconcile payment {}: no attempt found", payment.getId());
+            return null;
+        }
+
+        BusInternalEvent event = null;
+        try {
+            if (paymentPluginInfo.getStatus() == PaymentPluginStatus.PROCESSED) {
+                log.info("Plugin reports payment {} (left in {}) as processed", payment.getId(), payment.getPaymentStatus());
+                paymentDao.updateStatusAndEffectiveDateForPaymentWithAttempt(payment.getId(), PaymentStatus.SUCCESS, clock.getUTCNow(), lastAttempt.getId(), paymentPluginInfo.getGatewayErrorCode(), null, context);
+
+                final PaymentModelDao processedPayment = paymentDao.getPayment(payment.getId(), context);
+                notifyInvoicesOfPayment(processedPayment, context);
+
+                event = new DefaultPaymentInfoEvent(account.getId(),
+                        processedPayment.getInvoiceId(), processedPayment.getId(), processedPayment.getAmount(), processedPayment.getPaymentNumber(), PaymentStatus.SUCCESS,
+                        processedPayment.getEffectiveDate(),
+                        context.getAccountRecordId(),
+                        context.getTenantRecordId(),
+                        context.getUserToken()
+                );
+            } else {
+                log.info("Plugin reports payment {} (left in {}) as failed: {}", new Object[]{payment.getId(), payment.getPaymentStatus(), paymentPluginInfo.getGatewayError()});
+                // The gateway declined the payment: go through the regular payment failure retries
+                final PaymentStatus paymentStatus = scheduleRetryOnPaymentFailure(payment.getId(), context);
+                paymentDao.updateStatusAndEffectiveDateForPaymentWithAttempt(payment.getId(), paymentStatus, clock.getUTCNow(), lastAttempt.getId(), paymentPluginInfo.getGatewayErrorCode(), paymentPluginInfo.getGatewayError(), context);
+
+                event = new DefaultPaymentErrorEvent(account.getId(), payment.getInvoiceId(), payment.getId(), paymentPluginInfo.getGatewayError(),
+                        context.getAccountRecordId(), context.getTenantRecordId(), context.getUserToken()
+                );
+            }
+        } catch (InvoiceApiException e) {
+            throw new PaymentApiException(ErrorCode.INVOICE_NOT_FOUND, payment.getInvoiceId(), e.toString());
+        } finally {
+            if (event != null) {
+                postPaymentEvent(event, account.getId(), context);
+            }
+        }
+
+        return fromPaymentModelDao(paymentDao.getPayment(payment.getId(), context), paymentPluginInfo, context);
+    }
+
+    private PaymentAttemptModelDao getLastAttempt(final List<PaymentAttemptModelDao> attempts) {
+        PaymentAttemptModelDao lastAttempt = null;
+        for (final PaymentAttemptModelDao cur : attempts) {
+            if (lastAttempt == null || !cur.getEffectiveDate().isBefore(lastAttempt.getEffectiveDate())) {
+                lastAttempt = cur;
+            }
+        }
+        return lastAttempt;
+    }
+
     private Payment processNewPaymentForAutoPayOffWithAccountLocked(final UUID paymentMethodId, final Account account, final Invoice invoice,
-                                                                    final BigDecimal requestedAmount, final InternalCallContext context)
+                                                                    final BigDecimal requestedAmount, final Map<UUID, BigDecimal> allocations, final InternalCallContext context)
             throws PaymentApiException {
         final PaymentStatus paymentStatus = PaymentStatus.AUTO_PAY_OFF;
 
         final PaymentModelDao paymentInfo = new PaymentModelDao(account.getId(), invoice.getId(), paymentMethodId, requestedAmount, invoice.getCurrency(), clock.getUTCNow(), paymentStatus);
         final PaymentAttemptModelDao attempt = new PaymentAttemptModelDao(account.getId(), invoice.getId(), paymentInfo.getId(), paymentStatus, clock.getUTCNow(), requestedAmount);
 
-        paymentDao.insertPaymentWithAttempt(paymentInfo, attempt, context);
+        insertPaymentWithAttempt(paymentInfo, attempt, allocations, context);
         return fromPaymentModelDao(paymentInfo, null, context);
     }
 
     private Payment processNewPaymentWithAccountLocked(final UUID paymentMethodId, final PaymentPluginApi plugin, final Account account, final Invoice invoice,
-                                                       final BigDecimal requestedAmount, final boolean isInstantPayment, final InternalCallContext context) throws PaymentApiException {
+                                                       final BigDecimal requestedAmount, final Map<UUID, BigDecimal> allocations, final boolean isInstantPayment,
+                                                       final InternalCallContext context) throws PaymentApiException {
         final PaymentModelDao payment = new PaymentModelDao(account.getId(), invoice.getId(), paymentMethodId, requestedAmount.setScale(2, RoundingMode.HALF_UP), invoice.getCurrency(), clock.getUTCNow());
         final PaymentAttemptModelDao attempt = new PaymentAttemptModelDao(account.getId(), invoice.getId(), payment.getId(), clock.getUTCNow(), requestedAmount);
 
-        final PaymentModelDao savedPayment = paymentDao.insertPaymentWithAttempt(payment, attempt, context);
+        final PaymentModelDao savedPayment = insertPaymentWithAttempt(payment, attempt, allocations, context);
         return processPaymentWithAccountLocked(plugin, account, invoice, savedPayment, attempt, isInstantPayment, context);
     }
 
+    private PaymentModelDao insertPaymentWithAttempt(final PaymentModelDao payment, final PaymentAttemptModelDao attempt, final Map<UUID, BigDecimal> allocations,
+                                                     final InternalCallContext context) {
+        if (allocations.isEmpty()) {
+            return paymentDao.insertPaymentWithAttempt(payment, attempt, context);
+        } else {
+            return paymentDao.insertPaymentWithAttemptAndAllocations(payment, attempt, allocations, context);
+        }
+    }
+
+    /**
+     * Record a successful payment in the invoice system. Consolidated payments are split across their invoices, oldest first,
+     * based on what is left to pay on each of them (any remainder goes to the payment invoice), and recorded in a single transaction.
+     */
+    private void notifyInvoicesOfPayment(final PaymentModelDao payment, final InternalCallContext context) throws InvoiceApiException {
+        final Map<UUID, BigDecimal> allocations = paymentDao.getPaymentAllocations(payment.getId(), context);
+        if (allocations.isEmpty()) {
+            invoiceApi.notifyOfPayment(payment.getInvoiceId(), payment.getAmount(), payment.getCurrency(), payment.getId(), payment.getEffectiveDate(), context);
+            return;
+        }
+
+        final Map<UUID, BigDecimal> amounts = new LinkedHashMap<UUID, BigDecimal>();
+        BigDecimal leftToAllocate = payment.getAmount();
+        for (final UUID invoiceId : allocations.keySet()) {
+            final BigDecimal balance = invoiceApi.getInvoiceById(invoiceId, context).getBalance().max(BigDecimal.ZERO);
+            final BigDecimal amount = leftToAllocate.min(balance);
+            if (amount.compareTo(BigDecimal.ZERO) > 0) {
+                amounts.put(invoiceId, amount);
+                leftToAllocate = leftToAllocate.subtract(amount);
+            }
+        }
+        if (leftToAllocate.compareTo(BigDecimal.ZERO) > 0) {
+            final BigDecimal amount = amounts.get(payment.getInvoiceId());
+            amounts.put(payment.getInvoiceId(), amount == null ? leftToAllocate : amount.add(leftToAllocate));
+        }
+
+        invoiceApi.notifyOfPayment(payment.getId(), amounts, payment.getCurrency(), payment.getEffectiveDate(), context);
+    }
+
     private Payment setTerminalStateOnRetryWithAccountLocked(final Account account, final Invoice invoice, final PaymentModelDao payment, final BigDecimal requestedAmount, final String terminalStateReason, final InternalCallContext context) {
 
         final PaymentStatus paymentStatus;
@@ -522,12 +864,7 @@ public class PaymentProcessor extends ProcessorBase {
                     allAttempts = paymentDao.getAttemptsForPayment(paymentInput.getId(), context);
 
                     payment = paymentDao.getPayment(paymentInput.getId(), context);
-                    invoiceApi.notifyOfPayment(invoice.getId(),
-                            payment.getAmount(),
-                            payment.getCurrency(),
-                            payment.getId(),
-                            payment.getEffectiveDate(),
-                            context);
+                    notifyInvoicesOfPayment(payment, context);
 
                     // Create Bus event
                     event = new DefaultPaymentInfoEvent(account.getId(),
@@ -18,7 +18,6 @@ package com.ning.billing.payment.core;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -32,11 +31,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.ning.billing.ErrorCode;
-import com.ning.billing.ObjectType;
 import com.ning.billing.account.api.Account;
 import com.ning.billing.account.api.AccountApiException;
 import com.ning.billing.bus.api.PersistentBus;
 import com.ning.billing.commons.locker.GlobalLocker;
+import com.ning.billing.invoice.api.Invoice;
 import com.ning.billing.invoice.api.InvoiceApiException;
 import com.ning.billing.invoice.api.InvoiceItem;
 import com.ning.billing.osgi.api.OSGIServiceRegistration;
@@ -51,11 +50,9 @@ import com.ning.billing.payment.plugin.api.PaymentPluginApi;
 import com.ning.billing.payment.plugin.api.PaymentPluginApiException;
 import com.ning.billing.payment.plugin.api.RefundInfoPlugin;
 import com.ning.billing.payment.plugin.api.RefundPluginStatus;
-import com.ning.billing.util.callcontext.CallOrigin;
+import com.ning.billing.util.cache.CacheControllerDispatcher;
 import com.ning.billing.util.callcontext.InternalCallContext;
-import com.ning.billing.util.callcontext.InternalCallContextFactory;
 import com.ning.billing.util.callcontext.InternalTenantContext;
-import com.ning.billing.util.callcontext.UserType;
 import com.ning.billing.util.dao.NonEntityDao;
 import com.ning.billing.util.svcapi.account.AccountInternalApi;
 import com.ning.billing.util.svcapi.invoice.InvoiceInternalApi;
@@ -65,7 +62,6 @@ import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
-import com.google.common.collect.ImmutableMap;
 import com.google.inject.name.Named;
 
 import static com.ning.billing.payment.glue.PaymentModule.PLUGIN_EXECUTOR_NAMED;
@@ -74,21 +70,18 @@ public class RefundProcessor extends ProcessorBase {
 
     private static final Logger log = LoggerFactory.getLogger(RefundProcessor.class);
 
-    private final InternalCallContextFactory internalCallContextFactory;
-
     @Inject
     public RefundProcessor(final OSGIServiceRegistration<PaymentPluginApi> pluginRegistry,
                            final AccountInternalApi accountApi,
                            final InvoiceInternalApi invoiceApi,
                            final PersistentBus eventBus,
-                           final InternalCallContextFactory internalCallContextFactory,
                            final TagInternalApi tagUserApi,
                            final PaymentDao paymentDao,
                            final NonEntityDao nonEntityDao,
+                           final CacheControllerDispatcher cacheControllerDispatcher,
                            final GlobalLocker locker,
                            @Named(PLUGIN_EXECUTOR_NAMED) final ExecutorService executor) {
-        super(pluginRegistry, accountApi, eventBus, paymentDao, nonEntityDao, tagUserApi, locker, executor, invoiceApi);
-        this.internalCallContextFactory = internalCallContextFactory;
+        super(pluginRegistry, accountApi, eventBus, paymentDao, nonEntityDao, cacheControllerDispatcher, tagUserApi, locker, executor, invoiceApi);
     }
 
     /**
@@ -121,13 +114,14 @@ public class RefundProcessor extends ProcessorBase {
                     }
 
                     final RefundModelDao refundInfo = new RefundModelDao(account.getId(), paymentId, refundAmount, account.getCurrency(), isAdjusted);
-                    paymentDao.insertRefund(refundInfo, context);
+                    paymentDao.insertRefund(refundInfo, invoiceItemIdsWithAmounts, context);
 
                     final PaymentPluginApi plugin = getPaymentProviderPlugin(payment.getPaymentMethodId(), context);
                     final RefundInfoPlugin refundInfoPlugin = plugin.processRefund(account.getId(), paymentId, refundAmount, account.getCurrency(), context.toCallContext());
 
                     if (refundInfoPlugin.getStatus() == RefundPluginStatus.PROCESSED) {
-                        paymentDao.updateRefundStatus(refundInfo.getId(), RefundStatus.PLUGIN_COMPLETED, context);
+                        // If we crash (or the invoice system fails) below, the RefundCompletionRetryService will complete the refund
+                        paymentDao.markRefundAsPluginCompleted(refundInfo.getId(), context);
 
                         invoiceApi.createRefund(paymentId, refundAmount, isAdjusted, invoiceItemIdsWithAmounts, refundInfo.getId(), context);
 
@@ -162,7 +156,14 @@ public class RefundProcessor extends ProcessorBase {
                                            final Map<UUID, BigDecimal> invoiceItemIdsWithAmounts, final InternalTenantContext context)
             throws PaymentApiException {
         try {
-            final List<InvoiceItem> items = invoiceApi.getInvoiceForPaymentId(paymentId, context).getInvoiceItems();
+            final Invoice invoice = invoiceApi.getInvoiceForPaymentId(paymentId, context);
+            final List<InvoiceItem> items = new ArrayList<InvoiceItem>(invoice.getInvoiceItems());
+            // Consolidated payments can be refunded against the items of any of their invoices
+            for (final UUID invoiceId : paymentDao.getPaymentAllocations(paymentId, context).keySet()) {
+                if (!invoiceId.equals(invoice.getId())) {
+                    items.addAll(invoiceApi.getInvoiceById(invoiceId, context).getInvoiceItems());
+                }
+            }
 
             BigDecimal amountFromItems = BigDecimal.ZERO;
             for (final UUID itemId : invoiceItemIdsWithAmounts.keySet()) {
@@ -193,7 +194,7 @@ public class RefundProcessor extends ProcessorBase {
 
     public Refund getRefund(final UUID refundId, final boolean withPluginInfo /* not yet implemented */, final InternalTenantContext context)
             throws PaymentApiException {
-        RefundModelDao result = paymentDao.getRefund(refundId, context);
+        final RefundModelDao result = paymentDao.getRefund(refundId, context);
         if (result == null) {
             throw new PaymentApiException(ErrorCode.PAYMENT_NO_SUCH_REFUND, refundId);
         }
@@ -202,9 +203,6 @@ public class RefundProcessor extends ProcessorBase {
             throw new PaymentApiException(ErrorCode.PAYMENT_NO_SUCH_REFUND, refundId);
         }
 
-        if (completePluginCompletedRefund(filteredInput, context)) {
-            result = paymentDao.getRefund(refundId, context);
-        }
         return new DefaultRefund(result.getId(), result.getCreatedDate(), result.getUpdatedDate(),
                                  result.getPaymentId(), result.getAmount(), result.getCurrency(),
                                  result.isAdjusted(), result.getCreatedDate());
@@ -212,20 +210,14 @@ public class RefundProcessor extends ProcessorBase {
 
     public List<Refund> getAccountRefunds(final Account account, final InternalTenantContext context)
             throws PaymentApiException {
-        List<RefundModelDao> result = paymentDao.getRefundsForAccount(account.getId(), context);
-        if (completePluginCompletedRefund(result, context)) {
-            result = paymentDao.getRefundsForAccount(account.getId(), context);
-        }
+        final List<RefundModelDao> result = paymentDao.getRefundsForAccount(account.getId(), context);
         final List<RefundModelDao> filteredInput = filterUncompletedPluginRefund(result);
         return toRefunds(filteredInput);
     }
 
     public List<Refund> getPaymentRefunds(final UUID paymentId, final InternalTenantContext context)
             throws PaymentApiException {
-        List<RefundModelDao> result = paymentDao.getRefundsForPayment(paymentId, context);
-        if (completePluginCompletedRefund(result, context)) {
-            result = paymentDao.getRefundsForPayment(paymentId, context);
-        }
+        final List<RefundModelDao> result = paymentDao.getRefundsForPayment(paymentId, context);
         final List<RefundModelDao> filteredInput = filterUncompletedPluginRefund(result);
         return toRefunds(filteredInput);
     }
@@ -250,43 +242,47 @@ public class RefundProcessor extends ProcessorBase {
         }));
     }
 
-    private boolean completePluginCompletedRefund(final List<RefundModelDao> refunds, final InternalTenantContext tenantContext) throws PaymentApiException {
-
-        final Collection<RefundModelDao> refundsToBeFixed = Collections2.filter(refunds, new Predicate<RefundModelDao>() {
-            @Override
-            public boolean apply(final RefundModelDao in) {
-                return in.getRefundStatus() == RefundStatus.PLUGIN_COMPLETED;
-            }
-        });
-        if (refundsToBeFixed.size() == 0) {
-            return false;
+    /**
+     * Complete a refund which was processed by the plugin but not yet reflected in the invoice system
+     * (invoked by the RefundCompletionRetryService). This is a no-op if the refund isn't in PLUGIN_COMPLETED.
+     *
+     * @param refundId refund to complete
+     * @param context  the call context
+     * @throws PaymentApiException
+     */
+    public void completeRefund(final UUID refundId, final InternalCallContext context) throws PaymentApiException {
+        final RefundModelDao refund = paymentDao.getRefund(refundId, context);
+        if (refund == null) {
+            throw new PaymentApiException(ErrorCode.PAYMENT_NO_SUCH_REFUND, refundId);
         }
 
         try {
-
-            // TODO context should be created for each refund and have the correct userToken
-            final InternalCallContext context = internalCallContextFactory.createInternalCallContext(refundsToBeFixed.iterator().next().getId(), ObjectType.REFUND, "RefundProcessor",
-                                                                                                     CallOrigin.INTERNAL, UserType.SYSTEM, null);
-
-            final Account account = accountInternalApi.getAccountById(refundsToBeFixed.iterator().next().getAccountId(), context);
+            final Account account = accountInternalApi.getAccountById(refund.getAccountId(), context);
             new WithAccountLock<Void>().processAccountWithLock(locker, account.getExternalKey(), new WithAccountLockCallback<Void>() {
 
                 @Override
                 public Void doOperation() throws PaymentApiException {
-                    try {
-                        for (final RefundModelDao cur : refundsToBeFixed) {
+                    // Re-check the state under the lock: createRefund may have completed it in the meantime
+                    final RefundModelDao cur = paymentDao.getRefund(refundId, context);
+                    if (cur.getRefundStatus() != RefundStatus.PLUGIN_COMPLETED) {
+                        return null;
+                    }
 
-                            // TODO - we currently don't save the items to be adjusted. If we crash, they won't be adjusted...
-                            invoiceApi.createRefund(cur.getPaymentId(), cur.getAmount(), cur.isAdjusted(), ImmutableMap.<UUID, BigDecimal>of(), cur.getId(), context);
-                            paymentDao.updateRefundStatus(cur.getId(), RefundStatus.COMPLETED, context);
-                        }
+                    try {
+                        final Map<UUID, BigDecimal> invoiceItemIdsWithAmounts = paymentDao.getRefundItemAdjustments(refundId, context);
+                        // The invoice system ignores refunds it already knows about (refund id used as payment cookie)
+                        invoiceApi.createRefund(cur.getPaymentId(), cur.getAmount(), cur.isAdjusted(), invoiceItemIdsWithAmounts, cur.getId(), context);
+                        paymentDao.updateRefundStatus(cur.getId(), RefundStatus.COMPLETED, context);
                     } catch (InvoiceApiException e) {
                         throw new PaymentApiException(e);
+                    } catch (RuntimeException e) {
+                        // e.g. database error in the invoice system: the refund stays in PLUGIN_COMPLETED and will be retried
+                        log.warn("Failed to complete refund " + refundId, e);
+                        throw new PaymentApiException(ErrorCode.PAYMENT_INTERNAL_ERROR, e.getMessage());
                     }
                     return null;
                 }
             });
-            return true;
         } catch (AccountApiException e) {
             throw new PaymentApiException(e);
         }
@@ -16,8 +16,13 @@
 
 package com.ning.billing.payment.dao;
 
+import java.math.BigDecimal;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.UUID;
 
 import javax.inject.Inject;
@@ -27,6 +32,7 @@ import org.skife.jdbi.v2.IDBI;
 
 import com.ning.billing.payment.api.PaymentStatus;
 import com.ning.billing.payment.dao.RefundModelDao.RefundStatus;
+import com.ning.billing.payment.retry.RefundCompletionRetryService.RefundCompletionRetryServiceScheduler;
 import com.ning.billing.util.cache.CacheControllerDispatcher;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalTenantContext;
@@ -38,16 +44,21 @@ import com.ning.billing.util.entity.dao.EntitySqlDaoTransactionWrapper;
 import com.ning.billing.util.entity.dao.EntitySqlDaoTransactionalJdbiWrapper;
 import com.ning.billing.util.entity.dao.EntitySqlDaoWrapperFactory;
 
+import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.ImmutableList;
 
 public class DefaultPaymentDao implements PaymentDao {
 
     private final EntitySqlDaoTransactionalJdbiWrapper transactionalSqlDao;
+    private final RefundCompletionRetryServiceScheduler refundCompletionRetryServiceScheduler;
 
     @Inject
-    public DefaultPaymentDao(final IDBI dbi, final Clock clock, final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao) {
+    public DefaultPaymentDao(final IDBI dbi, final Clock clock, final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao,
+                             final RefundCompletionRetryServiceScheduler refundCompletionRetryServiceScheduler) {
         this.transactionalSqlDao = new EntitySqlDaoTransactionalJdbiWrapper(dbi, clock, cacheControllerDispatcher, nonEntityDao);
+        this.refundCompletionRetryServiceScheduler = refundCompletionRetryServiceScheduler;
     }
 
     @Override
@@ -83,6 +94,41 @@ public class DefaultPaymentDao implements PaymentDao {
         });
     }
 
+    @Override
+    public PaymentModelDao insertPaymentWithAttemptAndAllocations(final PaymentModelDao payment, final PaymentAttemptModelDao attempt,
+                                                                  final Map<UUID, BigDecimal> allocations, final InternalCallContext context) {
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<PaymentModelDao>() {
+
+            @Override
+            public PaymentModelDao inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final PaymentSqlDao transactional = entitySqlDaoWrapperFactory.become(PaymentSqlDao.class);
+                transactional.create(payment, context);
+                for (final UUID invoiceId : allocations.keySet()) {
+                    transactional.insertAllocation(payment.getId().toString(), invoiceId.toString(), allocations.get(invoiceId), context);
+                }
+
+                entitySqlDaoWrapperFactory.become(PaymentAttemptSqlDao.class).create(attempt, context);
+
+                return transactional.getById(payment.getId().toString(), context);
+            }
+        });
+    }
+
+    @Override
+    public Map<UUID, BigDecimal> getPaymentAllocations(final UUID paymentId, final InternalTenantContext context) {
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Map<UUID, BigDecimal>>() {
+            @Override
+            public Map<UUID, BigDecimal> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                // Keep the allocation order (oldest invoice first)
+                final Map<UUID, BigDecimal> allocations = new LinkedHashMap<UUID, BigDecimal>();
+                for (final Entry<UUID, BigDecimal> allocation : entitySqlDaoWrapperFactory.become(PaymentSqlDao.class).getAllocations(paymentId.toString(), context)) {
+                    allocations.put(allocation.getKey(), allocation.getValue());
+                }
+                return allocations;
+            }
+        });
+    }
+
     @Override
     public PaymentAttemptModelDao getPaymentAttempt(final UUID attemptId, final InternalTenantContext context) {
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<PaymentAttemptModelDao>() {
@@ -112,6 +158,16 @@ public class DefaultPaymentDao implements PaymentDao {
         });
     }
 
+    @Override
+    public List<PaymentModelDao> getPaymentsByStatusAcrossTenants(final PaymentStatus paymentStatus, final DateTime effectiveBefore, final Integer fromPaymentNumber, final int limit) {
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<PaymentModelDao>>() {
+            @Override
+            public List<PaymentModelDao> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                return entitySqlDaoWrapperFactory.become(PaymentSqlDao.class).getByPaymentStatusAcrossTenants(paymentStatus.toString(), effectiveBefore.toDate(), fromPaymentNumber, limit);
+            }
+        });
+    }
+
     @Override
     public PaymentMethodModelDao insertPaymentMethod(final PaymentMethodModelDao paymentMethod, final InternalCallContext context) {
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<PaymentMethodModelDao>() {
@@ -131,13 +187,17 @@ public class DefaultPaymentDao implements PaymentDao {
     }
 
     @Override
-    public RefundModelDao insertRefund(final RefundModelDao refundInfo, final InternalCallContext context) {
+    public RefundModelDao insertRefund(final RefundModelDao refundInfo, final Map<UUID, BigDecimal> invoiceItemIdsWithAmounts, final InternalCallContext context) {
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<RefundModelDao>() {
 
             @Override
             public RefundModelDao inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 final RefundSqlDao transactional = entitySqlDaoWrapperFactory.become(RefundSqlDao.class);
                 transactional.create(refundInfo, context);
+                // Keep the requested item adjustments, so the refund can be completed later on if we crash
+                for (final UUID invoiceItemId : invoiceItemIdsWithAmounts.keySet()) {
+                    transactional.insertItemAdjustment(refundInfo.getId().toString(), invoiceItemId.toString(), invoiceItemIdsWithAmounts.get(invoiceItemId), context);
+                }
                 return transactional.getById(refundInfo.getId().toString(), context);
             }
         });
@@ -154,6 +214,43 @@ public class DefaultPaymentDao implements PaymentDao {
         });
     }
 
+    @Override
+    public void markRefundAsPluginCompleted(final UUID refundId, final InternalCallContext context) {
+        transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Void>() {
+            @Override
+            public Void inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                entitySqlDaoWrapperFactory.become(RefundSqlDao.class).updateStatus(refundId.toString(), RefundStatus.PLUGIN_COMPLETED.toString(), context);
+                refundCompletionRetryServiceScheduler.scheduleRetryFromTransaction(refundId, entitySqlDaoWrapperFactory);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public List<RefundModelDao> getRefundsByStatusAcrossTenants(final RefundStatus refundStatus, final DateTime updatedBefore) {
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<RefundModelDao>>() {
+            @Override
+            public List<RefundModelDao> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                return entitySqlDaoWrapperFactory.become(RefundSqlDao.class).getByRefundStatusAcrossTenants(refundStatus.toString(), updatedBefore.toDate());
+            }
+        });
+    }
+
+    @Override
+    public Map<UUID, BigDecimal> getRefundItemAdjustments(final UUID refundId, final InternalTenantContext context) {
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Map<UUID, BigDecimal>>() {
+            @Override
+            public Map<UUID, BigDecimal> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                // Amounts may be null (whole item adjustment)
+                final Map<UUID, BigDecimal> itemAdjustments = new HashMap<UUID, BigDecimal>();
+                for (final Entry<UUID, BigDecimal> itemAdjustment : entitySqlDaoWrapperFactory.become(RefundSqlDao.class).getItemAdjustments(refundId.toString(), context)) {
+                    itemAdjustments.put(itemAdjustment.getKey(), itemAdjustment.getValue());
+                }
+                return itemAdjustments;
+            }
+        });
+    }
+
     @Override
     public RefundModelDao getRefund(final UUID refundId, final InternalTenantContext context) {
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<RefundModelDao>() {
@@ -204,6 +301,25 @@ public class DefaultPaymentDao implements PaymentDao {
         });
     }
 
+    @Override
+    public List<PaymentMethodModelDao> getPaymentMethodsIncludedDeleted(final Collection<UUID> paymentMethodIds, final InternalTenantContext context) {
+        if (paymentMethodIds.isEmpty()) {
+            return ImmutableList.<PaymentMethodModelDao>of();
+        }
+
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<PaymentMethodModelDao>>() {
+            @Override
+            public List<PaymentMethodModelDao> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                return entitySqlDaoWrapperFactory.become(PaymentMethodSqlDao.class).getPaymentMethodsIncludedDelete(Collections2.transform(paymentMethodIds, new Function<UUID, String>() {
+                    @Override
+                    public String apply(final UUID input) {
+                        return input.toString();
+                    }
+                }), context);
+            }
+        });
+    }
+
     @Override
     public List<PaymentMethodModelDao> getPaymentMethods(final UUID accountId, final InternalTenantContext context) {
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<PaymentMethodModelDao>>() {
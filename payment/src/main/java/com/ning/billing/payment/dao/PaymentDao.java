@@ -16,7 +16,10 @@
 
 package com.ning.billing.payment.dao;
 
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
@@ -31,6 +34,12 @@ public interface PaymentDao {
     // STEPH do we need object returned?
     public PaymentModelDao insertPaymentWithAttempt(PaymentModelDao paymentInfo, PaymentAttemptModelDao attempt, InternalCallContext context);
 
+    // Consolidated payment: the allocations map the invoices paid to their amount, oldest invoice first
+    public PaymentModelDao insertPaymentWithAttemptAndAllocations(PaymentModelDao paymentInfo, PaymentAttemptModelDao attempt, Map<UUID, BigDecimal> allocations, InternalCallContext context);
+
+    // Empty for regular (single invoice) payments
+    public Map<UUID, BigDecimal> getPaymentAllocations(UUID paymentId, InternalTenantContext context);
+
     public PaymentAttemptModelDao insertNewAttemptForPayment(UUID paymentId, PaymentAttemptModelDao attempt, InternalCallContext context);
 
     public void updateStatusAndEffectiveDateForPaymentWithAttempt(UUID paymentId, PaymentStatus paymentStatus, DateTime newEffectiveDate,
@@ -48,10 +57,21 @@ public interface PaymentDao {
 
     public List<PaymentAttemptModelDao> getAttemptsForPayment(UUID paymentId, InternalTenantContext context);
 
-    public RefundModelDao insertRefund(RefundModelDao refundInfo, InternalCallContext context);
+    // Used by the Janitor: payments are paginated by payment number, starting after fromPaymentNumber
+    public List<PaymentModelDao> getPaymentsByStatusAcrossTenants(PaymentStatus paymentStatus, DateTime effectiveBefore, Integer fromPaymentNumber, int limit);
+
+    public RefundModelDao insertRefund(RefundModelDao refundInfo, Map<UUID, BigDecimal> invoiceItemIdsWithAmounts, InternalCallContext context);
 
     public void updateRefundStatus(UUID refundId, RefundStatus status, InternalCallContext context);
 
+    // Moves the refund to PLUGIN_COMPLETED and schedules its completion, in the same transaction
+    public void markRefundAsPluginCompleted(UUID refundId, InternalCallContext context);
+
+    // Used by the RefundCompletionRetryService startup sweep
+    public List<RefundModelDao> getRefundsByStatusAcrossTenants(RefundStatus refundStatus, DateTime updatedBefore);
+
+    public Map<UUID, BigDecimal> getRefundItemAdjustments(UUID refundId, InternalTenantContext context);
+
     public RefundModelDao getRefund(UUID refundId, InternalTenantContext context);
 
     public List<RefundModelDao> getRefundsForPayment(UUID paymentId, InternalTenantContext context);
@@ -64,6 +84,8 @@ public interface PaymentDao {
 
     public PaymentMethodModelDao getPaymentMethodIncludedDeleted(UUID paymentMethodId, InternalTenantContext context);
 
+    public List<PaymentMethodModelDao> getPaymentMethodsIncludedDeleted(Collection<UUID> paymentMethodIds, InternalTenantContext context);
+
     public List<PaymentMethodModelDao> getPaymentMethods(UUID accountId, InternalTenantContext context);
 
     public void deletedPaymentMethod(UUID paymentMethodId, InternalCallContext context);
@@ -16,6 +16,7 @@
 
 package com.ning.billing.payment.dao;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.skife.jdbi.v2.sqlobject.Bind;
@@ -30,6 +31,7 @@ import com.ning.billing.util.callcontext.InternalTenantContext;
 import com.ning.billing.util.entity.dao.Audited;
 import com.ning.billing.util.entity.dao.EntitySqlDao;
 import com.ning.billing.util.entity.dao.EntitySqlDaoStringTemplate;
+import com.ning.billing.util.tag.dao.UUIDCollectionBinder;
 
 @EntitySqlDaoStringTemplate
 public interface PaymentMethodSqlDao extends EntitySqlDao<PaymentMethodModelDao, PaymentMethod> {
@@ -48,6 +50,10 @@ public interface PaymentMethodSqlDao extends EntitySqlDao<PaymentMethodModelDao,
     PaymentMethodModelDao getPaymentMethodIncludedDelete(@Bind("id") final String paymentMethodId,
                                                          @BindBean final InternalTenantContext context);
 
+    @SqlQuery
+    List<PaymentMethodModelDao> getPaymentMethodsIncludedDelete(@UUIDCollectionBinder("ids") final Collection<String> paymentMethodIds,
+                                                                @BindBean final InternalTenantContext context);
+
     @SqlQuery
     List<PaymentMethodModelDao> getByAccountId(@Bind("accountId") final String accountId, @BindBean final InternalTenantContext context);
 
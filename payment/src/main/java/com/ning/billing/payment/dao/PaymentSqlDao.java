@@ -17,22 +17,32 @@
 package com.ning.billing.payment.dao;
 
 import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.Date;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.UUID;
 
+import org.skife.jdbi.v2.StatementContext;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.BindBean;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.customizers.Mapper;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
 
 import com.ning.billing.payment.api.Payment;
 import com.ning.billing.util.audit.ChangeType;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.dao.MapperBase;
 import com.ning.billing.util.entity.dao.Audited;
 import com.ning.billing.util.entity.dao.EntitySqlDao;
 import com.ning.billing.util.entity.dao.EntitySqlDaoStringTemplate;
 
+import com.google.common.collect.Maps;
+
 @EntitySqlDaoStringTemplate
 public interface PaymentSqlDao extends EntitySqlDao<PaymentModelDao, Payment> {
 
@@ -61,5 +71,29 @@ public interface PaymentSqlDao extends EntitySqlDao<PaymentModelDao, Payment> {
     @SqlQuery
     List<PaymentModelDao> getPaymentsForAccount(@Bind("accountId") final String accountId,
                                                 @BindBean final InternalTenantContext context);
-}
 
+    @SqlQuery
+    List<PaymentModelDao> getByPaymentStatusAcrossTenants(@Bind("paymentStatus") final String paymentStatus,
+                                                          @Bind("effectiveBefore") final Date effectiveBefore,
+                                                          @Bind("fromPaymentNumber") final Integer fromPaymentNumber,
+                                                          @Bind("limit") final int limit);
+
+    @SqlUpdate
+    void insertAllocation(@Bind("paymentId") final String paymentId,
+                          @Bind("invoiceId") final String invoiceId,
+                          @Bind("amount") final BigDecimal amount,
+                          @BindBean final InternalCallContext context);
+
+    @SqlQuery
+    @Mapper(AllocationMapper.class)
+    List<Entry<UUID, BigDecimal>> getAllocations(@Bind("paymentId") final String paymentId,
+                                                 @BindBean final InternalTenantContext context);
+
+    public static class AllocationMapper extends MapperBase implements ResultSetMapper<Entry<UUID, BigDecimal>> {
+
+        @Override
+        public Entry<UUID, BigDecimal> map(final int index, final ResultSet r, final StatementContext ctx) throws SQLException {
+            return Maps.immutableEntry(getUUID(r, "invoice_id"), r.getBigDecimal("amount"));
+        }
+    }
+}
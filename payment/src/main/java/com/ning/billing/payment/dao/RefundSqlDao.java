@@ -16,21 +16,33 @@
 
 package com.ning.billing.payment.dao;
 
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.UUID;
 
+import org.skife.jdbi.v2.StatementContext;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.BindBean;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.customizers.Mapper;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
 
 import com.ning.billing.payment.api.Refund;
 import com.ning.billing.util.audit.ChangeType;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.dao.MapperBase;
 import com.ning.billing.util.entity.dao.Audited;
 import com.ning.billing.util.entity.dao.EntitySqlDao;
 import com.ning.billing.util.entity.dao.EntitySqlDaoStringTemplate;
 
+import com.google.common.collect.Maps;
+
 @EntitySqlDaoStringTemplate
 public interface RefundSqlDao extends EntitySqlDao<RefundModelDao, Refund> {
 
@@ -47,4 +59,28 @@ public interface RefundSqlDao extends EntitySqlDao<RefundModelDao, Refund> {
     @SqlQuery
     List<RefundModelDao> getRefundsForAccount(@Bind("accountId") final String accountId,
                                               @BindBean final InternalTenantContext context);
+
+    @SqlQuery
+    List<RefundModelDao> getByRefundStatusAcrossTenants(@Bind("refundStatus") final String refundStatus,
+                                                        @Bind("updatedBefore") final Date updatedBefore);
+
+    @SqlUpdate
+    void insertItemAdjustment(@Bind("refundId") final String refundId,
+                              @Bind("invoiceItemId") final String invoiceItemId,
+                              @Bind("amount") final BigDecimal amount,
+                              @BindBean final InternalCallContext context);
+
+    @SqlQuery
+    @Mapper(ItemAdjustmentMapper.class)
+    List<Entry<UUID, BigDecimal>> getItemAdjustments(@Bind("refundId") final String refundId,
+                                                     @BindBean final InternalTenantContext context);
+
+    public static class ItemAdjustmentMapper extends MapperBase implements ResultSetMapper<Entry<UUID, BigDecimal>> {
+
+        @Override
+        public Entry<UUID, BigDecimal> map(final int index, final ResultSet r, final StatementContext ctx) throws SQLException {
+            // A null amount means the whole invoice item is adjusted
+            return Maps.immutableEntry(getUUID(r, "invoice_item_id"), r.getBigDecimal("amount"));
+        }
+    }
 }
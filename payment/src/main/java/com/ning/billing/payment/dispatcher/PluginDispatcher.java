@@ -51,9 +51,14 @@ public class PluginDispatcher<T> {
     public T dispatchWithAccountLockAndTimeout(final Callable<T> task, final long timeout, final TimeUnit unit)
             throws PaymentApiException, TimeoutException {
 
+        final Future<T> future = executor.submit(task);
         try {
-            final Future<T> future = executor.submit(task);
             return future.get(timeout, unit);
+        } catch (TimeoutException e) {
+            // Don't interrupt the plugin call, so that it can still record its outcome: if it never does, the payment
+            // is left in UNKNOWN and reconciled by the Janitor
+            future.cancel(false);
+            throw e;
         } catch (ExecutionException e) {
             if (e.getCause() instanceof PaymentApiException) {
                 throw (PaymentApiException) e.getCause();
@@ -28,9 +28,12 @@ import com.ning.billing.payment.api.PaymentApi;
 import com.ning.billing.payment.api.PaymentService;
 import com.ning.billing.payment.bus.InvoiceHandler;
 import com.ning.billing.payment.bus.PaymentTagHandler;
+import com.ning.billing.payment.core.Janitor;
 import com.ning.billing.payment.retry.AutoPayRetryService;
 import com.ning.billing.payment.retry.FailedPaymentRetryService;
+import com.ning.billing.payment.retry.PaymentCollectionService;
 import com.ning.billing.payment.retry.PluginFailureRetryService;
+import com.ning.billing.payment.retry.RefundCompletionRetryService;
 
 import com.google.inject.Inject;
 
@@ -47,6 +50,9 @@ public class DefaultPaymentService implements PaymentService {
     private final FailedPaymentRetryService failedRetryService;
     private final PluginFailureRetryService timedoutRetryService;
     private final AutoPayRetryService autoPayoffRetryService;
+    private final RefundCompletionRetryService refundCompletionRetryService;
+    private final PaymentCollectionService paymentCollectionService;
+    private final Janitor janitor;
 
     @Inject
     public DefaultPaymentService(final InvoiceHandler invoiceHandler,
@@ -54,7 +60,9 @@ public class DefaultPaymentService implements PaymentService {
                                  final PaymentApi api, final PersistentBus eventBus,
                                  final FailedPaymentRetryService failedRetryService,
                                  final PluginFailureRetryService timedoutRetryService,
-                                 final AutoPayRetryService autoPayoffRetryService) {
+                                 final AutoPayRetryService autoPayoffRetryService,
+                                 final RefundCompletionRetryService refundCompletionRetryService,
+                                 final Janitor janitor) {
         this.invoiceHandler = invoiceHandler;
         this.tagHandler = tagHandler;
         this.eventBus = eventBus;
@@ -62,6 +70,9 @@ public class DefaultPaymentService implements PaymentService {
         this.failedRetryService = failedRetryService;
         this.timedoutRetryService = timedoutRetryService;
         this.autoPayoffRetryService = autoPayoffRetryService;
+        this.refundCompletionRetryService = refundCompletionRetryService;
+        this.paymentCollectionService = paymentCollectionService;
+        this.janitor = janitor;
     }
 
     @Override
@@ -80,6 +91,8 @@ public class DefaultPaymentService implements PaymentService {
         failedRetryService.initialize(SERVICE_NAME);
         timedoutRetryService.initialize(SERVICE_NAME);
         autoPayoffRetryService.initialize(SERVICE_NAME);
+        refundCompletionRetryService.initialize(SERVICE_NAME);
+        paymentCollectionService.initialize(SERVICE_NAME);
     }
 
     @LifecycleHandlerType(LifecycleLevel.START_SERVICE)
@@ -87,6 +100,9 @@ public class DefaultPaymentService implements PaymentService {
         failedRetryService.start();
         timedoutRetryService.start();
         autoPayoffRetryService.start();
+        refundCompletionRetryService.start();
+        paymentCollectionService.start();
+        janitor.start();
     }
 
     @LifecycleHandlerType(LifecycleLevel.STOP_SERVICE)
@@ -100,6 +116,9 @@ public class DefaultPaymentService implements PaymentService {
         failedRetryService.stop();
         timedoutRetryService.stop();
         autoPayoffRetryService.stop();
+        refundCompletionRetryService.stop();
+        paymentCollectionService.stop();
+        janitor.stop();
     }
 
     @Override
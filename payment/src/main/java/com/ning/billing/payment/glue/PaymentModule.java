@@ -18,7 +18,10 @@ package com.ning.billing.payment.glue;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.skife.config.ConfigSource;
 import org.skife.config.ConfigurationObjectFactory;
@@ -30,6 +33,7 @@ import com.ning.billing.payment.api.PaymentService;
 import com.ning.billing.payment.api.svcs.DefaultPaymentInternalApi;
 import com.ning.billing.payment.bus.InvoiceHandler;
 import com.ning.billing.payment.bus.PaymentTagHandler;
+import com.ning.billing.payment.core.Janitor;
 import com.ning.billing.payment.core.PaymentMethodProcessor;
 import com.ning.billing.payment.core.PaymentProcessor;
 import com.ning.billing.payment.core.RefundProcessor;
@@ -41,7 +45,11 @@ import com.ning.billing.payment.retry.AutoPayRetryService.AutoPayRetryServiceSch
 import com.ning.billing.payment.retry.FailedPaymentRetryService;
 import com.ning.billing.payment.retry.FailedPaymentRetryService.FailedPaymentRetryServiceScheduler;
 import com.ning.billing.payment.retry.PluginFailureRetryService;
+import com.ning.billing.payment.retry.PaymentCollectionService;
+import com.ning.billing.payment.retry.PaymentCollectionService.PaymentCollectionServiceScheduler;
 import com.ning.billing.payment.retry.PluginFailureRetryService.PluginFailureRetryServiceScheduler;
+import com.ning.billing.payment.retry.RefundCompletionRetryService;
+import com.ning.billing.payment.retry.RefundCompletionRetryService.RefundCompletionRetryServiceScheduler;
 import com.ning.billing.util.config.PaymentConfig;
 import com.ning.billing.util.svcapi.payment.PaymentInternalApi;
 
@@ -52,8 +60,10 @@ import com.google.inject.name.Names;
 public class PaymentModule extends AbstractModule {
 
     private static final String PLUGIN_THREAD_PREFIX = "Plugin-th-";
+    private static final String SEARCH_THREAD_PREFIX = "Plugin-search-th-";
 
     public static final String PLUGIN_EXECUTOR_NAMED = "PluginExecutor";
+    public static final String SEARCH_EXECUTOR_NAMED = "SearchExecutor";
 
     protected ConfigSource configSource;
 
@@ -72,9 +82,13 @@ public class PaymentModule extends AbstractModule {
         bind(FailedPaymentRetryService.class).asEagerSingleton();
         bind(PluginFailureRetryService.class).asEagerSingleton();
         bind(AutoPayRetryService.class).asEagerSingleton();
+        bind(RefundCompletionRetryService.class).asEagerSingleton();
+        bind(PaymentCollectionService.class).asEagerSingleton();
         bind(FailedPaymentRetryServiceScheduler.class).asEagerSingleton();
         bind(PluginFailureRetryServiceScheduler.class).asEagerSingleton();
         bind(AutoPayRetryServiceScheduler.class).asEagerSingleton();
+        bind(RefundCompletionRetryServiceScheduler.class).asEagerSingleton();
+        bind(PaymentCollectionServiceScheduler.class).asEagerSingleton();
     }
 
     protected void installProcessors(final PaymentConfig paymentConfig) {
@@ -88,9 +102,25 @@ public class PaymentModule extends AbstractModule {
             }
         });
         bind(ExecutorService.class).annotatedWith(Names.named(PLUGIN_EXECUTOR_NAMED)).toInstance(pluginExecutorService);
+        // Searches can be slow and are user triggered: they get their own bounded pool so they never starve payments
+        final ExecutorService searchExecutorService = new ThreadPoolExecutor(paymentConfig.getPaymentMethodSearchThreadNb(),
+                                                                             paymentConfig.getPaymentMethodSearchThreadNb(),
+                                                                             0L, TimeUnit.MILLISECONDS,
+                                                                             new LinkedBlockingQueue<Runnable>(paymentConfig.getPaymentMethodSearchQueueSize()),
+                                                                             new ThreadFactory() {
+
+                                                                                 @Override
+                                                                                 public Thread newThread(final Runnable r) {
+                                                                                     final Thread th = new Thread(r);
+                                                                                     th.setName(SEARCH_THREAD_PREFIX + th.getId());
+                                                                                     return th;
+                                                                                 }
+                                                                             });
+        bind(ExecutorService.class).annotatedWith(Names.named(SEARCH_EXECUTOR_NAMED)).toInstance(searchExecutorService);
         bind(PaymentProcessor.class).asEagerSingleton();
         bind(RefundProcessor.class).asEagerSingleton();
         bind(PaymentMethodProcessor.class).asEagerSingleton();
+        bind(Janitor.class).asEagerSingleton();
     }
 
     @Override
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.payment.retry;
+
+import java.util.UUID;
+
+import com.ning.billing.notificationq.DefaultUUIDNotificationKey;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Notification key of the account collections: the key is the account id.
+ */
+public class PaymentCollectionNotificationKey extends DefaultUUIDNotificationKey {
+
+    @JsonCreator
+    public PaymentCollectionNotificationKey(@JsonProperty("uuidKey") final UUID uuidKey) {
+        super(uuidKey);
+    }
+
+    public UUID getAccountId() {
+        return getUuidKey();
+    }
+}
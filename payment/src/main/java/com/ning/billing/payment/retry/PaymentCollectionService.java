@@ -0,0 +1,149 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.payment.retry;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ning.billing.ObjectType;
+import com.ning.billing.clock.Clock;
+import com.ning.billing.notificationq.api.NotificationEvent;
+import com.ning.billing.notificationq.api.NotificationQueue;
+import com.ning.billing.notificationq.api.NotificationQueueService;
+import com.ning.billing.notificationq.api.NotificationQueueService.NoSuchNotificationQueue;
+import com.ning.billing.notificationq.api.NotificationQueueService.NotificationQueueAlreadyExists;
+import com.ning.billing.notificationq.api.NotificationQueueService.NotificationQueueHandler;
+import com.ning.billing.payment.core.PaymentProcessor;
+import com.ning.billing.payment.glue.DefaultPaymentService;
+import com.ning.billing.util.callcontext.CallOrigin;
+import com.ning.billing.util.callcontext.InternalCallContext;
+import com.ning.billing.util.callcontext.InternalCallContextFactory;
+import com.ning.billing.util.callcontext.UserType;
+import com.ning.billing.util.config.PaymentConfig;
+
+import com.google.inject.Inject;
+
+/**
+ * Collects, in a single payment, the outstanding balance of the accounts which received new invoices
+ * during the collection window (killbill.payment.collection.window.sec).
+ * <p/>
+ * The notifications are keyed by account (see {@link PaymentCollectionNotificationKey}), unlike the payment retries.
+ */
+public class PaymentCollectionService {
+
+    private static final Logger log = LoggerFactory.getLogger(PaymentCollectionService.class);
+
+    public static final String QUEUE_NAME = "payment-collection";
+
+    private static final String PAYMENT_COLLECTION_SERVICE = "PaymentCollectionService";
+
+    private final NotificationQueueService notificationQueueService;
+    private final PaymentProcessor paymentProcessor;
+    private final InternalCallContextFactory internalCallContextFactory;
+
+    private NotificationQueue collectionQueue;
+
+    @Inject
+    public PaymentCollectionService(final NotificationQueueService notificationQueueService,
+                                    final PaymentProcessor paymentProcessor,
+                                    final InternalCallContextFactory internalCallContextFactory) {
+        this.notificationQueueService = notificationQueueService;
+        this.paymentProcessor = paymentProcessor;
+        this.internalCallContextFactory = internalCallContextFactory;
+    }
+
+    public void initialize(final String svcName) throws NotificationQueueAlreadyExists {
+        collectionQueue = notificationQueueService.createNotificationQueue(svcName,
+                                                                           QUEUE_NAME,
+                                                                           new NotificationQueueHandler() {
+                                                                               @Override
+                                                                               public void handleReadyNotification(final NotificationEvent notificationKey, final DateTime eventDateTime, final UUID userToken, final Long accountRecordId, final Long tenantRecordId) {
+                                                                                   final UUID accountId;
+                                                                                   if (notificationKey instanceof PaymentCollectionNotificationKey) {
+                                                                                       accountId = ((PaymentCollectionNotificationKey) notificationKey).getAccountId();
+                                                                                   } else if (notificationKey instanceof PaymentRetryNotificationKey) {
+                                                                                       // Collections recorded before the collection key existed
+                                                                                       accountId = ((PaymentRetryNotificationKey) notificationKey).getUuidKey();
+                                                                                   } else {
+                                                                                       log.error("Payment collection service got an unexpected notification type {}", notificationKey.getClass().getName());
+                                                                                       return;
+                                                                                   }
+                                                                                   final InternalCallContext callContext = internalCallContextFactory.createInternalCallContext(tenantRecordId, accountRecordId, PAYMENT_COLLECTION_SERVICE, CallOrigin.INTERNAL, UserType.SYSTEM, userToken);
+                                                                                   collect(accountId, callContext);
+                                                                               }
+                                                                           });
+    }
+
+    public void start() {
+        collectionQueue.startQueue();
+    }
+
+    public void stop() throws NoSuchNotificationQueue {
+        if (collectionQueue != null) {
+            collectionQueue.stopQueue();
+            notificationQueueService.deleteNotificationQueue(collectionQueue.getServiceName(), collectionQueue.getQueueName());
+        }
+    }
+
+    public void collect(final UUID accountId, final InternalCallContext context) {
+        paymentProcessor.collectAccountBalance(accountId, context);
+    }
+
+    public static class PaymentCollectionServiceScheduler {
+
+        private final NotificationQueueService notificationQueueService;
+        private final InternalCallContextFactory internalCallContextFactory;
+        private final Clock clock;
+        private final PaymentConfig config;
+
+        @Inject
+        public PaymentCollectionServiceScheduler(final NotificationQueueService notificationQueueService,
+                                                 final InternalCallContextFactory internalCallContextFactory,
+                                                 final Clock clock,
+                                                 final PaymentConfig config) {
+            this.notificationQueueService = notificationQueueService;
+            this.internalCallContextFactory = internalCallContextFactory;
+            this.clock = clock;
+            this.config = config;
+        }
+
+        public boolean isEnabled() {
+            return config.getPaymentCollectionWindow() > 0;
+        }
+
+        public boolean scheduleCollection(final UUID accountId) {
+            final DateTime collectionDate = clock.getUTCNow().plusSeconds(config.getPaymentCollectionWindow());
+            final InternalCallContext context = internalCallContextFactory.createInternalCallContext(accountId, ObjectType.ACCOUNT, PAYMENT_COLLECTION_SERVICE, CallOrigin.INTERNAL, UserType.SYSTEM, null);
+
+            try {
+                final NotificationQueue collectionQueue = notificationQueueService.getNotificationQueue(DefaultPaymentService.SERVICE_NAME, QUEUE_NAME);
+                collectionQueue.recordFutureNotification(collectionDate, new PaymentCollectionNotificationKey(accountId), context.getUserToken(), context.getAccountRecordId(), context.getTenantRecordId());
+            } catch (NoSuchNotificationQueue e) {
+                log.error(String.format("Failed to retrieve notification queue %s:%s", DefaultPaymentService.SERVICE_NAME, QUEUE_NAME));
+                return false;
+            } catch (IOException e) {
+                log.error(String.format("Failed to serialize notificationQueue event for accountId %s", accountId));
+                return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.payment.retry;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ning.billing.ObjectType;
+import com.ning.billing.clock.Clock;
+import com.ning.billing.notificationq.api.NotificationQueueService;
+import com.ning.billing.payment.api.PaymentApiException;
+import com.ning.billing.payment.core.RefundProcessor;
+import com.ning.billing.payment.dao.PaymentDao;
+import com.ning.billing.payment.dao.RefundModelDao;
+import com.ning.billing.payment.dao.RefundModelDao.RefundStatus;
+import com.ning.billing.util.callcontext.CallOrigin;
+import com.ning.billing.util.callcontext.InternalCallContext;
+import com.ning.billing.util.callcontext.InternalCallContextFactory;
+import com.ning.billing.util.callcontext.UserType;
+import com.ning.billing.util.config.PaymentConfig;
+import com.ning.billing.util.entity.dao.EntitySqlDao;
+import com.ning.billing.util.entity.dao.EntitySqlDaoWrapperFactory;
+
+import com.google.inject.Inject;
+
+/**
+ * Completes (invoice adjustments) the refunds which were processed by the plugin but left in PLUGIN_COMPLETED,
+ * e.g. because we crashed or the invoice system failed.
+ * <p/>
+ * Completion is attempted up to killbill.payment.refund.completion.max.attempts times, after which the refund is
+ * left in PLUGIN_COMPLETED and requires manual intervention. On startup, PLUGIN_COMPLETED refunds which can't have
+ * a pending notification anymore (legacy refunds, or refunds which exhausted their attempts before a fix was deployed)
+ * are scheduled again.
+ */
+public class RefundCompletionRetryService extends BaseRetryService implements RetryService {
+
+    private static final Logger log = LoggerFactory.getLogger(RefundCompletionRetryService.class);
+
+    public static final String QUEUE_NAME = "refund-completion";
+
+    private final RefundProcessor refundProcessor;
+    private final RefundCompletionRetryServiceScheduler scheduler;
+    private final PaymentDao paymentDao;
+    private final PaymentConfig config;
+    private final Clock clock;
+
+    @Inject
+    public RefundCompletionRetryService(final NotificationQueueService notificationQueueService,
+                                        final RefundProcessor refundProcessor,
+                                        final RefundCompletionRetryServiceScheduler scheduler,
+                                        final PaymentDao paymentDao,
+                                        final PaymentConfig config,
+                                        final Clock clock,
+                                        final InternalCallContextFactory internalCallContextFactory) {
+        super(notificationQueueService, internalCallContextFactory);
+        this.refundProcessor = refundProcessor;
+        this.scheduler = scheduler;
+        this.paymentDao = paymentDao;
+        this.config = config;
+        this.clock = clock;
+    }
+
+    @Override
+    public void start() {
+        super.start();
+        scheduleStuckRefunds();
+    }
+
+    // Notifications recorded before the attempts were tracked don't carry an attempt number
+    @Override
+    protected void retry(final PaymentRetryNotificationKey key, final InternalCallContext context) {
+        final int attemptNumber = key instanceof RefundCompletionNotificationKey ? ((RefundCompletionNotificationKey) key).getAttemptNumber() : 1;
+        retry(key.getUuidKey(), attemptNumber, context);
+    }
+
+    @Override
+    public void retry(final UUID refundId, final InternalCallContext context) {
+        retry(refundId, 1, context);
+    }
+
+    private void retry(final UUID refundId, final int attemptNumber, final InternalCallContext context) {
+        try {
+            refundProcessor.completeRefund(refundId, context);
+        } catch (PaymentApiException e) {
+            if (attemptNumber >= config.getRefundCompletionMaxAttempts()) {
+                log.error("Failed to complete refund " + refundId + " after " + attemptNumber + " attempts, giving up: the refund needs to be completed manually", e);
+                return;
+            }
+            log.warn("Failed to complete refund " + refundId + " (attempt " + attemptNumber + "), will retry later", e);
+            scheduler.scheduleRetry(refundId, attemptNumber + 1);
+        }
+    }
+
+    private void scheduleStuckRefunds() {
+        // Refunds which still have a pending notification were updated less than maxAttempts * retryDelay ago
+        final long maxPendingSeconds = (long) config.getRefundCompletionMaxAttempts() * config.getRefundCompletionRetryDelay();
+        final DateTime updatedBefore = clock.getUTCNow().minusSeconds((int) Math.min(maxPendingSeconds, Integer.MAX_VALUE));
+
+        final List<RefundModelDao> refunds = paymentDao.getRefundsByStatusAcrossTenants(RefundStatus.PLUGIN_COMPLETED, updatedBefore);
+        for (final RefundModelDao refund : refunds) {
+            log.info("Scheduling completion of refund {} left in {}", refund.getId(), RefundStatus.PLUGIN_COMPLETED);
+            scheduler.scheduleRetry(refund.getId());
+        }
+    }
+
+    public static class RefundCompletionRetryServiceScheduler extends RetryServiceScheduler {
+
+        private static final String REFUND_COMPLETION_SERVICE = "RefundCompletionRetryService";
+
+        private final InternalCallContextFactory internalCallContextFactory;
+        private final Clock clock;
+        private final PaymentConfig config;
+
+        @Inject
+        public RefundCompletionRetryServiceScheduler(final NotificationQueueService notificationQueueService,
+                                                     final InternalCallContextFactory internalCallContextFactory,
+                                                     final Clock clock,
+                                                     final PaymentConfig config) {
+            super(notificationQueueService, internalCallContextFactory);
+            this.internalCallContextFactory = internalCallContextFactory;
+            this.clock = clock;
+            this.config = config;
+        }
+
+        @Override
+        public String getQueueName() {
+            return QUEUE_NAME;
+        }
+
+        public boolean scheduleRetry(final UUID refundId) {
+            return scheduleRetry(refundId, 1);
+        }
+
+        public boolean scheduleRetry(final UUID refundId, final int attemptNumber) {
+            return scheduleRetryInternal(new RefundCompletionNotificationKey(refundId, attemptNumber), refundId, getNextRetryDate(), null);
+        }
+
+        public boolean scheduleRetryFromTransaction(final UUID refundId, final EntitySqlDaoWrapperFactory<EntitySqlDao> transactionalDao) {
+            return scheduleRetryInternal(new RefundCompletionNotificationKey(refundId, 1), refundId, getNextRetryDate(), transactionalDao);
+        }
+
+        private DateTime getNextRetryDate() {
+            return clock.getUTCNow().plusSeconds(config.getRefundCompletionRetryDelay());
+        }
+
+        // The notification key is the refund id
+        @Override
+        protected InternalCallContext createCallContextFromPaymentId(final UUID refundId) {
+            return internalCallContextFactory.createInternalCallContext(refundId, ObjectType.REFUND, REFUND_COMPLETION_SERVICE, CallOrigin.INTERNAL, UserType.SYSTEM, null);
+        }
+    }
+
+    @Override
+    public String getQueueName() {
+        return QUEUE_NAME;
+    }
+}
@@ -23,6 +23,7 @@ CREATE UNIQUE INDEX payments_id ON payments(id);
 CREATE INDEX payments_inv ON payments(invoice_id);
 CREATE INDEX payments_accnt ON payments(account_id);
 CREATE INDEX payments_tenant_account_record_id ON payments(tenant_record_id, account_record_id);
+CREATE INDEX payments_status ON payments(payment_status, record_id);
 
 DROP TABLE IF EXISTS payment_history; 
 CREATE TABLE payment_history (
@@ -178,6 +179,31 @@ CREATE TABLE refund_history (
 CREATE INDEX refund_history_target_record_id ON refund_history(target_record_id);
 CREATE INDEX refund_history_tenant_account_record_id ON refund_history(tenant_record_id, account_record_id);
 
+DROP TABLE IF EXISTS refund_item_adjustments;
+CREATE TABLE refund_item_adjustments (
+    record_id int(11) unsigned NOT NULL AUTO_INCREMENT,
+    refund_id char(36) NOT NULL,
+    invoice_item_id char(36) NOT NULL,
+    amount numeric(10,4),
+    account_record_id int(11) unsigned default null,
+    tenant_record_id int(11) unsigned default null,
+    PRIMARY KEY(record_id)
+);
+CREATE INDEX refund_item_adjustments_refund_id ON refund_item_adjustments(refund_id);
+
+DROP TABLE IF EXISTS payment_allocations;
+CREATE TABLE payment_allocations (
+    record_id int(11) unsigned NOT NULL AUTO_INCREMENT,
+    payment_id char(36) NOT NULL,
+    invoice_id char(36) NOT NULL,
+    amount numeric(10,4) NOT NULL,
+    account_record_id int(11) unsigned default null,
+    tenant_record_id int(11) unsigned default null,
+    PRIMARY KEY(record_id)
+);
+CREATE INDEX payment_allocations_payment_id ON payment_allocations(payment_id);
+CREATE INDEX payment_allocations_invoice_id ON payment_allocations(invoice_id);
+
 
 
 
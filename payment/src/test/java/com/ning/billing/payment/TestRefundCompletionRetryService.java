@@ -0,0 +1,226 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.payment;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.LocalDate;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ning.billing.account.api.Account;
+import com.ning.billing.catalog.api.Currency;
+import com.ning.billing.invoice.api.Invoice;
+import com.ning.billing.invoice.api.InvoicePayment;
+import com.ning.billing.payment.api.Payment;
+import com.ning.billing.payment.core.RefundProcessor;
+import com.ning.billing.payment.dao.RefundModelDao;
+import com.ning.billing.payment.dao.RefundModelDao.RefundStatus;
+import com.ning.billing.payment.glue.DefaultPaymentService;
+import com.ning.billing.payment.retry.RefundCompletionRetryService;
+import com.ning.billing.util.callcontext.InternalCallContext;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+public class TestRefundCompletionRetryService extends PaymentTestSuiteWithEmbeddedDB {
+
+    @Inject
+    private RefundCompletionRetryService refundCompletionRetryService;
+    @Inject
+    private RefundProcessor refundProcessor;
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Override
+    @BeforeClass(groups = "slow")
+    protected void beforeClass() throws Exception {
+        configSource.setProperty("killbill.payment.refund.completion.max.attempts", String.valueOf(MAX_ATTEMPTS));
+        super.beforeClass();
+    }
+
+    @Override
+    @BeforeMethod(groups = "slow")
+    public void beforeMethod() throws Exception {
+        super.beforeMethod();
+        refundCompletionRetryService.initialize(DefaultPaymentService.SERVICE_NAME);
+        refundCompletionRetryService.start();
+    }
+
+    @Override
+    @AfterMethod(groups = "slow")
+    public void afterMethod() throws Exception {
+        refundCompletionRetryService.stop();
+        super.afterMethod();
+    }
+
+    @Test(groups = "slow")
+    public void testRefundCompletedFromNotification() throws Exception {
+        final Account account = testHelper.createTestAccount("bob@example.com", true);
+        final BigDecimal amount = new BigDecimal("10.00");
+        final LocalDate startDate = clock.getUTCToday();
+        final Invoice invoice = testHelper.createTestInvoice(account, startDate, Currency.USD, callContext,
+                                                             new MockRecurringInvoiceItem(UUID.randomUUID(), account.getId(), UUID.randomUUID(), UUID.randomUUID(),
+                                                                                          "test plan", "test phase", startDate, startDate.plusMonths(1),
+                                                                                          amount, new BigDecimal("1.0"), Currency.USD));
+        final Payment payment = paymentProcessor.createPayment(account, invoice.getId(), amount, internalCallContext, false, false);
+        Mockito.when(invoiceApi.getInvoiceForPaymentId(Mockito.eq(payment.getId()), Mockito.<InternalTenantContext>any())).thenReturn(invoice);
+
+        // The invoice system fails twice (e.g. database errors), then recovers
+        final AtomicInteger nbInvoiceRefundCalls = new AtomicInteger();
+        Mockito.when(invoiceApi.createRefund(Mockito.eq(payment.getId()), Mockito.<BigDecimal>any(), Mockito.anyBoolean(), Mockito.<Map<UUID, BigDecimal>>any(),
+                                             Mockito.<UUID>any(), Mockito.<InternalCallContext>any())).thenAnswer(new Answer<InvoicePayment>() {
+            @Override
+            public InvoicePayment answer(final InvocationOnMock invocation) throws Throwable {
+                if (nbInvoiceRefundCalls.incrementAndGet() <= 2) {
+                    throw new IllegalStateException("Invoice system unavailable");
+                }
+                return null;
+            }
+        });
+
+        try {
+            refundProcessor.createRefund(account, payment.getId(), amount, false, ImmutableMap.<UUID, BigDecimal>of(), internalCallContext);
+            Assert.fail("The invoice system should have failed");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(nbInvoiceRefundCalls.get(), 1);
+        }
+        // Processed by the plugin, not reflected in the invoice system yet
+        final UUID refundId = getRefund(payment.getId()).getId();
+        Assert.assertEquals(getRefund(payment.getId()).getRefundStatus(), RefundStatus.PLUGIN_COMPLETED);
+
+        // First completion attempt, which fails: the refund is left as is and the completion rescheduled
+        clock.addDeltaFromReality((paymentConfig.getRefundCompletionRetryDelay() + 1) * 1000L);
+        await().atMost(5, SECONDS).until(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return nbInvoiceRefundCalls.get() >= 2;
+            }
+        });
+        Assert.assertEquals(getRefund(payment.getId()).getRefundStatus(), RefundStatus.PLUGIN_COMPLETED);
+
+        // Second completion attempt (keep moving the clock, as the completion may not have been rescheduled yet)
+        await().atMost(10, SECONDS).until(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                if (getRefund(payment.getId()).getRefundStatus() == RefundStatus.COMPLETED) {
+                    return true;
+                }
+                clock.addDeltaFromReality((paymentConfig.getRefundCompletionRetryDelay() + 1) * 1000L);
+                return false;
+            }
+        });
+        Assert.assertEquals(nbInvoiceRefundCalls.get(), 3);
+        Mockito.verify(invoiceApi, Mockito.times(3)).createRefund(Mockito.eq(payment.getId()), Mockito.eq(amount), Mockito.eq(false), Mockito.<Map<UUID, BigDecimal>>any(),
+                                                                  Mockito.eq(refundId), Mockito.<InternalCallContext>any());
+    }
+
+    @Test(groups = "slow")
+    public void testRefundCompletionGivesUpAndIsRescheduledAtStartup() throws Exception {
+        final Account account = testHelper.createTestAccount("bobby@example.com", true);
+        final BigDecimal amount = new BigDecimal("10.00");
+        final LocalDate startDate = clock.getUTCToday();
+        final Invoice invoice = testHelper.createTestInvoice(account, startDate, Currency.USD, callContext,
+                                                             new MockRecurringInvoiceItem(UUID.randomUUID(), account.getId(), UUID.randomUUID(), UUID.randomUUID(),
+                                                                                          "test plan", "test phase", startDate, startDate.plusMonths(1),
+                                                                                          amount, new BigDecimal("1.0"), Currency.USD));
+        final Payment payment = paymentProcessor.createPayment(account, invoice.getId(), amount, internalCallContext, false, false);
+        Mockito.when(invoiceApi.getInvoiceForPaymentId(Mockito.eq(payment.getId()), Mockito.<InternalTenantContext>any())).thenReturn(invoice);
+
+        // The invoice system is down until told otherwise
+        final AtomicBoolean invoiceSystemAvailable = new AtomicBoolean(false);
+        final AtomicInteger nbInvoiceRefundCalls = new AtomicInteger();
+        Mockito.when(invoiceApi.createRefund(Mockito.eq(payment.getId()), Mockito.<BigDecimal>any(), Mockito.anyBoolean(), Mockito.<Map<UUID, BigDecimal>>any(),
+                                             Mockito.<UUID>any(), Mockito.<InternalCallContext>any())).thenAnswer(new Answer<InvoicePayment>() {
+            @Override
+            public InvoicePayment answer(final InvocationOnMock invocation) throws Throwable {
+                nbInvoiceRefundCalls.incrementAndGet();
+                if (!invoiceSystemAvailable.get()) {
+                    throw new IllegalStateException("Invoice system unavailable");
+                }
+                return null;
+            }
+        });
+
+        try {
+            refundProcessor.createRefund(account, payment.getId(), amount, false, ImmutableMap.<UUID, BigDecimal>of(), internalCallContext);
+            Assert.fail("The invoice system should have failed");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(nbInvoiceRefundCalls.get(), 1);
+        }
+
+        // All completion attempts fail
+        await().atMost(15, SECONDS).until(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                if (nbInvoiceRefundCalls.get() >= 1 + MAX_ATTEMPTS) {
+                    return true;
+                }
+                clock.addDeltaFromReality((paymentConfig.getRefundCompletionRetryDelay() + 1) * 1000L);
+                return false;
+            }
+        });
+
+        // No more attempts after that
+        for (int i = 0; i < 3; i++) {
+            clock.addDeltaFromReality((paymentConfig.getRefundCompletionRetryDelay() + 1) * 1000L);
+            Thread.sleep(1000);
+        }
+        Assert.assertEquals(nbInvoiceRefundCalls.get(), 1 + MAX_ATTEMPTS);
+        Assert.assertEquals(getRefund(payment.getId()).getRefundStatus(), RefundStatus.PLUGIN_COMPLETED);
+
+        // Once the invoice system is fixed, a restart picks the refund up again
+        invoiceSystemAvailable.set(true);
+        refundCompletionRetryService.stop();
+        refundCompletionRetryService.initialize(DefaultPaymentService.SERVICE_NAME);
+        refundCompletionRetryService.start();
+
+        await().atMost(10, SECONDS).until(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                if (getRefund(payment.getId()).getRefundStatus() == RefundStatus.COMPLETED) {
+                    return true;
+                }
+                clock.addDeltaFromReality((paymentConfig.getRefundCompletionRetryDelay() + 1) * 1000L);
+                return false;
+            }
+        });
+        Assert.assertEquals(nbInvoiceRefundCalls.get(), 2 + MAX_ATTEMPTS);
+    }
+
+    private RefundModelDao getRefund(final UUID paymentId) {
+        final List<RefundModelDao> refunds = paymentDao.getRefundsForPayment(paymentId, internalCallContext);
+        Assert.assertEquals(refunds.size(), 1);
+        return refunds.get(0);
+    }
+}
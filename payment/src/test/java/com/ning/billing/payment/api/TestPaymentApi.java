@@ -19,9 +19,12 @@ package com.ning.billing.payment.api;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
+import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,10 +36,15 @@ import com.ning.billing.ErrorCode;
 import com.ning.billing.account.api.Account;
 import com.ning.billing.catalog.api.Currency;
 import com.ning.billing.invoice.api.Invoice;
+import com.ning.billing.payment.MockInvoice;
 import com.ning.billing.payment.MockRecurringInvoiceItem;
 import com.ning.billing.payment.PaymentTestSuiteNoDB;
 import com.ning.billing.payment.provider.DefaultNoOpPaymentMethodPlugin;
 import com.ning.billing.payment.provider.MockPaymentProviderPlugin;
+import com.ning.billing.util.callcontext.InternalCallContext;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+
+import com.google.common.collect.ImmutableList;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
@@ -141,6 +149,40 @@ public class TestPaymentApi extends PaymentTestSuiteNoDB {
         }
     }
 
+    @Test(groups = "fast")
+    public void testCollectAccountBalance() throws Exception {
+        final Invoice oldInvoice = createUnpaidInvoice(1, new BigDecimal("10"));
+        final Invoice newInvoice = createUnpaidInvoice(2, new BigDecimal("5"));
+        Mockito.when(invoiceApi.getUnpaidInvoicesByAccountId(Mockito.eq(account.getId()), Mockito.<LocalDate>any(), Mockito.<InternalTenantContext>any()))
+               .thenReturn(ImmutableList.<Invoice>of(newInvoice, oldInvoice));
+
+        final Payment payment = paymentProcessor.collectAccountBalance(account.getId(), internalCallContext);
+        assertNotNull(payment);
+        assertEquals(payment.getPaymentStatus(), PaymentStatus.SUCCESS);
+        assertEquals(payment.getAmount().compareTo(new BigDecimal("15")), 0);
+        assertEquals(payment.getAttempts().size(), 1);
+        // The payment is recorded against the oldest invoice, and allocated to both
+        assertEquals(payment.getInvoiceId(), oldInvoice.getId());
+        // Both allocations are recorded at once
+        final ArgumentCaptor<Map> amountsByInvoiceId = ArgumentCaptor.forClass(Map.class);
+        Mockito.verify(invoiceApi).notifyOfPayment(Mockito.eq(payment.getId()), amountsByInvoiceId.capture(), Mockito.eq(Currency.USD),
+                                                   Mockito.<DateTime>any(), Mockito.<InternalCallContext>any());
+        Mockito.verify(invoiceApi, Mockito.never()).notifyOfPayment(Mockito.<UUID>any(), Mockito.<BigDecimal>any(), Mockito.<Currency>any(), Mockito.<UUID>any(),
+                                                                    Mockito.<DateTime>any(), Mockito.<InternalCallContext>any());
+        assertEquals(amountsByInvoiceId.getValue().size(), 2);
+        assertEquals(((BigDecimal) amountsByInvoiceId.getValue().get(oldInvoice.getId())).compareTo(new BigDecimal("10")), 0);
+        assertEquals(((BigDecimal) amountsByInvoiceId.getValue().get(newInvoice.getId())).compareTo(new BigDecimal("5")), 0);
+    }
+
+    private Invoice createUnpaidInvoice(final Integer invoiceNumber, final BigDecimal amount) throws Exception {
+        final LocalDate now = clock.getUTCToday();
+        final Invoice invoice = new MockInvoice(UUID.randomUUID(), account.getId(), invoiceNumber, now, now, Currency.USD, false);
+        invoice.addInvoiceItem(new MockRecurringInvoiceItem(invoice.getId(), account.getId(), UUID.randomUUID(), UUID.randomUUID(),
+                                                            "test plan", "test phase", now, now.plusMonths(1), amount, amount, Currency.USD));
+        Mockito.when(invoiceApi.getInvoiceById(Mockito.eq(invoice.getId()), Mockito.<InternalTenantContext>any())).thenReturn(invoice);
+        return invoice;
+    }
+
     @Test(groups = "fast")
     public void testPaymentMethods() throws Exception {
         List<PaymentMethod> methods = paymentApi.getPaymentMethods(account, false, callContext);
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.payment.core;
+
+import java.math.BigDecimal;
+
+import org.joda.time.DateTime;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ning.billing.account.api.Account;
+import com.ning.billing.catalog.api.Currency;
+import com.ning.billing.invoice.api.Invoice;
+import com.ning.billing.payment.PaymentTestSuiteNoDB;
+import com.ning.billing.payment.api.PaymentStatus;
+import com.ning.billing.payment.dao.PaymentAttemptModelDao;
+import com.ning.billing.payment.dao.PaymentDao;
+import com.ning.billing.payment.dao.PaymentModelDao;
+import com.ning.billing.payment.glue.DefaultPaymentService;
+import com.ning.billing.payment.provider.MockPaymentProviderPlugin;
+
+import com.google.inject.Inject;
+
+public class TestJanitor extends PaymentTestSuiteNoDB {
+
+    @Inject
+    private Janitor janitor;
+    @Inject
+    private PaymentDao paymentDao;
+
+    private MockPaymentProviderPlugin mockPaymentProviderPlugin;
+
+    @Override
+    @BeforeMethod(groups = "fast")
+    public void beforeMethod() throws Exception {
+        super.beforeMethod();
+        retryService.initialize(DefaultPaymentService.SERVICE_NAME);
+        retryService.start();
+
+        mockPaymentProviderPlugin = (MockPaymentProviderPlugin) registry.getServiceForName(MockPaymentProviderPlugin.PLUGIN_NAME);
+        mockPaymentProviderPlugin.clear();
+    }
+
+    @Override
+    @AfterMethod(groups = "fast")
+    public void afterMethod() throws Exception {
+        super.afterMethod();
+        retryService.stop();
+    }
+
+    @Test(groups = "fast")
+    public void testReconcileProcessedPayment() throws Exception {
+        final Account account = testHelper.createTestAccount("janitor@gmail.com", true);
+        final PaymentModelDao payment = createPendingPayment(account, clock.getUTCNow().minusHours(1));
+        // The gateway charged the card, but Kill Bill never recorded the outcome
+        mockPaymentProviderPlugin.processPayment(account.getId(), payment.getId(), account.getPaymentMethodId(), payment.getAmount(), payment.getCurrency(), callContext);
+
+        final long nbProcessedPayments = janitor.getNbProcessedPayments();
+        Assert.assertTrue(janitor.reconcilePendingPayments() >= 1);
+        Assert.assertEquals(janitor.getNbProcessedPayments(), nbProcessedPayments + 1);
+        Assert.assertEquals(paymentDao.getPayment(payment.getId(), internalCallContext).getPaymentStatus(), PaymentStatus.SUCCESS);
+
+        // Nothing left to do for that payment
+        janitor.reconcilePendingPayments();
+        Assert.assertEquals(janitor.getNbProcessedPayments(), nbProcessedPayments + 1);
+    }
+
+    @Test(groups = "fast")
+    public void testReconcileFailedPayment() throws Exception {
+        final Account account = testHelper.createTestAccount("janitor@gmail.com", true);
+        final PaymentModelDao payment = createPendingPayment(account, clock.getUTCNow().minusHours(1));
+        mockPaymentProviderPlugin.makeNextPaymentFailWithError();
+        mockPaymentProviderPlugin.processPayment(account.getId(), payment.getId(), account.getPaymentMethodId(), payment.getAmount(), payment.getCurrency(), callContext);
+
+        final long nbFailedPayments = janitor.getNbFailedPayments();
+        janitor.reconcilePendingPayments();
+        Assert.assertEquals(janitor.getNbFailedPayments(), nbFailedPayments + 1);
+        Assert.assertEquals(paymentDao.getPayment(payment.getId(), internalCallContext).getPaymentStatus(), PaymentStatus.PAYMENT_FAILURE);
+    }
+
+    @Test(groups = "fast")
+    public void testLeaveUnknownAndRecentPaymentsAlone() throws Exception {
+        final Account account = testHelper.createTestAccount("janitor@gmail.com", true);
+        // The plugin never heard of that one
+        final PaymentModelDao unknownPayment = createPendingPayment(account, clock.getUTCNow().minusHours(1));
+        // That one may still be in flight
+        final PaymentModelDao recentPayment = createPendingPayment(account, clock.getUTCNow());
+        mockPaymentProviderPlugin.processPayment(account.getId(), recentPayment.getId(), account.getPaymentMethodId(), recentPayment.getAmount(), recentPayment.getCurrency(), callContext);
+
+        final long nbUnresolvedPayments = janitor.getNbUnresolvedPayments();
+        final long nbProcessedPayments = janitor.getNbProcessedPayments();
+        janitor.reconcilePendingPayments();
+        Assert.assertTrue(janitor.getNbUnresolvedPayments() >= nbUnresolvedPayments + 1);
+        Assert.assertEquals(janitor.getNbProcessedPayments(), nbProcessedPayments);
+        Assert.assertEquals(paymentDao.getPayment(unknownPayment.getId(), internalCallContext).getPaymentStatus(), PaymentStatus.UNKNOWN);
+        Assert.assertEquals(paymentDao.getPayment(recentPayment.getId(), internalCallContext).getPaymentStatus(), PaymentStatus.UNKNOWN);
+    }
+
+    @Test(groups = "fast")
+    public void testAbortPaymentsUnresolvedForTooLong() throws Exception {
+        final Account account = testHelper.createTestAccount("janitor@gmail.com", true);
+        // The plugin never heard of that one, and won't ever
+        final PaymentModelDao payment = createPendingPayment(account, clock.getUTCNow().minusDays(10));
+
+        final long nbAbortedPayments = janitor.getNbAbortedPayments();
+        janitor.reconcilePendingPayments();
+        Assert.assertEquals(janitor.getNbAbortedPayments(), nbAbortedPayments + 1);
+        Assert.assertEquals(paymentDao.getPayment(payment.getId(), internalCallContext).getPaymentStatus(), PaymentStatus.PLUGIN_FAILURE_ABORTED);
+
+        // The janitor doesn't look at it anymore
+        janitor.reconcilePendingPayments();
+        Assert.assertEquals(janitor.getNbAbortedPayments(), nbAbortedPayments + 1);
+    }
+
+    @Test(groups = "fast")
+    public void testPluginFailureRetryDoesNotChargeTwice() throws Exception {
+        final Account account = testHelper.createTestAccount("janitor@gmail.com", true);
+        final PaymentModelDao payment = createPendingPayment(account, clock.getUTCNow().minusHours(1));
+        final PaymentAttemptModelDao attempt = paymentDao.getAttemptsForPayment(payment.getId(), internalCallContext).get(0);
+        paymentDao.updateStatusAndEffectiveDateForPaymentWithAttempt(payment.getId(), PaymentStatus.PLUGIN_FAILURE, payment.getEffectiveDate(), attempt.getId(),
+                                                                     null, "Plugin timeout", internalCallContext);
+        // The gateway charged the card, but Kill Bill recorded a plugin failure
+        mockPaymentProviderPlugin.processPayment(account.getId(), payment.getId(), account.getPaymentMethodId(), payment.getAmount(), payment.getCurrency(), callContext);
+        // If the retry went to the gateway again, that second charge would fail
+        mockPaymentProviderPlugin.makeNextPaymentFailWithError();
+
+        paymentProcessor.retryPluginFailure(payment.getId(), internalCallContext);
+
+        Assert.assertEquals(paymentDao.getPayment(payment.getId(), internalCallContext).getPaymentStatus(), PaymentStatus.SUCCESS);
+        Assert.assertEquals(paymentDao.getAttemptsForPayment(payment.getId(), internalCallContext).size(), 1);
+    }
+
+    private PaymentModelDao createPendingPayment(final Account account, final DateTime effectiveDate) throws Exception {
+        final Invoice invoice = testHelper.createTestInvoice(account, clock.getUTCToday(), Currency.USD, callContext);
+        final BigDecimal amount = new BigDecimal("10.00");
+        final PaymentModelDao payment = new PaymentModelDao(account.getId(), invoice.getId(), account.getPaymentMethodId(), amount, Currency.USD, effectiveDate);
+        final PaymentAttemptModelDao attempt = new PaymentAttemptModelDao(account.getId(), invoice.getId(), payment.getId(), effectiveDate, amount);
+        return paymentDao.insertPaymentWithAttempt(payment, attempt, internalCallContext);
+    }
+}
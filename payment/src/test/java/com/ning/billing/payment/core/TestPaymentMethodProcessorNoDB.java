@@ -16,20 +16,48 @@
 
 package com.ning.billing.payment.core;
 
+import java.math.BigDecimal;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import org.joda.time.LocalDate;
 
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import com.ning.billing.account.api.Account;
+import com.ning.billing.catalog.api.Currency;
+import com.ning.billing.invoice.api.Invoice;
+import com.ning.billing.payment.MockRecurringInvoiceItem;
+import com.ning.billing.osgi.api.OSGIServiceDescriptor;
 import com.ning.billing.payment.PaymentTestSuiteNoDB;
+import com.ning.billing.payment.api.Payment;
 import com.ning.billing.payment.api.PaymentMethod;
+import com.ning.billing.payment.api.PaymentMethodPlugin;
+import com.ning.billing.payment.api.PaymentStatus;
+import com.ning.billing.payment.plugin.api.PaymentPluginApi;
+import com.ning.billing.payment.plugin.api.PaymentPluginApiException;
 import com.ning.billing.payment.provider.ExternalPaymentProviderPlugin;
+import com.ning.billing.util.callcontext.TenantContext;
+
+import com.google.common.collect.ImmutableList;
 
 public class TestPaymentMethodProcessorNoDB extends PaymentTestSuiteNoDB {
 
+    @Override
+    @BeforeClass(groups = "fast")
+    protected void beforeClass() throws Exception {
+        configSource.setProperty("killbill.payment.plugin.search.timeout", "2s");
+        // A single plugin thread: a search holding it would block all payments
+        configSource.setProperty("killbill.payment.plugin.threads.nb", "1");
+        super.beforeClass();
+    }
+
     @Test(groups = "fast")
     public void testGetExternalPaymentProviderPlugin() throws Exception {
         final UUID accountId = UUID.randomUUID();
@@ -59,4 +87,104 @@ public class TestPaymentMethodProcessorNoDB extends PaymentTestSuiteNoDB {
             Assert.assertEquals(foundPaymentMethods.get(0).getId(), externalPaymentMethodId);
         }
     }
+
+    @Test(groups = "fast")
+    public void testSearchPaymentMethodsWithFailingPlugins() throws Exception {
+        final Account account = testHelper.createTestAccount("search@gmail.com", true);
+
+        final PaymentMethodPlugin knownPaymentMethod = Mockito.mock(PaymentMethodPlugin.class);
+        Mockito.when(knownPaymentMethod.getKbPaymentMethodId()).thenReturn(account.getPaymentMethodId());
+        final PaymentMethodPlugin unknownPaymentMethod = Mockito.mock(PaymentMethodPlugin.class);
+        Mockito.when(unknownPaymentMethod.getKbPaymentMethodId()).thenReturn(UUID.randomUUID());
+
+        final PaymentPluginApi answeringPlugin = Mockito.mock(PaymentPluginApi.class);
+        Mockito.when(answeringPlugin.searchPaymentMethods(Mockito.anyString(), Mockito.<TenantContext>any()))
+               .thenReturn(ImmutableList.<PaymentMethodPlugin>of(knownPaymentMethod, unknownPaymentMethod));
+        final PaymentPluginApi failingPlugin = Mockito.mock(PaymentPluginApi.class);
+        Mockito.when(failingPlugin.searchPaymentMethods(Mockito.anyString(), Mockito.<TenantContext>any()))
+               .thenThrow(new PaymentPluginApiException("", "search error"));
+        final PaymentPluginApi hangingPlugin = Mockito.mock(PaymentPluginApi.class);
+        Mockito.when(hangingPlugin.searchPaymentMethods(Mockito.anyString(), Mockito.<TenantContext>any()))
+               .thenAnswer(new Answer<List<PaymentMethodPlugin>>() {
+                   @Override
+                   public List<PaymentMethodPlugin> answer(final InvocationOnMock invocation) throws Throwable {
+                       Thread.sleep(60000);
+                       return ImmutableList.<PaymentMethodPlugin>of();
+                   }
+               });
+
+        registerPlugin("__answering__", answeringPlugin);
+        registerPlugin("__failing__", failingPlugin);
+        registerPlugin("__hanging__", hangingPlugin);
+        try {
+            final long startMs = System.currentTimeMillis();
+            final List<PaymentMethod> paymentMethods = paymentMethodProcessor.searchPaymentMethods("search", internalCallContext);
+            // The hanging plugin doesn't hold the search past the deadline
+            Assert.assertTrue(System.currentTimeMillis() - startMs < 30000);
+            Assert.assertEquals(paymentMethods.size(), 1);
+            Assert.assertEquals(paymentMethods.get(0).getId(), account.getPaymentMethodId());
+            Assert.assertEquals(paymentMethods.get(0).getPluginDetail(), knownPaymentMethod);
+        } finally {
+            registry.unregisterService("__answering__");
+            registry.unregisterService("__failing__");
+            registry.unregisterService("__hanging__");
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testHangingSearchDoesNotDelayPayments() throws Exception {
+        final Account account = testHelper.createTestAccount("search-hanging@gmail.com", true);
+
+        // Plugin which ignores the cancellation of the search
+        final CountDownLatch releaseSearch = new CountDownLatch(1);
+        final PaymentPluginApi hangingPlugin = Mockito.mock(PaymentPluginApi.class);
+        Mockito.when(hangingPlugin.searchPaymentMethods(Mockito.anyString(), Mockito.<TenantContext>any()))
+               .thenAnswer(new Answer<List<PaymentMethodPlugin>>() {
+                   @Override
+                   public List<PaymentMethodPlugin> answer(final InvocationOnMock invocation) throws Throwable {
+                       while (true) {
+                           try {
+                               releaseSearch.await();
+                               return ImmutableList.<PaymentMethodPlugin>of();
+                           } catch (InterruptedException ignored) {
+                           }
+                       }
+                   }
+               });
+
+        registerPlugin("__hanging__", hangingPlugin);
+        try {
+            paymentMethodProcessor.searchPaymentMethods("search", internalCallContext);
+
+            // The search is still running in the plugin, the payment goes through regardless
+            final LocalDate now = clock.getUTCToday();
+            final BigDecimal amount = new BigDecimal("10.00");
+            final Invoice invoice = testHelper.createTestInvoice(account, now, Currency.USD, callContext);
+            invoice.addInvoiceItem(new MockRecurringInvoiceItem(invoice.getId(), account.getId(), UUID.randomUUID(), UUID.randomUUID(),
+                                                                "test plan", "test phase", now, now.plusMonths(1),
+                                                                amount, new BigDecimal("1.0"), Currency.USD));
+
+            final long startMs = System.currentTimeMillis();
+            final Payment payment = paymentProcessor.createPayment(account, invoice.getId(), amount, internalCallContext, false, false);
+            Assert.assertTrue(System.currentTimeMillis() - startMs < paymentConfig.getPaymentMethodSearchTimeout().getMillis());
+            Assert.assertEquals(payment.getPaymentStatus(), PaymentStatus.SUCCESS);
+        } finally {
+            releaseSearch.countDown();
+            registry.unregisterService("__hanging__");
+        }
+    }
+
+    private void registerPlugin(final String pluginName, final PaymentPluginApi pluginApi) {
+        registry.registerService(new OSGIServiceDescriptor() {
+            @Override
+            public String getPluginSymbolicName() {
+                return null;
+            }
+
+            @Override
+            public String getRegistrationName() {
+                return pluginName;
+            }
+        }, pluginApi);
+    }
 }
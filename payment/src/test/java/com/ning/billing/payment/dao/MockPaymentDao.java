@@ -16,10 +16,13 @@
 
 package com.ning.billing.payment.dao;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -33,11 +36,13 @@ import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalTenantContext;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 public class MockPaymentDao implements PaymentDao {
 
     private final Map<UUID, PaymentModelDao> payments = new HashMap<UUID, PaymentModelDao>();
     private final Map<UUID, PaymentAttemptModelDao> attempts = new HashMap<UUID, PaymentAttemptModelDao>();
+    private final Map<UUID, Map<UUID, BigDecimal>> allocations = new HashMap<UUID, Map<UUID, BigDecimal>>();
 
     @Override
     public PaymentModelDao insertPaymentWithAttempt(final PaymentModelDao paymentInfo, final PaymentAttemptModelDao attempt,
@@ -49,6 +54,23 @@ public class MockPaymentDao implements PaymentDao {
         return paymentInfo;
     }
 
+    @Override
+    public PaymentModelDao insertPaymentWithAttemptAndAllocations(final PaymentModelDao paymentInfo, final PaymentAttemptModelDao attempt,
+                                                                  final Map<UUID, BigDecimal> allocations, final InternalCallContext context) {
+        synchronized (this) {
+            this.allocations.put(paymentInfo.getId(), new LinkedHashMap<UUID, BigDecimal>(allocations));
+        }
+        return insertPaymentWithAttempt(paymentInfo, attempt, context);
+    }
+
+    @Override
+    public Map<UUID, BigDecimal> getPaymentAllocations(final UUID paymentId, final InternalTenantContext context) {
+        synchronized (this) {
+            final Map<UUID, BigDecimal> paymentAllocations = allocations.get(paymentId);
+            return paymentAllocations == null ? ImmutableMap.<UUID, BigDecimal>of() : paymentAllocations;
+        }
+    }
+
     @Override
     public PaymentAttemptModelDao insertNewAttemptForPayment(final UUID paymentId, final PaymentAttemptModelDao attempt, final InternalCallContext context) {
         synchronized (this) {
@@ -109,6 +131,20 @@ public class MockPaymentDao implements PaymentDao {
         return payments.get(paymentId);
     }
 
+    @Override
+    public List<PaymentModelDao> getPaymentsByStatusAcrossTenants(final PaymentStatus paymentStatus, final DateTime effectiveBefore, final Integer fromPaymentNumber, final int limit) {
+        // Payment numbers aren't generated in memory, so fromPaymentNumber is ignored
+        final List<PaymentModelDao> result = new ArrayList<PaymentModelDao>();
+        synchronized (this) {
+            for (final PaymentModelDao cur : payments.values()) {
+                if (result.size() < limit && cur.getPaymentStatus() == paymentStatus && !cur.getEffectiveDate().isAfter(effectiveBefore)) {
+                    result.add(cur);
+                }
+            }
+        }
+        return result;
+    }
+
     @Override
     public List<PaymentAttemptModelDao> getAttemptsForPayment(final UUID paymentId, final InternalTenantContext context) {
         final List<PaymentAttemptModelDao> result = new ArrayList<PaymentAttemptModelDao>();
@@ -140,6 +176,17 @@ public class MockPaymentDao implements PaymentDao {
         return null;
     }
 
+    @Override
+    public List<PaymentMethodModelDao> getPaymentMethodsIncludedDeleted(final Collection<UUID> paymentMethodIds, final InternalTenantContext context) {
+        final List<PaymentMethodModelDao> result = new ArrayList<PaymentMethodModelDao>();
+        for (final PaymentMethodModelDao cur : paymentMethods) {
+            if (paymentMethodIds.contains(cur.getId())) {
+                result.add(cur);
+            }
+        }
+        return result;
+    }
+
     @Override
     public List<PaymentMethodModelDao> getPaymentMethods(final UUID accountId, final InternalTenantContext context) {
         final List<PaymentMethodModelDao> result = new ArrayList<PaymentMethodModelDao>();
@@ -174,7 +221,7 @@ public class MockPaymentDao implements PaymentDao {
     }
 
     @Override
-    public RefundModelDao insertRefund(final RefundModelDao refundInfo, final InternalCallContext context) {
+    public RefundModelDao insertRefund(final RefundModelDao refundInfo, final Map<UUID, BigDecimal> invoiceItemIdsWithAmounts, final InternalCallContext context) {
         return null;
     }
 
@@ -182,6 +229,20 @@ public class MockPaymentDao implements PaymentDao {
     public void updateRefundStatus(final UUID refundId, final RefundStatus status, final InternalCallContext context) {
     }
 
+    @Override
+    public void markRefundAsPluginCompleted(final UUID refundId, final InternalCallContext context) {
+    }
+
+    @Override
+    public List<RefundModelDao> getRefundsByStatusAcrossTenants(final RefundStatus refundStatus, final DateTime updatedBefore) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Map<UUID, BigDecimal> getRefundItemAdjustments(final UUID refundId, final InternalTenantContext context) {
+        return ImmutableMap.<UUID, BigDecimal>of();
+    }
+
     @Override
     public RefundModelDao getRefund(final UUID refundId, final InternalTenantContext context) {
         return null;
@@ -18,7 +18,11 @@ package com.ning.billing.payment.dao;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
@@ -32,6 +36,8 @@ import com.ning.billing.payment.api.PaymentStatus;
 import com.ning.billing.payment.dao.RefundModelDao.RefundStatus;
 import com.ning.billing.payment.provider.MockPaymentProviderPlugin;
 
+import com.google.common.collect.ImmutableMap;
+
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
@@ -50,7 +56,7 @@ public class TestPaymentDao extends PaymentTestSuiteWithEmbeddedDB {
 
         final RefundModelDao refund1 = new RefundModelDao(accountId, paymentId1, amount1, currency, true);
 
-        paymentDao.insertRefund(refund1, internalCallContext);
+        paymentDao.insertRefund(refund1, ImmutableMap.<UUID, BigDecimal>of(), internalCallContext);
         final RefundModelDao refundCheck = paymentDao.getRefund(refund1.getId(), internalCallContext);
         assertNotNull(refundCheck);
         assertEquals(refundCheck.getAccountId(), accountId);
@@ -64,7 +70,7 @@ public class TestPaymentDao extends PaymentTestSuiteWithEmbeddedDB {
         final UUID paymentId2 = UUID.randomUUID();
 
         RefundModelDao refund2 = new RefundModelDao(accountId, paymentId2, amount2, currency, true);
-        paymentDao.insertRefund(refund2, internalCallContext);
+        paymentDao.insertRefund(refund2, ImmutableMap.<UUID, BigDecimal>of(), internalCallContext);
         paymentDao.updateRefundStatus(refund2.getId(), RefundStatus.COMPLETED, internalCallContext);
 
         List<RefundModelDao> refundChecks = paymentDao.getRefundsForPayment(paymentId1, internalCallContext);
@@ -88,6 +94,58 @@ public class TestPaymentDao extends PaymentTestSuiteWithEmbeddedDB {
         }
     }
 
+    @Test(groups = "slow")
+    public void testRefundItemAdjustments() {
+        final UUID accountId = UUID.randomUUID();
+        final UUID paymentId = UUID.randomUUID();
+        final RefundModelDao refund = new RefundModelDao(accountId, paymentId, new BigDecimal("12.5"), Currency.USD, true);
+
+        final Map<UUID, BigDecimal> invoiceItemIdsWithAmounts = new HashMap<UUID, BigDecimal>();
+        final UUID invoiceItemId1 = UUID.randomUUID();
+        invoiceItemIdsWithAmounts.put(invoiceItemId1, new BigDecimal("2.5"));
+        // Whole item adjustment
+        final UUID invoiceItemId2 = UUID.randomUUID();
+        invoiceItemIdsWithAmounts.put(invoiceItemId2, null);
+        paymentDao.insertRefund(refund, invoiceItemIdsWithAmounts, internalCallContext);
+
+        final Map<UUID, BigDecimal> itemAdjustments = paymentDao.getRefundItemAdjustments(refund.getId(), internalCallContext);
+        assertEquals(itemAdjustments.size(), 2);
+        assertEquals(itemAdjustments.get(invoiceItemId1).compareTo(new BigDecimal("2.5")), 0);
+        assertTrue(itemAdjustments.containsKey(invoiceItemId2));
+        assertNull(itemAdjustments.get(invoiceItemId2));
+        assertTrue(paymentDao.getRefundItemAdjustments(UUID.randomUUID(), internalCallContext).isEmpty());
+
+        paymentDao.markRefundAsPluginCompleted(refund.getId(), internalCallContext);
+        assertEquals(paymentDao.getRefund(refund.getId(), internalCallContext).getRefundStatus(), RefundStatus.PLUGIN_COMPLETED);
+    }
+
+    @Test(groups = "slow")
+    public void testPaymentAllocations() {
+        final UUID accountId = UUID.randomUUID();
+        final UUID invoiceId1 = UUID.randomUUID();
+        final UUID invoiceId2 = UUID.randomUUID();
+        final BigDecimal amount = new BigDecimal("15");
+
+        final PaymentModelDao payment = new PaymentModelDao(accountId, invoiceId1, UUID.randomUUID(), amount, Currency.USD, clock.getUTCNow());
+        final PaymentAttemptModelDao attempt = new PaymentAttemptModelDao(accountId, invoiceId1, payment.getId(), clock.getUTCNow(), amount);
+        final Map<UUID, BigDecimal> allocations = new LinkedHashMap<UUID, BigDecimal>();
+        allocations.put(invoiceId1, new BigDecimal("10"));
+        allocations.put(invoiceId2, new BigDecimal("5"));
+        final PaymentModelDao savedPayment = paymentDao.insertPaymentWithAttemptAndAllocations(payment, attempt, allocations, internalCallContext);
+        assertEquals(savedPayment.getInvoiceId(), invoiceId1);
+        assertEquals(paymentDao.getAttemptsForPayment(payment.getId(), internalCallContext).size(), 1);
+
+        final Map<UUID, BigDecimal> savedAllocations = paymentDao.getPaymentAllocations(payment.getId(), internalCallContext);
+        assertEquals(savedAllocations.size(), 2);
+        // Allocations are returned in order
+        final Iterator<UUID> invoiceIds = savedAllocations.keySet().iterator();
+        assertEquals(invoiceIds.next(), invoiceId1);
+        assertEquals(invoiceIds.next(), invoiceId2);
+        assertEquals(savedAllocations.get(invoiceId1).compareTo(new BigDecimal("10")), 0);
+        assertEquals(savedAllocations.get(invoiceId2).compareTo(new BigDecimal("5")), 0);
+        assertTrue(paymentDao.getPaymentAllocations(UUID.randomUUID(), internalCallContext).isEmpty());
+    }
+
     @Test(groups = "slow")
     public void testUpdateStatus() {
         final UUID accountId = UUID.randomUUID();
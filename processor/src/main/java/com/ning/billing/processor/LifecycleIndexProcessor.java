@@ -0,0 +1,261 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.processor;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor generating, at build time, the index of the Kill Bill services and lifecycle handlers
+ * found in a module. The index is read at startup by the beatrix ServiceFinder and DefaultLifecycle, which
+ * avoids scanning all jars on the classpath and reflecting over every method of every service.
+ * <p/>
+ * Two resources are written:
+ * <ul>
+ * <li>{@link #SERVICES_INDEX}: one KillbillService sub-interface per line (empty if none)</li>
+ * <li>{@link #LIFECYCLE_HANDLERS_INDEX}: a properties file mapping each KillbillService implementation to its
+ * public @LifecycleHandlerType methods, as a comma separated list of method:LEVEL (empty if none)</li>
+ * </ul>
+ * The processor only relies on type names, so that it doesn't need the Kill Bill apis on its own classpath.
+ */
+@SupportedAnnotationTypes("*")
+public class LifecycleIndexProcessor extends AbstractProcessor {
+
+    public static final String SERVICES_INDEX = "META-INF/killbill/services";
+    public static final String LIFECYCLE_HANDLERS_INDEX = "META-INF/killbill/lifecycle-handlers.properties";
+
+    static final String KILLBILL_SERVICE = "com.ning.billing.lifecycle.KillbillService";
+    static final String LIFECYCLE_HANDLER_TYPE = "com.ning.billing.lifecycle.LifecycleHandlerType";
+
+    private final Set<String> services = new TreeSet<String>();
+    private final Map<String, Set<String>> handlers = new TreeMap<String, Set<String>>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        final TypeElement killbillService = processingEnv.getElementUtils().getTypeElement(KILLBILL_SERVICE);
+        if (killbillService == null) {
+            // Module not depending on the Kill Bill apis
+            return false;
+        }
+
+        if (roundEnv.processingOver()) {
+            writeIndexes();
+            return false;
+        }
+
+        final TypeMirror killbillServiceType = processingEnv.getTypeUtils().erasure(killbillService.asType());
+        for (final Element element : roundEnv.getRootElements()) {
+            indexType(element, killbillService, killbillServiceType);
+        }
+
+        final TypeElement lifecycleHandlerType = processingEnv.getElementUtils().getTypeElement(LIFECYCLE_HANDLER_TYPE);
+        if (lifecycleHandlerType != null) {
+            for (final Element element : roundEnv.getElementsAnnotatedWith(lifecycleHandlerType)) {
+                indexHandler(element, lifecycleHandlerType);
+            }
+        }
+
+        // Don't claim any annotation
+        return false;
+    }
+
+    private void indexType(final Element element, final TypeElement killbillService, final TypeMirror killbillServiceType) {
+        if (!(element instanceof TypeElement)) {
+            return;
+        }
+
+        final TypeElement typeElement = (TypeElement) element;
+        if (!typeElement.equals(killbillService) &&
+            processingEnv.getTypeUtils().isAssignable(processingEnv.getTypeUtils().erasure(typeElement.asType()), killbillServiceType)) {
+            final String binaryName = processingEnv.getElementUtils().getBinaryName(typeElement).toString();
+            if (typeElement.getKind() == ElementKind.INTERFACE) {
+                services.add(binaryName);
+            } else if (typeElement.getKind() == ElementKind.CLASS && !handlers.containsKey(binaryName)) {
+                // Make sure implementations without handlers are indexed too
+                handlers.put(binaryName, new TreeSet<String>());
+            }
+        }
+
+        // Nested types
+        for (final Element enclosed : typeElement.getEnclosedElements()) {
+            indexType(enclosed, killbillService, killbillServiceType);
+        }
+    }
+
+    private void indexHandler(final Element element, final TypeElement lifecycleHandlerType) {
+        // Same visibility rules as Class#getMethods
+        if (element.getKind() != ElementKind.METHOD || !element.getModifiers().contains(Modifier.PUBLIC)) {
+            return;
+        }
+        if (!((ExecutableElement) element).getParameters().isEmpty()) {
+            processingEnv.getMessager().printMessage(Kind.WARNING, "Lifecycle handlers shouldn't take any argument", element);
+            return;
+        }
+
+        final String level = getLevel(element, lifecycleHandlerType);
+        if (level == null) {
+            return;
+        }
+
+        final String binaryName = processingEnv.getElementUtils().getBinaryName((TypeElement) element.getEnclosingElement()).toString();
+        if (handlers.get(binaryName) == null) {
+            handlers.put(binaryName, new TreeSet<String>());
+        }
+        handlers.get(binaryName).add(element.getSimpleName() + ":" + level);
+    }
+
+    private String getLevel(final Element element, final TypeElement lifecycleHandlerType) {
+        for (final AnnotationMirror annotationMirror : element.getAnnotationMirrors()) {
+            if (!processingEnv.getTypeUtils().isSameType(annotationMirror.getAnnotationType(), lifecycleHandlerType.asType())) {
+                continue;
+            }
+
+            for (final Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotationMirror.getElementValues().entrySet()) {
+                if ("value".equals(entry.getKey().getSimpleName().toString())) {
+                    // Enum constants are represented as VariableElement
+                    return ((Element) entry.getValue().getValue()).getSimpleName().toString();
+                }
+            }
+        }
+        return null;
+    }
+
+    private void writeIndexes() {
+        // The services index is written even if empty: it tells the ServiceFinder that the module doesn't need to be scanned
+        try {
+            // Merge with the previous index, in case of incremental compilation
+            services.addAll(readServicesIndex());
+            final Properties handlersIndex = readHandlersIndex();
+            for (final Map.Entry<String, Set<String>> entry : handlers.entrySet()) {
+                handlersIndex.setProperty(entry.getKey(), join(entry.getValue()));
+            }
+
+            final FileObject servicesFile = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", SERVICES_INDEX);
+            final Writer servicesWriter = new OutputStreamWriter(servicesFile.openOutputStream(), "UTF-8");
+            try {
+                for (final String service : services) {
+                    servicesWriter.write(service);
+                    servicesWriter.write('\n');
+                }
+            } finally {
+                servicesWriter.close();
+            }
+
+            final FileObject handlersFile = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", LIFECYCLE_HANDLERS_INDEX);
+            final OutputStream handlersOutputStream = handlersFile.openOutputStream();
+            try {
+                handlersIndex.store(handlersOutputStream, "Generated by " + LifecycleIndexProcessor.class.getName());
+            } finally {
+                handlersOutputStream.close();
+            }
+        } catch (final IOException e) {
+            processingEnv.getMessager().printMessage(Kind.ERROR, "Unable to write the Kill Bill lifecycle index: " + e.getMessage());
+        }
+    }
+
+    private Set<String> readServicesIndex() throws IOException {
+        final Set<String> previousServices = new TreeSet<String>();
+        final InputStream inputStream = openPreviousIndex(SERVICES_INDEX);
+        if (inputStream == null) {
+            return previousServices;
+        }
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    previousServices.add(line.trim());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return previousServices;
+    }
+
+    private Properties readHandlersIndex() throws IOException {
+        final Properties previousHandlers = new Properties();
+        final InputStream inputStream = openPreviousIndex(LIFECYCLE_HANDLERS_INDEX);
+        if (inputStream == null) {
+            return previousHandlers;
+        }
+
+        try {
+            previousHandlers.load(inputStream);
+        } finally {
+            inputStream.close();
+        }
+        return previousHandlers;
+    }
+
+    private InputStream openPreviousIndex(final String resourceName) {
+        try {
+            return processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", resourceName).openInputStream();
+        } catch (final FileNotFoundException e) {
+            return null;
+        } catch (final IOException e) {
+            // Not all compilers support reading from CLASS_OUTPUT, start from scratch
+            return null;
+        } catch (final IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String join(final Set<String> values) {
+        final StringBuilder builder = new StringBuilder();
+        for (final String value : values) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+}
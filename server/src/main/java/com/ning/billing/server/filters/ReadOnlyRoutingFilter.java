@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.server.filters;
+
+import java.io.IOException;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import com.ning.billing.util.dao.DBRouter;
+
+/**
+ * Allow the read-only transactions of GET and HEAD API calls to be routed to the read replica, if configured.
+ */
+@Singleton
+public class ReadOnlyRoutingFilter implements Filter {
+
+    private final DBRouter dbRouter;
+
+    @Inject
+    public ReadOnlyRoutingFilter(final DBRouter dbRouter) {
+        this.dbRouter = dbRouter;
+    }
+
+    @Override
+    public void init(final FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(final ServletRequest request, final ServletResponse response, final FilterChain chain) throws IOException, ServletException {
+        if (!dbRouter.hasReplica() || !isReadOnlyRequest(request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        dbRouter.beginReadOnlyScope();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            dbRouter.endReadOnlyScope();
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private boolean isReadOnlyRequest(final ServletRequest request) {
+        if (!(request instanceof HttpServletRequest)) {
+            return false;
+        }
+
+        final String method = ((HttpServletRequest) request).getMethod();
+        return "GET".equals(method) || "HEAD".equals(method);
+    }
+}
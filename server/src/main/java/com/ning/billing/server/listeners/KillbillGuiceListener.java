@@ -25,15 +25,26 @@ import javax.servlet.ServletContextEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.ning.billing.beatrix.extbus.BeatrixListener;
 import com.ning.billing.beatrix.lifecycle.DefaultLifecycle;
 import com.ning.billing.bus.api.PersistentBus;
 import com.ning.billing.jaxrs.resources.JaxRsResourceBase;
 import com.ning.billing.jaxrs.util.KillbillEventHandler;
 import com.ning.billing.notificationq.api.NotificationQueueService;
+import com.ning.billing.osgi.BundleStartupTimings;
+import com.ning.billing.osgi.KillbillEventObservable;
+import com.ning.billing.payment.core.Janitor;
 import com.ning.billing.server.config.KillbillServerConfig;
+import com.ning.billing.server.filters.ReadOnlyRoutingFilter;
 import com.ning.billing.server.healthchecks.KillbillHealthcheck;
 import com.ning.billing.server.modules.KillbillServerModule;
 import com.ning.billing.server.security.TenantFilter;
+import com.ning.billing.subscription.engine.core.DefaultSubscriptionBaseService;
+import com.ning.billing.tenant.api.user.TenantKVCache;
+import com.ning.billing.util.glue.KillBillShiroModule;
+import com.ning.billing.util.security.shiro.dao.JDBCSessionDao;
+import com.ning.billing.util.security.shiro.realm.KillBillJndiLdapRealm;
+import com.ning.billing.util.tag.dao.TagDao;
 import com.ning.billing.util.svcsapi.bus.BusService;
 import com.ning.jetty.base.modules.ServerModuleBuilder;
 import com.ning.jetty.core.listeners.SetupServer;
@@ -77,6 +88,14 @@ public class KillbillGuiceListener extends SetupServer {
                 .addJMXExport(KillbillHealthcheck.class)
                 .addJMXExport(NotificationQueueService.class)
                 .addJMXExport(PersistentBus.class)
+                .addJMXExport(BundleStartupTimings.class)
+                .addJMXExport(KillbillEventObservable.class)
+                .addJMXExport(TenantKVCache.class)
+                .addJMXExport(TagDao.class)
+                .addJMXExport(BeatrixListener.class)
+                .addJMXExport(Janitor.class)
+                .addJMXExport(JDBCSessionDao.class)
+                .addJMXExport(DefaultSubscriptionBaseService.class)
                 .addModule(getModule(event.getServletContext()))
                         // Don't filter all requests through Jersey, only the JAX-RS APIs (otherwise,
                         // things like static resources, favicon, etc. are 404'ed)
@@ -87,6 +106,10 @@ public class KillbillGuiceListener extends SetupServer {
         if (multitenant) {
             builder.addFilter("/*", TenantFilter.class);
         }
+        if (KillBillShiroModule.isLDAPEnabled()) {
+            builder.addJMXExport(KillBillJndiLdapRealm.class);
+        }
+        builder.addFilter("/*", ReadOnlyRoutingFilter.class);
 
         guiceModule = builder.build();
 
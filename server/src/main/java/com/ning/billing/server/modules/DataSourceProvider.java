@@ -24,6 +24,7 @@ import javax.sql.DataSource;
 
 import org.skife.config.TimeSpan;
 
+import com.ning.billing.util.config.ReplicaDaoConfig;
 import com.ning.jetty.jdbi.config.DaoConfig;
 
 import com.jolbox.bonecp.BoneCPConfig;
@@ -32,11 +33,38 @@ import com.mchange.v2.c3p0.ComboPooledDataSource;
 
 public class DataSourceProvider implements Provider<DataSource> {
 
-    private final DaoConfig config;
+    private final String jdbcUrl;
+    private final String username;
+    private final String password;
+    private final int minIdle;
+    private final int maxActive;
+    private final TimeSpan connectionTimeout;
+    private final TimeSpan idleMaxAge;
+    private final TimeSpan maxConnectionAge;
+    private final TimeSpan idleConnectionTestPeriod;
 
     @Inject
     public DataSourceProvider(final DaoConfig config) {
-        this.config = config;
+        this(config.getJdbcUrl(), config.getUsername(), config.getPassword(), config.getMinIdle(), config.getMaxActive(), config.getConnectionTimeout(),
+             config.getIdleMaxAge(), config.getMaxConnectionAge(), config.getIdleConnectionTestPeriod());
+    }
+
+    public DataSourceProvider(final ReplicaDaoConfig config) {
+        this(config.getJdbcUrl(), config.getUsername(), config.getPassword(), config.getMinIdle(), config.getMaxActive(), config.getConnectionTimeout(),
+             config.getIdleMaxAge(), config.getMaxConnectionAge(), config.getIdleConnectionTestPeriod());
+    }
+
+    private DataSourceProvider(final String jdbcUrl, final String username, final String password, final int minIdle, final int maxActive,
+                               final TimeSpan connectionTimeout, final TimeSpan idleMaxAge, final TimeSpan maxConnectionAge, final TimeSpan idleConnectionTestPeriod) {
+        this.jdbcUrl = jdbcUrl;
+        this.username = username;
+        this.password = password;
+        this.minIdle = minIdle;
+        this.maxActive = maxActive;
+        this.connectionTimeout = connectionTimeout;
+        this.idleMaxAge = idleMaxAge;
+        this.maxConnectionAge = maxConnectionAge;
+        this.idleConnectionTestPeriod = idleConnectionTestPeriod;
     }
 
     @Override
@@ -62,15 +90,15 @@ public class DataSourceProvider implements Provider<DataSource> {
 
     private DataSource getBoneCPDatSource() {
         final BoneCPConfig dbConfig = new BoneCPConfig();
-        dbConfig.setJdbcUrl(config.getJdbcUrl());
-        dbConfig.setUsername(config.getUsername());
-        dbConfig.setPassword(config.getPassword());
-        dbConfig.setMinConnectionsPerPartition(config.getMinIdle());
-        dbConfig.setMaxConnectionsPerPartition(config.getMaxActive());
-        dbConfig.setConnectionTimeout(config.getConnectionTimeout().getPeriod(), config.getConnectionTimeout().getUnit());
-        dbConfig.setIdleMaxAge(config.getIdleMaxAge().getPeriod(), config.getIdleMaxAge().getUnit());
-        dbConfig.setMaxConnectionAge(config.getMaxConnectionAge().getPeriod(), config.getMaxConnectionAge().getUnit());
-        dbConfig.setIdleConnectionTestPeriod(config.getIdleConnectionTestPeriod().getPeriod(), config.getIdleConnectionTestPeriod().getUnit());
+        dbConfig.setJdbcUrl(jdbcUrl);
+        dbConfig.setUsername(username);
+        dbConfig.setPassword(password);
+        dbConfig.setMinConnectionsPerPartition(minIdle);
+        dbConfig.setMaxConnectionsPerPartition(maxActive);
+        dbConfig.setConnectionTimeout(connectionTimeout.getPeriod(), connectionTimeout.getUnit());
+        dbConfig.setIdleMaxAge(idleMaxAge.getPeriod(), idleMaxAge.getUnit());
+        dbConfig.setMaxConnectionAge(maxConnectionAge.getPeriod(), maxConnectionAge.getUnit());
+        dbConfig.setIdleConnectionTestPeriod(idleConnectionTestPeriod.getPeriod(), idleConnectionTestPeriod.getUnit());
         dbConfig.setPartitionCount(1);
         dbConfig.setDisableJMX(false);
 
@@ -79,31 +107,31 @@ public class DataSourceProvider implements Provider<DataSource> {
 
     private DataSource getC3P0DataSource() {
         final ComboPooledDataSource cpds = new ComboPooledDataSource();
-        cpds.setJdbcUrl(config.getJdbcUrl());
-        cpds.setUser(config.getUsername());
-        cpds.setPassword(config.getPassword());
+        cpds.setJdbcUrl(jdbcUrl);
+        cpds.setUser(username);
+        cpds.setPassword(password);
         // http://www.mchange.com/projects/c3p0/#minPoolSize
         // Minimum number of Connections a pool will maintain at any given time.
-        cpds.setMinPoolSize(config.getMinIdle());
+        cpds.setMinPoolSize(minIdle);
         // http://www.mchange.com/projects/c3p0/#maxPoolSize
         // Maximum number of Connections a pool will maintain at any given time.
-        cpds.setMaxPoolSize(config.getMaxActive());
+        cpds.setMaxPoolSize(maxActive);
         // http://www.mchange.com/projects/c3p0/#checkoutTimeout
         // The number of milliseconds a client calling getConnection() will wait for a Connection to be checked-in or
         // acquired when the pool is exhausted. Zero means wait indefinitely. Setting any positive value will cause the getConnection()
         // call to time-out and break with an SQLException after the specified number of milliseconds.
-        cpds.setCheckoutTimeout(toMilliSeconds(config.getConnectionTimeout()));
+        cpds.setCheckoutTimeout(toMilliSeconds(connectionTimeout));
         // http://www.mchange.com/projects/c3p0/#maxIdleTime
         // Seconds a Connection can remain pooled but unused before being discarded. Zero means idle connections never expire.
-        cpds.setMaxIdleTime(toSeconds(config.getIdleMaxAge()));
+        cpds.setMaxIdleTime(toSeconds(idleMaxAge));
         // http://www.mchange.com/projects/c3p0/#maxConnectionAge
         // Seconds, effectively a time to live. A Connection older than maxConnectionAge will be destroyed and purged from the pool.
         // This differs from maxIdleTime in that it refers to absolute age. Even a Connection which has not been much idle will be purged
         // from the pool if it exceeds maxConnectionAge. Zero means no maximum absolute age is enforced.
-        cpds.setMaxConnectionAge(toSeconds(config.getMaxConnectionAge()));
+        cpds.setMaxConnectionAge(toSeconds(maxConnectionAge));
         // http://www.mchange.com/projects/c3p0/#idleConnectionTestPeriod
         // If this is a number greater than 0, c3p0 will test all idle, pooled but unchecked-out connections, every this number of seconds.
-        cpds.setIdleConnectionTestPeriod(toSeconds(config.getIdleConnectionTestPeriod()));
+        cpds.setIdleConnectionTestPeriod(toSeconds(idleConnectionTestPeriod));
 
         return cpds;
     }
@@ -24,6 +24,7 @@ import com.ning.billing.clock.ClockMock;
 import com.ning.billing.clock.DefaultClock;
 import com.ning.billing.entitlement.glue.DefaultEntitlementModule;
 import org.skife.config.ConfigSource;
+import org.skife.config.ConfigurationObjectFactory;
 import org.skife.config.SimplePropertyConfigSource;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.IDBI;
@@ -58,6 +59,8 @@ import com.ning.billing.server.ServerService;
 import com.ning.billing.server.notifications.PushNotificationListener;
 import com.ning.billing.tenant.glue.TenantModule;
 import com.ning.billing.usage.glue.UsageModule;
+import com.ning.billing.util.config.ReplicaDaoConfig;
+import com.ning.billing.util.dao.DBRouter;
 import com.ning.billing.util.email.EmailModule;
 import com.ning.billing.util.email.templates.TemplateModule;
 import com.ning.billing.util.glue.AuditModule;
@@ -78,6 +81,7 @@ import com.ning.billing.util.glue.SecurityModule;
 import com.ning.billing.util.glue.TagStoreModule;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.name.Names;
 
 public class KillbillServerModule extends AbstractModule {
 
@@ -111,6 +115,15 @@ public class KillbillServerModule extends AbstractModule {
         bind(IDBI.class).to(DBI.class).asEagerSingleton();
         bind(DataSource.class).toProvider(DataSourceProvider.class).asEagerSingleton();
         bind(DBI.class).toProvider(DBIProvider.class).asEagerSingleton();
+
+        // Optional read replica for read-only API calls
+        final ReplicaDaoConfig replicaDaoConfig = new ConfigurationObjectFactory(System.getProperties()).build(ReplicaDaoConfig.class);
+        bind(ReplicaDaoConfig.class).toInstance(replicaDaoConfig);
+        if (replicaDaoConfig.isReplicaEnabled()) {
+            bind(DataSource.class).annotatedWith(Names.named(DBRouter.REPLICA_NAMED)).toProvider(ReplicaDataSourceProvider.class).asEagerSingleton();
+            bind(IDBI.class).annotatedWith(Names.named(DBRouter.REPLICA_NAMED)).toProvider(ReplicaDBIProvider.class).asEagerSingleton();
+        }
+        bind(DBRouter.class).asEagerSingleton();
     }
 
     protected void configureResources() {
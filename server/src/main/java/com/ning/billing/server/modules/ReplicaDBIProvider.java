@@ -0,0 +1,34 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.server.modules;
+
+import javax.inject.Named;
+import javax.sql.DataSource;
+
+import com.ning.billing.util.dao.DBRouter;
+import com.ning.jetty.jdbi.config.DaoConfig;
+
+import com.google.inject.Inject;
+import com.yammer.metrics.core.MetricsRegistry;
+
+public class ReplicaDBIProvider extends DBIProvider {
+
+    @Inject
+    public ReplicaDBIProvider(@Named(DBRouter.REPLICA_NAMED) final DataSource ds, final MetricsRegistry metricsRegistry, final DaoConfig config) {
+        super(ds, metricsRegistry, config);
+    }
+}
@@ -18,8 +18,8 @@ package com.ning.billing.subscription.alignment;
 
 import org.joda.time.DateTime;
 
+import com.ning.billing.catalog.api.Catalog;
 import com.ning.billing.catalog.api.CatalogApiException;
-import com.ning.billing.catalog.api.CatalogService;
 import com.ning.billing.catalog.api.Duration;
 import com.ning.billing.catalog.api.PhaseType;
 import com.ning.billing.catalog.api.Plan;
@@ -29,29 +29,32 @@ import com.ning.billing.subscription.api.migration.SubscriptionBaseMigrationApi.
 import com.ning.billing.subscription.api.migration.SubscriptionBaseMigrationApiException;
 import com.ning.billing.subscription.events.SubscriptionBaseEvent.EventType;
 import com.ning.billing.subscription.events.user.ApiEventType;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.svcapi.catalog.CatalogInternalApi;
 
 import com.google.inject.Inject;
 
 public class MigrationPlanAligner extends BaseAligner {
 
-    private final CatalogService catalogService;
+    private final CatalogInternalApi catalogInternalApi;
 
     @Inject
-    public MigrationPlanAligner(final CatalogService catalogService) {
-        this.catalogService = catalogService;
+    public MigrationPlanAligner(final CatalogInternalApi catalogInternalApi) {
+        this.catalogInternalApi = catalogInternalApi;
     }
 
 
-    public TimedMigration[] getEventsMigration(final SubscriptionMigrationCase[] input, final DateTime now)
+    public TimedMigration[] getEventsMigration(final SubscriptionMigrationCase[] input, final DateTime now, final InternalTenantContext context)
             throws SubscriptionBaseMigrationApiException {
 
         try {
             TimedMigration[] events;
-            final Plan plan0 = catalogService.getFullCatalog().findPlan(input[0].getPlanPhaseSpecifier().getProductName(),
-                                                                        input[0].getPlanPhaseSpecifier().getBillingPeriod(), input[0].getPlanPhaseSpecifier().getPriceListName(), now);
+            final Catalog catalog = catalogInternalApi.getFullCatalog(context);
+            final Plan plan0 = catalog.findPlan(input[0].getPlanPhaseSpecifier().getProductName(),
+                                                input[0].getPlanPhaseSpecifier().getBillingPeriod(), input[0].getPlanPhaseSpecifier().getPriceListName(), now);
 
-            final Plan plan1 = (input.length > 1) ? catalogService.getFullCatalog().findPlan(input[1].getPlanPhaseSpecifier().getProductName(),
-                                                                                             input[1].getPlanPhaseSpecifier().getBillingPeriod(), input[1].getPlanPhaseSpecifier().getPriceListName(), now) :
+            final Plan plan1 = (input.length > 1) ? catalog.findPlan(input[1].getPlanPhaseSpecifier().getProductName(),
+                                                                     input[1].getPlanPhaseSpecifier().getBillingPeriod(), input[1].getPlanPhaseSpecifier().getPriceListName(), now) :
                                null;
 
             DateTime migrationStartDate = input[0].getEffectiveDate();
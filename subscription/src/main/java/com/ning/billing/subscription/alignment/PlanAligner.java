@@ -28,7 +28,6 @@ import org.joda.time.DateTime;
 import com.ning.billing.ErrorCode;
 import com.ning.billing.catalog.api.Catalog;
 import com.ning.billing.catalog.api.CatalogApiException;
-import com.ning.billing.catalog.api.CatalogService;
 import com.ning.billing.catalog.api.Duration;
 import com.ning.billing.catalog.api.PhaseType;
 import com.ning.billing.catalog.api.Plan;
@@ -42,6 +41,8 @@ import com.ning.billing.subscription.api.user.SubscriptionBaseApiException;
 import com.ning.billing.subscription.api.user.SubscriptionBaseTransitionData;
 import com.ning.billing.subscription.api.user.DefaultSubscriptionBase;
 import com.ning.billing.subscription.exceptions.SubscriptionBaseError;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.svcapi.catalog.CatalogInternalApi;
 
 /**
  * PlanAligner offers specific APIs to return the correct {@code TimedPhase} when creating, changing Plan or to compute
@@ -49,11 +50,11 @@ import com.ning.billing.subscription.exceptions.SubscriptionBaseError;
  */
 public class PlanAligner extends BaseAligner {
 
-    private final CatalogService catalogService;
+    private final CatalogInternalApi catalogInternalApi;
 
     @Inject
-    public PlanAligner(final CatalogService catalogService) {
-        this.catalogService = catalogService;
+    public PlanAligner(final CatalogInternalApi catalogInternalApi) {
+        this.catalogInternalApi = catalogInternalApi;
     }
 
     private enum WhichPhase {
@@ -70,6 +71,7 @@ public class PlanAligner extends BaseAligner {
      * @param priceList     the priceList
      * @param requestedDate the requested date (only used to load the catalog)
      * @param effectiveDate the effective creation date (driven by the catalog policy, i.e. when the creation occurs)
+     * @param context       the tenant context (to load the tenant catalog)
      * @return the current and next phases
      * @throws CatalogApiException         for catalog errors
      * @throws com.ning.billing.subscription.api.user.SubscriptionBaseApiException for subscription errors
@@ -79,13 +81,15 @@ public class PlanAligner extends BaseAligner {
                                                             final PhaseType initialPhase,
                                                             final String priceList,
                                                             final DateTime requestedDate,
-                                                            final DateTime effectiveDate) throws CatalogApiException, SubscriptionBaseApiException {
+                                                            final DateTime effectiveDate,
+                                                            final InternalTenantContext context) throws CatalogApiException, SubscriptionBaseApiException {
         final List<TimedPhase> timedPhases = getTimedPhaseOnCreate(subscription.getAlignStartDate(),
                                                                    subscription.getBundleStartDate(),
                                                                    plan,
                                                                    initialPhase,
                                                                    priceList,
-                                                                   requestedDate);
+                                                                   requestedDate,
+                                                                   context);
         final TimedPhase[] result = new TimedPhase[2];
         result[0] = getTimedPhase(timedPhases, effectiveDate, WhichPhase.CURRENT);
         result[1] = getTimedPhase(timedPhases, effectiveDate, WhichPhase.NEXT);
@@ -101,6 +105,7 @@ public class PlanAligner extends BaseAligner {
      * @param priceList     the priceList on which we should change that subscription.
      * @param requestedDate the requested date
      * @param effectiveDate the effective change date (driven by the catalog policy, i.e. when the change occurs)
+     * @param context       the tenant context (to load the tenant catalog)
      * @return the current phase
      * @throws CatalogApiException         for catalog errors
      * @throws com.ning.billing.subscription.api.user.SubscriptionBaseApiException for subscription errors
@@ -109,8 +114,9 @@ public class PlanAligner extends BaseAligner {
                                                    final Plan plan,
                                                    final String priceList,
                                                    final DateTime requestedDate,
-                                                   final DateTime effectiveDate) throws CatalogApiException, SubscriptionBaseApiException {
-        return getTimedPhaseOnChange(subscription, plan, priceList, requestedDate, effectiveDate, WhichPhase.CURRENT);
+                                                   final DateTime effectiveDate,
+                                                   final InternalTenantContext context) throws CatalogApiException, SubscriptionBaseApiException {
+        return getTimedPhaseOnChange(subscription, plan, priceList, requestedDate, effectiveDate, WhichPhase.CURRENT, context);
     }
 
     /**
@@ -122,6 +128,7 @@ public class PlanAligner extends BaseAligner {
      * @param priceList     the priceList on which we should change that subscription.
      * @param requestedDate the requested date
      * @param effectiveDate the effective change date (driven by the catalog policy, i.e. when the change occurs)
+     * @param context       the tenant context (to load the tenant catalog)
      * @return the next phase
      * @throws CatalogApiException         for catalog errors
      * @throws com.ning.billing.subscription.api.user.SubscriptionBaseApiException for subscription errors
@@ -130,8 +137,9 @@ public class PlanAligner extends BaseAligner {
                                                 final Plan plan,
                                                 final String priceList,
                                                 final DateTime requestedDate,
-                                                final DateTime effectiveDate) throws CatalogApiException, SubscriptionBaseApiException {
-        return getTimedPhaseOnChange(subscription, plan, priceList, requestedDate, effectiveDate, WhichPhase.NEXT);
+                                                final DateTime effectiveDate,
+                                                final InternalTenantContext context) throws CatalogApiException, SubscriptionBaseApiException {
+        return getTimedPhaseOnChange(subscription, plan, priceList, requestedDate, effectiveDate, WhichPhase.NEXT, context);
     }
 
     /**
@@ -140,9 +148,10 @@ public class PlanAligner extends BaseAligner {
      * @param subscription  the subscription for which we need to compute the next Phase event
      * @param requestedDate the requested date
      * @param effectiveDate the date at which we look to compute that event. effective needs to be after last Plan change or initial Plan
+     * @param context       the tenant context (to load the tenant catalog)
      * @return the next phase
      */
-    public TimedPhase getNextTimedPhase(final DefaultSubscriptionBase subscription, final DateTime requestedDate, final DateTime effectiveDate) {
+    public TimedPhase getNextTimedPhase(final DefaultSubscriptionBase subscription, final DateTime requestedDate, final DateTime effectiveDate, final InternalTenantContext context) {
         try {
             final SubscriptionBaseTransitionData lastPlanTransition = subscription.getInitialTransitionForCurrentPlan();
             if (effectiveDate.isBefore(lastPlanTransition.getEffectiveTransitionTime())) {
@@ -161,7 +170,8 @@ public class PlanAligner extends BaseAligner {
                                                                                lastPlanTransition.getNextPlan(),
                                                                                lastPlanTransition.getNextPhase().getPhaseType(),
                                                                                lastPlanTransition.getNextPriceList().getName(),
-                                                                               requestedDate);
+                                                                               requestedDate,
+                                                                               context);
                     return getTimedPhase(timedPhases, effectiveDate, WhichPhase.NEXT);
                 // If we went through Plan changes, borrow the logic for changePlan alignment
                 case CHANGE:
@@ -174,7 +184,8 @@ public class PlanAligner extends BaseAligner {
                                                  lastPlanTransition.getNextPriceList().getName(),
                                                  requestedDate,
                                                  effectiveDate,
-                                                 WhichPhase.NEXT);
+                                                 WhichPhase.NEXT,
+                                                 context);
                 default:
                     throw new SubscriptionBaseError(String.format("Unexpected initial transition %s for current plan %s on subscription %s",
                                                              lastPlanTransition.getTransitionType(), subscription.getCurrentPlan(), subscription.getId()));
@@ -189,9 +200,10 @@ public class PlanAligner extends BaseAligner {
                                                    final Plan plan,
                                                    final PhaseType initialPhase,
                                                    final String priceList,
-                                                   final DateTime requestedDate)
+                                                   final DateTime requestedDate,
+                                                   final InternalTenantContext context)
             throws CatalogApiException, SubscriptionBaseApiException {
-        final Catalog catalog = catalogService.getFullCatalog();
+        final Catalog catalog = catalogInternalApi.getFullCatalog(context);
 
         final PlanSpecifier planSpecifier = new PlanSpecifier(plan.getProduct().getName(),
                                                               plan.getProduct().getCategory(),
@@ -219,7 +231,8 @@ public class PlanAligner extends BaseAligner {
                                              final String nextPriceList,
                                              final DateTime requestedDate,
                                              final DateTime effectiveDate,
-                                             final WhichPhase which) throws CatalogApiException, SubscriptionBaseApiException {
+                                             final WhichPhase which,
+                                             final InternalTenantContext context) throws CatalogApiException, SubscriptionBaseApiException {
         return getTimedPhaseOnChange(subscription.getAlignStartDate(),
                                      subscription.getBundleStartDate(),
                                      subscription.getCurrentPhase(),
@@ -229,7 +242,8 @@ public class PlanAligner extends BaseAligner {
                                      nextPriceList,
                                      requestedDate,
                                      effectiveDate,
-                                     which);
+                                     which,
+                                     context);
     }
 
     private TimedPhase getTimedPhaseOnChange(final DateTime subscriptionStartDate,
@@ -241,8 +255,9 @@ public class PlanAligner extends BaseAligner {
                                              final String priceList,
                                              final DateTime requestedDate,
                                              final DateTime effectiveDate,
-                                             final WhichPhase which) throws CatalogApiException, SubscriptionBaseApiException {
-        final Catalog catalog = catalogService.getFullCatalog();
+                                             final WhichPhase which,
+                                             final InternalTenantContext context) throws CatalogApiException, SubscriptionBaseApiException {
+        final Catalog catalog = catalogInternalApi.getFullCatalog(context);
         final ProductCategory currentCategory = currentPlan.getProduct().getCategory();
         final PlanPhaseSpecifier fromPlanPhaseSpecifier = new PlanPhaseSpecifier(currentPlan.getProduct().getName(),
                                                                                  currentCategory,
@@ -19,12 +19,13 @@ package com.ning.billing.subscription.api;
 import java.util.ArrayList;
 import java.util.List;
 
-import com.ning.billing.catalog.api.CatalogService;
 import com.ning.billing.subscription.api.user.DefaultSubscriptionBase;
 import com.ning.billing.subscription.api.user.SubscriptionBuilder;
 import com.ning.billing.subscription.engine.dao.SubscriptionDao;
 import com.ning.billing.subscription.events.SubscriptionBaseEvent;
 import com.ning.billing.clock.Clock;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.svcapi.catalog.CatalogInternalApi;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Collections2;
@@ -35,13 +36,13 @@ public class SubscriptionApiBase {
 
     protected final SubscriptionBaseApiService apiService;
     protected final Clock clock;
-    protected final CatalogService catalogService;
+    protected final CatalogInternalApi catalogInternalApi;
 
-    public SubscriptionApiBase(final SubscriptionDao dao, final SubscriptionBaseApiService apiService, final Clock clock, final CatalogService catalogService) {
+    public SubscriptionApiBase(final SubscriptionDao dao, final SubscriptionBaseApiService apiService, final Clock clock, final CatalogInternalApi catalogInternalApi) {
         this.dao = dao;
         this.apiService = apiService;
         this.clock = clock;
-        this.catalogService = catalogService;
+        this.catalogInternalApi = catalogInternalApi;
     }
 
     protected List<SubscriptionBase> createSubscriptionsForApiUse(final List<SubscriptionBase> internalSubscriptions) {
@@ -57,10 +58,10 @@ public class SubscriptionApiBase {
         return new DefaultSubscriptionBase((DefaultSubscriptionBase) internalSubscription, apiService, clock);
     }
 
-    protected DefaultSubscriptionBase createSubscriptionForApiUse(SubscriptionBuilder builder, List<SubscriptionBaseEvent> events) {
+    protected DefaultSubscriptionBase createSubscriptionForApiUse(final SubscriptionBuilder builder, final List<SubscriptionBaseEvent> events, final InternalTenantContext context) {
         final DefaultSubscriptionBase subscription = new DefaultSubscriptionBase(builder, apiService, clock);
         if (events.size() > 0) {
-            subscription.rebuildTransitions(events, catalogService.getFullCatalog());
+            subscription.rebuildTransitions(events, catalogInternalApi.getFullCatalog(context));
         }
         return subscription;
     }
@@ -16,6 +16,8 @@
 
 package com.ning.billing.subscription.api;
 
+import java.util.List;
+
 import org.joda.time.DateTime;
 
 import com.ning.billing.catalog.api.BillingActionPolicy;
@@ -26,6 +28,7 @@ import com.ning.billing.catalog.api.PlanPhaseSpecifier;
 import com.ning.billing.subscription.api.user.DefaultSubscriptionBase;
 import com.ning.billing.subscription.api.user.SubscriptionBaseApiException;
 import com.ning.billing.subscription.api.user.SubscriptionBuilder;
+import com.ning.billing.subscription.api.user.SubscriptionSpecifier;
 import com.ning.billing.util.callcontext.CallContext;
 import com.ning.billing.util.callcontext.InternalCallContext;
 
@@ -36,6 +39,11 @@ public interface SubscriptionBaseApiService {
                                        CallContext context)
             throws SubscriptionBaseApiException;
 
+    // All subscriptions belong to the same bundle and are created in a single transaction
+    public List<DefaultSubscriptionBase> createPlans(List<SubscriptionSpecifier> subscriptions, DateTime requestedDate, DateTime effectiveDate, DateTime processedDate,
+                                                     CallContext context)
+            throws SubscriptionBaseApiException;
+
     @Deprecated
     public boolean recreatePlan(final DefaultSubscriptionBase subscription, final PlanPhaseSpecifier spec, final DateTime requestedDateWithMs, final CallContext context)
             throws SubscriptionBaseApiException;
@@ -46,6 +54,10 @@ public interface SubscriptionBaseApiService {
     public boolean cancelWithPolicy(DefaultSubscriptionBase subscription, DateTime requestedDate, BillingActionPolicy policy, CallContext context)
         throws SubscriptionBaseApiException;
 
+    // Subscriptions belong to the same account; their events (including the add-ons cancelled along their base plan) are persisted in a single transaction
+    public int cancelWithPolicy(List<DefaultSubscriptionBase> subscriptions, BillingActionPolicy policy, InternalCallContext context)
+        throws SubscriptionBaseApiException;
+
     public boolean uncancel(DefaultSubscriptionBase subscription, CallContext context)
             throws SubscriptionBaseApiException;
 
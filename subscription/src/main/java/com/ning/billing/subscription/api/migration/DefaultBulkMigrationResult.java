@@ -0,0 +1,73 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.subscription.api.migration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import com.ning.billing.subscription.api.migration.SubscriptionBaseMigrationApi.BulkMigrationResult;
+
+public class DefaultBulkMigrationResult implements BulkMigrationResult {
+
+    private final Map<UUID, String> errors = new LinkedHashMap<UUID, String>();
+
+    private long checkpoint;
+    private long nbMigratedAccounts = 0;
+
+    public DefaultBulkMigrationResult(final long checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    public void setCheckpoint(final long checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    public void addMigratedAccounts(final int nbAccounts) {
+        nbMigratedAccounts += nbAccounts;
+    }
+
+    public void addError(final UUID accountId, final String error) {
+        errors.put(accountId, error);
+    }
+
+    @Override
+    public long getCheckpoint() {
+        return checkpoint;
+    }
+
+    @Override
+    public long getNbMigratedAccounts() {
+        return nbMigratedAccounts;
+    }
+
+    @Override
+    public Map<UUID, String> getErrors() {
+        return errors;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("DefaultBulkMigrationResult");
+        sb.append("{checkpoint=").append(checkpoint);
+        sb.append(", nbMigratedAccounts=").append(nbMigratedAccounts);
+        sb.append(", nbErrors=").append(errors.size());
+        sb.append('}');
+        return sb.toString();
+    }
+}
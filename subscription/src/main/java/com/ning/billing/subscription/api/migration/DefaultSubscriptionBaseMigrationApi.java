@@ -19,13 +19,17 @@ package com.ning.billing.subscription.api.migration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import com.ning.billing.catalog.api.CatalogService;
 import com.ning.billing.catalog.api.ProductCategory;
 import com.ning.billing.clock.Clock;
 import com.ning.billing.subscription.alignment.MigrationPlanAligner;
@@ -51,25 +55,34 @@ import com.ning.billing.subscription.events.user.ApiEventMigrateSubscription;
 import com.ning.billing.subscription.events.user.ApiEventType;
 import com.ning.billing.subscription.exceptions.SubscriptionBaseError;
 import com.ning.billing.util.callcontext.CallContext;
+import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalCallContextFactory;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.config.SubscriptionConfig;
+import com.ning.billing.util.svcapi.catalog.CatalogInternalApi;
 
 import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 
 public class DefaultSubscriptionBaseMigrationApi extends SubscriptionApiBase implements SubscriptionBaseMigrationApi {
 
+    private static final Logger log = LoggerFactory.getLogger(DefaultSubscriptionBaseMigrationApi.class);
+
     private final MigrationPlanAligner migrationAligner;
+    private final SubscriptionConfig config;
     private final InternalCallContextFactory internalCallContextFactory;
 
     @Inject
     public DefaultSubscriptionBaseMigrationApi(final MigrationPlanAligner migrationAligner,
                                                final SubscriptionBaseApiService apiService,
-                                               final CatalogService catalogService,
+                                               final CatalogInternalApi catalogInternalApi,
                                                final SubscriptionDao dao,
                                                final Clock clock,
+                                               final SubscriptionConfig config,
                                                final InternalCallContextFactory internalCallContextFactory) {
-        super(dao, apiService, clock, catalogService);
+        super(dao, apiService, clock, catalogInternalApi);
         this.migrationAligner = migrationAligner;
+        this.config = config;
         this.internalCallContextFactory = internalCallContextFactory;
     }
 
@@ -80,10 +93,85 @@ public class DefaultSubscriptionBaseMigrationApi extends SubscriptionApiBase imp
         dao.migrate(toBeMigrated.getAccountKey(), accountMigrationData, internalCallContextFactory.createInternalCallContext(toBeMigrated.getAccountKey(), context));
     }
 
+    @Override
+    public BulkMigrationResult migrate(final Iterator<AccountMigration> toBeMigrated, final long checkpoint, final CallContext context) {
+        final DefaultBulkMigrationResult result = new DefaultBulkMigrationResult(checkpoint);
+
+        final Map<UUID, AccountMigrationData> batch = new LinkedHashMap<UUID, AccountMigrationData>();
+        final Map<UUID, InternalCallContext> batchContexts = new LinkedHashMap<UUID, InternalCallContext>();
+        long position = 0;
+        while (toBeMigrated.hasNext()) {
+            final AccountMigration curAccount = toBeMigrated.next();
+            position++;
+            if (position <= checkpoint) {
+                continue;
+            }
+
+            final UUID accountId = curAccount.getAccountKey();
+            if (batch.containsKey(accountId)) {
+                // Same account twice in the input, its first occurrence needs to be written first
+                migrateBatch(batch, batchContexts, position - 1, result);
+            }
+
+            // Validate the account (catalog lookups, alignment of the events) before opening any transaction,
+            // so that a single bad record doesn't roll back the whole batch
+            try {
+                batchContexts.put(accountId, internalCallContextFactory.createInternalCallContext(accountId, context));
+                batch.put(accountId, createAccountMigrationData(curAccount, context));
+            } catch (SubscriptionBaseMigrationApiException e) {
+                rejectAccount(accountId, batchContexts, e, result);
+            } catch (RuntimeException e) {
+                rejectAccount(accountId, batchContexts, e, result);
+            }
+
+            if (batch.size() >= config.getMigrationBatchSize()) {
+                migrateBatch(batch, batchContexts, position, result);
+            }
+        }
+        migrateBatch(batch, batchContexts, position, result);
+
+        log.info("Bulk migration done: {}", result);
+        return result;
+    }
+
+    private void migrateBatch(final Map<UUID, AccountMigrationData> batch, final Map<UUID, InternalCallContext> batchContexts,
+                              final long position, final DefaultBulkMigrationResult result) {
+        if (!batch.isEmpty()) {
+            try {
+                dao.migrate(batch, batchContexts);
+                result.addMigratedAccounts(batch.size());
+            } catch (RuntimeException e) {
+                log.warn("Failed to migrate a batch of {} accounts, retrying them one by one", batch.size(), e);
+                for (final UUID accountId : batch.keySet()) {
+                    try {
+                        dao.migrate(accountId, batch.get(accountId), batchContexts.get(accountId));
+                        result.addMigratedAccounts(1);
+                    } catch (RuntimeException inner) {
+                        rejectAccount(accountId, batchContexts, inner, result);
+                    }
+                }
+            }
+        }
+
+        batch.clear();
+        batchContexts.clear();
+        if (position > result.getCheckpoint()) {
+            result.setCheckpoint(position);
+            log.info("Bulk migration checkpoint: {} accounts processed", position);
+        }
+    }
+
+    private void rejectAccount(final UUID accountId, final Map<UUID, InternalCallContext> batchContexts, final Exception e, final DefaultBulkMigrationResult result) {
+        log.warn("Failed to migrate account " + accountId, e);
+        batchContexts.remove(accountId);
+        result.addError(accountId, e.getMessage() == null ? e.getClass().getName() : e.getMessage());
+    }
+
     private AccountMigrationData createAccountMigrationData(final AccountMigration toBeMigrated, final CallContext context)
             throws SubscriptionBaseMigrationApiException {
         final UUID accountId = toBeMigrated.getAccountKey();
         final DateTime now = clock.getUTCNow();
+        final InternalTenantContext tenantContext = internalCallContextFactory.createInternalTenantContext(context);
 
         final List<BundleMigrationData> accountBundleData = new LinkedList<BundleMigrationData>();
 
@@ -116,11 +204,11 @@ public class DefaultSubscriptionBaseMigrationApi extends SubscriptionApiBase imp
             for (final SubscriptionMigration curSub : sortedSubscriptions) {
                 SubscriptionMigrationData data = null;
                 if (bundleStartDate == null) {
-                    data = createInitialSubscription(bundleData.getId(), curSub.getCategory(), curSub.getSubscriptionCases(), now, curSub.getChargedThroughDate(), context);
+                    data = createInitialSubscription(bundleData.getId(), curSub.getCategory(), curSub.getSubscriptionCases(), now, curSub.getChargedThroughDate(), tenantContext, context);
                     bundleStartDate = data.getInitialEvents().get(0).getEffectiveDate();
                 } else {
                     data = createSubscriptionMigrationDataWithBundleDate(bundleData.getId(), curSub.getCategory(), curSub.getSubscriptionCases(), now,
-                                                                         bundleStartDate, curSub.getChargedThroughDate(), context);
+                                                                         bundleStartDate, curSub.getChargedThroughDate(), tenantContext, context);
                 }
                 if (data != null) {
                     bundleSubscriptionData.add(data);
@@ -134,9 +222,10 @@ public class DefaultSubscriptionBaseMigrationApi extends SubscriptionApiBase imp
     }
 
     private SubscriptionMigrationData createInitialSubscription(final UUID bundleId, final ProductCategory productCategory,
-                                                                final SubscriptionMigrationCase[] input, final DateTime now, final DateTime ctd, final CallContext context)
+                                                                final SubscriptionMigrationCase[] input, final DateTime now, final DateTime ctd,
+                                                                final InternalTenantContext tenantContext, final CallContext context)
             throws SubscriptionBaseMigrationApiException {
-        final TimedMigration[] events = migrationAligner.getEventsMigration(input, now);
+        final TimedMigration[] events = migrationAligner.getEventsMigration(input, now, tenantContext);
         final DateTime migrationStartDate = events[0].getEventTime();
         final List<SubscriptionBaseEvent> emptyEvents = Collections.emptyList();
         final DefaultSubscriptionBase defaultSubscriptionBase = createSubscriptionForApiUse(new SubscriptionBuilder()
@@ -145,14 +234,15 @@ public class DefaultSubscriptionBaseMigrationApi extends SubscriptionApiBase imp
                                                                                       .setCategory(productCategory)
                                                                                       .setBundleStartDate(migrationStartDate)
                                                                                       .setAlignStartDate(migrationStartDate),
-                                                                              emptyEvents);
+                                                                              emptyEvents, tenantContext);
         return new SubscriptionMigrationData(defaultSubscriptionBase, toEvents(defaultSubscriptionBase, now, ctd, events, context), ctd);
     }
 
     private SubscriptionMigrationData createSubscriptionMigrationDataWithBundleDate(final UUID bundleId, final ProductCategory productCategory,
-                                                                                    final SubscriptionMigrationCase[] input, final DateTime now, final DateTime bundleStartDate, final DateTime ctd, final CallContext context)
+                                                                                    final SubscriptionMigrationCase[] input, final DateTime now, final DateTime bundleStartDate, final DateTime ctd,
+                                                                                    final InternalTenantContext tenantContext, final CallContext context)
             throws SubscriptionBaseMigrationApiException {
-        final TimedMigration[] events = migrationAligner.getEventsMigration(input, now);
+        final TimedMigration[] events = migrationAligner.getEventsMigration(input, now, tenantContext);
         final DateTime migrationStartDate = events[0].getEventTime();
         final List<SubscriptionBaseEvent> emptyEvents = Collections.emptyList();
         final DefaultSubscriptionBase defaultSubscriptionBase = createSubscriptionForApiUse(new SubscriptionBuilder()
@@ -161,7 +251,7 @@ public class DefaultSubscriptionBaseMigrationApi extends SubscriptionApiBase imp
                                                                                       .setCategory(productCategory)
                                                                                       .setBundleStartDate(bundleStartDate)
                                                                                       .setAlignStartDate(migrationStartDate),
-                                                                              emptyEvents);
+                                                                              emptyEvents, tenantContext);
         return new SubscriptionMigrationData(defaultSubscriptionBase, toEvents(defaultSubscriptionBase, now, ctd, events, context), ctd);
     }
 
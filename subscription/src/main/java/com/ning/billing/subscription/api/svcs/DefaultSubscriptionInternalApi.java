@@ -16,6 +16,7 @@
 
 package com.ning.billing.subscription.api.svcs;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
@@ -27,9 +28,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.ning.billing.ErrorCode;
+import com.ning.billing.catalog.api.BillingActionPolicy;
 import com.ning.billing.catalog.api.Catalog;
 import com.ning.billing.catalog.api.CatalogApiException;
-import com.ning.billing.catalog.api.CatalogService;
 import com.ning.billing.catalog.api.Plan;
 import com.ning.billing.catalog.api.PlanPhase;
 import com.ning.billing.catalog.api.PlanPhaseSpecifier;
@@ -52,12 +53,14 @@ import com.ning.billing.subscription.api.user.SubscriptionBaseBundle;
 import com.ning.billing.subscription.api.user.SubscriptionBaseTransition;
 import com.ning.billing.subscription.api.user.SubscriptionBaseTransitionData;
 import com.ning.billing.subscription.api.user.SubscriptionBuilder;
+import com.ning.billing.subscription.api.user.SubscriptionSpecifier;
 import com.ning.billing.subscription.engine.addon.AddonUtils;
 import com.ning.billing.subscription.engine.dao.SubscriptionDao;
 import com.ning.billing.subscription.exceptions.SubscriptionBaseError;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalTenantContext;
 import com.ning.billing.util.events.EffectiveSubscriptionInternalEvent;
+import com.ning.billing.util.svcapi.catalog.CatalogInternalApi;
 import com.ning.billing.util.svcapi.subscription.SubscriptionBaseInternalApi;
 
 import com.google.common.base.Function;
@@ -75,9 +78,9 @@ public class DefaultSubscriptionInternalApi extends SubscriptionApiBase implemen
     public DefaultSubscriptionInternalApi(final SubscriptionDao dao,
                                           final DefaultSubscriptionBaseApiService apiService,
                                           final Clock clock,
-                                          final CatalogService catalogService,
+                                          final CatalogInternalApi catalogInternalApi,
                                           final AddonUtils addonUtils) {
-        super(dao, apiService, clock, catalogService);
+        super(dao, apiService, clock, catalogInternalApi);
         this.addonUtils = addonUtils;
     }
 
@@ -92,7 +95,7 @@ public class DefaultSubscriptionInternalApi extends SubscriptionApiBase implemen
             }
             final DateTime effectiveDate = requestedDate;
 
-            final Catalog catalog = catalogService.getFullCatalog();
+            final Catalog catalog = catalogInternalApi.getFullCatalog(context);
             final Plan plan = catalog.findPlan(spec.getProductName(), spec.getBillingPeriod(), realPriceList, requestedDate);
 
             final PlanPhase phase = plan.getAllPhases()[0];
@@ -151,6 +154,82 @@ public class DefaultSubscriptionInternalApi extends SubscriptionApiBase implemen
         }
     }
 
+    @Override
+    public List<SubscriptionBase> createBaseSubscriptionWithAddOns(final UUID bundleId, final List<PlanPhaseSpecifier> specs, final DateTime requestedDateWithMs,
+                                                                   final InternalCallContext context) throws SubscriptionBaseApiException {
+        if (specs.isEmpty()) {
+            return ImmutableList.<SubscriptionBase>of();
+        }
+
+        try {
+            final DateTime now = clock.getUTCNow();
+            final DateTime requestedDate = (requestedDateWithMs != null) ? DefaultClock.truncateMs(requestedDateWithMs) : now;
+            if (requestedDate.isAfter(now)) {
+                throw new SubscriptionBaseApiException(ErrorCode.SUB_INVALID_REQUESTED_DATE, now.toString(), requestedDate.toString());
+            }
+            final DateTime effectiveDate = requestedDate;
+
+            final SubscriptionBaseBundle bundle = dao.getSubscriptionBundleFromId(bundleId, context);
+            if (bundle == null) {
+                throw new SubscriptionBaseApiException(ErrorCode.SUB_CREATE_NO_BUNDLE, bundleId);
+            }
+
+            final DefaultSubscriptionBase baseSubscription = (DefaultSubscriptionBase) dao.getBaseSubscription(bundleId, context);
+            if (baseSubscription != null && baseSubscription.getState() == EntitlementState.ACTIVE) {
+                throw new SubscriptionBaseApiException(ErrorCode.SUB_CREATE_BP_EXISTS, bundleId);
+            }
+
+            final Catalog catalog = catalogInternalApi.getFullCatalog(context);
+            final List<SubscriptionSpecifier> subscriptions = new ArrayList<SubscriptionSpecifier>(specs.size());
+            Plan basePlan = null;
+            for (final PlanPhaseSpecifier spec : specs) {
+                final String realPriceList = (spec.getPriceListName() == null) ? PriceListSet.DEFAULT_PRICELIST_NAME : spec.getPriceListName();
+                final Plan plan = catalog.findPlan(spec.getProductName(), spec.getBillingPeriod(), realPriceList, requestedDate);
+
+                final PlanPhase phase = plan.getAllPhases()[0];
+                if (phase == null) {
+                    throw new SubscriptionBaseError(String.format("No initial PlanPhase for Product %s, term %s and set %s does not exist in the catalog",
+                                                                  spec.getProductName(), spec.getBillingPeriod().toString(), realPriceList));
+                }
+
+                if (basePlan == null) {
+                    if (plan.getProduct().getCategory() != ProductCategory.BASE) {
+                        throw new SubscriptionBaseApiException(ErrorCode.SUB_CREATE_NO_BP, bundleId);
+                    }
+                    basePlan = plan;
+                } else {
+                    if (plan.getProduct().getCategory() != ProductCategory.ADD_ON) {
+                        throw new SubscriptionBaseApiException(ErrorCode.SUB_CREATE_BP_EXISTS, bundleId);
+                    }
+                    addonUtils.checkAddonCreationRights(basePlan.getProduct(), plan);
+                }
+
+                // All subscriptions start with the base subscription, which defines the bundle start date
+                subscriptions.add(new SubscriptionSpecifier(new SubscriptionBuilder()
+                                                                    .setId(UUID.randomUUID())
+                                                                    .setBundleId(bundleId)
+                                                                    .setCategory(plan.getProduct().getCategory())
+                                                                    .setBundleStartDate(requestedDate)
+                                                                    .setAlignStartDate(effectiveDate),
+                                                            plan, spec.getPhaseType(), realPriceList));
+            }
+
+            final List<DefaultSubscriptionBase> createdSubscriptions = apiService.createPlans(subscriptions, requestedDate, effectiveDate, now, context.toCallContext());
+            return ImmutableList.<SubscriptionBase>copyOf(createdSubscriptions);
+        } catch (CatalogApiException e) {
+            throw new SubscriptionBaseApiException(e);
+        }
+    }
+
+    @Override
+    public void cancelSubscriptionsWithPolicy(final List<SubscriptionBase> subscriptions, final BillingActionPolicy policy, final InternalCallContext context) throws SubscriptionBaseApiException {
+        final List<DefaultSubscriptionBase> subscriptionsToBeCancelled = new ArrayList<DefaultSubscriptionBase>(subscriptions.size());
+        for (final SubscriptionBase subscription : subscriptions) {
+            subscriptionsToBeCancelled.add((DefaultSubscriptionBase) subscription);
+        }
+        apiService.cancelWithPolicy(subscriptionsToBeCancelled, policy, context);
+    }
+
     @Override
     public SubscriptionBaseBundle createBundleForAccount(final UUID accountId, final String bundleName, final InternalCallContext context) throws SubscriptionBaseApiException {
         final DefaultSubscriptionBaseBundle bundle = new DefaultSubscriptionBaseBundle(bundleName, accountId, clock.getUTCNow());
@@ -284,9 +363,9 @@ public class DefaultSubscriptionInternalApi extends SubscriptionApiBase implemen
 
             final DryRunChangeReason reason;
             // If baseProductName is null, it's a cancellation dry-run. In this case, return all addons, so they are cancelled
-            if (baseProductName != null && addonUtils.isAddonIncludedFromProdName(baseProductName, requestedDate, cur.getCurrentPlan())) {
+            if (baseProductName != null && addonUtils.isAddonIncludedFromProdName(baseProductName, requestedDate, cur.getCurrentPlan(), context)) {
                 reason = DryRunChangeReason.AO_INCLUDED_IN_NEW_PLAN;
-            } else if (baseProductName != null && addonUtils.isAddonAvailableFromProdName(baseProductName, requestedDate, cur.getCurrentPlan())) {
+            } else if (baseProductName != null && addonUtils.isAddonAvailableFromProdName(baseProductName, requestedDate, cur.getCurrentPlan(), context)) {
                 reason = DryRunChangeReason.AO_AVAILABLE_IN_NEW_PLAN;
             } else {
                 reason = DryRunChangeReason.AO_NOT_AVAILABLE_IN_NEW_PLAN;
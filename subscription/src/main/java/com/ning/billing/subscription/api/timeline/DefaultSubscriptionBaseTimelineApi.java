@@ -31,8 +31,8 @@ import javax.annotation.Nullable;
 import org.joda.time.DateTime;
 
 import com.ning.billing.ErrorCode;
+import com.ning.billing.catalog.api.Catalog;
 import com.ning.billing.catalog.api.CatalogApiException;
-import com.ning.billing.catalog.api.CatalogService;
 import com.ning.billing.catalog.api.ProductCategory;
 import com.ning.billing.subscription.api.SubscriptionApiBase;
 import com.ning.billing.subscription.api.SubscriptionBaseApiService;
@@ -53,6 +53,7 @@ import com.ning.billing.util.callcontext.CallContext;
 import com.ning.billing.util.callcontext.InternalCallContextFactory;
 import com.ning.billing.util.callcontext.InternalTenantContext;
 import com.ning.billing.util.callcontext.TenantContext;
+import com.ning.billing.util.svcapi.catalog.CatalogInternalApi;
 import com.ning.billing.clock.Clock;
 
 import com.google.common.base.Function;
@@ -63,7 +64,6 @@ import com.google.inject.name.Named;
 public class DefaultSubscriptionBaseTimelineApi extends SubscriptionApiBase implements SubscriptionBaseTimelineApi {
 
     private final RepairSubscriptionLifecycleDao repairDao;
-    private final CatalogService catalogService;
     private final InternalCallContextFactory internalCallContextFactory;
     private final AddonUtils addonUtils;
 
@@ -76,13 +76,12 @@ public class DefaultSubscriptionBaseTimelineApi extends SubscriptionApiBase impl
     }
 
     @Inject
-    public DefaultSubscriptionBaseTimelineApi(final CatalogService catalogService,
+    public DefaultSubscriptionBaseTimelineApi(final CatalogInternalApi catalogInternalApi,
                                               final SubscriptionBaseApiService apiService,
                                               @Named(DefaultSubscriptionModule.REPAIR_NAMED) final RepairSubscriptionLifecycleDao repairDao, final SubscriptionDao dao,
                                               @Named(DefaultSubscriptionModule.REPAIR_NAMED) final SubscriptionBaseApiService repairApiService,
                                               final InternalCallContextFactory internalCallContextFactory, final Clock clock, final AddonUtils addonUtils) {
-        super(dao, apiService, clock, catalogService);
-        this.catalogService = catalogService;
+        super(dao, apiService, clock, catalogInternalApi);
         this.repairDao = repairDao;
         this.internalCallContextFactory = internalCallContextFactory;
         this.repairApiService = repairApiService;
@@ -114,33 +113,36 @@ public class DefaultSubscriptionBaseTimelineApi extends SubscriptionApiBase impl
             if (bundle == null) {
                 throw new SubscriptionBaseRepairException(ErrorCode.SUB_REPAIR_UNKNOWN_BUNDLE, descBundle);
             }
-            final List<SubscriptionDataRepair> subscriptions = convertToSubscriptionsDataRepair(dao.getSubscriptions(bundle.getId(), internalCallContextFactory.createInternalTenantContext(context)));
+            final InternalTenantContext tenantContext = internalCallContextFactory.createInternalTenantContext(context);
+            final Catalog catalog = catalogInternalApi.getFullCatalog(tenantContext);
+            final List<SubscriptionDataRepair> subscriptions = convertToSubscriptionsDataRepair(dao.getSubscriptions(bundle.getId(), tenantContext), catalog);
             if (subscriptions.size() == 0) {
                 throw new SubscriptionBaseRepairException(ErrorCode.SUB_REPAIR_NO_ACTIVE_SUBSCRIPTIONS, bundle.getId());
             }
             final String viewId = getViewId(((DefaultSubscriptionBaseBundle) bundle).getLastSysUpdateDate(), subscriptions);
-            final List<SubscriptionBaseTimeline> repairs = createGetSubscriptionRepairList(subscriptions, Collections.<SubscriptionBaseTimeline>emptyList());
+            final List<SubscriptionBaseTimeline> repairs = createGetSubscriptionRepairList(subscriptions, Collections.<SubscriptionBaseTimeline>emptyList(), catalog);
             return createGetBundleRepair(bundle.getId(), bundle.getExternalKey(), viewId, repairs);
         } catch (CatalogApiException e) {
             throw new SubscriptionBaseRepairException(e);
         }
     }
 
-    private List<SubscriptionDataRepair> convertToSubscriptionsDataRepair(List<SubscriptionBase> input) {
+    private List<SubscriptionDataRepair> convertToSubscriptionsDataRepair(final List<SubscriptionBase> input, final Catalog catalog) {
         return new ArrayList<SubscriptionDataRepair>(Collections2.transform(input, new Function<SubscriptionBase, SubscriptionDataRepair>() {
             @Override
             public SubscriptionDataRepair apply(@Nullable final SubscriptionBase subscription) {
-                return convertToSubscriptionDataRepair((DefaultSubscriptionBase) subscription);
+                return convertToSubscriptionDataRepair((DefaultSubscriptionBase) subscription, catalog);
             }
         }));
     }
-    private SubscriptionDataRepair convertToSubscriptionDataRepair(DefaultSubscriptionBase input) {
-        return new SubscriptionDataRepair(input, repairApiService, (SubscriptionDao) repairDao, clock, addonUtils, catalogService, internalCallContextFactory);
+    private SubscriptionDataRepair convertToSubscriptionDataRepair(final DefaultSubscriptionBase input, final Catalog catalog) {
+        return new SubscriptionDataRepair(input, repairApiService, (SubscriptionDao) repairDao, clock, addonUtils, catalog, internalCallContextFactory);
     }
 
     @Override
     public BundleBaseTimeline repairBundle(final BundleBaseTimeline input, final boolean dryRun, final CallContext context) throws SubscriptionBaseRepairException {
         final InternalTenantContext tenantContext = internalCallContextFactory.createInternalTenantContext(context);
+        final Catalog catalog = catalogInternalApi.getFullCatalog(tenantContext);
         try {
             final SubscriptionBaseBundle bundle = dao.getSubscriptionBundleFromId(input.getId(), tenantContext);
             if (bundle == null) {
@@ -148,7 +150,7 @@ public class DefaultSubscriptionBaseTimelineApi extends SubscriptionApiBase impl
             }
 
             // Subscriptions are ordered with BASE subscription first-- if exists
-            final List<SubscriptionDataRepair> subscriptions = convertToSubscriptionsDataRepair(dao.getSubscriptions(input.getId(), tenantContext));
+            final List<SubscriptionDataRepair> subscriptions = convertToSubscriptionsDataRepair(dao.getSubscriptions(input.getId(), tenantContext), catalog);
             if (subscriptions.size() == 0) {
                 throw new SubscriptionBaseRepairException(ErrorCode.SUB_REPAIR_NO_ACTIVE_SUBSCRIPTIONS, input.getId());
             }
@@ -202,7 +204,7 @@ public class DefaultSubscriptionBaseTimelineApi extends SubscriptionApiBase impl
                         validateFirstNewEvent(curInputRepair, curRepair.getNewEvents().get(0), lastRemainingBPEventTime, lastRemainingEventTime);
                     }
 
-                    final SubscriptionDataRepair curOutputRepair = createSubscriptionDataRepair(curInputRepair, newBundleStartDate, newSubscriptionStartDate, remaining);
+                    final SubscriptionDataRepair curOutputRepair = createSubscriptionDataRepair(curInputRepair, newBundleStartDate, newSubscriptionStartDate, remaining, catalog);
                     repairDao.initializeRepair(curInputRepair.getId(), remaining, tenantContext);
                     inRepair.add(curOutputRepair);
                     if (curOutputRepair.getCategory() == ProductCategory.ADD_ON) {
@@ -223,7 +225,7 @@ public class DefaultSubscriptionBaseTimelineApi extends SubscriptionApiBase impl
                     // We need to add any existing addon that are not in the input repair list
                     for (final SubscriptionBase cur : subscriptions) {
                         if (cur.getCategory() == ProductCategory.ADD_ON && !inRepair.contains(cur)) {
-                            final SubscriptionDataRepair curOutputRepair = createSubscriptionDataRepair((SubscriptionDataRepair) cur, newBundleStartDate, null, ((SubscriptionDataRepair) cur).getEvents());
+                            final SubscriptionDataRepair curOutputRepair = createSubscriptionDataRepair((SubscriptionDataRepair) cur, newBundleStartDate, null, ((SubscriptionDataRepair) cur).getEvents(), catalog);
                             repairDao.initializeRepair(curOutputRepair.getId(), ((SubscriptionDataRepair) cur).getEvents(), tenantContext);
                             inRepair.add(curOutputRepair);
                             addOnSubscriptionInRepair.add(curOutputRepair);
@@ -233,7 +235,7 @@ public class DefaultSubscriptionBaseTimelineApi extends SubscriptionApiBase impl
                 case ADD_ON_REPAIR:
                     // We need to set the baseSubscription as it is useful to calculate addon validity
                     final SubscriptionDataRepair baseSubscription = (SubscriptionDataRepair) subscriptions.get(0);
-                    baseSubscriptionRepair = createSubscriptionDataRepair(baseSubscription, baseSubscription.getBundleStartDate(), baseSubscription.getAlignStartDate(), baseSubscription.getEvents());
+                    baseSubscriptionRepair = createSubscriptionDataRepair(baseSubscription, baseSubscription.getBundleStartDate(), baseSubscription.getAlignStartDate(), baseSubscription.getEvents(), catalog);
                     break;
                 case STANDALONE_REPAIR:
                 default:
@@ -256,7 +258,7 @@ public class DefaultSubscriptionBaseTimelineApi extends SubscriptionApiBase impl
             if (dryRun) {
                 baseSubscriptionRepair.addFutureAddonCancellation(addOnSubscriptionInRepair, context);
 
-                final List<SubscriptionBaseTimeline> repairs = createGetSubscriptionRepairList(subscriptions, convertDataRepair(inRepair));
+                final List<SubscriptionBaseTimeline> repairs = createGetSubscriptionRepairList(subscriptions, convertDataRepair(inRepair, catalog), catalog);
                 return createGetBundleRepair(input.getId(), bundle.getExternalKey(), input.getViewId(), repairs);
             } else {
                 dao.repair(bundle.getAccountId(), input.getId(), inRepair, internalCallContextFactory.createInternalCallContext(bundle.getAccountId(), context));
@@ -437,7 +439,8 @@ public class DefaultSubscriptionBaseTimelineApi extends SubscriptionApiBase impl
         };
     }
 
-    private List<SubscriptionBaseTimeline> createGetSubscriptionRepairList(final List<SubscriptionDataRepair> subscriptions, final List<SubscriptionBaseTimeline> inRepair) throws CatalogApiException {
+    private List<SubscriptionBaseTimeline> createGetSubscriptionRepairList(final List<SubscriptionDataRepair> subscriptions, final List<SubscriptionBaseTimeline> inRepair,
+                                                                            final Catalog catalog) throws CatalogApiException {
 
         final List<SubscriptionBaseTimeline> result = new LinkedList<SubscriptionBaseTimeline>();
         final Set<UUID> repairIds = new TreeSet<UUID>();
@@ -448,17 +451,17 @@ public class DefaultSubscriptionBaseTimelineApi extends SubscriptionApiBase impl
 
         for (final SubscriptionBase cur : subscriptions) {
             if (!repairIds.contains(cur.getId())) {
-                result.add(new DefaultSubscriptionBaseTimeline((SubscriptionDataRepair) cur, catalogService.getFullCatalog()));
+                result.add(new DefaultSubscriptionBaseTimeline((SubscriptionDataRepair) cur, catalog));
             }
         }
 
         return result;
     }
 
-    private List<SubscriptionBaseTimeline> convertDataRepair(final List<SubscriptionDataRepair> input) throws CatalogApiException {
+    private List<SubscriptionBaseTimeline> convertDataRepair(final List<SubscriptionDataRepair> input, final Catalog catalog) throws CatalogApiException {
         final List<SubscriptionBaseTimeline> result = new LinkedList<SubscriptionBaseTimeline>();
         for (final SubscriptionDataRepair cur : input) {
-            result.add(new DefaultSubscriptionBaseTimeline(cur, catalogService.getFullCatalog()));
+            result.add(new DefaultSubscriptionBaseTimeline(cur, catalog));
         }
 
         return result;
@@ -474,7 +477,8 @@ public class DefaultSubscriptionBaseTimelineApi extends SubscriptionApiBase impl
         return null;
     }
 
-    private SubscriptionDataRepair createSubscriptionDataRepair(final DefaultSubscriptionBase curData, final DateTime newBundleStartDate, final DateTime newSubscriptionStartDate, final List<SubscriptionBaseEvent> initialEvents) {
+    private SubscriptionDataRepair createSubscriptionDataRepair(final DefaultSubscriptionBase curData, final DateTime newBundleStartDate, final DateTime newSubscriptionStartDate, final List<SubscriptionBaseEvent> initialEvents,
+                                                                final Catalog catalog) {
         final SubscriptionBuilder builder = new SubscriptionBuilder(curData);
         builder.setActiveVersion(curData.getActiveVersion() + 1);
         if (newBundleStartDate != null) {
@@ -489,8 +493,8 @@ public class DefaultSubscriptionBaseTimelineApi extends SubscriptionApiBase impl
             }
         }
 
-        final SubscriptionDataRepair subscriptiondataRepair = new SubscriptionDataRepair(builder, curData.getEvents(), repairApiService, (SubscriptionDao) repairDao, clock, addonUtils, catalogService, internalCallContextFactory);
-        subscriptiondataRepair.rebuildTransitions(curData.getEvents(), catalogService.getFullCatalog());
+        final SubscriptionDataRepair subscriptiondataRepair = new SubscriptionDataRepair(builder, curData.getEvents(), repairApiService, (SubscriptionDao) repairDao, clock, addonUtils, catalog, internalCallContextFactory);
+        subscriptiondataRepair.rebuildTransitions(curData.getEvents(), catalog);
         return subscriptiondataRepair;
     }
 
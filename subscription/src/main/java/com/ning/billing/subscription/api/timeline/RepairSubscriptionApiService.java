@@ -18,7 +18,6 @@ package com.ning.billing.subscription.api.timeline;
 
 import org.joda.time.DateTime;
 
-import com.ning.billing.catalog.api.CatalogService;
 import com.ning.billing.clock.Clock;
 import com.ning.billing.subscription.alignment.PlanAligner;
 import com.ning.billing.subscription.api.SubscriptionBaseApiService;
@@ -29,6 +28,7 @@ import com.ning.billing.subscription.engine.dao.SubscriptionDao;
 import com.ning.billing.subscription.glue.DefaultSubscriptionModule;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalCallContextFactory;
+import com.ning.billing.util.svcapi.catalog.CatalogInternalApi;
 
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
@@ -38,11 +38,11 @@ public class RepairSubscriptionApiService extends DefaultSubscriptionBaseApiServ
     @Inject
     public RepairSubscriptionApiService(final Clock clock,
                                         @Named(DefaultSubscriptionModule.REPAIR_NAMED) final SubscriptionDao dao,
-                                        final CatalogService catalogService,
+                                        final CatalogInternalApi catalogInternalApi,
                                         final PlanAligner planAligner,
                                         final AddonUtils addonUtils,
                                         final InternalCallContextFactory internalCallContextFactory) {
-        super(clock, dao, catalogService, planAligner, addonUtils, internalCallContextFactory);
+        super(clock, dao, catalogInternalApi, planAligner, addonUtils, internalCallContextFactory);
     }
 
     // Nothing to do for repair as we pass all the repair events in the stream
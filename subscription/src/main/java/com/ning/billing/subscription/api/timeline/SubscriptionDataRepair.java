@@ -24,8 +24,8 @@ import org.joda.time.DateTime;
 
 import com.ning.billing.ErrorCode;
 import com.ning.billing.ObjectType;
+import com.ning.billing.catalog.api.Catalog;
 import com.ning.billing.catalog.api.CatalogApiException;
-import com.ning.billing.catalog.api.CatalogService;
 import com.ning.billing.catalog.api.Plan;
 import com.ning.billing.catalog.api.PlanPhaseSpecifier;
 import com.ning.billing.catalog.api.Product;
@@ -56,19 +56,19 @@ public class SubscriptionDataRepair extends DefaultSubscriptionBase {
     private final AddonUtils addonUtils;
     private final Clock clock;
     private final SubscriptionDao repairDao;
-    private final CatalogService catalogService;
+    private final Catalog catalog;
     private final List<SubscriptionBaseEvent> initialEvents;
     private final InternalCallContextFactory internalCallContextFactory;
 
 
     public SubscriptionDataRepair(final SubscriptionBuilder builder, final List<SubscriptionBaseEvent> initialEvents, final SubscriptionBaseApiService apiService,
-                                  final SubscriptionDao dao, final Clock clock, final AddonUtils addonUtils, final CatalogService catalogService,
+                                  final SubscriptionDao dao, final Clock clock, final AddonUtils addonUtils, final Catalog catalog,
                                   final InternalCallContextFactory internalCallContextFactory) {
         super(builder, apiService, clock);
         this.repairDao = dao;
         this.addonUtils = addonUtils;
         this.clock = clock;
-        this.catalogService = catalogService;
+        this.catalog = catalog;
         this.initialEvents = initialEvents;
         this.internalCallContextFactory = internalCallContextFactory;
     }
@@ -76,13 +76,13 @@ public class SubscriptionDataRepair extends DefaultSubscriptionBase {
 
 
     public SubscriptionDataRepair(final DefaultSubscriptionBase defaultSubscriptionBase, final SubscriptionBaseApiService apiService,
-                                  final SubscriptionDao dao, final Clock clock, final AddonUtils addonUtils, final CatalogService catalogService,
+                                  final SubscriptionDao dao, final Clock clock, final AddonUtils addonUtils, final Catalog catalog,
                                   final InternalCallContextFactory internalCallContextFactory) {
         super(defaultSubscriptionBase, apiService , clock);
         this.repairDao = dao;
         this.addonUtils = addonUtils;
         this.clock = clock;
-        this.catalogService = catalogService;
+        this.catalog = catalog;
         this.initialEvents = defaultSubscriptionBase.getEvents();
         this.internalCallContextFactory = internalCallContextFactory;
     }
@@ -185,7 +185,7 @@ public class SubscriptionDataRepair extends DefaultSubscriptionBase {
                                                                                 .setRequestedDate(now)
                                                                                 .setFromDisk(true));
                 repairDao.cancelSubscription(cur, cancelEvent, internalCallContextFactory.createInternalCallContext(cur.getId(), ObjectType.SUBSCRIPTION, context), 0);
-                cur.rebuildTransitions(repairDao.getEventsForSubscription(cur.getId(), internalCallContextFactory.createInternalTenantContext(context)), catalogService.getFullCatalog());
+                cur.rebuildTransitions(repairDao.getEventsForSubscription(cur.getId(), internalCallContextFactory.createInternalTenantContext(context)), catalog);
             }
         }
     }
@@ -16,8 +16,10 @@
 
 package com.ning.billing.subscription.api.transfer;
 
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
@@ -25,7 +27,6 @@ import org.joda.time.DateTime;
 import com.ning.billing.ErrorCode;
 import com.ning.billing.catalog.api.Catalog;
 import com.ning.billing.catalog.api.CatalogApiException;
-import com.ning.billing.catalog.api.CatalogService;
 import com.ning.billing.catalog.api.PlanPhase;
 import com.ning.billing.catalog.api.PlanPhaseSpecifier;
 import com.ning.billing.catalog.api.ProductCategory;
@@ -56,6 +57,7 @@ import com.ning.billing.entitlement.api.Entitlement.EntitlementState;
 import com.ning.billing.util.callcontext.CallContext;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalCallContextFactory;
+import com.ning.billing.util.svcapi.catalog.CatalogInternalApi;
 import com.ning.billing.clock.Clock;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -64,15 +66,13 @@ import com.google.inject.Inject;
 
 public class DefaultSubscriptionBaseTransferApi extends SubscriptionApiBase implements SubscriptionBaseTransferApi {
 
-    private final CatalogService catalogService;
     private final SubscriptionBaseTimelineApi timelineApi;
     private final InternalCallContextFactory internalCallContextFactory;
 
     @Inject
-    public DefaultSubscriptionBaseTransferApi(final Clock clock, final SubscriptionDao dao, final SubscriptionBaseTimelineApi timelineApi, final CatalogService catalogService,
+    public DefaultSubscriptionBaseTransferApi(final Clock clock, final SubscriptionDao dao, final SubscriptionBaseTimelineApi timelineApi, final CatalogInternalApi catalogInternalApi,
                                               final SubscriptionBaseApiService apiService, final InternalCallContextFactory internalCallContextFactory) {
-        super(dao, apiService, clock, catalogService);
-        this.catalogService = catalogService;
+        super(dao, apiService, clock, catalogInternalApi);
         this.timelineApi = timelineApi;
         this.internalCallContextFactory = internalCallContextFactory;
     }
@@ -82,7 +82,7 @@ public class DefaultSubscriptionBaseTransferApi extends SubscriptionApiBase impl
 
         SubscriptionBaseEvent newEvent = null;
 
-        final Catalog catalog = catalogService.getFullCatalog();
+        final Catalog catalog = catalogInternalApi.getFullCatalog(internalCallContextFactory.createInternalTenantContext(context));
 
         final DateTime effectiveDate = existingEvent.getEffectiveDate().isBefore(transferDate) ? transferDate : existingEvent.getEffectiveDate();
 
@@ -193,14 +193,64 @@ public class DefaultSubscriptionBaseTransferApi extends SubscriptionApiBase impl
         final InternalCallContext fromInternalCallContext = internalCallContextFactory.createInternalCallContext(sourceAccountId, context);
         final InternalCallContext toInternalCallContext = internalCallContextFactory.createInternalCallContext(destAccountId, context);
 
-        try {
-            final DateTime effectiveTransferDate = transferDate == null ? clock.getUTCNow() : transferDate;
-            if (effectiveTransferDate.isAfter(clock.getUTCNow())) {
-                // The transfer event for the migrated bundle will be the first one, which cannot be in the future
-                // (subscription always expects the first event to be in the past)
-                throw new SubscriptionBaseTransferApiException(ErrorCode.SUB_TRANSFER_INVALID_EFF_DATE, effectiveTransferDate);
+        final DateTime effectiveTransferDate = getEffectiveTransferDate(transferDate);
+        final List<TransferCancelData> transferCancelDataList = new LinkedList<TransferCancelData>();
+        final BundleMigrationData bundleMigrationData = createBundleTransferData(sourceAccountId, destAccountId, bundleKey, effectiveTransferDate, transferAddOn, cancelImmediately,
+                                                                                 transferCancelDataList, fromInternalCallContext, context);
+
+        // Atomically cancel all subscription on old account and create new bundle, subscriptions, events for new account
+        dao.transfer(sourceAccountId, destAccountId, bundleMigrationData, transferCancelDataList, fromInternalCallContext, toInternalCallContext);
+
+        return bundleMigrationData.getData();
+    }
+
+    @Override
+    public List<SubscriptionBaseBundle> transferBundles(final UUID sourceAccountId, final UUID destAccountId,
+                                                        final List<String> bundleKeys, final DateTime transferDate, final boolean transferAddOn,
+                                                        final boolean cancelImmediately, final CallContext context) throws SubscriptionBaseTransferApiException {
+        final InternalCallContext fromInternalCallContext = internalCallContextFactory.createInternalCallContext(sourceAccountId, context);
+        final InternalCallContext toInternalCallContext = internalCallContextFactory.createInternalCallContext(destAccountId, context);
+
+        final DateTime effectiveTransferDate = getEffectiveTransferDate(transferDate);
+        final List<TransferCancelData> transferCancelDataList = new LinkedList<TransferCancelData>();
+        final List<BundleMigrationData> bundleMigrationDataList = new LinkedList<BundleMigrationData>();
+        final Set<String> seenBundleKeys = new HashSet<String>();
+        for (final String bundleKey : bundleKeys) {
+            if (!seenBundleKeys.add(bundleKey)) {
+                // The same bundle cannot be transferred twice
+                continue;
             }
+            bundleMigrationDataList.add(createBundleTransferData(sourceAccountId, destAccountId, bundleKey, effectiveTransferDate, transferAddOn, cancelImmediately,
+                                                                 transferCancelDataList, fromInternalCallContext, context));
+        }
+
+        // Atomically cancel all subscriptions on old account and create new bundles, subscriptions, events for new account
+        dao.transfer(sourceAccountId, destAccountId, bundleMigrationDataList, transferCancelDataList, fromInternalCallContext, toInternalCallContext);
 
+        final List<SubscriptionBaseBundle> result = new LinkedList<SubscriptionBaseBundle>();
+        for (final BundleMigrationData bundleMigrationData : bundleMigrationDataList) {
+            result.add(bundleMigrationData.getData());
+        }
+        return result;
+    }
+
+    private DateTime getEffectiveTransferDate(final DateTime transferDate) throws SubscriptionBaseTransferApiException {
+        final DateTime effectiveTransferDate = transferDate == null ? clock.getUTCNow() : transferDate;
+        if (effectiveTransferDate.isAfter(clock.getUTCNow())) {
+            // The transfer event for the migrated bundle will be the first one, which cannot be in the future
+            // (subscription always expects the first event to be in the past)
+            throw new SubscriptionBaseTransferApiException(ErrorCode.SUB_TRANSFER_INVALID_EFF_DATE, effectiveTransferDate);
+        }
+        return effectiveTransferDate;
+    }
+
+    //
+    // Compute the new bundle for the destination account, and add the cancellations on the source account to transferCancelDataList
+    //
+    private BundleMigrationData createBundleTransferData(final UUID sourceAccountId, final UUID destAccountId, final String bundleKey, final DateTime effectiveTransferDate,
+                                                         final boolean transferAddOn, final boolean cancelImmediately, final List<TransferCancelData> transferCancelDataList,
+                                                         final InternalCallContext fromInternalCallContext, final CallContext context) throws SubscriptionBaseTransferApiException {
+        try {
             final SubscriptionBaseBundle bundle = dao.getSubscriptionBundleFromAccountAndKey(sourceAccountId, bundleKey, fromInternalCallContext);
             if (bundle == null) {
                 throw new SubscriptionBaseTransferApiException(ErrorCode.SUB_CREATE_NO_BUNDLE, bundleKey);
@@ -212,8 +262,6 @@ public class DefaultSubscriptionBaseTransferApi extends SubscriptionApiBase impl
             final DefaultSubscriptionBaseBundle subscriptionBundleData = new DefaultSubscriptionBaseBundle(bundleKey, destAccountId, effectiveTransferDate);
             final List<SubscriptionMigrationData> subscriptionMigrationDataList = new LinkedList<SubscriptionMigrationData>();
 
-            final List<TransferCancelData> transferCancelDataList = new LinkedList<TransferCancelData>();
-
             DateTime bundleStartdate = null;
 
             for (final SubscriptionBaseTimeline cur : bundleBaseTimeline.getSubscriptions()) {
@@ -260,18 +308,13 @@ public class DefaultSubscriptionBaseTransferApi extends SubscriptionApiBase impl
                                                                                               .setCategory(productCategory)
                                                                                               .setBundleStartDate(effectiveTransferDate)
                                                                                               .setAlignStartDate(subscriptionAlignStartDate),
-                                                                                      ImmutableList.<SubscriptionBaseEvent>of());
+                                                                                      ImmutableList.<SubscriptionBaseEvent>of(), fromInternalCallContext);
 
                 final List<SubscriptionBaseEvent> events = toEvents(existingEvents, defaultSubscriptionBase, effectiveTransferDate, context);
                 final SubscriptionMigrationData curData = new SubscriptionMigrationData(defaultSubscriptionBase, events, null);
                 subscriptionMigrationDataList.add(curData);
             }
-            BundleMigrationData bundleMigrationData = new BundleMigrationData(subscriptionBundleData, subscriptionMigrationDataList);
-
-            // Atomically cancel all subscription on old account and create new bundle, subscriptions, events for new account
-            dao.transfer(sourceAccountId, destAccountId, bundleMigrationData, transferCancelDataList, fromInternalCallContext, toInternalCallContext);
-
-            return bundleMigrationData.getData();
+            return new BundleMigrationData(subscriptionBundleData, subscriptionMigrationDataList);
         } catch (SubscriptionBaseRepairException e) {
             throw new SubscriptionBaseTransferApiException(e);
         }
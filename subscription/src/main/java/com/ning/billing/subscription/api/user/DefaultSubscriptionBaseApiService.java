@@ -17,8 +17,14 @@
 package com.ning.billing.subscription.api.user;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
@@ -27,8 +33,8 @@ import com.ning.billing.ErrorCode;
 import com.ning.billing.ObjectType;
 import com.ning.billing.catalog.api.BillingActionPolicy;
 import com.ning.billing.catalog.api.BillingPeriod;
+import com.ning.billing.catalog.api.Catalog;
 import com.ning.billing.catalog.api.CatalogApiException;
-import com.ning.billing.catalog.api.CatalogService;
 import com.ning.billing.catalog.api.PhaseType;
 import com.ning.billing.catalog.api.Plan;
 import com.ning.billing.catalog.api.PlanChangeResult;
@@ -60,6 +66,7 @@ import com.ning.billing.subscription.exceptions.SubscriptionBaseError;
 import com.ning.billing.util.callcontext.CallContext;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalCallContextFactory;
+import com.ning.billing.util.svcapi.catalog.CatalogInternalApi;
 import com.ning.billing.clock.Clock;
 import com.ning.billing.clock.DefaultClock;
 
@@ -69,17 +76,17 @@ public class DefaultSubscriptionBaseApiService implements SubscriptionBaseApiSer
 
     private final Clock clock;
     private final SubscriptionDao dao;
-    private final CatalogService catalogService;
+    private final CatalogInternalApi catalogInternalApi;
     private final PlanAligner planAligner;
     private final AddonUtils addonUtils;
     private final InternalCallContextFactory internalCallContextFactory;
 
     @Inject
-    public DefaultSubscriptionBaseApiService(final Clock clock, final SubscriptionDao dao, final CatalogService catalogService,
+    public DefaultSubscriptionBaseApiService(final Clock clock, final SubscriptionDao dao, final CatalogInternalApi catalogInternalApi,
                                              final PlanAligner planAligner, final AddonUtils addonUtils,
                                              final InternalCallContextFactory internalCallContextFactory) {
         this.clock = clock;
-        this.catalogService = catalogService;
+        this.catalogInternalApi = catalogInternalApi;
         this.planAligner = planAligner;
         this.dao = dao;
         this.addonUtils = addonUtils;
@@ -97,6 +104,39 @@ public class DefaultSubscriptionBaseApiService implements SubscriptionBaseApiSer
         return subscription;
     }
 
+    @Override
+    public List<DefaultSubscriptionBase> createPlans(final List<SubscriptionSpecifier> subscriptions, final DateTime requestedDate, final DateTime effectiveDate,
+                                                     final DateTime processedDate, final CallContext context) throws SubscriptionBaseApiException {
+        if (subscriptions.isEmpty()) {
+            return ImmutableList.<DefaultSubscriptionBase>of();
+        }
+
+        final UUID bundleId = subscriptions.get(0).getBuilder().getBundleId();
+        final InternalCallContext internalCallContext = createCallContextFromBundleId(bundleId, context);
+
+        try {
+            final List<DefaultSubscriptionBase> createdSubscriptions = new ArrayList<DefaultSubscriptionBase>(subscriptions.size());
+            final List<List<SubscriptionBaseEvent>> initialEvents = new ArrayList<List<SubscriptionBaseEvent>>(subscriptions.size());
+            for (final SubscriptionSpecifier cur : subscriptions) {
+                final DefaultSubscriptionBase subscription = new DefaultSubscriptionBase(cur.getBuilder(), this, clock);
+                createdSubscriptions.add(subscription);
+                initialEvents.add(getEventsOnCreation(subscription, cur.getPlan(), cur.getInitialPhase(), cur.getRealPriceList(), requestedDate, effectiveDate, processedDate, false, internalCallContext));
+            }
+
+            dao.createSubscriptions(createdSubscriptions, initialEvents, internalCallContext);
+
+            // Read back the events of the whole bundle at once
+            final Catalog catalog = catalogInternalApi.getFullCatalog(internalCallContext);
+            final Map<UUID, List<SubscriptionBaseEvent>> eventsForBundle = dao.getEventsForBundle(bundleId, internalCallContext);
+            for (final DefaultSubscriptionBase subscription : createdSubscriptions) {
+                subscription.rebuildTransitions(eventsForBundle.get(subscription.getId()), catalog);
+            }
+            return createdSubscriptions;
+        } catch (CatalogApiException e) {
+            throw new SubscriptionBaseApiException(e);
+        }
+    }
+
     @Deprecated
     @Override
     public boolean recreatePlan(final DefaultSubscriptionBase subscription, final PlanPhaseSpecifier spec, final DateTime requestedDateWithMs, final CallContext context)
@@ -111,8 +151,9 @@ public class DefaultSubscriptionBaseApiService implements SubscriptionBaseApiSer
         validateRequestedDate(subscription, now, requestedDate);
 
         try {
+            final InternalCallContext internalCallContext = createCallContextFromBundleId(subscription.getBundleId(), context);
             final String realPriceList = (spec.getPriceListName() == null) ? PriceListSet.DEFAULT_PRICELIST_NAME : spec.getPriceListName();
-            final Plan plan = catalogService.getFullCatalog().findPlan(spec.getProductName(), spec.getBillingPeriod(), realPriceList, requestedDate);
+            final Plan plan = catalogInternalApi.getFullCatalog(internalCallContext).findPlan(spec.getProductName(), spec.getBillingPeriod(), realPriceList, requestedDate);
             final PlanPhase phase = plan.getAllPhases()[0];
             if (phase == null) {
                 throw new SubscriptionBaseError(String.format("No initial PlanPhase for Product %s, term %s and set %s does not exist in the catalog",
@@ -135,40 +176,47 @@ public class DefaultSubscriptionBaseApiService implements SubscriptionBaseApiSer
         final InternalCallContext internalCallContext = createCallContextFromBundleId(subscription.getBundleId(), context);
 
         try {
-            final TimedPhase[] curAndNextPhases = planAligner.getCurrentAndNextTimedPhaseOnCreate(subscription, plan, initialPhase, realPriceList, requestedDate, effectiveDate);
-
-            final ApiEventBuilder createBuilder = new ApiEventBuilder()
-                    .setSubscriptionId(subscription.getId())
-                    .setEventPlan(plan.getName())
-                    .setEventPlanPhase(curAndNextPhases[0].getPhase().getName())
-                    .setEventPriceList(realPriceList)
-                    .setActiveVersion(subscription.getActiveVersion())
-                    .setProcessedDate(processedDate)
-                    .setEffectiveDate(effectiveDate)
-                    .setRequestedDate(requestedDate)
-                    .setFromDisk(true);
-            final ApiEvent creationEvent = (reCreate) ? new ApiEventReCreate(createBuilder) : new ApiEventCreate(createBuilder);
-
-            final TimedPhase nextTimedPhase = curAndNextPhases[1];
-            final PhaseEvent nextPhaseEvent = (nextTimedPhase != null) ?
-                                              PhaseEventData.createNextPhaseEvent(nextTimedPhase.getPhase().getName(), subscription, processedDate, nextTimedPhase.getStartPhase()) :
-                                              null;
-            final List<SubscriptionBaseEvent> events = new ArrayList<SubscriptionBaseEvent>();
-            events.add(creationEvent);
-            if (nextPhaseEvent != null) {
-                events.add(nextPhaseEvent);
-            }
+            final List<SubscriptionBaseEvent> events = getEventsOnCreation(subscription, plan, initialPhase, realPriceList, requestedDate, effectiveDate, processedDate, reCreate, internalCallContext);
             if (reCreate) {
                 dao.recreateSubscription(subscription, events, internalCallContext);
             } else {
                 dao.createSubscription(subscription, events, internalCallContext);
             }
-            subscription.rebuildTransitions(dao.getEventsForSubscription(subscription.getId(), internalCallContext), catalogService.getFullCatalog());
+            subscription.rebuildTransitions(dao.getEventsForSubscription(subscription.getId(), internalCallContext), catalogInternalApi.getFullCatalog(internalCallContext));
         } catch (CatalogApiException e) {
             throw new SubscriptionBaseApiException(e);
         }
     }
 
+    private List<SubscriptionBaseEvent> getEventsOnCreation(final DefaultSubscriptionBase subscription, final Plan plan, final PhaseType initialPhase,
+                                                            final String realPriceList, final DateTime requestedDate, final DateTime effectiveDate, final DateTime processedDate,
+                                                            final boolean reCreate, final InternalCallContext internalCallContext) throws CatalogApiException, SubscriptionBaseApiException {
+        final TimedPhase[] curAndNextPhases = planAligner.getCurrentAndNextTimedPhaseOnCreate(subscription, plan, initialPhase, realPriceList, requestedDate, effectiveDate, internalCallContext);
+
+        final ApiEventBuilder createBuilder = new ApiEventBuilder()
+                .setSubscriptionId(subscription.getId())
+                .setEventPlan(plan.getName())
+                .setEventPlanPhase(curAndNextPhases[0].getPhase().getName())
+                .setEventPriceList(realPriceList)
+                .setActiveVersion(subscription.getActiveVersion())
+                .setProcessedDate(processedDate)
+                .setEffectiveDate(effectiveDate)
+                .setRequestedDate(requestedDate)
+                .setFromDisk(true);
+        final ApiEvent creationEvent = (reCreate) ? new ApiEventReCreate(createBuilder) : new ApiEventCreate(createBuilder);
+
+        final TimedPhase nextTimedPhase = curAndNextPhases[1];
+        final PhaseEvent nextPhaseEvent = (nextTimedPhase != null) ?
+                                          PhaseEventData.createNextPhaseEvent(nextTimedPhase.getPhase().getName(), subscription, processedDate, nextTimedPhase.getStartPhase()) :
+                                          null;
+        final List<SubscriptionBaseEvent> events = new ArrayList<SubscriptionBaseEvent>();
+        events.add(creationEvent);
+        if (nextPhaseEvent != null) {
+            events.add(nextPhaseEvent);
+        }
+        return events;
+    }
+
     @Override
     public boolean cancel(final DefaultSubscriptionBase subscription, final DateTime requestedDateWithMs, final CallContext context) throws SubscriptionBaseApiException {
         try {
@@ -186,7 +234,8 @@ public class DefaultSubscriptionBaseApiService implements SubscriptionBaseApiSer
                                                                         subscription.getCurrentPriceList().getName(),
                                                                         subscription.getCurrentPhase().getPhaseType());
 
-            final BillingActionPolicy policy = catalogService.getFullCatalog().planCancelPolicy(planPhase, requestedDate);
+            final InternalCallContext internalCallContext = createCallContextFromBundleId(subscription.getBundleId(), context);
+            final BillingActionPolicy policy = catalogInternalApi.getFullCatalog(internalCallContext).planCancelPolicy(planPhase, requestedDate);
 
             return doCancelPlan(subscription, requestedDateWithMs, now, policy, context);
         } catch (CatalogApiException e) {
@@ -204,23 +253,73 @@ public class DefaultSubscriptionBaseApiService implements SubscriptionBaseApiSer
         return doCancelPlan(subscription, requestedDateWithMs, now, policy, context);
     }
 
+    @Override
+    public int cancelWithPolicy(final List<DefaultSubscriptionBase> subscriptions, final BillingActionPolicy policy, final InternalCallContext context) throws SubscriptionBaseApiException {
+        if (subscriptions.isEmpty()) {
+            return 0;
+        }
+
+        final DateTime now = clock.getUTCNow();
+        final List<DefaultSubscriptionBase> subscriptionsToBeCancelled = new LinkedList<DefaultSubscriptionBase>();
+        final List<SubscriptionBaseEvent> cancelEvents = new LinkedList<SubscriptionBaseEvent>();
+        final Set<UUID> cancelledSubscriptionIds = new HashSet<UUID>();
+        // Bundles whose base subscription is cancelled immediately, with the effective date of the cancellation
+        final Map<UUID, DateTime> bundlesWithCancelledBase = new LinkedHashMap<UUID, DateTime>();
+        for (final DefaultSubscriptionBase subscription : subscriptions) {
+            final EntitlementState currentState = subscription.getState();
+            if (currentState != EntitlementState.ACTIVE) {
+                throw new SubscriptionBaseApiException(ErrorCode.SUB_CANCEL_BAD_STATE, subscription.getId(), currentState);
+            }
+            validateRequestedDate(subscription, now, now);
+            final DateTime effectiveDate = subscription.getPlanChangeEffectiveDate(policy, now);
+
+            subscriptionsToBeCancelled.add(subscription);
+            cancelEvents.add(createCancelEvent(subscription, now, effectiveDate, now));
+            cancelledSubscriptionIds.add(subscription.getId());
+            if (subscription.getCategory() == ProductCategory.BASE && effectiveDate.compareTo(now) <= 0) {
+                bundlesWithCancelledBase.put(subscription.getBundleId(), effectiveDate);
+            }
+        }
+
+        // Same as cancelAddOnsIfRequired, but each bundle is only loaded once
+        for (final Entry<UUID, DateTime> entry : bundlesWithCancelledBase.entrySet()) {
+            for (final SubscriptionBase subscription : dao.getSubscriptions(entry.getKey(), context)) {
+                final DefaultSubscriptionBase cur = (DefaultSubscriptionBase) subscription;
+                if (cancelledSubscriptionIds.contains(cur.getId()) ||
+                    cur.getState() == EntitlementState.CANCELLED ||
+                    cur.getCategory() != ProductCategory.ADD_ON) {
+                    continue;
+                }
+                subscriptionsToBeCancelled.add(cur);
+                cancelEvents.add(createCancelEvent(cur, now, entry.getValue(), now));
+            }
+        }
+
+        dao.cancelSubscriptions(subscriptionsToBeCancelled, cancelEvents, context);
+
+        // Read back the events of each bundle at once
+        final Catalog catalog = catalogInternalApi.getFullCatalog(context);
+        final Map<UUID, Map<UUID, List<SubscriptionBaseEvent>>> eventsPerBundle = new HashMap<UUID, Map<UUID, List<SubscriptionBaseEvent>>>();
+        for (final DefaultSubscriptionBase subscription : subscriptions) {
+            if (eventsPerBundle.get(subscription.getBundleId()) == null) {
+                eventsPerBundle.put(subscription.getBundleId(), dao.getEventsForBundle(subscription.getBundleId(), context));
+            }
+            subscription.rebuildTransitions(eventsPerBundle.get(subscription.getBundleId()).get(subscription.getId()), catalog);
+        }
+        return subscriptionsToBeCancelled.size();
+    }
+
     private boolean doCancelPlan(final DefaultSubscriptionBase subscription, final DateTime requestedDateWithMs, final DateTime now, final BillingActionPolicy policy, final CallContext context) throws SubscriptionBaseApiException {
 
         final DateTime requestedDate = (requestedDateWithMs != null) ? DefaultClock.truncateMs(requestedDateWithMs) : now;
         validateRequestedDate(subscription, now, requestedDate);
         final DateTime effectiveDate = subscription.getPlanChangeEffectiveDate(policy, requestedDate);
 
-        final SubscriptionBaseEvent cancelEvent = new ApiEventCancel(new ApiEventBuilder()
-                                                                        .setSubscriptionId(subscription.getId())
-                                                                        .setActiveVersion(subscription.getActiveVersion())
-                                                                        .setProcessedDate(now)
-                                                                        .setEffectiveDate(effectiveDate)
-                                                                        .setRequestedDate(requestedDate)
-                                                                        .setFromDisk(true));
+        final SubscriptionBaseEvent cancelEvent = createCancelEvent(subscription, now, effectiveDate, requestedDate);
 
         final InternalCallContext internalCallContext = createCallContextFromBundleId(subscription.getBundleId(), context);
         dao.cancelSubscription(subscription, cancelEvent, internalCallContext, 0);
-        subscription.rebuildTransitions(dao.getEventsForSubscription(subscription.getId(), internalCallContext), catalogService.getFullCatalog());
+        subscription.rebuildTransitions(dao.getEventsForSubscription(subscription.getId(), internalCallContext), catalogInternalApi.getFullCatalog(internalCallContext));
 
         cancelAddOnsIfRequired(subscription, effectiveDate, internalCallContext);
 
@@ -234,6 +333,7 @@ public class DefaultSubscriptionBaseApiService implements SubscriptionBaseApiSer
         }
 
         final DateTime now = clock.getUTCNow();
+        final InternalCallContext internalCallContext = createCallContextFromBundleId(subscription.getBundleId(), context);
         final SubscriptionBaseEvent uncancelEvent = new ApiEventUncancel(new ApiEventBuilder()
                                                                             .setSubscriptionId(subscription.getId())
                                                                             .setActiveVersion(subscription.getActiveVersion())
@@ -245,7 +345,7 @@ public class DefaultSubscriptionBaseApiService implements SubscriptionBaseApiSer
         final List<SubscriptionBaseEvent> uncancelEvents = new ArrayList<SubscriptionBaseEvent>();
         uncancelEvents.add(uncancelEvent);
 
-        final TimedPhase nextTimedPhase = planAligner.getNextTimedPhase(subscription, now, now);
+        final TimedPhase nextTimedPhase = planAligner.getNextTimedPhase(subscription, now, now, internalCallContext);
         final PhaseEvent nextPhaseEvent = (nextTimedPhase != null) ?
                                           PhaseEventData.createNextPhaseEvent(nextTimedPhase.getPhase().getName(), subscription, now, nextTimedPhase.getStartPhase()) :
                                           null;
@@ -253,9 +353,8 @@ public class DefaultSubscriptionBaseApiService implements SubscriptionBaseApiSer
             uncancelEvents.add(nextPhaseEvent);
         }
 
-        final InternalCallContext internalCallContext = createCallContextFromBundleId(subscription.getBundleId(), context);
         dao.uncancelSubscription(subscription, uncancelEvents, internalCallContext);
-        subscription.rebuildTransitions(dao.getEventsForSubscription(subscription.getId(), internalCallContext), catalogService.getFullCatalog());
+        subscription.rebuildTransitions(dao.getEventsForSubscription(subscription.getId(), internalCallContext), catalogInternalApi.getFullCatalog(internalCallContext));
 
         return true;
     }
@@ -270,7 +369,7 @@ public class DefaultSubscriptionBaseApiService implements SubscriptionBaseApiSer
         validateRequestedDate(subscription, now, requestedDate);
         validateEntitlementState(subscription);
 
-        final PlanChangeResult planChangeResult = getPlanChangeResult(subscription, productName, term, priceList, requestedDate);
+        final PlanChangeResult planChangeResult = getPlanChangeResult(subscription, productName, term, priceList, requestedDate, context);
         final BillingActionPolicy policy = planChangeResult.getPolicy();
 
         try {
@@ -290,7 +389,7 @@ public class DefaultSubscriptionBaseApiService implements SubscriptionBaseApiSer
         validateRequestedDate(subscription, now, requestedDate);
         validateEntitlementState(subscription);
 
-        final PlanChangeResult planChangeResult = getPlanChangeResult(subscription, productName, term, priceList, requestedDate);
+        final PlanChangeResult planChangeResult = getPlanChangeResult(subscription, productName, term, priceList, requestedDate, context);
 
         try {
             return doChangePlan(subscription, planChangeResult, now, requestedDate, productName, term, policy, context);
@@ -300,10 +399,12 @@ public class DefaultSubscriptionBaseApiService implements SubscriptionBaseApiSer
     }
 
     private PlanChangeResult getPlanChangeResult(final DefaultSubscriptionBase subscription, final String productName,
-                                                 final BillingPeriod term, final String priceList, final DateTime requestedDate) throws SubscriptionBaseApiException {
+                                                 final BillingPeriod term, final String priceList, final DateTime requestedDate,
+                                                 final CallContext context) throws SubscriptionBaseApiException {
         final PlanChangeResult planChangeResult;
         try {
-            final Product destProduct = catalogService.getFullCatalog().findProduct(productName, requestedDate);
+            final Catalog catalog = catalogInternalApi.getFullCatalog(createCallContextFromBundleId(subscription.getBundleId(), context));
+            final Product destProduct = catalog.findProduct(productName, requestedDate);
             final Plan currentPlan = subscription.getCurrentPlan();
             final PriceList currentPriceList = subscription.getCurrentPriceList();
             final PlanPhaseSpecifier fromPlanPhase = new PlanPhaseSpecifier(currentPlan.getProduct().getName(),
@@ -316,7 +417,7 @@ public class DefaultSubscriptionBaseApiService implements SubscriptionBaseApiSer
                                                                 term,
                                                                 priceList);
 
-            planChangeResult = catalogService.getFullCatalog().planChange(fromPlanPhase, toPlanPhase, requestedDate);
+            planChangeResult = catalog.planChange(fromPlanPhase, toPlanPhase, requestedDate);
         } catch (CatalogApiException e) {
             throw new SubscriptionBaseApiException(e);
         }
@@ -329,10 +430,11 @@ public class DefaultSubscriptionBaseApiService implements SubscriptionBaseApiSer
                                  final BillingPeriod term, final BillingActionPolicy policy, final CallContext context) throws SubscriptionBaseApiException, CatalogApiException {
         final PriceList newPriceList = planChangeResult.getNewPriceList();
 
-        final Plan newPlan = catalogService.getFullCatalog().findPlan(productName, term, newPriceList.getName(), requestedDate, subscription.getStartDate());
+        final InternalCallContext internalCallContext = createCallContextFromBundleId(subscription.getBundleId(), context);
+        final Plan newPlan = catalogInternalApi.getFullCatalog(internalCallContext).findPlan(productName, term, newPriceList.getName(), requestedDate, subscription.getStartDate());
         final DateTime effectiveDate = subscription.getPlanChangeEffectiveDate(policy, requestedDate);
 
-        final TimedPhase currentTimedPhase = planAligner.getCurrentTimedPhaseOnChange(subscription, newPlan, newPriceList.getName(), requestedDate, effectiveDate);
+        final TimedPhase currentTimedPhase = planAligner.getCurrentTimedPhaseOnChange(subscription, newPlan, newPriceList.getName(), requestedDate, effectiveDate, internalCallContext);
 
         final SubscriptionBaseEvent changeEvent = new ApiEventChange(new ApiEventBuilder()
                                                                         .setSubscriptionId(subscription.getId())
@@ -345,7 +447,7 @@ public class DefaultSubscriptionBaseApiService implements SubscriptionBaseApiSer
                                                                         .setRequestedDate(requestedDate)
                                                                         .setFromDisk(true));
 
-        final TimedPhase nextTimedPhase = planAligner.getNextTimedPhaseOnChange(subscription, newPlan, newPriceList.getName(), requestedDate, effectiveDate);
+        final TimedPhase nextTimedPhase = planAligner.getNextTimedPhaseOnChange(subscription, newPlan, newPriceList.getName(), requestedDate, effectiveDate, internalCallContext);
         final PhaseEvent nextPhaseEvent = (nextTimedPhase != null) ?
                                           PhaseEventData.createNextPhaseEvent(nextTimedPhase.getPhase().getName(), subscription, now, nextTimedPhase.getStartPhase()) :
                                           null;
@@ -357,9 +459,8 @@ public class DefaultSubscriptionBaseApiService implements SubscriptionBaseApiSer
         }
         changeEvents.add(changeEvent);
 
-        final InternalCallContext internalCallContext = createCallContextFromBundleId(subscription.getBundleId(), context);
         dao.changePlan(subscription, changeEvents, internalCallContext);
-        subscription.rebuildTransitions(dao.getEventsForSubscription(subscription.getId(), internalCallContext), catalogService.getFullCatalog());
+        subscription.rebuildTransitions(dao.getEventsForSubscription(subscription.getId(), internalCallContext), catalogInternalApi.getFullCatalog(internalCallContext));
 
         cancelAddOnsIfRequired(subscription, effectiveDate, internalCallContext);
 
@@ -396,15 +497,8 @@ public class DefaultSubscriptionBaseApiService implements SubscriptionBaseApiSer
                 //
                 // Perform AO cancellation using the effectiveDate of the BP
                 //
-                final SubscriptionBaseEvent cancelEvent = new ApiEventCancel(new ApiEventBuilder()
-                                                                                .setSubscriptionId(cur.getId())
-                                                                                .setActiveVersion(cur.getActiveVersion())
-                                                                                .setProcessedDate(now)
-                                                                                .setEffectiveDate(effectiveDate)
-                                                                                .setRequestedDate(now)
-                                                                                .setFromDisk(true));
                 subscriptionsToBeCancelled.add(cur);
-                cancelEvents.add(cancelEvent);
+                cancelEvents.add(createCancelEvent(cur, now, effectiveDate, now));
             }
         }
 
@@ -413,6 +507,16 @@ public class DefaultSubscriptionBaseApiService implements SubscriptionBaseApiSer
     }
 
 
+    private SubscriptionBaseEvent createCancelEvent(final DefaultSubscriptionBase subscription, final DateTime processedDate, final DateTime effectiveDate, final DateTime requestedDate) {
+        return new ApiEventCancel(new ApiEventBuilder()
+                                          .setSubscriptionId(subscription.getId())
+                                          .setActiveVersion(subscription.getActiveVersion())
+                                          .setProcessedDate(processedDate)
+                                          .setEffectiveDate(effectiveDate)
+                                          .setRequestedDate(requestedDate)
+                                          .setFromDisk(true));
+    }
+
     private void validateRequestedDate(final DefaultSubscriptionBase subscription, final DateTime now, final DateTime requestedDate)
             throws SubscriptionBaseApiException {
 
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.ning.billing.subscription.api.user;
+
+import com.ning.billing.catalog.api.PhaseType;
+import com.ning.billing.catalog.api.Plan;
+
+/**
+ * One subscription to create, as part of a bulk creation (see SubscriptionBaseApiService#createPlans).
+ */
+public class SubscriptionSpecifier {
+
+    private final SubscriptionBuilder builder;
+    private final Plan plan;
+    private final PhaseType initialPhase;
+    private final String realPriceList;
+
+    public SubscriptionSpecifier(final SubscriptionBuilder builder, final Plan plan, final PhaseType initialPhase, final String realPriceList) {
+        this.builder = builder;
+        this.plan = plan;
+        this.initialPhase = initialPhase;
+        this.realPriceList = realPriceList;
+    }
+
+    public SubscriptionBuilder getBuilder() {
+        return builder;
+    }
+
+    public Plan getPlan() {
+        return plan;
+    }
+
+    public PhaseType getInitialPhase() {
+        return initialPhase;
+    }
+
+    public String getRealPriceList() {
+        return realPriceList;
+    }
+}
@@ -16,21 +16,34 @@
 
 package com.ning.billing.subscription.engine.core;
 
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.weakref.jmx.Managed;
 
 import com.ning.billing.bus.api.PersistentBus;
 import com.ning.billing.bus.api.PersistentBus.EventBusException;
 import com.ning.billing.catalog.api.ProductCategory;
 import com.ning.billing.subscription.alignment.PlanAligner;
 import com.ning.billing.subscription.alignment.TimedPhase;
+import com.ning.billing.subscription.api.SubscriptionBase;
 import com.ning.billing.subscription.api.SubscriptionBaseApiService;
 import com.ning.billing.subscription.api.SubscriptionBaseService;
+import com.ning.billing.subscription.api.SubscriptionBaseTransitionType;
 import com.ning.billing.subscription.api.user.DefaultEffectiveSubscriptionEvent;
 import com.ning.billing.subscription.api.user.DefaultSubscriptionBase;
+import com.ning.billing.subscription.api.user.SubscriptionBaseTransition;
 import com.ning.billing.subscription.api.user.SubscriptionBaseTransitionData;
 import com.ning.billing.subscription.engine.addon.AddonUtils;
 import com.ning.billing.subscription.engine.dao.SubscriptionDao;
@@ -57,6 +70,20 @@ import com.ning.billing.util.events.EffectiveSubscriptionInternalEvent;
 
 import com.google.inject.Inject;
 
+/**
+ * Processes the subscription events once they become effective.
+ * <p/>
+ * PHASE notifications are dispatched into stripes by account record id and processed in batches: the subscriptions of
+ * an account are loaded once per batch, the next phase events are written in a single transaction and the
+ * effective events are posted so that invoice only runs once per account (see remaining events for user operation).
+ * The notification handler only returns once its event has been processed: if the batch of its account failed, the
+ * failure is rethrown by the handler so that the notification is retried. Since a batch may fail after its next phase
+ * events were committed, next phase events which already exist are not written again on retry.
+ * <p/>
+ * Batches can only form if the notification queue dispatches several notifications concurrently, i.e. with more than
+ * one dispatch thread and more than one claimed entry (killbill.billing.notificationq.main.nbThreads and
+ * killbill.billing.notificationq.main.claimed): with a single dispatch thread, each batch contains a single event.
+ */
 public class DefaultSubscriptionBaseService implements EventListener, SubscriptionBaseService {
 
     public static final String NOTIFICATION_QUEUE_NAME = "subscription-events";
@@ -64,6 +91,9 @@ public class DefaultSubscriptionBaseService implements EventListener, Subscripti
 
     private static final Logger log = LoggerFactory.getLogger(DefaultSubscriptionBaseService.class);
 
+    private static final int NB_STRIPES = 64;
+    private static final int MAX_BATCH_SIZE = 100;
+
     private final Clock clock;
     private final SubscriptionDao dao;
     private final PlanAligner planAligner;
@@ -73,6 +103,11 @@ public class DefaultSubscriptionBaseService implements EventListener, Subscripti
     private final InternalCallContextFactory internalCallContextFactory;
     private NotificationQueue subscriptionEventQueue;
     private final SubscriptionBaseApiService apiService;
+    private final PhaseEventStripe[] stripes;
+
+    private final AtomicLong nbPhaseEvents = new AtomicLong();
+    private final AtomicLong nbPhaseBatches = new AtomicLong();
+    private final AtomicLong maxPhaseBatchSize = new AtomicLong();
 
     @Inject
     public DefaultSubscriptionBaseService(final Clock clock, final SubscriptionDao dao, final PlanAligner planAligner,
@@ -88,6 +123,10 @@ public class DefaultSubscriptionBaseService implements EventListener, Subscripti
         this.notificationQueueService = notificationQueueService;
         this.internalCallContextFactory = internalCallContextFactory;
         this.apiService = apiService;
+        this.stripes = new PhaseEventStripe[NB_STRIPES];
+        for (int i = 0; i < NB_STRIPES; i++) {
+            stripes[i] = new PhaseEventStripe();
+        }
     }
 
     @Override
@@ -115,7 +154,11 @@ public class DefaultSubscriptionBaseService implements EventListener, Subscripti
                     }
 
                     final InternalCallContext context = internalCallContextFactory.createInternalCallContext(tenantRecordId, accountRecordId, "SubscriptionEventQueue", CallOrigin.INTERNAL, UserType.SYSTEM, fromNotificationQueueUserToken);
-                    processEventReady(event, key.getSeqId(), context);
+                    if (event.getType() == EventType.PHASE) {
+                        processPhaseEventReady(event, context);
+                    } else {
+                        processEventReady(event, key.getSeqId(), context);
+                    }
                 }
             };
 
@@ -166,8 +209,12 @@ public class DefaultSubscriptionBaseService implements EventListener, Subscripti
             theRealSeqId = onBasePlanEvent(subscription, (ApiEvent) event, context);
         }
 
+        postEffectiveEvent(subscription, event, theRealSeqId, context);
+    }
+
+    private void postEffectiveEvent(final DefaultSubscriptionBase subscription, final SubscriptionBaseEvent event, final int seqId, final InternalCallContext context) {
         try {
-            final SubscriptionBaseTransitionData transition = (subscription.getTransitionFromEvent(event, theRealSeqId));
+            final SubscriptionBaseTransitionData transition = (subscription.getTransitionFromEvent(event, seqId));
             final EffectiveSubscriptionInternalEvent busEvent = new DefaultEffectiveSubscriptionEvent(transition, subscription.getAlignStartDate(),
                                                                                                       context.getUserToken(),
                                                                                                       context.getAccountRecordId(), context.getTenantRecordId());
@@ -177,18 +224,187 @@ public class DefaultSubscriptionBaseService implements EventListener, Subscripti
         }
     }
 
+    @Managed(description = "Number of PHASE events processed")
+    public long getNbPhaseEvents() {
+        return nbPhaseEvents.get();
+    }
+
+    @Managed(description = "Number of batches of PHASE events processed")
+    public long getNbPhaseBatches() {
+        return nbPhaseBatches.get();
+    }
+
+    @Managed(description = "Average number of PHASE events per batch")
+    public double getAveragePhaseBatchSize() {
+        final long batches = nbPhaseBatches.get();
+        return batches == 0 ? 0 : (double) nbPhaseEvents.get() / batches;
+    }
+
+    @Managed(description = "Largest batch of PHASE events processed")
+    public long getMaxPhaseBatchSize() {
+        return maxPhaseBatchSize.get();
+    }
+
+    private void processPhaseEventReady(final SubscriptionBaseEvent event, final InternalCallContext context) {
+        final PendingPhaseEvent pendingEvent = new PendingPhaseEvent(event, context);
+        final PhaseEventStripe stripe = getStripe(context.getAccountRecordId());
+        stripe.pendingEvents.add(pendingEvent);
+
+        // Whoever holds the lock processes the events queued so far, including ours if we were waiting behind it
+        while (!pendingEvent.processed) {
+            stripe.lock.lock();
+            try {
+                if (!pendingEvent.processed) {
+                    processPendingPhaseEvents(stripe);
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+
+        if (!pendingEvent.succeeded) {
+            throw pendingEvent.failure != null ? pendingEvent.failure : new IllegalStateException("Failed to process PHASE event " + event.getId());
+        }
+    }
+
+    private PhaseEventStripe getStripe(final Long accountRecordId) {
+        if (accountRecordId == null) {
+            return stripes[0];
+        }
+        return stripes[(int) Math.abs(accountRecordId % NB_STRIPES)];
+    }
+
+    // Must be called with the stripe lock held
+    private void processPendingPhaseEvents(final PhaseEventStripe stripe) {
+        final Map<Long, List<PendingPhaseEvent>> batchesByAccount = new LinkedHashMap<Long, List<PendingPhaseEvent>>();
+        int batchSize = 0;
+        PendingPhaseEvent pendingEvent;
+        while (batchSize < MAX_BATCH_SIZE && (pendingEvent = stripe.pendingEvents.poll()) != null) {
+            final Long accountRecordId = pendingEvent.context.getAccountRecordId();
+            if (batchesByAccount.get(accountRecordId) == null) {
+                batchesByAccount.put(accountRecordId, new LinkedList<PendingPhaseEvent>());
+            }
+            batchesByAccount.get(accountRecordId).add(pendingEvent);
+            batchSize++;
+        }
+
+        try {
+            for (final List<PendingPhaseEvent> batch : batchesByAccount.values()) {
+                try {
+                    processPhaseEvents(batch);
+                    for (final PendingPhaseEvent processed : batch) {
+                        processed.succeeded = true;
+                    }
+                } catch (RuntimeException e) {
+                    // The handlers of these events will rethrow it, so that the notifications are retried
+                    log.warn("Failed to process PHASE events for account record id " + batch.get(0).context.getAccountRecordId(), e);
+                    for (final PendingPhaseEvent failed : batch) {
+                        failed.failure = e;
+                    }
+                }
+            }
+        } finally {
+            // Release all the waiting handlers, even if an Error interrupted the processing
+            for (final List<PendingPhaseEvent> batch : batchesByAccount.values()) {
+                for (final PendingPhaseEvent processed : batch) {
+                    processed.processed = true;
+                }
+            }
+        }
+
+        if (batchSize > 0) {
+            nbPhaseEvents.addAndGet(batchSize);
+            nbPhaseBatches.incrementAndGet();
+            updateMax(maxPhaseBatchSize, batchSize);
+        }
+    }
+
+    // All events belong to the same account
+    private void processPhaseEvents(final List<PendingPhaseEvent> batch) {
+        final InternalCallContext context = batch.get(0).context;
+
+        final Set<UUID> subscriptionIds = new HashSet<UUID>();
+        for (final PendingPhaseEvent pendingEvent : batch) {
+            if (pendingEvent.event.isActive()) {
+                subscriptionIds.add(pendingEvent.event.getSubscriptionId());
+            }
+        }
+        if (subscriptionIds.isEmpty()) {
+            return;
+        }
+        final Map<UUID, SubscriptionBase> subscriptions = dao.getSubscriptionsFromIds(subscriptionIds, context);
+
+        final List<PendingPhaseEvent> effectiveEvents = new LinkedList<PendingPhaseEvent>();
+        final List<DefaultSubscriptionBase> subscriptionsWithNextPhase = new LinkedList<DefaultSubscriptionBase>();
+        final List<SubscriptionBaseEvent> nextPhaseEvents = new LinkedList<SubscriptionBaseEvent>();
+        final Set<UUID> subscriptionIdsWithNextPhase = new HashSet<UUID>();
+        for (final PendingPhaseEvent pendingEvent : batch) {
+            final SubscriptionBaseEvent event = pendingEvent.event;
+            if (!event.isActive()) {
+                continue;
+            }
+
+            final DefaultSubscriptionBase subscription = (DefaultSubscriptionBase) subscriptions.get(event.getSubscriptionId());
+            if (subscription == null) {
+                log.warn("Failed to retrieve subscription for id {}", event.getSubscriptionId());
+                continue;
+            }
+            if (subscription.getActiveVersion() > event.getActiveVersion()) {
+                // Skip repaired events
+                continue;
+            }
+
+            final PhaseEvent nextPhaseEvent = getNextPhaseEvent(subscription, context);
+            if (nextPhaseEvent != null && !hasNextPhaseEvent(subscription, nextPhaseEvent) && subscriptionIdsWithNextPhase.add(subscription.getId())) {
+                subscriptionsWithNextPhase.add(subscription);
+                nextPhaseEvents.add(nextPhaseEvent);
+            }
+            pendingEvent.subscription = subscription;
+            effectiveEvents.add(pendingEvent);
+        }
+
+        if (!nextPhaseEvents.isEmpty()) {
+            dao.createNextPhaseEvents(subscriptionsWithNextPhase, nextPhaseEvents, context);
+        }
+
+        // Only the last effective event of the account triggers an invoice run
+        int remainingEvents = effectiveEvents.size();
+        for (final PendingPhaseEvent pendingEvent : effectiveEvents) {
+            remainingEvents--;
+            postEffectiveEvent(pendingEvent.subscription, pendingEvent.event, remainingEvents, pendingEvent.context);
+        }
+    }
+
+    // True if the next phase event was already written, e.g. by a previous attempt of a failed batch
+    private boolean hasNextPhaseEvent(final DefaultSubscriptionBase subscription, final PhaseEvent nextPhaseEvent) {
+        for (final SubscriptionBaseTransition transition : subscription.getAllTransitions()) {
+            if (transition.getTransitionType() == SubscriptionBaseTransitionType.PHASE &&
+                transition.getNextPhase() != null &&
+                transition.getNextPhase().getName().equals(nextPhaseEvent.getPhase()) &&
+                transition.getEffectiveTransitionTime().compareTo(nextPhaseEvent.getEffectiveDate()) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void onPhaseEvent(final DefaultSubscriptionBase subscription, final InternalCallContext context) {
+        final PhaseEvent nextPhaseEvent = getNextPhaseEvent(subscription, context);
+        if (nextPhaseEvent != null) {
+            dao.createNextPhaseEvent(subscription, nextPhaseEvent, context);
+        }
+    }
+
+    private PhaseEvent getNextPhaseEvent(final DefaultSubscriptionBase subscription, final InternalCallContext context) {
         try {
             final DateTime now = clock.getUTCNow();
-            final TimedPhase nextTimedPhase = planAligner.getNextTimedPhase(subscription, now, now);
-            final PhaseEvent nextPhaseEvent = (nextTimedPhase != null) ?
-                                              PhaseEventData.createNextPhaseEvent(nextTimedPhase.getPhase().getName(), subscription, now, nextTimedPhase.getStartPhase()) :
-                                              null;
-            if (nextPhaseEvent != null) {
-                dao.createNextPhaseEvent(subscription, nextPhaseEvent, context);
-            }
+            final TimedPhase nextTimedPhase = planAligner.getNextTimedPhase(subscription, now, now, context);
+            return (nextTimedPhase != null) ?
+                   PhaseEventData.createNextPhaseEvent(nextTimedPhase.getPhase().getName(), subscription, now, nextTimedPhase.getStartPhase()) :
+                   null;
         } catch (SubscriptionBaseError e) {
             log.error(String.format("Failed to insert next phase for subscription %s", subscription.getId()), e);
+            return null;
         }
     }
 
@@ -196,5 +412,32 @@ public class DefaultSubscriptionBaseService implements EventListener, Subscripti
         return apiService.cancelAddOnsIfRequired(baseSubscription, event.getEffectiveDate(), context);
     }
 
+    private static void updateMax(final AtomicLong max, final long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    private static final class PhaseEventStripe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ConcurrentLinkedQueue<PendingPhaseEvent> pendingEvents = new ConcurrentLinkedQueue<PendingPhaseEvent>();
+    }
 
+    private static final class PendingPhaseEvent {
+
+        private final SubscriptionBaseEvent event;
+        private final InternalCallContext context;
+        private DefaultSubscriptionBase subscription;
+        // Set (with the stripe lock held) once the batch containing the event has been processed
+        private volatile boolean processed = false;
+        private volatile boolean succeeded = false;
+        private volatile RuntimeException failure;
+
+        private PendingPhaseEvent(final SubscriptionBaseEvent event, final InternalCallContext context) {
+            this.event = event;
+            this.context = context;
+        }
+    }
 }
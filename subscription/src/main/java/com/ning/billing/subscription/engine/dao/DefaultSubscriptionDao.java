@@ -23,9 +23,11 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
@@ -39,7 +41,6 @@ import org.slf4j.LoggerFactory;
 import com.ning.billing.ErrorCode;
 import com.ning.billing.bus.api.PersistentBus;
 import com.ning.billing.bus.api.PersistentBus.EventBusException;
-import com.ning.billing.catalog.api.CatalogService;
 import com.ning.billing.catalog.api.Plan;
 import com.ning.billing.catalog.api.ProductCategory;
 import com.ning.billing.clock.Clock;
@@ -88,10 +89,12 @@ import com.ning.billing.util.entity.dao.EntitySqlDaoTransactionalJdbiWrapper;
 import com.ning.billing.util.entity.dao.EntitySqlDaoWrapperFactory;
 import com.ning.billing.util.events.EffectiveSubscriptionInternalEvent;
 import com.ning.billing.util.events.RepairSubscriptionInternalEvent;
+import com.ning.billing.util.svcapi.catalog.CatalogInternalApi;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.Lists;
 
 
 public class DefaultSubscriptionDao implements SubscriptionDao {
@@ -103,18 +106,18 @@ public class DefaultSubscriptionDao implements SubscriptionDao {
     private final NotificationQueueService notificationQueueService;
     private final AddonUtils addonUtils;
     private final PersistentBus eventBus;
-    private final CatalogService catalogService;
+    private final CatalogInternalApi catalogInternalApi;
 
     @Inject
     public DefaultSubscriptionDao(final IDBI dbi, final Clock clock, final AddonUtils addonUtils,
-                                  final NotificationQueueService notificationQueueService, final PersistentBus eventBus, final CatalogService catalogService,
+                                  final NotificationQueueService notificationQueueService, final PersistentBus eventBus, final CatalogInternalApi catalogInternalApi,
                                   final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao) {
         this.clock = clock;
         this.transactionalSqlDao = new EntitySqlDaoTransactionalJdbiWrapper(dbi, clock, cacheControllerDispatcher, nonEntityDao);
         this.notificationQueueService = notificationQueueService;
         this.addonUtils = addonUtils;
         this.eventBus = eventBus;
-        this.catalogService = catalogService;
+        this.catalogInternalApi = catalogInternalApi;
     }
 
     @Override
@@ -230,6 +233,46 @@ public class DefaultSubscriptionDao implements SubscriptionDao {
         return buildSubscription(shellSubscription, context);
     }
 
+    @Override
+    public Map<UUID, SubscriptionBase> getSubscriptionsFromIds(final Collection<UUID> subscriptionIds, final InternalTenantContext context) {
+        // Retrieve all subscriptions for the account at once, and only rebuild the bundles we care about (once each)
+        final Map<UUID, List<SubscriptionBase>> shellSubscriptionsByBundleId = transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Map<UUID, List<SubscriptionBase>>>() {
+            @Override
+            public Map<UUID, List<SubscriptionBase>> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final List<SubscriptionModelDao> models = entitySqlDaoWrapperFactory.become(SubscriptionSqlDao.class).getByAccountRecordId(context);
+
+                final Set<UUID> bundleIds = new HashSet<UUID>();
+                for (final SubscriptionModelDao model : models) {
+                    if (subscriptionIds.contains(model.getId())) {
+                        bundleIds.add(model.getBundleId());
+                    }
+                }
+
+                final Map<UUID, List<SubscriptionBase>> result = new HashMap<UUID, List<SubscriptionBase>>();
+                for (final SubscriptionModelDao model : models) {
+                    if (!bundleIds.contains(model.getBundleId())) {
+                        continue;
+                    }
+                    if (result.get(model.getBundleId()) == null) {
+                        result.put(model.getBundleId(), new ArrayList<SubscriptionBase>());
+                    }
+                    result.get(model.getBundleId()).add(SubscriptionModelDao.toSubscription(model));
+                }
+                return result;
+            }
+        });
+
+        final Map<UUID, SubscriptionBase> result = new HashMap<UUID, SubscriptionBase>();
+        for (final UUID bundleId : shellSubscriptionsByBundleId.keySet()) {
+            for (final SubscriptionBase subscription : buildBundleSubscriptions(bundleId, shellSubscriptionsByBundleId.get(bundleId), context)) {
+                if (subscriptionIds.contains(subscription.getId())) {
+                    result.put(subscription.getId(), subscription);
+                }
+            }
+        }
+        return result;
+    }
+
 
     @Override
     public List<SubscriptionBase> getSubscriptions(final UUID bundleId, final InternalTenantContext context) {
@@ -306,6 +349,33 @@ public class DefaultSubscriptionDao implements SubscriptionDao {
         });
     }
 
+    @Override
+    public void createNextPhaseEvents(final List<DefaultSubscriptionBase> subscriptions, final List<SubscriptionBaseEvent> nextPhases, final InternalCallContext context) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+
+        transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Void>() {
+            @Override
+            public Void inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final SubscriptionEventSqlDao transactional = entitySqlDaoWrapperFactory.become(SubscriptionEventSqlDao.class);
+                for (int i = 0; i < subscriptions.size(); i++) {
+                    final SubscriptionBaseEvent nextPhase = nextPhases.get(i);
+                    cancelNextPhaseEventFromTransaction(subscriptions.get(i).getId(), entitySqlDaoWrapperFactory, context);
+                    transactional.create(new SubscriptionEventModelDao(nextPhase), context);
+                    recordFutureNotificationFromTransaction(entitySqlDaoWrapperFactory,
+                                                            nextPhase.getEffectiveDate(),
+                                                            new SubscriptionNotificationKey(nextPhase.getId()), context);
+
+                    // Notify the Bus of the requested change
+                    notifyBusOfRequestedChange(entitySqlDaoWrapperFactory, subscriptions.get(i), nextPhase, context);
+                }
+
+                return null;
+            }
+        });
+    }
+
     @Override
     public SubscriptionBaseEvent getEventById(final UUID eventId, final InternalTenantContext context) {
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<SubscriptionBaseEvent>() {
@@ -413,6 +483,46 @@ public class DefaultSubscriptionDao implements SubscriptionDao {
         });
     }
 
+    @Override
+    public void createSubscriptions(final List<DefaultSubscriptionBase> subscriptions, final List<List<SubscriptionBaseEvent>> initialEvents, final InternalCallContext context) {
+        transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Void>() {
+            @Override
+            public Void inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final SubscriptionSqlDao transactional = entitySqlDaoWrapperFactory.become(SubscriptionSqlDao.class);
+                final SubscriptionEventSqlDao eventsDaoFromSameTransaction = entitySqlDaoWrapperFactory.become(SubscriptionEventSqlDao.class);
+
+                // The invoice listener skips effective events with remaining events, so only the last creation triggers an invoice run
+                final List<SubscriptionBaseEvent> busEvents = new LinkedList<SubscriptionBaseEvent>();
+                for (final List<SubscriptionBaseEvent> eventsForSubscription : initialEvents) {
+                    for (final SubscriptionBaseEvent cur : eventsForSubscription) {
+                        if (cur.getType() == EventType.API_USER) {
+                            busEvents.add(cur);
+                        }
+                    }
+                }
+                final Map<UUID, Integer> seqIds = getSeqIdsForImmediateEvents(busEvents);
+
+                for (int i = 0; i < subscriptions.size(); i++) {
+                    final DefaultSubscriptionBase subscription = subscriptions.get(i);
+                    transactional.create(new SubscriptionModelDao(subscription), context);
+
+                    for (final SubscriptionBaseEvent cur : initialEvents.get(i)) {
+                        eventsDaoFromSameTransaction.create(new SubscriptionEventModelDao(cur), context);
+
+                        final Integer seqId = seqIds.get(cur.getId());
+                        recordBusOrFutureNotificationFromTransaction(subscription, cur, entitySqlDaoWrapperFactory, seqId != null, seqId == null ? 0 : seqId, context);
+                    }
+
+                    // Notify the Bus of the latest requested change
+                    final List<SubscriptionBaseEvent> eventsForSubscription = initialEvents.get(i);
+                    if (eventsForSubscription.size() > 0) {
+                        notifyBusOfRequestedChange(entitySqlDaoWrapperFactory, subscription, eventsForSubscription.get(eventsForSubscription.size() - 1), context);
+                    }
+                }
+                return null;
+            }
+        });
+    }
 
     @Override
     public void recreateSubscription(final DefaultSubscriptionBase subscription, final List<SubscriptionBaseEvent> recreateEvents, final InternalCallContext context) {
@@ -438,14 +548,20 @@ public class DefaultSubscriptionDao implements SubscriptionDao {
 
     @Override
     public void cancelSubscriptions(final List<DefaultSubscriptionBase> subscriptions, final List<SubscriptionBaseEvent> cancelEvents, final InternalCallContext context) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
 
         transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Void>() {
             @Override
             public Void inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                // The seqId of an immediate cancellation is its number of remaining events: the invoice listener skips
+                // effective events which still have remaining events, so only the last one triggers an invoice run
+                final Map<UUID, Integer> seqIds = getSeqIdsForImmediateEvents(cancelEvents);
                 for (int i = 0; i < subscriptions.size(); i++) {
-                    final DefaultSubscriptionBase subscription = subscriptions.get(i);
                     final SubscriptionBaseEvent cancelEvent = cancelEvents.get(i);
-                    cancelSubscriptionFromTransaction(subscription, cancelEvent, entitySqlDaoWrapperFactory, context, i);
+                    final Integer seqId = seqIds.get(cancelEvent.getId());
+                    cancelSubscriptionFromTransaction(subscriptions.get(i), cancelEvent, entitySqlDaoWrapperFactory, context, seqId == null ? 0 : seqId);
                 }
                 return null;
             }
@@ -737,7 +853,7 @@ public class DefaultSubscriptionDao implements SubscriptionDao {
         final List<SubscriptionBase> result = new ArrayList<SubscriptionBase>(input.size());
         for (final SubscriptionBase cur : input) {
             final List<SubscriptionBaseEvent> events = getEventsForSubscription(cur.getId(), context);
-            SubscriptionBase reloaded = createSubscriptionForInternalUse(cur, events);
+            SubscriptionBase reloaded = createSubscriptionForInternalUse(cur, events, context);
 
             switch (cur.getCategory()) {
                 case BASE:
@@ -758,8 +874,8 @@ public class DefaultSubscriptionDao implements SubscriptionDao {
 
                     final boolean createCancelEvent = (futureBaseEvent != null && targetAddOnPlan != null) &&
                                                       ((futureBaseEvent instanceof ApiEventCancel) ||
-                                                       ((!addonUtils.isAddonAvailableFromPlanName(baseProductName, futureBaseEvent.getEffectiveDate(), targetAddOnPlan)) ||
-                                                        (addonUtils.isAddonIncludedFromPlanName(baseProductName, futureBaseEvent.getEffectiveDate(), targetAddOnPlan))));
+                                                       ((!addonUtils.isAddonAvailableFromPlanName(baseProductName, futureBaseEvent.getEffectiveDate(), targetAddOnPlan, context)) ||
+                                                        (addonUtils.isAddonIncludedFromPlanName(baseProductName, futureBaseEvent.getEffectiveDate(), targetAddOnPlan, context))));
 
                     if (createCancelEvent && reloaded.getFutureEndDate() == null) {
                         final DateTime now = clock.getUTCNow();
@@ -775,7 +891,7 @@ public class DefaultSubscriptionDao implements SubscriptionDao {
 
                         events.add(addOnCancelEvent);
                         // Finally reload subscription with full set of events
-                        reloaded = createSubscriptionForInternalUse(cur, events);
+                        reloaded = createSubscriptionForInternalUse(cur, events, context);
                     }
                     break;
                 default:
@@ -796,7 +912,25 @@ public class DefaultSubscriptionDao implements SubscriptionDao {
                 final SubscriptionEventSqlDao transactional = entitySqlDaoWrapperFactory.become(SubscriptionEventSqlDao.class);
 
                 for (final BundleMigrationData curBundle : accountData.getData()) {
-                    migrateBundleDataFromTransaction(curBundle, transactional, entitySqlDaoWrapperFactory, context);
+                    migrateBundleDataFromTransaction(curBundle, transactional, entitySqlDaoWrapperFactory, context, null);
+                }
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void migrate(final Map<UUID, AccountMigrationData> accountsData, final Map<UUID, InternalCallContext> contexts) {
+        transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Void>() {
+            @Override
+            public Void inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final SubscriptionEventSqlDao transactional = entitySqlDaoWrapperFactory.become(SubscriptionEventSqlDao.class);
+
+                for (final UUID accountId : accountsData.keySet()) {
+                    final InternalCallContext context = contexts.get(accountId);
+                    for (final BundleMigrationData curBundle : accountsData.get(accountId).getData()) {
+                        migrateBundleDataFromTransaction(curBundle, transactional, entitySqlDaoWrapperFactory, context, null);
+                    }
                 }
                 return null;
             }
@@ -855,16 +989,69 @@ public class DefaultSubscriptionDao implements SubscriptionDao {
                     cancelSubscriptionFromTransaction(cancel.getSubscription(), cancel.getCancelEvent(), entitySqlDaoWrapperFactory, fromContext, 0);
                 }
 
-                migrateBundleDataFromTransaction(bundleTransferData, transactional, entitySqlDaoWrapperFactory, toContext);
+                migrateBundleDataFromTransaction(bundleTransferData, transactional, entitySqlDaoWrapperFactory, toContext, null);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void transfer(final UUID srcAccountId, final UUID destAccountId, final List<BundleMigrationData> bundlesTransferData,
+                         final List<TransferCancelData> transferCancelData, final InternalCallContext fromContext, final InternalCallContext toContext) {
+
+        transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Void>() {
+            @Override
+            public Void inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final SubscriptionEventSqlDao transactional = entitySqlDaoWrapperFactory.become(SubscriptionEventSqlDao.class);
+
+                // Cancel the subscriptions for the old bundles: the invoice listener skips effective events with remaining events,
+                // so only the last immediate cancellation triggers an invoice run on the source account
+                final List<SubscriptionBaseEvent> cancelEvents = new LinkedList<SubscriptionBaseEvent>();
+                for (final TransferCancelData cancel : transferCancelData) {
+                    cancelEvents.add(cancel.getCancelEvent());
+                }
+                final Map<UUID, Integer> cancelSeqIds = getSeqIdsForImmediateEvents(cancelEvents);
+                for (final TransferCancelData cancel : transferCancelData) {
+                    final Integer seqId = cancelSeqIds.get(cancel.getCancelEvent().getId());
+                    cancelSubscriptionFromTransaction(cancel.getSubscription(), cancel.getCancelEvent(), entitySqlDaoWrapperFactory, fromContext, seqId == null ? 0 : seqId);
+                }
+
+                // Same thing for the new bundles on the destination account
+                final List<SubscriptionBaseEvent> transferEvents = new LinkedList<SubscriptionBaseEvent>();
+                for (final BundleMigrationData bundleTransferData : bundlesTransferData) {
+                    for (final SubscriptionMigrationData curSubscription : bundleTransferData.getSubscriptions()) {
+                        transferEvents.addAll(curSubscription.getInitialEvents());
+                    }
+                }
+                final Map<UUID, Integer> transferSeqIds = getSeqIdsForImmediateEvents(transferEvents);
+                for (final BundleMigrationData bundleTransferData : bundlesTransferData) {
+                    migrateBundleDataFromTransaction(bundleTransferData, transactional, entitySqlDaoWrapperFactory, toContext, transferSeqIds);
+                }
                 return null;
             }
         });
     }
 
-    private DefaultSubscriptionBase createSubscriptionForInternalUse(final SubscriptionBase shellSubscription, final List<SubscriptionBaseEvent> events) {
+    //
+    // For each event effective now, the number of immediate events which follow it (used as the notification seqId)
+    //
+    private Map<UUID, Integer> getSeqIdsForImmediateEvents(final List<SubscriptionBaseEvent> events) {
+        final DateTime now = clock.getUTCNow();
+        final Map<UUID, Integer> seqIds = new HashMap<UUID, Integer>();
+        int remainingImmediateEvents = 0;
+        for (final SubscriptionBaseEvent event : Lists.reverse(events)) {
+            if (event.getEffectiveDate().compareTo(now) <= 0) {
+                seqIds.put(event.getId(), remainingImmediateEvents);
+                remainingImmediateEvents++;
+            }
+        }
+        return seqIds;
+    }
+
+    private DefaultSubscriptionBase createSubscriptionForInternalUse(final SubscriptionBase shellSubscription, final List<SubscriptionBaseEvent> events, final InternalTenantContext context) {
         final DefaultSubscriptionBase result = new DefaultSubscriptionBase(new SubscriptionBuilder(((DefaultSubscriptionBase) shellSubscription)), null, clock);
         if (events.size() > 0) {
-            result.rebuildTransitions(events, catalogService.getFullCatalog());
+            result.rebuildTransitions(events, catalogInternalApi.getFullCatalog(context));
         }
         return result;
     }
@@ -903,7 +1090,7 @@ public class DefaultSubscriptionDao implements SubscriptionDao {
     private void notifyBusOfEffectiveImmediateChange(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory, final DefaultSubscriptionBase subscription,
                                                      final SubscriptionBaseEvent immediateEvent, final int seqId, final InternalCallContext context) {
         try {
-            final DefaultSubscriptionBase upToDateSubscription = createSubscriptionWithNewEvent(subscription, immediateEvent);
+            final DefaultSubscriptionBase upToDateSubscription = createSubscriptionWithNewEvent(subscription, immediateEvent, context);
 
             final SubscriptionBaseTransitionData transition = upToDateSubscription.getTransitionFromEvent(immediateEvent, seqId);
             final EffectiveSubscriptionInternalEvent busEvent = new DefaultEffectiveSubscriptionEvent(transition, upToDateSubscription.getAlignStartDate(),
@@ -940,7 +1127,8 @@ public class DefaultSubscriptionDao implements SubscriptionDao {
     }
 
     private void migrateBundleDataFromTransaction(final BundleMigrationData bundleTransferData, final SubscriptionEventSqlDao transactional,
-                                                  final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory, final InternalCallContext context) throws EntityPersistenceException {
+                                                  final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory, final InternalCallContext context,
+                                                  @Nullable final Map<UUID, Integer> seqIds) throws EntityPersistenceException {
 
         final SubscriptionSqlDao transSubDao = entitySqlDaoWrapperFactory.become(SubscriptionSqlDao.class);
         final BundleSqlDao transBundleDao = entitySqlDaoWrapperFactory.become(BundleSqlDao.class);
@@ -957,25 +1145,29 @@ public class DefaultSubscriptionDao implements SubscriptionDao {
             final DefaultSubscriptionBase subData = curSubscription.getData();
             for (final SubscriptionBaseEvent curEvent : curSubscription.getInitialEvents()) {
                 transactional.create(new SubscriptionEventModelDao(curEvent), context);
+                final Integer seqId = seqIds == null ? null : seqIds.get(curEvent.getId());
                 recordFutureNotificationFromTransaction(entitySqlDaoWrapperFactory,
                                                         curEvent.getEffectiveDate(),
-                                                        new SubscriptionNotificationKey(curEvent.getId()),
+                                                        new SubscriptionNotificationKey(curEvent.getId(), seqId == null ? 0 : seqId),
                                                         context);
             }
             transSubDao.create(new SubscriptionModelDao(subData), context);
 
             // Notify the Bus of the latest requested change
-            final SubscriptionBaseEvent finalEvent = curSubscription.getInitialEvents().get(curSubscription.getInitialEvents().size() - 1);
-            notifyBusOfRequestedChange(entitySqlDaoWrapperFactory, subData, finalEvent, context);
+            notifyBusOfRequestedChange(entitySqlDaoWrapperFactory, subData, getFinalEvent(curSubscription), context);
         }
 
         transBundleDao.create(new SubscriptionBundleModelDao(bundleData), context);
     }
 
+    private SubscriptionBaseEvent getFinalEvent(final SubscriptionMigrationData subscriptionMigrationData) {
+        return subscriptionMigrationData.getInitialEvents().get(subscriptionMigrationData.getInitialEvents().size() - 1);
+    }
+
     //
     // Creates a copy of the existing subscriptions whose 'transitions' will reflect the new event
     //
-    private DefaultSubscriptionBase createSubscriptionWithNewEvent(final DefaultSubscriptionBase subscription, SubscriptionBaseEvent newEvent) {
+    private DefaultSubscriptionBase createSubscriptionWithNewEvent(final DefaultSubscriptionBase subscription, final SubscriptionBaseEvent newEvent, final InternalTenantContext context) {
 
         final DefaultSubscriptionBase subscriptionWithNewEvent = new DefaultSubscriptionBase(subscription, null, clock);
         final List<SubscriptionBaseEvent> allEvents = new LinkedList<SubscriptionBaseEvent>();
@@ -983,7 +1175,7 @@ public class DefaultSubscriptionDao implements SubscriptionDao {
             allEvents.addAll(subscriptionWithNewEvent.getEvents());
         }
         allEvents.add(newEvent);
-        subscriptionWithNewEvent.rebuildTransitions(allEvents, catalogService.getFullCatalog());
+        subscriptionWithNewEvent.rebuildTransitions(allEvents, catalogInternalApi.getFullCatalog(context));
         return subscriptionWithNewEvent;
     }
 
@@ -17,6 +17,7 @@
 package com.ning.billing.subscription.engine.dao;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -161,6 +162,13 @@ public class RepairSubscriptionDao implements SubscriptionDao, RepairSubscriptio
         addEvents(subscription.getId(), createEvents);
     }
 
+    @Override
+    public void createSubscriptions(final List<DefaultSubscriptionBase> subscriptions, final List<List<SubscriptionBaseEvent>> createEvents, final InternalCallContext context) {
+        for (int i = 0; i < subscriptions.size(); i++) {
+            addEvents(subscriptions.get(i).getId(), createEvents.get(i));
+        }
+    }
+
     @Override
     public void recreateSubscription(final DefaultSubscriptionBase subscription, final List<SubscriptionBaseEvent> recreateEvents, final InternalCallContext context) {
         addEvents(subscription.getId(), recreateEvents);
@@ -243,6 +251,11 @@ public class RepairSubscriptionDao implements SubscriptionDao, RepairSubscriptio
         throw new SubscriptionBaseError(NOT_IMPLEMENTED);
     }
 
+    @Override
+    public Map<UUID, SubscriptionBase> getSubscriptionsFromIds(final Collection<UUID> subscriptionIds, final InternalTenantContext context) {
+        throw new SubscriptionBaseError(NOT_IMPLEMENTED);
+    }
+
     @Override
     public UUID getAccountIdFromSubscriptionId(final UUID subscriptionId, final InternalTenantContext context) {
         throw new SubscriptionBaseError(NOT_IMPLEMENTED);
@@ -274,6 +287,11 @@ public class RepairSubscriptionDao implements SubscriptionDao, RepairSubscriptio
         throw new SubscriptionBaseError(NOT_IMPLEMENTED);
     }
 
+    @Override
+    public void createNextPhaseEvents(final List<DefaultSubscriptionBase> subscriptions, final List<SubscriptionBaseEvent> nextPhases, final InternalCallContext context) {
+        throw new SubscriptionBaseError(NOT_IMPLEMENTED);
+    }
+
     @Override
     public SubscriptionBaseEvent getEventById(final UUID eventId, final InternalTenantContext context) {
         throw new SubscriptionBaseError(NOT_IMPLEMENTED);
@@ -294,6 +312,11 @@ public class RepairSubscriptionDao implements SubscriptionDao, RepairSubscriptio
         throw new SubscriptionBaseError(NOT_IMPLEMENTED);
     }
 
+    @Override
+    public void migrate(final Map<UUID, AccountMigrationData> accountsData, final Map<UUID, InternalCallContext> contexts) {
+        throw new SubscriptionBaseError(NOT_IMPLEMENTED);
+    }
+
     @Override
     public void repair(final UUID accountId, final UUID bundleId, final List<SubscriptionDataRepair> inRepair, final InternalCallContext context) {
         throw new SubscriptionBaseError(NOT_IMPLEMENTED);
@@ -306,6 +329,13 @@ public class RepairSubscriptionDao implements SubscriptionDao, RepairSubscriptio
         throw new SubscriptionBaseError(NOT_IMPLEMENTED);
     }
 
+    @Override
+    public void transfer(final UUID srcAccountId, final UUID destAccountId, final List<BundleMigrationData> data,
+                         final List<TransferCancelData> transferCancelData, final InternalCallContext fromContext,
+                         final InternalCallContext toContext) {
+        throw new SubscriptionBaseError(NOT_IMPLEMENTED);
+    }
+
     @Override
     public List<SubscriptionBaseBundle> getSubscriptionBundlesForKey(final String bundleKey, final InternalTenantContext context) {
         throw new SubscriptionBaseError(NOT_IMPLEMENTED);
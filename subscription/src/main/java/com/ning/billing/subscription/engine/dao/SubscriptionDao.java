@@ -16,6 +16,7 @@
 
 package com.ning.billing.subscription.engine.dao;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -47,6 +48,9 @@ public interface SubscriptionDao {
 
     public SubscriptionBase getSubscriptionFromId(UUID subscriptionId, InternalTenantContext context);
 
+    // All subscriptions must belong to the account of the context
+    public Map<UUID, SubscriptionBase> getSubscriptionsFromIds(Collection<UUID> subscriptionIds, InternalTenantContext context);
+
     // ACCOUNT retrieval
     public UUID getAccountIdFromSubscriptionId(UUID subscriptionId, InternalTenantContext context);
 
@@ -63,6 +67,8 @@ public interface SubscriptionDao {
     // Event apis
     public void createNextPhaseEvent(DefaultSubscriptionBase subscription, SubscriptionBaseEvent nextPhase, InternalCallContext context);
 
+    public void createNextPhaseEvents(List<DefaultSubscriptionBase> subscriptions, List<SubscriptionBaseEvent> nextPhases, InternalCallContext context);
+
     public SubscriptionBaseEvent getEventById(UUID eventId, InternalTenantContext context);
 
     public Map<UUID, List<SubscriptionBaseEvent>> getEventsForBundle(UUID bundleId, InternalTenantContext context);
@@ -74,6 +80,8 @@ public interface SubscriptionDao {
     // SubscriptionBase creation, cancellation, changePlan apis
     public void createSubscription(DefaultSubscriptionBase subscription, List<SubscriptionBaseEvent> initialEvents, InternalCallContext context);
 
+    public void createSubscriptions(List<DefaultSubscriptionBase> subscriptions, List<List<SubscriptionBaseEvent>> initialEvents, InternalCallContext context);
+
     public void recreateSubscription(DefaultSubscriptionBase subscription, List<SubscriptionBaseEvent> recreateEvents, InternalCallContext context);
 
     public void cancelSubscription(DefaultSubscriptionBase subscription, SubscriptionBaseEvent cancelEvent, InternalCallContext context, int cancelSeq);
@@ -86,8 +94,14 @@ public interface SubscriptionDao {
 
     public void migrate(UUID accountId, AccountMigrationData data, InternalCallContext context);
 
+    // Migrate several accounts in a single transaction (contexts are keyed by account id)
+    public void migrate(Map<UUID, AccountMigrationData> accountsData, Map<UUID, InternalCallContext> contexts);
+
     public void transfer(UUID srcAccountId, UUID destAccountId, BundleMigrationData data, List<TransferCancelData> transferCancelData, InternalCallContext fromContext, InternalCallContext toContext);
 
+    // Transfer several bundles in a single transaction, triggering a single invoice run per account
+    public void transfer(UUID srcAccountId, UUID destAccountId, List<BundleMigrationData> data, List<TransferCancelData> transferCancelData, InternalCallContext fromContext, InternalCallContext toContext);
+
     // Repair
     public void repair(UUID accountId, UUID bundleId, List<SubscriptionDataRepair> inRepair, InternalCallContext context);
 }
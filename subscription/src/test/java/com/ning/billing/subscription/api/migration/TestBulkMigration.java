@@ -0,0 +1,130 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.subscription.api.migration;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.joda.time.DateTime;
+import org.testng.annotations.Test;
+
+import com.ning.billing.api.TestApiListener.NextEvent;
+import com.ning.billing.catalog.api.BillingPeriod;
+import com.ning.billing.catalog.api.PhaseType;
+import com.ning.billing.catalog.api.PlanPhaseSpecifier;
+import com.ning.billing.catalog.api.PriceListSet;
+import com.ning.billing.catalog.api.ProductCategory;
+import com.ning.billing.subscription.SubscriptionTestSuiteWithEmbeddedDB;
+import com.ning.billing.subscription.api.migration.SubscriptionBaseMigrationApi.AccountMigration;
+import com.ning.billing.subscription.api.migration.SubscriptionBaseMigrationApi.BulkMigrationResult;
+import com.ning.billing.subscription.api.user.SubscriptionBaseBundle;
+import com.ning.billing.subscription.api.user.TestSubscriptionHelper.SubscriptionMigrationCaseWithCTD;
+import com.ning.billing.subscription.api.user.TestUserApiAddOn.RequestedEventsHandler;
+
+import com.google.common.collect.ImmutableList;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestBulkMigration extends SubscriptionTestSuiteWithEmbeddedDB {
+
+    @Test(groups = "slow")
+    public void testBulkMigrationWithInvalidAccount() throws Exception {
+        final DateTime startDate = clock.getUTCNow().minusMonths(2);
+        final AccountMigration first = testUtil.createAccountForMigrationWithRegularBasePlan(startDate);
+        final AccountMigration invalid = createAccountForMigrationWithUnknownProduct(startDate);
+        final AccountMigration second = testUtil.createAccountForMigrationWithRegularBasePlanAndAddons(startDate, startDate.plusMonths(1));
+
+        final RequestedEventsHandler requestedEventsHandler = new RequestedEventsHandler();
+        busService.getBus().register(requestedEventsHandler);
+
+        final BulkMigrationResult result;
+        try {
+            // One event per migrated subscription, including the two subscriptions of the second account
+            testListener.pushExpectedEvent(NextEvent.MIGRATE_ENTITLEMENT);
+            testListener.pushExpectedEvent(NextEvent.MIGRATE_ENTITLEMENT);
+            testListener.pushExpectedEvent(NextEvent.MIGRATE_ENTITLEMENT);
+            result = migrationApi.migrate(ImmutableList.<AccountMigration>of(first, invalid, second).iterator(), 0, callContext);
+            assertTrue(testListener.isCompleted(5000));
+
+            await().atMost(5, SECONDS).until(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return requestedEventsHandler.getSubscriptionIds().size() == 3;
+                }
+            });
+        } finally {
+            busService.getBus().unregister(requestedEventsHandler);
+        }
+
+        assertEquals(result.getCheckpoint(), 3);
+        assertEquals(result.getNbMigratedAccounts(), 2);
+        assertEquals(result.getErrors().size(), 1);
+        assertTrue(result.getErrors().containsKey(invalid.getAccountKey()));
+
+        assertEquals(subscriptionInternalApi.getBundlesForAccount(first.getAccountKey(), internalCallContext).size(), 1);
+        assertEquals(subscriptionInternalApi.getBundlesForAccount(invalid.getAccountKey(), internalCallContext).size(), 0);
+        final List<SubscriptionBaseBundle> bundles = subscriptionInternalApi.getBundlesForAccount(second.getAccountKey(), internalCallContext);
+        assertEquals(bundles.size(), 1);
+        assertEquals(subscriptionInternalApi.getSubscriptionsForBundle(bundles.get(0).getId(), internalCallContext).size(), 2);
+
+        assertListenerStatus();
+    }
+
+    @Test(groups = "slow")
+    public void testBulkMigrationResumeFromCheckpoint() {
+        final DateTime startDate = clock.getUTCNow().minusMonths(2);
+        final AccountMigration first = testUtil.createAccountForMigrationWithRegularBasePlan(startDate);
+        final AccountMigration second = testUtil.createAccountForMigrationWithRegularBasePlan(startDate);
+
+        testListener.pushExpectedEvent(NextEvent.MIGRATE_ENTITLEMENT);
+        final BulkMigrationResult firstRun = migrationApi.migrate(ImmutableList.<AccountMigration>of(first).iterator(), 0, callContext);
+        assertTrue(testListener.isCompleted(5000));
+        assertEquals(firstRun.getCheckpoint(), 1);
+
+        // Replay the full input from the checkpoint: only the new account is processed
+        testListener.pushExpectedEvent(NextEvent.MIGRATE_ENTITLEMENT);
+        final BulkMigrationResult secondRun = migrationApi.migrate(ImmutableList.<AccountMigration>of(first, second).iterator(), firstRun.getCheckpoint(), callContext);
+        assertTrue(testListener.isCompleted(5000));
+        assertEquals(secondRun.getCheckpoint(), 2);
+        assertEquals(secondRun.getNbMigratedAccounts(), 1);
+        assertEquals(secondRun.getErrors().size(), 0);
+
+        // Replaying an account already migrated doesn't duplicate its bundles
+        migrationApi.migrate(ImmutableList.<AccountMigration>of(first).iterator(), 0, callContext);
+        assertEquals(subscriptionInternalApi.getBundlesForAccount(first.getAccountKey(), internalCallContext).size(), 1);
+        assertEquals(subscriptionInternalApi.getBundlesForAccount(second.getAccountKey(), internalCallContext).size(), 1);
+
+        assertListenerStatus();
+    }
+
+    private AccountMigration createAccountForMigrationWithUnknownProduct(final DateTime startDate) {
+        final List<SubscriptionMigrationCaseWithCTD> cases = new LinkedList<SubscriptionMigrationCaseWithCTD>();
+        cases.add(new SubscriptionMigrationCaseWithCTD(
+                new PlanPhaseSpecifier("UnknownProduct", ProductCategory.BASE, BillingPeriod.ANNUAL, PriceListSet.DEFAULT_PRICELIST_NAME, PhaseType.EVERGREEN),
+                startDate,
+                null,
+                startDate.plusYears(1)));
+        final List<List<SubscriptionMigrationCaseWithCTD>> input = new ArrayList<List<SubscriptionMigrationCaseWithCTD>>();
+        input.add(cases);
+        return testUtil.createAccountForMigrationTest(input);
+    }
+}
@@ -41,6 +41,8 @@ import com.ning.billing.subscription.api.SubscriptionBaseTransitionType;
 import com.ning.billing.subscription.api.SubscriptionBase;
 import com.ning.billing.entitlement.api.Entitlement.EntitlementState;
 
+import com.google.common.collect.ImmutableList;
+
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
@@ -161,6 +163,48 @@ public class TestTransfer extends SubscriptionTestSuiteWithEmbeddedDB {
     }
 
 
+    @Test(groups = "slow")
+    public void testTransferMultipleBundles() throws Exception {
+        final UUID newAccountId = UUID.randomUUID();
+
+        final SubscriptionBaseBundle otherBundle = subscriptionInternalApi.createBundleForAccount(bundle.getAccountId(), "myOtherBundle", internalCallContext);
+        final SubscriptionBase baseSubscription = testUtil.createSubscription(bundle, "Shotgun", BillingPeriod.MONTHLY, PriceListSet.DEFAULT_PRICELIST_NAME);
+        final SubscriptionBase otherBaseSubscription = testUtil.createSubscription(otherBundle, "Assault-Rifle", BillingPeriod.MONTHLY, PriceListSet.DEFAULT_PRICELIST_NAME);
+
+        clock.addDays(20);
+
+        // An unknown bundle aborts the whole transfer
+        try {
+            transferApi.transferBundles(bundle.getAccountId(), newAccountId, ImmutableList.<String>of(bundle.getExternalKey(), "unknownBundle"), clock.getUTCNow(), false, true, callContext);
+            Assert.fail("Transfer should have failed");
+        } catch (SubscriptionBaseTransferApiException e) {
+            assertEquals(subscriptionInternalApi.getSubscriptionFromId(baseSubscription.getId(), internalCallContext).getState(), EntitlementState.ACTIVE);
+            assertNull(subscriptionInternalApi.getBundleForAccountAndKey(newAccountId, bundle.getExternalKey(), internalCallContext));
+        }
+
+        testListener.pushExpectedEvent(NextEvent.TRANSFER);
+        testListener.pushExpectedEvent(NextEvent.TRANSFER);
+        testListener.pushExpectedEvent(NextEvent.CANCEL);
+        testListener.pushExpectedEvent(NextEvent.CANCEL);
+        final List<SubscriptionBaseBundle> newBundles = transferApi.transferBundles(bundle.getAccountId(), newAccountId,
+                                                                                    ImmutableList.<String>of(bundle.getExternalKey(), otherBundle.getExternalKey()),
+                                                                                    clock.getUTCNow(), false, true, callContext);
+        assertTrue(testListener.isCompleted(5000));
+
+        assertEquals(newBundles.size(), 2);
+        assertEquals(newBundles.get(0).getExternalKey(), bundle.getExternalKey());
+        assertEquals(newBundles.get(1).getExternalKey(), otherBundle.getExternalKey());
+
+        assertEquals(subscriptionInternalApi.getSubscriptionFromId(baseSubscription.getId(), internalCallContext).getState(), EntitlementState.CANCELLED);
+        assertEquals(subscriptionInternalApi.getSubscriptionFromId(otherBaseSubscription.getId(), internalCallContext).getState(), EntitlementState.CANCELLED);
+        for (final SubscriptionBaseBundle newBundle : newBundles) {
+            assertEquals(newBundle.getAccountId(), newAccountId);
+            assertEquals(subscriptionInternalApi.getSubscriptionsForBundle(newBundle.getId(), internalCallContext).size(), 1);
+        }
+
+        assertListenerStatus();
+    }
+
     @Test(groups = "slow")
     public void testTransferBPInTrialWithCTD() throws Exception {
 
@@ -23,13 +23,19 @@ import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.joda.time.DateTime;
 import org.joda.time.Interval;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.ning.billing.ErrorCode;
 import com.ning.billing.api.TestApiListener.NextEvent;
+import com.ning.billing.catalog.api.BillingActionPolicy;
 import com.ning.billing.catalog.api.BillingPeriod;
 import com.ning.billing.catalog.api.CatalogApiException;
 import com.ning.billing.catalog.api.Duration;
@@ -37,6 +43,7 @@ import com.ning.billing.catalog.api.PhaseType;
 import com.ning.billing.catalog.api.Plan;
 import com.ning.billing.catalog.api.PlanAlignmentCreate;
 import com.ning.billing.catalog.api.PlanPhase;
+import com.ning.billing.catalog.api.PlanPhaseSpecifier;
 import com.ning.billing.catalog.api.PlanSpecifier;
 import com.ning.billing.catalog.api.PriceListSet;
 import com.ning.billing.catalog.api.ProductCategory;
@@ -44,7 +51,15 @@ import com.ning.billing.entitlement.api.Entitlement.EntitlementState;
 import com.ning.billing.entitlement.api.EntitlementAOStatusDryRun;
 import com.ning.billing.entitlement.api.EntitlementAOStatusDryRun.DryRunChangeReason;
 import com.ning.billing.subscription.SubscriptionTestSuiteWithEmbeddedDB;
+import com.ning.billing.subscription.api.SubscriptionBase;
 import com.ning.billing.subscription.api.SubscriptionBaseTransitionType;
+import com.ning.billing.util.events.RequestedSubscriptionInternalEvent;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.eventbus.Subscribe;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 public class TestUserApiAddOn extends SubscriptionTestSuiteWithEmbeddedDB {
 
@@ -79,6 +94,95 @@ public class TestUserApiAddOn extends SubscriptionTestSuiteWithEmbeddedDB {
         }
     }
 
+    @Test(groups = "slow")
+    public void testCreateBaseWithAddOns() throws Exception {
+        final PlanPhaseSpecifier baseSpec = new PlanPhaseSpecifier("Shotgun", ProductCategory.BASE, BillingPeriod.ANNUAL, PriceListSet.DEFAULT_PRICELIST_NAME, null);
+        final PlanPhaseSpecifier aoSpec = new PlanPhaseSpecifier("Telescopic-Scope", ProductCategory.ADD_ON, BillingPeriod.MONTHLY, PriceListSet.DEFAULT_PRICELIST_NAME, null);
+
+        final RequestedEventsHandler requestedEventsHandler = new RequestedEventsHandler();
+        busService.getBus().register(requestedEventsHandler);
+
+        final List<SubscriptionBase> subscriptions;
+        try {
+            testListener.pushExpectedEvent(NextEvent.CREATE);
+            testListener.pushExpectedEvent(NextEvent.CREATE);
+            subscriptions = subscriptionInternalApi.createBaseSubscriptionWithAddOns(bundle.getId(), ImmutableList.<PlanPhaseSpecifier>of(baseSpec, aoSpec),
+                                                                                     clock.getUTCNow(), internalCallContext);
+            assertTrue(testListener.isCompleted(5000));
+
+            // Each subscription gets its own requested change event
+            await().atMost(5, SECONDS).until(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return requestedEventsHandler.getSubscriptionIds().size() == 2;
+                }
+            });
+        } finally {
+            busService.getBus().unregister(requestedEventsHandler);
+        }
+
+        assertEquals(subscriptions.size(), 2);
+        assertEquals(subscriptions.get(0).getCategory(), ProductCategory.BASE);
+        assertEquals(subscriptions.get(0).getCurrentPlan().getProduct().getName(), "Shotgun");
+        assertEquals(subscriptions.get(1).getCategory(), ProductCategory.ADD_ON);
+        assertEquals(subscriptions.get(1).getCurrentPlan().getProduct().getName(), "Telescopic-Scope");
+        assertTrue(requestedEventsHandler.getSubscriptionIds().contains(subscriptions.get(0).getId()));
+        assertTrue(requestedEventsHandler.getSubscriptionIds().contains(subscriptions.get(1).getId()));
+
+        final List<SubscriptionBase> subscriptionsForBundle = subscriptionInternalApi.getSubscriptionsForBundle(bundle.getId(), internalCallContext);
+        assertEquals(subscriptionsForBundle.size(), 2);
+        for (final SubscriptionBase subscription : subscriptionsForBundle) {
+            assertEquals(subscription.getState(), EntitlementState.ACTIVE);
+            assertEquals(subscription.getStartDate(), subscriptions.get(0).getStartDate());
+        }
+
+        assertListenerStatus();
+    }
+
+    @Test(groups = "slow")
+    public void testCreateBaseWithInvalidAddOn() {
+        final PlanPhaseSpecifier baseSpec = new PlanPhaseSpecifier("Pistol", ProductCategory.BASE, BillingPeriod.MONTHLY, PriceListSet.DEFAULT_PRICELIST_NAME, null);
+        // Not available for the Pistol
+        final PlanPhaseSpecifier aoSpec = new PlanPhaseSpecifier("Telescopic-Scope", ProductCategory.ADD_ON, BillingPeriod.MONTHLY, PriceListSet.DEFAULT_PRICELIST_NAME, null);
+
+        try {
+            subscriptionInternalApi.createBaseSubscriptionWithAddOns(bundle.getId(), ImmutableList.<PlanPhaseSpecifier>of(baseSpec, aoSpec), clock.getUTCNow(), internalCallContext);
+            Assert.fail("Add-on should not be available");
+        } catch (SubscriptionBaseApiException e) {
+            assertEquals(e.getCode(), ErrorCode.SUB_CREATE_AO_NOT_AVAILABLE.getCode());
+        }
+
+        // Nothing was created
+        assertTrue(subscriptionInternalApi.getSubscriptionsForBundle(bundle.getId(), internalCallContext).isEmpty());
+        assertListenerStatus();
+    }
+
+    @Test(groups = "slow")
+    public void testCancelBaseAndAddOnsWithPolicy() throws SubscriptionBaseApiException {
+        final PlanPhaseSpecifier baseSpec = new PlanPhaseSpecifier("Shotgun", ProductCategory.BASE, BillingPeriod.ANNUAL, PriceListSet.DEFAULT_PRICELIST_NAME, null);
+        final PlanPhaseSpecifier aoSpec = new PlanPhaseSpecifier("Telescopic-Scope", ProductCategory.ADD_ON, BillingPeriod.MONTHLY, PriceListSet.DEFAULT_PRICELIST_NAME, null);
+
+        testListener.pushExpectedEvent(NextEvent.CREATE);
+        testListener.pushExpectedEvent(NextEvent.CREATE);
+        final List<SubscriptionBase> subscriptions = subscriptionInternalApi.createBaseSubscriptionWithAddOns(bundle.getId(), ImmutableList.<PlanPhaseSpecifier>of(baseSpec, aoSpec),
+                                                                                                             clock.getUTCNow(), internalCallContext);
+        assertTrue(testListener.isCompleted(5000));
+
+        // Only the base subscription is passed: the add-on is cancelled along with it
+        final SubscriptionBase baseSubscription = subscriptions.get(0);
+        testListener.pushExpectedEvent(NextEvent.CANCEL);
+        testListener.pushExpectedEvent(NextEvent.CANCEL);
+        subscriptionInternalApi.cancelSubscriptionsWithPolicy(ImmutableList.<SubscriptionBase>of(baseSubscription), BillingActionPolicy.IMMEDIATE, internalCallContext);
+        assertTrue(testListener.isCompleted(5000));
+
+        assertEquals(baseSubscription.getState(), EntitlementState.CANCELLED);
+        for (final SubscriptionBase subscription : subscriptionInternalApi.getSubscriptionsForBundle(bundle.getId(), internalCallContext)) {
+            assertEquals(subscription.getState(), EntitlementState.CANCELLED);
+        }
+
+        assertListenerStatus();
+    }
+
     @Test(groups = "slow")
     public void testCreateCancelAddonAndThenBP() {
         try {
@@ -548,4 +652,18 @@ public class TestUserApiAddOn extends SubscriptionTestSuiteWithEmbeddedDB {
             Assert.fail(e.getMessage());
         }
     }
+
+    public static class RequestedEventsHandler {
+
+        private final Set<UUID> subscriptionIds = new CopyOnWriteArraySet<UUID>();
+
+        @Subscribe
+        public void handleRequestedEvent(final RequestedSubscriptionInternalEvent event) {
+            subscriptionIds.add(event.getSubscriptionId());
+        }
+
+        public Set<UUID> getSubscriptionIds() {
+            return subscriptionIds;
+        }
+    }
 }
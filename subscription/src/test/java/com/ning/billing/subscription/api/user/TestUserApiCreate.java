@@ -234,6 +234,44 @@ public class TestUserApiCreate extends SubscriptionTestSuiteWithEmbeddedDB {
         }
     }
 
+    @Test(groups = "slow")
+    public void testSimultaneousPhasesForAccount() throws SubscriptionBaseApiException {
+        final SubscriptionBaseBundle otherBundle = subscriptionInternalApi.createBundleForAccount(bundle.getAccountId(), "myOtherBundle", internalCallContext);
+
+        testListener.pushExpectedEvent(NextEvent.CREATE);
+        testListener.pushExpectedEvent(NextEvent.CREATE);
+        final DateTime now = clock.getUTCNow();
+        final DefaultSubscriptionBase subscription1 = (DefaultSubscriptionBase) subscriptionInternalApi.createSubscription(bundle.getId(),
+                                                                                                                          testUtil.getProductSpecifier("Shotgun", PriceListSet.DEFAULT_PRICELIST_NAME, BillingPeriod.MONTHLY, null),
+                                                                                                                          now, internalCallContext);
+        final DefaultSubscriptionBase subscription2 = (DefaultSubscriptionBase) subscriptionInternalApi.createSubscription(otherBundle.getId(),
+                                                                                                                          testUtil.getProductSpecifier("Pistol", "gunclubDiscount", BillingPeriod.ANNUAL, null),
+                                                                                                                          now, internalCallContext);
+        assertTrue(testListener.isCompleted(5000));
+        assertEquals(subscription1.getCurrentPhase().getPhaseType(), PhaseType.TRIAL);
+        assertEquals(subscription2.getCurrentPhase().getPhaseType(), PhaseType.TRIAL);
+
+        // Both trials end at the same time
+        testListener.pushExpectedEvent(NextEvent.PHASE);
+        testListener.pushExpectedEvent(NextEvent.PHASE);
+        final Interval it = new Interval(clock.getUTCNow(), clock.getUTCNow().plusDays(31));
+        clock.addDeltaFromReality(it.toDurationMillis());
+        assertTrue(testListener.isCompleted(5000));
+
+        final DefaultSubscriptionBase reloaded1 = (DefaultSubscriptionBase) subscriptionInternalApi.getSubscriptionFromId(subscription1.getId(), internalCallContext);
+        assertEquals(reloaded1.getCurrentPhase().getPhaseType(), PhaseType.EVERGREEN);
+        assertEquals(dao.getPendingEventsForSubscription(subscription1.getId(), internalCallContext).size(), 0);
+
+        final DefaultSubscriptionBase reloaded2 = (DefaultSubscriptionBase) subscriptionInternalApi.getSubscriptionFromId(subscription2.getId(), internalCallContext);
+        assertEquals(reloaded2.getCurrentPhase().getPhaseType(), PhaseType.DISCOUNT);
+        // The next phase was written
+        final List<SubscriptionBaseEvent> pendingEvents = dao.getPendingEventsForSubscription(subscription2.getId(), internalCallContext);
+        assertEquals(pendingEvents.size(), 1);
+        assertTrue(pendingEvents.get(0) instanceof PhaseEvent);
+
+        assertListenerStatus();
+    }
+
     @Test(groups = "slow")
     public void testSubscriptionWithAddOn() {
         try {
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.ning.billing.subscription.engine.core;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ning.billing.GuicyKillbillTestSuiteNoDB;
+import com.ning.billing.bus.api.BusEvent;
+import com.ning.billing.bus.api.PersistentBus;
+import com.ning.billing.catalog.api.PlanPhase;
+import com.ning.billing.clock.ClockMock;
+import com.ning.billing.notificationq.api.NotificationQueue;
+import com.ning.billing.notificationq.api.NotificationQueueService;
+import com.ning.billing.notificationq.api.NotificationQueueService.NotificationQueueHandler;
+import com.ning.billing.subscription.alignment.PlanAligner;
+import com.ning.billing.subscription.alignment.TimedPhase;
+import com.ning.billing.subscription.api.SubscriptionBase;
+import com.ning.billing.subscription.api.SubscriptionBaseApiService;
+import com.ning.billing.subscription.api.SubscriptionBaseTransitionType;
+import com.ning.billing.subscription.api.user.DefaultSubscriptionBase;
+import com.ning.billing.subscription.api.user.SubscriptionBaseTransition;
+import com.ning.billing.subscription.api.user.SubscriptionBaseTransitionData;
+import com.ning.billing.subscription.engine.addon.AddonUtils;
+import com.ning.billing.subscription.engine.dao.SubscriptionDao;
+import com.ning.billing.subscription.events.SubscriptionBaseEvent;
+import com.ning.billing.subscription.events.SubscriptionBaseEvent.EventType;
+import com.ning.billing.util.cache.CacheControllerDispatcher;
+import com.ning.billing.util.callcontext.InternalCallContext;
+import com.ning.billing.util.callcontext.InternalCallContextFactory;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.dao.NonEntityDao;
+import com.ning.billing.util.events.EffectiveSubscriptionInternalEvent;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestDefaultSubscriptionBaseService extends GuicyKillbillTestSuiteNoDB {
+
+    // Both accounts share the same stripe
+    private static final Long ACCOUNT_RECORD_ID = 1L;
+    private static final Long BLOCKING_ACCOUNT_RECORD_ID = 65L;
+    private static final Long TENANT_RECORD_ID = 1L;
+
+    private final Map<UUID, SubscriptionBaseEvent> eventsById = new ConcurrentHashMap<UUID, SubscriptionBaseEvent>();
+
+    private SubscriptionDao dao;
+    private List<EffectiveSubscriptionInternalEvent> postedEvents;
+    private List<RuntimeException> handlerFailures;
+    private CountDownLatch blockingAccountLatch;
+    private volatile boolean failAccountBatch;
+    private volatile boolean nextPhaseAlreadyWritten;
+    private PlanPhase nextPhase;
+    private DateTime nextPhaseDate;
+    private PlanAligner planAligner;
+    private DefaultSubscriptionBaseService service;
+    private NotificationQueueHandler queueHandler;
+
+    @BeforeMethod(groups = "fast")
+    public void beforeMethod() throws Exception {
+        eventsById.clear();
+        postedEvents = Collections.synchronizedList(new LinkedList<EffectiveSubscriptionInternalEvent>());
+        handlerFailures = Collections.synchronizedList(new LinkedList<RuntimeException>());
+        blockingAccountLatch = new CountDownLatch(1);
+        failAccountBatch = false;
+        nextPhaseAlreadyWritten = false;
+
+        dao = Mockito.mock(SubscriptionDao.class);
+        Mockito.when(dao.getEventById(Mockito.<UUID>any(), Mockito.<InternalTenantContext>any())).thenAnswer(new Answer<SubscriptionBaseEvent>() {
+            @Override
+            public SubscriptionBaseEvent answer(final InvocationOnMock invocation) throws Throwable {
+                return eventsById.get(invocation.getArguments()[0]);
+            }
+        });
+        Mockito.when(dao.getSubscriptionsFromIds(Mockito.<Collection<UUID>>any(), Mockito.<InternalTenantContext>any())).thenAnswer(new Answer<Map<UUID, SubscriptionBase>>() {
+            @Override
+            public Map<UUID, SubscriptionBase> answer(final InvocationOnMock invocation) throws Throwable {
+                final InternalTenantContext context = (InternalTenantContext) invocation.getArguments()[1];
+                if (BLOCKING_ACCOUNT_RECORD_ID.equals(context.getAccountRecordId())) {
+                    Assert.assertTrue(blockingAccountLatch.await(10, TimeUnit.SECONDS));
+                } else if (failAccountBatch) {
+                    throw new RuntimeException("Failed to load subscriptions");
+                }
+
+                final Map<UUID, SubscriptionBase> subscriptions = new HashMap<UUID, SubscriptionBase>();
+                for (final UUID subscriptionId : (Collection<UUID>) invocation.getArguments()[0]) {
+                    subscriptions.put(subscriptionId, createSubscription(subscriptionId));
+                }
+                return subscriptions;
+            }
+        });
+
+        final PersistentBus eventBus = Mockito.mock(PersistentBus.class);
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                postedEvents.add((EffectiveSubscriptionInternalEvent) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(eventBus).post(Mockito.<BusEvent>any());
+
+        final NotificationQueueService notificationQueueService = Mockito.mock(NotificationQueueService.class);
+        Mockito.when(notificationQueueService.createNotificationQueue(Mockito.anyString(), Mockito.anyString(), Mockito.<NotificationQueueHandler>any())).thenReturn(Mockito.mock(NotificationQueue.class));
+
+        final ClockMock clock = new ClockMock();
+        nextPhase = Mockito.mock(PlanPhase.class);
+        Mockito.when(nextPhase.getName()).thenReturn("shotgun-monthly-evergreen");
+        nextPhaseDate = clock.getUTCNow().plusDays(30);
+        planAligner = Mockito.mock(PlanAligner.class);
+
+        final InternalCallContextFactory internalCallContextFactory = new InternalCallContextFactory(clock, Mockito.mock(NonEntityDao.class), new CacheControllerDispatcher());
+        service = new DefaultSubscriptionBaseService(clock, dao, planAligner, Mockito.mock(AddonUtils.class), eventBus,
+                                                     notificationQueueService, internalCallContextFactory, Mockito.mock(SubscriptionBaseApiService.class));
+        service.initialize();
+
+        final ArgumentCaptor<NotificationQueueHandler> handlerCaptor = ArgumentCaptor.forClass(NotificationQueueHandler.class);
+        Mockito.verify(notificationQueueService).createNotificationQueue(Mockito.anyString(), Mockito.anyString(), handlerCaptor.capture());
+        queueHandler = handlerCaptor.getValue();
+    }
+
+    @Test(groups = "fast")
+    public void testConcurrentPhaseEventsAreProcessedInOneBatch() throws Exception {
+        final int nbEvents = 5;
+
+        // Hold the stripe while the PHASE events of the account pile up
+        final Thread blockingThread = startHandlerThread(BLOCKING_ACCOUNT_RECORD_ID);
+        waitForState(blockingThread, Thread.State.TIMED_WAITING);
+
+        final List<Thread> threads = new LinkedList<Thread>();
+        for (int i = 0; i < nbEvents; i++) {
+            final Thread thread = startHandlerThread(ACCOUNT_RECORD_ID);
+            waitForState(thread, Thread.State.WAITING);
+            threads.add(thread);
+        }
+
+        blockingAccountLatch.countDown();
+        blockingThread.join(10000);
+        for (final Thread thread : threads) {
+            thread.join(10000);
+        }
+
+        Assert.assertEquals(handlerFailures.size(), 0);
+        Assert.assertEquals(service.getMaxPhaseBatchSize(), nbEvents);
+        // Subscriptions were loaded once for the blocking account and once for the batch of the account
+        Mockito.verify(dao, Mockito.times(2)).getSubscriptionsFromIds(Mockito.<Collection<UUID>>any(), Mockito.<InternalTenantContext>any());
+
+        // One effective event per PHASE, but only the last one triggers an invoice run
+        int nbEventsForAccount = 0;
+        int nbInvoiceRuns = 0;
+        for (final EffectiveSubscriptionInternalEvent postedEvent : postedEvents) {
+            if (ACCOUNT_RECORD_ID.equals(postedEvent.getSearchKey1())) {
+                nbEventsForAccount++;
+                if (postedEvent.getRemainingEventsForUserOperation() == 0) {
+                    nbInvoiceRuns++;
+                }
+            }
+        }
+        Assert.assertEquals(nbEventsForAccount, nbEvents);
+        Assert.assertEquals(nbInvoiceRuns, 1);
+    }
+
+    @Test(groups = "fast")
+    public void testFailureIsRethrownByEachHandlerOfTheBatch() throws Exception {
+        final int nbEvents = 3;
+        failAccountBatch = true;
+
+        final Thread blockingThread = startHandlerThread(BLOCKING_ACCOUNT_RECORD_ID);
+        waitForState(blockingThread, Thread.State.TIMED_WAITING);
+
+        final List<Thread> threads = new LinkedList<Thread>();
+        for (int i = 0; i < nbEvents; i++) {
+            final Thread thread = startHandlerThread(ACCOUNT_RECORD_ID);
+            waitForState(thread, Thread.State.WAITING);
+            threads.add(thread);
+        }
+
+        blockingAccountLatch.countDown();
+        blockingThread.join(10000);
+        for (final Thread thread : threads) {
+            thread.join(10000);
+        }
+
+        // Each notification of the failed batch will be retried, the other account wasn't impacted
+        Assert.assertEquals(handlerFailures.size(), nbEvents);
+        for (final EffectiveSubscriptionInternalEvent postedEvent : postedEvents) {
+            Assert.assertEquals(postedEvent.getSearchKey1(), BLOCKING_ACCOUNT_RECORD_ID);
+        }
+        Assert.assertEquals(postedEvents.size(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testRetryDoesNotRewriteTheNextPhase() throws Exception {
+        Mockito.when(planAligner.getNextTimedPhase(Mockito.<DefaultSubscriptionBase>any(), Mockito.<DateTime>any(), Mockito.<DateTime>any(), Mockito.<InternalTenantContext>any()))
+               .thenReturn(new TimedPhase(nextPhase, nextPhaseDate));
+
+        // First attempt: the next phase is written
+        queueHandler.handleReadyNotification(new SubscriptionNotificationKey(createPhaseEvent()), new DateTime(), UUID.randomUUID(), ACCOUNT_RECORD_ID, TENANT_RECORD_ID);
+        Mockito.verify(dao, Mockito.times(1)).createNextPhaseEvents(Mockito.<List<DefaultSubscriptionBase>>any(), Mockito.<List<SubscriptionBaseEvent>>any(), Mockito.<InternalCallContext>any());
+
+        // Retry of a batch which failed after its commit: the next phase already exists
+        nextPhaseAlreadyWritten = true;
+        queueHandler.handleReadyNotification(new SubscriptionNotificationKey(createPhaseEvent()), new DateTime(), UUID.randomUUID(), ACCOUNT_RECORD_ID, TENANT_RECORD_ID);
+        Mockito.verify(dao, Mockito.times(1)).createNextPhaseEvents(Mockito.<List<DefaultSubscriptionBase>>any(), Mockito.<List<SubscriptionBaseEvent>>any(), Mockito.<InternalCallContext>any());
+
+        // The effective event is still posted
+        Assert.assertEquals(postedEvents.size(), 2);
+    }
+
+    private UUID createPhaseEvent() {
+        final SubscriptionBaseEvent event = Mockito.mock(SubscriptionBaseEvent.class);
+        final UUID eventId = UUID.randomUUID();
+        final UUID subscriptionId = UUID.randomUUID();
+        Mockito.when(event.getId()).thenReturn(eventId);
+        Mockito.when(event.getSubscriptionId()).thenReturn(subscriptionId);
+        Mockito.when(event.getType()).thenReturn(EventType.PHASE);
+        Mockito.when(event.isActive()).thenReturn(true);
+        eventsById.put(eventId, event);
+        return eventId;
+    }
+
+    private Thread startHandlerThread(final Long accountRecordId) {
+        final UUID eventId = createPhaseEvent();
+
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queueHandler.handleReadyNotification(new SubscriptionNotificationKey(eventId), new DateTime(), UUID.randomUUID(), accountRecordId, TENANT_RECORD_ID);
+                } catch (RuntimeException e) {
+                    handlerFailures.add(e);
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private DefaultSubscriptionBase createSubscription(final UUID subscriptionId) {
+        final DefaultSubscriptionBase subscription = Mockito.mock(DefaultSubscriptionBase.class);
+        Mockito.when(subscription.getId()).thenReturn(subscriptionId);
+        if (nextPhaseAlreadyWritten) {
+            final SubscriptionBaseTransition nextPhaseTransition = Mockito.mock(SubscriptionBaseTransition.class);
+            Mockito.when(nextPhaseTransition.getTransitionType()).thenReturn(SubscriptionBaseTransitionType.PHASE);
+            Mockito.when(nextPhaseTransition.getNextPhase()).thenReturn(nextPhase);
+            Mockito.when(nextPhaseTransition.getEffectiveTransitionTime()).thenReturn(nextPhaseDate);
+            Mockito.when(subscription.getAllTransitions()).thenReturn(ImmutableList.<SubscriptionBaseTransition>of(nextPhaseTransition));
+        }
+        Mockito.when(subscription.getTransitionFromEvent(Mockito.<SubscriptionBaseEvent>any(), Mockito.anyInt())).thenAnswer(new Answer<SubscriptionBaseTransitionData>() {
+            @Override
+            public SubscriptionBaseTransitionData answer(final InvocationOnMock invocation) throws Throwable {
+                final SubscriptionBaseTransitionData transition = Mockito.mock(SubscriptionBaseTransitionData.class);
+                Mockito.when(transition.getSubscriptionId()).thenReturn(subscriptionId);
+                Mockito.when(transition.getRemainingEventsForUserOperation()).thenReturn((Integer) invocation.getArguments()[1]);
+                return transition;
+            }
+        });
+        return subscription;
+    }
+
+    private void waitForState(final Thread thread, final Thread.State state) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (thread.getState() != state && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(thread.getState(), state);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.subscription.engine.core;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ning.billing.api.TestApiListener.NextEvent;
+import com.ning.billing.catalog.api.BillingPeriod;
+import com.ning.billing.catalog.api.PhaseType;
+import com.ning.billing.catalog.api.PriceListSet;
+import com.ning.billing.subscription.SubscriptionTestSuiteWithEmbeddedDB;
+import com.ning.billing.subscription.api.SubscriptionBase;
+import com.ning.billing.subscription.api.user.SubscriptionBaseBundle;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestPhaseEventsBatching extends SubscriptionTestSuiteWithEmbeddedDB {
+
+    private static final int NB_SUBSCRIPTIONS = 10;
+
+    @Override
+    @BeforeClass(groups = "slow")
+    public void beforeClass() throws Exception {
+        // Batches only form when the notification queue dispatches several notifications concurrently
+        configSource.setProperty("killbill.billing.notificationq.main.nbThreads", String.valueOf(NB_SUBSCRIPTIONS));
+        configSource.setProperty("killbill.billing.notificationq.main.claimed", String.valueOf(NB_SUBSCRIPTIONS));
+        super.beforeClass();
+    }
+
+    @Test(groups = "slow")
+    public void testPhaseEventsOfAnAccountAreBatched() throws Exception {
+        final DefaultSubscriptionBaseService service = (DefaultSubscriptionBaseService) subscriptionBaseService;
+
+        final DateTime now = clock.getUTCNow();
+        final List<SubscriptionBase> subscriptions = new LinkedList<SubscriptionBase>();
+        for (int i = 0; i < NB_SUBSCRIPTIONS; i++) {
+            final SubscriptionBaseBundle otherBundle = subscriptionInternalApi.createBundleForAccount(bundle.getAccountId(), "batchBundle-" + i, internalCallContext);
+            testListener.pushExpectedEvent(NextEvent.CREATE);
+            subscriptions.add(subscriptionInternalApi.createSubscription(otherBundle.getId(),
+                                                                         testUtil.getProductSpecifier("Shotgun", PriceListSet.DEFAULT_PRICELIST_NAME, BillingPeriod.MONTHLY, null),
+                                                                         now, internalCallContext));
+            assertTrue(testListener.isCompleted(5000));
+        }
+
+        // All trials end at the same time
+        for (int i = 0; i < NB_SUBSCRIPTIONS; i++) {
+            testListener.pushExpectedEvent(NextEvent.PHASE);
+        }
+        final Interval it = new Interval(clock.getUTCNow(), clock.getUTCNow().plusDays(31));
+        clock.addDeltaFromReality(it.toDurationMillis());
+        assertTrue(testListener.isCompleted(10000));
+
+        for (final SubscriptionBase subscription : subscriptions) {
+            final SubscriptionBase reloaded = subscriptionInternalApi.getSubscriptionFromId(subscription.getId(), internalCallContext);
+            assertEquals(reloaded.getCurrentPhase().getPhaseType(), PhaseType.EVERGREEN);
+        }
+
+        assertEquals(service.getNbPhaseEvents(), NB_SUBSCRIPTIONS);
+        assertTrue(service.getMaxPhaseBatchSize() > 1);
+        assertTrue(service.getNbPhaseBatches() < NB_SUBSCRIPTIONS);
+
+        assertListenerStatus();
+    }
+}
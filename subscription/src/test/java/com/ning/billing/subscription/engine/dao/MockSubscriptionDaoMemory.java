@@ -18,7 +18,9 @@ package com.ning.billing.subscription.engine.dao;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -30,7 +32,6 @@ import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.ning.billing.catalog.api.CatalogService;
 import com.ning.billing.catalog.api.ProductCategory;
 import com.ning.billing.catalog.api.TimeUnit;
 import com.ning.billing.clock.Clock;
@@ -58,6 +59,7 @@ import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalTenantContext;
 import com.ning.billing.util.entity.dao.EntitySqlDao;
 import com.ning.billing.util.entity.dao.EntitySqlDaoWrapperFactory;
+import com.ning.billing.util.svcapi.catalog.CatalogInternalApi;
 
 import com.google.inject.Inject;
 
@@ -70,15 +72,15 @@ public class MockSubscriptionDaoMemory implements SubscriptionDao {
     private final TreeSet<SubscriptionBaseEvent> events;
     private final Clock clock;
     private final NotificationQueueService notificationQueueService;
-    private final CatalogService catalogService;
+    private final CatalogInternalApi catalogInternalApi;
 
     @Inject
     public MockSubscriptionDaoMemory(final Clock clock,
                                      final NotificationQueueService notificationQueueService,
-                                     final CatalogService catalogService) {
+                                     final CatalogInternalApi catalogInternalApi) {
         super();
         this.clock = clock;
-        this.catalogService = catalogService;
+        this.catalogInternalApi = catalogInternalApi;
         this.notificationQueueService = notificationQueueService;
         this.bundles = new ArrayList<SubscriptionBaseBundle>();
         this.subscriptions = new ArrayList<SubscriptionBase>();
@@ -149,6 +151,18 @@ public class MockSubscriptionDaoMemory implements SubscriptionDao {
         return null;
     }
 
+    @Override
+    public Map<UUID, SubscriptionBase> getSubscriptionsFromIds(final Collection<UUID> subscriptionIds, final InternalTenantContext context) {
+        final Map<UUID, SubscriptionBase> results = new HashMap<UUID, SubscriptionBase>();
+        for (final UUID subscriptionId : subscriptionIds) {
+            final SubscriptionBase subscription = getSubscriptionFromId(subscriptionId, context);
+            if (subscription != null) {
+                results.put(subscriptionId, subscription);
+            }
+        }
+        return results;
+    }
+
     @Override
     public UUID getAccountIdFromSubscriptionId(final UUID subscriptionId, final InternalTenantContext context) {
         throw new UnsupportedOperationException();
@@ -178,6 +192,14 @@ public class MockSubscriptionDaoMemory implements SubscriptionDao {
         subscriptions.add(updatedSubscription);
     }
 
+    @Override
+    public void createSubscriptions(final List<DefaultSubscriptionBase> subscriptions, final List<List<SubscriptionBaseEvent>> initialEvents,
+                                    final InternalCallContext context) {
+        for (int i = 0; i < subscriptions.size(); i++) {
+            createSubscription(subscriptions.get(i), initialEvents.get(i), context);
+        }
+    }
+
     @Override
     public void recreateSubscription(final DefaultSubscriptionBase subscription, final List<SubscriptionBaseEvent> recreateEvents, final InternalCallContext context) {
         synchronized (events) {
@@ -244,10 +266,17 @@ public class MockSubscriptionDaoMemory implements SubscriptionDao {
         insertEvent(nextPhase, context);
     }
 
+    @Override
+    public void createNextPhaseEvents(final List<DefaultSubscriptionBase> subscriptions, final List<SubscriptionBaseEvent> nextPhases, final InternalCallContext context) {
+        for (int i = 0; i < subscriptions.size(); i++) {
+            createNextPhaseEvent(subscriptions.get(i), nextPhases.get(i), context);
+        }
+    }
+
     private SubscriptionBase buildSubscription(final DefaultSubscriptionBase in, final InternalTenantContext context) {
         final DefaultSubscriptionBase subscription = new DefaultSubscriptionBase(new SubscriptionBuilder(in), null, clock);
         if (events.size() > 0) {
-            subscription.rebuildTransitions(getEventsForSubscription(in.getId(), context), catalogService.getFullCatalog());
+            subscription.rebuildTransitions(getEventsForSubscription(in.getId(), context), catalogInternalApi.getFullCatalog(context));
         }
         return subscription;
 
@@ -400,6 +429,13 @@ public class MockSubscriptionDaoMemory implements SubscriptionDao {
         }
     }
 
+    @Override
+    public void migrate(final Map<UUID, AccountMigrationData> accountsData, final Map<UUID, InternalCallContext> contexts) {
+        for (final UUID accountId : accountsData.keySet()) {
+            migrate(accountId, accountsData.get(accountId), contexts.get(accountId));
+        }
+    }
+
     @Override
     public SubscriptionBaseEvent getEventById(final UUID eventId, final InternalTenantContext context) {
         synchronized (events) {
@@ -427,7 +463,13 @@ public class MockSubscriptionDaoMemory implements SubscriptionDao {
 
     @Override
     public Map<UUID, List<SubscriptionBaseEvent>> getEventsForBundle(final UUID bundleId, final InternalTenantContext context) {
-        return null;
+        final Map<UUID, List<SubscriptionBaseEvent>> result = new HashMap<UUID, List<SubscriptionBaseEvent>>();
+        for (final SubscriptionBase cur : subscriptions) {
+            if (cur.getBundleId().equals(bundleId)) {
+                result.put(cur.getId(), getEventsForSubscription(cur.getId(), context));
+            }
+        }
+        return result;
     }
 
     @Override
@@ -440,4 +482,10 @@ public class MockSubscriptionDaoMemory implements SubscriptionDao {
                          final List<TransferCancelData> transferCancelData, final InternalCallContext fromContext,
                          final InternalCallContext toContext) {
     }
+
+    @Override
+    public void transfer(final UUID srcAccountId, final UUID destAccountId, final List<BundleMigrationData> data,
+                         final List<TransferCancelData> transferCancelData, final InternalCallContext fromContext,
+                         final InternalCallContext toContext) {
+    }
 }
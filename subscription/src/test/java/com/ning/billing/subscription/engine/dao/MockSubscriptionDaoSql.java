@@ -19,12 +19,12 @@ package com.ning.billing.subscription.engine.dao;
 import org.skife.jdbi.v2.IDBI;
 
 import com.ning.billing.bus.api.PersistentBus;
-import com.ning.billing.catalog.api.CatalogService;
 import com.ning.billing.clock.Clock;
 import com.ning.billing.subscription.engine.addon.AddonUtils;
 import com.ning.billing.notificationq.api.NotificationQueueService;
 import com.ning.billing.util.cache.CacheControllerDispatcher;
 import com.ning.billing.util.dao.NonEntityDao;
+import com.ning.billing.util.svcapi.catalog.CatalogInternalApi;
 
 import com.google.inject.Inject;
 
@@ -32,7 +32,7 @@ public class MockSubscriptionDaoSql extends DefaultSubscriptionDao {
 
     @Inject
     public MockSubscriptionDaoSql(final IDBI dbi, final Clock clock, final AddonUtils addonUtils, final NotificationQueueService notificationQueueService,
-                                  final PersistentBus eventBus, final CatalogService catalogService, final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao) {
-        super(dbi, clock, addonUtils, notificationQueueService, eventBus, catalogService, cacheControllerDispatcher, nonEntityDao);
+                                  final PersistentBus eventBus, final CatalogInternalApi catalogInternalApi, final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao) {
+        super(dbi, clock, addonUtils, notificationQueueService, eventBus, catalogInternalApi, cacheControllerDispatcher, nonEntityDao);
     }
 }
@@ -16,12 +16,46 @@
 
 package com.ning.billing.tenant.api;
 
+import com.ning.billing.bus.api.PersistentBus;
+import com.ning.billing.lifecycle.LifecycleHandlerType;
+import com.ning.billing.lifecycle.LifecycleHandlerType.LifecycleLevel;
+import com.ning.billing.tenant.api.user.TenantKVCache;
+
+import com.google.inject.Inject;
+
 public class DefaultTenantService implements TenantService {
 
     private static final String TENANT_SERVICE_NAME = "tenant-service";
 
+    private final TenantKVCache tenantKVCache;
+    private final PersistentBus eventBus;
+
+    @Inject
+    public DefaultTenantService(final TenantKVCache tenantKVCache, final PersistentBus eventBus) {
+        this.tenantKVCache = tenantKVCache;
+        this.eventBus = eventBus;
+    }
+
     @Override
     public String getName() {
         return TENANT_SERVICE_NAME;
     }
+
+    @LifecycleHandlerType(LifecycleLevel.INIT_SERVICE)
+    public void initialize() {
+        try {
+            eventBus.register(tenantKVCache);
+        } catch (PersistentBus.EventBusException e) {
+            throw new RuntimeException("Unable to register to the EventBus!", e);
+        }
+    }
+
+    @LifecycleHandlerType(LifecycleLevel.STOP_SERVICE)
+    public void stop() {
+        try {
+            eventBus.unregister(tenantKVCache);
+        } catch (PersistentBus.EventBusException e) {
+            throw new RuntimeException("Unable to unregister to the EventBus!", e);
+        }
+    }
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.tenant.api.svcs;
+
+import java.util.List;
+
+import javax.inject.Inject;
+
+import com.ning.billing.tenant.api.user.TenantKVCache;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.svcapi.tenant.TenantInternalApi;
+
+public class DefaultTenantInternalApi implements TenantInternalApi {
+
+    private final TenantKVCache tenantKVCache;
+
+    @Inject
+    public DefaultTenantInternalApi(final TenantKVCache tenantKVCache) {
+        this.tenantKVCache = tenantKVCache;
+    }
+
+    @Override
+    public List<String> getTenantCatalogs(final InternalTenantContext context) {
+        return tenantKVCache.getTenantValueForKey(CATALOG_KEY, context);
+    }
+}
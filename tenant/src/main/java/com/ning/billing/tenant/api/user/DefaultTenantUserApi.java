@@ -38,11 +38,13 @@ import com.google.inject.Inject;
 public class DefaultTenantUserApi implements TenantUserApi {
 
     private final TenantDao tenantDao;
+    private final TenantKVCache tenantKVCache;
     private final InternalCallContextFactory internalCallContextFactory;
 
     @Inject
-    public DefaultTenantUserApi(final TenantDao tenantDao, final InternalCallContextFactory internalCallContextFactory) {
+    public DefaultTenantUserApi(final TenantDao tenantDao, final TenantKVCache tenantKVCache, final InternalCallContextFactory internalCallContextFactory) {
         this.tenantDao = tenantDao;
+        this.tenantKVCache = tenantKVCache;
         this.internalCallContextFactory = internalCallContextFactory;
     }
 
@@ -82,7 +84,7 @@ public class DefaultTenantUserApi implements TenantUserApi {
     public List<String> getTenantValueForKey(final String key, final TenantContext context)
             throws TenantApiException {
         final InternalTenantContext internalContext = internalCallContextFactory.createInternalTenantContext(context);
-        return tenantDao.getTenantValueForKey(key, internalContext);
+        return tenantKVCache.getTenantValueForKey(key, internalContext);
     }
 
     @Override
@@ -98,6 +100,8 @@ public class DefaultTenantUserApi implements TenantUserApi {
         }
         */
         tenantDao.addTenantKeyValue(key, value, internalContext);
+        // Other nodes will invalidate their copy when they process the TenantConfigChangeInternalEvent
+        tenantKVCache.invalidate(internalContext.getTenantRecordId());
     }
 
     @Override
@@ -111,5 +115,6 @@ public class DefaultTenantUserApi implements TenantUserApi {
         */
         final InternalCallContext internalContext = internalCallContextFactory.createInternalCallContext(context);
         tenantDao.deleteTenantKey(key, internalContext);
+        tenantKVCache.invalidate(internalContext.getTenantRecordId());
     }
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.tenant.api.user;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.skife.jdbi.v2.IDBI;
+import org.weakref.jmx.Managed;
+
+import com.ning.billing.ObjectType;
+import com.ning.billing.clock.Clock;
+import com.ning.billing.tenant.dao.TenantDao;
+import com.ning.billing.util.cache.Cachable.CacheType;
+import com.ning.billing.util.cache.CacheController;
+import com.ning.billing.util.cache.CacheControllerDispatcher;
+import com.ning.billing.util.cache.CacheLoaderArgument;
+import com.ning.billing.util.cache.TenantKVCacheLoader.TenantKeyValues;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.config.CacheConfig;
+import com.ning.billing.util.dao.TenantKVCacheSqlDao;
+import com.ning.billing.util.events.TenantConfigChangeInternalEvent;
+
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Per tenant cache of the tenant key/values.
+ * <p/>
+ * Changes made on this node invalidate the cache right away. The TenantConfigChangeInternalEvent is only handled by
+ * a single node though, so changes made on other nodes are picked up by checking the cached version against the
+ * database, at most once per killbill.cache.tenant.kv.revalidationInterval: this is the staleness window across nodes.
+ * The version check is a single aggregate query, much cheaper than reloading the key/values.
+ */
+@Singleton
+public class TenantKVCache {
+
+    private final TenantDao tenantDao;
+    private final TenantKVCacheSqlDao tenantKVCacheSqlDao;
+    private final CacheController<Object, Object> cacheController;
+    private final Clock clock;
+    private final long revalidationIntervalMs;
+
+    // Last time the cached version was checked against the database, per tenant record id
+    private final ConcurrentMap<Long, Long> lastRevalidations = new ConcurrentHashMap<Long, Long>();
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong revalidations = new AtomicLong(0);
+
+    @Inject
+    public TenantKVCache(final TenantDao tenantDao, final CacheControllerDispatcher cacheControllerDispatcher, final IDBI dbi,
+                         final CacheConfig cacheConfig, final Clock clock) {
+        this.tenantDao = tenantDao;
+        this.tenantKVCacheSqlDao = dbi.onDemand(TenantKVCacheSqlDao.class);
+        this.cacheController = cacheControllerDispatcher.getCacheController(CacheType.TENANT_KV);
+        this.clock = clock;
+        this.revalidationIntervalMs = cacheConfig.getTenantKVRevalidationInterval().getMillis();
+    }
+
+    public List<String> getTenantValueForKey(final String key, final InternalTenantContext context) {
+        final Long tenantRecordId = context.getTenantRecordId();
+        if (cacheController == null || tenantRecordId == null) {
+            misses.incrementAndGet();
+            return tenantDao.getTenantValueForKey(key, context);
+        }
+
+        final long nowMs = clock.getUTCNow().getMillis();
+        if (!cacheController.isKeyInCache(tenantRecordId)) {
+            misses.incrementAndGet();
+            lastRevalidations.put(tenantRecordId, nowMs);
+            return getTenantKeyValues(tenantRecordId).getValues().get(key);
+        }
+
+        final TenantKeyValues tenantKeyValues = getTenantKeyValues(tenantRecordId);
+        final Long lastRevalidation = lastRevalidations.get(tenantRecordId);
+        if (lastRevalidation == null || nowMs - lastRevalidation >= revalidationIntervalMs) {
+            lastRevalidations.put(tenantRecordId, nowMs);
+            revalidations.incrementAndGet();
+            if (!tenantKVCacheSqlDao.getTenantKeyValuesVersion(tenantRecordId).equals(tenantKeyValues.getVersion())) {
+                // Changed on another node
+                misses.incrementAndGet();
+                cacheController.remove(tenantRecordId);
+                return getTenantKeyValues(tenantRecordId).getValues().get(key);
+            }
+        }
+
+        hits.incrementAndGet();
+        return tenantKeyValues.getValues().get(key);
+    }
+
+    public void invalidate(final Long tenantRecordId) {
+        if (cacheController != null && tenantRecordId != null) {
+            cacheController.remove(tenantRecordId);
+        }
+    }
+
+    private TenantKeyValues getTenantKeyValues(final Long tenantRecordId) {
+        return (TenantKeyValues) cacheController.get(tenantRecordId, new CacheLoaderArgument(ObjectType.TENANT_KVS));
+    }
+
+    @Subscribe
+    public void handleTenantConfigChange(final TenantConfigChangeInternalEvent event) {
+        invalidate(event.getSearchKey2());
+    }
+
+    @Managed(description = "Number of tenant key/value lookups served from the cache")
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @Managed(description = "Number of tenant key/value lookups which went to the database")
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Managed(description = "Number of checks of the cached tenant key/values against the database")
+    public long getRevalidationCount() {
+        return revalidations.get();
+    }
+
+    @Managed(description = "Number of tenants currently cached")
+    public int getSize() {
+        return cacheController == null ? 0 : cacheController.size();
+    }
+}
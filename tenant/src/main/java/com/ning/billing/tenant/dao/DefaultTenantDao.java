@@ -27,10 +27,15 @@ import org.apache.shiro.crypto.SecureRandomNumberGenerator;
 import org.apache.shiro.crypto.hash.SimpleHash;
 import org.apache.shiro.util.ByteSource;
 import org.skife.jdbi.v2.IDBI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.ning.billing.ErrorCode;
+import com.ning.billing.bus.api.PersistentBus;
+import com.ning.billing.bus.api.PersistentBus.EventBusException;
 import com.ning.billing.tenant.api.Tenant;
 import com.ning.billing.tenant.api.TenantApiException;
+import com.ning.billing.tenant.api.user.DefaultTenantConfigChangeEvent;
 import com.ning.billing.tenant.security.KillbillCredentialsMatcher;
 import com.ning.billing.util.cache.CacheControllerDispatcher;
 import com.ning.billing.util.callcontext.InternalCallContext;
@@ -38,6 +43,7 @@ import com.ning.billing.util.callcontext.InternalTenantContext;
 import com.ning.billing.clock.Clock;
 import com.ning.billing.util.dao.NonEntityDao;
 import com.ning.billing.util.entity.dao.EntityDaoBase;
+import com.ning.billing.util.events.TenantConfigChangeInternalEvent;
 import com.ning.billing.util.entity.dao.EntitySqlDao;
 import com.ning.billing.util.entity.dao.EntitySqlDaoTransactionWrapper;
 import com.ning.billing.util.entity.dao.EntitySqlDaoTransactionalJdbiWrapper;
@@ -51,11 +57,16 @@ import com.google.inject.Inject;
 
 public class DefaultTenantDao extends EntityDaoBase<TenantModelDao, Tenant, TenantApiException> implements TenantDao {
 
+    private static final Logger log = LoggerFactory.getLogger(DefaultTenantDao.class);
+
     private final RandomNumberGenerator rng = new SecureRandomNumberGenerator();
 
+    private final PersistentBus eventBus;
+
     @Inject
-    public DefaultTenantDao(final IDBI dbi, final Clock clock, final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao) {
+    public DefaultTenantDao(final IDBI dbi, final Clock clock, final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao, final PersistentBus eventBus) {
         super(new EntitySqlDaoTransactionalJdbiWrapper(dbi, clock, cacheControllerDispatcher, nonEntityDao), TenantSqlDao.class);
+        this.eventBus = eventBus;
     }
 
     @Override
@@ -131,6 +142,7 @@ public class DefaultTenantDao extends EntityDaoBase<TenantModelDao, Tenant, Tena
             public Void inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 final TenantKVModelDao tenantKVModelDao = new TenantKVModelDao(UUID.randomUUID(), context.getCreatedDate(), context.getUpdatedDate(), key, value);
                 entitySqlDaoWrapperFactory.become(TenantKVSqlDao.class).create(tenantKVModelDao, context);
+                notifyTenantConfigChange(entitySqlDaoWrapperFactory, key, context);
                 return null;
             }
         });
@@ -147,8 +159,18 @@ public class DefaultTenantDao extends EntityDaoBase<TenantModelDao, Tenant, Tena
                         entitySqlDaoWrapperFactory.become(TenantKVSqlDao.class).markTenantKeyAsDeleted(cur.getId().toString(), context);
                     }
                 }
+                notifyTenantConfigChange(entitySqlDaoWrapperFactory, key, context);
                 return null;
             }
         });
     }
+
+    private void notifyTenantConfigChange(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory, final String key, final InternalCallContext context) {
+        final TenantConfigChangeInternalEvent event = new DefaultTenantConfigChangeEvent(key, context.getAccountRecordId(), context.getTenantRecordId(), context.getUserToken());
+        try {
+            eventBus.postFromTransaction(event, entitySqlDaoWrapperFactory.getSqlDao());
+        } catch (final EventBusException e) {
+            log.warn("Failed to post tenant config change event for key " + key, e);
+        }
+    }
 }
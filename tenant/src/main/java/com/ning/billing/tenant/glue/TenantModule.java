@@ -21,9 +21,12 @@ import org.skife.config.ConfigSource;
 import com.ning.billing.tenant.api.DefaultTenantService;
 import com.ning.billing.tenant.api.TenantService;
 import com.ning.billing.tenant.api.TenantUserApi;
+import com.ning.billing.tenant.api.svcs.DefaultTenantInternalApi;
 import com.ning.billing.tenant.api.user.DefaultTenantUserApi;
+import com.ning.billing.tenant.api.user.TenantKVCache;
 import com.ning.billing.tenant.dao.DefaultTenantDao;
 import com.ning.billing.tenant.dao.TenantDao;
+import com.ning.billing.util.svcapi.tenant.TenantInternalApi;
 
 import com.google.inject.AbstractModule;
 
@@ -43,9 +46,14 @@ public class TenantModule extends AbstractModule {
     }
 
     protected void installTenantUserApi() {
+        bind(TenantKVCache.class).asEagerSingleton();
         bind(TenantUserApi.class).to(DefaultTenantUserApi.class).asEagerSingleton();
     }
 
+    protected void installTenantInternalApi() {
+        bind(TenantInternalApi.class).to(DefaultTenantInternalApi.class).asEagerSingleton();
+    }
+
     private void installTenantService() {
         bind(TenantService.class).to(DefaultTenantService.class).asEagerSingleton();
     }
@@ -56,5 +64,6 @@ public class TenantModule extends AbstractModule {
         installTenantDao();
         installTenantService();
         installTenantUserApi();
+        installTenantInternalApi();
     }
 }
@@ -24,7 +24,7 @@ CREATE TABLE tenant_kvs (
    id char(36) NOT NULL,
    tenant_record_id int(11) unsigned default null,
    tenant_key varchar(64) NOT NULL,
-   tenant_value varchar(1024) NOT NULL,
+   tenant_value mediumtext NOT NULL,
    is_active bool DEFAULT 1,
    created_date datetime NOT NULL,
    created_by varchar(50) NOT NULL,
@@ -21,8 +21,10 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.BeforeMethod;
 
 import com.ning.billing.GuicyKillbillTestSuiteWithEmbeddedDB;
+import com.ning.billing.tenant.api.user.TenantKVCache;
 import com.ning.billing.tenant.dao.DefaultTenantDao;
 import com.ning.billing.tenant.glue.TestTenantModuleWithEmbeddedDB;
+import com.ning.billing.util.cache.TenantKVCacheLoader;
 
 import com.google.inject.Guice;
 import com.google.inject.Inject;
@@ -32,6 +34,10 @@ public class TenantTestSuiteWithEmbeddedDb extends GuicyKillbillTestSuiteWithEmb
 
     @Inject
     protected DefaultTenantDao tenantDao;
+    @Inject
+    protected TenantKVCache tenantKVCache;
+    @Inject
+    protected TenantKVCacheLoader tenantKVCacheLoader;
 
     @BeforeClass(groups = "slow")
     protected void beforeClass() throws Exception {
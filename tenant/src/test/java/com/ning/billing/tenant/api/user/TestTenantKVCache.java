@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.tenant.api.user;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.skife.config.ConfigurationObjectFactory;
+import org.skife.config.SimplePropertyConfigSource;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.billing.tenant.TenantTestSuiteWithEmbeddedDb;
+import com.ning.billing.util.cache.Cachable.CacheType;
+import com.ning.billing.util.cache.CacheController;
+import com.ning.billing.util.cache.CacheControllerDispatcher;
+import com.ning.billing.util.cache.CacheLoaderArgument;
+import com.ning.billing.util.config.CacheConfig;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class TestTenantKVCache extends TenantTestSuiteWithEmbeddedDb {
+
+    @Test(groups = "slow")
+    public void testInvalidationAcrossNodes() throws Exception {
+        final Long tenantRecordId = internalCallContext.getTenantRecordId();
+
+        // Two nodes, with their own cache but the same database. Events aren't delivered: the bus hands each of them to a single node
+        final CacheConfig cacheConfig = createCacheConfig("1m");
+        final TenantKVCache nodeA = createNode(cacheConfig);
+        final TenantKVCache nodeB = createNode(cacheConfig);
+
+        tenantDao.addTenantKeyValue("TheKey", "TheValue", internalCallContext);
+
+        Assert.assertEquals(nodeA.getTenantValueForKey("TheKey", internalCallContext), ImmutableList.<String>of("TheValue"));
+        Assert.assertEquals(nodeA.getTenantValueForKey("TheKey", internalCallContext), ImmutableList.<String>of("TheValue"));
+        Assert.assertEquals(nodeA.getTenantValueForKey("UnknownKey", internalCallContext), ImmutableList.<String>of());
+        Assert.assertEquals(nodeB.getTenantValueForKey("TheKey", internalCallContext), ImmutableList.<String>of("TheValue"));
+
+        // Update done on node A: node B serves stale data until its next revalidation
+        tenantDao.addTenantKeyValue("TheKey", "TheSecondValue", internalCallContext);
+        nodeA.invalidate(tenantRecordId);
+
+        Assert.assertEquals(nodeA.getTenantValueForKey("TheKey", internalCallContext), ImmutableList.<String>of("TheValue", "TheSecondValue"));
+        Assert.assertEquals(nodeB.getTenantValueForKey("TheKey", internalCallContext), ImmutableList.<String>of("TheValue"));
+
+        clock.addDeltaFromReality(cacheConfig.getTenantKVRevalidationInterval().getMillis());
+        Assert.assertEquals(nodeB.getTenantValueForKey("TheKey", internalCallContext), ImmutableList.<String>of("TheValue", "TheSecondValue"));
+
+        // Same for deletions
+        tenantDao.deleteTenantKey("TheKey", internalCallContext);
+        nodeA.invalidate(tenantRecordId);
+        Assert.assertEquals(nodeA.getTenantValueForKey("TheKey", internalCallContext), ImmutableList.<String>of());
+        Assert.assertEquals(nodeB.getTenantValueForKey("TheKey", internalCallContext), ImmutableList.<String>of("TheValue", "TheSecondValue"));
+
+        clock.addDeltaFromReality(cacheConfig.getTenantKVRevalidationInterval().getMillis());
+        Assert.assertEquals(nodeB.getTenantValueForKey("TheKey", internalCallContext), ImmutableList.<String>of());
+
+        // Unchanged key/values are only checked, not reloaded
+        clock.addDeltaFromReality(cacheConfig.getTenantKVRevalidationInterval().getMillis());
+        Assert.assertEquals(nodeB.getTenantValueForKey("TheKey", internalCallContext), ImmutableList.<String>of());
+
+        // One load per invalidation on node A, one load per detected change on node B
+        Assert.assertEquals(nodeA.getMissCount(), 3);
+        Assert.assertEquals(nodeA.getHitCount(), 2);
+        Assert.assertEquals(nodeA.getRevalidationCount(), 0);
+        Assert.assertEquals(nodeB.getMissCount(), 3);
+        Assert.assertEquals(nodeB.getHitCount(), 3);
+        Assert.assertEquals(nodeB.getRevalidationCount(), 3);
+    }
+
+    private TenantKVCache createNode(final CacheConfig cacheConfig) {
+        final CacheController<Object, Object> cacheController = new InMemoryCacheController();
+        return new TenantKVCache(tenantDao, new CacheControllerDispatcher(ImmutableMap.<CacheType, CacheController<Object, Object>>of(CacheType.TENANT_KV, cacheController)),
+                                 dbi, cacheConfig, clock);
+    }
+
+    private CacheConfig createCacheConfig(final String revalidationInterval) {
+        final Properties properties = new Properties();
+        properties.setProperty("killbill.cache.tenant.kv.revalidationInterval", revalidationInterval);
+        return new ConfigurationObjectFactory(new SimplePropertyConfigSource(properties)).build(CacheConfig.class);
+    }
+
+    private final class InMemoryCacheController implements CacheController<Object, Object> {
+
+        private final Map<Object, Object> cache = new ConcurrentHashMap<Object, Object>();
+
+        @Override
+        public Object get(final Object key, final CacheLoaderArgument cacheLoaderArgument) {
+            if (cache.get(key) == null) {
+                cache.put(key, tenantKVCacheLoader.load(key, cacheLoaderArgument));
+            }
+            return cache.get(key);
+        }
+
+        @Override
+        public boolean isKeyInCache(final Object key) {
+            return cache.containsKey(key);
+        }
+
+        @Override
+        public void putIfAbsent(final Object key, final Object value) {
+            if (cache.get(key) == null) {
+                cache.put(key, value);
+            }
+        }
+
+        @Override
+        public boolean remove(final Object key) {
+            return cache.remove(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return cache.size();
+        }
+
+        @Override
+        public void removeAll() {
+            cache.clear();
+        }
+    }
+}
@@ -20,6 +20,7 @@ import org.skife.config.ConfigSource;
 
 import com.ning.billing.GuicyKillbillTestNoDBModule;
 import com.ning.billing.mock.glue.MockNonEntityDaoModule;
+import com.ning.billing.util.bus.InMemoryBusModule;
 
 public class TestTenantModuleNoDB extends TestTenantModule {
 
@@ -33,5 +34,6 @@ public class TestTenantModuleNoDB extends TestTenantModule {
 
         install(new GuicyKillbillTestNoDBModule());
         install(new MockNonEntityDaoModule());
+        install(new InMemoryBusModule(configSource));
     }
 }
@@ -19,6 +19,8 @@ package com.ning.billing.tenant.glue;
 import org.skife.config.ConfigSource;
 
 import com.ning.billing.GuicyKillbillTestWithEmbeddedDBModule;
+import com.ning.billing.util.glue.BusModule;
+import com.ning.billing.util.glue.MetricsModule;
 import com.ning.billing.util.glue.NonEntityDaoModule;
 
 public class TestTenantModuleWithEmbeddedDB extends TestTenantModule {
@@ -33,5 +35,7 @@ public class TestTenantModuleWithEmbeddedDB extends TestTenantModule {
 
         install(new GuicyKillbillTestWithEmbeddedDBModule());
         install(new NonEntityDaoModule());
+        install(new MetricsModule());
+        install(new BusModule(configSource));
     }
 }
@@ -16,7 +16,9 @@
 
 package com.ning.billing.util.audit.api;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -49,12 +51,16 @@ import com.ning.billing.util.audit.DefaultAuditLogsForPayments;
 import com.ning.billing.util.audit.DefaultAuditLogsForRefunds;
 import com.ning.billing.util.audit.dao.AuditDao;
 import com.ning.billing.util.callcontext.InternalCallContextFactory;
+import com.ning.billing.util.callcontext.InternalTenantContext;
 import com.ning.billing.util.callcontext.TenantContext;
 import com.ning.billing.util.dao.TableName;
+import com.ning.billing.util.entity.Entity;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.Multimap;
 
 public class DefaultAuditUserApi implements AuditUserApi {
 
@@ -74,11 +80,11 @@ public class DefaultAuditUserApi implements AuditUserApi {
 
     @Override
     public AuditLogsForBundles getAuditLogsForBundles(final List<SubscriptionBundle> bundles, final AuditLevel auditLevel, final TenantContext context) {
-        final Map<UUID, List<AuditLog>> bundlesAuditLogs = new HashMap<UUID, List<AuditLog>>();
-        final Map<UUID, List<AuditLog>> subscriptionsAuditLogs = new HashMap<UUID, List<AuditLog>>();
-        final Map<UUID, List<AuditLog>> subscriptionEventsAuditLogs = new HashMap<UUID, List<AuditLog>>();
+        final List<UUID> bundleIds = new LinkedList<UUID>();
+        final List<UUID> subscriptionIds = new LinkedList<UUID>();
+        final Multimap<ObjectType, UUID> subscriptionEventIds = LinkedListMultimap.<ObjectType, UUID>create();
         for (final SubscriptionBundle bundle : bundles) {
-            bundlesAuditLogs.put(bundle.getId(), getAuditLogs(bundle.getId(), ObjectType.BUNDLE, auditLevel, context));
+            bundleIds.add(bundle.getId());
             for (final Subscription cur : bundle.getSubscriptions()) {
 
                 final ImmutableList<SubscriptionEvent> events = ImmutableList.<SubscriptionEvent>copyOf(Collections2.filter(bundle.getTimeline().getSubscriptionEvents(), new Predicate<SubscriptionEvent>() {
@@ -87,57 +93,50 @@ public class DefaultAuditUserApi implements AuditUserApi {
                         return input.getEntitlementId().equals(cur.getId());
                     }
                 }));
-                subscriptionsAuditLogs.put(cur.getId(), getAuditLogs(cur.getId(), ObjectType.SUBSCRIPTION, auditLevel, context));
+                subscriptionIds.add(cur.getId());
                 for (final SubscriptionEvent event : events) {
-                    subscriptionEventsAuditLogs.put(event.getId(), getAuditLogs(event.getId(), event.getSubscriptionEventType().getObjectType(), auditLevel, context));
+                    subscriptionEventIds.put(event.getSubscriptionEventType().getObjectType(), event.getId());
                 }
             }
         }
 
+        final InternalTenantContext internalTenantContext = internalCallContextFactory.createInternalTenantContext(context);
+        final Map<UUID, List<AuditLog>> bundlesAuditLogs = getAuditLogs(bundleIds, ObjectType.BUNDLE, auditLevel, internalTenantContext);
+        final Map<UUID, List<AuditLog>> subscriptionsAuditLogs = getAuditLogs(subscriptionIds, ObjectType.SUBSCRIPTION, auditLevel, internalTenantContext);
+        final Map<UUID, List<AuditLog>> subscriptionEventsAuditLogs = new HashMap<UUID, List<AuditLog>>();
+        for (final ObjectType objectType : subscriptionEventIds.keySet()) {
+            subscriptionEventsAuditLogs.putAll(getAuditLogs(subscriptionEventIds.get(objectType), objectType, auditLevel, internalTenantContext));
+        }
+
         return new DefaultAuditLogsForBundles(bundlesAuditLogs, subscriptionsAuditLogs, subscriptionEventsAuditLogs);
     }
 
     @Override
     public AuditLogsForInvoicePayments getAuditLogsForInvoicePayments(final List<InvoicePayment> invoicePayments, final AuditLevel auditLevel, final TenantContext context) {
-        final Map<UUID, List<AuditLog>> invoicePaymentsAuditLogs = new HashMap<UUID, List<AuditLog>>();
-        for (final InvoicePayment invoicePayment : invoicePayments) {
-            invoicePaymentsAuditLogs.put(invoicePayment.getId(), getAuditLogs(invoicePayment.getId(), ObjectType.INVOICE_PAYMENT, auditLevel, context));
-        }
-
-        return new DefaultAuditLogsForInvoicePayments(invoicePaymentsAuditLogs);
+        return new DefaultAuditLogsForInvoicePayments(getAuditLogs(getIds(invoicePayments), ObjectType.INVOICE_PAYMENT, auditLevel, internalCallContextFactory.createInternalTenantContext(context)));
     }
 
     @Override
     public AuditLogsForRefunds getAuditLogsForRefunds(final List<Refund> refunds, final AuditLevel auditLevel, final TenantContext context) {
-        final Map<UUID, List<AuditLog>> refundsAuditLogs = new HashMap<UUID, List<AuditLog>>();
-        for (final Refund refund : refunds) {
-            refundsAuditLogs.put(refund.getId(), getAuditLogs(refund.getId(), ObjectType.REFUND, auditLevel, context));
-        }
-
-        return new DefaultAuditLogsForRefunds(refundsAuditLogs);
+        return new DefaultAuditLogsForRefunds(getAuditLogs(getIds(refunds), ObjectType.REFUND, auditLevel, internalCallContextFactory.createInternalTenantContext(context)));
     }
 
     @Override
     public AuditLogsForPayments getAuditLogsForPayments(final List<Payment> payments, final AuditLevel auditLevel, final TenantContext context) {
-        final Map<UUID, List<AuditLog>> paymentsAuditLogs = new HashMap<UUID, List<AuditLog>>();
-        for (final Payment payment : payments) {
-            paymentsAuditLogs.put(payment.getId(), getAuditLogs(payment.getId(), ObjectType.PAYMENT, auditLevel, context));
-        }
-
-        return new DefaultAuditLogsForPayments(paymentsAuditLogs);
+        return new DefaultAuditLogsForPayments(getAuditLogs(getIds(payments), ObjectType.PAYMENT, auditLevel, internalCallContextFactory.createInternalTenantContext(context)));
     }
 
     @Override
     public AuditLogsForInvoices getAuditLogsForInvoices(final List<Invoice> invoices, final AuditLevel auditLevel, final TenantContext context) {
-        final Map<UUID, List<AuditLog>> invoiceAuditLogs = new HashMap<UUID, List<AuditLog>>();
-        final Map<UUID, List<AuditLog>> invoiceItemsAuditLogs = new HashMap<UUID, List<AuditLog>>();
+        final List<UUID> invoiceItemIds = new LinkedList<UUID>();
         for (final Invoice invoice : invoices) {
-            invoiceAuditLogs.put(invoice.getId(), getAuditLogs(invoice.getId(), ObjectType.INVOICE, auditLevel, context));
-            for (final InvoiceItem invoiceItem : invoice.getInvoiceItems()) {
-                invoiceItemsAuditLogs.put(invoiceItem.getId(), getAuditLogs(invoiceItem.getId(), ObjectType.INVOICE_ITEM, auditLevel, context));
-            }
+            invoiceItemIds.addAll(getIds(invoice.getInvoiceItems()));
         }
 
+        final InternalTenantContext internalTenantContext = internalCallContextFactory.createInternalTenantContext(context);
+        final Map<UUID, List<AuditLog>> invoiceAuditLogs = getAuditLogs(getIds(invoices), ObjectType.INVOICE, auditLevel, internalTenantContext);
+        final Map<UUID, List<AuditLog>> invoiceItemsAuditLogs = getAuditLogs(invoiceItemIds, ObjectType.INVOICE_ITEM, auditLevel, internalTenantContext);
+
         return new DefaultAuditLogsForInvoices(invoiceAuditLogs, invoiceItemsAuditLogs);
     }
 
@@ -148,7 +147,7 @@ public class DefaultAuditUserApi implements AuditUserApi {
             return ImmutableList.<AuditLog>of();
         }
 
-        final TableName tableName = getTableNameFromObjectType(objectType);
+        final TableName tableName = TableName.fromObjectType(objectType);
         if (tableName == null) {
             return ImmutableList.<AuditLog>of();
         }
@@ -156,13 +155,26 @@ public class DefaultAuditUserApi implements AuditUserApi {
         return auditDao.getAuditLogsForId(tableName, objectId, auditLevel, internalCallContextFactory.createInternalTenantContext(context));
     }
 
-    private TableName getTableNameFromObjectType(final ObjectType objectType) {
-        for (final TableName tableName : TableName.values()) {
-            if (objectType.equals(tableName.getObjectType())) {
-                return tableName;
+    // One query per table (see AuditDao#getAuditLogsForIds)
+    private Map<UUID, List<AuditLog>> getAuditLogs(final Collection<UUID> objectIds, final ObjectType objectType, final AuditLevel auditLevel, final InternalTenantContext context) {
+        final TableName tableName = TableName.fromObjectType(objectType);
+        // Optimization - bail early
+        if (AuditLevel.NONE.equals(auditLevel) || tableName == null) {
+            final Map<UUID, List<AuditLog>> noAuditLogs = new HashMap<UUID, List<AuditLog>>();
+            for (final UUID objectId : objectIds) {
+                noAuditLogs.put(objectId, ImmutableList.<AuditLog>of());
             }
+            return noAuditLogs;
         }
 
-        return null;
+        return auditDao.getAuditLogsForIds(tableName, objectIds, auditLevel, context);
+    }
+
+    private List<UUID> getIds(final List<? extends Entity> entities) {
+        final List<UUID> ids = new LinkedList<UUID>();
+        for (final Entity entity : entities) {
+            ids.add(entity.getId());
+        }
+        return ids;
     }
 }
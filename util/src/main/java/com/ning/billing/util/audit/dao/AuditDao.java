@@ -16,7 +16,9 @@
 
 package com.ning.billing.util.audit.dao;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import com.ning.billing.util.api.AuditLevel;
@@ -27,4 +29,11 @@ import com.ning.billing.util.dao.TableName;
 public interface AuditDao {
 
     public List<AuditLog> getAuditLogsForId(TableName tableName, UUID objectId, AuditLevel auditLevel, InternalTenantContext context);
+
+    /**
+     * Bulk version of getAuditLogsForId: objects are expected to belong to the same account
+     *
+     * @return the audit logs for each object id (empty if none)
+     */
+    public Map<UUID, List<AuditLog>> getAuditLogsForIds(TableName tableName, Collection<UUID> objectIds, AuditLevel auditLevel, InternalTenantContext context);
 }
@@ -16,7 +16,12 @@
 
 package com.ning.billing.util.audit.dao;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.inject.Inject;
@@ -26,9 +31,14 @@ import org.skife.jdbi.v2.IDBI;
 import com.ning.billing.util.api.AuditLevel;
 import com.ning.billing.util.audit.AuditLog;
 import com.ning.billing.util.audit.ChangeType;
+import com.ning.billing.util.cache.Cachable.CacheType;
+import com.ning.billing.util.cache.CacheController;
 import com.ning.billing.util.cache.CacheControllerDispatcher;
+import com.ning.billing.util.cache.CacheKey;
 import com.ning.billing.util.callcontext.InternalTenantContext;
 import com.ning.billing.clock.Clock;
+import com.ning.billing.util.dao.AuditLogWithObjectId;
+import com.ning.billing.util.dao.DBRouter;
 import com.ning.billing.util.dao.NonEntityDao;
 import com.ning.billing.util.dao.NonEntitySqlDao;
 import com.ning.billing.util.dao.TableName;
@@ -38,16 +48,29 @@ import com.ning.billing.util.entity.dao.EntitySqlDaoTransactionalJdbiWrapper;
 import com.ning.billing.util.entity.dao.EntitySqlDaoWrapperFactory;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 public class DefaultAuditDao implements AuditDao {
 
+    // Tables without an account_record_id column
+    private static final Set<TableName> TABLES_NOT_TIED_TO_AN_ACCOUNT = ImmutableSet.<TableName>of(TableName.ACCOUNT,
+                                                                                                  TableName.TAG_DEFINITIONS,
+                                                                                                  TableName.TENANT,
+                                                                                                  TableName.TENANT_KVS);
+
     private final NonEntitySqlDao nonEntitySqlDao;
     private final EntitySqlDaoTransactionalJdbiWrapper transactionalSqlDao;
+    private final CacheControllerDispatcher cacheControllerDispatcher;
+    private final NonEntityDao nonEntityDao;
+    private final DBRouter dbRouter;
 
     @Inject
-    public DefaultAuditDao(final IDBI dbi, final Clock clock, final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao) {
+    public DefaultAuditDao(final IDBI dbi, final DBRouter dbRouter, final Clock clock, final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao) {
         this.nonEntitySqlDao = dbi.onDemand(NonEntitySqlDao.class);
-        this.transactionalSqlDao = new EntitySqlDaoTransactionalJdbiWrapper(dbi, clock, cacheControllerDispatcher, nonEntityDao);
+        this.transactionalSqlDao = new EntitySqlDaoTransactionalJdbiWrapper(dbi, dbRouter, clock, cacheControllerDispatcher, nonEntityDao);
+        this.cacheControllerDispatcher = cacheControllerDispatcher;
+        this.nonEntityDao = nonEntityDao;
+        this.dbRouter = dbRouter;
     }
 
     @Override
@@ -59,6 +82,101 @@ public class DefaultAuditDao implements AuditDao {
         }
     }
 
+    @Override
+    public Map<UUID, List<AuditLog>> getAuditLogsForIds(final TableName tableName, final Collection<UUID> objectIds, final AuditLevel auditLevel, final InternalTenantContext context) {
+        final Map<UUID, List<AuditLog>> auditLogsForIds = new HashMap<UUID, List<AuditLog>>();
+        if (objectIds.isEmpty()) {
+            return auditLogsForIds;
+        }
+
+        final Long accountRecordId = getAccountRecordId(tableName, objectIds, context);
+        if (accountRecordId != null) {
+            // One query for all the objects of that type on the account
+            final InternalTenantContext accountContext = new InternalTenantContext(context.getTenantRecordId(), accountRecordId);
+            final Map<UUID, List<AuditLog>> auditLogsForAccount = getAuditLogsForAccountRecordId(tableName, accountContext);
+            for (final UUID objectId : objectIds) {
+                final List<AuditLog> auditLogs = auditLogsForAccount.get(objectId);
+                if (auditLogs != null) {
+                    auditLogsForIds.put(objectId, buildAuditLogs(auditLevel, auditLogs));
+                }
+            }
+        }
+
+        // Objects not tied to an account, or not found on the account
+        for (final UUID objectId : objectIds) {
+            if (auditLogsForIds.get(objectId) == null) {
+                auditLogsForIds.put(objectId, getAuditLogsForId(tableName, objectId, auditLevel, context));
+            }
+        }
+
+        return auditLogsForIds;
+    }
+
+    private Long getAccountRecordId(final TableName tableName, final Collection<UUID> objectIds, final InternalTenantContext context) {
+        if (TABLES_NOT_TIED_TO_AN_ACCOUNT.contains(tableName)) {
+            return null;
+        } else if (context.getAccountRecordId() != null) {
+            return context.getAccountRecordId();
+        } else {
+            return nonEntityDao.retrieveAccountRecordIdFromObject(objectIds.iterator().next(),
+                                                                  tableName.getObjectType(),
+                                                                  cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT_RECORD_ID));
+        }
+    }
+
+    private Map<UUID, List<AuditLog>> getAuditLogsForAccountRecordId(final TableName tableName, final InternalTenantContext context) {
+        final TableName historyTableName = tableName.getHistoryTableName();
+        // Same routing decision as the read-only transaction below
+        final boolean readFromReplica = dbRouter != null && dbRouter.isReadOnlyTransactionRoutedToReplica();
+        final List<AuditLogWithObjectId> allAuditLogs = transactionalSqlDao.executeReadOnly(new EntitySqlDaoTransactionWrapper<List<AuditLogWithObjectId>>() {
+            @Override
+            public List<AuditLogWithObjectId> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final EntitySqlDao entitySqlDao = entitySqlDaoWrapperFactory.become(EntitySqlDao.class);
+                if (historyTableName == null) {
+                    return entitySqlDao.getAuditLogsForAccountRecordId(tableName, tableName.getTableName(), context);
+                } else {
+                    return entitySqlDao.getAuditLogsViaHistoryForAccountRecordId(historyTableName,
+                                                                                 historyTableName.getTableName().toLowerCase(),
+                                                                                 tableName.getTableName(),
+                                                                                 context);
+                }
+            }
+        });
+
+        // Rows are sorted by audit log record id, hence the lists are sorted as well
+        final Map<UUID, List<AuditLog>> auditLogsByObjectId = new HashMap<UUID, List<AuditLog>>();
+        final Map<UUID, Long> recordIdsByObjectId = new HashMap<UUID, Long>();
+        for (final AuditLogWithObjectId auditLog : allAuditLogs) {
+            if (auditLogsByObjectId.get(auditLog.getObjectId()) == null) {
+                auditLogsByObjectId.put(auditLog.getObjectId(), new LinkedList<AuditLog>());
+                recordIdsByObjectId.put(auditLog.getObjectId(), auditLog.getObjectRecordId());
+            }
+            auditLogsByObjectId.get(auditLog.getObjectId()).add(auditLog.getAuditLog());
+        }
+
+        // The replica may lag behind: don't share its view with the readers of the primary
+        if (!readFromReplica) {
+            populateCache(tableName, auditLogsByObjectId, recordIdsByObjectId);
+        }
+
+        return auditLogsByObjectId;
+    }
+
+    // Warm-up the caches used by the single object code path (see AuditSqlDao), which are loaded from the primary
+    private void populateCache(final TableName tableName, final Map<UUID, List<AuditLog>> auditLogsByObjectId, final Map<UUID, Long> recordIdsByObjectId) {
+        final TableName historyTableName = tableName.getHistoryTableName();
+        final CacheController<Object, Object> cacheController = cacheControllerDispatcher.getCacheController(historyTableName == null ? CacheType.AUDIT_LOG : CacheType.AUDIT_LOG_VIA_HISTORY);
+        if (cacheController == null) {
+            return;
+        }
+
+        for (final UUID objectId : auditLogsByObjectId.keySet()) {
+            final Long recordId = recordIdsByObjectId.get(objectId);
+            final CacheKey key = historyTableName == null ? new CacheKey(tableName, recordId) : new CacheKey(historyTableName, historyTableName.getTableName(), recordId);
+            cacheController.putIfAbsent(key, ImmutableList.<AuditLog>copyOf(auditLogsByObjectId.get(objectId)));
+        }
+    }
+
     private List<AuditLog> doGetAuditLogsForId(final TableName tableName, final UUID objectId, final AuditLevel auditLevel, final InternalTenantContext context) {
         final Long recordId = nonEntitySqlDao.getRecordIdFromObject(objectId.toString(), tableName.getTableName());
         if (recordId == null) {
@@ -75,7 +193,11 @@ public class DefaultAuditDao implements AuditDao {
         }
 
         final Long targetRecordId = nonEntitySqlDao.getRecordIdFromObject(objectId.toString(), tableName.getTableName());
-        final List<AuditLog> allAuditLogs = transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<AuditLog>>() {
+        if (targetRecordId == null) {
+            return ImmutableList.<AuditLog>of();
+        }
+
+        final List<AuditLog> allAuditLogs = transactionalSqlDao.executeReadOnly(new EntitySqlDaoTransactionWrapper<List<AuditLog>>() {
             @Override
             public List<AuditLog> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 return entitySqlDaoWrapperFactory.become(EntitySqlDao.class).getAuditLogsViaHistoryForTargetRecordId(historyTableName,
@@ -88,7 +210,7 @@ public class DefaultAuditDao implements AuditDao {
     }
 
     private List<AuditLog> getAuditLogsForRecordId(final TableName tableName, final Long targetRecordId, final AuditLevel auditLevel, final InternalTenantContext context) {
-        final List<AuditLog> allAuditLogs = transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<AuditLog>>() {
+        final List<AuditLog> allAuditLogs = transactionalSqlDao.executeReadOnly(new EntitySqlDaoTransactionWrapper<List<AuditLog>>() {
             @Override
             public List<AuditLog> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 return entitySqlDaoWrapperFactory.become(EntitySqlDao.class).getAuditLogsForTargetRecordId(tableName,
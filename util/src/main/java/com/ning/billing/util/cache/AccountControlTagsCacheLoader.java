@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.cache;
+
+import java.util.Set;
+import java.util.UUID;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.skife.jdbi.v2.IDBI;
+
+import com.ning.billing.ObjectType;
+import com.ning.billing.util.cache.Cachable.CacheType;
+import com.ning.billing.util.dao.NonEntityDao;
+import com.ning.billing.util.tag.ControlTagType;
+import com.ning.billing.util.tag.dao.TagModelDaoHelper;
+import com.ning.billing.util.tag.dao.TagSqlDao;
+
+import net.sf.ehcache.loader.CacheLoader;
+
+@Singleton
+public class AccountControlTagsCacheLoader extends BaseCacheLoader implements CacheLoader {
+
+    private final TagSqlDao tagSqlDao;
+
+    @Inject
+    public AccountControlTagsCacheLoader(final IDBI dbi, final NonEntityDao nonEntityDao) {
+        super(dbi, nonEntityDao);
+        this.tagSqlDao = dbi.onDemand(TagSqlDao.class);
+    }
+
+    @Override
+    public CacheType getCacheType() {
+        return CacheType.ACCOUNT_CONTROL_TAGS;
+    }
+
+    @Override
+    public Object load(final Object key, final Object argument) {
+        checkCacheLoaderStatus();
+
+        if (!(key instanceof UUID)) {
+            throw new IllegalArgumentException("Unexpected key type of " + key.getClass().getName());
+        }
+        if (!(argument instanceof CacheLoaderArgument)) {
+            throw new IllegalArgumentException("Unexpected key type of " + argument.getClass().getName());
+        }
+
+        final CacheLoaderArgument cacheLoaderArgument = (CacheLoaderArgument) argument;
+        // Accounts and bundles (AUTO_INVOICING_OFF) share the cache, ids are unique across object types
+        final ObjectType objectType = cacheLoaderArgument.getObjectType();
+        if (objectType != ObjectType.ACCOUNT && objectType != ObjectType.BUNDLE) {
+            throw new IllegalArgumentException("Unexpected object type of " + objectType);
+        }
+
+        // The version is read first: a concurrent change makes it look outdated, and the entry is simply reloaded on the next check
+        final String version = tagSqlDao.getTagsVersionForObject((UUID) key, objectType, cacheLoaderArgument.getInternalTenantContext());
+        return new ControlTags(TagModelDaoHelper.getControlTagTypes(tagSqlDao.getTagsForObject((UUID) key, objectType, cacheLoaderArgument.getInternalTenantContext())), version);
+    }
+
+    public static final class ControlTags {
+
+        private final Set<ControlTagType> controlTags;
+        private final String version;
+
+        // Last time the version was checked against the database (see DefaultTagDao): kept on the entry, so that it goes away with it
+        private volatile long lastRevalidationMs;
+
+        public ControlTags(final Set<ControlTagType> controlTags, final String version) {
+            this.controlTags = controlTags;
+            this.version = version;
+        }
+
+        public Set<ControlTagType> getControlTags() {
+            return controlTags;
+        }
+
+        // See TagSqlDao#getTagsVersionForObject
+        public String getVersion() {
+            return version;
+        }
+
+        public long getLastRevalidationMs() {
+            return lastRevalidationMs;
+        }
+
+        public void setLastRevalidationMs(final long lastRevalidationMs) {
+            this.lastRevalidationMs = lastRevalidationMs;
+        }
+    }
+}
@@ -49,7 +49,7 @@ public class AuditLogCacheLoader extends BaseCacheLoader implements CacheLoader
     public Object load(final Object key, final Object argument) {
         checkCacheLoaderStatus();
 
-        if (!(key instanceof String)) {
+        if (!(key instanceof CacheKey)) {
             throw new IllegalArgumentException("Unexpected key type of " + key.getClass().getName());
         }
         if (!(argument instanceof CacheLoaderArgument)) {
@@ -49,7 +49,7 @@ public class AuditLogViaHistoryCacheLoader extends BaseCacheLoader implements Ca
     public Object load(final Object key, final Object argument) {
         checkCacheLoaderStatus();
 
-        if (!(key instanceof String)) {
+        if (!(key instanceof CacheKey)) {
             throw new IllegalArgumentException("Unexpected key type of " + key.getClass().getName());
         }
         if (!(argument instanceof CacheLoaderArgument)) {
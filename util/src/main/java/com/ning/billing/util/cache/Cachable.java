@@ -26,10 +26,13 @@ import java.lang.annotation.Target;
 public @interface Cachable {
 
     public final String RECORD_ID_CACHE_NAME = "record-id";
+    public final String OBJECT_ID_CACHE_NAME = "object-id";
     public final String ACCOUNT_RECORD_ID_CACHE_NAME = "account-record-id";
     public final String TENANT_RECORD_ID_CACHE_NAME = "tenant-record-id";
     public final String AUDIT_LOG_CACHE_NAME = "audit-log";
     public final String AUDIT_LOG_VIA_HISTORY_CACHE_NAME = "audit-log-via-history";
+    public final String TENANT_KV_CACHE_NAME = "tenant-kv";
+    public final String ACCOUNT_CONTROL_TAGS_CACHE_NAME = "account-control-tags";
 
     public CacheType value();
 
@@ -37,17 +40,26 @@ public @interface Cachable {
         /* Mapping from object 'id (UUID)' -> object 'recordId (Long' */
         RECORD_ID(RECORD_ID_CACHE_NAME),
 
+        /* Mapping from object 'objectType::recordId' (CacheKey) -> object 'id (UUID)' */
+        OBJECT_ID(OBJECT_ID_CACHE_NAME),
+
         /* Mapping from object 'id (UUID)' -> matching account object 'accountRecordId (Long)' */
         ACCOUNT_RECORD_ID(ACCOUNT_RECORD_ID_CACHE_NAME),
 
         /* Mapping from object 'id (UUID)' -> matching object 'tenantRecordId (Long)' */
         TENANT_RECORD_ID(TENANT_RECORD_ID_CACHE_NAME),
 
-        /* Mapping from object 'tableName::targetRecordId' -> matching objects 'Iterable<AuditLog>' */
+        /* Mapping from object 'tableName::targetRecordId' (CacheKey) -> matching objects 'Iterable<AuditLog>' */
         AUDIT_LOG(AUDIT_LOG_CACHE_NAME),
 
-        /* Mapping from object 'tableName::historyTableName::targetRecordId' -> matching objects 'Iterable<AuditLog>' */
-        AUDIT_LOG_VIA_HISTORY(AUDIT_LOG_VIA_HISTORY_CACHE_NAME);
+        /* Mapping from object 'tableName::historyTableName::targetRecordId' (CacheKey) -> matching objects 'Iterable<AuditLog>' */
+        AUDIT_LOG_VIA_HISTORY(AUDIT_LOG_VIA_HISTORY_CACHE_NAME),
+
+        /* Mapping from 'tenantRecordId (Long)' -> all active key/values of the tenant and their version 'TenantKeyValues' */
+        TENANT_KV(TENANT_KV_CACHE_NAME),
+
+        /* Mapping from account or bundle 'id (UUID)' -> control tags set on the object and their version 'ControlTags' */
+        ACCOUNT_CONTROL_TAGS(ACCOUNT_CONTROL_TAGS_CACHE_NAME);
 
         private final String cacheName;
 
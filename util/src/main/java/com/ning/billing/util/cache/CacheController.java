@@ -20,6 +20,10 @@ public interface CacheController<K, V> {
 
     public V get(K key, CacheLoaderArgument objectType);
 
+    public boolean isKeyInCache(K key);
+
+    public void putIfAbsent(K key, V value);
+
     public boolean remove(K key);
 
     public int size();
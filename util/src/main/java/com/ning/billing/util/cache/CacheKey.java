@@ -0,0 +1,143 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.cache;
+
+import java.io.Serializable;
+
+/**
+ * Composite cache key, built from the arguments marked with @CachableKey.
+ * <p/>
+ * Since the database engine may be case insensitive and we use arguments of the SQL method call
+ * to build the key, String and enum pieces are compared ignoring case. This lets us avoid building
+ * (and upper casing) a concatenated String key on each call.
+ */
+public final class CacheKey implements Serializable {
+
+    public static final String SEPARATOR = "::";
+
+    private final Object[] pieces;
+    private final int hashCode;
+
+    public CacheKey(final Object... pieces) {
+        this.pieces = pieces;
+        this.hashCode = computeHashCode(pieces);
+    }
+
+    public int size() {
+        return pieces.length;
+    }
+
+    public Object getPiece(final int position) {
+        return pieces[position];
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final CacheKey that = (CacheKey) o;
+        if (hashCode != that.hashCode || pieces.length != that.pieces.length) {
+            return false;
+        }
+        for (int i = 0; i < pieces.length; i++) {
+            if (!piecesEqual(pieces[i], that.pieces[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < pieces.length; i++) {
+            sb.append(String.valueOf(pieces[i]).toUpperCase());
+            if (i < pieces.length - 1) {
+                sb.append(SEPARATOR);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean piecesEqual(final Object a, final Object b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+
+        final CharSequence aString = asCaseInsensitiveString(a);
+        final CharSequence bString = asCaseInsensitiveString(b);
+        if (aString != null && bString != null) {
+            return aString.toString().equalsIgnoreCase(bString.toString());
+        } else if (a instanceof Number && b instanceof Number) {
+            return ((Number) a).longValue() == ((Number) b).longValue();
+        } else {
+            return a.equals(b);
+        }
+    }
+
+    private static int computeHashCode(final Object[] pieces) {
+        int result = 1;
+        for (final Object piece : pieces) {
+            result = 31 * result + pieceHashCode(piece);
+        }
+        return result;
+    }
+
+    private static int pieceHashCode(final Object piece) {
+        if (piece == null) {
+            return 0;
+        }
+
+        final CharSequence string = asCaseInsensitiveString(piece);
+        if (string != null) {
+            int h = 0;
+            for (int i = 0; i < string.length(); i++) {
+                h = 31 * h + Character.toUpperCase(string.charAt(i));
+            }
+            return h;
+        } else if (piece instanceof Number) {
+            final long value = ((Number) piece).longValue();
+            return (int) (value ^ (value >>> 32));
+        } else {
+            return piece.hashCode();
+        }
+    }
+
+    // Enums are matched by name (e.g. TableName.ACCOUNT_HISTORY and "account_history" as used in the queries)
+    private static CharSequence asCaseInsensitiveString(final Object piece) {
+        if (piece instanceof CharSequence) {
+            return (CharSequence) piece;
+        } else if (piece instanceof Enum) {
+            return ((Enum) piece).name();
+        } else {
+            return null;
+        }
+    }
+}
@@ -36,6 +36,16 @@ public class EhCacheBasedCacheController<K, V> implements CacheController<K, V>
         return (V) element.getObjectValue();
     }
 
+    @Override
+    public boolean isKeyInCache(final K key) {
+        return cache.isKeyInCache(key);
+    }
+
+    @Override
+    public void putIfAbsent(final K key, final V value) {
+        cache.putIfAbsent(new Element(key, value));
+    }
+
     @Override
     public boolean remove(final K key) {
         return cache.remove(key);
@@ -38,16 +38,22 @@ public class EhCacheCacheManagerProvider implements Provider<CacheManager> {
     @Inject
     public EhCacheCacheManagerProvider(final CacheConfig cacheConfig,
                                        final RecordIdCacheLoader recordIdCacheLoader,
+                                       final ObjectIdCacheLoader objectIdCacheLoader,
                                        final AccountRecordIdCacheLoader accountRecordIdCacheLoader,
                                        final TenantRecordIdCacheLoader tenantRecordIdCacheLoader,
                                        final AuditLogCacheLoader auditLogCacheLoader,
-                                       final AuditLogViaHistoryCacheLoader auditLogViaHistoryCacheLoader) {
+                                       final AuditLogViaHistoryCacheLoader auditLogViaHistoryCacheLoader,
+                                       final TenantKVCacheLoader tenantKVCacheLoader,
+                                       final AccountControlTagsCacheLoader accountControlTagsCacheLoader) {
         this.cacheConfig = cacheConfig;
         cacheLoaders.add(recordIdCacheLoader);
+        cacheLoaders.add(objectIdCacheLoader);
         cacheLoaders.add(accountRecordIdCacheLoader);
         cacheLoaders.add(tenantRecordIdCacheLoader);
         cacheLoaders.add(auditLogCacheLoader);
         cacheLoaders.add(auditLogViaHistoryCacheLoader);
+        cacheLoaders.add(tenantKVCacheLoader);
+        cacheLoaders.add(accountControlTagsCacheLoader);
     }
 
     @Override
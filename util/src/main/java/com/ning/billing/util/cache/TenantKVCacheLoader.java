@@ -0,0 +1,89 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.cache;
+
+import java.util.Map.Entry;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.skife.jdbi.v2.IDBI;
+
+import com.ning.billing.util.cache.Cachable.CacheType;
+import com.ning.billing.util.dao.NonEntityDao;
+import com.ning.billing.util.dao.TenantKVCacheSqlDao;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+
+import net.sf.ehcache.loader.CacheLoader;
+
+@Singleton
+public class TenantKVCacheLoader extends BaseCacheLoader implements CacheLoader {
+
+    private final TenantKVCacheSqlDao tenantKVCacheSqlDao;
+
+    @Inject
+    public TenantKVCacheLoader(final IDBI dbi, final NonEntityDao nonEntityDao) {
+        super(dbi, nonEntityDao);
+        this.tenantKVCacheSqlDao = dbi.onDemand(TenantKVCacheSqlDao.class);
+    }
+
+    @Override
+    public CacheType getCacheType() {
+        return CacheType.TENANT_KV;
+    }
+
+    @Override
+    public Object load(final Object key, final Object argument) {
+        checkCacheLoaderStatus();
+
+        if (!(key instanceof Long)) {
+            throw new IllegalArgumentException("Unexpected key type of " + key.getClass().getName());
+        }
+
+        // The version is read first: a concurrent change makes it look outdated, and the entry is simply reloaded on the next check
+        final String version = tenantKVCacheSqlDao.getTenantKeyValuesVersion((Long) key);
+
+        // All the key/values of the tenant are loaded at once: they are small and rarely updated
+        final ImmutableListMultimap.Builder<String, String> tenantKeyValues = ImmutableListMultimap.builder();
+        for (final Entry<String, String> entry : tenantKVCacheSqlDao.getTenantKeyValues((Long) key)) {
+            tenantKeyValues.put(entry);
+        }
+        return new TenantKeyValues(tenantKeyValues.build(), version);
+    }
+
+    public static final class TenantKeyValues {
+
+        private final ListMultimap<String, String> values;
+        private final String version;
+
+        public TenantKeyValues(final ListMultimap<String, String> values, final String version) {
+            this.values = values;
+            this.version = version;
+        }
+
+        public ListMultimap<String, String> getValues() {
+            return values;
+        }
+
+        // See TenantKVCacheSqlDao#getTenantKeyValuesVersion
+        public String getVersion() {
+            return version;
+        }
+    }
+}
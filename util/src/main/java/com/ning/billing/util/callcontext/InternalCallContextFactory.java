@@ -27,6 +27,7 @@ import com.ning.billing.ObjectType;
 import com.ning.billing.util.cache.Cachable.CacheType;
 import com.ning.billing.util.cache.CacheControllerDispatcher;
 import com.ning.billing.clock.Clock;
+import com.ning.billing.util.dao.AccountAndTenantRecordIds;
 import com.ning.billing.util.dao.NonEntityDao;
 
 import com.google.common.base.Objects;
@@ -151,9 +152,10 @@ public class InternalCallContextFactory {
                                                          final CallOrigin callOrigin, final UserType userType, @Nullable final UUID userToken,
                                                          @Nullable final String reasonCode, @Nullable final String comment, final DateTime createdDate,
                                                          final DateTime updatedDate) {
-        final Long tenantRecordId = nonEntityDao.retrieveTenantRecordIdFromObject(objectId, objectType, cacheControllerDispatcher.getCacheController(CacheType.TENANT_RECORD_ID));
-        final Long accountRecordId = nonEntityDao.retrieveAccountRecordIdFromObject(objectId, objectType, cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT_RECORD_ID));
-        return createInternalCallContext(tenantRecordId, accountRecordId, userName, callOrigin, userType, userToken,
+        final AccountAndTenantRecordIds recordIds = nonEntityDao.retrieveAccountAndTenantRecordIdsFromObject(objectId, objectType,
+                                                                                                             cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT_RECORD_ID),
+                                                                                                             cacheControllerDispatcher.getCacheController(CacheType.TENANT_RECORD_ID));
+        return createInternalCallContext(recordIds.getTenantRecordId(), recordIds.getAccountRecordId(), userName, callOrigin, userType, userToken,
                                          reasonCode, comment, createdDate, updatedDate);
     }
 
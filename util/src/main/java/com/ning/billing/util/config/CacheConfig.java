@@ -19,6 +19,7 @@ package com.ning.billing.util.config;
 import org.skife.config.Config;
 import org.skife.config.Default;
 import org.skife.config.Description;
+import org.skife.config.TimeSpan;
 
 public interface CacheConfig extends KillbillConfig {
 
@@ -27,4 +28,14 @@ public interface CacheConfig extends KillbillConfig {
     @Description("Path to Ehcache XML configuration")
     public String getCacheConfigLocation();
 
+    @Config("killbill.cache.tenant.kv.revalidationInterval")
+    @Default("5s")
+    @Description("How often cached tenant key/values are checked against the database, to pick up changes made on other nodes")
+    public TimeSpan getTenantKVRevalidationInterval();
+
+    @Config("killbill.cache.control.tags.revalidationInterval")
+    @Default("1s")
+    @Description("How often cached account and bundle control tags are checked against the database, to pick up changes made on other nodes")
+    public TimeSpan getControlTagsRevalidationInterval();
+
 }
@@ -31,4 +31,14 @@ public interface InvoiceConfig extends KillbillConfig {
     @Default("false")
     @Description("Whether to send email notifications on invoice creation (for configured accounts)")
     public boolean isEmailNotificationsEnabled();
+
+    @Config("killbill.invoice.aging.pageSize")
+    @Default("1000")
+    @Description("Number of accounts aged per query when computing the accounts receivable aging report")
+    public int getAgingReportPageSize();
+
+    @Config("killbill.invoice.migration.batchSize")
+    @Default("100")
+    @Description("Number of migration invoices written per transaction by the bulk migration API")
+    public int getMigrationBatchSize();
 }
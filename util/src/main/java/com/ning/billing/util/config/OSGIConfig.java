@@ -19,6 +19,7 @@ package com.ning.billing.util.config;
 import org.skife.config.Config;
 import org.skife.config.Default;
 import org.skife.config.Description;
+import org.skife.config.TimeSpan;
 
 public interface OSGIConfig extends KillbillConfig {
 
@@ -42,6 +43,26 @@ public interface OSGIConfig extends KillbillConfig {
     @Description("Bundles install directory")
     public String getRootInstallationDir();
 
+    @Config("killbill.osgi.bundle.install.threads")
+    @Default("4")
+    @Description("Number of threads used to install and start the OSGI bundles")
+    public int getBundleInstallThreads();
+
+    @Config("killbill.osgi.event.dispatcher.queue.capacity")
+    @Default("10000")
+    @Description("Maximum number of events queued for each plugin event handler")
+    public int getEventDispatcherQueueCapacity();
+
+    @Config("killbill.osgi.event.dispatcher.backpressure.policy")
+    @Default("DROP_OLDEST")
+    @Description("What to do when the queue of a plugin event handler is full: DROP_OLDEST, DROP_NEWEST or BLOCK (wait up to the block timeout, then drop)")
+    public String getEventDispatcherBackpressurePolicy();
+
+    @Config("killbill.osgi.event.dispatcher.block.timeout")
+    @Default("1s")
+    @Description("Maximum time the bus waits for room in the queues of the plugin event handlers, per event and across all handlers, with the BLOCK policy")
+    public TimeSpan getEventDispatcherBlockTimeout();
+
     @Config("killbill.osgi.system.bundle.export.packages")
     @Default("com.ning.billing.account.api," +
              "com.ning.billing.analytics.api.sanity," +
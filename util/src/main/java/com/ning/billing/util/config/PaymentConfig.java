@@ -49,6 +49,21 @@ public interface PaymentConfig extends KillbillConfig {
     @Description("Maximum number of retries for failed payments")
     public int getPluginFailureRetryMaxAttempts();
 
+    @Config("killbill.payment.refund.completion.retry.sec")
+    @Default("300")
+    @Description("Delay before completing (invoice adjustments) a refund which was processed by the plugin but left uncompleted")
+    public int getRefundCompletionRetryDelay();
+
+    @Config("killbill.payment.refund.completion.max.attempts")
+    @Default("12")
+    @Description("Number of attempts to complete a refund before giving up (manual intervention is then required)")
+    public int getRefundCompletionMaxAttempts();
+
+    @Config("killbill.payment.collection.window.sec")
+    @Default("0")
+    @Description("Window during which the new invoices of an account are collected in a single payment (0 to pay each invoice separately)")
+    public int getPaymentCollectionWindow();
+
     @Config("killbill.payment.plugin.timeout")
     @Default("90s")
     @Description("Timeout for each payment attempt")
@@ -59,6 +74,51 @@ public interface PaymentConfig extends KillbillConfig {
     @Description("Number of threads for plugin executor dispatcher")
     public int getPaymentPluginThreadNb();
 
+    @Config("killbill.payment.plugin.search.timeout")
+    @Default("10s")
+    @Description("Timeout for the plugins to answer a payment method search")
+    public TimeSpan getPaymentMethodSearchTimeout();
+
+    @Config("killbill.payment.plugin.search.threads.nb")
+    @Default("5")
+    @Description("Number of threads for the payment method searches (distinct from the plugin executor dispatcher)")
+    public int getPaymentMethodSearchThreadNb();
+
+    @Config("killbill.payment.plugin.search.queue.size")
+    @Default("100")
+    @Description("Maximum number of plugin searches waiting for a search thread, additional searches are rejected")
+    public int getPaymentMethodSearchQueueSize();
+
+    @Config("killbill.payment.plugin.search.limit")
+    @Default("100")
+    @Description("Maximum number of payment methods returned by each plugin for a search")
+    public int getPaymentMethodSearchLimit();
+
+    @Config("killbill.payment.janitor.run.interval")
+    @Default("5m")
+    @Description("Interval between two runs of the janitor, which reconciles UNKNOWN and PLUGIN_FAILURE payments with the plugins")
+    public TimeSpan getJanitorRunInterval();
+
+    @Config("killbill.payment.janitor.payment.min.age")
+    @Default("10m")
+    @Description("How long a payment needs to be left in UNKNOWN or PLUGIN_FAILURE before the janitor looks at it")
+    public TimeSpan getJanitorPaymentMinAge();
+
+    @Config("killbill.payment.janitor.payment.max.age")
+    @Default("3d")
+    @Description("How long the janitor keeps trying to reconcile a payment before moving it to PLUGIN_FAILURE_ABORTED for manual handling")
+    public TimeSpan getJanitorPaymentMaxAge();
+
+    @Config("killbill.payment.janitor.batch.size")
+    @Default("100")
+    @Description("Number of payments fetched at once by the janitor")
+    public int getJanitorBatchSize();
+
+    @Config("killbill.payment.janitor.plugin.rate")
+    @Default("10")
+    @Description("Maximum number of plugin calls per second made by the janitor")
+    public int getJanitorMaxPluginCallsPerSecond();
+
     @Config("killbill.payment.off")
     @Default("false")
     @Description("Whether the payment subsystem is off")
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.config;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+import org.skife.config.Description;
+import org.skife.config.TimeSpan;
+
+/**
+ * Configuration of the (optional) read replica database. Getters mirror the ones of
+ * the primary database configuration (com.ning.jetty.jdbi.config.DaoConfig).
+ */
+public interface ReplicaDaoConfig extends KillbillConfig {
+
+    @Config("killbill.dao.replica.enabled")
+    @Default("false")
+    @Description("Whether read-only transactions can be routed to a read replica")
+    public boolean isReplicaEnabled();
+
+    @Config("killbill.dao.replica.url")
+    @Default("jdbc:mysql://127.0.0.1:3306/killbill")
+    @Description("JDBC url of the read replica")
+    public String getJdbcUrl();
+
+    @Config("killbill.dao.replica.user")
+    @Default("killbill")
+    public String getUsername();
+
+    @Config("killbill.dao.replica.password")
+    @Default("killbill")
+    public String getPassword();
+
+    @Config("killbill.dao.replica.minIdle")
+    @Default("1")
+    public int getMinIdle();
+
+    @Config("killbill.dao.replica.maxActive")
+    @Default("30")
+    public int getMaxActive();
+
+    @Config("killbill.dao.replica.connectionTimeout")
+    @Default("10s")
+    public TimeSpan getConnectionTimeout();
+
+    @Config("killbill.dao.replica.idleMaxAge")
+    @Default("60m")
+    public TimeSpan getIdleMaxAge();
+
+    @Config("killbill.dao.replica.maxConnectionAge")
+    @Default("0m")
+    public TimeSpan getMaxConnectionAge();
+
+    @Config("killbill.dao.replica.idleConnectionTestPeriod")
+    @Default("5m")
+    public TimeSpan getIdleConnectionTestPeriod();
+
+    @Config("killbill.dao.replica.lag.query")
+    @Default("")
+    @Description("Query returning the replication lag in seconds (e.g. SHOW SLAVE STATUS on MySQL), empty to disable lag checks. Reads go to the primary while the lag can't be determined")
+    public String getReplicaLagQuery();
+
+    @Config("killbill.dao.replica.lag.max")
+    @Default("5s")
+    @Description("Maximum replication lag tolerated before falling back to the primary")
+    public TimeSpan getMaxReplicaLag();
+
+    @Config("killbill.dao.replica.lag.checkInterval")
+    @Default("1s")
+    @Description("How often to re-evaluate the replication lag")
+    public TimeSpan getReplicaLagCheckInterval();
+}
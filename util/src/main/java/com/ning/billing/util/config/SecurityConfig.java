@@ -20,6 +20,7 @@ import org.skife.config.Config;
 import org.skife.config.Default;
 import org.skife.config.DefaultNull;
 import org.skife.config.Description;
+import org.skife.config.TimeSpan;
 
 public interface SecurityConfig extends KillbillConfig {
 
@@ -28,6 +29,18 @@ public interface SecurityConfig extends KillbillConfig {
     @Description("Path to the shiro.ini file (classpath, url or file resource)")
     public String getShiroResourcePath();
 
+    // Sessions
+
+    @Config("killbill.security.session.lastAccessTime.granularity")
+    @Default("1m")
+    @Description("Minimum change in a session last access time before it is persisted")
+    public TimeSpan getSessionLastAccessTimeGranularity();
+
+    @Config("killbill.security.session.lastAccessTime.flushInterval")
+    @Default("5s")
+    @Description("How often pending session last access times are flushed to the database")
+    public TimeSpan getSessionLastAccessTimeFlushInterval();
+
     // LDAP Realm
 
     @Config("killbill.security.ldap.userDnTemplate")
@@ -81,4 +94,24 @@ public interface SecurityConfig extends KillbillConfig {
     @Default("false")
     @Description("Whether to ignore SSL certificates checks")
     public boolean disableShiroLDAPSSLCheck();
+
+    @Config("killbill.security.ldap.authorizationCache.ttl")
+    @Default("5m")
+    @Description("How long the LDAP groups and permissions of a user are cached")
+    public TimeSpan getShiroLDAPAuthorizationCacheTTL();
+
+    @Config("killbill.security.ldap.authorizationCache.negativeTtl")
+    @Default("30s")
+    @Description("How long users without any LDAP group are cached")
+    public TimeSpan getShiroLDAPAuthorizationCacheNegativeTTL();
+
+    @Config("killbill.security.ldap.authorizationCache.maxStaleness")
+    @Default("1h")
+    @Description("How long expired LDAP groups and permissions can still be served while they are refreshed (e.g. LDAP server down)")
+    public TimeSpan getShiroLDAPAuthorizationCacheMaxStaleness();
+
+    @Config("killbill.security.ldap.authorizationCache.maxSize")
+    @Default("10000")
+    @Description("Max number of users whose LDAP groups and permissions are cached")
+    public int getShiroLDAPAuthorizationCacheMaxSize();
 }
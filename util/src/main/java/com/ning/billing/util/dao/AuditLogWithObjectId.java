@@ -0,0 +1,50 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.dao;
+
+import java.util.UUID;
+
+import com.ning.billing.util.audit.AuditLog;
+
+/**
+ * Audit log along with the id and record id of the object it relates to (for history tables, the object
+ * the history row belongs to).
+ */
+public class AuditLogWithObjectId {
+
+    private final UUID objectId;
+    private final Long objectRecordId;
+    private final AuditLog auditLog;
+
+    public AuditLogWithObjectId(final UUID objectId, final Long objectRecordId, final AuditLog auditLog) {
+        this.objectId = objectId;
+        this.objectRecordId = objectRecordId;
+        this.auditLog = auditLog;
+    }
+
+    public UUID getObjectId() {
+        return objectId;
+    }
+
+    public Long getObjectRecordId() {
+        return objectRecordId;
+    }
+
+    public AuditLog getAuditLog() {
+        return auditLog;
+    }
+}
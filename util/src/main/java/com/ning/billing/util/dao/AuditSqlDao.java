@@ -23,6 +23,7 @@ import org.skife.jdbi.v2.sqlobject.BindBean;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.skife.jdbi.v2.sqlobject.customizers.Define;
+import org.skife.jdbi.v2.sqlobject.customizers.Mapper;
 import org.skife.jdbi.v2.sqlobject.customizers.RegisterMapper;
 
 import com.ning.billing.util.audit.AuditLog;
@@ -60,4 +61,21 @@ public interface AuditSqlDao {
                                                                   @CachableKey(2) @Define("historyTableName") final String actualHistoryTableName, /* Actual table name, used in the inner join query */
                                                                   @CachableKey(3) @Bind("targetRecordId") final long targetRecordId,
                                                                   @BindBean final InternalTenantContext context);
+
+    /**
+     * Retrieve, in a single query, the audit logs of all the objects of a table belonging to an account
+     * (see AuditDao#getAuditLogsForIds)
+     */
+    @SqlQuery
+    @Mapper(AuditLogWithObjectIdMapper.class)
+    public List<AuditLogWithObjectId> getAuditLogsForAccountRecordId(@BindBean final TableName tableName,
+                                                                      @Define("objectTableName") final String objectTableName,
+                                                                      @BindBean final InternalTenantContext context);
+
+    @SqlQuery
+    @Mapper(AuditLogWithObjectIdMapper.class)
+    public List<AuditLogWithObjectId> getAuditLogsViaHistoryForAccountRecordId(@BindBean final TableName historyTableName,
+                                                                                @Define("historyTableName") final String actualHistoryTableName,
+                                                                                @Define("objectTableName") final String objectTableName,
+                                                                                @BindBean final InternalTenantContext context);
 }
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.dao;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ning.billing.util.config.ReplicaDaoConfig;
+
+import com.google.common.base.Strings;
+
+/**
+ * Routes read-only transactions either to the primary database or to the (optional) read replica.
+ * <p/>
+ * Reads are only sent to the replica within a read-only scope (see #beginReadOnlyScope, typically opened
+ * for the duration of a GET API request): background processing (bus, notification queues, ...) always
+ * goes to the primary. Within a scope, the decision is taken once and kept, so that a request sees a
+ * consistent view of the data. As soon as a read-write transaction happens in the scope, subsequent reads
+ * go to the primary as well (read your writes).
+ * <p/>
+ * If a lag query is configured, the replica is only used when its replication lag is known and below the
+ * configured threshold. When the lag can't be determined (query failure, no row, or a NULL lag because
+ * replication is stopped), reads go to the primary.
+ */
+@Singleton
+public class DBRouter {
+
+    public static final String REPLICA_NAMED = "replica";
+
+    private static final Logger logger = LoggerFactory.getLogger(DBRouter.class);
+
+    private static final String MYSQL_LAG_COLUMN = "Seconds_Behind_Master";
+    // Replication lag which couldn't be determined: reads go to the primary
+    private static final long UNKNOWN_LAG = -1L;
+
+    private final IDBI primaryDbi;
+    private final ThreadLocal<RoutingScope> currentScope = new ThreadLocal<RoutingScope>();
+    private final AtomicLong lastLagCheckMillis = new AtomicLong(0);
+    private final AtomicLong lastReplicaLagSeconds = new AtomicLong(0);
+
+    private volatile IDBI replicaDbi;
+    private volatile ReplicaDaoConfig replicaDaoConfig;
+
+    @Inject
+    public DBRouter(final IDBI primaryDbi) {
+        this.primaryDbi = primaryDbi;
+    }
+
+    public DBRouter(final IDBI primaryDbi, @Nullable final IDBI replicaDbi, @Nullable final ReplicaDaoConfig replicaDaoConfig) {
+        this(primaryDbi);
+        setReplica(replicaDbi, replicaDaoConfig);
+    }
+
+    @com.google.inject.Inject(optional = true)
+    public void setReplica(@Named(REPLICA_NAMED) final IDBI replicaDbi, final ReplicaDaoConfig replicaDaoConfig) {
+        if (replicaDaoConfig != null && replicaDaoConfig.isReplicaEnabled()) {
+            this.replicaDaoConfig = replicaDaoConfig;
+            this.replicaDbi = replicaDbi;
+        }
+    }
+
+    public IDBI getPrimaryDBI() {
+        return primaryDbi;
+    }
+
+    public boolean hasReplica() {
+        return replicaDbi != null;
+    }
+
+    /**
+     * Allow read-only transactions on the current thread to be routed to the replica, until #endReadOnlyScope is called.
+     * Scopes can be nested, the routing decision is shared by all nested scopes.
+     */
+    public void beginReadOnlyScope() {
+        final RoutingScope scope = currentScope.get();
+        if (scope == null) {
+            currentScope.set(new RoutingScope());
+        } else {
+            scope.depth++;
+        }
+    }
+
+    public void endReadOnlyScope() {
+        final RoutingScope scope = currentScope.get();
+        if (scope == null) {
+            return;
+        }
+
+        scope.depth--;
+        if (scope.depth <= 0) {
+            currentScope.remove();
+        }
+    }
+
+    /**
+     * @return the database to use for the next read-only transaction on this thread
+     */
+    public IDBI getDBIForReadOnlyTransaction() {
+        final IDBI replica = replicaDbi;
+        final RoutingScope scope = currentScope.get();
+        if (replica == null || scope == null) {
+            return primaryDbi;
+        }
+
+        if (scope.routeToReplica == null) {
+            scope.routeToReplica = isReplicaFreshEnough();
+        }
+        return scope.routeToReplica ? replica : primaryDbi;
+    }
+
+    /**
+     * @return true if the next read-only transaction on this thread goes to the replica
+     */
+    public boolean isReadOnlyTransactionRoutedToReplica() {
+        return getDBIForReadOnlyTransaction() != primaryDbi;
+    }
+
+    /**
+     * Notify the router that a read-write transaction is happening on this thread: subsequent
+     * reads of the current scope, if any, will go to the primary.
+     */
+    public void onReadWriteTransaction() {
+        final RoutingScope scope = currentScope.get();
+        if (scope != null) {
+            scope.routeToReplica = false;
+        }
+    }
+
+    // True if no lag query is configured, or if the last known lag is below the threshold (false if the lag is unknown)
+    private boolean isReplicaFreshEnough() {
+        final ReplicaDaoConfig config = replicaDaoConfig;
+        if (config == null || Strings.isNullOrEmpty(config.getReplicaLagQuery())) {
+            return true;
+        }
+
+        final long now = System.currentTimeMillis();
+        final long lastCheck = lastLagCheckMillis.get();
+        if (now - lastCheck >= config.getReplicaLagCheckInterval().getMillis() && lastLagCheckMillis.compareAndSet(lastCheck, now)) {
+            lastReplicaLagSeconds.set(fetchReplicaLagSeconds(config.getReplicaLagQuery()));
+        }
+
+        final long lagSeconds = lastReplicaLagSeconds.get();
+        return lagSeconds != UNKNOWN_LAG && TimeUnit.SECONDS.toMillis(lagSeconds) <= config.getMaxReplicaLag().getMillis();
+    }
+
+    // Returns UNKNOWN_LAG if the lag query fails or doesn't return a lag
+    private long fetchReplicaLagSeconds(final String lagQuery) {
+        try {
+            final Long lag = replicaDbi.withHandle(new HandleCallback<Long>() {
+                @Override
+                public Long withHandle(final Handle handle) throws Exception {
+                    final Map<String, Object> row = handle.createQuery(lagQuery).first();
+                    return extractLag(row);
+                }
+            });
+            return lag == null ? UNKNOWN_LAG : lag;
+        } catch (RuntimeException e) {
+            logger.warn("Unable to determine the replication lag, routing reads to the primary", e);
+            return UNKNOWN_LAG;
+        }
+    }
+
+    private Long extractLag(@Nullable final Map<String, Object> row) {
+        if (row == null || row.isEmpty()) {
+            return null;
+        }
+
+        Object lag = null;
+        for (final String column : row.keySet()) {
+            if (MYSQL_LAG_COLUMN.equalsIgnoreCase(column)) {
+                lag = row.get(column);
+                break;
+            }
+        }
+        if (lag == null && row.size() == 1) {
+            lag = row.values().iterator().next();
+        }
+
+        if (lag instanceof Number) {
+            return ((Number) lag).longValue();
+        } else if (lag != null) {
+            return Long.valueOf(lag.toString());
+        } else {
+            // Replication stopped or broken
+            return null;
+        }
+    }
+
+    private static final class RoutingScope {
+
+        private int depth = 1;
+        // null until the first read-only transaction in the scope
+        private Boolean routeToReplica;
+    }
+}
@@ -16,6 +16,13 @@
 
 package com.ning.billing.util.dao;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
@@ -25,10 +32,16 @@ import org.skife.jdbi.v2.IDBI;
 
 import com.ning.billing.ObjectType;
 import com.ning.billing.util.cache.CacheController;
+import com.ning.billing.util.cache.CacheKey;
 import com.ning.billing.util.cache.CacheLoaderArgument;
 
+import com.google.common.collect.Iterables;
+
 public class DefaultNonEntityDao implements NonEntityDao {
 
+    // Maximum number of ids in the IN clause of the bulk lookups
+    private static final int BULK_LOOKUP_BATCH_SIZE = 500;
+
     private final NonEntitySqlDao nonEntitySqlDao;
     private final WithCaching containedCall;
 
@@ -92,6 +105,87 @@ public class DefaultNonEntityDao implements NonEntityDao {
         }, objectId, objectType, cache);
     }
 
+    @Override
+    public AccountAndTenantRecordIds retrieveAccountAndTenantRecordIdsFromObject(@Nullable final UUID objectId, final ObjectType objectType,
+                                                                                 @Nullable final CacheController<Object, Object> accountRecordIdCache,
+                                                                                 @Nullable final CacheController<Object, Object> tenantRecordIdCache) {
+        if (objectId == null) {
+            return new AccountAndTenantRecordIds(null, null);
+        }
+
+        final String key = objectId.toString();
+        if (accountRecordIdCache != null && tenantRecordIdCache != null &&
+            accountRecordIdCache.isKeyInCache(key) && tenantRecordIdCache.isKeyInCache(key)) {
+            final CacheLoaderArgument cacheLoaderArgument = new CacheLoaderArgument(objectType);
+            return new AccountAndTenantRecordIds((Long) accountRecordIdCache.get(key, cacheLoaderArgument),
+                                                 (Long) tenantRecordIdCache.get(key, cacheLoaderArgument));
+        }
+
+        // Cache miss: retrieve both record ids at once, instead of going through each cache loader
+        final TableName tableName = TableName.fromObjectType(objectType);
+        final AccountAndTenantRecordIds recordIds;
+        switch (tableName) {
+            case TENANT:
+                recordIds = nonEntitySqlDao.getAccountAndTenantRecordIdsFromObject(key, "null", "record_id", tableName.getTableName());
+                break;
+
+            case TAG_DEFINITIONS:
+            case TAG_DEFINITION_HISTORY:
+                recordIds = nonEntitySqlDao.getAccountAndTenantRecordIdsFromObject(key, "null", "tenant_record_id", tableName.getTableName());
+                break;
+
+            case ACCOUNT:
+                recordIds = nonEntitySqlDao.getAccountAndTenantRecordIdsFromObject(key, "record_id", "tenant_record_id", tableName.getTableName());
+                break;
+
+            default:
+                recordIds = nonEntitySqlDao.getAccountAndTenantRecordIdsFromObject(key, "account_record_id", "tenant_record_id", tableName.getTableName());
+                break;
+        }
+
+        if (recordIds == null) {
+            return new AccountAndTenantRecordIds(null, null);
+        }
+
+        // Both mappings are immutable
+        if (accountRecordIdCache != null && recordIds.getAccountRecordId() != null) {
+            accountRecordIdCache.putIfAbsent(key, recordIds.getAccountRecordId());
+        }
+        if (tenantRecordIdCache != null && recordIds.getTenantRecordId() != null) {
+            tenantRecordIdCache.putIfAbsent(key, recordIds.getTenantRecordId());
+        }
+        return recordIds;
+    }
+
+    @Override
+    public Map<UUID, Long> retrieveRecordIdsFromObjects(final Collection<UUID> objectIds, final ObjectType objectType,
+                                                        @Nullable final CacheController<Object, Object> recordIdCache,
+                                                        @Nullable final CacheController<Object, Object> objectIdCache) {
+        final Map<UUID, Long> recordIds = new HashMap<UUID, Long>();
+
+        final Set<String> idsToResolve = new LinkedHashSet<String>();
+        for (final UUID objectId : objectIds) {
+            final String key = objectId.toString();
+            if (recordIdCache != null && recordIdCache.isKeyInCache(key)) {
+                final Long recordId = (Long) recordIdCache.get(key, new CacheLoaderArgument(objectType));
+                if (recordId != null) {
+                    recordIds.put(objectId, recordId);
+                    continue;
+                }
+            }
+            idsToResolve.add(key);
+        }
+
+        final String tableName = TableName.fromObjectType(objectType).getTableName();
+        for (final List<String> batch : Iterables.partition(idsToResolve, BULK_LOOKUP_BATCH_SIZE)) {
+            for (final Entry<UUID, Long> idAndRecordId : nonEntitySqlDao.getRecordIdsFromObjects(batch, tableName)) {
+                recordIds.put(idAndRecordId.getKey(), idAndRecordId.getValue());
+                populateCaches(idAndRecordId, objectType, recordIdCache, objectIdCache);
+            }
+        }
+        return recordIds;
+    }
+
     @Override
     public Long retrieveLastHistoryRecordIdFromTransaction(@Nullable final Long targetRecordId, final TableName tableName, final NonEntitySqlDao transactional) {
         // There is no caching here because the value returned changes as we add more history records, and so we would need some cache invalidation
@@ -104,11 +198,61 @@ public class DefaultNonEntityDao implements NonEntityDao {
     }
 
     @Override
-    public UUID retrieveIdFromObject(final Long recordId, final ObjectType objectType) {
+    public UUID retrieveIdFromObject(@Nullable final Long recordId, final ObjectType objectType, @Nullable final CacheController<Object, Object> cache) {
+        if (recordId == null) {
+            return null;
+        }
+
+        // Record ids are only unique within a table, hence the object type in the key
+        if (cache != null) {
+            return (UUID) cache.get(new CacheKey(objectType, recordId), new CacheLoaderArgument(objectType, new Object[]{recordId}, null));
+        }
+
         final TableName tableName = TableName.fromObjectType(objectType);
         return nonEntitySqlDao.getIdFromObject(recordId, tableName.getTableName());
     }
 
+    @Override
+    public Map<Long, UUID> retrieveIdsFromObjects(final Collection<Long> recordIds, final ObjectType objectType,
+                                                  @Nullable final CacheController<Object, Object> objectIdCache,
+                                                  @Nullable final CacheController<Object, Object> recordIdCache) {
+        final Map<Long, UUID> objectIds = new HashMap<Long, UUID>();
+
+        final Set<Long> recordIdsToResolve = new LinkedHashSet<Long>();
+        for (final Long recordId : recordIds) {
+            final CacheKey key = new CacheKey(objectType, recordId);
+            if (objectIdCache != null && objectIdCache.isKeyInCache(key)) {
+                final UUID objectId = (UUID) objectIdCache.get(key, new CacheLoaderArgument(objectType, new Object[]{recordId}, null));
+                if (objectId != null) {
+                    objectIds.put(recordId, objectId);
+                    continue;
+                }
+            }
+            recordIdsToResolve.add(recordId);
+        }
+
+        final String tableName = TableName.fromObjectType(objectType).getTableName();
+        for (final List<Long> batch : Iterables.partition(recordIdsToResolve, BULK_LOOKUP_BATCH_SIZE)) {
+            for (final Entry<UUID, Long> idAndRecordId : nonEntitySqlDao.getIdsFromObjects(batch, tableName)) {
+                objectIds.put(idAndRecordId.getValue(), idAndRecordId.getKey());
+                populateCaches(idAndRecordId, objectType, recordIdCache, objectIdCache);
+            }
+        }
+        return objectIds;
+    }
+
+    // The id <-> record id mapping never changes, so a bulk lookup in one direction can populate both caches
+    private void populateCaches(final Entry<UUID, Long> idAndRecordId, final ObjectType objectType,
+                                @Nullable final CacheController<Object, Object> recordIdCache,
+                                @Nullable final CacheController<Object, Object> objectIdCache) {
+        if (recordIdCache != null) {
+            recordIdCache.putIfAbsent(idAndRecordId.getKey().toString(), idAndRecordId.getValue());
+        }
+        if (objectIdCache != null) {
+            objectIdCache.putIfAbsent(new CacheKey(objectType, idAndRecordId.getValue()), idAndRecordId.getKey());
+        }
+    }
+
     private interface OperationRetrieval<T> {
         public T doRetrieve(final UUID objectId, final ObjectType objectType);
     }
@@ -16,6 +16,8 @@
 
 package com.ning.billing.util.dao;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
@@ -36,11 +38,26 @@ public interface NonEntityDao {
 
     public Long retrieveTenantRecordIdFromObject(final UUID objectId, final ObjectType objectType, @Nullable final CacheController<Object, Object> cache);
 
+    // Retrieve both the account and tenant record ids of an object with a single query (on cache misses)
+    public AccountAndTenantRecordIds retrieveAccountAndTenantRecordIdsFromObject(final UUID objectId, final ObjectType objectType,
+                                                                                 @Nullable final CacheController<Object, Object> accountRecordIdCache,
+                                                                                 @Nullable final CacheController<Object, Object> tenantRecordIdCache);
+
+    // Bulk version of retrieveRecordIdFromObject: unknown ids are resolved by batches, and both the record-id and object-id caches are populated
+    public Map<UUID, Long> retrieveRecordIdsFromObjects(final Collection<UUID> objectIds, final ObjectType objectType,
+                                                        @Nullable final CacheController<Object, Object> recordIdCache,
+                                                        @Nullable final CacheController<Object, Object> objectIdCache);
+
     // This retrieves from the history table the latest record for which targetId matches the one we are passing
     public Long retrieveLastHistoryRecordIdFromTransaction(final Long targetRecordId, final TableName tableName, final NonEntitySqlDao transactional);
 
     // This is the reverse from retrieveLastHistoryRecordIdFromTransaction; this retrieves the record_id of the object matching a given history row
     public Long retrieveHistoryTargetRecordId(final Long recordId, final TableName tableName);
 
-    public UUID retrieveIdFromObject(final Long recordId, final ObjectType objectType);
+    public UUID retrieveIdFromObject(final Long recordId, final ObjectType objectType, @Nullable final CacheController<Object, Object> cache);
+
+    // Bulk version of retrieveIdFromObject, see retrieveRecordIdsFromObjects
+    public Map<Long, UUID> retrieveIdsFromObjects(final Collection<Long> recordIds, final ObjectType objectType,
+                                                  @Nullable final CacheController<Object, Object> objectIdCache,
+                                                  @Nullable final CacheController<Object, Object> recordIdCache);
 }
@@ -16,14 +16,26 @@
 
 package com.ning.billing.util.dao;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map.Entry;
 import java.util.UUID;
 
+import org.skife.jdbi.v2.StatementContext;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.customizers.Define;
+import org.skife.jdbi.v2.sqlobject.customizers.Mapper;
 import org.skife.jdbi.v2.sqlobject.mixins.CloseMe;
 import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
 import org.skife.jdbi.v2.sqlobject.stringtemplate.UseStringTemplate3StatementLocator;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import com.ning.billing.util.tag.dao.UUIDCollectionBinder;
+
+import com.google.common.collect.Maps;
 
 @UseStringTemplate3StatementLocator
 public interface NonEntitySqlDao extends Transactional<NonEntitySqlDao>, CloseMe {
@@ -34,6 +46,21 @@ public interface NonEntitySqlDao extends Transactional<NonEntitySqlDao>, CloseMe
     @SqlQuery
     public UUID getIdFromObject(@Bind("recordId") Long recordId, @Define("tableName") final String tableName);
 
+    @SqlQuery
+    @Mapper(IdAndRecordIdMapper.class)
+    public List<Entry<UUID, Long>> getRecordIdsFromObjects(@UUIDCollectionBinder("ids") final Collection<String> ids, @Define("tableName") final String tableName);
+
+    @SqlQuery
+    @Mapper(IdAndRecordIdMapper.class)
+    public List<Entry<UUID, Long>> getIdsFromObjects(@RecordIdCollectionBinder("record_ids") final Collection<Long> recordIds, @Define("tableName") final String tableName);
+
+    @SqlQuery
+    @Mapper(AccountAndTenantRecordIdsMapper.class)
+    public AccountAndTenantRecordIds getAccountAndTenantRecordIdsFromObject(@Bind("id") String id,
+                                                                            @Define("accountRecordIdColumn") final String accountRecordIdColumn,
+                                                                            @Define("tenantRecordIdColumn") final String tenantRecordIdColumn,
+                                                                            @Define("tableName") final String tableName);
+
     @SqlQuery
     public Long getAccountRecordIdFromAccount(@Bind("id") String id);
 
@@ -54,4 +81,25 @@ public interface NonEntitySqlDao extends Transactional<NonEntitySqlDao>, CloseMe
 
     @SqlQuery
     public Long getHistoryTargetRecordId(@Bind("recordId") Long recordId, @Define("tableName") final String tableName);
+
+    public static class IdAndRecordIdMapper extends MapperBase implements ResultSetMapper<Entry<UUID, Long>> {
+
+        @Override
+        public Entry<UUID, Long> map(final int index, final ResultSet r, final StatementContext ctx) throws SQLException {
+            return Maps.immutableEntry(getUUID(r, "id"), r.getLong("record_id"));
+        }
+    }
+
+    public static class AccountAndTenantRecordIdsMapper implements ResultSetMapper<AccountAndTenantRecordIds> {
+
+        @Override
+        public AccountAndTenantRecordIds map(final int index, final ResultSet r, final StatementContext ctx) throws SQLException {
+            return new AccountAndTenantRecordIds(getNullableLong(r, "account_record_id"), getNullableLong(r, "tenant_record_id"));
+        }
+
+        private Long getNullableLong(final ResultSet r, final String columnName) throws SQLException {
+            final long value = r.getLong(columnName);
+            return r.wasNull() ? null : value;
+        }
+    }
 }
@@ -16,6 +16,9 @@
 
 package com.ning.billing.util.dao;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 import javax.annotation.Nullable;
 
 import com.ning.billing.ObjectType;
@@ -52,6 +55,16 @@ public enum TableName {
     TENANT_KVS("tenant_kvs", ObjectType.TENANT_KVS),
     TAG("tags", ObjectType.TAG, TAG_HISTORY);
 
+    private static final Map<ObjectType, TableName> TABLE_NAMES_BY_OBJECT_TYPE = new EnumMap<ObjectType, TableName>(ObjectType.class);
+
+    static {
+        for (final TableName tableName : values()) {
+            if (tableName.getObjectType() != null && TABLE_NAMES_BY_OBJECT_TYPE.get(tableName.getObjectType()) == null) {
+                TABLE_NAMES_BY_OBJECT_TYPE.put(tableName.getObjectType(), tableName);
+            }
+        }
+    }
+
     private final String tableName;
     private final ObjectType objectType;
     private final TableName historyTableName;
@@ -71,12 +84,7 @@ public enum TableName {
     }
 
     public static TableName fromObjectType(final ObjectType objectType) {
-        for (final TableName tableName : values()) {
-            if (tableName.getObjectType() != null && tableName.getObjectType().equals(objectType)) {
-                return tableName;
-            }
-        }
-        return null;
+        return objectType == null ? null : TABLE_NAMES_BY_OBJECT_TYPE.get(objectType);
     }
 
     public String getTableName() {
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.customizers.Mapper;
+import org.skife.jdbi.v2.sqlobject.customizers.RegisterMapper;
+import org.skife.jdbi.v2.sqlobject.stringtemplate.UseStringTemplate3StatementLocator;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Bulk lookup of the tenant key/values, used to populate the tenant-kv cache (see TenantKVCacheLoader).
+ */
+@UseStringTemplate3StatementLocator
+@RegisterMapper(TenantKVCacheSqlDao.TenantKVEntryMapper.class)
+public interface TenantKVCacheSqlDao {
+
+    @SqlQuery
+    public List<Entry<String, String>> getTenantKeyValues(@Bind("tenantRecordId") final Long tenantRecordId);
+
+    // Keys are only ever added (with a new record_id) or soft deleted: the number of active keys and the highest
+    // active record_id change whenever the key/values of the tenant do
+    @SqlQuery
+    @Mapper(TenantKVVersionMapper.class)
+    public String getTenantKeyValuesVersion(@Bind("tenantRecordId") final Long tenantRecordId);
+
+    public static class TenantKVEntryMapper implements ResultSetMapper<Entry<String, String>> {
+
+        @Override
+        public Entry<String, String> map(final int index, final ResultSet resultSet, final StatementContext statementContext) throws SQLException {
+            return Maps.immutableEntry(resultSet.getString("tenant_key"), resultSet.getString("tenant_value"));
+        }
+    }
+
+    public static class TenantKVVersionMapper implements ResultSetMapper<String> {
+
+        @Override
+        public String map(final int index, final ResultSet resultSet, final StatementContext statementContext) throws SQLException {
+            return resultSet.getLong("nb_keys") + ":" + resultSet.getLong("max_record_id");
+        }
+    }
+}
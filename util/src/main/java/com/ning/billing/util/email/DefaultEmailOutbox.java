@@ -0,0 +1,100 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.email;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+
+import javax.inject.Inject;
+
+import org.joda.time.DateTime;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.exceptions.UnableToExecuteStatementException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ning.billing.clock.Clock;
+import com.ning.billing.commons.jdbi.mapper.LowerToCamelBeanMapperFactory;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.email.dao.EmailOutboxModelDao;
+import com.ning.billing.util.email.dao.EmailOutboxSqlDao;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+
+public class DefaultEmailOutbox implements EmailOutbox {
+
+    private static final Logger log = LoggerFactory.getLogger(DefaultEmailOutbox.class);
+
+    private final EmailOutboxSqlDao emailOutboxSqlDao;
+    private final Clock clock;
+
+    @Inject
+    public DefaultEmailOutbox(final IDBI dbi, final Clock clock) {
+        if (dbi instanceof DBI) {
+            ((DBI) dbi).registerMapper(new LowerToCamelBeanMapperFactory(EmailOutboxModelDao.class));
+        }
+        this.emailOutboxSqlDao = dbi.onDemand(EmailOutboxSqlDao.class);
+        this.clock = clock;
+    }
+
+    @Override
+    public int enqueue(final UUID accountId, final String dedupKey, final List<String> to, final List<String> cc, final String subject,
+                       final String body, final boolean isHtml, final InternalTenantContext context) {
+        final DateTime now = clock.getUTCNow();
+        int queued = 0;
+        // Each email is sent to a single recipient: cc recipients get their own (deduplicated) entries, so that
+        // their delivery doesn't depend on the delivery to another recipient
+        for (final String recipient : Iterables.<String>concat(to, cc == null ? ImmutableList.<String>of() : cc)) {
+            if (recipient == null) {
+                continue;
+            }
+
+            if (emailOutboxSqlDao.getByDedupKey(dedupKey, recipient, context.getTenantRecordId()) != null) {
+                log.info("Email {} for {} already queued, skipping", dedupKey, recipient);
+                continue;
+            }
+
+            try {
+                emailOutboxSqlDao.create(new EmailOutboxModelDao(accountId, dedupKey, recipient, ImmutableList.<String>of(), subject, body, isHtml, now,
+                                                                 context.getAccountRecordId(), context.getTenantRecordId()));
+                queued++;
+            } catch (final UnableToExecuteStatementException e) {
+                // Queued concurrently by another thread or node, caught by the unique dedup index
+                if (!isIntegrityConstraintViolation(e)) {
+                    throw e;
+                }
+                log.info("Email {} for {} already queued, skipping", dedupKey, recipient);
+            }
+        }
+        return queued;
+    }
+
+    @Override
+    public List<EmailOutboxModelDao> getEmailsForAccount(final UUID accountId, final InternalTenantContext context) {
+        return emailOutboxSqlDao.getByAccountId(accountId.toString(), context.getTenantRecordId());
+    }
+
+    private boolean isIntegrityConstraintViolation(final UnableToExecuteStatementException e) {
+        // SQL state class 23: integrity constraint violation
+        return e.getCause() instanceof SQLException &&
+               ((SQLException) e.getCause()).getSQLState() != null &&
+               ((SQLException) e.getCause()).getSQLState().startsWith("23");
+    }
+}
@@ -20,6 +20,7 @@ import org.skife.config.Config;
 import org.skife.config.Default;
 import org.skife.config.DefaultNull;
 import org.skife.config.Description;
+import org.skife.config.TimeSpan;
 
 import com.ning.billing.util.config.KillbillConfig;
 
@@ -64,4 +65,34 @@ public interface EmailConfig extends KillbillConfig {
     @Default("Your invoice")
     @Description("Default Subject: field for invoice notifications")
     String getInvoiceEmailSubject();
+
+    @Config("killbill.mail.outbox.threads.nb")
+    @Default("2")
+    @Description("Number of threads sending the emails from the outbox")
+    int getOutboxThreadNb();
+
+    @Config("killbill.mail.outbox.sleep")
+    @Default("5s")
+    @Description("Time between two polls of the email outbox")
+    TimeSpan getOutboxSleepTime();
+
+    @Config("killbill.mail.outbox.batch.size")
+    @Default("50")
+    @Description("Max number of emails picked up from the outbox per poll")
+    int getOutboxBatchSize();
+
+    @Config("killbill.mail.outbox.max.attempts")
+    @Default("8")
+    @Description("Number of delivery attempts before giving up on an email")
+    int getOutboxMaxAttempts();
+
+    @Config("killbill.mail.outbox.retry.delay")
+    @Default("1m")
+    @Description("Delay before the first retry (doubled for each subsequent attempt)")
+    TimeSpan getOutboxRetryDelay();
+
+    @Config("killbill.mail.outbox.processing.timeout")
+    @Default("10m")
+    @Description("Time after which an email claimed by a dead node is put back in the outbox")
+    TimeSpan getOutboxProcessingTimeout();
 }
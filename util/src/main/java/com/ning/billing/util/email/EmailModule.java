@@ -34,8 +34,16 @@ public class EmailModule extends AbstractModule {
         bind(EmailConfig.class).toInstance(config);
     }
 
+    protected void installEmailOutbox() {
+        bind(EmailSender.class).to(DefaultEmailSender.class).asEagerSingleton();
+        bind(EmailOutbox.class).to(DefaultEmailOutbox.class).asEagerSingleton();
+        bind(EmailOutboxDispatcher.class).asEagerSingleton();
+        bind(EmailOutboxService.class).to(DefaultEmailOutboxService.class).asEagerSingleton();
+    }
+
     @Override
     protected void configure() {
         installEmailConfig();
+        installEmailOutbox();
     }
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.email;
+
+import java.util.List;
+import java.util.UUID;
+
+import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.email.dao.EmailOutboxModelDao;
+
+/**
+ * Persistent queue of outbound emails, drained asynchronously by the EmailOutboxDispatcher.
+ */
+public interface EmailOutbox {
+
+    /**
+     * Queue an email for delivery. One entry is created per recipient: an email which was already queued
+     * for a given recipient with the same deduplication key is ignored. The cc recipients get their
+     * own entries, deduplicated the same way.
+     *
+     * @param accountId account the email relates to
+     * @param dedupKey  deduplication key (e.g. INVOICE:&lt;invoiceId&gt;)
+     * @param to        recipients
+     * @param cc        cc recipients
+     * @param subject   subject
+     * @param body      body
+     * @param isHtml    whether the body is html or plain text
+     * @param context   context for the account
+     * @return the number of emails queued
+     */
+    public int enqueue(UUID accountId, String dedupKey, List<String> to, List<String> cc, String subject,
+                       String body, boolean isHtml, InternalTenantContext context);
+
+    /**
+     * @param accountId account id
+     * @param context   context for the account
+     * @return all emails queued for that account, along with their delivery status
+     */
+    public List<EmailOutboxModelDao> getEmailsForAccount(UUID accountId, InternalTenantContext context);
+}
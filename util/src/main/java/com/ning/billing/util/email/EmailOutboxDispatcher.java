@@ -0,0 +1,217 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.email;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.joda.time.DateTime;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.IDBI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ning.billing.clock.Clock;
+import com.ning.billing.commons.jdbi.mapper.LowerToCamelBeanMapperFactory;
+import com.ning.billing.util.Hostname;
+import com.ning.billing.util.email.dao.EmailOutboxModelDao;
+import com.ning.billing.util.email.dao.EmailOutboxSqlDao;
+import com.ning.billing.util.email.dao.EmailOutboxStatus;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+
+/**
+ * Drain the email outbox: emails ready to be sent are claimed and handed over to a bounded pool of senders.
+ * Failed deliveries are retried with an exponential backoff, until the max number of attempts is reached.
+ */
+@Singleton
+public class EmailOutboxDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(EmailOutboxDispatcher.class);
+
+    private static final String EMAIL_OUTBOX_THREAD_PREFIX = "email-outbox-th-";
+    private static final int MAX_ERROR_LENGTH = 1024;
+
+    private final EmailOutboxSqlDao emailOutboxSqlDao;
+    private final EmailSender emailSender;
+    private final EmailConfig config;
+    private final Clock clock;
+    private final String owner;
+
+    private ScheduledExecutorService poller;
+    private ExecutorService senders;
+
+    @Inject
+    public EmailOutboxDispatcher(final IDBI dbi, final EmailSender emailSender, final EmailConfig config, final Clock clock) {
+        if (dbi instanceof DBI) {
+            ((DBI) dbi).registerMapper(new LowerToCamelBeanMapperFactory(EmailOutboxModelDao.class));
+        }
+        this.emailOutboxSqlDao = dbi.onDemand(EmailOutboxSqlDao.class);
+        this.emailSender = emailSender;
+        this.config = config;
+        this.clock = clock;
+        this.owner = Hostname.get();
+    }
+
+    public synchronized void start() {
+        senders = Executors.newFixedThreadPool(config.getOutboxThreadNb(), createThreadFactory());
+        poller = Executors.newSingleThreadScheduledExecutor(createThreadFactory());
+
+        final long sleepTimeMs = config.getOutboxSleepTime().getMillis();
+        poller.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    processPendingEmails();
+                } catch (final RuntimeException e) {
+                    log.warn("Error while draining the email outbox", e);
+                }
+            }
+        }, sleepTimeMs, sleepTimeMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+        if (senders != null) {
+            senders.shutdown();
+            try {
+                senders.awaitTermination(config.getOutboxSleepTime().getMillis(), TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            senders = null;
+        }
+    }
+
+    /**
+     * Send all emails ready for delivery. Blocks until all attempts have completed.
+     *
+     * @return the number of emails successfully sent
+     */
+    public int processPendingEmails() {
+        final DateTime now = clock.getUTCNow();
+        final long processingTimeoutMs = config.getOutboxProcessingTimeout().getMillis();
+        final int released = emailOutboxSqlDao.releaseStuckEmails(now.minusMillis((int) processingTimeoutMs).toDate(), now.toDate());
+        if (released > 0) {
+            log.warn("Put back {} emails claimed more than {} ms ago in the outbox", released, processingTimeoutMs);
+        }
+
+        final List<Future<Boolean>> deliveries = new LinkedList<Future<Boolean>>();
+        for (final EmailOutboxModelDao email : emailOutboxSqlDao.getReadyEmails(now.toDate(), config.getOutboxBatchSize())) {
+            // Another node may have picked it up already
+            if (emailOutboxSqlDao.claimEmail(email.getRecordId(), owner, now.toDate()) != 1) {
+                continue;
+            }
+
+            final ExecutorService executor = senders;
+            if (executor == null) {
+                deliveries.add(Futures.immediateFuture(send(email)));
+            } else {
+                deliveries.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return send(email);
+                    }
+                }));
+            }
+        }
+
+        int sent = 0;
+        for (final Future<Boolean> delivery : deliveries) {
+            try {
+                if (delivery.get()) {
+                    sent++;
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (final ExecutionException e) {
+                log.warn("Unexpected error while sending email", e.getCause());
+            }
+        }
+        return sent;
+    }
+
+    private boolean send(final EmailOutboxModelDao email) {
+        final List<String> to = ImmutableList.<String>of(email.getRecipient());
+        try {
+            if (email.getIsHtml()) {
+                emailSender.sendHTMLEmail(to, email.getCcRecipientsAsList(), email.getSubject(), email.getBody());
+            } else {
+                emailSender.sendPlainTextEmail(to, email.getCcRecipientsAsList(), email.getSubject(), email.getBody());
+            }
+            emailOutboxSqlDao.markSent(email.getRecordId(), clock.getUTCNow().toDate());
+            return true;
+        } catch (final Exception e) {
+            onFailedAttempt(email, e);
+            return false;
+        }
+    }
+
+    private void onFailedAttempt(final EmailOutboxModelDao email, final Exception e) {
+        final int attempts = email.getAttempts() + 1;
+        final DateTime now = clock.getUTCNow();
+        final EmailOutboxStatus status;
+        final DateTime nextAttemptDate;
+        if (attempts >= config.getOutboxMaxAttempts()) {
+            log.warn(String.format("Giving up on email %s after %s attempts", email, attempts), e);
+            status = EmailOutboxStatus.FAILED;
+            nextAttemptDate = now;
+        } else {
+            status = EmailOutboxStatus.PENDING;
+            nextAttemptDate = now.plus(getRetryDelayMs(attempts));
+            log.info("Unable to send email {}, retrying at {}: {}", new Object[]{email, nextAttemptDate, e.getMessage()});
+        }
+
+        String lastError = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+        if (lastError.length() > MAX_ERROR_LENGTH) {
+            lastError = lastError.substring(0, MAX_ERROR_LENGTH);
+        }
+        emailOutboxSqlDao.markFailedAttempt(email.getRecordId(), status.toString(), nextAttemptDate.toDate(), lastError, now.toDate());
+    }
+
+    // Exponential backoff: retryDelay, 2 * retryDelay, 4 * retryDelay, ...
+    private long getRetryDelayMs(final int attempts) {
+        return config.getOutboxRetryDelay().getMillis() << Math.min(attempts - 1, 20);
+    }
+
+    private ThreadFactory createThreadFactory() {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread th = new Thread(r);
+                th.setName(EMAIL_OUTBOX_THREAD_PREFIX + th.getId());
+                return th;
+            }
+        };
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.email.dao;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+public class EmailOutboxModelDao {
+
+    private static final Joiner CC_JOINER = Joiner.on(',');
+    private static final Splitter CC_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    private Long recordId;
+    private UUID id;
+    private UUID accountId;
+    private String dedupKey;
+    private String recipient;
+    private String ccRecipients;
+    private String subject;
+    private String body;
+    private Boolean isHtml;
+    private EmailOutboxStatus status;
+    private Integer attempts;
+    private DateTime nextAttemptDate;
+    private String lastError;
+    private String processingOwner;
+    private DateTime createdDate;
+    private DateTime updatedDate;
+    private Long accountRecordId;
+    private Long tenantRecordId;
+
+    public EmailOutboxModelDao() { /* For the DAO mapper */ }
+
+    public EmailOutboxModelDao(final UUID accountId, final String dedupKey, final String recipient, final List<String> ccRecipients,
+                               final String subject, final String body, final boolean isHtml, final DateTime createdDate,
+                               final Long accountRecordId, final Long tenantRecordId) {
+        this.id = UUID.randomUUID();
+        this.accountId = accountId;
+        this.dedupKey = dedupKey;
+        this.recipient = recipient;
+        this.ccRecipients = ccRecipients == null || ccRecipients.isEmpty() ? null : CC_JOINER.join(ccRecipients);
+        this.subject = subject;
+        this.body = body;
+        this.isHtml = isHtml;
+        this.status = EmailOutboxStatus.PENDING;
+        this.attempts = 0;
+        // Ready right away (the database may round up the milliseconds)
+        this.nextAttemptDate = createdDate.withMillisOfSecond(0);
+        this.createdDate = createdDate;
+        this.updatedDate = createdDate;
+        this.accountRecordId = accountRecordId;
+        this.tenantRecordId = tenantRecordId;
+    }
+
+    public List<String> getCcRecipientsAsList() {
+        return ccRecipients == null ? ImmutableList.<String>of() : ImmutableList.<String>copyOf(CC_SPLITTER.split(ccRecipients));
+    }
+
+    public Long getRecordId() {
+        return recordId;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public UUID getAccountId() {
+        return accountId;
+    }
+
+    public String getDedupKey() {
+        return dedupKey;
+    }
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    public String getCcRecipients() {
+        return ccRecipients;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    // TODO Required for making the BindBeanFactory with Introspector work
+    // see Introspector line 571; they look at public method.
+    public Boolean getIsHtml() {
+        return isHtml;
+    }
+
+    public EmailOutboxStatus getStatus() {
+        return status;
+    }
+
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public DateTime getNextAttemptDate() {
+        return nextAttemptDate;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public String getProcessingOwner() {
+        return processingOwner;
+    }
+
+    public DateTime getCreatedDate() {
+        return createdDate;
+    }
+
+    public DateTime getUpdatedDate() {
+        return updatedDate;
+    }
+
+    public Long getAccountRecordId() {
+        return accountRecordId;
+    }
+
+    public Long getTenantRecordId() {
+        return tenantRecordId;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("EmailOutboxModelDao{");
+        sb.append("recordId=").append(recordId);
+        sb.append(", id=").append(id);
+        sb.append(", accountId=").append(accountId);
+        sb.append(", dedupKey='").append(dedupKey).append('\'');
+        sb.append(", recipient='").append(recipient).append('\'');
+        sb.append(", subject='").append(subject).append('\'');
+        sb.append(", status=").append(status);
+        sb.append(", attempts=").append(attempts);
+        sb.append(", nextAttemptDate=").append(nextAttemptDate);
+        sb.append(", lastError='").append(lastError).append('\'');
+        sb.append('}');
+        return sb.toString();
+    }
+}
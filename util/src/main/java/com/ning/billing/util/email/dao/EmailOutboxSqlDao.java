@@ -0,0 +1,71 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.email.dao;
+
+import java.util.Date;
+import java.util.List;
+
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
+import org.skife.jdbi.v2.sqlobject.stringtemplate.UseStringTemplate3StatementLocator;
+
+import com.ning.billing.commons.jdbi.binder.SmartBindBean;
+
+@UseStringTemplate3StatementLocator
+public interface EmailOutboxSqlDao extends Transactional<EmailOutboxSqlDao> {
+
+    @SqlUpdate
+    public void create(@SmartBindBean final EmailOutboxModelDao email);
+
+    @SqlQuery
+    public EmailOutboxModelDao getById(@Bind("id") final String id);
+
+    @SqlQuery
+    public EmailOutboxModelDao getByDedupKey(@Bind("dedupKey") final String dedupKey,
+                                             @Bind("recipient") final String recipient,
+                                             @Bind("tenantRecordId") final Long tenantRecordId);
+
+    @SqlQuery
+    public List<EmailOutboxModelDao> getByAccountId(@Bind("accountId") final String accountId,
+                                                    @Bind("tenantRecordId") final Long tenantRecordId);
+
+    @SqlQuery
+    public List<EmailOutboxModelDao> getReadyEmails(@Bind("now") final Date now,
+                                                    @Bind("limit") final int limit);
+
+    @SqlUpdate
+    public int claimEmail(@Bind("recordId") final Long recordId,
+                          @Bind("owner") final String owner,
+                          @Bind("now") final Date now);
+
+    @SqlUpdate
+    public void markSent(@Bind("recordId") final Long recordId,
+                         @Bind("now") final Date now);
+
+    @SqlUpdate
+    public void markFailedAttempt(@Bind("recordId") final Long recordId,
+                                  @Bind("status") final String status,
+                                  @Bind("nextAttemptDate") final Date nextAttemptDate,
+                                  @Bind("lastError") final String lastError,
+                                  @Bind("now") final Date now);
+
+    @SqlUpdate
+    public int releaseStuckEmails(@Bind("processingTimeout") final Date processingTimeout,
+                                  @Bind("now") final Date now);
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.entity.dao;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import org.skife.jdbi.v2.sqlobject.Bind;
+
+import com.ning.billing.ObjectType;
+import com.ning.billing.util.cache.Cachable;
+import com.ning.billing.util.cache.CachableKey;
+import com.ning.billing.util.cache.CacheKey;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+
+/**
+ * Reflection results needed by EntitySqlDaoWrapperInvocationHandler for a given (sqlDaoClass, method) pair.
+ * <p/>
+ * These are computed once and cached for the lifetime of the JVM, since neither the annotations
+ * nor the generic signatures of the sql dao interfaces can change at runtime.
+ */
+class EntitySqlDaoMethodMetadata {
+
+    private static final int NOT_FOUND = -1;
+
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<Method, EntitySqlDaoMethodMetadata>> METADATA = new ConcurrentHashMap<Class<?>, ConcurrentMap<Method, EntitySqlDaoMethodMetadata>>();
+    private static final ConcurrentMap<Class<?>, ObjectTypeHolder> OBJECT_TYPES = new ConcurrentHashMap<Class<?>, ObjectTypeHolder>();
+
+    private final Audited auditedAnnotation;
+    private final Cachable cachableAnnotation;
+    private final ObjectType objectType;
+    // Argument indexes of the @CachableKey parameters, ordered by key position
+    private final int[] cachableKeyArgumentIndexes;
+    // Argument index of the first context parameter (InternalTenantContext or InternalCallContext)
+    private final int contextArgumentIndex;
+    // Argument index of the first String parameter annotated with @Bind("id")
+    private final int idArgumentIndex;
+
+    public static EntitySqlDaoMethodMetadata get(final Class<?> sqlDaoClass, final Method method) {
+        ConcurrentMap<Method, EntitySqlDaoMethodMetadata> metadataForClass = METADATA.get(sqlDaoClass);
+        if (metadataForClass == null) {
+            METADATA.putIfAbsent(sqlDaoClass, new ConcurrentHashMap<Method, EntitySqlDaoMethodMetadata>());
+            metadataForClass = METADATA.get(sqlDaoClass);
+        }
+
+        EntitySqlDaoMethodMetadata metadata = metadataForClass.get(method);
+        if (metadata == null) {
+            // Racy but idempotent
+            metadata = new EntitySqlDaoMethodMetadata(sqlDaoClass, method);
+            metadataForClass.putIfAbsent(method, metadata);
+        }
+        return metadata;
+    }
+
+    private EntitySqlDaoMethodMetadata(final Class<?> sqlDaoClass, final Method method) {
+        this.auditedAnnotation = method.getAnnotation(Audited.class);
+        this.cachableAnnotation = method.getAnnotation(Cachable.class);
+        this.objectType = cachableAnnotation != null ? getObjectType(sqlDaoClass) : null;
+
+        final Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+
+        final int[] keyIndexes = new int[parameterAnnotations.length];
+        int nbKeys = 0;
+        int contextIndex = NOT_FOUND;
+        int idIndex = NOT_FOUND;
+        for (int i = 0; i < parameterAnnotations.length; i++) {
+            if (contextIndex == NOT_FOUND && InternalTenantContext.class.isAssignableFrom(parameterTypes[i])) {
+                contextIndex = i;
+            }
+
+            for (final Annotation annotation : parameterAnnotations[i]) {
+                if (CachableKey.class.equals(annotation.annotationType())) {
+                    // CachableKey position starts at 1
+                    final int position = ((CachableKey) annotation).value() - 1;
+                    keyIndexes[position] = i;
+                    nbKeys = Math.max(nbKeys, position + 1);
+                } else if (idIndex == NOT_FOUND &&
+                           String.class.equals(parameterTypes[i]) &&
+                           Bind.class.equals(annotation.annotationType()) &&
+                           ("id").equals(((Bind) annotation).value())) {
+                    idIndex = i;
+                }
+            }
+        }
+
+        this.cachableKeyArgumentIndexes = Arrays.copyOf(keyIndexes, nbKeys);
+        this.contextArgumentIndex = contextIndex;
+        this.idArgumentIndex = idIndex;
+    }
+
+    public Audited getAuditedAnnotation() {
+        return auditedAnnotation;
+    }
+
+    public Cachable getCachableAnnotation() {
+        return cachableAnnotation;
+    }
+
+    public ObjectType getObjectType() {
+        return objectType;
+    }
+
+    /**
+     * Build the cache key for a call. Single piece keys (e.g. record ids lookups) are kept as Strings,
+     * upper cased by convention, so that they can be shared with the cache loaders and NonEntityDao.
+     *
+     * @param args arguments of the call
+     * @return the cache key
+     */
+    public Object buildCacheKey(final Object[] args) {
+        if (cachableKeyArgumentIndexes.length == 1) {
+            return String.valueOf(args[cachableKeyArgumentIndexes[0]]).toUpperCase();
+        }
+
+        final Object[] pieces = new Object[cachableKeyArgumentIndexes.length];
+        for (int i = 0; i < cachableKeyArgumentIndexes.length; i++) {
+            pieces[i] = args[cachableKeyArgumentIndexes[i]];
+        }
+        return new CacheKey(pieces);
+    }
+
+    @Nullable
+    public InternalTenantContext getContext(final Object[] args) {
+        if (contextArgumentIndex == NOT_FOUND) {
+            return null;
+        }
+        return (InternalTenantContext) args[contextArgumentIndex];
+    }
+
+    @Nullable
+    public String getBoundId(final Object[] args) {
+        if (idArgumentIndex == NOT_FOUND) {
+            return null;
+        }
+        return (String) args[idArgumentIndex];
+    }
+
+    private static ObjectType getObjectType(final Class<?> sqlDaoClass) {
+        ObjectTypeHolder holder = OBJECT_TYPES.get(sqlDaoClass);
+        if (holder == null) {
+            holder = new ObjectTypeHolder(computeObjectType(sqlDaoClass));
+            OBJECT_TYPES.putIfAbsent(sqlDaoClass, holder);
+        }
+        return holder.objectType;
+    }
+
+    /**
+     * Extract object from sqlDaoClass by looking at first parameter type (EntityModelDao) and
+     * constructing an empty object so we can call the getObjectType method on it.
+     *
+     * @return the objectType associated to that sql dao class
+     */
+    private static ObjectType computeObjectType(final Class<?> sqlDaoClass) {
+        int foundIndexForEntitySqlDao = NOT_FOUND;
+        // If the sqlDaoClass implements multiple interfaces, first figure out which one is the EntitySqlDao
+        for (int i = 0; i < sqlDaoClass.getGenericInterfaces().length; i++) {
+            final Type type = sqlDaoClass.getGenericInterfaces()[0];
+            if (!(type instanceof ParameterizedType)) {
+                // AuditSqlDao for example won't extend EntitySqlDao
+                return null;
+            }
+
+            if (EntitySqlDao.class.getName().equals(((Class) ((ParameterizedType) type).getRawType()).getName())) {
+                foundIndexForEntitySqlDao = i;
+                break;
+            }
+        }
+        // Find out from the parameters of the EntitySqlDao which one is the EntityModelDao, and extract his (sub)type to finally return the ObjectType
+        if (foundIndexForEntitySqlDao >= 0) {
+            final Type[] types = ((ParameterizedType) sqlDaoClass.getGenericInterfaces()[foundIndexForEntitySqlDao]).getActualTypeArguments();
+            int foundIndexForEntityModelDao = NOT_FOUND;
+            for (int i = 0; i < types.length; i++) {
+                final Class clz = ((Class) types[i]);
+                if (EntityModelDao.class.getName().equals(((Class) ((ParameterizedType) clz.getGenericInterfaces()[0]).getRawType()).getName())) {
+                    foundIndexForEntityModelDao = i;
+                    break;
+                }
+            }
+
+            if (foundIndexForEntityModelDao >= 0) {
+                final Class<? extends EntityModelDao<?>> clz = (Class<? extends EntityModelDao<?>>) types[foundIndexForEntityModelDao];
+                try {
+                    final EntityModelDao<?> modelDao = clz.newInstance();
+                    return modelDao.getTableName().getObjectType();
+                } catch (InstantiationException e) {
+                    throw new IllegalStateException("Unable to instantiate " + clz.getName(), e);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException("Unable to instantiate " + clz.getName(), e);
+                }
+            }
+        }
+        return null;
+    }
+
+    // ConcurrentHashMap doesn't support null values
+    private static final class ObjectTypeHolder {
+
+        private final ObjectType objectType;
+
+        private ObjectTypeHolder(@Nullable final ObjectType objectType) {
+            this.objectType = objectType;
+        }
+    }
+}
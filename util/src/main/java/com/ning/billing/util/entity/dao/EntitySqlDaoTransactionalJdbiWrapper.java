@@ -16,6 +16,11 @@
 
 package com.ning.billing.util.entity.dao;
 
+import java.sql.SQLException;
+
+import javax.annotation.Nullable;
+
+import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.IDBI;
 import org.skife.jdbi.v2.Transaction;
 import org.skife.jdbi.v2.TransactionIsolationLevel;
@@ -23,6 +28,7 @@ import org.skife.jdbi.v2.TransactionStatus;
 
 import com.ning.billing.util.cache.CacheControllerDispatcher;
 import com.ning.billing.clock.Clock;
+import com.ning.billing.util.dao.DBRouter;
 import com.ning.billing.util.dao.NonEntityDao;
 import com.ning.billing.util.entity.Entity;
 
@@ -32,12 +38,18 @@ import com.ning.billing.util.entity.Entity;
 public class EntitySqlDaoTransactionalJdbiWrapper {
 
     private final IDBI dbi;
+    private final DBRouter dbRouter;
     private final Clock clock;
     private final CacheControllerDispatcher cacheControllerDispatcher;
     private final NonEntityDao nonEntityDao;
 
     public EntitySqlDaoTransactionalJdbiWrapper(final IDBI dbi, final Clock clock, final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao) {
+        this(dbi, null, clock, cacheControllerDispatcher, nonEntityDao);
+    }
+
+    public EntitySqlDaoTransactionalJdbiWrapper(final IDBI dbi, @Nullable final DBRouter dbRouter, final Clock clock, final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao) {
         this.dbi = dbi;
+        this.dbRouter = dbRouter;
         this.clock = clock;
         this.cacheControllerDispatcher = cacheControllerDispatcher;
         this.nonEntityDao = nonEntityDao;
@@ -67,6 +79,58 @@ public class EntitySqlDaoTransactionalJdbiWrapper {
      * @return result from the transaction fo type ReturnType
      */
     public <ReturnType> ReturnType execute(final EntitySqlDaoTransactionWrapper<ReturnType> entitySqlDaoTransactionWrapper) {
+        if (dbRouter != null) {
+            dbRouter.onReadWriteTransaction();
+        }
+        return execute(dbi, entitySqlDaoTransactionWrapper);
+    }
+
+    /**
+     * Execute a transaction which doesn't perform any write. The transaction may be routed to the read replica,
+     * if one is configured (see DBRouter), in which case the underlying connection is flagged as read-only.
+     *
+     * @param entitySqlDaoTransactionWrapper transaction to execute
+     * @param <ReturnType>                   object type to return from the transaction
+     * @return result from the transaction fo type ReturnType
+     */
+    public <ReturnType> ReturnType executeReadOnly(final EntitySqlDaoTransactionWrapper<ReturnType> entitySqlDaoTransactionWrapper) {
+        final IDBI readOnlyDbi = dbRouter != null ? dbRouter.getDBIForReadOnlyTransaction() : dbi;
+        if (readOnlyDbi == dbi) {
+            return execute(dbi, entitySqlDaoTransactionWrapper);
+        }
+
+        final Handle handle = readOnlyDbi.open();
+        try {
+            final boolean wasReadOnly = handle.getConnection().isReadOnly();
+            handle.getConnection().setReadOnly(true);
+            try {
+                final EntitySqlDao<EntityModelDao<Entity>, Entity> entitySqlDao = handle.attach(InitialEntitySqlDao.class);
+                return entitySqlDao.inTransaction(TransactionIsolationLevel.READ_COMMITTED, new JdbiTransaction<ReturnType, EntityModelDao<Entity>, Entity>(entitySqlDaoTransactionWrapper));
+            } finally {
+                handle.getConnection().setReadOnly(wasReadOnly);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            handle.close();
+        }
+    }
+
+    /**
+     * @param entitySqlDaoTransactionWrapper transaction to execute
+     * @param <ReturnType>                   object type to return from the transaction
+     * @param <E>                            checked exception which can be thrown from the transaction
+     * @return result from the transaction fo type ReturnType
+     */
+    public <ReturnType, E extends Exception> ReturnType executeReadOnly(final Class<E> exception, final EntitySqlDaoTransactionWrapper<ReturnType> entitySqlDaoTransactionWrapper) throws E {
+        try {
+            return executeReadOnly(entitySqlDaoTransactionWrapper);
+        } catch (RuntimeException e) {
+            throw unwrapException(exception, e);
+        }
+    }
+
+    private <ReturnType> ReturnType execute(final IDBI dbi, final EntitySqlDaoTransactionWrapper<ReturnType> entitySqlDaoTransactionWrapper) {
         final EntitySqlDao<EntityModelDao<Entity>, Entity> entitySqlDao = dbi.onDemand(InitialEntitySqlDao.class);
         return entitySqlDao.inTransaction(TransactionIsolationLevel.READ_COMMITTED, new JdbiTransaction<ReturnType, EntityModelDao<Entity>, Entity>(entitySqlDaoTransactionWrapper));
     }
@@ -81,13 +145,17 @@ public class EntitySqlDaoTransactionalJdbiWrapper {
         try {
             return execute(entitySqlDaoTransactionWrapper);
         } catch (RuntimeException e) {
-            if (e.getCause() != null && e.getCause().getClass().isAssignableFrom(exception)) {
-                throw (E) e.getCause();
-            } else if (e.getCause() != null && e.getCause() instanceof RuntimeException) {
-                throw (RuntimeException) e.getCause();
-            } else {
-                throw e;
-            }
+            throw unwrapException(exception, e);
+        }
+    }
+
+    private <E extends Exception> E unwrapException(final Class<E> exception, final RuntimeException e) throws E {
+        if (e.getCause() != null && e.getCause().getClass().isAssignableFrom(exception)) {
+            throw (E) e.getCause();
+        } else if (e.getCause() != null && e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+        } else {
+            throw e;
         }
     }
 }
@@ -43,6 +43,7 @@ public interface BusInternalEvent extends BusEvent {
         OVERDUE_CHANGE,
         CUSTOM_FIELD_CREATION,
         CUSTOM_FIELD_DELETION,
+        TENANT_CONFIG_CHANGE,
     }
 
     public BusInternalEventType getBusEventType();
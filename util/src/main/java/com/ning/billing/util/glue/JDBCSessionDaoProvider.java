@@ -23,22 +23,35 @@ import org.apache.shiro.session.mgt.DefaultSessionManager;
 import org.apache.shiro.session.mgt.SessionManager;
 import org.skife.jdbi.v2.IDBI;
 
+import com.ning.billing.util.config.SecurityConfig;
 import com.ning.billing.util.security.shiro.dao.JDBCSessionDao;
 
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+
 public class JDBCSessionDaoProvider implements Provider<JDBCSessionDao> {
 
     private final SessionManager sessionManager;
     private final IDBI dbi;
+    private final SecurityConfig securityConfig;
+    private final CacheManager ehCacheCacheManager;
 
     @Inject
-    public JDBCSessionDaoProvider(final IDBI dbi, final SessionManager sessionManager) {
+    public JDBCSessionDaoProvider(final IDBI dbi, final SessionManager sessionManager, final SecurityConfig securityConfig, final CacheManager ehCacheCacheManager) {
         this.sessionManager = sessionManager;
         this.dbi = dbi;
+        this.securityConfig = securityConfig;
+        this.ehCacheCacheManager = ehCacheCacheManager;
     }
 
     @Override
     public JDBCSessionDao get() {
-        final JDBCSessionDao jdbcSessionDao = new JDBCSessionDao(dbi);
+        final JDBCSessionDao jdbcSessionDao = new JDBCSessionDao(dbi, securityConfig);
+
+        final Ehcache activeSessionsCache = ehCacheCacheManager.getEhcache(jdbcSessionDao.getActiveSessionsCacheName());
+        if (activeSessionsCache != null) {
+            jdbcSessionDao.registerActiveSessionsCache(activeSessionsCache);
+        }
 
         if (sessionManager instanceof DefaultSessionManager) {
             ((DefaultSessionManager) sessionManager).setSessionDAO(jdbcSessionDao);
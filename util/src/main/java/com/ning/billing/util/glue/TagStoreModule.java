@@ -19,7 +19,10 @@ package com.ning.billing.util.glue;
 import com.ning.billing.util.api.TagUserApi;
 import com.ning.billing.util.svcapi.tag.DefaultTagInternalApi;
 import com.ning.billing.util.svcapi.tag.TagInternalApi;
+import com.ning.billing.util.tag.api.ControlTagCacheHandler;
+import com.ning.billing.util.tag.api.DefaultTagCacheService;
 import com.ning.billing.util.tag.api.DefaultTagUserApi;
+import com.ning.billing.util.tag.api.TagCacheService;
 import com.ning.billing.util.tag.dao.DefaultTagDao;
 import com.ning.billing.util.tag.dao.DefaultTagDefinitionDao;
 import com.ning.billing.util.tag.dao.TagDao;
@@ -34,6 +37,7 @@ public class TagStoreModule extends AbstractModule {
         installUserApi();
         installInternalApi();
         installDaos();
+        installTagCacheService();
     }
 
     protected void installUserApi() {
@@ -48,4 +52,9 @@ public class TagStoreModule extends AbstractModule {
         bind(TagDefinitionDao.class).to(DefaultTagDefinitionDao.class).asEagerSingleton();
         bind(TagDao.class).to(DefaultTagDao.class).asEagerSingleton();
     }
+
+    protected void installTagCacheService() {
+        bind(ControlTagCacheHandler.class).asEagerSingleton();
+        bind(TagCacheService.class).to(DefaultTagCacheService.class).asEagerSingleton();
+    }
 }
@@ -18,43 +18,127 @@ package com.ning.billing.util.security.shiro.dao;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 
 import org.apache.shiro.session.Session;
+import org.apache.shiro.session.mgt.SimpleSession;
 import org.apache.shiro.session.mgt.eis.CachingSessionDAO;
+import org.apache.shiro.util.Destroyable;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.IDBI;
 import org.skife.jdbi.v2.Transaction;
 import org.skife.jdbi.v2.TransactionStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.weakref.jmx.Managed;
 
 import com.ning.billing.commons.jdbi.mapper.LowerToCamelBeanMapperFactory;
+import com.ning.billing.util.config.SecurityConfig;
 
-public class JDBCSessionDao extends CachingSessionDAO {
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListener;
+
+/**
+ * Sessions are created and deleted synchronously, but Shiro touches them on each request: changes limited
+ * to the last access time are only persisted once they exceed the configured granularity, and are flushed
+ * in batches by a background thread.
+ * <p/>
+ * The last persisted state of a session is only kept while the session is in the (bounded) active sessions cache,
+ * see {@link #registerActiveSessionsCache(Ehcache)}: evicted sessions are re-read from the database.
+ */
+public class JDBCSessionDao extends CachingSessionDAO implements Destroyable {
 
     private static final Logger log = LoggerFactory.getLogger(JDBCSessionDao.class);
 
-    private JDBCSessionSqlDao jdbcSessionSqlDao;
+    private static final String SESSION_FLUSHER_THREAD_NAME = "session-flusher-th";
+
+    private final JDBCSessionSqlDao jdbcSessionSqlDao;
+    private final long lastAccessTimeGranularityMs;
+    private final ScheduledExecutorService flusher;
+
+    // Last state written to the database, per session id (entries are dropped when evicted from the active sessions cache)
+    private final ConcurrentMap<Serializable, SessionModelDao> persistedSessions = new ConcurrentHashMap<Serializable, SessionModelDao>();
+    // Last access times waiting to be flushed, per session id
+    private final ConcurrentMap<Serializable, SessionModelDao> pendingSessions = new ConcurrentHashMap<Serializable, SessionModelDao>();
+
+    private final AtomicLong synchronousUpdates = new AtomicLong();
+    private final AtomicLong skippedUpdates = new AtomicLong();
+    private final AtomicLong coalescedUpdates = new AtomicLong();
+    private final AtomicLong flushedUpdates = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
 
     @Inject
-    public JDBCSessionDao(final IDBI dbi) {
+    public JDBCSessionDao(final IDBI dbi, final SecurityConfig securityConfig) {
         if (dbi instanceof DBI) {
             // TODO PIERRE Move to DBIProvider, once it's in util
             ((DBI) dbi).registerMapper(new LowerToCamelBeanMapperFactory(SessionModelDao.class));
         }
         this.jdbcSessionSqlDao = dbi.onDemand(JDBCSessionSqlDao.class);
+        this.lastAccessTimeGranularityMs = securityConfig.getSessionLastAccessTimeGranularity().getMillis();
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread th = new Thread(r, SESSION_FLUSHER_THREAD_NAME);
+                th.setDaemon(true);
+                return th;
+            }
+        });
+        final long flushIntervalMs = securityConfig.getSessionLastAccessTimeFlushInterval().getMillis();
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flushLastAccessTimes();
+                } catch (final RuntimeException e) {
+                    log.warn("Error while flushing session last access times", e);
+                }
+            }
+        }, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
     }
 
     @Override
     protected void doUpdate(final Session session) {
-        jdbcSessionSqlDao.update(new SessionModelDao(session));
+        final SessionModelDao sessionModelDao = new SessionModelDao(session);
+        final Serializable sessionId = sessionModelDao.getRecordId();
+
+        final SessionModelDao persistedSession = persistedSessions.get(sessionId);
+        if (sessionModelDao.equalsIgnoringLastAccessTime(persistedSession)) {
+            final long lastAccessTimeDeltaMs = sessionModelDao.getLastAccessTime().getMillis() - persistedSession.getLastAccessTime().getMillis();
+            if (lastAccessTimeDeltaMs < lastAccessTimeGranularityMs) {
+                skippedUpdates.incrementAndGet();
+            } else {
+                pendingSessions.put(sessionId, sessionModelDao);
+                coalescedUpdates.incrementAndGet();
+            }
+            return;
+        }
+
+        // The full row is written, including the last access time
+        pendingSessions.remove(sessionId);
+        jdbcSessionSqlDao.update(sessionModelDao);
+        persistedSessions.put(sessionId, sessionModelDao);
+        synchronousUpdates.incrementAndGet();
     }
 
     @Override
     protected void doDelete(final Session session) {
-        jdbcSessionSqlDao.delete(new SessionModelDao(session));
+        final SessionModelDao sessionModelDao = new SessionModelDao(session);
+        pendingSessions.remove(sessionModelDao.getRecordId());
+        persistedSessions.remove(sessionModelDao.getRecordId());
+        jdbcSessionSqlDao.delete(sessionModelDao);
     }
 
     @Override
@@ -67,6 +151,7 @@ public class JDBCSessionDao extends CachingSessionDAO {
             }
         });
         assignSessionId(session, sessionId);
+        persistedSessions.put(sessionId, new SessionModelDao(session));
         return sessionId;
     }
 
@@ -77,11 +162,142 @@ public class JDBCSessionDao extends CachingSessionDAO {
             return null;
         }
 
+        final Session session;
         try {
-            return sessionModelDao.toSimpleSession();
+            session = sessionModelDao.toSimpleSession();
         } catch (IOException e) {
             log.warn("Corrupted cookie", e);
             return null;
         }
+
+        // The session may have been touched since it was last flushed
+        final SessionModelDao pendingSession = pendingSessions.get(sessionId);
+        if (pendingSession != null && pendingSession.getLastAccessTime().isAfter(sessionModelDao.getLastAccessTime())) {
+            ((SimpleSession) session).setLastAccessTime(pendingSession.getLastAccessTime().toDate());
+        }
+        persistedSessions.put(sessionId, sessionModelDao);
+
+        return session;
+    }
+
+    /**
+     * Write all pending last access times to the database, in a single batch.
+     *
+     * @return the number of sessions flushed
+     */
+    @Managed(description = "Flush pending session last access times")
+    public int flushLastAccessTimes() {
+        final List<SessionModelDao> batch = new LinkedList<SessionModelDao>();
+        for (final Serializable sessionId : pendingSessions.keySet()) {
+            final SessionModelDao pendingSession = pendingSessions.remove(sessionId);
+            if (pendingSession != null) {
+                batch.add(pendingSession);
+            }
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        // Rows are only updated if the last access time moves forward (see JDBCSessionSqlDao.sql.stg)
+        jdbcSessionSqlDao.updateLastAccessTime(batch);
+        for (final SessionModelDao flushedSession : batch) {
+            // Don't resurrect deleted sessions
+            persistedSessions.replace(flushedSession.getRecordId(), flushedSession);
+        }
+
+        flushes.incrementAndGet();
+        flushedUpdates.addAndGet(batch.size());
+        return batch.size();
+    }
+
+    /**
+     * Forget the last persisted state of the sessions evicted from the active sessions cache, to keep it bounded.
+     *
+     * @param activeSessionsCache the EhCache backing the Shiro active sessions cache
+     */
+    public void registerActiveSessionsCache(final Ehcache activeSessionsCache) {
+        activeSessionsCache.getCacheEventNotificationService().registerListener(new ActiveSessionsCacheListener());
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        flusher.shutdownNow();
+        flushLastAccessTimes();
+    }
+
+    @Managed(description = "Number of session updates written synchronously")
+    public long getSynchronousUpdates() {
+        return synchronousUpdates.get();
+    }
+
+    @Managed(description = "Number of last access time updates ignored because below the granularity")
+    public long getSkippedUpdates() {
+        return skippedUpdates.get();
+    }
+
+    @Managed(description = "Number of last access time updates queued for the next flush")
+    public long getCoalescedUpdates() {
+        return coalescedUpdates.get();
+    }
+
+    @Managed(description = "Number of last access times written by the background flushes")
+    public long getFlushedUpdates() {
+        return flushedUpdates.get();
+    }
+
+    @Managed(description = "Number of background flushes")
+    public long getFlushes() {
+        return flushes.get();
+    }
+
+    @Managed(description = "Number of last access times waiting to be flushed")
+    public int getPendingUpdates() {
+        return pendingSessions.size();
+    }
+
+    @Managed(description = "Number of sessions whose last persisted state is tracked")
+    public int getPersistedSessions() {
+        return persistedSessions.size();
+    }
+
+    private final class ActiveSessionsCacheListener implements CacheEventListener {
+
+        @Override
+        public Object clone() throws CloneNotSupportedException {
+            throw new CloneNotSupportedException("No cloning!");
+        }
+
+        @Override
+        public void dispose() {
+        }
+
+        @Override
+        public void notifyElementEvicted(final Ehcache cache, final Element element) {
+            // Pending last access times are still flushed
+            persistedSessions.remove(element.getObjectKey());
+        }
+
+        @Override
+        public void notifyElementExpired(final Ehcache cache, final Element element) {
+            persistedSessions.remove(element.getObjectKey());
+        }
+
+        @Override
+        public void notifyElementPut(final Ehcache cache, final Element element) throws CacheException {
+        }
+
+        @Override
+        public void notifyElementRemoved(final Ehcache cache, final Element element) throws CacheException {
+            persistedSessions.remove(element.getObjectKey());
+        }
+
+        @Override
+        public void notifyElementUpdated(final Ehcache cache, final Element element) throws CacheException {
+        }
+
+        @Override
+        public void notifyRemoveAll(final Ehcache cache) {
+            persistedSessions.clear();
+        }
     }
 }
@@ -93,6 +93,21 @@ public class SessionModelDao {
         return sessionData;
     }
 
+    /**
+     * Check whether two snapshots of a session only differ by their last access time.
+     *
+     * @param that other snapshot of the session
+     * @return true if all other fields are equal
+     */
+    public boolean equalsIgnoringLastAccessTime(final SessionModelDao that) {
+        return that != null &&
+               timeout == that.timeout &&
+               (host != null ? host.equals(that.host) : that.host == null) &&
+               (recordId != null ? recordId.equals(that.recordId) : that.recordId == null) &&
+               Arrays.equals(sessionData, that.sessionData) &&
+               (startTimestamp != null ? startTimestamp.equals(that.startTimestamp) : that.startTimestamp == null);
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("SessionModelDao{");
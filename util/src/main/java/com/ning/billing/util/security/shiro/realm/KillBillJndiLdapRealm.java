@@ -17,10 +17,19 @@
 package com.ning.billing.util.security.shiro.realm;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Singleton;
 
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
@@ -39,9 +48,12 @@ import org.apache.shiro.realm.ldap.JndiLdapRealm;
 import org.apache.shiro.realm.ldap.LdapContextFactory;
 import org.apache.shiro.realm.ldap.LdapUtils;
 import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.util.Destroyable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.weakref.jmx.Managed;
 
+import com.ning.billing.clock.Clock;
 import com.ning.billing.util.config.SecurityConfig;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -56,7 +68,15 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 
-public class KillBillJndiLdapRealm extends JndiLdapRealm {
+/**
+ * LDAP realm resolving permissions from the LDAP groups of the users (see SecurityConfig#getShiroLDAPPermissionsByGroup).
+ * <p/>
+ * The authorization info of each user is cached (users without any group for a shorter time). Once expired, it keeps
+ * being served while it is refreshed in the background, so that a slow or unavailable LDAP server doesn't impact
+ * API calls until the max staleness is reached.
+ */
+@Singleton
+public class KillBillJndiLdapRealm extends JndiLdapRealm implements Destroyable {
 
     private static final Logger log = LoggerFactory.getLogger(KillBillJndiLdapRealm.class);
 
@@ -70,15 +90,36 @@ public class KillBillJndiLdapRealm extends JndiLdapRealm {
 
     private static final Splitter SPLITTER = Splitter.on(',').omitEmptyStrings().trimResults();
 
+    private static final String LDAP_REFRESH_THREAD_PREFIX = "ldap-refresh-th-";
+
     private final String searchBase;
     private final String groupSearchFilter;
     private final String groupNameId;
     private final Map<String, Collection<String>> permissionsByGroup = Maps.newLinkedHashMap();
 
+    private final Clock clock;
+    private final long authorizationCacheTTLMs;
+    private final long authorizationCacheNegativeTTLMs;
+    private final long authorizationCacheMaxStalenessMs;
+    // Username -> authorization info, least recently used first
+    private final Map<String, CachedAuthorizationInfo> authorizationCache;
+    private final Set<String> pendingRefreshes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final ExecutorService refreshExecutor;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong staleHits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+    private final AtomicLong refreshes = new AtomicLong(0);
+    private final AtomicLong refreshFailures = new AtomicLong(0);
+
     @Inject
-    public KillBillJndiLdapRealm(final SecurityConfig securityConfig) {
+    public KillBillJndiLdapRealm(final SecurityConfig securityConfig, final Clock clock) {
         super();
 
+        // Authorization info is cached by the realm itself, see queryForAuthorizationInfo
+        setAuthorizationCachingEnabled(false);
+
         if (securityConfig.getShiroLDAPUserDnTemplate() != null) {
             setUserDnTemplate(securityConfig.getShiroLDAPUserDnTemplate());
         }
@@ -115,22 +156,100 @@ public class KillBillJndiLdapRealm extends JndiLdapRealm {
                 }
             }
         }
+
+        this.clock = clock;
+        authorizationCacheTTLMs = securityConfig.getShiroLDAPAuthorizationCacheTTL().getMillis();
+        authorizationCacheNegativeTTLMs = securityConfig.getShiroLDAPAuthorizationCacheNegativeTTL().getMillis();
+        authorizationCacheMaxStalenessMs = securityConfig.getShiroLDAPAuthorizationCacheMaxStaleness().getMillis();
+        final int authorizationCacheMaxSize = securityConfig.getShiroLDAPAuthorizationCacheMaxSize();
+        authorizationCache = Collections.synchronizedMap(new LinkedHashMap<String, CachedAuthorizationInfo>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CachedAuthorizationInfo> eldest) {
+                if (size() > authorizationCacheMaxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                } else {
+                    return false;
+                }
+            }
+        });
+        refreshExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread th = new Thread(r);
+                th.setName(LDAP_REFRESH_THREAD_PREFIX + th.getId());
+                th.setDaemon(true);
+                return th;
+            }
+        });
     }
 
     @Override
     protected AuthorizationInfo queryForAuthorizationInfo(final PrincipalCollection principals, final LdapContextFactory ldapContextFactory) throws NamingException {
-        final Set<String> userGroups = findLDAPGroupsForUser(principals, ldapContextFactory);
+        final String username = (String) getAvailablePrincipal(principals);
+
+        final CachedAuthorizationInfo cachedAuthorizationInfo = authorizationCache.get(username);
+        if (cachedAuthorizationInfo != null) {
+            final long now = clock.getUTCNow().getMillis();
+            if (now < cachedAuthorizationInfo.getExpirationTimeMs()) {
+                hits.incrementAndGet();
+                return cachedAuthorizationInfo.getAuthorizationInfo();
+            } else if (now < cachedAuthorizationInfo.getExpirationTimeMs() + authorizationCacheMaxStalenessMs) {
+                staleHits.incrementAndGet();
+                scheduleRefresh(username, ldapContextFactory);
+                return cachedAuthorizationInfo.getAuthorizationInfo();
+            }
+        }
+
+        misses.incrementAndGet();
+        return loadAuthorizationInfo(username, ldapContextFactory).getAuthorizationInfo();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        refreshExecutor.shutdownNow();
+    }
+
+    private void scheduleRefresh(final String username, final LdapContextFactory ldapContextFactory) {
+        if (!pendingRefreshes.add(username)) {
+            return;
+        }
+
+        refreshExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    loadAuthorizationInfo(username, ldapContextFactory);
+                    refreshes.incrementAndGet();
+                } catch (final NamingException e) {
+                    // Keep serving the stale entry
+                    refreshFailures.incrementAndGet();
+                    log.warn("Unable to refresh the LDAP groups of " + username, e);
+                } catch (final RuntimeException e) {
+                    refreshFailures.incrementAndGet();
+                    log.warn("Unable to refresh the LDAP groups of " + username, e);
+                } finally {
+                    pendingRefreshes.remove(username);
+                }
+            }
+        });
+    }
+
+    private CachedAuthorizationInfo loadAuthorizationInfo(final String username, final LdapContextFactory ldapContextFactory) throws NamingException {
+        final Set<String> userGroups = findLDAPGroupsForUser(username, ldapContextFactory);
 
         final SimpleAuthorizationInfo simpleAuthorizationInfo = new SimpleAuthorizationInfo(userGroups);
         final Set<String> stringPermissions = groupsPermissions(userGroups);
         simpleAuthorizationInfo.setStringPermissions(stringPermissions);
 
-        return simpleAuthorizationInfo;
+        // Negative caching: users without any group are most likely not set up yet
+        final long ttlMs = userGroups.isEmpty() ? authorizationCacheNegativeTTLMs : authorizationCacheTTLMs;
+        final CachedAuthorizationInfo cachedAuthorizationInfo = new CachedAuthorizationInfo(simpleAuthorizationInfo, clock.getUTCNow().getMillis() + ttlMs);
+        authorizationCache.put(username, cachedAuthorizationInfo);
+        return cachedAuthorizationInfo;
     }
 
-    private Set<String> findLDAPGroupsForUser(final PrincipalCollection principals, final LdapContextFactory ldapContextFactory) throws NamingException {
-        final String username = (String) getAvailablePrincipal(principals);
-
+    private Set<String> findLDAPGroupsForUser(final String username, final LdapContextFactory ldapContextFactory) throws NamingException {
         LdapContext systemLdapCtx = null;
         try {
             systemLdapCtx = ldapContextFactory.getSystemLdapContext();
@@ -219,4 +338,58 @@ public class KillBillJndiLdapRealm extends JndiLdapRealm {
     public Map<String, Collection<String>> getPermissionsByGroup() {
         return permissionsByGroup;
     }
+
+    @Managed(description = "Number of authorization lookups served from the cache")
+    public long getAuthorizationCacheHitCount() {
+        return hits.get();
+    }
+
+    @Managed(description = "Number of expired authorization lookups served from the cache while being refreshed")
+    public long getAuthorizationCacheStaleHitCount() {
+        return staleHits.get();
+    }
+
+    @Managed(description = "Number of authorization lookups which went to the LDAP server")
+    public long getAuthorizationCacheMissCount() {
+        return misses.get();
+    }
+
+    @Managed(description = "Number of users evicted from the authorization cache")
+    public long getAuthorizationCacheEvictionCount() {
+        return evictions.get();
+    }
+
+    @Managed(description = "Number of successful background refreshes")
+    public long getAuthorizationCacheRefreshCount() {
+        return refreshes.get();
+    }
+
+    @Managed(description = "Number of failed background refreshes")
+    public long getAuthorizationCacheRefreshFailureCount() {
+        return refreshFailures.get();
+    }
+
+    @Managed(description = "Number of users currently cached")
+    public int getAuthorizationCacheSize() {
+        return authorizationCache.size();
+    }
+
+    private static final class CachedAuthorizationInfo {
+
+        private final AuthorizationInfo authorizationInfo;
+        private final long expirationTimeMs;
+
+        private CachedAuthorizationInfo(final AuthorizationInfo authorizationInfo, final long expirationTimeMs) {
+            this.authorizationInfo = authorizationInfo;
+            this.expirationTimeMs = expirationTimeMs;
+        }
+
+        public AuthorizationInfo getAuthorizationInfo() {
+            return authorizationInfo;
+        }
+
+        public long getExpirationTimeMs() {
+            return expirationTimeMs;
+        }
+    }
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.svcapi.catalog;
+
+import com.ning.billing.catalog.api.Catalog;
+import com.ning.billing.catalog.api.StaticCatalog;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+
+public interface CatalogInternalApi {
+
+    /**
+     * Retrieve the catalog of the tenant, i.e. the catalog the tenant uploaded or the default catalog
+     * if it didn't upload any. The returned catalog is immutable: a new upload doesn't affect it.
+     *
+     * @param context tenant context
+     * @return the full (versioned) catalog of the tenant
+     */
+    public Catalog getFullCatalog(InternalTenantContext context);
+
+    public StaticCatalog getCurrentCatalog(InternalTenantContext context);
+
+    /**
+     * Check that the catalog of the tenant would still be valid with an additional version, before it is uploaded:
+     * all the versions already uploaded and the new one are parsed and validated together.
+     *
+     * @param catalogXML the new version (StandaloneCatalog XML document)
+     * @param context    tenant context
+     * @throws IllegalArgumentException if the resulting catalog is invalid
+     */
+    public void validateNewCatalogVersion(String catalogXML, InternalTenantContext context);
+}
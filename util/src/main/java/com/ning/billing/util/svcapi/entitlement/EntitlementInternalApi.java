@@ -0,0 +1,42 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.ning.billing.util.svcapi.entitlement;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+
+import com.ning.billing.catalog.api.BillingActionPolicy;
+import com.ning.billing.entitlement.api.Entitlement;
+import com.ning.billing.entitlement.api.EntitlementApiException;
+import com.ning.billing.util.callcontext.InternalCallContext;
+
+public interface EntitlementInternalApi {
+
+    /**
+     * Cancel entitlements of the same account in bulk. Entitlements already cancelled are skipped.
+     * <p/>
+     * The subscription events (including the add-ons of the cancelled base plans) are persisted in a single transaction,
+     * and invoicing is only triggered once. The ENT_CANCELLED blocking states are then written in a second transaction,
+     * as for a single entitlement cancellation: if that second write fails, the subscriptions are cancelled but the
+     * entitlements are not yet marked as cancelled.
+     */
+    public void cancelEntitlementsWithDateOverrideBillingPolicy(final UUID accountId, final List<Entitlement> entitlements, final LocalDate effectiveDate,
+                                                                final BillingActionPolicy billingPolicy, final InternalCallContext context) throws EntitlementApiException;
+}
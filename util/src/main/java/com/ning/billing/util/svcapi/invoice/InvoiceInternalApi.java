@@ -46,6 +46,19 @@ public interface InvoiceInternalApi {
 
     public void notifyOfPayment(InvoicePayment invoicePayment, InternalCallContext context) throws InvoiceApiException;
 
+    /**
+     * Record a payment allocated to several invoices (consolidated payment). All the invoice payments are
+     * created in a single transaction.
+     *
+     * @param paymentId          payment id
+     * @param amountsByInvoiceId amount paid on each invoice
+     * @param currency           payment currency
+     * @param paymentDate        payment date
+     * @param context            call context
+     * @throws InvoiceApiException
+     */
+    public void notifyOfPayment(UUID paymentId, Map<UUID, BigDecimal> amountsByInvoiceId, Currency currency, DateTime paymentDate, InternalCallContext context) throws InvoiceApiException;
+
     public InvoicePayment getInvoicePaymentForAttempt(UUID paymentId, InternalTenantContext context) throws InvoiceApiException;
 
     public Invoice getInvoiceForPaymentId(UUID paymentId, InternalTenantContext context) throws InvoiceApiException;
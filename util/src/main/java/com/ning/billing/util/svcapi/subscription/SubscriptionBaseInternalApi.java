@@ -23,6 +23,7 @@ import javax.annotation.Nullable;
 
 import org.joda.time.DateTime;
 
+import com.ning.billing.catalog.api.BillingActionPolicy;
 import com.ning.billing.catalog.api.PlanPhaseSpecifier;
 import com.ning.billing.entitlement.api.EntitlementAOStatusDryRun;
 import com.ning.billing.subscription.api.SubscriptionBase;
@@ -38,6 +39,13 @@ public interface SubscriptionBaseInternalApi {
     public SubscriptionBase createSubscription(final UUID bundleId, final PlanPhaseSpecifier spec, final DateTime requestedDateWithMs,
                                            final InternalCallContext context) throws SubscriptionBaseApiException;
 
+    // The first specifier is the BASE plan, followed by its ADD_ON plans: all subscriptions are created atomically
+    public List<SubscriptionBase> createBaseSubscriptionWithAddOns(final UUID bundleId, final List<PlanPhaseSpecifier> specs, final DateTime requestedDateWithMs,
+                                                                   final InternalCallContext context) throws SubscriptionBaseApiException;
+
+    // Cancel subscriptions of the same account (and the add-ons of the base plans cancelled immediately) atomically: invoicing is only triggered once
+    public void cancelSubscriptionsWithPolicy(final List<SubscriptionBase> subscriptions, final BillingActionPolicy policy,
+                                              final InternalCallContext context) throws SubscriptionBaseApiException;
 
     public SubscriptionBaseBundle createBundleForAccount(final UUID accountId, final String bundleName, final InternalCallContext context)
             throws SubscriptionBaseApiException;
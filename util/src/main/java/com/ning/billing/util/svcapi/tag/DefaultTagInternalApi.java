@@ -16,6 +16,7 @@
 
 package com.ning.billing.util.svcapi.tag;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -77,6 +78,21 @@ public class DefaultTagInternalApi implements TagInternalApi {
                                                                 }));
     }
 
+    @Override
+    public boolean isControlTagSet(final UUID accountId, final ControlTagType controlTagType, final InternalTenantContext context) {
+        return tagDao.getControlTagsForAccount(accountId, context).contains(controlTagType);
+    }
+
+    @Override
+    public boolean isControlTagSet(final UUID objectId, final ObjectType objectType, final ControlTagType controlTagType, final InternalTenantContext context) {
+        return tagDao.getControlTagsForObject(objectId, objectType, context).contains(controlTagType);
+    }
+
+    @Override
+    public void warmControlTags(final Collection<UUID> objectIds, final ObjectType objectType, final InternalTenantContext context) {
+        tagDao.warmControlTagsForObjects(objectIds, objectType, context);
+    }
+
     @Override
     public void addTag(final UUID objectId, final ObjectType objectType, final UUID tagDefinitionId, final InternalCallContext context)
             throws TagApiException {
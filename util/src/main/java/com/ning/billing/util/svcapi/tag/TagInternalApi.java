@@ -16,6 +16,7 @@
 
 package com.ning.billing.util.svcapi.tag;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -24,6 +25,7 @@ import com.ning.billing.ObjectType;
 import com.ning.billing.util.api.TagApiException;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.tag.ControlTagType;
 import com.ning.billing.util.tag.Tag;
 import com.ning.billing.util.tag.TagDefinition;
 
@@ -41,6 +43,38 @@ public interface TagInternalApi {
      */
     public List<Tag> getTags(UUID objectId, ObjectType objectType, InternalTenantContext context);
 
+    /**
+     * Check whether a control tag (e.g. AUTO_PAY_OFF) is set on an account. The control tags of the
+     * account are cached, so this should be preferred to looking up the tag in getTags. Changes made
+     * on other nodes are seen within killbill.cache.control.tags.revalidationInterval
+     *
+     * @param accountId      the account id
+     * @param controlTagType the control tag to look for
+     * @param context        call context
+     * @return true if the account is tagged with controlTagType
+     */
+    public boolean isControlTagSet(UUID accountId, ControlTagType controlTagType, InternalTenantContext context);
+
+    /**
+     * Check whether a control tag (e.g. AUTO_INVOICING_OFF) is set on an account or a bundle, see above
+     *
+     * @param objectId       the account or bundle id
+     * @param objectType     ACCOUNT or BUNDLE
+     * @param controlTagType the control tag to look for
+     * @param context        call context
+     * @return true if the control tag is set on the object
+     */
+    public boolean isControlTagSet(UUID objectId, ObjectType objectType, ControlTagType controlTagType, InternalTenantContext context);
+
+    /**
+     * Load the control tags of several accounts or bundles at once, ahead of isControlTagSet calls
+     *
+     * @param objectIds  the account or bundle ids
+     * @param objectType ACCOUNT or BUNDLE
+     * @param context    call context
+     */
+    public void warmControlTags(Collection<UUID> objectIds, ObjectType objectType, InternalTenantContext context);
+
     public void addTag(final UUID objectId, final ObjectType objectType, UUID tagDefinitionId, InternalCallContext context) throws TagApiException;
 
     public void removeTag(final UUID objectId, final ObjectType objectType, final UUID tagDefinitionId, InternalCallContext context) throws TagApiException;
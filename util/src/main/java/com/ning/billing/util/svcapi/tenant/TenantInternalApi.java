@@ -0,0 +1,35 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.svcapi.tenant;
+
+import java.util.List;
+
+import com.ning.billing.util.callcontext.InternalTenantContext;
+
+public interface TenantInternalApi {
+
+    // Tenant key under which each version of the tenant catalog is stored (one XML document per value)
+    public static final String CATALOG_KEY = "CATALOG";
+
+    /**
+     * Retrieve the catalog versions uploaded by the tenant
+     *
+     * @param context tenant context
+     * @return the catalog XML documents, empty if the tenant uses the default catalog
+     */
+    public List<String> getTenantCatalogs(InternalTenantContext context);
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.tag.api;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.ning.billing.ObjectType;
+import com.ning.billing.util.cache.Cachable.CacheType;
+import com.ning.billing.util.cache.CacheController;
+import com.ning.billing.util.cache.CacheControllerDispatcher;
+import com.ning.billing.util.events.ControlTagCreationInternalEvent;
+import com.ning.billing.util.events.ControlTagDeletionInternalEvent;
+import com.ning.billing.util.events.TagInternalEvent;
+
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Keep the account and bundle control tags cache coherent with changes made on other nodes. Each event is only
+ * handled by a single node, the other ones rely on the revalidation in DefaultTagDao.
+ */
+@Singleton
+public class ControlTagCacheHandler {
+
+    private final CacheControllerDispatcher cacheControllerDispatcher;
+
+    @Inject
+    public ControlTagCacheHandler(final CacheControllerDispatcher cacheControllerDispatcher) {
+        this.cacheControllerDispatcher = cacheControllerDispatcher;
+    }
+
+    @Subscribe
+    public void handleControlTagCreation(final ControlTagCreationInternalEvent event) {
+        invalidate(event);
+    }
+
+    @Subscribe
+    public void handleControlTagDeletion(final ControlTagDeletionInternalEvent event) {
+        invalidate(event);
+    }
+
+    private void invalidate(final TagInternalEvent event) {
+        if (event.getObjectType() != ObjectType.ACCOUNT && event.getObjectType() != ObjectType.BUNDLE) {
+            return;
+        }
+
+        final CacheController<Object, Object> cacheController = cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT_CONTROL_TAGS);
+        if (cacheController != null) {
+            cacheController.remove(event.getObjectId());
+        }
+    }
+}
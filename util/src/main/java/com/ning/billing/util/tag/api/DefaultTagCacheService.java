@@ -0,0 +1,60 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.tag.api;
+
+import javax.inject.Inject;
+
+import com.ning.billing.bus.api.PersistentBus;
+import com.ning.billing.lifecycle.LifecycleHandlerType;
+import com.ning.billing.lifecycle.LifecycleHandlerType.LifecycleLevel;
+
+public class DefaultTagCacheService implements TagCacheService {
+
+    public static final String TAG_CACHE_SERVICE_NAME = "tag-cache-service";
+
+    private final ControlTagCacheHandler controlTagCacheHandler;
+    private final PersistentBus eventBus;
+
+    @Inject
+    public DefaultTagCacheService(final ControlTagCacheHandler controlTagCacheHandler, final PersistentBus eventBus) {
+        this.controlTagCacheHandler = controlTagCacheHandler;
+        this.eventBus = eventBus;
+    }
+
+    @Override
+    public String getName() {
+        return TAG_CACHE_SERVICE_NAME;
+    }
+
+    @LifecycleHandlerType(LifecycleLevel.INIT_SERVICE)
+    public void initialize() {
+        try {
+            eventBus.register(controlTagCacheHandler);
+        } catch (PersistentBus.EventBusException e) {
+            throw new RuntimeException("Unable to register to the EventBus!", e);
+        }
+    }
+
+    @LifecycleHandlerType(LifecycleLevel.STOP_SERVICE)
+    public void stop() {
+        try {
+            eventBus.unregister(controlTagCacheHandler);
+        } catch (PersistentBus.EventBusException e) {
+            throw new RuntimeException("Unable to unregister to the EventBus!", e);
+        }
+    }
+}
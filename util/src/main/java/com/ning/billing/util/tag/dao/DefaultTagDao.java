@@ -16,14 +16,22 @@
 
 package com.ning.billing.util.tag.dao;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nullable;
 
 import org.skife.jdbi.v2.IDBI;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.weakref.jmx.Managed;
 
 import com.ning.billing.BillingExceptionBase;
 import com.ning.billing.ErrorCode;
@@ -31,10 +39,15 @@ import com.ning.billing.ObjectType;
 import com.ning.billing.bus.api.PersistentBus;
 import com.ning.billing.util.api.TagApiException;
 import com.ning.billing.util.audit.ChangeType;
+import com.ning.billing.util.cache.AccountControlTagsCacheLoader.ControlTags;
+import com.ning.billing.util.cache.Cachable.CacheType;
+import com.ning.billing.util.cache.CacheController;
 import com.ning.billing.util.cache.CacheControllerDispatcher;
+import com.ning.billing.util.cache.CacheLoaderArgument;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalTenantContext;
 import com.ning.billing.clock.Clock;
+import com.ning.billing.util.config.CacheConfig;
 import com.ning.billing.util.dao.NonEntityDao;
 import com.ning.billing.util.entity.dao.EntityDaoBase;
 import com.ning.billing.util.entity.dao.EntitySqlDao;
@@ -46,25 +59,50 @@ import com.ning.billing.util.tag.ControlTagType;
 import com.ning.billing.util.tag.Tag;
 import com.ning.billing.util.tag.api.user.TagEventBuilder;
 
+import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimaps;
 import com.google.inject.Inject;
 
+/**
+ * Control tags of accounts and bundles are cached (they are checked on every billing and payment operation).
+ * <p/>
+ * Changes made on this node invalidate the cache right away and the other nodes are notified via the control tag
+ * events (see ControlTagCacheHandler). Each of these events is only handled by a single node though, so the cached
+ * version is also checked against the database, at most once per killbill.cache.control.tags.revalidationInterval:
+ * this is the staleness window across nodes. The version check is a single aggregate query.
+ */
 public class DefaultTagDao extends EntityDaoBase<TagModelDao, Tag, TagApiException> implements TagDao {
 
     private static final Logger log = LoggerFactory.getLogger(DefaultTagDao.class);
 
+    // Maximum number of objects per query when warming up the control tags cache
+    private static final int WARM_UP_BATCH_SIZE = 500;
+
     private final TagEventBuilder tagEventBuilder;
     private final PersistentBus bus;
+    private final CacheControllerDispatcher controllerDispatcher;
+    private final Clock clock;
+    private final long revalidationIntervalMs;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong revalidations = new AtomicLong(0);
 
     @Inject
     public DefaultTagDao(final IDBI dbi, final TagEventBuilder tagEventBuilder, final PersistentBus bus, final Clock clock,
-                         final CacheControllerDispatcher controllerDispatcher, final NonEntityDao nonEntityDao) {
+                         final CacheControllerDispatcher controllerDispatcher, final NonEntityDao nonEntityDao, final CacheConfig cacheConfig) {
         super(new EntitySqlDaoTransactionalJdbiWrapper(dbi, clock, controllerDispatcher, nonEntityDao), TagSqlDao.class);
         this.tagEventBuilder = tagEventBuilder;
         this.bus = bus;
+        this.controllerDispatcher = controllerDispatcher;
+        this.clock = clock;
+        this.revalidationIntervalMs = cacheConfig.getControlTagsRevalidationInterval().getMillis();
     }
 
     @Override
@@ -100,6 +138,176 @@ public class DefaultTagDao extends EntityDaoBase<TagModelDao, Tag, TagApiExcepti
         });
     }
 
+    @Override
+    public Set<ControlTagType> getControlTagsForAccount(final UUID accountId, final InternalTenantContext internalTenantContext) {
+        return getControlTagsForObject(accountId, ObjectType.ACCOUNT, internalTenantContext);
+    }
+
+    @Override
+    public Set<ControlTagType> getControlTagsForObject(final UUID objectId, final ObjectType objectType, final InternalTenantContext internalTenantContext) {
+        final CacheController<Object, Object> cacheController = controllerDispatcher.getCacheController(CacheType.ACCOUNT_CONTROL_TAGS);
+        if (cacheController == null) {
+            misses.incrementAndGet();
+            return TagModelDaoHelper.getControlTagTypes(getTagsForObject(objectId, objectType, internalTenantContext));
+        }
+
+        final CacheLoaderArgument cacheLoaderArgument = new CacheLoaderArgument(objectType, new Object[]{}, internalTenantContext);
+        final long nowMs = clock.getUTCNow().getMillis();
+        if (!cacheController.isKeyInCache(objectId)) {
+            misses.incrementAndGet();
+            final ControlTags controlTags = (ControlTags) cacheController.get(objectId, cacheLoaderArgument);
+            controlTags.setLastRevalidationMs(nowMs);
+            return controlTags.getControlTags();
+        }
+
+        final ControlTags controlTags = (ControlTags) cacheController.get(objectId, cacheLoaderArgument);
+        if (nowMs - controlTags.getLastRevalidationMs() >= revalidationIntervalMs) {
+            controlTags.setLastRevalidationMs(nowMs);
+            revalidations.incrementAndGet();
+            if (!getTagsVersionForObject(objectId, objectType, internalTenantContext).equals(controlTags.getVersion())) {
+                // Changed on another node
+                misses.incrementAndGet();
+                cacheController.remove(objectId);
+                final ControlTags reloadedControlTags = (ControlTags) cacheController.get(objectId, cacheLoaderArgument);
+                reloadedControlTags.setLastRevalidationMs(nowMs);
+                return reloadedControlTags.getControlTags();
+            }
+        }
+
+        hits.incrementAndGet();
+        return controlTags.getControlTags();
+    }
+
+    @Override
+    public void warmControlTagsForObjects(final Collection<UUID> objectIds, final ObjectType objectType, final InternalTenantContext internalTenantContext) {
+        final CacheController<Object, Object> cacheController = controllerDispatcher.getCacheController(CacheType.ACCOUNT_CONTROL_TAGS);
+        if (cacheController == null) {
+            return;
+        }
+
+        final CacheLoaderArgument cacheLoaderArgument = new CacheLoaderArgument(objectType, new Object[]{}, internalTenantContext);
+        final long nowMs = clock.getUTCNow().getMillis();
+        final List<String> objectIdsToLoad = new LinkedList<String>();
+        final List<UUID> objectIdsToRevalidate = new LinkedList<UUID>();
+        final Map<UUID, ControlTags> cachedControlTags = new HashMap<UUID, ControlTags>();
+        for (final UUID objectId : objectIds) {
+            if (!cacheController.isKeyInCache(objectId)) {
+                objectIdsToLoad.add(objectId.toString());
+                continue;
+            }
+
+            final ControlTags controlTags = (ControlTags) cacheController.get(objectId, cacheLoaderArgument);
+            if (nowMs - controlTags.getLastRevalidationMs() >= revalidationIntervalMs) {
+                objectIdsToRevalidate.add(objectId);
+                cachedControlTags.put(objectId, controlTags);
+            }
+        }
+
+        // Cached entries due for a check are revalidated in bulk too, so that the isControlTagSet calls which follow are all hits
+        for (final List<UUID> batch : Lists.partition(objectIdsToRevalidate, WARM_UP_BATCH_SIZE)) {
+            final Map<UUID, String> versions = getTagsVersionForObjects(batch, objectType, internalTenantContext);
+            for (final UUID objectId : batch) {
+                final ControlTags controlTags = cachedControlTags.get(objectId);
+                controlTags.setLastRevalidationMs(nowMs);
+                revalidations.incrementAndGet();
+                if (!getVersion(versions, objectId).equals(controlTags.getVersion())) {
+                    // Changed on another node
+                    cacheController.remove(objectId);
+                    objectIdsToLoad.add(objectId.toString());
+                }
+            }
+        }
+
+        for (final List<String> batch : Lists.partition(objectIdsToLoad, WARM_UP_BATCH_SIZE)) {
+            final Map<UUID, String> versions = new HashMap<UUID, String>();
+            final List<TagModelDao> tags = transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<TagModelDao>>() {
+                @Override
+                public List<TagModelDao> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                    final TagSqlDao tagSqlDao = entitySqlDaoWrapperFactory.become(TagSqlDao.class);
+                    // The versions are read first, see AccountControlTagsCacheLoader
+                    for (final Entry<UUID, String> version : tagSqlDao.getTagsVersionForObjects(batch, objectType, internalTenantContext)) {
+                        versions.put(version.getKey(), version.getValue());
+                    }
+                    return tagSqlDao.getTagsForObjects(batch, objectType, internalTenantContext);
+                }
+            });
+
+            final ListMultimap<UUID, TagModelDao> tagsByObjectId = Multimaps.index(tags, new Function<TagModelDao, UUID>() {
+                @Override
+                public UUID apply(final TagModelDao input) {
+                    return input.getObjectId();
+                }
+            });
+            // Objects without any tag are cached too
+            for (final String objectId : batch) {
+                final UUID objectUUID = UUID.fromString(objectId);
+                final ControlTags controlTags = new ControlTags(TagModelDaoHelper.getControlTagTypes(tagsByObjectId.get(objectUUID)), getVersion(versions, objectUUID));
+                controlTags.setLastRevalidationMs(nowMs);
+                cacheController.putIfAbsent(objectUUID, controlTags);
+            }
+        }
+    }
+
+    private String getTagsVersionForObject(final UUID objectId, final ObjectType objectType, final InternalTenantContext internalTenantContext) {
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<String>() {
+            @Override
+            public String inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                return entitySqlDaoWrapperFactory.become(TagSqlDao.class).getTagsVersionForObject(objectId, objectType, internalTenantContext);
+            }
+        });
+    }
+
+    private Map<UUID, String> getTagsVersionForObjects(final List<UUID> objectIds, final ObjectType objectType, final InternalTenantContext internalTenantContext) {
+        final List<String> objectIdsAsStrings = Lists.transform(objectIds, new Function<UUID, String>() {
+            @Override
+            public String apply(final UUID input) {
+                return input.toString();
+            }
+        });
+        final List<Entry<UUID, String>> versions = transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<Entry<UUID, String>>>() {
+            @Override
+            public List<Entry<UUID, String>> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                return entitySqlDaoWrapperFactory.become(TagSqlDao.class).getTagsVersionForObjects(objectIdsAsStrings, objectType, internalTenantContext);
+            }
+        });
+
+        final Map<UUID, String> versionsByObjectId = new HashMap<UUID, String>();
+        for (final Entry<UUID, String> version : versions) {
+            versionsByObjectId.put(version.getKey(), version.getValue());
+        }
+        return versionsByObjectId;
+    }
+
+    private String getVersion(final Map<UUID, String> versions, final UUID objectId) {
+        final String version = versions.get(objectId);
+        return version == null ? TagSqlDao.NO_TAGS_VERSION : version;
+    }
+
+    private void invalidateControlTags(final UUID objectId, final ObjectType objectType, final UUID tagDefinitionId) {
+        if ((objectType != ObjectType.ACCOUNT && objectType != ObjectType.BUNDLE) || !TagModelDaoHelper.isControlTag(tagDefinitionId)) {
+            return;
+        }
+
+        final CacheController<Object, Object> cacheController = controllerDispatcher.getCacheController(CacheType.ACCOUNT_CONTROL_TAGS);
+        if (cacheController != null) {
+            cacheController.remove(objectId);
+        }
+    }
+
+    @Managed(description = "Number of control tags lookups served from the cache")
+    public long getControlTagsHitCount() {
+        return hits.get();
+    }
+
+    @Managed(description = "Number of control tags lookups which went to the database")
+    public long getControlTagsMissCount() {
+        return misses.get();
+    }
+
+    @Managed(description = "Number of checks of the cached control tags against the database")
+    public long getControlTagsRevalidationCount() {
+        return revalidations.get();
+    }
 
     @Override
     protected void postBusEventFromTransaction(final TagModelDao tag, final TagModelDao savedTag, final ChangeType changeType,
@@ -176,6 +384,8 @@ public class DefaultTagDao extends EntityDaoBase<TagModelDao, Tag, TagApiExcepti
     @Override
     public void create(final TagModelDao entity, final InternalCallContext context) throws TagApiException {
         transactionalSqlDao.execute(TagApiException.class, getCreateEntitySqlDaoTransactionWrapper(entity, context));
+        // Other nodes are notified via the ControlTagCreationInternalEvent (see ControlTagCacheHandler)
+        invalidateControlTags(entity.getObjectId(), entity.getObjectType(), entity.getTagDefinitionId());
     }
 
     @Override
@@ -206,6 +416,7 @@ public class DefaultTagDao extends EntityDaoBase<TagModelDao, Tag, TagApiExcepti
                 return null;
             }
         });
+        invalidateControlTags(objectId, objectType, tagDefinitionId);
 
     }
 }
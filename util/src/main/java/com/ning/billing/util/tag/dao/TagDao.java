@@ -16,13 +16,16 @@
 
 package com.ning.billing.util.tag.dao;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import com.ning.billing.ObjectType;
 import com.ning.billing.util.api.TagApiException;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.tag.ControlTagType;
 
 public interface TagDao {
 
@@ -37,4 +40,10 @@ public interface TagDao {
     List<TagModelDao> getTagsForAccountType(UUID accountId, ObjectType objectType, InternalTenantContext internalTenantContext);
 
     List<TagModelDao> getTagsForAccount(UUID accountId, InternalTenantContext internalTenantContext);
+
+    Set<ControlTagType> getControlTagsForAccount(UUID accountId, InternalTenantContext internalTenantContext);
+
+    Set<ControlTagType> getControlTagsForObject(UUID objectId, ObjectType objectType, InternalTenantContext internalTenantContext);
+
+    void warmControlTagsForObjects(Collection<UUID> objectIds, ObjectType objectType, InternalTenantContext internalTenantContext);
 }
@@ -16,10 +16,14 @@
 
 package com.ning.billing.util.tag.dao;
 
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.UUID;
 
 import com.ning.billing.util.tag.ControlTagType;
 
+import com.google.common.collect.Sets;
+
 public class TagModelDaoHelper {
 
     private TagModelDaoHelper() {}
@@ -43,4 +47,15 @@ public class TagModelDaoHelper {
 
         return false;
     }
+
+    public static Set<ControlTagType> getControlTagTypes(final Iterable<TagModelDao> tags) {
+        final Set<ControlTagType> controlTagTypes = EnumSet.noneOf(ControlTagType.class);
+        for (final TagModelDao tag : tags) {
+            final ControlTagType controlTagType = ControlTagType.getTypeFromId(tag.getTagDefinitionId());
+            if (controlTagType != null) {
+                controlTagTypes.add(controlTagType);
+            }
+        }
+        return Sets.immutableEnumSet(controlTagTypes);
+    }
 }
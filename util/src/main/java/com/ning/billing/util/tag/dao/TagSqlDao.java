@@ -16,23 +16,33 @@
 
 package com.ning.billing.util.tag.dao;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map.Entry;
 import java.util.UUID;
 
+import org.skife.jdbi.v2.StatementContext;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.BindBean;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.customizers.Mapper;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
 
 import com.ning.billing.ObjectType;
 import com.ning.billing.util.audit.ChangeType;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.dao.MapperBase;
 import com.ning.billing.util.entity.dao.Audited;
 import com.ning.billing.util.entity.dao.EntitySqlDao;
 import com.ning.billing.util.entity.dao.EntitySqlDaoStringTemplate;
 import com.ning.billing.util.tag.Tag;
 
+import com.google.common.collect.Maps;
+
 @EntitySqlDaoStringTemplate
 public interface TagSqlDao extends EntitySqlDao<TagModelDao, Tag> {
 
@@ -45,4 +55,44 @@ public interface TagSqlDao extends EntitySqlDao<TagModelDao, Tag> {
     List<TagModelDao> getTagsForObject(@Bind("objectId") UUID objectId,
                                        @Bind("objectType") ObjectType objectType,
                                        @BindBean InternalTenantContext internalTenantContext);
+
+    @SqlQuery
+    List<TagModelDao> getTagsForObjects(@UUIDCollectionBinder("object_ids") Collection<String> objectIds,
+                                        @Bind("objectType") ObjectType objectType,
+                                        @BindBean InternalTenantContext internalTenantContext);
+
+    // Tags are only ever added (with a new record_id) or soft deleted: the number of active tags and the highest
+    // active record_id change whenever the tags of the object do
+    @SqlQuery
+    @Mapper(TagsVersionMapper.class)
+    String getTagsVersionForObject(@Bind("objectId") UUID objectId,
+                                   @Bind("objectType") ObjectType objectType,
+                                   @BindBean InternalTenantContext internalTenantContext);
+
+    // Objects without any active tag are not returned, their version is NO_TAGS_VERSION
+    @SqlQuery
+    @Mapper(ObjectTagsVersionMapper.class)
+    List<Entry<UUID, String>> getTagsVersionForObjects(@UUIDCollectionBinder("object_ids") Collection<String> objectIds,
+                                                       @Bind("objectType") ObjectType objectType,
+                                                       @BindBean InternalTenantContext internalTenantContext);
+
+    public static final String NO_TAGS_VERSION = "0:0";
+
+    public static class TagsVersionMapper implements ResultSetMapper<String> {
+
+        @Override
+        public String map(final int index, final ResultSet r, final StatementContext ctx) throws SQLException {
+            return r.getLong("nb_tags") + ":" + r.getLong("max_record_id");
+        }
+    }
+
+    public static class ObjectTagsVersionMapper extends MapperBase implements ResultSetMapper<Entry<UUID, String>> {
+
+        private final TagsVersionMapper tagsVersionMapper = new TagsVersionMapper();
+
+        @Override
+        public Entry<UUID, String> map(final int index, final ResultSet r, final StatementContext ctx) throws SQLException {
+            return Maps.immutableEntry(getUUID(r, "object_id"), tagsVersionMapper.map(index, r, ctx));
+        }
+    }
 }
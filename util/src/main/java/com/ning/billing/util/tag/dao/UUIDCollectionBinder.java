@@ -32,6 +32,10 @@ import org.skife.jdbi.v2.sqlobject.BindingAnnotation;
 @Retention(RetentionPolicy.RUNTIME)
 @Target({ElementType.PARAMETER})
 public @interface UUIDCollectionBinder {
+
+    // Name of the StringTemplate attribute holding the ids
+    String value() default "tag_definition_ids";
+
     public static class UUIDCollectionBinderFactory implements BinderFactory {
         @Override
         public Binder build(Annotation annotation) {
@@ -39,7 +43,7 @@ public @interface UUIDCollectionBinder {
 
                 @Override
                 public void bind(SQLStatement<?> query, UUIDCollectionBinder bind, Collection<String> ids) {
-                    query.define("tag_definition_ids", ids);
+                    query.define(bind.value(), ids);
 
                     int idx = 0;
                     for (String id : ids) {
@@ -233,4 +233,30 @@ create table sessions (
 , host varchar(100) default null
 , session_data mediumblob default null
 , primary key(record_id)
-);
\ No newline at end of file
+);
+DROP TABLE IF EXISTS email_outbox;
+CREATE TABLE email_outbox (
+    record_id int(11) unsigned NOT NULL AUTO_INCREMENT,
+    id char(36) NOT NULL,
+    account_id char(36) NOT NULL,
+    dedup_key varchar(100) NOT NULL,
+    recipient varchar(128) NOT NULL,
+    cc_recipients varchar(2048) DEFAULT NULL,
+    subject varchar(255) DEFAULT NULL,
+    body mediumtext NOT NULL,
+    is_html bool NOT NULL,
+    status varchar(20) NOT NULL,
+    attempts int(11) NOT NULL DEFAULT 0,
+    next_attempt_date datetime NOT NULL,
+    last_error varchar(1024) DEFAULT NULL,
+    processing_owner varchar(50) DEFAULT NULL,
+    created_date datetime NOT NULL,
+    updated_date datetime NOT NULL,
+    account_record_id int(11) unsigned default null,
+    tenant_record_id int(11) unsigned default null,
+    PRIMARY KEY(record_id)
+);
+CREATE UNIQUE INDEX email_outbox_id ON email_outbox(id);
+CREATE UNIQUE INDEX email_outbox_dedup_key ON email_outbox(tenant_record_id, dedup_key, recipient);
+CREATE INDEX email_outbox_status_next_attempt ON email_outbox(status, next_attempt_date);
+CREATE INDEX email_outbox_account_id ON email_outbox(account_id);
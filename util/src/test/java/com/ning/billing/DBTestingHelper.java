@@ -153,6 +153,24 @@ public class DBTestingHelper {
                                "    tenant_record_id int(11) unsigned default null,\n" +
                                "    PRIMARY KEY(record_id)\n" +
                                ");");
+        // Overdue states are looked up by the accounts receivable aging report (invoice)
+        instance.executeScript("DROP TABLE IF EXISTS blocking_states;\n" +
+                               "CREATE TABLE blocking_states (\n" +
+                               "    record_id int(11) unsigned NOT NULL AUTO_INCREMENT,\n" +
+                               "    id char(36) NOT NULL,\n" +
+                               "    blockable_id char(36) NOT NULL,\n" +
+                               "    type varchar(20) NOT NULL,\n" +
+                               "    state varchar(50) NOT NULL,\n" +
+                               "    service varchar(20) NOT NULL,\n" +
+                               "    block_change bool NOT NULL,\n" +
+                               "    block_entitlement bool NOT NULL,\n" +
+                               "    block_billing bool NOT NULL,\n" +
+                               "    effective_date datetime NOT NULL,\n" +
+                               "    created_date datetime NOT NULL,\n" +
+                               "    account_record_id int(11) unsigned default null,\n" +
+                               "    tenant_record_id int(11) unsigned default null,\n" +
+                               "    PRIMARY KEY(record_id)\n" +
+                               ");");
 
         for (final String pack : new String[]{"account", "analytics", "beatrix", "subscription", "util", "payment", "invoice", "entitlement", "usage", "meter", "tenant"}) {
             for (final String ddlFile : new String[]{"ddl.sql", "ddl_test.sql"}) {
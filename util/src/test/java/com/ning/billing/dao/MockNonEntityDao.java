@@ -16,16 +16,21 @@
 
 package com.ning.billing.dao;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
 
 import com.ning.billing.ObjectType;
 import com.ning.billing.util.cache.CacheController;
+import com.ning.billing.util.dao.AccountAndTenantRecordIds;
 import com.ning.billing.util.dao.NonEntityDao;
 import com.ning.billing.util.dao.NonEntitySqlDao;
 import com.ning.billing.util.dao.TableName;
 
+import com.google.common.collect.ImmutableMap;
+
 public class MockNonEntityDao implements NonEntityDao {
 
     @Override
@@ -43,6 +48,20 @@ public class MockNonEntityDao implements NonEntityDao {
         return null;
     }
 
+    @Override
+    public AccountAndTenantRecordIds retrieveAccountAndTenantRecordIdsFromObject(final UUID objectId, final ObjectType objectType,
+                                                                                 @Nullable final CacheController<Object, Object> accountRecordIdCache,
+                                                                                 @Nullable final CacheController<Object, Object> tenantRecordIdCache) {
+        return new AccountAndTenantRecordIds(null, null);
+    }
+
+    @Override
+    public Map<UUID, Long> retrieveRecordIdsFromObjects(final Collection<UUID> objectIds, final ObjectType objectType,
+                                                        @Nullable final CacheController<Object, Object> recordIdCache,
+                                                        @Nullable final CacheController<Object, Object> objectIdCache) {
+        return ImmutableMap.<UUID, Long>of();
+    }
+
     @Override
     public Long retrieveLastHistoryRecordIdFromTransaction(final Long targetRecordId, final TableName tableName, final NonEntitySqlDao transactional) {
         return null;
@@ -54,7 +73,14 @@ public class MockNonEntityDao implements NonEntityDao {
     }
 
     @Override
-    public UUID retrieveIdFromObject(final Long recordId, final ObjectType objectType) {
+    public UUID retrieveIdFromObject(final Long recordId, final ObjectType objectType, @Nullable final CacheController<Object, Object> cache) {
         return null;
     }
+
+    @Override
+    public Map<Long, UUID> retrieveIdsFromObjects(final Collection<Long> recordIds, final ObjectType objectType,
+                                                  @Nullable final CacheController<Object, Object> objectIdCache,
+                                                  @Nullable final CacheController<Object, Object> recordIdCache) {
+        return ImmutableMap.<Long, UUID>of();
+    }
 }
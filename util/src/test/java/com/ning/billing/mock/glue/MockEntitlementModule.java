@@ -21,6 +21,7 @@ import org.mockito.Mockito;
 import com.ning.billing.entitlement.api.EntitlementApi;
 import com.ning.billing.entitlement.api.SubscriptionApi;
 import com.ning.billing.glue.EntitlementModule;
+import com.ning.billing.util.svcapi.entitlement.EntitlementInternalApi;
 import com.ning.billing.util.svcapi.junction.BlockingInternalApi;
 
 import com.google.inject.AbstractModule;
@@ -28,6 +29,7 @@ import com.google.inject.AbstractModule;
 public class MockEntitlementModule extends AbstractModule implements EntitlementModule {
 
     private final BlockingInternalApi blockingApi = Mockito.mock(BlockingInternalApi.class);
+    private final EntitlementInternalApi entitlementInternalApi = Mockito.mock(EntitlementInternalApi.class);
     private final EntitlementApi entitlementApi = Mockito.mock(EntitlementApi.class);
     private final SubscriptionApi subscriptionApi = Mockito.mock(SubscriptionApi.class);
 
@@ -35,6 +37,7 @@ public class MockEntitlementModule extends AbstractModule implements Entitlement
     protected void configure() {
         installBlockingStateDao();
         installBlockingApi();
+        installEntitlementInternalApi();
         installEntitlementApi();
     }
 
@@ -47,6 +50,11 @@ public class MockEntitlementModule extends AbstractModule implements Entitlement
         //bind(BlockingInternalApi.class).toInstance(blockingApi);
     }
 
+    @Override
+    public void installEntitlementInternalApi() {
+        bind(EntitlementInternalApi.class).toInstance(entitlementInternalApi);
+    }
+
     @Override
     public void installEntitlementApi() {
         bind(EntitlementApi.class).toInstance(entitlementApi);
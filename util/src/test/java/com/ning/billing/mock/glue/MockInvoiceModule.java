@@ -19,6 +19,7 @@ package com.ning.billing.mock.glue;
 import org.mockito.Mockito;
 
 import com.ning.billing.glue.InvoiceModule;
+import com.ning.billing.invoice.api.InvoiceAgingUserApi;
 import com.ning.billing.invoice.api.InvoiceMigrationApi;
 import com.ning.billing.invoice.api.InvoicePaymentApi;
 import com.ning.billing.invoice.api.InvoiceUserApi;
@@ -49,10 +50,16 @@ public class MockInvoiceModule extends AbstractModule implements InvoiceModule {
         installInvoiceInternalApi();
         installInvoicePaymentApi();
         installInvoiceMigrationApi();
+        installInvoiceAgingUserApi();
     }
 
     @Override
     public void installInvoiceInternalApi() {
         bind(InvoiceInternalApi.class).toInstance(Mockito.mock(InvoiceInternalApi.class));
     }
+
+    @Override
+    public void installInvoiceAgingUserApi() {
+        bind(InvoiceAgingUserApi.class).toInstance(Mockito.mock(InvoiceAgingUserApi.class));
+    }
 }
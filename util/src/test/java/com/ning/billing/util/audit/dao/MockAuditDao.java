@@ -17,6 +17,7 @@
 package com.ning.billing.util.audit.dao;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -69,4 +70,13 @@ public class MockAuditDao implements AuditDao {
             return allAuditLogs;
         }
     }
+
+    @Override
+    public Map<UUID, List<AuditLog>> getAuditLogsForIds(final TableName tableName, final Collection<UUID> objectIds, final AuditLevel auditLevel, final InternalTenantContext context) {
+        final Map<UUID, List<AuditLog>> auditLogsForIds = new HashMap<UUID, List<AuditLog>>();
+        for (final UUID objectId : objectIds) {
+            auditLogsForIds.put(objectId, getAuditLogsForId(tableName, objectId, auditLevel, context));
+        }
+        return auditLogsForIds;
+    }
 }
@@ -16,13 +16,17 @@
 
 package com.ning.billing.util.audit.dao;
 
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
+import org.mockito.Mockito;
 import org.skife.jdbi.v2.Handle;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.ning.billing.DBTestingHelper;
 import com.ning.billing.ObjectType;
 import com.ning.billing.util.UtilTestSuiteWithEmbeddedDB;
 import com.ning.billing.util.api.AuditLevel;
@@ -30,12 +34,18 @@ import com.ning.billing.util.api.TagApiException;
 import com.ning.billing.util.api.TagDefinitionApiException;
 import com.ning.billing.util.audit.AuditLog;
 import com.ning.billing.util.audit.ChangeType;
+import com.ning.billing.util.cache.Cachable.CacheType;
+import com.ning.billing.util.cache.CacheController;
+import com.ning.billing.util.config.ReplicaDaoConfig;
+import com.ning.billing.util.dao.DBRouter;
 import com.ning.billing.util.dao.TableName;
 import com.ning.billing.util.tag.DescriptiveTag;
 import com.ning.billing.util.tag.Tag;
 import com.ning.billing.util.tag.dao.TagDefinitionModelDao;
 import com.ning.billing.util.tag.dao.TagModelDao;
 
+import com.google.common.collect.ImmutableList;
+
 public class TestDefaultAuditDao extends UtilTestSuiteWithEmbeddedDB {
 
     private TagModelDao tag;
@@ -79,6 +89,63 @@ public class TestDefaultAuditDao extends UtilTestSuiteWithEmbeddedDB {
         Assert.assertEquals(secondAuditLogs.get(1).getChangeType(), ChangeType.DELETE);
     }
 
+    @Test(groups = "slow")
+    public void testRetrieveAuditsInBulk() throws Exception {
+        final List<UUID> tagIds = new LinkedList<UUID>();
+        for (int i = 0; i < 3; i++) {
+            addTag();
+            tagIds.add(tag.getId());
+        }
+        // Unknown object
+        tagIds.add(UUID.randomUUID());
+
+        for (final AuditLevel level : AuditLevel.values()) {
+            final Map<UUID, List<AuditLog>> auditLogs = auditDao.getAuditLogsForIds(TableName.TAG, tagIds, level, internalCallContext);
+            Assert.assertEquals(auditLogs.size(), 4);
+            for (int i = 0; i < 3; i++) {
+                verifyAuditLogsForTag(auditLogs.get(tagIds.get(i)), level);
+            }
+            Assert.assertEquals(auditLogs.get(tagIds.get(3)).size(), 0);
+        }
+
+        // The single object code path should be consistent
+        tagDao.deleteTag(tag.getObjectId(), tag.getObjectType(), tag.getTagDefinitionId(), internalCallContext);
+        final Map<UUID, List<AuditLog>> auditLogs = auditDao.getAuditLogsForIds(TableName.TAG, tagIds, AuditLevel.FULL, internalCallContext);
+        Assert.assertEquals(auditLogs.get(tag.getId()), auditDao.getAuditLogsForId(TableName.TAG, tag.getId(), AuditLevel.FULL, internalCallContext));
+        Assert.assertEquals(auditLogs.get(tag.getId()).size(), 2);
+        Assert.assertEquals(auditLogs.get(tag.getId()).get(1).getChangeType(), ChangeType.DELETE);
+    }
+
+    @Test(groups = "slow")
+    public void testReplicaReadsDontPopulateCaches() throws Exception {
+        addTag();
+
+        // Second DBI on the same database, standing for an up-to-date replica
+        final ReplicaDaoConfig replicaDaoConfig = Mockito.mock(ReplicaDaoConfig.class);
+        Mockito.when(replicaDaoConfig.isReplicaEnabled()).thenReturn(true);
+        Mockito.when(replicaDaoConfig.getReplicaLagQuery()).thenReturn("");
+        final DBRouter dbRouter = new DBRouter(dbi, DBTestingHelper.getDBI(), replicaDaoConfig);
+        final AuditDao auditDaoWithReplica = new DefaultAuditDao(dbi, dbRouter, clock, controlCacheDispatcher, nonEntityDao);
+
+        final CacheController<Object, Object> auditLogViaHistoryCache = controlCacheDispatcher.getCacheController(CacheType.AUDIT_LOG_VIA_HISTORY);
+        auditLogViaHistoryCache.removeAll();
+
+        dbRouter.beginReadOnlyScope();
+        try {
+            Assert.assertTrue(dbRouter.isReadOnlyTransactionRoutedToReplica());
+            final Map<UUID, List<AuditLog>> auditLogs = auditDaoWithReplica.getAuditLogsForIds(TableName.TAG, ImmutableList.<UUID>of(tag.getId()), AuditLevel.FULL, internalCallContext);
+            verifyAuditLogsForTag(auditLogs.get(tag.getId()), AuditLevel.FULL);
+        } finally {
+            dbRouter.endReadOnlyScope();
+        }
+        Assert.assertEquals(auditLogViaHistoryCache.size(), 0);
+
+        // Primary reads do warm-up the caches
+        final Map<UUID, List<AuditLog>> auditLogs = auditDaoWithReplica.getAuditLogsForIds(TableName.TAG, ImmutableList.<UUID>of(tag.getId()), AuditLevel.FULL, internalCallContext);
+        verifyAuditLogsForTag(auditLogs.get(tag.getId()), AuditLevel.FULL);
+        Assert.assertEquals(auditLogViaHistoryCache.size(), 1);
+    }
+
     private void addTag() throws TagDefinitionApiException, TagApiException {
         // Create a tag definition
         final TagDefinitionModelDao tagDefinition = tagDefinitionDao.create(UUID.randomUUID().toString().substring(0, 5),
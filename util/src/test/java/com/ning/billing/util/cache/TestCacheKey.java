@@ -0,0 +1,56 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.billing.util.UtilTestSuiteNoDB;
+import com.ning.billing.util.dao.TableName;
+
+public class TestCacheKey extends UtilTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testAuditLogViaHistoryKeys() throws Exception {
+        // Key built by AuditSqlDao#getAuditLogsViaHistoryForTargetRecordId
+        final CacheKey queryKey = new CacheKey(TableName.ACCOUNT_HISTORY, TableName.ACCOUNT_HISTORY.getTableName().toLowerCase(), 12L);
+        // Key built on invalidation by EntitySqlDaoWrapperInvocationHandler
+        final CacheKey invalidationKey = new CacheKey(TableName.ACCOUNT_HISTORY, TableName.ACCOUNT_HISTORY.getTableName(), Long.valueOf(12));
+
+        Assert.assertEquals(queryKey, invalidationKey);
+        Assert.assertEquals(queryKey.hashCode(), invalidationKey.hashCode());
+        Assert.assertEquals(queryKey.toString(), "ACCOUNT_HISTORY::ACCOUNT_HISTORY::12");
+    }
+
+    @Test(groups = "fast")
+    public void testKeysAreCaseInsensitive() throws Exception {
+        final CacheKey lowerCaseKey = new CacheKey("invoices", 1L);
+        final CacheKey upperCaseKey = new CacheKey("INVOICES", 1);
+
+        Assert.assertEquals(lowerCaseKey, upperCaseKey);
+        Assert.assertEquals(lowerCaseKey.hashCode(), upperCaseKey.hashCode());
+        Assert.assertEquals(new CacheKey(TableName.INVOICES, 1L), new CacheKey("Invoices", 1L));
+    }
+
+    @Test(groups = "fast")
+    public void testDifferentKeys() throws Exception {
+        Assert.assertNotEquals(new CacheKey(TableName.INVOICES, 1L), new CacheKey(TableName.INVOICES, 2L));
+        Assert.assertNotEquals(new CacheKey(TableName.INVOICES, 1L), new CacheKey(TableName.INVOICE_ITEMS, 1L));
+        Assert.assertNotEquals(new CacheKey(TableName.INVOICES, 1L), new CacheKey(TableName.INVOICES, 1L, 1L));
+        Assert.assertNotEquals(new CacheKey(TableName.INVOICES, null), new CacheKey(TableName.INVOICES, 1L));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.dao;
+
+import org.mockito.Mockito;
+import org.skife.jdbi.v2.IDBI;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.billing.util.UtilTestSuiteNoDB;
+import com.ning.billing.util.config.ReplicaDaoConfig;
+
+public class TestDBRouter extends UtilTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testNoReplica() throws Exception {
+        final IDBI primary = Mockito.mock(IDBI.class);
+        final DBRouter dbRouter = new DBRouter(primary);
+        Assert.assertFalse(dbRouter.hasReplica());
+
+        dbRouter.beginReadOnlyScope();
+        try {
+            Assert.assertSame(dbRouter.getDBIForReadOnlyTransaction(), primary);
+        } finally {
+            dbRouter.endReadOnlyScope();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testReplicaDisabled() throws Exception {
+        final IDBI primary = Mockito.mock(IDBI.class);
+        final IDBI replica = Mockito.mock(IDBI.class);
+        final ReplicaDaoConfig config = Mockito.mock(ReplicaDaoConfig.class);
+        Mockito.when(config.isReplicaEnabled()).thenReturn(false);
+
+        final DBRouter dbRouter = new DBRouter(primary, replica, config);
+        Assert.assertFalse(dbRouter.hasReplica());
+    }
+
+    @Test(groups = "fast")
+    public void testRouting() throws Exception {
+        final IDBI primary = Mockito.mock(IDBI.class);
+        final IDBI replica = Mockito.mock(IDBI.class);
+        final ReplicaDaoConfig config = Mockito.mock(ReplicaDaoConfig.class);
+        Mockito.when(config.isReplicaEnabled()).thenReturn(true);
+        Mockito.when(config.getReplicaLagQuery()).thenReturn("");
+
+        final DBRouter dbRouter = new DBRouter(primary, replica, config);
+        Assert.assertTrue(dbRouter.hasReplica());
+
+        // Outside of a read-only scope, everything goes to the primary
+        Assert.assertSame(dbRouter.getDBIForReadOnlyTransaction(), primary);
+
+        dbRouter.beginReadOnlyScope();
+        try {
+            Assert.assertSame(dbRouter.getDBIForReadOnlyTransaction(), replica);
+
+            // Nested scopes share the routing decision
+            dbRouter.beginReadOnlyScope();
+            Assert.assertSame(dbRouter.getDBIForReadOnlyTransaction(), replica);
+            dbRouter.endReadOnlyScope();
+            Assert.assertSame(dbRouter.getDBIForReadOnlyTransaction(), replica);
+
+            // Read your writes
+            dbRouter.onReadWriteTransaction();
+            Assert.assertSame(dbRouter.getDBIForReadOnlyTransaction(), primary);
+        } finally {
+            dbRouter.endReadOnlyScope();
+        }
+
+        // New scope, new decision
+        dbRouter.beginReadOnlyScope();
+        try {
+            Assert.assertSame(dbRouter.getDBIForReadOnlyTransaction(), replica);
+        } finally {
+            dbRouter.endReadOnlyScope();
+        }
+        Assert.assertSame(dbRouter.getDBIForReadOnlyTransaction(), primary);
+    }
+}
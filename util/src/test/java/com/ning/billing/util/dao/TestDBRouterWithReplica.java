@@ -0,0 +1,142 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.dao;
+
+import java.util.Properties;
+import java.util.UUID;
+
+import org.skife.config.ConfigurationObjectFactory;
+import org.skife.config.SimplePropertyConfigSource;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ning.billing.util.UtilTestSuiteWithEmbeddedDB;
+import com.ning.billing.util.config.ReplicaDaoConfig;
+
+public class TestDBRouterWithReplica extends UtilTestSuiteWithEmbeddedDB {
+
+    private static final String LAG_QUERY = "select Seconds_Behind_Master from replica_status";
+
+    // Second, independent, embedded database standing for the replica
+    private Handle replicaHandle;
+    private DBRouter dbRouter;
+
+    @BeforeMethod(groups = "slow")
+    public void setUpReplica() throws Exception {
+        final IDBI replicaDbi = new DBI("jdbc:h2:mem:replica-" + UUID.randomUUID() + ";MODE=MySQL");
+        // The in-memory database lives as long as this handle is open
+        replicaHandle = replicaDbi.open();
+        replicaHandle.execute("create table replica_status (Seconds_Behind_Master int)");
+        replicaHandle.execute("create table replica_marker (id int)");
+
+        dbRouter = new DBRouter(dbi, replicaDbi, createReplicaDaoConfig());
+    }
+
+    @AfterMethod(groups = "slow")
+    public void tearDownReplica() throws Exception {
+        replicaHandle.close();
+    }
+
+    @Test(groups = "slow")
+    public void testRoutingBasedOnReplicationLag() throws Exception {
+        setLag(0);
+        Assert.assertTrue(isReadFromReplica());
+
+        // Lagging too much
+        setLag(10);
+        Assert.assertFalse(isReadFromReplica());
+
+        setLag(1);
+        Assert.assertTrue(isReadFromReplica());
+
+        // Replication stopped
+        replicaHandle.execute("update replica_status set Seconds_Behind_Master = null");
+        Assert.assertFalse(isReadFromReplica());
+
+        // Not a replica
+        replicaHandle.execute("delete from replica_status");
+        Assert.assertFalse(isReadFromReplica());
+
+        // Lag query failing
+        replicaHandle.execute("drop table replica_status");
+        Assert.assertFalse(isReadFromReplica());
+    }
+
+    @Test(groups = "slow")
+    public void testReadYourWrites() throws Exception {
+        setLag(0);
+
+        dbRouter.beginReadOnlyScope();
+        try {
+            Assert.assertTrue(readFromRoutedDBI());
+
+            dbRouter.onReadWriteTransaction();
+            Assert.assertFalse(readFromRoutedDBI());
+        } finally {
+            dbRouter.endReadOnlyScope();
+        }
+
+        // Background processing, outside of any scope
+        Assert.assertFalse(readFromRoutedDBI());
+    }
+
+    private void setLag(final int lagSeconds) {
+        replicaHandle.execute("delete from replica_status");
+        replicaHandle.execute("insert into replica_status (Seconds_Behind_Master) values (?)", lagSeconds);
+    }
+
+    // Routing decision of a new read-only scope
+    private boolean isReadFromReplica() {
+        dbRouter.beginReadOnlyScope();
+        try {
+            return readFromRoutedDBI();
+        } finally {
+            dbRouter.endReadOnlyScope();
+        }
+    }
+
+    // Actually query the routed database: only the replica has the marker table
+    private boolean readFromRoutedDBI() {
+        return dbRouter.getDBIForReadOnlyTransaction().withHandle(new HandleCallback<Boolean>() {
+            @Override
+            public Boolean withHandle(final Handle handle) throws Exception {
+                try {
+                    handle.select("select count(*) from replica_marker");
+                    return true;
+                } catch (RuntimeException e) {
+                    return false;
+                }
+            }
+        });
+    }
+
+    private ReplicaDaoConfig createReplicaDaoConfig() {
+        final Properties properties = new Properties();
+        properties.setProperty("killbill.dao.replica.enabled", "true");
+        properties.setProperty("killbill.dao.replica.lag.query", LAG_QUERY);
+        properties.setProperty("killbill.dao.replica.lag.max", "5s");
+        // Check the lag on every routing decision
+        properties.setProperty("killbill.dao.replica.lag.checkInterval", "0s");
+        return new ConfigurationObjectFactory(new SimplePropertyConfigSource(properties)).build(ReplicaDaoConfig.class);
+    }
+}
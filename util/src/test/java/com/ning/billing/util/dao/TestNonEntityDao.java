@@ -18,6 +18,7 @@ package com.ning.billing.util.dao;
 
 import java.io.IOException;
 import java.util.Date;
+import java.util.Map;
 import java.util.UUID;
 
 import org.skife.jdbi.v2.Handle;
@@ -27,6 +28,11 @@ import org.testng.annotations.Test;
 
 import com.ning.billing.ObjectType;
 import com.ning.billing.util.UtilTestSuiteWithEmbeddedDB;
+import com.ning.billing.util.cache.Cachable.CacheType;
+import com.ning.billing.util.cache.CacheController;
+import com.ning.billing.util.cache.CacheKey;
+
+import com.google.common.collect.ImmutableList;
 
 public class TestNonEntityDao extends UtilTestSuiteWithEmbeddedDB {
 
@@ -96,6 +102,83 @@ public class TestNonEntityDao extends UtilTestSuiteWithEmbeddedDB {
         final Long resultTenantRecordId = nonEntityDao.retrieveTenantRecordIdFromObject(tenantId, ObjectType.TENANT, null);
         Assert.assertEquals(resultTenantRecordId, tenantRecordId);
     }
+
+    @Test(groups = "slow")
+    public void testRetrieveAccountAndTenantRecordIdsFromObject() throws IOException {
+        insertAccount();
+        insertTag();
+        insertTagDefinition();
+        insertTenant();
+
+        final CacheController<Object, Object> accountRecordIdCache = controlCacheDispatcher.getCacheController(CacheType.ACCOUNT_RECORD_ID);
+        final CacheController<Object, Object> tenantRecordIdCache = controlCacheDispatcher.getCacheController(CacheType.TENANT_RECORD_ID);
+
+        final AccountAndTenantRecordIds fromAccount = nonEntityDao.retrieveAccountAndTenantRecordIdsFromObject(accountId, ObjectType.ACCOUNT, accountRecordIdCache, tenantRecordIdCache);
+        Assert.assertEquals(fromAccount.getAccountRecordId(), accountRecordId);
+        Assert.assertEquals(fromAccount.getTenantRecordId(), tenantRecordId);
+
+        final AccountAndTenantRecordIds fromTag = nonEntityDao.retrieveAccountAndTenantRecordIdsFromObject(tagId, ObjectType.TAG, accountRecordIdCache, tenantRecordIdCache);
+        Assert.assertEquals(fromTag.getAccountRecordId(), accountRecordId);
+        Assert.assertEquals(fromTag.getTenantRecordId(), (Long) 0L);
+
+        final AccountAndTenantRecordIds fromTagDefinition = nonEntityDao.retrieveAccountAndTenantRecordIdsFromObject(tagDefinitionId, ObjectType.TAG_DEFINITION, null, null);
+        Assert.assertNull(fromTagDefinition.getAccountRecordId());
+        Assert.assertEquals(fromTagDefinition.getTenantRecordId(), (Long) 0L);
+
+        final AccountAndTenantRecordIds fromTenant = nonEntityDao.retrieveAccountAndTenantRecordIdsFromObject(tenantId, ObjectType.TENANT, null, null);
+        Assert.assertNull(fromTenant.getAccountRecordId());
+        Assert.assertEquals(fromTenant.getTenantRecordId(), tenantRecordId);
+
+        // The single lookup populated both caches
+        Assert.assertTrue(accountRecordIdCache.isKeyInCache(accountId.toString()));
+        Assert.assertTrue(tenantRecordIdCache.isKeyInCache(accountId.toString()));
+        Assert.assertTrue(accountRecordIdCache.isKeyInCache(tagId.toString()));
+        Assert.assertTrue(tenantRecordIdCache.isKeyInCache(tagId.toString()));
+
+        // Unknown object
+        final AccountAndTenantRecordIds fromUnknown = nonEntityDao.retrieveAccountAndTenantRecordIdsFromObject(UUID.randomUUID(), ObjectType.TAG, accountRecordIdCache, tenantRecordIdCache);
+        Assert.assertNull(fromUnknown.getAccountRecordId());
+        Assert.assertNull(fromUnknown.getTenantRecordId());
+    }
+
+    @Test(groups = "slow")
+    public void testRetrieveIdFromObject() throws IOException {
+        insertTenant();
+
+        final CacheController<Object, Object> objectIdCache = controlCacheDispatcher.getCacheController(CacheType.OBJECT_ID);
+        Assert.assertEquals(nonEntityDao.retrieveIdFromObject(tenantRecordId, ObjectType.TENANT, null), tenantId);
+        Assert.assertFalse(objectIdCache.isKeyInCache(new CacheKey(ObjectType.TENANT, tenantRecordId)));
+
+        Assert.assertEquals(nonEntityDao.retrieveIdFromObject(tenantRecordId, ObjectType.TENANT, objectIdCache), tenantId);
+        Assert.assertTrue(objectIdCache.isKeyInCache(new CacheKey(ObjectType.TENANT, tenantRecordId)));
+    }
+
+    @Test(groups = "slow")
+    public void testBulkRetrieveRecordIdsAndIds() throws IOException {
+        insertAccount();
+        insertTag();
+
+        final CacheController<Object, Object> recordIdCache = controlCacheDispatcher.getCacheController(CacheType.RECORD_ID);
+        final CacheController<Object, Object> objectIdCache = controlCacheDispatcher.getCacheController(CacheType.OBJECT_ID);
+
+        final UUID unknownAccountId = UUID.randomUUID();
+        final Map<UUID, Long> recordIds = nonEntityDao.retrieveRecordIdsFromObjects(ImmutableList.<UUID>of(accountId, unknownAccountId, accountId), ObjectType.ACCOUNT, recordIdCache, objectIdCache);
+        Assert.assertEquals(recordIds.size(), 1);
+        Assert.assertEquals(recordIds.get(accountId), accountRecordId);
+
+        // Both directions were populated
+        Assert.assertTrue(recordIdCache.isKeyInCache(accountId.toString()));
+        Assert.assertTrue(objectIdCache.isKeyInCache(new CacheKey(ObjectType.ACCOUNT, accountRecordId)));
+        Assert.assertFalse(recordIdCache.isKeyInCache(unknownAccountId.toString()));
+
+        // Record ids are only unique within a table
+        final Map<Long, UUID> ids = nonEntityDao.retrieveIdsFromObjects(ImmutableList.<Long>of(tagRecordId, accountRecordId), ObjectType.TAG, objectIdCache, recordIdCache);
+        Assert.assertEquals(ids.size(), 1);
+        Assert.assertEquals(ids.get(tagRecordId), tagId);
+        Assert.assertEquals(nonEntityDao.retrieveIdsFromObjects(ImmutableList.<Long>of(accountRecordId), ObjectType.ACCOUNT, objectIdCache, recordIdCache).get(accountRecordId), accountId);
+        Assert.assertTrue(recordIdCache.isKeyInCache(tagId.toString()));
+    }
+
     private void insertAccount() throws IOException {
         dbi.withHandle(new HandleCallback<Void>() {
             @Override
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.email;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Minimal in-process SMTP server, recording the recipients of the messages it accepts.
+ */
+public class MockSmtpServer implements Runnable {
+
+    private final ServerSocket serverSocket;
+    private final List<String> recipients = new LinkedList<String>();
+
+    private volatile boolean failing = false;
+    private Thread thread;
+
+    public MockSmtpServer() throws IOException {
+        this.serverSocket = new ServerSocket(0);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public void setFailing(final boolean failing) {
+        this.failing = failing;
+    }
+
+    public synchronized List<String> getRecipients() {
+        return new LinkedList<String>(recipients);
+    }
+
+    public void start() {
+        thread = new Thread(this, "mock-smtp-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() throws IOException {
+        serverSocket.close();
+    }
+
+    @Override
+    public void run() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                try {
+                    handle(socket);
+                } finally {
+                    socket.close();
+                }
+            } catch (IOException ignored) {
+                // Closed
+            }
+        }
+    }
+
+    private void handle(final Socket socket) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+        final Writer writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+
+        reply(writer, "220 localhost Mock SMTP");
+        final List<String> messageRecipients = new LinkedList<String>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            final String command = line.toUpperCase();
+            if (command.startsWith("MAIL FROM")) {
+                if (failing) {
+                    reply(writer, "451 Service unavailable");
+                } else {
+                    messageRecipients.clear();
+                    reply(writer, "250 OK");
+                }
+            } else if (command.startsWith("RCPT TO")) {
+                messageRecipients.add(line.substring(line.indexOf('<') + 1, line.indexOf('>')));
+                reply(writer, "250 OK");
+            } else if (command.startsWith("DATA")) {
+                reply(writer, "354 End data with <CR><LF>.<CR><LF>");
+                while ((line = reader.readLine()) != null && !".".equals(line)) {
+                    // Skip the message content
+                }
+                synchronized (this) {
+                    recipients.addAll(messageRecipients);
+                }
+                reply(writer, "250 OK");
+            } else if (command.startsWith("QUIT")) {
+                reply(writer, "221 Bye");
+                return;
+            } else {
+                // EHLO, HELO, RSET, NOOP, ...
+                reply(writer, "250 OK");
+            }
+        }
+    }
+
+    private void reply(final Writer writer, final String response) throws IOException {
+        writer.write(response + "\r\n");
+        writer.flush();
+    }
+}
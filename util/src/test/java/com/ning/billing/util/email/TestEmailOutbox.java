@@ -0,0 +1,204 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.email;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.skife.config.ConfigSource;
+import org.skife.config.ConfigurationObjectFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ning.billing.util.UtilTestSuiteWithEmbeddedDB;
+import com.ning.billing.util.email.dao.EmailOutboxModelDao;
+import com.ning.billing.util.email.dao.EmailOutboxStatus;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+public class TestEmailOutbox extends UtilTestSuiteWithEmbeddedDB {
+
+    private MockSmtpServer smtpServer;
+    private EmailOutbox emailOutbox;
+    private EmailOutboxDispatcher dispatcher;
+
+    @Override
+    @BeforeMethod(groups = "slow")
+    public void beforeMethod() throws Exception {
+        super.beforeMethod();
+
+        smtpServer = new MockSmtpServer();
+        smtpServer.start();
+
+        final Map<String, String> properties = ImmutableMap.<String, String>of("killbill.mail.smtp.host", "127.0.0.1",
+                                                                              "killbill.mail.smtp.port", String.valueOf(smtpServer.getPort()),
+                                                                              "killbill.mail.outbox.max.attempts", "2",
+                                                                              "killbill.mail.outbox.retry.delay", "1m");
+        final EmailConfig config = new ConfigurationObjectFactory(new ConfigSource() {
+            @Override
+            public String getString(final String propertyName) {
+                return properties.get(propertyName);
+            }
+        }).build(EmailConfig.class);
+
+        emailOutbox = new DefaultEmailOutbox(idbi, clock);
+        // Not started: emails are sent synchronously by processPendingEmails
+        dispatcher = new EmailOutboxDispatcher(idbi, new DefaultEmailSender(config), config, clock);
+    }
+
+    @Override
+    @AfterMethod(groups = "slow")
+    public void afterMethod() throws Exception {
+        smtpServer.stop();
+        super.afterMethod();
+    }
+
+    @Test(groups = "slow")
+    public void testDeliveryWithDeduplication() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        final List<String> to = ImmutableList.<String>of("john@example.com", "jane@example.com");
+
+        Assert.assertEquals(emailOutbox.enqueue(accountId, "INVOICE:1", to, ImmutableList.<String>of(), "Your invoice", "<p>Hello</p>", true, internalCallContext), 2);
+        // Same email, already queued for both recipients
+        Assert.assertEquals(emailOutbox.enqueue(accountId, "INVOICE:1", to, ImmutableList.<String>of(), "Your invoice", "<p>Hello</p>", true, internalCallContext), 0);
+        // Partial overlap
+        Assert.assertEquals(emailOutbox.enqueue(accountId, "INVOICE:1", ImmutableList.<String>of("jane@example.com", "bob@example.com"),
+                                                ImmutableList.<String>of(), "Your invoice", "<p>Hello</p>", true, internalCallContext), 1);
+
+        for (final EmailOutboxModelDao email : emailOutbox.getEmailsForAccount(accountId, internalCallContext)) {
+            Assert.assertEquals(email.getStatus(), EmailOutboxStatus.PENDING);
+        }
+
+        Assert.assertEquals(dispatcher.processPendingEmails(), 3);
+        Assert.assertEquals(smtpServer.getRecipients().size(), 3);
+        Assert.assertTrue(smtpServer.getRecipients().containsAll(ImmutableList.<String>of("john@example.com", "jane@example.com", "bob@example.com")));
+
+        final List<EmailOutboxModelDao> emails = emailOutbox.getEmailsForAccount(accountId, internalCallContext);
+        Assert.assertEquals(emails.size(), 3);
+        for (final EmailOutboxModelDao email : emails) {
+            Assert.assertEquals(email.getStatus(), EmailOutboxStatus.SENT);
+            Assert.assertEquals(email.getAttempts(), (Integer) 1);
+        }
+
+        // Nothing left to send
+        Assert.assertEquals(dispatcher.processPendingEmails(), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testRetriesWithBackoff() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        Assert.assertEquals(emailOutbox.enqueue(accountId, "OVERDUE:1", ImmutableList.<String>of("john@example.com"), ImmutableList.<String>of(),
+                                                "Overdue", "Please pay", false, internalCallContext), 1);
+
+        smtpServer.setFailing(true);
+        Assert.assertEquals(dispatcher.processPendingEmails(), 0);
+        EmailOutboxModelDao email = emailOutbox.getEmailsForAccount(accountId, internalCallContext).get(0);
+        Assert.assertEquals(email.getStatus(), EmailOutboxStatus.PENDING);
+        Assert.assertEquals(email.getAttempts(), (Integer) 1);
+        Assert.assertNotNull(email.getLastError());
+        Assert.assertTrue(email.getNextAttemptDate().isAfter(clock.getUTCNow()));
+
+        // Not retried before the backoff delay
+        Assert.assertEquals(dispatcher.processPendingEmails(), 0);
+        Assert.assertEquals(emailOutbox.getEmailsForAccount(accountId, internalCallContext).get(0).getAttempts(), (Integer) 1);
+
+        // Second and last attempt
+        clock.addDeltaFromReality(2 * 60 * 1000);
+        Assert.assertEquals(dispatcher.processPendingEmails(), 0);
+        email = emailOutbox.getEmailsForAccount(accountId, internalCallContext).get(0);
+        Assert.assertEquals(email.getStatus(), EmailOutboxStatus.FAILED);
+        Assert.assertEquals(email.getAttempts(), (Integer) 2);
+
+        // Failed emails are not picked up anymore
+        smtpServer.setFailing(false);
+        clock.addDeltaFromReality(60 * 60 * 1000);
+        Assert.assertEquals(dispatcher.processPendingEmails(), 0);
+        Assert.assertTrue(smtpServer.getRecipients().isEmpty());
+    }
+
+    @Test(groups = "slow")
+    public void testCcRecipientsOnTheirOwnEntries() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        final List<String> to = ImmutableList.<String>of("john@example.com", "jane@example.com");
+        final List<String> cc = ImmutableList.<String>of("billing@example.com");
+
+        // First recipient already queued: the cc recipient still gets the email
+        Assert.assertEquals(emailOutbox.enqueue(accountId, "INVOICE:2", ImmutableList.<String>of("john@example.com"), ImmutableList.<String>of(),
+                                                "Your invoice", "<p>Hello</p>", true, internalCallContext), 1);
+        Assert.assertEquals(emailOutbox.enqueue(accountId, "INVOICE:2", to, cc, "Your invoice", "<p>Hello</p>", true, internalCallContext), 2);
+        // Already queued for everybody
+        Assert.assertEquals(emailOutbox.enqueue(accountId, "INVOICE:2", to, cc, "Your invoice", "<p>Hello</p>", true, internalCallContext), 0);
+
+        final List<EmailOutboxModelDao> emails = emailOutbox.getEmailsForAccount(accountId, internalCallContext);
+        Assert.assertEquals(emails.size(), 3);
+        Assert.assertEquals(emails.get(0).getRecipient(), "john@example.com");
+        Assert.assertEquals(emails.get(1).getRecipient(), "jane@example.com");
+        Assert.assertEquals(emails.get(2).getRecipient(), "billing@example.com");
+        for (final EmailOutboxModelDao email : emails) {
+            Assert.assertTrue(email.getCcRecipientsAsList().isEmpty());
+        }
+
+        Assert.assertEquals(dispatcher.processPendingEmails(), 3);
+        // Each recipient got the email once
+        Assert.assertEquals(smtpServer.getRecipients().size(), 3);
+        Assert.assertTrue(smtpServer.getRecipients().containsAll(ImmutableList.<String>of("john@example.com", "jane@example.com", "billing@example.com")));
+    }
+
+    @Test(groups = "slow")
+    public void testConcurrentEnqueue() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        final List<String> to = ImmutableList.<String>of("john@example.com", "jane@example.com");
+
+        final int nbThreads = 5;
+        final ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final List<Future<Integer>> results = Lists.newArrayList();
+        try {
+            for (int i = 0; i < nbThreads; i++) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        startLatch.await();
+                        return emailOutbox.enqueue(accountId, "INVOICE:3", to, ImmutableList.<String>of(), "Your invoice", "<p>Hello</p>", true, internalCallContext);
+                    }
+                }));
+            }
+            startLatch.countDown();
+
+            // Duplicates caught by the unique index are not reported as errors
+            int queued = 0;
+            for (final Future<Integer> result : results) {
+                queued += result.get();
+            }
+            Assert.assertEquals(queued, 2);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(emailOutbox.getEmailsForAccount(accountId, internalCallContext).size(), 2);
+    }
+}
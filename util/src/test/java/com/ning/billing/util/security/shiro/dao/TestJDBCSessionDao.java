@@ -18,22 +18,34 @@ package com.ning.billing.util.security.shiro.dao;
 
 import java.io.Serializable;
 import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
 import java.util.UUID;
 
 import org.apache.shiro.session.Session;
 import org.apache.shiro.session.mgt.SimpleSession;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.skife.config.ConfigurationObjectFactory;
+import org.skife.config.SimplePropertyConfigSource;
 import org.skife.jdbi.v2.DBI;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import com.ning.billing.util.UtilTestSuiteWithEmbeddedDB;
+import com.ning.billing.util.config.SecurityConfig;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
 
 public class TestJDBCSessionDao extends UtilTestSuiteWithEmbeddedDB {
 
     @Test(groups = "slow")
     public void testCRUD() throws Exception {
         // Note! We are testing the do* methods here to bypass the caching layer
-        final JDBCSessionDao jdbcSessionDao = new JDBCSessionDao((DBI) dbi);
+        final JDBCSessionDao jdbcSessionDao = new JDBCSessionDao((DBI) dbi, createSecurityConfig());
 
         // Retrieve
         final SimpleSession session = createSession();
@@ -54,6 +66,112 @@ public class TestJDBCSessionDao extends UtilTestSuiteWithEmbeddedDB {
         // Delete
         jdbcSessionDao.doDelete(session);
         Assert.assertNull(jdbcSessionDao.doReadSession(session.getId()));
+
+        jdbcSessionDao.destroy();
+    }
+
+    @Test(groups = "slow")
+    public void testCoalesceLastAccessTimeUpdates() throws Exception {
+        final JDBCSessionDao jdbcSessionDao = new JDBCSessionDao((DBI) dbi, createSecurityConfig());
+        final JDBCSessionSqlDao jdbcSessionSqlDao = dbi.onDemand(JDBCSessionSqlDao.class);
+
+        final List<SimpleSession> sessions = new LinkedList<SimpleSession>();
+        for (int i = 0; i < 10; i++) {
+            final SimpleSession session = createSession();
+            jdbcSessionDao.doCreate(session);
+            sessions.add(session);
+        }
+
+        // Simulate 30 minutes of traffic: each session is touched every 3 seconds, pending updates are flushed every 15 seconds
+        final DateTime start = new DateTime(DateTimeZone.UTC).withMillisOfSecond(0);
+        final int nbSteps = 600;
+        DateTime now = start;
+        for (int step = 1; step <= nbSteps; step++) {
+            now = start.plusSeconds(3 * step);
+            for (final SimpleSession session : sessions) {
+                session.setLastAccessTime(now.toDate());
+                jdbcSessionDao.doUpdate(session);
+            }
+            if (step % 5 == 0) {
+                jdbcSessionDao.flushLastAccessTimes();
+            }
+        }
+
+        final long nbTouches = nbSteps * sessions.size();
+        final long nbWrites = jdbcSessionDao.getSynchronousUpdates() + jdbcSessionDao.getFlushedUpdates();
+        Assert.assertEquals(jdbcSessionDao.getSynchronousUpdates(), 0);
+        Assert.assertEquals(jdbcSessionDao.getSkippedUpdates() + jdbcSessionDao.getCoalescedUpdates(), nbTouches);
+        // At most one write per session and granularity period (1 minute), versus one per touch without coalescing
+        Assert.assertTrue(nbWrites <= 30 * sessions.size(), "Too many writes: " + nbWrites);
+        // Each flush is a single batch
+        Assert.assertTrue(jdbcSessionDao.getFlushes() <= nbSteps / 5);
+
+        // The last access times don't lag behind by more than the granularity
+        for (final SimpleSession session : sessions) {
+            final SessionModelDao persistedSession = jdbcSessionSqlDao.read(session.getId());
+            Assert.assertTrue(persistedSession.getLastAccessTime().compareTo(now.minusMinutes(1)) >= 0);
+        }
+
+        // Other changes are still written right away
+        final SimpleSession session = sessions.get(0);
+        final String newHost = UUID.randomUUID().toString();
+        session.setHost(newHost);
+        session.setLastAccessTime(now.plusMinutes(5).toDate());
+        jdbcSessionDao.doUpdate(session);
+        Assert.assertEquals(jdbcSessionDao.getSynchronousUpdates(), 1);
+        Assert.assertEquals(jdbcSessionSqlDao.read(session.getId()).getHost(), newHost);
+        Assert.assertEquals(jdbcSessionSqlDao.read(session.getId()).getLastAccessTime().compareTo(now.plusMinutes(5)), 0);
+
+        for (final SimpleSession curSession : sessions) {
+            jdbcSessionDao.doDelete(curSession);
+        }
+        jdbcSessionDao.destroy();
+    }
+
+    @Test(groups = "slow")
+    public void testForgetSessionsEvictedFromActiveSessionsCache() throws Exception {
+        final JDBCSessionDao jdbcSessionDao = new JDBCSessionDao((DBI) dbi, createSecurityConfig());
+
+        final String cacheName = "testForgetSessionsEvictedFromActiveSessionsCache";
+        final CacheManager cacheManager = CacheManager.create();
+        cacheManager.addCache(new Cache(cacheName, 1, false, true, 0, 0));
+        try {
+            final Cache activeSessionsCache = cacheManager.getCache(cacheName);
+            jdbcSessionDao.registerActiveSessionsCache(activeSessionsCache);
+
+            final SimpleSession session1 = createSession();
+            activeSessionsCache.put(new Element(jdbcSessionDao.doCreate(session1), session1));
+            final SimpleSession session2 = createSession();
+            jdbcSessionDao.doCreate(session2);
+            Assert.assertEquals(jdbcSessionDao.getPersistedSessions(), 2);
+
+            // The cache holds a single session: caching the second one evicts the first one
+            activeSessionsCache.put(new Element(session2.getId(), session2));
+            Assert.assertEquals(jdbcSessionDao.getPersistedSessions(), 1);
+
+            // The evicted session is written again on its next touch, as it would be once re-read from the database
+            session1.setLastAccessTime(new Date(session1.getLastAccessTime().getTime() + 1000));
+            jdbcSessionDao.doUpdate(session1);
+            Assert.assertEquals(jdbcSessionDao.getSynchronousUpdates(), 1);
+            Assert.assertEquals(jdbcSessionDao.getPersistedSessions(), 2);
+
+            activeSessionsCache.removeAll();
+            Assert.assertEquals(jdbcSessionDao.getPersistedSessions(), 0);
+
+            jdbcSessionDao.doDelete(session1);
+            jdbcSessionDao.doDelete(session2);
+        } finally {
+            cacheManager.removeCache(cacheName);
+            jdbcSessionDao.destroy();
+        }
+    }
+
+    private SecurityConfig createSecurityConfig() {
+        final Properties properties = new Properties();
+        properties.setProperty("killbill.security.session.lastAccessTime.granularity", "1m");
+        // Flushes are triggered manually
+        properties.setProperty("killbill.security.session.lastAccessTime.flushInterval", "1h");
+        return new ConfigurationObjectFactory(new SimplePropertyConfigSource(properties)).build(SecurityConfig.class);
     }
 
     private SimpleSession createSession() {
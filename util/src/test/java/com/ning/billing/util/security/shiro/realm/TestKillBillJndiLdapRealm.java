@@ -19,6 +19,10 @@ package com.ning.billing.util.security.shiro.realm;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import javax.naming.NamingException;
 
 import org.apache.shiro.authc.AuthenticationInfo;
 import org.apache.shiro.authc.UsernamePasswordToken;
@@ -28,15 +32,75 @@ import org.skife.config.ConfigSource;
 import org.skife.config.ConfigurationObjectFactory;
 import org.skife.config.SimplePropertyConfigSource;
 import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.ning.billing.clock.ClockMock;
 import com.ning.billing.util.UtilTestSuiteNoDB;
 import com.ning.billing.util.config.SecurityConfig;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 public class TestKillBillJndiLdapRealm extends UtilTestSuiteNoDB {
 
+    private static final String BASE_DN = "dc=mycompany,dc=com";
+    private static final String USERS_DN = "ou=users," + BASE_DN;
+    private static final String GROUPS_DN = "ou=groups," + BASE_DN;
+
+    private InMemoryDirectoryServer ldapServer;
+    private ClockMock ldapClock;
+    private KillBillJndiLdapRealm embeddedLdapRealm;
+
+    @BeforeMethod(groups = "fast")
+    public void startLDAPServer() throws Exception {
+        final InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
+        config.addAdditionalBindCredentials("cn=root", "password");
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("default", 0));
+
+        ldapServer = new InMemoryDirectoryServer(config);
+        ldapServer.add("dn: " + BASE_DN, "objectClass: top", "objectClass: domain", "dc: mycompany");
+        ldapServer.add("dn: " + USERS_DN, "objectClass: top", "objectClass: organizationalUnit", "ou: users");
+        ldapServer.add("dn: " + GROUPS_DN, "objectClass: top", "objectClass: organizationalUnit", "ou: groups");
+        ldapServer.add("dn: cn=finance-group," + GROUPS_DN, "objectClass: top", "objectClass: groupOfNames", "cn: finance-group", "member: uid=pierre," + USERS_DN);
+        ldapServer.add("dn: cn=ops-group," + GROUPS_DN, "objectClass: top", "objectClass: groupOfNames", "cn: ops-group", "member: uid=stephane," + USERS_DN);
+        ldapServer.startListening();
+
+        final Properties props = new Properties();
+        props.setProperty("killbill.security.ldap.userDnTemplate", "uid={0}," + USERS_DN);
+        props.setProperty("killbill.security.ldap.searchBase", GROUPS_DN);
+        props.setProperty("killbill.security.ldap.groupSearchFilter", "member=uid={0}," + USERS_DN);
+        props.setProperty("killbill.security.ldap.groupNameId", "cn");
+        props.setProperty("killbill.security.ldap.url", "ldap://127.0.0.1:" + ldapServer.getListenPort());
+        props.setProperty("killbill.security.ldap.systemUsername", "cn=root");
+        props.setProperty("killbill.security.ldap.systemPassword", "password");
+        props.setProperty("killbill.security.ldap.permissionsByGroup", "finance-group = invoice:*, payment:*\n" +
+                                                                       "ops-group = *:*");
+        props.setProperty("killbill.security.ldap.authorizationCache.ttl", "1m");
+        props.setProperty("killbill.security.ldap.authorizationCache.negativeTtl", "10s");
+        props.setProperty("killbill.security.ldap.authorizationCache.maxStaleness", "1h");
+        props.setProperty("killbill.security.ldap.authorizationCache.maxSize", "2");
+        final SecurityConfig securityConfig = new ConfigurationObjectFactory(new SimplePropertyConfigSource(props)).build(SecurityConfig.class);
+
+        ldapClock = new ClockMock();
+        embeddedLdapRealm = new KillBillJndiLdapRealm(securityConfig, ldapClock);
+    }
+
+    @AfterMethod(groups = "fast")
+    public void stopLDAPServer() throws Exception {
+        embeddedLdapRealm.destroy();
+        ldapServer.shutDown(true);
+    }
+
     @Test(groups = "fast")
     public void testCheckConfiguration() throws Exception {
         // Test default configuration (see SecurityConfig)
@@ -70,7 +134,7 @@ public class TestKillBillJndiLdapRealm extends UtilTestSuiteNoDB {
                                                                        "ops-group: *:*");
         final ConfigSource customConfigSource = new SimplePropertyConfigSource(props);
         final SecurityConfig securityConfig = new ConfigurationObjectFactory(customConfigSource).build(SecurityConfig.class);
-        final KillBillJndiLdapRealm ldapRealm = new KillBillJndiLdapRealm(securityConfig);
+        final KillBillJndiLdapRealm ldapRealm = new KillBillJndiLdapRealm(securityConfig, clock);
 
         final String username = "pierre";
         final String password = "password";
@@ -86,4 +150,107 @@ public class TestKillBillJndiLdapRealm extends UtilTestSuiteNoDB {
         System.out.println("Roles: " + authorizationInfo.getRoles());
         System.out.println("Permissions: " + authorizationInfo.getStringPermissions());
     }
+
+    @Test(groups = "fast")
+    public void testAuthorizationCache() throws Exception {
+        final AuthorizationInfo authorizationInfo = queryForAuthorizationInfo("pierre");
+        Assert.assertEquals(ImmutableSet.<String>copyOf(authorizationInfo.getRoles()), ImmutableSet.<String>of("finance-group"));
+        Assert.assertEquals(ImmutableSet.<String>copyOf(authorizationInfo.getStringPermissions()), ImmutableSet.<String>of("invoice:*", "payment:*"));
+        Assert.assertEquals(embeddedLdapRealm.getAuthorizationCacheMissCount(), 1);
+
+        // Served from the cache, even though the groups changed in LDAP
+        ldapServer.modify("cn=ops-group," + GROUPS_DN, new Modification(ModificationType.ADD, "member", "uid=pierre," + USERS_DN));
+        Assert.assertEquals(getRoles("pierre"), ImmutableSet.<String>of("finance-group"));
+        Assert.assertEquals(embeddedLdapRealm.getAuthorizationCacheHitCount(), 1);
+        Assert.assertEquals(embeddedLdapRealm.getAuthorizationCacheMissCount(), 1);
+
+        // Once expired, the previous entry is served while it is refreshed in the background
+        ldapClock.addDeltaFromReality(2 * 60 * 1000);
+        Assert.assertEquals(getRoles("pierre"), ImmutableSet.<String>of("finance-group"));
+        Assert.assertEquals(embeddedLdapRealm.getAuthorizationCacheStaleHitCount(), 1);
+        awaitRefreshes(1);
+
+        final AuthorizationInfo refreshedAuthorizationInfo = queryForAuthorizationInfo("pierre");
+        Assert.assertEquals(ImmutableSet.<String>copyOf(refreshedAuthorizationInfo.getRoles()), ImmutableSet.<String>of("finance-group", "ops-group"));
+        Assert.assertEquals(ImmutableSet.<String>copyOf(refreshedAuthorizationInfo.getStringPermissions()), ImmutableSet.<String>of("invoice:*", "payment:*", "*:*"));
+        Assert.assertEquals(embeddedLdapRealm.getAuthorizationCacheHitCount(), 2);
+        Assert.assertEquals(embeddedLdapRealm.getAuthorizationCacheMissCount(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testNegativeCaching() throws Exception {
+        Assert.assertEquals(getRoles("jeff"), ImmutableSet.<String>of());
+        ldapServer.modify("cn=finance-group," + GROUPS_DN, new Modification(ModificationType.ADD, "member", "uid=jeff," + USERS_DN));
+
+        ldapClock.addDeltaFromReality(5 * 1000);
+        Assert.assertEquals(getRoles("jeff"), ImmutableSet.<String>of());
+        Assert.assertEquals(embeddedLdapRealm.getAuthorizationCacheHitCount(), 1);
+
+        // Users without any group expire sooner
+        ldapClock.addDeltaFromReality(10 * 1000);
+        Assert.assertEquals(getRoles("jeff"), ImmutableSet.<String>of());
+        awaitRefreshes(1);
+        Assert.assertEquals(getRoles("jeff"), ImmutableSet.<String>of("finance-group"));
+        Assert.assertEquals(embeddedLdapRealm.getAuthorizationCacheMissCount(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testLDAPServerOutage() throws Exception {
+        Assert.assertEquals(getRoles("pierre"), ImmutableSet.<String>of("finance-group"));
+        ldapServer.shutDown(true);
+
+        // Stale entries keep being served while the LDAP server is down
+        ldapClock.addDeltaFromReality(2 * 60 * 1000);
+        Assert.assertEquals(getRoles("pierre"), ImmutableSet.<String>of("finance-group"));
+        await().atMost(10, SECONDS).until(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return embeddedLdapRealm.getAuthorizationCacheRefreshFailureCount() >= 1;
+            }
+        });
+        Assert.assertEquals(getRoles("pierre"), ImmutableSet.<String>of("finance-group"));
+        Assert.assertEquals(embeddedLdapRealm.getAuthorizationCacheRefreshCount(), 0);
+
+        // ...but not past the max staleness
+        ldapClock.addDeltaFromReality(2 * 60 * 60 * 1000);
+        try {
+            queryForAuthorizationInfo("pierre");
+            Assert.fail("LDAP server is down");
+        } catch (NamingException e) {
+            Assert.assertEquals(embeddedLdapRealm.getAuthorizationCacheMissCount(), 2);
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testAuthorizationCacheIsBounded() throws Exception {
+        queryForAuthorizationInfo("pierre");
+        queryForAuthorizationInfo("stephane");
+        queryForAuthorizationInfo("jeff");
+        Assert.assertEquals(embeddedLdapRealm.getAuthorizationCacheSize(), 2);
+        Assert.assertEquals(embeddedLdapRealm.getAuthorizationCacheEvictionCount(), 1);
+
+        // Least recently used entry was evicted
+        queryForAuthorizationInfo("jeff");
+        Assert.assertEquals(embeddedLdapRealm.getAuthorizationCacheMissCount(), 3);
+        queryForAuthorizationInfo("pierre");
+        Assert.assertEquals(embeddedLdapRealm.getAuthorizationCacheMissCount(), 4);
+    }
+
+    private AuthorizationInfo queryForAuthorizationInfo(final String username) throws NamingException {
+        final SimplePrincipalCollection principals = new SimplePrincipalCollection(username, username);
+        return embeddedLdapRealm.queryForAuthorizationInfo(principals, embeddedLdapRealm.getContextFactory());
+    }
+
+    private Set<String> getRoles(final String username) throws NamingException {
+        return ImmutableSet.<String>copyOf(queryForAuthorizationInfo(username).getRoles());
+    }
+
+    private void awaitRefreshes(final long nbRefreshes) {
+        await().atMost(10, SECONDS).until(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return embeddedLdapRealm.getAuthorizationCacheRefreshCount() >= nbRefreshes;
+            }
+        });
+    }
 }
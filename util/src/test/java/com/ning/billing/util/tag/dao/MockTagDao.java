@@ -17,16 +17,19 @@
 package com.ning.billing.util.tag.dao;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import com.ning.billing.ObjectType;
 import com.ning.billing.util.api.TagApiException;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.tag.ControlTagType;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
@@ -88,6 +91,20 @@ public class MockTagDao implements TagDao {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public Set<ControlTagType> getControlTagsForAccount(final UUID accountId, final InternalTenantContext internalTenantContext) {
+        return getControlTagsForObject(accountId, ObjectType.ACCOUNT, internalTenantContext);
+    }
+
+    @Override
+    public Set<ControlTagType> getControlTagsForObject(final UUID objectId, final ObjectType objectType, final InternalTenantContext internalTenantContext) {
+        return TagModelDaoHelper.getControlTagTypes(getTagsForObject(objectId, objectType, internalTenantContext));
+    }
+
+    @Override
+    public void warmControlTagsForObjects(final Collection<UUID> objectIds, final ObjectType objectType, final InternalTenantContext internalTenantContext) {
+    }
+
     public void clear() {
         tagStore.clear();
     }
@@ -18,7 +18,15 @@ package com.ning.billing.util.tag.dao;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Inject;
+
+import org.skife.config.ConfigurationObjectFactory;
+import org.skife.config.SimplePropertyConfigSource;
 
 import org.testng.Assert;
 import org.testng.annotations.AfterMethod;
@@ -30,14 +38,29 @@ import com.ning.billing.api.TestApiListener;
 import com.ning.billing.api.TestApiListener.NextEvent;
 import com.ning.billing.util.UtilTestSuiteWithEmbeddedDB;
 import com.ning.billing.util.api.TagDefinitionApiException;
+import com.ning.billing.util.cache.Cachable.CacheType;
+import com.ning.billing.util.cache.AccountControlTagsCacheLoader;
+import com.ning.billing.util.cache.CacheController;
+import com.ning.billing.util.cache.CacheControllerDispatcher;
+import com.ning.billing.util.cache.CacheLoaderArgument;
+import com.ning.billing.util.config.CacheConfig;
 import com.ning.billing.util.tag.ControlTagType;
 import com.ning.billing.util.tag.DescriptiveTag;
 import com.ning.billing.util.tag.Tag;
+import com.ning.billing.util.tag.api.ControlTagCacheHandler;
+import com.ning.billing.util.tag.api.user.TagEventBuilder;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 import static org.testng.Assert.assertEquals;
 
 public class TestDefaultTagDao extends UtilTestSuiteWithEmbeddedDB {
 
+    @Inject
+    private AccountControlTagsCacheLoader accountControlTagsCacheLoader;
+
     private TestApiListener eventsListener;
 
     @Override
@@ -173,4 +196,142 @@ public class TestDefaultTagDao extends UtilTestSuiteWithEmbeddedDB {
         Assert.assertEquals(tagSecondEventReceived.getUserToken(), internalCallContext.getUserToken());
         */
     }
+
+    @Test(groups = "slow")
+    public void testControlTagsCacheAcrossNodes() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        final UUID otherAccountId = UUID.randomUUID();
+        final UUID thirdAccountId = UUID.randomUUID();
+        final UUID bundleId = UUID.randomUUID();
+
+        // Two nodes, with their own cache but the same database. Events aren't delivered: the bus hands each of them to a single node
+        final CacheConfig cacheConfig = createCacheConfig("1m");
+        final CacheController<Object, Object> cacheControllerA = new InMemoryCacheController();
+        final DefaultTagDao nodeA = createNode(cacheControllerA, cacheConfig);
+        final CacheController<Object, Object> cacheControllerB = new InMemoryCacheController();
+        final DefaultTagDao nodeB = createNode(cacheControllerB, cacheConfig);
+
+        Assert.assertEquals(nodeA.getControlTagsForAccount(accountId, internalCallContext), ImmutableSet.<ControlTagType>of());
+        Assert.assertEquals(nodeB.getControlTagsForAccount(accountId, internalCallContext), ImmutableSet.<ControlTagType>of());
+
+        // Tag added on node A: node B serves stale data until its next revalidation
+        createTag(nodeA, ControlTagType.AUTO_PAY_OFF, accountId, ObjectType.ACCOUNT);
+        Assert.assertEquals(nodeA.getControlTagsForAccount(accountId, internalCallContext), ImmutableSet.<ControlTagType>of(ControlTagType.AUTO_PAY_OFF));
+        Assert.assertEquals(nodeB.getControlTagsForAccount(accountId, internalCallContext), ImmutableSet.<ControlTagType>of());
+
+        clock.addDeltaFromReality(cacheConfig.getControlTagsRevalidationInterval().getMillis());
+        Assert.assertEquals(nodeB.getControlTagsForAccount(accountId, internalCallContext), ImmutableSet.<ControlTagType>of(ControlTagType.AUTO_PAY_OFF));
+
+        // Same for deletions
+        eventsListener.pushExpectedEvent(NextEvent.TAG);
+        nodeA.deleteTag(accountId, ObjectType.ACCOUNT, ControlTagType.AUTO_PAY_OFF.getId(), internalCallContext);
+        Assert.assertTrue(eventsListener.isCompleted(2000));
+        Assert.assertEquals(nodeA.getControlTagsForAccount(accountId, internalCallContext), ImmutableSet.<ControlTagType>of());
+        Assert.assertEquals(nodeB.getControlTagsForAccount(accountId, internalCallContext), ImmutableSet.<ControlTagType>of(ControlTagType.AUTO_PAY_OFF));
+
+        clock.addDeltaFromReality(cacheConfig.getControlTagsRevalidationInterval().getMillis());
+        Assert.assertEquals(nodeB.getControlTagsForAccount(accountId, internalCallContext), ImmutableSet.<ControlTagType>of());
+
+        // Bundle tags go through the same cache
+        createTag(nodeA, ControlTagType.AUTO_INVOICING_OFF, bundleId, ObjectType.BUNDLE);
+        Assert.assertEquals(nodeA.getControlTagsForObject(bundleId, ObjectType.BUNDLE, internalCallContext), ImmutableSet.<ControlTagType>of(ControlTagType.AUTO_INVOICING_OFF));
+        Assert.assertEquals(nodeA.getControlTagsForAccount(accountId, internalCallContext), ImmutableSet.<ControlTagType>of());
+
+        // Bulk warm-up, objects without any tag are cached too
+        createTag(nodeA, ControlTagType.AUTO_INVOICING_OFF, otherAccountId, ObjectType.ACCOUNT);
+        cacheControllerB.removeAll();
+        nodeB.warmControlTagsForObjects(ImmutableList.<UUID>of(accountId, otherAccountId, thirdAccountId), ObjectType.ACCOUNT, internalCallContext);
+        nodeB.warmControlTagsForObjects(ImmutableList.<UUID>of(bundleId), ObjectType.BUNDLE, internalCallContext);
+        Assert.assertEquals(cacheControllerB.size(), 4);
+        Assert.assertEquals(nodeB.getControlTagsForAccount(otherAccountId, internalCallContext), ImmutableSet.<ControlTagType>of(ControlTagType.AUTO_INVOICING_OFF));
+        Assert.assertEquals(nodeB.getControlTagsForObject(bundleId, ObjectType.BUNDLE, internalCallContext), ImmutableSet.<ControlTagType>of(ControlTagType.AUTO_INVOICING_OFF));
+
+        // Cached entries due for a check are revalidated in bulk by the warm-up
+        createTag(nodeA, ControlTagType.AUTO_PAY_OFF, thirdAccountId, ObjectType.ACCOUNT);
+        nodeB.warmControlTagsForObjects(ImmutableList.<UUID>of(thirdAccountId), ObjectType.ACCOUNT, internalCallContext);
+        Assert.assertEquals(nodeB.getControlTagsForAccount(thirdAccountId, internalCallContext), ImmutableSet.<ControlTagType>of());
+
+        clock.addDeltaFromReality(cacheConfig.getControlTagsRevalidationInterval().getMillis());
+        nodeB.warmControlTagsForObjects(ImmutableList.<UUID>of(accountId, thirdAccountId), ObjectType.ACCOUNT, internalCallContext);
+        Assert.assertEquals(nodeB.getControlTagsForAccount(thirdAccountId, internalCallContext), ImmutableSet.<ControlTagType>of(ControlTagType.AUTO_PAY_OFF));
+        Assert.assertEquals(nodeB.getControlTagsForAccount(accountId, internalCallContext), ImmutableSet.<ControlTagType>of());
+
+        // One load per detected change on node B, warmed up entries are hits
+        Assert.assertEquals(nodeB.getControlTagsMissCount(), 3);
+        Assert.assertEquals(nodeB.getControlTagsHitCount(), 7);
+        Assert.assertEquals(nodeB.getControlTagsRevalidationCount(), 4);
+    }
+
+    @Test(groups = "slow")
+    public void testControlTagCacheHandler() throws Exception {
+        final CacheController<Object, Object> cacheController = controlCacheDispatcher.getCacheController(CacheType.ACCOUNT_CONTROL_TAGS);
+        final UUID bundleId = UUID.randomUUID();
+
+        Assert.assertEquals(tagDao.getControlTagsForObject(bundleId, ObjectType.BUNDLE, internalCallContext), ImmutableSet.<ControlTagType>of());
+        Assert.assertTrue(cacheController.isKeyInCache(bundleId));
+
+        new ControlTagCacheHandler(controlCacheDispatcher).handleControlTagCreation(new TagEventBuilder().newControlTagCreationEvent(UUID.randomUUID(), bundleId, ObjectType.BUNDLE,
+                                                                                                                                    new TagDefinitionModelDao(ControlTagType.AUTO_INVOICING_OFF),
+                                                                                                                                    internalCallContext.getAccountRecordId(), internalCallContext.getTenantRecordId(),
+                                                                                                                                    internalCallContext.getUserToken()));
+        Assert.assertFalse(cacheController.isKeyInCache(bundleId));
+    }
+
+    private void createTag(final DefaultTagDao node, final ControlTagType controlTagType, final UUID objectId, final ObjectType objectType) throws Exception {
+        eventsListener.pushExpectedEvent(NextEvent.TAG);
+        node.create(new TagModelDao(internalCallContext.getCreatedDate(), controlTagType.getId(), objectId, objectType), internalCallContext);
+        Assert.assertTrue(eventsListener.isCompleted(2000));
+    }
+
+    private DefaultTagDao createNode(final CacheController<Object, Object> cacheController, final CacheConfig cacheConfig) {
+        return new DefaultTagDao(idbi, new TagEventBuilder(), eventBus, clock,
+                                 new CacheControllerDispatcher(ImmutableMap.<CacheType, CacheController<Object, Object>>of(CacheType.ACCOUNT_CONTROL_TAGS, cacheController)),
+                                 nonEntityDao, cacheConfig);
+    }
+
+    private CacheConfig createCacheConfig(final String revalidationInterval) {
+        final Properties properties = new Properties();
+        properties.setProperty("killbill.cache.control.tags.revalidationInterval", revalidationInterval);
+        return new ConfigurationObjectFactory(new SimplePropertyConfigSource(properties)).build(CacheConfig.class);
+    }
+
+    private final class InMemoryCacheController implements CacheController<Object, Object> {
+
+        private final Map<Object, Object> cache = new ConcurrentHashMap<Object, Object>();
+
+        @Override
+        public Object get(final Object key, final CacheLoaderArgument cacheLoaderArgument) {
+            if (cache.get(key) == null) {
+                cache.put(key, accountControlTagsCacheLoader.load(key, cacheLoaderArgument));
+            }
+            return cache.get(key);
+        }
+
+        @Override
+        public boolean isKeyInCache(final Object key) {
+            return cache.containsKey(key);
+        }
+
+        @Override
+        public void putIfAbsent(final Object key, final Object value) {
+            if (cache.get(key) == null) {
+                cache.put(key, value);
+            }
+        }
+
+        @Override
+        public boolean remove(final Object key) {
+            return cache.remove(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return cache.size();
+        }
+
+        @Override
+        public void removeAll() {
+            cache.clear();
+        }
+    }
 }